@@ -0,0 +1,122 @@
+package org.jsoar.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.Phase;
+import org.jsoar.kernel.RunType;
+import org.jsoar.kernel.SoarProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks a full agent running a simple counting operator on top of a
+ * {@link SyntheticInput} input-link, both per decision and per phase.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecisionCycleBenchmark
+{
+    static final String[] COUNT_RULES = {
+            "propose*init (state <s> ^superstate nil -^count) --> (<s> ^operator <o> +) (<o> ^name init)",
+            "apply*init (state <s> ^operator.name init) --> (<s> ^count 0)",
+            "propose*count (state <s> ^superstate nil ^count <c>) --> (<s> ^operator <o> + =) (<o> ^name count)",
+            "apply*count (state <s> ^operator.name count ^count <c>) --> (<s> ^count <c> -) (<s> ^count (+ <c> 1))", };
+    
+    static final String[] INPUT_RULES = {
+            "elaborate*high (state <s> ^io.input-link.item <i>) (<i> ^value > 90) --> (<s> ^high <i>)",
+            "elaborate*group (state <s> ^io.input-link.item <i>) (<i> ^group 0 ^value < 10) --> (<s> ^group-zero <i>)", };
+    
+    /**
+     * An agent running the counting operator over a synthetic input-link
+     */
+    @State(Scope.Thread)
+    public static class CountingAgent
+    {
+        /**
+         * Number of items on the input-link
+         */
+        @Param({ "100", "10000" })
+        public int inputSize;
+        
+        /**
+         * Number of item values changed on each input phase
+         */
+        @Param({ "10" })
+        public int inputChurn;
+        
+        Agent agent;
+        
+        @Setup(Level.Trial)
+        public void setUp() throws Exception
+        {
+            agent = new Agent();
+            load(agent, COUNT_RULES);
+            load(agent, INPUT_RULES);
+            SyntheticInput.install(agent, inputSize, inputChurn);
+            
+            // Get past initialization and the initial input burst
+            agent.runFor(3, RunType.DECISIONS);
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown()
+        {
+            agent.dispose();
+        }
+    }
+    
+    /**
+     * A counting agent that is advanced to the start of {@link #phase}
+     * before each invocation so that exactly that phase is measured.
+     */
+    @State(Scope.Thread)
+    public static class AtPhase extends CountingAgent
+    {
+        @Param({ "INPUT", "PROPOSE", "DECISION", "APPLY", "OUTPUT" })
+        public Phase phase;
+        
+        @Setup(Level.Invocation)
+        public void advance()
+        {
+            while(agent.getProperties().get(SoarProperties.CURRENT_PHASE) != phase)
+            {
+                agent.runFor(1, RunType.PHASES);
+            }
+        }
+    }
+    
+    @Benchmark
+    public void decision(CountingAgent a)
+    {
+        a.agent.runFor(1, RunType.DECISIONS);
+    }
+    
+    @Benchmark
+    public void phase(AtPhase a)
+    {
+        a.agent.runFor(1, RunType.PHASES);
+    }
+    
+    static void load(Agent agent, String[] rules) throws Exception
+    {
+        for(String rule : rules)
+        {
+            agent.getProductions().loadProduction(rule);
+        }
+    }
+}
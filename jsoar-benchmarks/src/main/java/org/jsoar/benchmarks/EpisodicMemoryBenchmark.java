@@ -0,0 +1,75 @@
+package org.jsoar.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.RunType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks episodic memory storage. Epmem records an episode every decision
+ * ({@code trigger dc}) over a {@link SyntheticInput} input-link, so each measured
+ * decision includes one {@code epmem_new_episode} whose working memory diff is
+ * {@link #inputChurn} changed values.
+ * 
+ * <p>Compare against {@link DecisionCycleBenchmark} with the same parameters to
+ * isolate the storage cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EpisodicMemoryBenchmark
+{
+    /**
+     * Number of items on the input-link
+     */
+    @Param({ "100", "10000" })
+    public int inputSize;
+    
+    /**
+     * Number of item values changed on each input phase
+     */
+    @Param({ "10" })
+    public int inputChurn;
+    
+    private Agent agent;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        agent = new Agent();
+        agent.getInterpreter().eval("epmem --set learning on");
+        agent.getInterpreter().eval("epmem --set trigger dc");
+        DecisionCycleBenchmark.load(agent, DecisionCycleBenchmark.COUNT_RULES);
+        SyntheticInput.install(agent, inputSize, inputChurn);
+        
+        agent.runFor(3, RunType.DECISIONS);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        agent.dispose();
+    }
+    
+    @Benchmark
+    public void storeDecision()
+    {
+        agent.runFor(1, RunType.DECISIONS);
+    }
+}
@@ -0,0 +1,247 @@
+package org.jsoar.benchmarks;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.Production;
+import org.jsoar.kernel.memory.Instantiation;
+import org.jsoar.kernel.memory.WmeImpl;
+import org.jsoar.kernel.parser.ParserContext;
+import org.jsoar.kernel.parser.ParserException;
+import org.jsoar.kernel.rete.ProductionAddResult;
+import org.jsoar.kernel.rete.Rete;
+import org.jsoar.kernel.rete.ReteListener;
+import org.jsoar.kernel.rete.ReteNode;
+import org.jsoar.kernel.rete.Token;
+import org.jsoar.kernel.symbols.IdentifierImpl;
+import org.jsoar.kernel.symbols.SymbolFactoryImpl;
+import org.jsoar.kernel.symbols.SymbolImpl;
+import org.jsoar.util.adaptables.Adaptables;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for the rete in isolation: WME addition/removal and
+ * production addition against a synthetic working memory of
+ * {@link PopulatedRete#wmeCount} WMEs.
+ * 
+ * <p>The rete is a standalone instance sharing the symbol factory of an
+ * otherwise idle agent, with a listener that just counts matches, so
+ * no match set, decision cycle or memory module work is included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReteBenchmark
+{
+    private static final String[] PRODUCTIONS = {
+            "join*item*value (<r> ^item <i>) (<i> ^value <v> ^group <g>) --> (<r> ^matched <i>)",
+            "join*item*next (<r> ^item <a>) (<a> ^next <b> ^value <v>) (<b> ^group <g> ^value <v>) --> (<r> ^same <a>)",
+            "neg*item*value (<r> ^item <i>) -(<i> ^value 0) --> (<r> ^nonzero <i>)",
+            "ncc*item (<r> ^item <i>) -{(<i> ^group 3) (<i> ^value 3)} --> (<r> ^ncc <i>)",
+            "const*group (<r> ^item <i>) (<i> ^group 5 ^value > 50) --> (<r> ^high <i>)", };
+    
+    private static final String NEW_PRODUCTION = "added*item (<r> ^item <i>) (<i> ^next <j> ^value <v>) (<j> ^group <g> ^value { <w> < <v> }) --> (<r> ^less <i>)";
+    
+    /**
+     * A rete populated with the test productions and a synthetic working
+     * memory of {@link #wmeCount} WMEs.
+     */
+    @State(Scope.Thread)
+    public static class PopulatedRete
+    {
+        /**
+         * Number of WMEs in the rete when each operation is measured
+         */
+        @Param({ "1000", "10000", "100000" })
+        public int wmeCount;
+        
+        Agent agent;
+        SymbolFactoryImpl syms;
+        Rete rete;
+        final MatchCounter matches = new MatchCounter();
+        final List<WmeImpl> wmes = new ArrayList<>();
+        int timetag = 0;
+        
+        WmeImpl unmatchedWme;
+        WmeImpl joiningWme;
+        WmeImpl itemWme;
+        
+        @Setup(Level.Trial)
+        public void setUp() throws Exception
+        {
+            agent = new Agent();
+            syms = Adaptables.adapt(agent, SymbolFactoryImpl.class);
+            rete = new Rete(agent.getTrace(), syms);
+            rete.setReteListener(matches);
+            
+            for(String p : PRODUCTIONS)
+            {
+                rete.add_production_to_rete(parse(p));
+            }
+            
+            // Each item contributes five wmes: (R ^item I) (I ^index n) (I ^group g) (I ^value v) (I ^next J)
+            // where J is the previous item, so that every test production's matches are linear in wmeCount
+            final IdentifierImpl root = syms.make_new_identifier('R', 0);
+            final SymbolImpl item = syms.createString("item");
+            final SymbolImpl index = syms.createString("index");
+            final SymbolImpl group = syms.createString("group");
+            final SymbolImpl value = syms.createString("value");
+            final SymbolImpl next = syms.createString("next");
+            IdentifierImpl lastItem = syms.make_new_identifier('I', 0);
+            for(int i = 0; i < wmeCount / 5; ++i)
+            {
+                final IdentifierImpl id = syms.make_new_identifier('I', 0);
+                add(new WmeImpl(root, item, id, false, ++timetag));
+                add(new WmeImpl(id, index, syms.createInteger(i), false, ++timetag));
+                add(new WmeImpl(id, group, syms.createInteger(i % SyntheticInput.GROUPS), false, ++timetag));
+                add(new WmeImpl(id, value, syms.createInteger(i % 100), false, ++timetag));
+                add(new WmeImpl(id, next, lastItem, false, ++timetag));
+                lastItem = id;
+            }
+            
+            // Probe wmes. Each is added then removed by a benchmark so the rete
+            // is in the same state at the start of every invocation.
+            unmatchedWme = new WmeImpl(syms.make_new_identifier('X', 0), syms.createString("unmatched"), syms.createInteger(1), false, ++timetag);
+            joiningWme = new WmeImpl(lastItem, value, syms.createInteger(7), false, ++timetag);
+            itemWme = new WmeImpl(root, item, syms.make_new_identifier('I', 0), false, ++timetag);
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown()
+        {
+            agent.dispose();
+        }
+        
+        void add(WmeImpl w)
+        {
+            wmes.add(w);
+            rete.add_wme_to_rete(w);
+        }
+        
+        Production parse(String body) throws ParserException
+        {
+            final ParserContext context = klass -> Adaptables.adapt(agent, klass);
+            return agent.getProductions().getParser().parseProduction(context, new StringReader(body));
+        }
+    }
+    
+    /**
+     * A populated rete plus a freshly parsed production that is excised
+     * again after each invocation has been measured.
+     */
+    @State(Scope.Thread)
+    public static class WithNewProduction extends PopulatedRete
+    {
+        private Production newProduction;
+        
+        @Setup(Level.Invocation)
+        public void parseNewProduction() throws Exception
+        {
+            newProduction = parse(NEW_PRODUCTION);
+        }
+        
+        @TearDown(Level.Invocation)
+        public void exciseNewProduction()
+        {
+            if(newProduction.getReteNode() != null)
+            {
+                rete.excise_production_from_rete(newProduction);
+            }
+        }
+    }
+    
+    /**
+     * A WME that matches no alpha memory beyond the wildcard ones
+     */
+    @Benchmark
+    public int addRemoveUnmatchedWme(PopulatedRete r)
+    {
+        r.rete.add_wme_to_rete(r.unmatchedWme);
+        r.rete.remove_wme_from_rete(r.unmatchedWme);
+        return r.matches.count;
+    }
+    
+    /**
+     * A second {@code ^value} on an existing item, which right-activates the
+     * join, negative and ncc nodes of every test production
+     */
+    @Benchmark
+    public int addRemoveJoiningWme(PopulatedRete r)
+    {
+        r.rete.add_wme_to_rete(r.joiningWme);
+        r.rete.remove_wme_from_rete(r.joiningWme);
+        return r.matches.count;
+    }
+    
+    /**
+     * A new {@code ^item} on the root, which right-activates the first
+     * join of every test production
+     */
+    @Benchmark
+    public int addRemoveItemWme(PopulatedRete r)
+    {
+        r.rete.add_wme_to_rete(r.itemWme);
+        r.rete.remove_wme_from_rete(r.itemWme);
+        return r.matches.count;
+    }
+    
+    /**
+     * Adding a production to a populated rete, including the initial
+     * update of its new nodes with all existing matches
+     */
+    @Benchmark
+    public ProductionAddResult addProduction(WithNewProduction r)
+    {
+        return r.rete.add_production_to_rete(r.newProduction);
+    }
+    
+    private static class MatchCounter implements ReteListener
+    {
+        int count;
+        
+        @Override
+        public void p_node_left_addition(Rete rete, ReteNode node, Token tok, WmeImpl w)
+        {
+            count++;
+        }
+        
+        @Override
+        public void p_node_left_removal(Rete rete, ReteNode node, Token tok, WmeImpl w)
+        {
+            count--;
+        }
+        
+        @Override
+        public void startRefraction(Rete rete, Production p, Instantiation refracted_inst, ReteNode p_node)
+        {
+        }
+        
+        @Override
+        public boolean finishRefraction(Rete rete, Production p, Instantiation refracted_inst, ReteNode p_node)
+        {
+            return false;
+        }
+        
+        @Override
+        public void removingProductionNode(Rete rete, ReteNode p_node)
+        {
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.jsoar.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.RunType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks semantic memory cue-based retrieval. The store is preloaded with
+ * {@link #ltiCount} LTIs of the form {@code (@L ^kind item ^index n ^group g)}
+ * and the agent issues a new query every decision, so each measured decision
+ * includes one {@code smem_process_query} plus the resulting activation update
+ * and retrieval.
+ * 
+ * <p>Compare against {@link DecisionCycleBenchmark} with a small input-link
+ * to see the cost of the surrounding decision.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SemanticMemoryBenchmark
+{
+    private static final String[] QUERY_RULES = {
+            "apply*count*first-query (state <s> ^operator.name count ^smem.command <cmd>) (<cmd> -^query) --> (<cmd> ^query <q>) (<q> ^kind item ^%1$s 0)",
+            "apply*count*next-query (state <s> ^operator.name count ^count <c> ^smem.command <cmd>) (<cmd> ^query <q>) --> (<cmd> ^query <q> -) (<cmd> ^query <n>) (<n> ^kind item ^%1$s (mod <c> %2$d))", };
+    
+    /**
+     * Number of LTIs in semantic memory
+     */
+    @Param({ "1000", "10000" })
+    public int ltiCount;
+    
+    /**
+     * The attribute the query cue constrains. {@code group} matches
+     * {@code ltiCount / 16} LTIs, {@code index} matches exactly one.
+     */
+    @Param({ "group", "index" })
+    public String cue;
+    
+    private Agent agent;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        agent = new Agent();
+        agent.getInterpreter().eval("smem --set learning on");
+        
+        final StringBuilder add = new StringBuilder("smem --add {\n");
+        for(int i = 0; i < ltiCount; ++i)
+        {
+            add.append(String.format("(<l%d> ^kind item ^index %d ^group %d)%n", i, i, i % SyntheticInput.GROUPS));
+        }
+        add.append("}");
+        agent.getInterpreter().eval(add.toString());
+        
+        DecisionCycleBenchmark.load(agent, DecisionCycleBenchmark.COUNT_RULES);
+        final int modulus = "group".equals(cue) ? SyntheticInput.GROUPS : ltiCount;
+        for(String rule : QUERY_RULES)
+        {
+            agent.getProductions().loadProduction(String.format(rule, cue, modulus));
+        }
+        
+        agent.runFor(3, RunType.DECISIONS);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        agent.dispose();
+    }
+    
+    @Benchmark
+    public void queryDecision()
+    {
+        agent.runFor(1, RunType.DECISIONS);
+    }
+}
@@ -0,0 +1,93 @@
+package org.jsoar.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jsoar.kernel.symbols.IntegerSymbolImpl;
+import org.jsoar.kernel.symbols.StringSymbolImpl;
+import org.jsoar.kernel.symbols.SymbolFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for symbol interning in {@link SymbolFactoryImpl}. The
+ * {@code existing*} benchmarks look up symbols that are already in a
+ * table of {@link #symbolCount} live symbols, the {@code new*} benchmarks
+ * intern a value that has never been seen before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymbolFactoryBenchmark
+{
+    /**
+     * Number of live symbols of each type in the factory
+     */
+    @Param({ "1000", "100000" })
+    public int symbolCount;
+    
+    private SymbolFactoryImpl syms;
+    
+    // Hold the interned symbols so they aren't collected out of the weak maps
+    private StringSymbolImpl[] strings;
+    private IntegerSymbolImpl[] ints;
+    private String[] names;
+    
+    private int next = 0;
+    private long nextNew = 0;
+    
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        syms = new SymbolFactoryImpl();
+        strings = new StringSymbolImpl[symbolCount];
+        ints = new IntegerSymbolImpl[symbolCount];
+        names = new String[symbolCount];
+        for(int i = 0; i < symbolCount; ++i)
+        {
+            // Use a fresh String instance for lookups so equals() has to do real work
+            names[i] = new String("symbol-" + i);
+            strings[i] = syms.createString("symbol-" + i);
+            ints[i] = syms.createInteger(i);
+        }
+        nextNew = symbolCount;
+    }
+    
+    @Benchmark
+    public StringSymbolImpl existingString()
+    {
+        next = (next + 1) % symbolCount;
+        return syms.createString(names[next]);
+    }
+    
+    @Benchmark
+    public IntegerSymbolImpl existingInteger()
+    {
+        next = (next + 1) % symbolCount;
+        return syms.createInteger(next);
+    }
+    
+    @Benchmark
+    public StringSymbolImpl newString()
+    {
+        return syms.createString("new-symbol-" + nextNew++);
+    }
+    
+    @Benchmark
+    public IntegerSymbolImpl newInteger()
+    {
+        return syms.createInteger(nextNew++);
+    }
+}
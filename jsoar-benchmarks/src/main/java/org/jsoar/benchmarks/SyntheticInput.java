@@ -0,0 +1,96 @@
+package org.jsoar.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.events.InputEvent;
+import org.jsoar.kernel.io.InputOutput;
+import org.jsoar.kernel.io.InputWme;
+import org.jsoar.kernel.io.InputWmes;
+import org.jsoar.util.events.SoarEvent;
+import org.jsoar.util.events.SoarEventListener;
+
+/**
+ * Generates a synthetic input-link of a fixed size for benchmarks that need
+ * a realistic amount of working memory behind the decision cycle. The
+ * structure looks like this:
+ * 
+ * <pre>{@code
+ * (I2 ^item I3 ^item I4 ...)
+ * (I3 ^index 0 ^group 7 ^value 42)
+ * }</pre>
+ * 
+ * <p>On every input phase the {@code ^value} of {@code churn} items is updated
+ * round-robin so that the rete, epmem, etc. see a steady stream of adds and
+ * removes.
+ */
+public class SyntheticInput implements SoarEventListener
+{
+    /**
+     * Number of distinct {@code ^group} values. Benchmarks that query
+     * by group can rely on each group holding {@code size / GROUPS} items.
+     */
+    public static final int GROUPS = 16;
+    
+    private final int size;
+    private final int churn;
+    private final List<InputWme> values = new ArrayList<>();
+    private int next = 0;
+    private long tick = 0;
+    
+    /**
+     * Install synthetic input on the given agent. The input-link is populated
+     * during the agent's first input phase.
+     * 
+     * @param agent the agent
+     * @param size the number of items to put on the input-link
+     * @param churn the number of item values to change each input phase
+     * @return the new input generator
+     */
+    public static SyntheticInput install(Agent agent, int size, int churn)
+    {
+        final SyntheticInput input = new SyntheticInput(size, churn);
+        agent.getEvents().addListener(InputEvent.class, input);
+        return input;
+    }
+    
+    private SyntheticInput(int size, int churn)
+    {
+        this.size = size;
+        this.churn = Math.min(churn, size);
+    }
+    
+    /**
+     * @return the number of items on the input-link
+     */
+    public int getSize()
+    {
+        return size;
+    }
+    
+    @Override
+    public void onEvent(SoarEvent event)
+    {
+        final InputOutput io = ((InputEvent) event).getInputOutput();
+        if(values.isEmpty())
+        {
+            for(int i = 0; i < size; ++i)
+            {
+                final InputWme item = InputWmes.add(io, "item", io.getSymbols().createIdentifier('I'));
+                InputWmes.add(item, "index", i);
+                InputWmes.add(item, "group", i % GROUPS);
+                values.add(InputWmes.add(item, "value", i % 100));
+            }
+            return;
+        }
+        
+        tick++;
+        for(int i = 0; i < churn; ++i)
+        {
+            final InputWme value = values.get(next);
+            InputWmes.update(value, (int) ((next + tick) % 100));
+            next = (next + 1) % values.size();
+        }
+    }
+}
@@ -49,6 +49,7 @@
 import org.jsoar.kernel.tracing.Trace.WmeTraceType;
 import org.jsoar.kernel.tracing.TraceFormatRestriction;
 import org.jsoar.kernel.tracing.TraceFormats;
+import org.jsoar.kernel.tracing.TraceRecorder;
 import org.jsoar.kernel.wma.DefaultWorkingMemoryActivation;
 import org.jsoar.kernel.wma.DefaultWorkingMemoryActivationParams.ActivationChoices;
 import org.jsoar.runtime.ThreadedAgent;
@@ -667,6 +668,18 @@ public ExecutionTimer getTotalKernelTimer()
         return totalKernelTimer;
     }
     
+    /**
+     * Returns the per-phase decision cycle timers and latency histograms.
+     * These are only updated while the {@link SoarProperties#PHASE_TIMERS}
+     * property is true.
+     * 
+     * @return the phase timers
+     */
+    public PhaseTimers getPhaseTimers()
+    {
+        return decisionCycle.getPhaseTimers();
+    }
+    
     public List<ExecutionTimer> getAllTimers()
     {
         return Arrays.asList(totalCpuTimer, totalKernelTimer);
@@ -865,6 +878,11 @@ private void init_agent_memory()
                 LOG.error("IOException while printing initial stack trace. Ignoring.", e);
             }
         }
+        final TraceRecorder recorder = trace.getRecorder();
+        if(recorder != null)
+        {
+            recorder.decision(decider.bottom_goal);
+        }
         decisionCycle.current_phase.set(Phase.INPUT);
         decisionCycle.d_cycle_count.increment();
         wma.d_cycle_count_increment();
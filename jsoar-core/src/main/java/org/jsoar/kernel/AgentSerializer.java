@@ -0,0 +1,389 @@
+package org.jsoar.kernel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jsoar.kernel.learning.rl.RLRuleInfo;
+import org.jsoar.kernel.memory.Instantiation;
+import org.jsoar.kernel.memory.Preference;
+import org.jsoar.kernel.memory.RecognitionMemory;
+import org.jsoar.kernel.memory.Slot;
+import org.jsoar.kernel.memory.Wme;
+import org.jsoar.kernel.memory.WmeImpl;
+import org.jsoar.kernel.memory.WmeImpl.SymbolTriple;
+import org.jsoar.kernel.modules.SoarModule;
+import org.jsoar.kernel.rete.ReteSerializer;
+import org.jsoar.kernel.symbols.DoubleSymbolImpl;
+import org.jsoar.kernel.symbols.IdentifierImpl;
+import org.jsoar.kernel.symbols.IntegerSymbolImpl;
+import org.jsoar.kernel.symbols.StringSymbolImpl;
+import org.jsoar.kernel.symbols.SymbolFactoryImpl;
+import org.jsoar.kernel.symbols.SymbolImpl;
+import org.jsoar.kernel.wma.DefaultWorkingMemoryActivation;
+import org.jsoar.util.adaptables.Adaptables;
+
+/**
+ * Saves the productions and the top state working memory of an agent to a
+ * snapshot and restores them, so that an agent can be warm started or
+ * recovered after a crash without sourcing its productions and running it
+ * again from scratch. This is not a full checkpoint of the agent's runtime
+ * state. A snapshot contains:
+ * <ul>
+ * <li>the productions, as a rete net (see {@link ReteSerializer}), including
+ * the current numeric values of RL rules
+ * <li>the RL statistics of each RL rule
+ * <li>the o-supported working memory of the top state, except for the
+ * output link
+ * <li>the identifier counters and the decision cycle count
+ * </ul>
+ * 
+ * <p>The goal stack, slots and preferences aren't saved. So, the restored
+ * agent has no substates, no selected operator, no i-supported wmes
+ * (including results returned by substates) and no justifications. It
+ * starts at the input phase, with the rete matching the restored working
+ * memory, and rebuilds the rest when it's run, just as it would after an
+ * init-soar with the same o-supported working memory. Restoring doesn't
+ * run the agent, so no rules fire until then. Input is left to the
+ * environment, which adds it again in the next input phase. Output
+ * commands on the output link were already seen by the environment, so
+ * they aren't saved and don't show up as new commands after a restore.
+ * 
+ * <p>Restored wmes get new timetags. Wmes with Java symbols, and the
+ * contents of semantic and episodic memory, aren't included.
+ */
+public class AgentSerializer
+{
+    private static final String MAGIC_STRING = "JSoarAgentSnapshot";
+    private static final int FORMAT_VERSION = 2;
+    
+    private static final int IDENTIFIER = 1;
+    private static final int STRING = 2;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 4;
+    
+    private AgentSerializer()
+    {
+    }
+    
+    /**
+     * Write a snapshot of the agent's productions and top state onto the
+     * output stream. The agent must not be running. The stream is not closed.
+     * 
+     * @param agent the agent to save
+     * @param os the output stream to write to
+     * @throws IOException on general I/O errors
+     * @throws SoarException if the productions can't be serialized
+     */
+    public static void saveTopState(Agent agent, OutputStream os) throws IOException, SoarException
+    {
+        final DecisionCycle decisionCycle = Adaptables.adapt(agent, DecisionCycle.class);
+        final SymbolFactoryImpl syms = Adaptables.adapt(agent, SymbolFactoryImpl.class);
+        
+        final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+        dos.writeUTF(MAGIC_STRING);
+        dos.writeInt(FORMAT_VERSION);
+        
+        // The rete reader buffers its input, so the rete is written as a
+        // block and read back from a separate stream
+        final ByteArrayOutputStream rete = new ByteArrayOutputStream();
+        ReteSerializer.saveReteWithoutJustifications(agent, rete);
+        dos.writeInt(rete.size());
+        rete.writeTo(dos);
+        
+        dos.writeLong(decisionCycle.d_cycle_count.get());
+        for(char letter = 'A'; letter <= 'Z'; ++letter)
+        {
+            dos.writeLong(syms.getIdNumber(letter));
+        }
+        
+        final List<Production> rlRules = new ArrayList<>();
+        for(Production p : agent.getProductions().getProductions(null))
+        {
+            if(p.rlRuleInfo != null)
+            {
+                rlRules.add(p);
+            }
+        }
+        dos.writeInt(rlRules.size());
+        for(Production p : rlRules)
+        {
+            final RLRuleInfo info = p.rlRuleInfo;
+            dos.writeUTF(p.getName());
+            dos.writeDouble(info.rl_update_count);
+            dos.writeDouble(info.rl_delta_bar_delta_beta);
+            dos.writeDouble(info.rl_delta_bar_delta_h);
+            dos.writeDouble(info.rl_ecr);
+            dos.writeDouble(info.rl_efr);
+        }
+        
+        final Set<IdentifierImpl> output = getOutputStructure(agent);
+        final List<WmeImpl> wmes = new ArrayList<>();
+        for(Wme w : agent.getAllWmesInRete())
+        {
+            if(isSaved((WmeImpl) w) && !output.contains(((WmeImpl) w).id))
+            {
+                wmes.add((WmeImpl) w);
+            }
+        }
+        // Keep the order in which they were added
+        wmes.sort(Comparator.comparingInt(WmeImpl::getTimetag));
+        dos.writeInt(wmes.size());
+        for(WmeImpl w : wmes)
+        {
+            writeSymbol(dos, w.id);
+            writeSymbol(dos, w.attr);
+            writeSymbol(dos, w.value);
+        }
+        
+        dos.flush();
+    }
+    
+    /**
+     * Construct a new agent from a snapshot.
+     * 
+     * @param is the input stream containing the snapshot
+     * @return the restored agent
+     * @throws IOException on general I/O errors
+     * @throws SoarException if the input isn't a valid snapshot
+     * @see #restoreTopState(Agent, InputStream)
+     */
+    public static Agent createAgent(InputStream is) throws IOException, SoarException
+    {
+        final Agent agent = new Agent();
+        restoreTopState(agent, is);
+        return agent;
+    }
+    
+    /**
+     * Replace the productions and working memory of an agent with a snapshot.
+     * All productions of the agent are excised and it is reinitialized before
+     * the snapshot is loaded. The agent isn't run, so it's left at the input
+     * phase. The agent must not be running. The stream is not closed.
+     * 
+     * @param agent the agent to restore into
+     * @param is the input stream containing the snapshot
+     * @throws IOException on general I/O errors
+     * @throws SoarException if the input isn't a valid snapshot
+     */
+    public static void restoreTopState(Agent agent, InputStream is) throws IOException, SoarException
+    {
+        final DataInputStream dis = new DataInputStream(new BufferedInputStream(is));
+        final String magic = dis.readUTF();
+        if(!MAGIC_STRING.equals(magic))
+        {
+            throw new SoarException("Input does not appear to be a valid JSoar agent snapshot");
+        }
+        final int version = dis.readInt();
+        if(version != FORMAT_VERSION)
+        {
+            throw new SoarException(String.format("Unsupported JSoar agent snapshot version. Expected %d, got %d",
+                    FORMAT_VERSION, version));
+        }
+        
+        final byte[] rete = new byte[dis.readInt()];
+        dis.readFully(rete);
+        ReteSerializer.replaceRete(agent, new ByteArrayInputStream(rete));
+        
+        final DecisionCycle decisionCycle = Adaptables.adapt(agent, DecisionCycle.class);
+        final DefaultWorkingMemoryActivation wma = Adaptables.adapt(agent, DefaultWorkingMemoryActivation.class);
+        final SymbolFactoryImpl syms = Adaptables.adapt(agent, SymbolFactoryImpl.class);
+        
+        final long cycle = dis.readLong();
+        decisionCycle.d_cycle_count.set(cycle);
+        wma.d_cycle_count_set(cycle);
+        for(char letter = 'A'; letter <= 'Z'; ++letter)
+        {
+            final long next = dis.readLong();
+            if(next > 0)
+            {
+                syms.resetIdNumber(letter, next - 1);
+            }
+        }
+        
+        final int rlRules = dis.readInt();
+        for(int i = 0; i < rlRules; ++i)
+        {
+            final String name = dis.readUTF();
+            final Production p = agent.getProductions().getProduction(name);
+            if(p == null || p.rlRuleInfo == null)
+            {
+                throw new SoarException("Invalid JSoar agent snapshot: RL statistics for " + name + ", which is not an RL rule in the snapshot");
+            }
+            final RLRuleInfo info = p.rlRuleInfo;
+            info.rl_update_count = dis.readDouble();
+            info.rl_delta_bar_delta_beta = dis.readDouble();
+            info.rl_delta_bar_delta_h = dis.readDouble();
+            info.rl_ecr = dis.readDouble();
+            info.rl_efr = dis.readDouble();
+        }
+        
+        final int wmes = dis.readInt();
+        final List<SymbolTriple> triples = new ArrayList<>(wmes);
+        for(int i = 0; i < wmes; ++i)
+        {
+            final SymbolImpl id = readSymbol(dis, syms);
+            final SymbolImpl attr = readSymbol(dis, syms);
+            final SymbolImpl value = readSymbol(dis, syms);
+            if(id.asIdentifier() == null)
+            {
+                throw new SoarException("Invalid wme in JSoar agent snapshot: " + id + " is not an identifier");
+            }
+            triples.add(new SymbolTriple(id, attr, value));
+        }
+        addOSupportedWmes(agent, triples);
+    }
+    
+    /**
+     * Add the wmes to the top state the way semantic memory adds a retrieval:
+     * as o-supported preferences of an instantiation without conditions, so
+     * that rules can remove them like any other o-supported wme.
+     */
+    private static void addOSupportedWmes(Agent agent, List<SymbolTriple> triples)
+    {
+        if(triples.isEmpty())
+        {
+            return;
+        }
+        
+        final Decider decider = Adaptables.adapt(agent, Decider.class);
+        final RecognitionMemory recMemory = Adaptables.adapt(agent, RecognitionMemory.class);
+        final IdentifierImpl state = decider.top_goal;
+        
+        final Instantiation inst = SoarModule.make_fake_instantiation(state, Collections.<WmeImpl> emptySet(), triples);
+        for(Preference pref = inst.preferences_generated; pref != null; pref = pref.inst_next)
+        {
+            recMemory.add_preference_to_tm(pref);
+            state.goalInfo.addGoalPreference(pref);
+            pref.on_goal_list = true;
+        }
+        decider.do_working_memory_phase();
+    }
+    
+    /**
+     * @return the output link and every identifier below it
+     */
+    private static Set<IdentifierImpl> getOutputStructure(Agent agent)
+    {
+        final Set<IdentifierImpl> result = new HashSet<>();
+        final IdentifierImpl outputLink = (IdentifierImpl) agent.getInputOutput().getOutputLink();
+        if(outputLink == null)
+        {
+            return result;
+        }
+        
+        final Map<IdentifierImpl, List<WmeImpl>> wmesById = new HashMap<>();
+        for(Wme w : agent.getAllWmesInRete())
+        {
+            wmesById.computeIfAbsent(((WmeImpl) w).id, k -> new ArrayList<>()).add((WmeImpl) w);
+        }
+        final Deque<IdentifierImpl> todo = new ArrayDeque<>();
+        result.add(outputLink);
+        todo.add(outputLink);
+        while(!todo.isEmpty())
+        {
+            for(WmeImpl w : wmesById.getOrDefault(todo.remove(), Collections.emptyList()))
+            {
+                final IdentifierImpl child = w.value.asIdentifier();
+                if(child != null && result.add(child))
+                {
+                    todo.add(child);
+                }
+            }
+        }
+        return result;
+    }
+    
+    private static boolean isSaved(WmeImpl w)
+    {
+        if(w.preference == null || !w.preference.o_supported || w.id.level != SoarConstants.TOP_GOAL_LEVEL)
+        {
+            return false;
+        }
+        final Slot slot = Slot.find_slot(w.id, w.attr);
+        if(slot != null && slot.isa_context_slot)
+        {
+            return false;
+        }
+        return isSaved(w.id) && isSaved(w.attr) && isSaved(w.value);
+    }
+    
+    private static boolean isSaved(SymbolImpl s)
+    {
+        return s.asIdentifier() != null || s.asString() != null || s.asInteger() != null || s.asDouble() != null;
+    }
+    
+    private static void writeSymbol(DataOutputStream dos, SymbolImpl s) throws IOException
+    {
+        final IdentifierImpl id = s.asIdentifier();
+        final StringSymbolImpl string = s.asString();
+        final IntegerSymbolImpl integer = s.asInteger();
+        if(id != null)
+        {
+            dos.writeByte(IDENTIFIER);
+            dos.writeChar(id.getNameLetter());
+            dos.writeLong(id.getNameNumber());
+            dos.writeLong(id.smem_lti);
+        }
+        else if(string != null)
+        {
+            dos.writeByte(STRING);
+            dos.writeUTF(string.getValue());
+        }
+        else if(integer != null)
+        {
+            dos.writeByte(INTEGER);
+            dos.writeLong(integer.getValue());
+        }
+        else
+        {
+            final DoubleSymbolImpl d = s.asDouble();
+            dos.writeByte(DOUBLE);
+            dos.writeDouble(d.getValue());
+        }
+    }
+    
+    private static SymbolImpl readSymbol(DataInputStream dis, SymbolFactoryImpl syms) throws IOException, SoarException
+    {
+        final int type = dis.readByte();
+        switch(type)
+        {
+        case IDENTIFIER:
+        {
+            final char letter = dis.readChar();
+            final long number = dis.readLong();
+            final long lti = dis.readLong();
+            final IdentifierImpl id = syms.findOrCreateIdentifierExact(letter, number);
+            if(lti != 0)
+            {
+                id.smem_lti = lti;
+            }
+            return id;
+        }
+        case STRING:
+            return syms.createString(dis.readUTF());
+        case INTEGER:
+            return syms.createInteger(dis.readLong());
+        case DOUBLE:
+            return syms.createDouble(dis.readDouble());
+        default:
+            throw new SoarException("Unknown symbol type in JSoar agent snapshot: " + type);
+        }
+    }
+}
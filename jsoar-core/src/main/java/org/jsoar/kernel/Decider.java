@@ -511,6 +511,13 @@ public void post_link_addition(IdentifierImpl from, IdentifierImpl to)
         
         to.link_count++;
         
+        // jsoar: in strong reference mode, make sure an id that was released
+        // while it was unlinked can be found again
+        if(to.link_count == 1)
+        {
+            predefinedSyms.getSyms().retainIdentifier(to);
+        }
+        
         if(DEBUG_LINKS)
         {
             if(from != null)
@@ -651,6 +658,13 @@ public void post_link_removal(IdentifierImpl from, IdentifierImpl to)
         
         to.link_count--;
         
+        // jsoar: in strong reference mode, the symbol factory releases the id
+        // at the end of the decision cycle if nothing links to it by then
+        if(to.link_count == 0)
+        {
+            predefinedSyms.getSyms().markIdentifierForRelease(to);
+        }
+        
         if(DEBUG_LINKS)
         {
             if(from != null)
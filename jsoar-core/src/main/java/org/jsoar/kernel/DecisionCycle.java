@@ -30,11 +30,13 @@
 import org.jsoar.kernel.smem.SemanticMemory;
 import org.jsoar.kernel.symbols.IdentifierImpl;
 import org.jsoar.kernel.symbols.Symbol;
+import org.jsoar.kernel.symbols.SymbolFactoryImpl;
 import org.jsoar.kernel.symbols.SymbolImpl;
 import org.jsoar.kernel.tracing.Printer;
 import org.jsoar.kernel.tracing.Trace;
 import org.jsoar.kernel.tracing.Trace.Category;
 import org.jsoar.kernel.tracing.TraceFormats;
+import org.jsoar.kernel.tracing.TraceRecorder;
 import org.jsoar.kernel.wma.DefaultWorkingMemoryActivation;
 import org.jsoar.kernel.wma.wma_go_action;
 import org.jsoar.util.Arguments;
@@ -71,6 +73,7 @@
     private SemanticMemory smem;
     private EpisodicMemory epmem;
     private DefaultWorkingMemoryActivation wma;
+    private SymbolFactoryImpl syms;
     
     private enum GoType
     {
@@ -127,6 +130,11 @@ public Integer set(Integer value)
     
     private boolean hitMaxElaborations = false;
     
+    /**
+     * agent.h:decision_cycle_phase_timers
+     */
+    private final PhaseTimers phaseTimers = new PhaseTimers();
+    
     /**
      * gsysparams.h::MAX_NIL_OUTPUT_CYCLES_SYSPARAM
      */
@@ -181,6 +189,7 @@ public void initialize()
         properties.setProvider(SoarProperties.MAX_ELABORATIONS, maxElaborations);
         properties.setProvider(SoarProperties.CURRENT_PHASE, current_phase);
         properties.setProvider(SoarProperties.STOP_PHASE, stopPhase);
+        properties.setProvider(SoarProperties.PHASE_TIMERS, phaseTimers.enabled);
         
         this.io = Adaptables.adapt(context, InputOutputImpl.class);
         this.decider = Adaptables.adapt(context, Decider.class);
@@ -193,6 +202,7 @@ public void initialize()
         this.smem = Adaptables.adapt(context, SemanticMemory.class);
         this.epmem = Adaptables.adapt(context, EpisodicMemory.class);
         this.wma = Adaptables.adapt(context, DefaultWorkingMemoryActivation.class);
+        this.syms = Adaptables.adapt(context, SymbolFactoryImpl.class);
         
         context.getRhsFunctions().registerHandler(haltHandler);
     }
@@ -230,6 +240,16 @@ private void resetStatistics()
         run_last_output_count = 0;
         run_generated_output_count = 0;
         inner_e_cycle_count.reset();
+        phaseTimers.reset();
+    }
+    
+    /**
+     * @return the per-phase timers and latency histograms
+     * @see SoarProperties#PHASE_TIMERS
+     */
+    public PhaseTimers getPhaseTimers()
+    {
+        return phaseTimers;
     }
     
     /**
@@ -382,9 +402,7 @@ private void doDecisionPhase()
         final Trace trace = context.getTrace();
         Phase.DECISION.trace(trace, true);
         
-        // #ifndef NO_TIMING_STUFF
-        // start_timer (thisAgent, &thisAgent->start_phase_tv);
-        // #endif
+        phaseTimers.start(Phase.DECISION);
         
         this.decision_phases_count.increment(); // counts decisions, not cycles, for more accurate stats
         
@@ -410,6 +428,11 @@ private void doDecisionPhase()
                 LOG.warn("While printing current context", e);
             }
         }
+        final TraceRecorder recorder = trace.getRecorder();
+        if(recorder != null)
+        {
+            recorder.decision(decider.bottom_goal);
+        }
         
         // reset elaboration counter
         this.e_cycles_this_d_cycle = 0;
@@ -430,10 +453,7 @@ private void doDecisionPhase()
         recMemory.FIRING_TYPE = SavedFiringType.PE_PRODS;
         current_phase.set(Phase.APPLY);
         
-        // #ifndef NO_TIMING_STUFF
-        // stop_timer (thisAgent, &thisAgent->start_phase_tv,
-        // &thisAgent->decision_cycle_phase_timers[DECISION_PHASE]);
-        // #endif
+        phaseTimers.stop(Phase.DECISION, true);
     }
     
     /**
@@ -446,9 +466,7 @@ private void doOutputPhase()
         final Trace trace = context.getTrace();
         Phase.OUTPUT.trace(trace, true);
         
-        // #ifndef NO_TIMING_STUFF
-        // start_timer (thisAgent, &thisAgent->start_phase_tv);
-        // #endif
+        phaseTimers.start(Phase.OUTPUT);
         
         beforePhase(Phase.OUTPUT);
         io.do_output_cycle();
@@ -510,14 +528,18 @@ private void doOutputPhase()
         
         this.run_elaboration_count++; // All phases count as a run elaboration
         
+        // In strong reference mode, symbols aren't released by the garbage
+        // collector. Release the ones that dropped out of memory.
+        syms.releaseUnusedSymbols();
+        
         afterPhase(Phase.OUTPUT);
         
-        context.getEvents().fireEvent(new AfterDecisionCycleEvent(context, Phase.OUTPUT));
+        if(context.getEvents().hasListeners(AfterDecisionCycleEvent.class))
+        {
+            context.getEvents().fireEvent(new AfterDecisionCycleEvent(context, Phase.OUTPUT));
+        }
         
-        // #ifndef NO_TIMING_STUFF
-        // stop_timer (thisAgent, &thisAgent->start_phase_tv,
-        // &thisAgent->decision_cycle_phase_timers[OUTPUT_PHASE]);
-        // #endif
+        phaseTimers.stop(Phase.OUTPUT, true);
         
         Phase.OUTPUT.trace(trace, false);
         current_phase.set(Phase.INPUT);
@@ -560,9 +582,7 @@ private void doApplyPhase()
         
         // added in 8.6 to clarify Soar8 decision cycle
         
-        // #ifndef NO_TIMING_STUFF
-        // start_timer (thisAgent, &thisAgent->start_phase_tv);
-        // #endif
+        phaseTimers.start(Phase.APPLY);
         
         /*
          * e_cycle_count will always be zero UNLESS we are running by ELABORATIONS.
@@ -652,9 +672,7 @@ private void doApplyPhase()
             current_phase.set(Phase.OUTPUT);
         }
         
-        // #ifndef NO_TIMING_STUFF
-        // stop_timer (thisAgent, &thisAgent->start_phase_tv, &thisAgent->decision_cycle_phase_timers[APPLY_PHASE]);
-        // #endif
+        phaseTimers.stop(Phase.APPLY, current_phase.get() == Phase.OUTPUT);
         
         // END of Soar8 APPLY PHASE
     }
@@ -670,9 +688,7 @@ private void doProposePhase()
         
         /* added in 8.6 to clarify Soar8 decision cycle */
         
-        // #ifndef NO_TIMING_STUFF
-        // start_timer (thisAgent, &thisAgent->start_phase_tv);
-        // #endif
+        phaseTimers.start(Phase.PROPOSE);
         
         /*
          * e_cycles_this_d_cycle will always be zero UNLESS we are running by ELABORATIONS.
@@ -757,9 +773,7 @@ private void doProposePhase()
             this.current_phase.set(Phase.DECISION);
         }
         
-        // #ifndef NO_TIMING_STUFF
-        // stop_timer (thisAgent, &thisAgent->start_phase_tv, &thisAgent->decision_cycle_phase_timers[PROPOSE_PHASE]);
-        // #endif
+        phaseTimers.stop(Phase.PROPOSE, current_phase.get() == Phase.DECISION);
         
         // END of Soar8 PROPOSE PHASE
     }
@@ -780,9 +794,7 @@ private void doInputPhase()
         this.chunker.chunks_this_d_cycle = 0;
         this.e_cycles_this_d_cycle = 0;
         
-        // #ifndef NO_TIMING_STUFF
-        // start_timer (thisAgent, &thisAgent->start_phase_tv);
-        // #endif
+        phaseTimers.start(Phase.INPUT);
         
         context.getEvents().fireEvent(beforeDecisionCycleEvent);
         
@@ -796,9 +808,7 @@ private void doInputPhase()
         
         Phase.INPUT.trace(trace, false);
         
-        // #ifndef NO_TIMING_STUFF /* REW: 28.07.96 */
-        // stop_timer (thisAgent, &thisAgent->start_phase_tv, &thisAgent->decision_cycle_phase_timers[INPUT_PHASE]);
-        // #endif
+        phaseTimers.stop(Phase.INPUT, true);
         
         current_phase.set(Phase.PROPOSE);
     }
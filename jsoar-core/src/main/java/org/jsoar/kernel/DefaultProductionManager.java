@@ -253,6 +253,32 @@ public Production loadProduction(String productionBody,
      * @see org.jsoar.kernel.ProductionManager#addProduction(org.jsoar.kernel.Production, boolean)
      */
     public ProductionAddResult addProduction(Production p, boolean reorder_nccs) throws ReordererException
+    {
+        return addProduction(p, true, reorder_nccs);
+    }
+    
+    /**
+     * Add a production that has already been reordered, e.g. on another
+     * thread by {@link ParallelProductionLoader}.
+     * 
+     * @param p the production
+     * @return the result of adding the production to the rete
+     * @throws IllegalStateException if the production hasn't been reordered
+     */
+    ProductionAddResult addReorderedProduction(Production p)
+    {
+        try
+        {
+            return addProduction(p, false, false);
+        }
+        catch(ReordererException e)
+        {
+            // Can't happen, the production isn't reordered again
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private ProductionAddResult addProduction(Production p, boolean reorder, boolean reorder_nccs) throws ReordererException
     {
         if(productionsByName.containsValue(p))
         {
@@ -274,10 +300,17 @@ public ProductionAddResult addProduction(Production p, boolean reorder_nccs) thr
         }
         
         // Reorder the production
-        p.reorder(this.syms.getVariableGenerator(),
-                new ConditionReorderer(this.syms.getVariableGenerator(), context.getTrace(), context.getMultiAttributes(), p.getName()),
-                new ActionReorderer(context.getPrinter(), p.getName()),
-                reorder_nccs);
+        if(reorder)
+        {
+            p.reorder(this.syms.getVariableGenerator(),
+                    new ConditionReorderer(this.syms.getVariableGenerator(), context.getTrace(), context.getMultiAttributes(), p.getName()),
+                    new ActionReorderer(context.getPrinter(), p.getName()),
+                    reorder_nccs);
+        }
+        else if(!p.isReordered())
+        {
+            throw new IllegalStateException("Production '" + p.getName() + "' hasn't been reordered");
+        }
         
         validateLongTermIdentifiersInProduction(p);
         
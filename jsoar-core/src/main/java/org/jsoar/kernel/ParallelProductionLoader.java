@@ -0,0 +1,575 @@
+package org.jsoar.kernel;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import org.jsoar.kernel.lhs.Condition;
+import org.jsoar.kernel.lhs.ConditionReorderer;
+import org.jsoar.kernel.lhs.ConjunctiveTest;
+import org.jsoar.kernel.lhs.DisjunctionTest;
+import org.jsoar.kernel.lhs.EqualityTest;
+import org.jsoar.kernel.lhs.MultiAttributes;
+import org.jsoar.kernel.lhs.RelationalTest;
+import org.jsoar.kernel.lhs.Test;
+import org.jsoar.kernel.lhs.ThreeFieldCondition;
+import org.jsoar.kernel.parser.Parser;
+import org.jsoar.kernel.parser.ParserContext;
+import org.jsoar.kernel.parser.ParserException;
+import org.jsoar.kernel.parser.original.OriginalParser;
+import org.jsoar.kernel.rhs.Action;
+import org.jsoar.kernel.rhs.ActionReorderer;
+import org.jsoar.kernel.rhs.MakeAction;
+import org.jsoar.kernel.rhs.ReordererException;
+import org.jsoar.kernel.rhs.RhsFunctionCall;
+import org.jsoar.kernel.rhs.RhsValue;
+import org.jsoar.kernel.rhs.functions.RhsFunctionManager;
+import org.jsoar.kernel.symbols.Symbol;
+import org.jsoar.kernel.symbols.SymbolFactory;
+import org.jsoar.kernel.symbols.SymbolFactoryImpl;
+import org.jsoar.kernel.symbols.SymbolImpl;
+import org.jsoar.kernel.tracing.Printer;
+import org.jsoar.kernel.tracing.Trace;
+import org.jsoar.util.Arguments;
+import org.jsoar.util.ByRef;
+import org.jsoar.util.SourceLocation;
+import org.jsoar.util.adaptables.Adaptables;
+
+/**
+ * Loads many productions at once. Each production is loaded in four steps:
+ * <ol>
+ * <li>it is parsed on a worker thread, with a private {@link SymbolFactoryImpl}
+ * <li>its constants are created in the agent's symbol factory on the agent
+ * thread, in the order the productions were submitted
+ * <li>it is reordered on a worker thread
+ * <li>its remaining symbols are imported and it is added to the rete in
+ * {@link Pending#get()}, on the agent thread
+ * </ol>
+ * 
+ * <p>Calling {@link Pending#get()} in the order the productions were submitted
+ * loads them in source order, while the workers are already preparing the
+ * ones that follow. The agent's constants are created in the same order as
+ * when loading the productions one at a time, and the reorderer breaks ties
+ * between equal cost conditions by their hash ids (see
+ * {@link ConditionReorderer#setCanonicalOrder}), so the result is the same.
+ * 
+ * <p>Output printed while parsing and reordering, e.g. warnings, is collected
+ * and printed to the agent's printer when the production is added.
+ * 
+ * <p>Productions that can't be prepared without the agent are parsed on the
+ * agent thread in {@link Pending#get()}, exactly like
+ * {@link ProductionManager#loadProduction(String, SourceLocation)}. These are
+ * chunks and justifications, productions that refer to identifiers, and all
+ * productions if the agent uses a parser other than {@link OriginalParser}.
+ */
+public class ParallelProductionLoader
+{
+    /**
+     * System property with the number of worker threads. Defaults to the
+     * number of processors. With less than two, {@link #isEnabled()} is false.
+     */
+    public static final String THREADS_PROPERTY = "jsoar.productions.loadThreads";
+    
+    private static final int THREADS = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+    
+    private final Agent agent;
+    private final DefaultProductionManager productions;
+    private final SymbolFactoryImpl syms;
+    private final RhsFunctionManager rhsFunctions;
+    private final Executor executor;
+    
+    /**
+     * Submitted productions whose constants haven't been created in the agent
+     * yet, in the order they were submitted
+     */
+    private final Deque<Pending> unimported = new ArrayDeque<>();
+    private long submitted;
+    private long added;
+    
+    /**
+     * Create a loader that uses a shared pool of daemon threads, see
+     * {@link #THREADS_PROPERTY}.
+     * 
+     * @param agent the agent to load into
+     */
+    public ParallelProductionLoader(Agent agent)
+    {
+        this(agent, Workers.EXECUTOR);
+    }
+    
+    /**
+     * @param agent the agent to load into
+     * @param executor the executor that parses and reorders productions
+     */
+    public ParallelProductionLoader(Agent agent, Executor executor)
+    {
+        Arguments.checkNotNull(agent, "agent");
+        Arguments.checkNotNull(executor, "executor");
+        this.agent = agent;
+        this.productions = (DefaultProductionManager) agent.getProductions();
+        this.syms = Adaptables.require(getClass(), agent, SymbolFactoryImpl.class);
+        this.rhsFunctions = agent.getRhsFunctions();
+        this.executor = executor;
+    }
+    
+    /**
+     * @return true if the {@value #THREADS_PROPERTY} system property, or the
+     *     number of processors, allows more than one worker thread
+     */
+    public static boolean isEnabled()
+    {
+        return THREADS > 1;
+    }
+    
+    /**
+     * Start parsing and reordering a production. This must be called on the
+     * agent thread.
+     * 
+     * @param productionBody the body of the production, i.e. the argument of
+     *     the sp command
+     * @param location the source location of the production
+     * @return a handle that adds the production to the agent
+     */
+    public Pending submit(String productionBody, SourceLocation location)
+    {
+        Arguments.checkNotNull(productionBody, "productionBody");
+        Arguments.checkNotNull(location, "location");
+        final Parser parser = productions.getParser();
+        final CompletableFuture<Prepared> parsed;
+        if(parser instanceof OriginalParser)
+        {
+            // Everything the worker uses is created here, on the agent thread
+            final SymbolFactoryImpl privateSyms = new SymbolFactoryImpl(true);
+            final MultiAttributes multiAttrs = agent.getMultiAttributes().copyInto(privateSyms);
+            parsed = CompletableFuture.supplyAsync(() -> parse(parser, productionBody, location, privateSyms, multiAttrs), executor);
+        }
+        else
+        {
+            parsed = CompletableFuture.completedFuture(null);
+        }
+        final Pending pending = new Pending(productionBody, location, submitted++, parsed);
+        unimported.add(pending);
+        importParsed();
+        return pending;
+    }
+    
+    /**
+     * Drop all submitted productions that haven't been added yet, e.g.
+     * because loading an earlier one failed unexpectedly.
+     */
+    public void discardPending()
+    {
+        unimported.clear();
+        added = submitted;
+    }
+    
+    /**
+     * Parse a production on a worker thread.
+     * 
+     * @return the parsed production, or null if it has to be loaded on the
+     *     agent thread
+     */
+    private Prepared parse(Parser parser, String productionBody, SourceLocation location, SymbolFactoryImpl privateSyms,
+            MultiAttributes multiAttrs)
+    {
+        final Prepared result = new Prepared(privateSyms, multiAttrs);
+        final ParserContext context = new ParserContext()
+        {
+            @Override
+            public Object getAdapter(Class<?> klass)
+            {
+                if(klass.equals(SymbolFactoryImpl.class) || klass.equals(SymbolFactory.class))
+                {
+                    return privateSyms;
+                }
+                if(klass.equals(Printer.class))
+                {
+                    return result.printer;
+                }
+                if(klass.equals(SourceLocation.class))
+                {
+                    return location;
+                }
+                if(klass.equals(RhsFunctionManager.class))
+                {
+                    return rhsFunctions;
+                }
+                return null;
+            }
+        };
+        
+        try
+        {
+            final Production p = parser.parseProduction(context, new StringReader(productionBody));
+            if(p.getType() == ProductionType.CHUNK || p.getType() == ProductionType.JUSTIFICATION)
+            {
+                return null;
+            }
+            
+            final ByRef<Boolean> hasIdentifiers = ByRef.create(false);
+            importSymbols(p, s ->
+            {
+                hasIdentifiers.value |= s.asIdentifier() != null;
+                return s;
+            });
+            if(hasIdentifiers.value)
+            {
+                return null;
+            }
+            result.production = p;
+        }
+        catch(ParserException e)
+        {
+            result.error = e;
+        }
+        return result;
+    }
+    
+    /**
+     * Reorder a parsed production on a worker thread.
+     */
+    private static Prepared reorder(Prepared prepared)
+    {
+        final Production p = prepared.production;
+        final ConditionReorderer reorderer = new ConditionReorderer(prepared.syms.getVariableGenerator(),
+                new Trace(prepared.printer), prepared.multiAttrs, p.getName());
+        reorderer.setCanonicalOrder(constant -> prepared.constants.get(constant).hash_id);
+        try
+        {
+            p.reorder(prepared.syms.getVariableGenerator(), reorderer, new ActionReorderer(prepared.printer, p.getName()), true);
+        }
+        catch(ReordererException e)
+        {
+            prepared.error = e;
+        }
+        return prepared;
+    }
+    
+    /**
+     * Create the constants of parsed productions in the agent and start
+     * reordering them, in the order they were submitted. Stops at the first
+     * production that isn't parsed yet, or that has to be loaded on the
+     * agent thread.
+     */
+    private void importParsed()
+    {
+        for(Pending p = unimported.peek(); p != null && p.parsed.isDone() && p.importConstants(); p = unimported.peek())
+        {
+            unimported.remove();
+        }
+    }
+    
+    /**
+     * Create the constants of a parsed production in the agent, in the order
+     * loading it on the agent thread would have created them.
+     */
+    private void importConstants(Prepared prepared)
+    {
+        final List<Symbol> constants = prepared.syms.getAllSymbols();
+        constants.removeIf(s -> !((SymbolImpl) s).symbol_is_constant());
+        constants.sort(Comparator.comparingInt(s -> ((SymbolImpl) s).hash_id));
+        for(Symbol s : constants)
+        {
+            prepared.constants.put((SymbolImpl) s, (SymbolImpl) syms.importSymbol(s));
+        }
+    }
+    
+    /**
+     * Replace the symbols in the conditions and actions of a production.
+     * Tests and RHS values that are shared with other productions are
+     * replaced rather than modified.
+     */
+    private static void importSymbols(Production p, UnaryOperator<SymbolImpl> f)
+    {
+        importSymbols(p.getFirstCondition(), f);
+        for(Action a = p.getFirstAction(); a != null; a = a.next)
+        {
+            final MakeAction ma = a.asMakeAction();
+            if(ma != null)
+            {
+                ma.id = importSymbols(ma.id, f);
+                ma.attr = importSymbols(ma.attr, f);
+                ma.value = importSymbols(ma.value, f);
+                ma.referent = importSymbols(ma.referent, f);
+            }
+            else
+            {
+                a.asFunctionAction().call = importSymbols(a.asFunctionAction().call, f).asFunctionCall();
+            }
+        }
+    }
+    
+    private static void importSymbols(Condition c, UnaryOperator<SymbolImpl> f)
+    {
+        for(; c != null; c = c.next)
+        {
+            final ThreeFieldCondition tfc = c.asThreeFieldCondition();
+            if(tfc != null)
+            {
+                tfc.id_test = importSymbols(tfc.id_test, f);
+                tfc.attr_test = importSymbols(tfc.attr_test, f);
+                tfc.value_test = importSymbols(tfc.value_test, f);
+            }
+            else
+            {
+                importSymbols(c.asConjunctiveNegationCondition().top, f);
+            }
+        }
+    }
+    
+    private static Test importSymbols(Test t, UnaryOperator<SymbolImpl> f)
+    {
+        if(t == null)
+        {
+            return null;
+        }
+        final EqualityTest eq = t.asEqualityTest();
+        if(eq != null)
+        {
+            return f.apply(eq.getReferent());
+        }
+        final RelationalTest rt = t.asRelationalTest();
+        if(rt != null)
+        {
+            return rt.withNewReferent(f.apply(rt.referent));
+        }
+        final DisjunctionTest dt = t.asDisjunctionTest();
+        if(dt != null)
+        {
+            final SymbolImpl[] disjuncts = dt.disjunction_list.toArray(new SymbolImpl[0]);
+            boolean changed = false;
+            for(int i = 0; i < disjuncts.length; ++i)
+            {
+                final SymbolImpl s = f.apply(disjuncts[i]);
+                changed |= s != disjuncts[i];
+                disjuncts[i] = s;
+            }
+            return changed ? new DisjunctionTest(Collections.unmodifiableList(Arrays.asList(disjuncts))) : dt;
+        }
+        final ConjunctiveTest ct = t.asConjunctiveTest();
+        if(ct != null)
+        {
+            ct.conjunct_list.replaceAll(c -> importSymbols(c, f));
+        }
+        return t;
+    }
+    
+    private static RhsValue importSymbols(RhsValue v, UnaryOperator<SymbolImpl> f)
+    {
+        if(v == null)
+        {
+            return null;
+        }
+        if(v.asSymbolValue() != null)
+        {
+            return v.asSymbolValue().setSymbol(f.apply(v.asSymbolValue().getSym()));
+        }
+        final RhsFunctionCall call = v.asFunctionCall();
+        if(call == null)
+        {
+            return v;
+        }
+        call.getArguments().replaceAll(arg -> importSymbols(arg, f));
+        final SymbolImpl name = f.apply((SymbolImpl) call.getName());
+        if(name == call.getName())
+        {
+            return call;
+        }
+        final RhsFunctionCall result = new RhsFunctionCall(name.asString(), call.isStandalone());
+        call.getArguments().forEach(result::addArgument);
+        return result;
+    }
+    
+    private static <T> T join(CompletableFuture<T> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch(CompletionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * A production that is being prepared by a worker thread.
+     */
+    public class Pending
+    {
+        private final String productionBody;
+        private final SourceLocation location;
+        private final long index;
+        private final CompletableFuture<Prepared> parsed;
+        private CompletableFuture<Prepared> reordered;
+        
+        private Pending(String productionBody, SourceLocation location, long index, CompletableFuture<Prepared> parsed)
+        {
+            this.productionBody = productionBody;
+            this.location = location;
+            this.index = index;
+            this.parsed = parsed;
+        }
+        
+        /**
+         * @return true if {@link #get()} won't have to wait for a worker
+         */
+        public boolean isDone()
+        {
+            if(reordered != null)
+            {
+                return reordered.isDone();
+            }
+            return parsed.isDone() && join(parsed) == null;
+        }
+        
+        /**
+         * Wait for the production to be prepared and add it to the agent. This
+         * must be called on the agent thread, once for each production, in the
+         * order they were submitted. Behaves like
+         * {@link ProductionManager#loadProduction(String, SourceLocation)}.
+         * 
+         * @return the production
+         * @throws ReordererException if the production can't be reordered
+         * @throws ParserException if the production can't be parsed
+         * @throws IllegalStateException if called more than once, or before
+         *     the productions submitted earlier have been added
+         */
+        public Production get() throws ReordererException, ParserException
+        {
+            if(index < added)
+            {
+                throw new IllegalStateException("Production already added or discarded: " + location);
+            }
+            if(index > added)
+            {
+                throw new IllegalStateException("Productions submitted earlier must be added first: " + location);
+            }
+            added++;
+            
+            if(reordered == null)
+            {
+                // All earlier productions have been imported, so this is next
+                unimported.remove();
+                if(!importConstants())
+                {
+                    final Production p = productions.loadProduction(productionBody, location);
+                    importParsed();
+                    return p;
+                }
+            }
+            importParsed();
+            
+            final Prepared prepared = join(reordered);
+            final Printer printer = agent.getPrinter();
+            prepared.printer.flush();
+            printer.print(prepared.output.toString());
+            for(String warning : prepared.printer.getWarningsAndClear())
+            {
+                printer.warn(warning);
+            }
+            if(prepared.error instanceof ParserException)
+            {
+                throw (ParserException) prepared.error;
+            }
+            if(prepared.error != null)
+            {
+                throw (ReordererException) prepared.error;
+            }
+            
+            final Production p = prepared.production;
+            importSymbols(p, s -> s.asVariable() != null ? syms.make_variable(s.asVariable().name) : prepared.constants.get(s));
+            productions.addReorderedProduction(p);
+            return p;
+        }
+        
+        /**
+         * Create the constants of the parsed production in the agent and start
+         * reordering it.
+         * 
+         * @return false if the production has to be loaded on the agent thread
+         */
+        private boolean importConstants()
+        {
+            final Prepared prepared = join(parsed);
+            if(prepared == null)
+            {
+                return false;
+            }
+            ParallelProductionLoader.this.importConstants(prepared);
+            reordered = prepared.production != null
+                    ? CompletableFuture.supplyAsync(() -> reorder(prepared), executor)
+                    : CompletableFuture.completedFuture(prepared);
+            return true;
+        }
+    }
+    
+    private static class Prepared
+    {
+        final SymbolFactoryImpl syms;
+        final MultiAttributes multiAttrs;
+        final StringWriter output = new StringWriter();
+        final Printer printer = new Printer(output);
+        
+        /**
+         * The agent's symbols for the constants in {@link #syms}
+         */
+        final Map<SymbolImpl, SymbolImpl> constants = new HashMap<>();
+        Production production;
+        Exception error;
+        
+        Prepared(SymbolFactoryImpl syms, MultiAttributes multiAttrs)
+        {
+            this.syms = syms;
+            this.multiAttrs = multiAttrs;
+            printer.setPrintWarnings(false);
+        }
+    }
+    
+    private static class Workers
+    {
+        static final ExecutorService EXECUTOR = createExecutor();
+        
+        private static ExecutorService createExecutor()
+        {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(THREADS, 1), Math.max(THREADS, 1),
+                    10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new WorkerThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+    
+    private static class WorkerThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            final Thread thread = new Thread(r, "Production loader worker " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
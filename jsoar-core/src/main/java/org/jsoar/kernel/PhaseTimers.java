@@ -0,0 +1,176 @@
+package org.jsoar.kernel;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.jsoar.util.properties.BooleanPropertyProvider;
+import org.jsoar.util.timing.DefaultExecutionTimer;
+import org.jsoar.util.timing.ExecutionTimer;
+import org.jsoar.util.timing.LatencyHistogram;
+
+/**
+ * Per-phase timing for the decision cycle. This is the equivalent of
+ * CSoar's {@code decision_cycle_phase_timers}, plus a latency histogram for
+ * each phase and for each complete decision cycle (input through output).
+ * 
+ * <p>Timing is off by default and is controlled by the
+ * {@link SoarProperties#PHASE_TIMERS} property. When off, the cost to the
+ * decision cycle is a single flag check at the start and end of each phase.
+ * 
+ * <p>A phase that is split across several runs (e.g. when running by
+ * elaborations) is recorded in its histogram as a single sample when it
+ * completes. Likewise, the cycle histogram records the time actually spent
+ * in the phases of a cycle, not time spent stopped between runs. Histogram
+ * values are in nanoseconds.
+ * 
+ * @see Agent#getPhaseTimers()
+ * @see org.jsoar.kernel.commands.StatsCommand
+ */
+public class PhaseTimers
+{
+    final BooleanPropertyProvider enabled = new BooleanPropertyProvider(SoarProperties.PHASE_TIMERS)
+    {
+        @Override
+        public Boolean set(Boolean value)
+        {
+            // Don't let a partially timed phase or cycle leak into the histograms
+            discardPartial();
+            return super.set(value);
+        }
+    };
+    
+    private final Map<Phase, ExecutionTimer> timers = new EnumMap<>(Phase.class);
+    private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+    private final LatencyHistogram cycleHistogram = new LatencyHistogram();
+    
+    private Phase running;
+    private long startNanos;
+    private long phaseNanos;
+    private long cycleNanos;
+    private boolean cycleStarted;
+    
+    PhaseTimers()
+    {
+        for(Phase phase : Phase.values())
+        {
+            timers.put(phase, DefaultExecutionTimer.newInstance().setName(phase + " phase"));
+            histograms.put(phase, new LatencyHistogram());
+        }
+    }
+    
+    /**
+     * @return true if phase timing is currently enabled
+     */
+    public boolean isEnabled()
+    {
+        return enabled.value.get();
+    }
+    
+    /**
+     * @param phase the phase
+     * @return the accumulated time spent in the given phase
+     */
+    public ExecutionTimer getTimer(Phase phase)
+    {
+        return timers.get(phase);
+    }
+    
+    /**
+     * @param phase the phase
+     * @return histogram of the latency of each completed instance of the
+     *     given phase, in nanoseconds
+     */
+    public LatencyHistogram getHistogram(Phase phase)
+    {
+        return histograms.get(phase);
+    }
+    
+    /**
+     * @return histogram of the latency of each completed decision cycle, in
+     *     nanoseconds
+     */
+    public LatencyHistogram getCycleHistogram()
+    {
+        return cycleHistogram;
+    }
+    
+    /**
+     * Reset all timers and histograms
+     */
+    public void reset()
+    {
+        discardPartial();
+        for(Phase phase : Phase.values())
+        {
+            timers.get(phase).reset();
+            histograms.get(phase).reset();
+        }
+        cycleHistogram.reset();
+    }
+    
+    /**
+     * Called by the decision cycle when it starts, or resumes, a phase
+     * 
+     * @param phase the phase
+     */
+    void start(Phase phase)
+    {
+        if(!enabled.value.get())
+        {
+            return;
+        }
+        if(phase == Phase.INPUT)
+        {
+            cycleNanos = 0;
+            cycleStarted = true;
+        }
+        running = phase;
+        timers.get(phase).start();
+        startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Called by the decision cycle when it leaves a phase
+     * 
+     * @param phase the phase
+     * @param complete true if the phase is finished, false if it is
+     *     stopping early and will be resumed by a later run
+     */
+    void stop(Phase phase, boolean complete)
+    {
+        if(running != phase)
+        {
+            // Timing was disabled, or enabled part way through the phase
+            return;
+        }
+        final long elapsed = System.nanoTime() - startNanos;
+        timers.get(phase).pause();
+        running = null;
+        phaseNanos += elapsed;
+        cycleNanos += elapsed;
+        if(complete)
+        {
+            histograms.get(phase).record(phaseNanos);
+            phaseNanos = 0;
+            if(phase == Phase.OUTPUT && cycleStarted)
+            {
+                cycleHistogram.record(cycleNanos);
+                cycleStarted = false;
+            }
+        }
+    }
+    
+    private void discardPartial()
+    {
+        // The phase's timer keeps the time spent so far, but stop() won't
+        // pause it anymore
+        if(running != null)
+        {
+            timers.get(running).pause();
+        }
+        running = null;
+        phaseNanos = 0;
+        cycleNanos = 0;
+        cycleStarted = false;
+    }
+}
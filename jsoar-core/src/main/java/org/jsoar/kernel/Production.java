@@ -489,6 +489,15 @@ public void reorder(VariableGenerator varGen, ConditionReorderer cr, ActionReord
         reordered = true;
     }
     
+    /**
+     * @return true if {@link #reorder(VariableGenerator, ConditionReorderer, ActionReorderer, boolean)}
+     *     has been called
+     */
+    public boolean isReordered()
+    {
+        return reordered;
+    }
+    
     public List<Variable> getRhsUnboundVariables()
     {
         return rhs_unbound_variables != null ? rhs_unbound_variables : EMPTY_RHS_UNBOUND_VARS_LIST;
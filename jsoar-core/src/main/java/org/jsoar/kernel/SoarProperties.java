@@ -42,6 +42,15 @@
      */
     public static final PropertyKey<Boolean> WAITSNC = PropertyKey.builder("waitsnc", Boolean.class).defaultValue(false).build();
     
+    /**
+     * Whether per-phase decision cycle timers and latency histograms are
+     * being collected. Off by default.
+     * 
+     * @see PhaseTimers
+     * @see org.jsoar.kernel.commands.SoarSettingsCommand.PhaseTimers
+     */
+    public static final PropertyKey<Boolean> PHASE_TIMERS = PropertyKey.builder("phase-timers", Boolean.class).defaultValue(false).build();
+    
     /**
      * <p>gsysparams.h::MAX_NIL_OUTPUT_CYCLES_SYSPARAM
      * 
@@ -9,6 +9,8 @@
 import org.jsoar.kernel.Agent;
 import org.jsoar.kernel.SoarException;
 import org.jsoar.kernel.commands.PrintCommand.Print;
+import org.jsoar.util.AsyncWriter;
+import org.jsoar.util.AsyncWriter.OverflowPolicy;
 import org.jsoar.util.TeeWriter;
 import org.jsoar.util.commands.PicocliSoarCommand;
 
@@ -71,6 +73,13 @@ static public class Log implements Runnable
         @Option(names = { "-c", "--close" }, arity = "0..1", defaultValue = "false", description = "Closes the log file")
         boolean close;
         
+        @Option(names = { "-a", "--async" }, defaultValue = "false", description = "Writes the log file on a background thread")
+        boolean async;
+        
+        @Option(names = { "--drop" }, defaultValue = "false", description = "Drops output instead of waiting when the background "
+                + "thread falls behind. Implies --async")
+        boolean drop;
+        
         @Parameters(index = "0", arity = "0..1", description = "File name")
         String fileName;
         
@@ -85,9 +94,20 @@ public void run()
                 }
                 else
                 {
-                    parent.writerStack.pop();
+                    final Writer w = parent.writerStack.pop();
                     parent.agent.getPrinter().popWriter();
-                    parent.agent.getPrinter().startNewLine().print("Log file closed.");
+                    try
+                    {
+                        if(w != null)
+                        {
+                            w.close();
+                        }
+                        parent.agent.getPrinter().startNewLine().print("Log file closed.");
+                    }
+                    catch(IOException e)
+                    {
+                        parent.agent.getPrinter().startNewLine().print("Failed to close log file: " + e.getMessage());
+                    }
                 }
             }
             else if(fileName != null)
@@ -113,6 +133,10 @@ else if(fileName.equals("stderr"))
                     try
                     {
                         Writer w = new FileWriter(fileName);
+                        if(async || drop)
+                        {
+                            w = new AsyncWriter(w, AsyncWriter.DEFAULT_CAPACITY, drop ? OverflowPolicy.DROP : OverflowPolicy.BLOCK);
+                        }
                         parent.writerStack.push(w);
                         parent.agent.getPrinter().pushWriter(new TeeWriter(
                                 parent.agent.getPrinter().getWriter(), w));
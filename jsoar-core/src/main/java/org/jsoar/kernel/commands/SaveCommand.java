@@ -57,6 +57,9 @@ static public class ReteNet implements Runnable
         @Option(names = { "-s", "--save" }, arity = "1", description = "File name to save rete-net to")
         String fileName;
         
+        @Option(names = { "-c", "--compiled" }, description = "Save in the compiled format, which can be memory-mapped when it's loaded")
+        boolean compiled;
+        
         @Override
         public void run()
         {
@@ -67,7 +70,14 @@ public void run()
             
             try(OutputStream os = compressIfNeeded(fileName, new FileOutputStream(fileName)))
             {
-                ReteSerializer.saveRete(parent.agent, os);
+                if(compiled)
+                {
+                    ReteSerializer.saveCompiledRete(parent.agent, os);
+                }
+                else
+                {
+                    ReteSerializer.saveRete(parent.agent, os);
+                }
             }
             catch(IOException e)
             {
@@ -36,6 +36,7 @@ public SoarSettingsCommand(ThreadedAgent tAgent)
     @Command(name = "soar", description = "Commands and settings related to running Soar", subcommands = { HelpCommand.class,
             SoarSettingsCommand.Init.class,
             SoarSettingsCommand.MaxElaborations.class,
+            SoarSettingsCommand.PhaseTimers.class,
             SoarSettingsCommand.Stop.class,
             SoarSettingsCommand.StopPhase.class,
             SoarSettingsCommand.Timers.class,
@@ -109,6 +110,39 @@ public void run()
         }
     }
     
+    @Command(name = "phase-timers", description = "Collect per-phase timers and latency histograms", subcommands = { HelpCommand.class })
+    static public class PhaseTimers implements Runnable
+    {
+        @ParentCommand
+        Soar parent; // injected by picocli
+        
+        @Option(names = { "on", "-e", "--on", "--enable" }, defaultValue = "false", description = "Enables phase timers")
+        boolean enable;
+        
+        @Option(names = { "off", "-d", "--off", "--disable" }, defaultValue = "false", description = "Disables phase timers")
+        boolean disable;
+        
+        @Override
+        public void run()
+        {
+            if(!enable && !disable)
+            {
+                parent.agent.getPrinter().print("phase-timers is " +
+                        (parent.agent.getProperties().get(SoarProperties.PHASE_TIMERS) ? "on" : "off"));
+            }
+            else if(enable)
+            {
+                parent.agent.getProperties().set(SoarProperties.PHASE_TIMERS, true);
+                parent.agent.getPrinter().print("Phase timers are now enabled. Use 'stats --phases' to print them.");
+            }
+            else
+            {
+                parent.agent.getProperties().set(SoarProperties.PHASE_TIMERS, false);
+                parent.agent.getPrinter().print("Phase timers are now disabled.");
+            }
+        }
+    }
+    
     @Command(name = "stop", description = "Stop Soar execution", subcommands = { HelpCommand.class })
     static public class Stop implements Runnable
     {
@@ -1,6 +1,11 @@
 package org.jsoar.kernel.commands;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.ParallelProductionLoader;
+import org.jsoar.kernel.Production;
 import org.jsoar.kernel.SoarException;
 import org.jsoar.kernel.parser.ParserException;
 import org.jsoar.kernel.rhs.ReordererException;
@@ -19,6 +24,15 @@
  */
 public class SpCommand extends PicocliSoarCommand
 {
+    /**
+     * Deferred productions are added without waiting for later ones to be
+     * prepared, but at most this many wait to be added
+     */
+    private static final int MAX_DEFERRED = 1024;
+    
+    private final Deque<Deferred> deferred = new ArrayDeque<>();
+    private ParallelProductionLoader loader;
+    
     public SpCommand(Agent agent)
     {
         super(agent, new Sp(agent));
@@ -32,6 +46,95 @@ public String execute(SoarCommandContext context, String[] args) throws SoarExce
         return super.execute(context, args);
     }
     
+    /**
+     * Start loading the production of an sp command on a worker thread, see
+     * {@link ParallelProductionLoader}. The production is added to the agent
+     * by a later call to this method or to {@link #flush()}, in the order the
+     * commands were deferred. {@link #flush()} must be called before any other
+     * command is executed, so that it sees all the productions before it.
+     * 
+     * @param context the context of the command
+     * @param args the arguments of the command, like {@link #execute(SoarCommandContext, String[])}
+     * @return true if the command was deferred, false if it has to be executed
+     *     normally
+     * @throws SoarException if adding an earlier production failed
+     */
+    public boolean defer(SoarCommandContext context, String[] args) throws SoarException
+    {
+        if(args.length != 2 || args[1].equals("help") || !ParallelProductionLoader.isEnabled())
+        {
+            return false;
+        }
+        if(loader == null)
+        {
+            loader = new ParallelProductionLoader(agent);
+        }
+        deferred.add(new Deferred(context, args[1], loader.submit(args[1], context.getSourceLocation())));
+        
+        // Add the productions that are ready so far
+        while(!deferred.isEmpty() && (deferred.peek().pending.isDone() || deferred.size() > MAX_DEFERRED))
+        {
+            add(deferred.poll());
+        }
+        return true;
+    }
+    
+    /**
+     * Add the productions of all deferred sp commands to the agent.
+     * 
+     * @throws SoarException if adding a production failed. Productions after
+     *     it are dropped, as if the commands had been executed normally.
+     * @see #defer(SoarCommandContext, String[])
+     */
+    public void flush() throws SoarException
+    {
+        if(deferred.isEmpty())
+        {
+            return;
+        }
+        while(!deferred.isEmpty())
+        {
+            add(deferred.poll());
+        }
+        if(autoFlush)
+        {
+            agent.getPrinter().flush();
+        }
+    }
+    
+    private void add(Deferred d) throws SoarException
+    {
+        try
+        {
+            Sp.load(agent, d.context, d.production, d.pending::get);
+        }
+        catch(RuntimeException e)
+        {
+            deferred.clear();
+            loader.discardPending();
+            throw new SoarException(e);
+        }
+    }
+    
+    private static class Deferred
+    {
+        final SoarCommandContext context;
+        final String production;
+        final ParallelProductionLoader.Pending pending;
+        
+        Deferred(SoarCommandContext context, String production, ParallelProductionLoader.Pending pending)
+        {
+            this.context = context;
+            this.production = production;
+            this.pending = pending;
+        }
+    }
+    
+    private interface ProductionSource
+    {
+        Production load() throws ReordererException, ParserException;
+    }
+    
     @Command(name = "sp", description = "Define a Soar production", subcommands = { HelpCommand.class })
     static public class Sp implements Runnable
     {
@@ -62,19 +165,24 @@ public void run()
             }
             else
             {
-                try
-                {
-                    agent.getProductions().loadProduction(production, context.getSourceLocation());
-                    agent.getPrinter().print("*");
-                    SoarExceptionsManager exceptionsManager = agent.getInterpreter().getExceptionsManager();
-                    agent.getPrinter().getWarningsAndClear().forEach(warning -> exceptionsManager.addException(warning, context, production));
-                }
-                catch(ReordererException | ParserException e)
-                {
-                    agent.getPrinter().startNewLine().print(
-                            context.getSourceLocation() + ":" + e.getMessage());
-                    agent.getInterpreter().getExceptionsManager().addException(e, context, production);
-                }
+                load(agent, context, production, () -> agent.getProductions().loadProduction(production, context.getSourceLocation()));
+            }
+        }
+        
+        private static void load(Agent agent, SoarCommandContext context, String production, ProductionSource source)
+        {
+            try
+            {
+                source.load();
+                agent.getPrinter().print("*");
+                SoarExceptionsManager exceptionsManager = agent.getInterpreter().getExceptionsManager();
+                agent.getPrinter().getWarningsAndClear().forEach(warning -> exceptionsManager.addException(warning, context, production));
+            }
+            catch(ReordererException | ParserException e)
+            {
+                agent.getPrinter().startNewLine().print(
+                        context.getSourceLocation() + ":" + e.getMessage());
+                agent.getInterpreter().getExceptionsManager().addException(e, context, production);
             }
         }
     }
@@ -4,11 +4,14 @@
 
 import org.jsoar.kernel.Agent;
 import org.jsoar.kernel.JSoarVersion;
+import org.jsoar.kernel.Phase;
+import org.jsoar.kernel.PhaseTimers;
 import org.jsoar.kernel.ProductionType;
 import org.jsoar.kernel.SoarProperties;
 import org.jsoar.kernel.tracing.Printer;
 import org.jsoar.util.commands.PicocliSoarCommand;
 import org.jsoar.util.properties.PropertyManager;
+import org.jsoar.util.timing.LatencyHistogram;
 
 import picocli.CommandLine.Command;
 import picocli.CommandLine.HelpCommand;
@@ -40,9 +43,18 @@ public Stats(Agent agent)
         @Option(names = { "-s", "--system" }, defaultValue = "false", description = "Prints system statistics")
         boolean printSystemStats;
         
+        @Option(names = { "-p", "--phases" }, defaultValue = "false", description = "Prints per-phase timers and latency percentiles (see 'soar phase-timers')")
+        boolean printPhaseStats;
+        
         @Override
         public void run()
         {
+            if(printPhaseStats)
+            {
+                printPhaseStats();
+                return;
+            }
+            
             final Printer p = agent.getPrinter();
             p.startNewLine();
             
@@ -98,5 +110,38 @@ public void run()
                     num_wm_sizes_accumulated != 0 ? ((double) props.get(SoarProperties.CUMULATIVE_WM_SIZE).intValue() / num_wm_sizes_accumulated) : 0.0,
                     props.get(SoarProperties.MAX_WM_SIZE));
         }
+        
+        private void printPhaseStats()
+        {
+            final Printer p = agent.getPrinter();
+            p.startNewLine();
+            
+            final PhaseTimers timers = agent.getPhaseTimers();
+            if(!timers.isEnabled())
+            {
+                p.print("Phase timers are disabled. Use 'soar phase-timers on' to enable them.%n");
+            }
+            
+            p.print("%-9s %10s %12s %10s %10s %10s %10s %10s%n", "Phase", "Count", "Total (s)", "Mean (us)", "50% (us)", "99% (us)", "99.9% (us)", "Max (us)");
+            for(Phase phase : Phase.values())
+            {
+                printPhaseRow(p, phase.toString(), timers.getTimer(phase).getTotalSeconds(), timers.getHistogram(phase));
+            }
+            final LatencyHistogram cycles = timers.getCycleHistogram();
+            printPhaseRow(p, "Cycle", cycles.getTotal() / 1e9, cycles);
+        }
+        
+        private static void printPhaseRow(Printer p, String name, double totalSeconds, LatencyHistogram h)
+        {
+            p.print("%-9s %10d %12.6f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    name,
+                    h.getCount(),
+                    totalSeconds,
+                    h.getMean() / 1000.0,
+                    h.getValueAtPercentile(50.0) / 1000.0,
+                    h.getValueAtPercentile(99.0) / 1000.0,
+                    h.getValueAtPercentile(99.9) / 1000.0,
+                    h.getMax() / 1000.0);
+        }
     }
 }
@@ -0,0 +1,715 @@
+package org.jsoar.kernel.epmem;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * {@link EpisodicMemoryStore} that hands the interval writes of episode
+ * storage to a single background writer thread, so that recording an
+ * episode doesn't wait for them.
+ * 
+ * <p>Writes whose results the agent needs right away, i.e. the symbol
+ * hashes, the wme ids and lti promotions, still go straight to the
+ * underlying store. The rest are the {@code _now}, {@code _point} and
+ * {@code _range} inserts and deletes, the {@code last_episode_id} updates,
+ * the episode, node and variable rows. None of them are read back while an
+ * episode is being encoded, so they are queued in order and the writer
+ * applies them in batches.
+ * 
+ * <p>Everything that reads what the writer writes, i.e. retrieval, episode
+ * reconstruction and the bookkeeping queries, first waits until the writer
+ * has caught up with everything queued so far. Since the agent queues an
+ * episode's writes before it moves on, that watermark is the last stored
+ * episode. The agent thread only blocks on that wait and when the queue is
+ * full.
+ * 
+ * <p>A failed write doesn't stop the writer. The first failure is thrown,
+ * wrapped, from the next call on the agent thread.
+ */
+class AsyncEpisodicMemoryStore implements EpisodicMemoryStore
+{
+    /**
+     * The most writes the agent may get ahead of the writer before it blocks
+     */
+    private static final int MAX_PENDING = 1 << 16;
+    
+    /**
+     * The most writes the writer applies in one go
+     */
+    private static final int MAX_BATCH = 1024;
+    
+    private interface Write
+    {
+        void apply(EpisodicMemoryStore store) throws SQLException;
+    }
+    
+    private static final Write STOP = store -> {};
+    
+    private final EpisodicMemoryStore delegate;
+    private final BlockingQueue<Write> queue = new LinkedBlockingQueue<>(MAX_PENDING);
+    private final WriterThread writer = new WriterThread();
+    
+    /**
+     * Guards the delegate and the fields below
+     */
+    private final Object lock = new Object();
+    private long submitted = 0;
+    private long written = 0;
+    private SQLException failure = null;
+    
+    /**
+     * @param delegate the store that the writes end up in. It is only used
+     *     with the lock held, so it needn't be thread-safe.
+     */
+    AsyncEpisodicMemoryStore(EpisodicMemoryStore delegate)
+    {
+        this.delegate = delegate;
+        writer.start();
+    }
+    
+    @Override
+    public Long var_get(long variable_id) throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return delegate.var_get(variable_id);
+        }
+    }
+    
+    @Override
+    public void var_set(long variable_id, long variable_value) throws SQLException
+    {
+        submit(store -> store.var_set(variable_id, variable_value));
+    }
+    
+    @Override
+    public void rit_add_left(long rit_min, long rit_max) throws SQLException
+    {
+        synchronized(lock)
+        {
+            delegate.rit_add_left(rit_min, rit_max);
+        }
+    }
+    
+    @Override
+    public void rit_truncate_left() throws SQLException
+    {
+        synchronized(lock)
+        {
+            delegate.rit_truncate_left();
+        }
+    }
+    
+    @Override
+    public void rit_add_right(long rit_id) throws SQLException
+    {
+        synchronized(lock)
+        {
+            delegate.rit_add_right(rit_id);
+        }
+    }
+    
+    @Override
+    public void rit_truncate_right() throws SQLException
+    {
+        synchronized(lock)
+        {
+            delegate.rit_truncate_right();
+        }
+    }
+    
+    @Override
+    public long hash_get_int(long value) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.hash_get_int(value);
+        }
+    }
+    
+    @Override
+    public long hash_get_float(double value) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.hash_get_float(value);
+        }
+    }
+    
+    @Override
+    public long hash_get_str(String value) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.hash_get_str(value);
+        }
+    }
+    
+    @Override
+    public Integer hash_get_type(long s_id) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.hash_get_type(s_id);
+        }
+    }
+    
+    @Override
+    public long hash_add_type(int symbol_type) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.hash_add_type(symbol_type);
+        }
+    }
+    
+    @Override
+    public void hash_add_int(long s_id, long value) throws SQLException
+    {
+        synchronized(lock)
+        {
+            delegate.hash_add_int(s_id, value);
+        }
+    }
+    
+    @Override
+    public void hash_add_float(long s_id, double value) throws SQLException
+    {
+        synchronized(lock)
+        {
+            delegate.hash_add_float(s_id, value);
+        }
+    }
+    
+    @Override
+    public void hash_add_str(long s_id, String value) throws SQLException
+    {
+        synchronized(lock)
+        {
+            delegate.hash_add_str(s_id, value);
+        }
+    }
+    
+    @Override
+    public Long hash_rev_int(long s_id) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.hash_rev_int(s_id);
+        }
+    }
+    
+    @Override
+    public Double hash_rev_float(long s_id) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.hash_rev_float(s_id);
+        }
+    }
+    
+    @Override
+    public String hash_rev_str(long s_id) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.hash_rev_str(s_id);
+        }
+    }
+    
+    @Override
+    public void add_node(long n_id) throws SQLException
+    {
+        submit(store -> store.add_node(n_id));
+    }
+    
+    @Override
+    public void add_time(long episode_id) throws SQLException
+    {
+        submit(store -> store.add_time(episode_id));
+    }
+    
+    @Override
+    public void add_epmem_wmes_constant_now(long wc_id, long start_episode_id) throws SQLException
+    {
+        submit(store -> store.add_epmem_wmes_constant_now(wc_id, start_episode_id));
+    }
+    
+    @Override
+    public void delete_epmem_wmes_constant_now(long wc_id) throws SQLException
+    {
+        submit(store -> store.delete_epmem_wmes_constant_now(wc_id));
+    }
+    
+    @Override
+    public void add_epmem_wmes_constant_point(long wc_id, long episode_id) throws SQLException
+    {
+        submit(store -> store.add_epmem_wmes_constant_point(wc_id, episode_id));
+    }
+    
+    @Override
+    public void add_epmem_wmes_constant_range(long rit_id, long start_episode_id, long end_episode_id, long wc_id) throws SQLException
+    {
+        submit(store -> store.add_epmem_wmes_constant_range(rit_id, start_episode_id, end_episode_id, wc_id));
+    }
+    
+    @Override
+    public long add_epmem_wmes_constant(long parent_n_id, long attribute_s_id, long value_s_id) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.add_epmem_wmes_constant(parent_n_id, attribute_s_id, value_s_id);
+        }
+    }
+    
+    @Override
+    public long find_epmem_wmes_constant(long parent_n_id, long attribute_s_id, long value_s_id) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.find_epmem_wmes_constant(parent_n_id, attribute_s_id, value_s_id);
+        }
+    }
+    
+    @Override
+    public void add_epmem_wmes_identifier_now(long wi_id, long start_episode_id) throws SQLException
+    {
+        submit(store -> store.add_epmem_wmes_identifier_now(wi_id, start_episode_id));
+    }
+    
+    @Override
+    public void delete_epmem_wmes_identifier_now(long wi_id) throws SQLException
+    {
+        submit(store -> store.delete_epmem_wmes_identifier_now(wi_id));
+    }
+    
+    @Override
+    public void add_epmem_wmes_identifier_point(long wi_id, long episode_id) throws SQLException
+    {
+        submit(store -> store.add_epmem_wmes_identifier_point(wi_id, episode_id));
+    }
+    
+    @Override
+    public void add_epmem_wmes_identifier_range(long rit_id, long start_episode_id, long end_episode_id, long wi_id) throws SQLException
+    {
+        submit(store -> store.add_epmem_wmes_identifier_range(rit_id, start_episode_id, end_episode_id, wi_id));
+    }
+    
+    @Override
+    public long add_epmem_wmes_identifier(long parent_n_id, long attribute_s_id, long child_n_id, long last_episode_id) throws SQLException
+    {
+        // the row must exist before its last_episode_id is updated, which
+        // is the case since it's inserted right away and updates are queued
+        synchronized(lock)
+        {
+            return delegate.add_epmem_wmes_identifier(parent_n_id, attribute_s_id, child_n_id, last_episode_id);
+        }
+    }
+    
+    @Override
+    public long find_epmem_wmes_identifier_shared(long parent_n_id, long attribute_s_id, long child_n_id) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.find_epmem_wmes_identifier_shared(parent_n_id, attribute_s_id, child_n_id);
+        }
+    }
+    
+    @Override
+    public void update_epmem_wmes_identifier_last_episode_id(long wi_id, long last_episode_id) throws SQLException
+    {
+        submit(store -> store.update_epmem_wmes_identifier_last_episode_id(wi_id, last_episode_id));
+    }
+    
+    @Override
+    public boolean valid_episode(long episode_id) throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return delegate.valid_episode(episode_id);
+        }
+    }
+    
+    @Override
+    public long next_episode(long episode_id) throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return delegate.next_episode(episode_id);
+        }
+    }
+    
+    @Override
+    public long prev_episode(long episode_id) throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return delegate.prev_episode(episode_id);
+        }
+    }
+    
+    @Override
+    public List<ConstantWmeRow> get_wmes_with_constant_values(long episode_id) throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return delegate.get_wmes_with_constant_values(episode_id);
+        }
+    }
+    
+    @Override
+    public List<IdentifierWmeRow> get_wmes_with_identifier_values(long episode_id) throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return delegate.get_wmes_with_identifier_values(episode_id);
+        }
+    }
+    
+    @Override
+    public void promote_id(long n_id, long soar_letter, long soar_number, long promotion_episode_id) throws SQLException
+    {
+        synchronized(lock)
+        {
+            delegate.promote_id(n_id, soar_letter, soar_number, promotion_episode_id);
+        }
+    }
+    
+    @Override
+    public long find_lti(long soar_letter, long soar_number) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.find_lti(soar_letter, soar_number);
+        }
+    }
+    
+    @Override
+    public long find_lti_promotion_time(long n_id) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return delegate.find_lti_promotion_time(n_id);
+        }
+    }
+    
+    @Override
+    public QueryCursor pool_dummy(long start) throws SQLException
+    {
+        synchronized(lock)
+        {
+            return new LockedCursor(delegate.pool_dummy(start));
+        }
+    }
+    
+    @Override
+    public QueryCursor pool_find_edge_queries(int is_edge, int has_value, long parent_n_id, long attribute_s_id, long child_n_id, long after) throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return new LockedCursor(delegate.pool_find_edge_queries(is_edge, has_value, parent_n_id, attribute_s_id, child_n_id, after));
+        }
+    }
+    
+    @Override
+    public QueryCursor pool_find_interval_queries(int value_is_id, int point_type, int interval_type, long id, long current_episode) throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return new LockedCursor(delegate.pool_find_interval_queries(value_is_id, point_type, interval_type, id, current_episode));
+        }
+    }
+    
+    @Override
+    public QueryCursor pool_find_lti_queries(int point_type, int interval_type, long id, long promotion_episode_id, long current_episode) throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return new LockedCursor(delegate.pool_find_lti_queries(point_type, interval_type, id, promotion_episode_id, current_episode));
+        }
+    }
+    
+    @Override
+    public long get_max_time() throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return delegate.get_max_time();
+        }
+    }
+    
+    @Override
+    public List<NowRow> now_select_node() throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return delegate.now_select_node();
+        }
+    }
+    
+    @Override
+    public List<NowRow> now_select_edge() throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return delegate.now_select_edge();
+        }
+    }
+    
+    @Override
+    public void now_delete_node() throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            delegate.now_delete_node();
+        }
+    }
+    
+    @Override
+    public void now_delete_edge() throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            delegate.now_delete_edge();
+        }
+    }
+    
+    @Override
+    public long minmax_select_node() throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return delegate.minmax_select_node();
+        }
+    }
+    
+    @Override
+    public long minmax_select_edge() throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return delegate.minmax_select_edge();
+        }
+    }
+    
+    @Override
+    public List<IdentifierWmeRow> edge_unique_select() throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            return delegate.edge_unique_select();
+        }
+    }
+    
+    @Override
+    public void flush() throws SQLException
+    {
+        awaitWrites();
+        synchronized(lock)
+        {
+            delegate.flush();
+        }
+    }
+    
+    /**
+     * Wait for the queued writes and stop the writer thread. The writes are
+     * applied even if the wait is interrupted.
+     */
+    @Override
+    public void close() throws SQLException
+    {
+        try
+        {
+            queue.put(STOP);
+            writer.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while stopping the epmem writer", e);
+        }
+        try
+        {
+            checkFailure();
+        }
+        finally
+        {
+            delegate.close();
+        }
+    }
+    
+    /**
+     * Queue a write for the writer thread. Only called on the agent thread.
+     */
+    private void submit(Write write) throws SQLException
+    {
+        checkFailure();
+        try
+        {
+            queue.put(write);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while queueing an epmem write", e);
+        }
+        synchronized(lock)
+        {
+            submitted++;
+        }
+    }
+    
+    /**
+     * Block until the writer has applied every write queued so far
+     */
+    private void awaitWrites() throws SQLException
+    {
+        synchronized(lock)
+        {
+            while(written < submitted)
+            {
+                try
+                {
+                    lock.wait();
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for epmem writes", e);
+                }
+            }
+        }
+        checkFailure();
+    }
+    
+    /**
+     * Throw, once, the first failure of the writer since the last call
+     */
+    private void checkFailure() throws SQLException
+    {
+        final SQLException e;
+        synchronized(lock)
+        {
+            e = failure;
+            failure = null;
+        }
+        if(e != null)
+        {
+            throw new SQLException("Background epmem write failed: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * A cursor of the delegate that is only used with the lock held
+     */
+    private class LockedCursor implements QueryCursor
+    {
+        private final QueryCursor cursor;
+        
+        LockedCursor(QueryCursor cursor)
+        {
+            this.cursor = cursor;
+        }
+        
+        @Override
+        public boolean next() throws SQLException
+        {
+            synchronized(lock)
+            {
+                return cursor.next();
+            }
+        }
+        
+        @Override
+        public long getLong(int columnIndex) throws SQLException
+        {
+            synchronized(lock)
+            {
+                return cursor.getLong(columnIndex);
+            }
+        }
+        
+        @Override
+        public void close() throws SQLException
+        {
+            synchronized(lock)
+            {
+                cursor.close();
+            }
+        }
+    }
+    
+    private class WriterThread extends Thread
+    {
+        WriterThread()
+        {
+            super("EpMem writer");
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run()
+        {
+            final List<Write> batch = new ArrayList<>();
+            boolean stop = false;
+            while(!stop)
+            {
+                try
+                {
+                    batch.add(queue.take());
+                }
+                catch(InterruptedException e)
+                {
+                    return;
+                }
+                queue.drainTo(batch, MAX_BATCH - 1);
+                
+                synchronized(lock)
+                {
+                    for(Write write : batch)
+                    {
+                        if(write == STOP)
+                        {
+                            stop = true;
+                            continue;
+                        }
+                        try
+                        {
+                            write.apply(delegate);
+                        }
+                        catch(SQLException e)
+                        {
+                            if(failure == null)
+                            {
+                                failure = e;
+                            }
+                        }
+                        written++;
+                    }
+                    lock.notifyAll();
+                }
+                batch.clear();
+            }
+        }
+    }
+}
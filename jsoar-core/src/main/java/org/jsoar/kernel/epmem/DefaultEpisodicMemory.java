@@ -15,7 +15,6 @@
 import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -49,6 +48,8 @@
 import org.jsoar.kernel.Decider;
 import org.jsoar.kernel.SoarException;
 import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.AppendDatabaseChoices;
+import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.AsyncStorageChoices;
+import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.BackendChoices;
 import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.GmOrderingChoices;
 import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.GraphMatchChoices;
 import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.LazyCommitChoices;
@@ -57,6 +58,10 @@
 import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.PageChoices;
 import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.Phase;
 import org.jsoar.kernel.epmem.EpisodicMemoryIdReservation.EpisodicMemoryIdPair;
+import org.jsoar.kernel.epmem.EpisodicMemoryStore.ConstantWmeRow;
+import org.jsoar.kernel.epmem.EpisodicMemoryStore.IdentifierWmeRow;
+import org.jsoar.kernel.epmem.EpisodicMemoryStore.NowRow;
+import org.jsoar.kernel.epmem.EpisodicMemoryStore.QueryCursor;
 import org.jsoar.kernel.learning.Chunker;
 import org.jsoar.kernel.memory.Instantiation;
 import org.jsoar.kernel.memory.Preference;
@@ -223,7 +228,6 @@ public class DefaultEpisodicMemory implements EpisodicMemory
         epmem_rit_state_param minstep = new epmem_rit_state_param();
         
         // TODO EPMEM soar_module::timer *timer;
-        PreparedStatement add_query;
     }
     
     private Adaptable context;
@@ -238,6 +242,12 @@ public class DefaultEpisodicMemory implements EpisodicMemory
     SymbolFactoryImpl symbols;
     EpisodicMemoryDatabase db;
     
+    /**
+     * Backend for all reads and writes of the episodic store. Not null
+     * exactly when {@link #db} is open.
+     */
+    private EpisodicMemoryStore store;
+    
     private RecognitionMemory recognitionMemory;
     
     /** agent.h:epmem_validation */
@@ -316,6 +326,7 @@ public DefaultEpisodicMemory(Adaptable context, EpisodicMemoryDatabase db)
     {
         this.context = context;
         this.db = db;
+        this.store = db != null ? new JdbcEpisodicMemoryStore(db) : null;
     }
     
     /**
@@ -598,36 +609,30 @@ private void applyDatabasePerformanceOptions() throws SQLException, SoarExceptio
         }
     }
     
-    private void initMinMax(long time_max, PreparedStatement minmax_select, List<Boolean> minmax_max,
-            List<Long> minmax_min) throws SQLException
+    private void initMinMax(long time_max, long max_id, List<Boolean> minmax_max,
+            List<Long> minmax_min)
     {
-        try(ResultSet rs = minmax_select.executeQuery())
+        /*
+         * The original port from CSoar did this. In the original version of Xerial this would return
+         * the type of the VALUE retrieved, but in the new version of Xerial it returns the type of the
+         * column. The column is not nullable and should be a character value, so we are assuming that
+         * any 0s are what used to be nulls. --ACN
+         * 
+         * if ( temp_q->column_type( 0 ) != soar_module::null_t )
+         */
+        if(max_id != 0)
         {
-            while(rs.next())
+            // std::vector<bool>::size_type num_ids =
+            // temp_q->column_int( 0 );
+            int num_ids = (int) max_id;
+            
+            // Note that substituting resize for an add loop only works if the incoming lists are empty. -ACN
+            for(int i = 0; i < num_ids; i++)
             {
-                /*
-                 * The original port from CSoar did this. In the original version of Xerial this would return
-                 * the type of the VALUE retrieved, but in the new version of Xerial it returns the type of the
-                 * column. The column is not nullable and should be a character value, so we are assuming that
-                 * any 0s are what used to be nulls. --ACN
-                 * 
-                 * if ( temp_q->column_type( 0 ) != soar_module::null_t )
-                 */
-                if(rs.getInt(0 + 1) != 0)
-                {
-                    // std::vector<bool>::size_type num_ids =
-                    // temp_q->column_int( 0 );
-                    int num_ids = rs.getInt(0 + 1);
-                    
-                    // Note that substituting resize for an add loop only works if the incoming lists are empty. -ACN
-                    for(int i = 0; i < num_ids; i++)
-                    {
-                        // minmax_max[i]->resize( num_ids, true );
-                        minmax_max.add(Boolean.TRUE);
-                        // minmax_min[i]->resize( num_ids, time_max );
-                        minmax_min.add(time_max);
-                    }
-                }
+                // minmax_max[i]->resize( num_ids, true );
+                minmax_max.add(Boolean.TRUE);
+                // minmax_min[i]->resize( num_ids, time_max );
+                minmax_min.add(time_max);
             }
         }
     }
@@ -715,6 +720,20 @@ private void epmem_init_db_ex(boolean readonly /* = false */) throws SQLExceptio
             db.prepare();
         }
         
+        // from here on, the store is the only way to the epmem tables
+        if(params.backend.get() == BackendChoices.heap)
+        {
+            store = InMemoryEpisodicMemoryStore.load(db);
+        }
+        else
+        {
+            store = new JdbcEpisodicMemoryStore(db);
+        }
+        if(params.async_storage.get() == AsyncStorageChoices.on)
+        {
+            store = new AsyncEpisodicMemoryStore(store);
+        }
+        
         // initialize range tracking
         epmem_node_mins.clear();
         epmem_node_maxes.clear();
@@ -757,8 +776,6 @@ private void epmem_init_db_ex(boolean readonly /* = false */) throws SQLExceptio
             epmem_rit_state_graph[i].rightroot.stat = 1;
             epmem_rit_state_graph[i].minstep.stat = Long.MAX_VALUE;
         }
-        epmem_rit_state_graph[EPMEM_RIT_STATE_NODE].add_query = db.add_epmem_wmes_constant_range;
-        epmem_rit_state_graph[EPMEM_RIT_STATE_EDGE].add_query = db.add_epmem_wmes_identifier_range;
         
         // //
         
@@ -816,17 +833,9 @@ private void epmem_init_db_ex(boolean readonly /* = false */) throws SQLExceptio
         
         // get max time
         {
-            final PreparedStatement temp_q = db.get_max_time;
-            
-            try(ResultSet rs = temp_q.executeQuery())
-            {
-                if(rs.next())
-                {
-                    // my_agent->epmem_stats->time->set_value(
-                    // temp_q->column_int( 0 ) + 1 );
-                    stats.time.set(rs.getLong(0 + 1) + 1);
-                }
-            }
+            // my_agent->epmem_stats->time->set_value(
+            // temp_q->column_int( 0 ) + 1 );
+            stats.time.set(store.get_max_time() + 1);
         }
         
         long time_max = stats.time.get();
@@ -837,40 +846,44 @@ private void epmem_init_db_ex(boolean readonly /* = false */) throws SQLExceptio
         {
             long time_last = (time_max - 1);
             
-            final PreparedStatement[] now_select = { db.now_select_node, db.now_select_edge };
-            final PreparedStatement[] now_add = { db.add_epmem_wmes_constant_point, db.add_epmem_wmes_identifier_point };
-            final PreparedStatement[] now_delete = { db.now_delete_node, db.now_delete_edge };
-            
             for(int i = EPMEM_RIT_STATE_NODE; i <= EPMEM_RIT_STATE_EDGE; i++)
             {
-                final PreparedStatement temp_q = now_add[i];
-                temp_q.setLong(2, time_last);
+                final boolean node = i == EPMEM_RIT_STATE_NODE;
                 
-                final PreparedStatement temp_q2 = now_select[i];
-                try(ResultSet rs = temp_q2.executeQuery())
+                // while ( temp_q2->execute() == soar_module::row )
+                for(NowRow row : node ? store.now_select_node() : store.now_select_edge())
                 {
-                    // while ( temp_q2->execute() == soar_module::row )
-                    while(rs.next())
+                    // range_start = temp_q2->column_int( 1 );
+                    long range_start = row.start_episode_id;
+                    
+                    // point
+                    if(range_start == time_last)
                     {
-                        // range_start = temp_q2->column_int( 1 );
-                        long range_start = rs.getLong(1 + 1);
-                        
-                        // point
-                        if(range_start == time_last)
+                        if(node)
                         {
-                            temp_q.setLong(1, rs.getLong(0 + 1));
-                            temp_q.executeUpdate( /* soar_module::op_reinit */);
+                            store.add_epmem_wmes_constant_point(row.id, time_last);
                         }
                         else
                         {
-                            epmem_rit_insert_interval(range_start, time_last, rs.getLong(0 + 1),
-                                    epmem_rit_state_graph[i]);
+                            store.add_epmem_wmes_identifier_point(row.id, time_last);
                         }
                     }
+                    else
+                    {
+                        epmem_rit_insert_interval(range_start, time_last, row.id,
+                                epmem_rit_state_graph[i]);
+                    }
                 }
                 
                 // remove all NOW intervals
-                now_delete[i].execute();
+                if(node)
+                {
+                    store.now_delete_node();
+                }
+                else
+                {
+                    store.now_delete_edge();
+                }
             }
         }
         
@@ -878,8 +891,8 @@ private void epmem_init_db_ex(boolean readonly /* = false */) throws SQLExceptio
         {
             // Removed two-element iteration because java collections hate that
             // episodic_memory.cpp:1761
-            initMinMax(time_max, db.minmax_select_node, epmem_node_maxes, epmem_node_mins);
-            initMinMax(time_max, db.minmax_select_edge, epmem_edge_maxes, epmem_edge_mins);
+            initMinMax(time_max, store.minmax_select_node(), epmem_node_maxes, epmem_node_mins);
+            initMinMax(time_max, store.minmax_select_edge(), epmem_edge_maxes, epmem_edge_mins);
             // episodic_memory.cpp:1780
         }
         
@@ -895,16 +908,14 @@ private void epmem_init_db_ex(boolean readonly /* = false */) throws SQLExceptio
             // epmem_id_pool **ip;
             LinkedList<EpisodicMemoryIdPair> ip;
             
-            PreparedStatement temp_q = db.edge_unique_select;
-            try(ResultSet rs = temp_q.executeQuery())
             {
                 // while ( temp_q->execute() == soar_module::row )
-                while(rs.next())
+                for(IdentifierWmeRow row : store.edge_unique_select())
                 {
-                    parent_n_id = rs.getLong(0 + 1);
-                    attributes_s_id = rs.getLong(1 + 1);
-                    child_n_id = rs.getLong(2 + 1);
-                    wi_id = rs.getLong(3 + 1);
+                    parent_n_id = row.parent_n_id;
+                    attributes_s_id = row.attribute_s_id;
+                    child_n_id = row.child_n_id;
+                    wi_id = row.wi_id;
                     
                     // create new epmem_hashed_id_pool for q0 if it doesn't
                     // exist in epmem_id_repository
@@ -1043,11 +1054,14 @@ private void epmem_rit_insert_interval(long lower, long upper, long id, epmem_ri
         
         // perform insert
         // ( node, start, end, id )
-        rit_state.add_query.setLong(1, node);
-        rit_state.add_query.setLong(2, lower);
-        rit_state.add_query.setLong(3, upper);
-        rit_state.add_query.setLong(4, id);
-        rit_state.add_query.executeUpdate(/* soar_module::op_reinit */);
+        if(rit_state == epmem_rit_state_graph[EPMEM_RIT_STATE_NODE])
+        {
+            store.add_epmem_wmes_constant_range(node, lower, upper, id);
+        }
+        else
+        {
+            store.add_epmem_wmes_identifier_range(node, lower, upper, id);
+        }
     }
     
     private static final class EpmemRitForkNodeResult
@@ -1139,20 +1153,15 @@ else if(node < lower)
      */
     boolean epmem_get_variable(epmem_variable_key variable_id, ByRef<Long> variable_value) throws SQLException
     {
-        final PreparedStatement var_get = db.var_get;
-        
-        var_get.setInt(1, variable_id.ordinal());
-        try(ResultSet rs = var_get.executeQuery())
+        final Long value = store.var_get(variable_id.ordinal());
+        if(value != null)
         {
-            if(rs.next())
-            {
-                variable_value.value = rs.getLong(0 + 1);
-                return true;
-            }
-            else
-            {
-                return false;
-            }
+            variable_value.value = value;
+            return true;
+        }
+        else
+        {
+            return false;
         }
     }
     
@@ -1164,12 +1173,7 @@ boolean epmem_get_variable(epmem_variable_key variable_id, ByRef<Long> variable_
      */
     void epmem_set_variable(epmem_variable_key variable_id, long variable_value) throws SQLException
     {
-        final PreparedStatement var_set = db.var_set;
-        
-        var_set.setInt(1, variable_id.ordinal());
-        var_set.setLong(2, variable_value);
-        
-        var_set.execute();
+        store.var_set(variable_id.ordinal(), variable_value);
     }
     
     @Override
@@ -1182,6 +1186,16 @@ public void epmem_close() throws SoarException
                 // TODO this is copy-paste from smem right now, there are other
                 // things to do here
                 
+                // an in-memory database goes away with the connection, so
+                // there's nothing to save to
+                if(!EpisodicMemoryDatabase.IN_MEMORY_PATH.equals(params.path.get()))
+                {
+                    epmem_flush_store();
+                }
+                
+                // waits for anything still being written in the background
+                store.close();
+                
                 if(params.lazy_commit.get() == LazyCommitChoices.on)
                 {
                     db.commitExecuteUpdate();
@@ -1190,6 +1204,7 @@ public void epmem_close() throws SoarException
                 // close the database
                 db.getConnection().close();
                 db = null;
+                store = null;
                 
                 LOG.info("EpMem| Closing database {}.", params.path.get());
             }
@@ -1203,6 +1218,24 @@ public void epmem_close() throws SoarException
         epmem_wme_adds.clear();
     }
     
+    /**
+     * Write anything held only by the store to the database. Outside of
+     * lazy-commit mode this is its own transaction.
+     */
+    private void epmem_flush_store() throws SQLException
+    {
+        if(params.lazy_commit.get() == LazyCommitChoices.on)
+        {
+            store.flush();
+        }
+        else
+        {
+            db.beginExecuteUpdate( /* soar_module::op_reinit */);
+            store.flush();
+            db.commitExecuteUpdate( /* soar_module::op_reinit */);
+        }
+    }
+    
     /*
      * (non-Javadoc)
      * 
@@ -1538,12 +1571,7 @@ private void epmem_new_episode() throws SQLException
                     
                     // add NOW entry
                     // id = ?, start_episode_id = ?
-                    db.add_epmem_wmes_constant_now.setLong(1, temp_node); // my_agent->epmem_stmts_graph->add_node_now->bind_int(
-                    // 1, (*temp_node) );
-                    db.add_epmem_wmes_constant_now.setLong(2, time_counter); // my_agent->epmem_stmts_graph->add_node_now->bind_int(
-                    // 2, time_counter
-                    // );
-                    db.add_epmem_wmes_constant_now.executeUpdate(/* soar_module::op_reinit */); // my_agent->epmem_stmts_graph->add_node_now->execute(
+                    store.add_epmem_wmes_constant_now(temp_node, time_counter); // my_agent->epmem_stmts_graph->add_node_now->execute(
                     // soar_module::op_reinit
                     // );
                     
@@ -1560,30 +1588,14 @@ private void epmem_new_episode() throws SQLException
                     
                     // add NOW entry
                     // id = ?, start_episode_id = ?
-                    db.add_epmem_wmes_identifier_now.setLong(1, temp_node); // my_agent->epmem_stmts_graph->add_edge_now->bind_int(
-                    // 1, (*temp_node) );
-                    db.add_epmem_wmes_identifier_now.setLong(2, time_counter); // my_agent->epmem_stmts_graph->add_edge_now->bind_int(
-                    // 2, time_counter
-                    // );
-                    db.add_epmem_wmes_identifier_now.executeUpdate(/* soar_module::op_reinit */);// my_agent->epmem_stmts_graph->add_edge_now->execute(
+                    store.add_epmem_wmes_identifier_now(temp_node, time_counter); // my_agent->epmem_stmts_graph->add_edge_now->execute(
                     // soar_module::op_reinit
                     // );
                     
                     // update min
                     epmem_edge_mins.set((int) temp_node - 1, time_counter);
                     
-                    db.update_epmem_wmes_identifier_last_episode_id.setLong(1, Long.MAX_VALUE); // my_agent->epmem_stmts_graph->update_edge_unique_last->bind_int(
-                    // 1,
-                    // LLONG_MAX
-                    // );
-                    db.update_epmem_wmes_identifier_last_episode_id.setLong(2, temp_node); // my_agent->epmem_stmts_graph->update_edge_unique_last->bind_int(
-                    // 2,
-                    // *temp_node
-                    // );
-                    db.update_epmem_wmes_identifier_last_episode_id.executeUpdate(/*
-                                                                                   * soar_module::
-                                                                                   * op_reinit
-                                                                                   */); // my_agent->epmem_stmts_graph->update_edge_unique_last->execute(
+                    store.update_epmem_wmes_identifier_last_episode_id(temp_node, Long.MAX_VALUE /* LLONG_MAX */); // my_agent->epmem_stmts_graph->update_edge_unique_last->execute(
                     // soar_module::op_reinit
                     // );
                     
@@ -1603,8 +1615,7 @@ private void epmem_new_episode() throws SQLException
                     {
                         // remove NOW entry
                         // id = ?
-                        db.delete_epmem_wmes_constant_now.setLong(1, r.getKey());
-                        db.delete_epmem_wmes_constant_now.executeUpdate(/* soar_module::op_reinit */);
+                        store.delete_epmem_wmes_constant_now(r.getKey());
                         
                         range_start = epmem_node_mins.get((int) (r.getKey() - 1));
                         range_end = (time_counter - 1);
@@ -1612,9 +1623,7 @@ private void epmem_new_episode() throws SQLException
                         // point (id, start_episode_id)
                         if(range_start == range_end)
                         {
-                            db.add_epmem_wmes_constant_point.setLong(1, r.getKey());
-                            db.add_epmem_wmes_constant_point.setLong(2, range_start);
-                            db.add_epmem_wmes_constant_point.executeUpdate(/* soar_module::op_reinit */);
+                            store.add_epmem_wmes_constant_point(r.getKey(), range_start);
                         }
                         // node
                         else
@@ -1635,22 +1644,17 @@ private void epmem_new_episode() throws SQLException
                     {
                         // remove NOW entry
                         // id = ?
-                        db.delete_epmem_wmes_identifier_now.setLong(1, r.getKey());
-                        db.delete_epmem_wmes_identifier_now.executeUpdate(/* soar_module::op_reinit */);
+                        store.delete_epmem_wmes_identifier_now(r.getKey());
                         
                         range_start = epmem_edge_mins.get((int) (r.getKey() - 1));
                         range_end = (time_counter - 1);
                         
-                        db.update_epmem_wmes_identifier_last_episode_id.setLong(1, range_end);
-                        db.update_epmem_wmes_identifier_last_episode_id.setLong(2, r.getKey());
-                        db.update_epmem_wmes_identifier_last_episode_id.executeUpdate(/* soar_module::op_reinit */);
+                        store.update_epmem_wmes_identifier_last_episode_id(r.getKey(), range_end);
                         
                         // point (id, start_episode_id)
                         if(range_start == range_end)
                         {
-                            db.add_epmem_wmes_identifier_point.setLong(1, r.getKey());
-                            db.add_epmem_wmes_identifier_point.setLong(2, range_start);
-                            db.add_epmem_wmes_identifier_point.executeUpdate(/* soar_module::op_reinit */);
+                            store.add_epmem_wmes_identifier_point(r.getKey(), range_start);
                         }
                         // node
                         else
@@ -1681,8 +1685,7 @@ private void epmem_new_episode() throws SQLException
             }
             
             // add the time id to the epmem_episodes table
-            db.add_time.setLong(1, time_counter);
-            db.add_time.executeUpdate(/* soar_module::op_reinit */);
+            store.add_time(time_counter);
             
             stats.setTime(time_counter + 1);
             
@@ -1983,18 +1986,11 @@ void _epmem_store_level(
                         
                         // try to find
                         {
-                            final PreparedStatement ps = db.find_lti;
-                            ps.setLong(1, wmeValueId.getNameLetter());
-                            ps.setLong(2, wmeValueId.getNameNumber());
-                            
-                            try(ResultSet rs = ps.executeQuery())
+                            final long n_id = store.find_lti(wmeValueId.getNameLetter(), wmeValueId.getNameNumber());
+                            if(n_id != 0)
                             {
-                                if(rs.next())
-                                {
-                                    wmeValueId.epmem_id = rs.getLong(0 + 1);
-                                }
+                                wmeValueId.epmem_id = n_id;
                             }
-                            // CK: no reinitialize for PreparedStatement
                             // my_agent->epmem_stmts_graph->find_lti->reinitialize();
                         }
                         
@@ -2036,19 +2032,11 @@ void _epmem_store_level(
                         }
                         
                         // parent_n_id, attribute_s_id, child_n_id
-                        final PreparedStatement ps = db.find_epmem_wmes_identifier_shared;
-                        ps.setLong(1, parent_id);
-                        ps.setLong(2, my_hash);
-                        ps.setLong(3, wmeValueId.epmem_id);
-                        
-                        try(ResultSet rs = ps.executeQuery())
+                        final long wi_id = store.find_epmem_wmes_identifier_shared(parent_id, my_hash, wmeValueId.epmem_id);
+                        if(wi_id != 0)
                         {
-                            if(rs.next())
-                            {
-                                wme.epmem_id = rs.getLong(0 + 1);
-                            }
+                            wme.epmem_id = wi_id;
                         }
-                        // CK: no reinitialize for PreparedStatement
                         // my_agent->epmem_stmts_graph->find_edge_unique_shared->reinitialize();
                     }
                 }// End special lti proccessing
@@ -2215,8 +2203,7 @@ void _epmem_store_level(
                         }
                         
                         // Update the node database with the new n_id
-                        db.add_node.setLong(1, wmeValueId.epmem_id);
-                        db.add_node.execute();
+                        store.add_node(wmeValueId.epmem_id);
                         
                         // add repository for possible future children
                         Map<Long, LinkedList<EpisodicMemoryIdPair>> epmem_hashed_id_pool = Maps.newLinkedHashMap();
@@ -2235,25 +2222,7 @@ void _epmem_store_level(
                         LOG.debug("   Performing database insertion: {} {} {}\n", parent_id, my_hash, wmeValueId.epmem_id);
                         LOG.debug("   Adding wme to epmem_wmes_identifier table.\n");
                     }
-                    final PreparedStatement ps = db.add_epmem_wmes_identifier;
-                    ps.setLong(1, parent_id);
-                    ps.setLong(2, my_hash);
-                    ps.setLong(3, wmeValueId.epmem_id);
-                    ps.setLong(4, Long.MAX_VALUE);
-                    ps.execute();
-                    // CK: not all database drivers support this
-                    try(ResultSet rs = ps.getGeneratedKeys())
-                    {
-                        if(rs.next())
-                        {
-                            wme.epmem_id = rs.getLong(1);
-                        }
-                        else
-                        {
-                            // throw an exception if we were not able to get the row id of the insert
-                            throw new SQLException("ps.getGeneratedKeys failed!");
-                        }
-                    }
+                    wme.epmem_id = store.add_epmem_wmes_identifier(parent_id, my_hash, wmeValueId.epmem_id, Long.MAX_VALUE);
                     
                     // fprintf(stderr, " Incrementing and setting wme id to %d \n", (unsigned int) (*w_p)->epmem_id);
                     if(LOG.isDebugEnabled())
@@ -2334,20 +2303,12 @@ void _epmem_store_level(
                         // fprintf(stderr, " Looking for id of a duplicate entry in epmem_wmes_constant.\n");
                         LOG.debug("   Looking for id of a duplicate entry in epmem_wmes_constant.\n");
                         
-                        final PreparedStatement ps = db.find_epmem_wmes_constant;
-                        ps.setLong(1, parent_id);
-                        ps.setLong(2, my_hash);
-                        ps.setLong(3, my_hash2);
-                        
-                        try(ResultSet rs = ps.executeQuery())
+                        final long wc_id = store.find_epmem_wmes_constant(parent_id, my_hash, my_hash2);
+                        if(wc_id != 0)
                         {
-                            if(rs.next())
-                            {
-                                wme.epmem_id = rs.getLong(0 + 1);
-                            }
+                            wme.epmem_id = wc_id;
                         }
                         
-                        // CK: no reinitialize for PreparedStatment
                         // my_agent->epmem_stmts_graph->find_node_unique->reinitialize();
                     }
                     
@@ -2365,25 +2326,8 @@ void _epmem_store_level(
                         }
                         
                         // insert (parent_id,attr,value)
-                        final PreparedStatement ps = db.add_epmem_wmes_constant;
-                        ps.setLong(1, parent_id);
-                        ps.setLong(2, my_hash);
-                        ps.setLong(3, my_hash2);
-                        ps.execute();
-                        // CK: not all database drivers support this
-                        try(ResultSet rs = ps.getGeneratedKeys())
-                        {
-                            if(rs.next())
-                            {
-                                // (*w_p)->epmem_id = (epmem_node_id) my_agent->epmem_db->last_insert_rowid();
-                                wme.epmem_id = rs.getLong(1);
-                            }
-                            else
-                            {
-                                // throw an exception if we were not able to get the row id of the insert
-                                throw new SQLException("ps.getGeneratedKeys failed!");
-                            }
-                        }
+                        // (*w_p)->epmem_id = (epmem_node_id) my_agent->epmem_db->last_insert_rowid();
+                        wme.epmem_id = store.add_epmem_wmes_constant(parent_id, my_hash, my_hash2);
                         
                         // fprintf(stderr, " Setting wme id from last row to %d \n", (unsigned int) (*w_p)->epmem_id);
                         if(LOG.isDebugEnabled())
@@ -2443,12 +2387,7 @@ public void epmem_schedule_promotion(IdentifierImpl id)
     void _epmem_promote_id(IdentifierImpl id, long /* epmem_time_id */ t) throws SQLException
     {
         // n_id,soar_letter,soar_number,promotion_episode_id
-        final PreparedStatement ps = db.promote_id;
-        ps.setLong(1, id.epmem_id);
-        ps.setLong(2, id.getNameLetter());
-        ps.setLong(3, id.getNameNumber());
-        ps.setLong(4, t);
-        ps.executeUpdate();
+        store.promote_id(id.epmem_id, id.getNameLetter(), id.getNameNumber(), t);
     }
     
     //////////////////////////////////////////////////////////
@@ -2479,14 +2418,7 @@ void _epmem_promote_id(IdentifierImpl id, long /* epmem_time_id */ t) throws SQL
         long toReturn = -1;
         try
         {
-            db.hash_add_type.setInt(1, sym_type);
-            db.hash_add_type.execute();
-            
-            try(ResultSet rs = db.hash_add_type.getGeneratedKeys())
-            {
-                rs.next();
-                toReturn = rs.getLong(1);
-            }
+            toReturn = store.hash_add_type(sym_type);
         }
         catch(SQLException e)
         {
@@ -2514,15 +2446,7 @@ void _epmem_promote_id(IdentifierImpl id, long /* epmem_time_id */ t) throws SQL
         try
         {
             // search first
-            db.hash_get_int.setLong(1, val);
-            
-            try(ResultSet rs = db.hash_get_int.executeQuery())
-            {
-                if(rs.next())
-                {
-                    return_val = rs.getLong(0 + 1);
-                }
-            }
+            return_val = store.hash_get_int(val);
         }
         catch(SQLException e)
         {
@@ -2538,9 +2462,7 @@ void _epmem_promote_id(IdentifierImpl id, long /* epmem_time_id */ t) throws SQL
             try
             {
                 // then content
-                db.hash_add_int.setLong(1, return_val);
-                db.hash_add_int.setLong(2, val);
-                db.hash_add_int.execute();
+                store.hash_add_int(return_val, val);
             }
             catch(SQLException e)
             {
@@ -2570,15 +2492,7 @@ void _epmem_promote_id(IdentifierImpl id, long /* epmem_time_id */ t) throws SQL
         try
         {
             // search first
-            db.hash_get_float.setDouble(1, val);
-            
-            try(ResultSet rs = db.hash_get_float.executeQuery())
-            {
-                if(rs.next())
-                {
-                    return_val = rs.getLong(0 + 1);
-                }
-            }
+            return_val = store.hash_get_float(val);
         }
         catch(SQLException e)
         {
@@ -2594,9 +2508,7 @@ void _epmem_promote_id(IdentifierImpl id, long /* epmem_time_id */ t) throws SQL
             try
             {
                 // then content
-                db.hash_add_float.setLong(1, return_val);
-                db.hash_add_float.setDouble(2, val);
-                db.hash_add_float.execute();
+                store.hash_add_float(return_val, val);
             }
             catch(SQLException e)
             {
@@ -2626,14 +2538,7 @@ void _epmem_promote_id(IdentifierImpl id, long /* epmem_time_id */ t) throws SQL
         try
         {
             // search first
-            db.hash_get_str.setString(1, val);
-            try(ResultSet rs = db.hash_get_str.executeQuery())
-            {
-                if(rs.next())
-                {
-                    return_val = rs.getLong(0 + 1);
-                }
-            }
+            return_val = store.hash_get_str(val);
         }
         catch(SQLException e)
         {
@@ -2649,9 +2554,7 @@ void _epmem_promote_id(IdentifierImpl id, long /* epmem_time_id */ t) throws SQL
             try
             {
                 // then content
-                db.hash_add_str.setLong(1, return_val);
-                db.hash_add_str.setString(2, val);
-                db.hash_add_str.execute();
+                store.hash_add_str(return_val, val);
             }
             catch(SQLException e)
             {
@@ -2673,20 +2576,17 @@ long epmem_reverse_hash_int(long/* epmem_hash_id */ s_id_lookup)
         long return_val = 0;// NIL;
         try
         {
-            db.hash_rev_int.setLong(1, s_id_lookup);
             // assert( res == soar_module::row );
             // We don't want this assertion to compile out. If we were to
             // procceed from here
             // on bad data, we could potentially put bad symbols into working
             // memory. -ACN
-            try(ResultSet res = db.hash_rev_int.executeQuery())
+            final Long value = store.hash_rev_int(s_id_lookup);
+            if(value == null)
             {
-                if(!res.next())
-                {
-                    throw new AssertionError("Database query for unknown value");
-                }
-                return_val = res.getLong(0 + 1);
+                throw new AssertionError("Database query for unknown value");
             }
+            return_val = value;
         }
         catch(SQLException e)
         {
@@ -2707,20 +2607,17 @@ long epmem_reverse_hash_int(long/* epmem_hash_id */ s_id_lookup)
         double return_val = 0;// NIL;
         try
         {
-            db.hash_rev_float.setLong(1, s_id_lookup);
             // assert( res == soar_module::row );
             // We don't want this assertion to compile out. If we were to
             // procceed from here
             // on bad data, we could potentially put bad symbols into working
             // memory. -ACN
-            try(ResultSet res = db.hash_rev_float.executeQuery())
+            final Double value = store.hash_rev_float(s_id_lookup);
+            if(value == null)
             {
-                if(!res.next())
-                {
-                    throw new AssertionError("Database query for unknown value");
-                }
-                return_val = res.getDouble(0 + 1);
+                throw new AssertionError("Database query for unknown value");
             }
+            return_val = value;
         }
         catch(SQLException e)
         {
@@ -2741,20 +2638,17 @@ String epmem_reverse_hash_str(long/* epmem_hash_id */ s_id_lookup)
         String return_val = null;// NIL;
         try
         {
-            db.hash_rev_str.setLong(1, s_id_lookup);
             // assert( res == soar_module::row );
             // We don't want this assertion to compile out. If we were to
             // procceed from here
             // on bad data, we could potentially put bad symbols into working
             // memory. -ACN
-            try(ResultSet res = db.hash_rev_str.executeQuery())
+            final String value = store.hash_rev_str(s_id_lookup);
+            if(value == null)
             {
-                if(!res.next())
-                {
-                    throw new AssertionError("Database query for unknown value");
-                }
-                return_val = res.getString(0 + 1);
+                throw new AssertionError("Database query for unknown value");
             }
+            return_val = value;
         }
         catch(SQLException e)
         {
@@ -2811,21 +2705,17 @@ SymbolImpl epmem_reverse_hash(long /* epmem_hash_id */ s_id_lookup, int sym_type
         {
             try
             {
-                
-                db.hash_get_type.setLong(1, s_id_lookup);
                 // assert( res == soar_module::row );
                 // We don't want this assertion to compile out. If we were to
                 // procceed from here
                 // on bad data, we could potentially put bad symbols into working
                 // memory. -ACN
-                try(ResultSet res = db.hash_get_type.executeQuery())
+                final Integer type = store.hash_get_type(s_id_lookup);
+                if(type == null)
                 {
-                    if(!res.next())
-                    {
-                        throw new AssertionError("Database query for unknown value");
-                    }
-                    sym_type = res.getInt(0 + 1);
+                    throw new AssertionError("Database query for unknown value");
                 }
+                sym_type = type;
             }
             catch(SQLException e)
             {
@@ -2898,23 +2788,19 @@ String epmem_reverse_hash_print(long/* epmem_hash_id */ s_id_lookup, int sym_typ
         {
             try
             {
-                db.hash_get_type.setLong(1, s_id_lookup);
-                
                 // (void)res; // quells compiler warning
                 // assert( res == soar_module::row );
                 // We don't want this assertion to compile out. If we were to
                 // procceed from here
                 // on bad data, we could potentially put bad symbols into working
                 // memory. -ACN
-                try(ResultSet res = db.hash_get_type.executeQuery())
+                final Integer type = store.hash_get_type(s_id_lookup);
+                if(type == null)
                 {
-                    if(!res.next())
-                    {
-                        throw new AssertionError("Database query for unknown value");
-                    }
-                    // check if should be column_int
-                    sym_type = res.getInt(0 + 1);
+                    throw new AssertionError("Database query for unknown value");
                 }
+                // check if should be column_int
+                sym_type = type;
             }
             catch(SQLException e)
             {
@@ -3558,9 +3444,7 @@ public boolean equals(Object obj)
         int value_is_id;
         boolean has_noncurrent;
         Set<EpmemLiteral>/* epmem_literal_set */ literals;
-        PreparedStatement/* soar_module::pooled_sqlite_statement **/ sql = null;
-        // This needs to be null so that we can be sure the qeury has never been executed. -ACN
-        ResultSet sqlResults = null;
+        QueryCursor/* soar_module::pooled_sqlite_statement **/ sql = null;
         long/* epmem_time_id */ time;
     }
     
@@ -3581,8 +3465,7 @@ public boolean equals(Object obj)
     {
         EpmemUEdge uedge;
         int is_end_point;
-        PreparedStatement sql = null;
-        ResultSet sqlResult = null;
+        QueryCursor sql = null;
         long/* epmem_time_id */ time;
     }
     
@@ -3971,9 +3854,7 @@ else if(a.is_end_point == b.is_end_point)
                 root_pedge.has_noncurrent = false;
                 root_pedge.literals = new ConcurrentSkipListSet<>();
                 root_pedge.literals.add(root_literal);
-                root_pedge.sql = db.pool_dummy.getCopy();// my_agent->epmem_stmts_graph->pool_dummy->request();
-                root_pedge.sql.setLong(1, Long.MAX_VALUE/* LLONG_MAX */);
-                root_pedge.sqlResults = root_pedge.sql.executeQuery();
+                root_pedge.sql = store.pool_dummy(Long.MAX_VALUE/* LLONG_MAX */);// my_agent->epmem_stmts_graph->pool_dummy->request();
                 root_pedge.time = Long.MAX_VALUE/* LLONG_MAX */;
                 pedge_pq.add(root_pedge);
                 pedge_caches[EPMEM_RIT_STATE_EDGE].put(triple, root_pedge);
@@ -3993,10 +3874,8 @@ else if(a.is_end_point == b.is_end_point)
                 // allocate_with_pool(my_agent, &(my_agent->epmem_interval_pool), &root_interval);
                 root_interval.uedge = root_uedge;
                 root_interval.is_end_point = 1;// true;
-                root_interval.sql = db.pool_dummy.getCopy();// my_agent->epmem_stmts_graph->pool_dummy->request();
                 // root_interval->sql->prepare();
-                root_interval.sql.setLong(1, before);
-                root_interval.sqlResult = root_interval.sql.executeQuery();
+                root_interval.sql = store.pool_dummy(before);// my_agent->epmem_stmts_graph->pool_dummy->request();
                 root_interval.time = before;
                 interval_pq.add(root_interval);
                 interval_cleanup.add(root_interval);
@@ -4023,18 +3902,11 @@ else if(a.is_end_point == b.is_end_point)
                 {
                     final EpmemPEdge pedge = pedge_pq.poll();
                     final EpmemTriple triple = pedge.triple.copyEpmemTriple();
-                    if(pedge.sqlResults.getMetaData().getColumnCount() > 1)
-                    {
-                        triple.child_n_id = pedge.sqlResults.getLong(1 + 1);
-                    }
-                    else
-                    {
-                        // CK: getLong is called on the ResultSet of "SELECT Long.MaxValue as start"
-                        // which returns 1 column and 1 row with a value of Long.MaxValue in SQL
-                        // the C sqllite interface appears to return 0 for columns that do not exist
-                        // in the result set
-                        triple.child_n_id = 0L;
-                    }
+                    // CK: getLong is called on the result of "SELECT Long.MaxValue as start"
+                    // which returns 1 column and 1 row with a value of Long.MaxValue in SQL
+                    // the C sqllite interface appears to return 0 for columns that do not exist
+                    // in the result set, and so does QueryCursor
+                    triple.child_n_id = pedge.sql.getLong(1 + 1);
                     
                     if(LOG.isDebugEnabled())
                     {
@@ -4078,19 +3950,13 @@ else if(a.is_end_point == b.is_end_point)
                         uedge.activated = false;
                         // create interval queries for this partial edge
                         boolean created = false;
-                        long/* int64_t */ edge_id = pedge.sqlResults.getLong(0 + 1);
+                        long/* int64_t */ edge_id = pedge.sql.getLong(0 + 1);
                         long/* epmem_time_id */ promo_time = EPMEM_MEMID_NONE;
                         boolean is_lti = (pedge.value_is_id != 0 && pedge.triple.child_n_id != EPMEM_NODEID_BAD && pedge.triple.child_n_id != EPMEM_NODEID_ROOT);
                         if(is_lti)
                         {
                             // find the promotion time of the LTI
-                            db.find_lti_promotion_time.setLong(1, triple.child_n_id);
-                            ResultSet results = db.find_lti_promotion_time.executeQuery();
-                            if(results.next())
-                            {
-                                promo_time = results.getLong(0 + 1);
-                            }
-                            results.close();
+                            promo_time = store.find_lti_promotion_time(triple.child_n_id);
                             
                             // my_agent->epmem_stmts_graph->find_lti_promotion_time->reinitialize();
                         }
@@ -4129,30 +3995,16 @@ else if(a.is_end_point == b.is_end_point)
                                  */
                                 // create the SQL query and bind it
                                 // try to find an existing query first; if none exist, allocate a new one from the memory pools
-                                PreparedStatement/* soar_module::pooled_sqlite_statement **/ interval_sql = null;
+                                QueryCursor/* soar_module::pooled_sqlite_statement **/ interval_sql = null;
                                 if(is_lti)
                                 {
-                                    interval_sql = db.pool_find_lti_queries[point_type][interval_type].getCopy(/* sql_timer */);
+                                    interval_sql = store.pool_find_lti_queries(point_type, interval_type, edge_id, promo_time, current_episode);
                                 }
                                 else
                                 {
-                                    interval_sql = db.pool_find_interval_queries[pedge.value_is_id][point_type][interval_type].getCopy(/* sql_timer */);
+                                    interval_sql = store.pool_find_interval_queries(pedge.value_is_id, point_type, interval_type, edge_id, current_episode);
                                 }
-                                // CK: both the JDBC and C drivers have an index of 1 for the leftmost parameter in a prepared statement
-                                // (see: http://www.sqlite.org/c3ref/bind_blob.html)
-                                int bind_pos = 1;
-                                if(point_type == EPMEM_RANGE_END && interval_type == EPMEM_RANGE_NOW)
-                                {
-                                    interval_sql.setLong(bind_pos++, current_episode);
-                                }
-                                interval_sql.setLong(bind_pos++, edge_id);
-                                if(is_lti && interval_type == EPMEM_RANGE_EP)
-                                {
-                                    interval_sql.setLong(bind_pos++, promo_time);
-                                }
-                                interval_sql.setLong(bind_pos++, current_episode);
-                                ResultSet results = interval_sql.executeQuery();
-                                if(results.next())
+                                if(interval_sql.next())
                                 {
                                     EpmemInterval interval = new EpmemInterval();
                                     // allocate_with_pool(my_agent, &(my_agent->epmem_interval_pool), &interval);
@@ -4166,17 +4018,16 @@ else if(a.is_end_point == b.is_end_point)
                                     // We don't care about the remaining results of the query
                                     
                                     // why wouldn't the LTI still be satisfied before its promotion time? what guards against that?
-                                    interval.time = results.getLong(0 + 1);
+                                    interval.time = interval_sql.getLong(0 + 1);
                                     
                                     if(is_lti && point_type == EPMEM_RANGE_START && interval_type != EPMEM_RANGE_POINT && interval.time < promo_time)
                                     {
                                         interval.time = promo_time - 1;
                                     }
                                     
-                                    interval.sql = interval_sql;
-                                    // This logic does not allow us to free this result set here.
+                                    // This logic does not allow us to free this cursor here.
                                     // This means that we need ot close this by hand later on. -ACN
-                                    interval.sqlResult = results;
+                                    interval.sql = interval_sql;
                                     interval_pq.add(interval);
                                     interval_cleanup.add(interval);
                                     uedge.intervals++;
@@ -4184,7 +4035,6 @@ else if(a.is_end_point == b.is_end_point)
                                 }
                                 else
                                 {
-                                    results.close();
                                     interval_sql.close();
                                 }
                             }
@@ -4240,32 +4090,16 @@ else if(a.is_end_point == b.is_end_point)
                     {
                         // Calling execute() on the C driver will advance the row, if the
                         // query has already been run. -ACN
-                        if(pedge.sqlResults == null)
-                        {
-                            ResultSet results = pedge.sql.executeQuery();
-                            pedge.sqlResults = results;
-                        }
-                        if(pedge.sqlResults.next())
+                        if(pedge.sql.next())
                         {
-                            if(pedge.sqlResults.getMetaData().getColumnCount() > 2)
-                            {
-                                pedge.time = pedge.sqlResults.getLong(2 + 1);
-                            }
-                            else
-                            {
-                                // CK: getLong is called on the ResultSet of "SELECT Long.MaxValue as start"
-                                // which returns 1 column and 1 row with a value of Long.MaxValue in SQL
-                                // the C sqllite interface appears to return 0 for columns that do not exist
-                                // in the result set
-                                pedge.time = 0L;
-                            }
+                            // CK: the "SELECT Long.MaxValue as start" query has no third
+                            // column, which reads as 0 like it does with the C interface
+                            pedge.time = pedge.sql.getLong(2 + 1);
                             pedge_pq.add(pedge);
                         }
                         else
                         {
                             // pedge->sql->get_pool()->release(pedge->sql);
-                            pedge.sqlResults.close();
-                            pedge.sqlResults = null;
                             pedge.sql.close();
                             pedge.sql = null;
                         }
@@ -4340,20 +4174,14 @@ else if(a.is_end_point == b.is_end_point)
                         
                         if(interval.sql != null)
                         {
-                            if(interval.sqlResult == null)
+                            if(interval.uedge.has_noncurrent && interval.sql.next())
                             {
-                                interval.sqlResult = interval.sql.executeQuery();
-                            }
-                            if(interval.uedge.has_noncurrent && interval.sqlResult.next())
-                            {
-                                interval.time = interval.sqlResult.getInt(0 + 1);
+                                interval.time = (int) interval.sql.getLong(0 + 1);
                                 interval_pq.add(interval);
                             }
                             else// if (interval.sql != null)
                             {
                                 // interval->sql->get_pool()->release(interval->sql);
-                                interval.sqlResult.close();
-                                interval.sqlResult = null;
                                 interval.sql.close();
                                 interval.sql = null;
                                 uedge.intervals--;
@@ -4617,11 +4445,9 @@ else if(gm_order == DefaultEpisodicMemoryParams.GmOrderingChoices.mcv)
         for(EpmemInterval interval : interval_cleanup)
         {
             // epmem_interval* interval = *iter;
-            if(interval.sqlResult != null)
+            if(interval.sql != null)
             {
                 // interval->sql->get_pool()->release(interval->sql);
-                interval.sqlResult.close();
-                interval.sqlResult = null;
                 interval.sql.close();
                 interval.sql = null;
             }
@@ -4633,11 +4459,9 @@ else if(gm_order == DefaultEpisodicMemoryParams.GmOrderingChoices.mcv)
             for(EpmemPEdge pedge : pedge_caches[type].values())
             {
                 // epmem_pedge* pedge = (*iter).second;
-                if(pedge.sqlResults != null)
+                if(pedge.sql != null)
                 {
                     // pedge->sql->get_pool()->release(pedge->sql);
-                    pedge.sqlResults.close();
-                    pedge.sqlResults = null;
                     pedge.sql.close();
                     pedge.sql = null;
                 }
@@ -5112,25 +4936,8 @@ private boolean epmem_register_pedges(long parent, EpmemLiteral literal,
             int has_value = (literal.child_n_id != EPMEM_NODEID_BAD ? 1 : 0);
             // soar_module::pooled_sqlite_statement* pedge_sql = my_agent->epmem_stmts_graph->pool_find_edge_queries[is_edge][has_value]->request(my_agent->epmem_timers->query_sql_edge);
             
-            PreparedStatement pedge_sql = db.pool_find_edge_queries[is_edge][has_value].getCopy();
-            int bind_pos = 1;
-            if(is_edge == 0)
-            {
-                pedge_sql.setLong(bind_pos++, Long.MAX_VALUE);
-            }
-            pedge_sql.setLong(bind_pos++, triple.parent_n_id);
-            pedge_sql.setLong(bind_pos++, triple.attribute_s_id);
-            if(has_value != 0)
-            {
-                pedge_sql.setLong(bind_pos++, triple.child_n_id);
-            }
-            if(is_edge != 0)
-            {
-                pedge_sql.setLong(bind_pos++, after);
-            }
-            
-            ResultSet results = pedge_sql.executeQuery();
-            if(results.next())
+            QueryCursor pedge_sql = store.pool_find_edge_queries(is_edge, has_value, triple.parent_n_id, triple.attribute_s_id, triple.child_n_id, after);
+            if(pedge_sql.next())
             {
                 // allocate_with_pool(my_agent, &(my_agent->epmem_pedge_pool),
                 // &child_pedge);
@@ -5142,16 +4949,14 @@ private boolean epmem_register_pedges(long parent, EpmemLiteral literal,
                 // new(&(child_pedge->literals)) epmem_literal_set();
                 child_pedge.literals = new ConcurrentSkipListSet<>();
                 child_pedge.literals.add(literal);
-                child_pedge.sqlResults = results;
                 // child_pedge.time = child_pedge.sql.column_int(2);
-                child_pedge.time = results.getLong(2 + 1);
+                child_pedge.time = pedge_sql.getLong(2 + 1);
                 pedge_pq.add(child_pedge);
                 pedge_cache.put(triple.copyEpmemTriple(), child_pedge);
                 return true;
             }
             else
             {
-                results.close();
                 pedge_sql.close();
                 return false;
             }
@@ -5461,30 +5266,25 @@ else if(identifier.smem_lti != 0)
           // if we can find the LTI node id, cache it; otherwise, return failure
           // my_agent->epmem_stmts_graph->find_lti->bind_int(1, identifier.getNameLetter());
           // my_agent->epmem_stmts_graph->find_lti->bind_int(2, identifier.getNameNumber());
-            db.find_lti.setLong(1, identifier.getNameLetter());
-            db.find_lti.setLong(2, identifier.getNameNumber());
-            
-            try(ResultSet results = db.find_lti.executeQuery())
+            final long lti_n_id = store.find_lti(identifier.getNameLetter(), identifier.getNameNumber());
+            if(lti_n_id != 0)
             {
-                if(results.next())
-                {
-                    literal.value_is_id = EPMEM_RIT_STATE_EDGE;
-                    literal.is_leaf = true;
-                    literal.child_n_id = results.getLong(0 + 1);
-                    // my_agent->epmem_stmts_graph->find_lti->reinitialize();
-                    leaf_literals.add(literal);
-                }
-                else
-                {
-                    // my_agent->epmem_stmts_graph->find_lti->reinitialize();
-                    // literal->parents.~epmem_literal_set();
-                    // literal->children.~epmem_literal_set();
-                    literal.parents = null;
-                    literal.children = null;
-                    // free_with_pool(&(my_agent->epmem_literal_pool), literal);
-                    literal = null;
-                    return null;
-                }
+                literal.value_is_id = EPMEM_RIT_STATE_EDGE;
+                literal.is_leaf = true;
+                literal.child_n_id = lti_n_id;
+                // my_agent->epmem_stmts_graph->find_lti->reinitialize();
+                leaf_literals.add(literal);
+            }
+            else
+            {
+                // my_agent->epmem_stmts_graph->find_lti->reinitialize();
+                // literal->parents.~epmem_literal_set();
+                // literal->children.~epmem_literal_set();
+                literal.parents = null;
+                literal.children = null;
+                // free_with_pool(&(my_agent->epmem_literal_pool), literal);
+                literal = null;
+                return null;
             }
         }
         else
@@ -5620,18 +5420,9 @@ private long epmem_previous_episode(long memory_id)
         if(memory_id != EPMEM_MEMID_NONE)
         {
             // soar_module::sqlite_statement *my_q = my_agent->epmem_stmts_graph->prev_episode;
-            // don't use try-with-resources here as it will close myQuery, which we don't want
-            final PreparedStatement myQuery = db.prev_episode;
             try
             {
-                myQuery.setLong(1, memory_id);
-                try(ResultSet resultSet = myQuery.executeQuery())
-                {
-                    if(resultSet.next())
-                    {
-                        return_val = resultSet.getLong(0 + 1);
-                    }
-                }
+                return_val = store.prev_episode(memory_id);
             }
             catch(SQLException e)
             {
@@ -5664,19 +5455,9 @@ private long epmem_next_episode(long memory_id)
         
         if(memory_id != EPMEM_MEMID_NONE)
         {
-            // don't use try-with-resources here as it will close myQuery, which we don't want
-            final PreparedStatement myQuery = db.next_episode;
             try
             {
-                myQuery.setLong(1, memory_id);
-                try(ResultSet resultSet = myQuery.executeQuery())
-                {
-                    if(resultSet.next())
-                    {
-                        return_val = resultSet.getLong(0 + 1);
-                    }
-                }
-                
+                return_val = store.next_episode(memory_id);
             }
             catch(SQLException e)
             {
@@ -5871,7 +5652,6 @@ private void epmem_install_memory(
             }
             
             // first identifiers (i.e. reconstruct)
-            PreparedStatement my_q = db.get_wmes_with_identifier_values;
             {
                 // relates to finite automata: child_n_id = d(parent_n_id, attribute_s_id)
                 long /* epmem_node_id */ parent_n_id; // id
@@ -5894,31 +5674,25 @@ private void epmem_install_memory(
                 
                 epmem_rit_prep_left_right(memory_id, memory_id, epmem_rit_state_graph[EPMEM_RIT_STATE_EDGE]);
                 
-                my_q.setLong(1, memory_id);
-                my_q.setLong(2, memory_id);
-                my_q.setLong(3, memory_id);
-                my_q.setLong(4, memory_id);
-                my_q.setLong(5, memory_id);
-                ResultSet resultSet = my_q.executeQuery();
-                while(resultSet.next())
+                for(IdentifierWmeRow row : store.get_wmes_with_identifier_values(memory_id))
                 {
                     // parent_n_id, attribute_s_id, child_n_id, epmem_lti.soar_letter, epmem_lti.soar_number
                     // parent_n_id = my_q->column_int( 0 );
-                    parent_n_id = resultSet.getLong(0 + 1);
+                    parent_n_id = row.parent_n_id;
                     // q1 = my_q->column_int( 2 );
-                    child_n_id = resultSet.getLong(2 + 1);
+                    child_n_id = row.child_n_id;
                     // attr = epmem_reverse_hash( my_agent, my_q->column_int( 1 ), SYM_CONSTANT_SYMBOL_TYPE);
-                    attr = epmem_reverse_hash(resultSet.getLong(1 + 1));
+                    attr = epmem_reverse_hash(row.attribute_s_id);
                     
                     // short vs. long-term
                     // This is how Smem is doing this cast, but I'm not certain how
-                    char tempValLetter = (char) resultSet.getLong(3 + 1);
-                    val_is_short_term = (resultSet.wasNull());
+                    char tempValLetter = (char) row.soar_letter;
+                    val_is_short_term = (row.soar_letter == 0);
                     if(!val_is_short_term)
                     {
                         val_letter = tempValLetter;
                         // val_num = static_cast<uint64_t>( my_q->column_int( 4 ) );
-                        val_num = resultSet.getLong(4 + 1);
+                        val_num = row.soar_number;
                     }
                     
                     // get a reference to the parent
@@ -6059,7 +5833,6 @@ else if(filter != null)
                     }
                 }
                 // my_q->reinitialize();
-                resultSet.close();
                 
                 epmem_rit_clear_left_right();
                 
@@ -6226,7 +5999,6 @@ else if(filter != null)
             
             // then epmem_wmes_constant
             // f.wc_id, f.parent_n_id, f.attribute_s_id, f.value_s_id
-            my_q = db.get_wmes_with_constant_values;
             {
                 long /* epmem_node_id */ parent_n_id;
                 
@@ -6238,15 +6010,9 @@ else if(filter != null)
                         memory_id,
                         epmem_rit_state_graph[EPMEM_RIT_STATE_NODE]);
                 
-                my_q.setLong(1, memory_id);
-                my_q.setLong(2, memory_id);
-                my_q.setLong(3, memory_id);
-                my_q.setLong(4, memory_id);
-                
-                ResultSet resultSet = my_q.executeQuery();
-                while(resultSet.next())
+                for(ConstantWmeRow row : store.get_wmes_with_constant_values(memory_id))
                 {
-                    parent_n_id = resultSet.getLong(1 + 1);
+                    parent_n_id = row.parent_n_id;
                     
                     // get a reference to the parent
                     parent = ids.get(parent_n_id);
@@ -6259,11 +6025,11 @@ else if(filter != null)
                     {
                         // make a symbol to represent the attribute
                         // attr = epmem_reverse_hash( my_agent, my_q->column_int( 2 ));
-                        attr = epmem_reverse_hash(resultSet.getLong(2 + 1));
+                        attr = epmem_reverse_hash(row.attribute_s_id);
                         
                         // make a symbol to represent the value
                         // value = epmem_reverse_hash( my_agent, my_q->column_int( 3 ));
-                        value = epmem_reverse_hash(resultSet.getLong(3 + 1));
+                        value = epmem_reverse_hash(row.value_s_id);
                         
                         boolean should_install;
                         if(filter == null)
@@ -6334,7 +6100,6 @@ else if(compare_symbol(childWme.value, value))
                     }
                 }
                 // my_q->reinitialize();
-                resultSet.close();
                 epmem_rit_clear_left_right();
             }
             
@@ -6407,8 +6172,8 @@ else if(compare_symbol(childWme.value, value))
      */
     private void epmem_rit_clear_left_right() throws SQLException
     {
-        db.rit_truncate_left.execute();
-        db.rit_truncate_right.execute();
+        store.rit_truncate_left();
+        store.rit_truncate_right();
     }
     
     /**
@@ -6631,9 +6396,8 @@ else if(upper < right_node)
     private void epmem_rit_add_right(long id) throws SQLException
     {
         // my_agent->epmem_stmts_common->rit_add_right->bind_int( 1, id );
-        db.rit_add_right.setLong(1, id);
         // my_agent->epmem_stmts_common->rit_add_right->execute( soar_module::op_reinit );
-        db.rit_add_right.execute();
+        store.rit_add_right(id);
     }
     
     /**
@@ -6645,11 +6409,9 @@ private void epmem_rit_add_right(long id) throws SQLException
     private void epmem_rit_add_left(long min, long max) throws SQLException
     {
         // my_agent->epmem_stmts_common->rit_add_left->bind_int( 1, min );
-        db.rit_add_left.setLong(1, min);
         // my_agent->epmem_stmts_common->rit_add_left->bind_int( 2, max );
-        db.rit_add_left.setLong(2, max);
         // my_agent->epmem_stmts_common->rit_add_left->execute( soar_module::op_reinit );
-        db.rit_add_left.execute();
+        store.rit_add_left(min, max);
     }
     
     /**
@@ -6663,14 +6425,8 @@ private boolean epmem_valid_episode(long /* epmem_time_id */ memory_id) throws S
         boolean return_val = false;
         
         {
-            PreparedStatement my_q = db.valid_episode;
-            
-            my_q.setLong(1, memory_id);
-            ResultSet resultSet = my_q.executeQuery();
-            resultSet.next();
             // return_val = ( my_q->column_int( 0 ) > 0 );
-            return_val = (resultSet.getLong(0 + 1) > 0);
-            resultSet.close();
+            return_val = store.valid_episode(memory_id);
         }
         
         return return_val;
@@ -7164,11 +6920,9 @@ String epmem_print_episode_ex(long /* epmem_time_id */ memory_id) throws SoarExc
         // std::map< epmem_node_id, std::map< std::string, std::list< std::string > > > ep;
         Map<Long, Map<String, List<String>>> ep = new TreeMap<>();
         {
-            PreparedStatement my_q;
             String temp_s = null, temp_s2 = null, temp_s3;
             Long temp_i;
             
-            my_q = db.get_wmes_with_identifier_values;
             {
                 long /* epmem_node_id */ parent_n_id;
                 long /* epmem_node_id */ child_n_id;
@@ -7178,104 +6932,86 @@ String epmem_print_episode_ex(long /* epmem_time_id */ memory_id) throws SoarExc
                 epmem_rit_prep_left_right(memory_id, memory_id, epmem_rit_state_graph[EPMEM_RIT_STATE_EDGE]);
                 
                 // query for edges
-                my_q.setLong(1, memory_id);
-                my_q.setLong(2, memory_id);
-                my_q.setLong(3, memory_id);
-                my_q.setLong(4, memory_id);
-                my_q.setLong(5, memory_id);
-                
-                try(ResultSet result = my_q.executeQuery())
+                for(IdentifierWmeRow result : store.get_wmes_with_identifier_values(memory_id))
                 {
-                    while(result.next())
+                    // parent_n_id, attribute_s_id, child_n_id, epmem_lti.soar_letter, epmem_lti.soar_number
+                    parent_n_id = result.parent_n_id;
+                    child_n_id = result.child_n_id;
+                
+                    temp_s = epmem_reverse_hash_print(result.attribute_s_id);
+                    /*
+                     * The original port from CSoar did this. In the original version of Xerial this would return
+                     * the type of the VALUE retrieved, but in the new version of Xerial it returns the type of the
+                     * column. The column is not nullable and should be a character value, so we are assuming that
+                     * any 0s are what used to be nulls. --ACN
+                     * 
+                     * val_is_short_term =
+                     * ( db.column_type(result.getMetaData().getColumnType(3 + 1))
+                     * == EpisodicMemoryDatabase.value_type.null_t );
+                     */
+                    val_is_short_term = (result.soar_letter == 0);
+                    
+                    if(val_is_short_term)
+                    {
+                        temp_s2 = _epmem_print_sti(child_n_id);
+                    }
+                    else
                     {
-                        // parent_n_id, attribute_s_id, child_n_id, epmem_lti.soar_letter, epmem_lti.soar_number
-                        parent_n_id = result.getLong(0 + 1);
-                        child_n_id = result.getLong(2 + 1);
+                        temp_s2 = "@";
+                        temp_s2 += (char) result.soar_letter;
                         
-                        temp_s = epmem_reverse_hash_print(result.getLong(1 + 1));
-                        /*
-                         * The original port from CSoar did this. In the original version of Xerial this would return
-                         * the type of the VALUE retrieved, but in the new version of Xerial it returns the type of the
-                         * column. The column is not nullable and should be a character value, so we are assuming that
-                         * any 0s are what used to be nulls. --ACN
-                         * 
-                         * val_is_short_term =
-                         * ( db.column_type(result.getMetaData().getColumnType(3 + 1))
-                         * == EpisodicMemoryDatabase.value_type.null_t );
-                         */
-                        val_is_short_term = (result.getLong(3 + 1) == 0);
+                        temp_i = result.soar_number;
+                        // to_string( temp_i, temp_s3 );
+                        temp_s3 = temp_i.toString();
+                        temp_s2 += temp_s3;
                         
-                        if(val_is_short_term)
-                        {
-                            temp_s2 = _epmem_print_sti(child_n_id);
-                        }
-                        else
-                        {
-                            temp_s2 = "@";
-                            temp_s2 += (char) result.getLong(3 + 1);
-                            
-                            temp_i = result.getLong(4 + 1);
-                            // to_string( temp_i, temp_s3 );
-                            temp_s3 = temp_i.toString();
-                            temp_s2 += temp_s3;
+                        ltis.put(child_n_id, temp_s2);
+                    }
                             
-                            ltis.put(child_n_id, temp_s2);
-                        }
-                        
-                        // ep[ q0 ][ temp_s ].push_back( temp_s2 );
-                        Map<String, List<String>> nestedMap = ep.get(parent_n_id);
-                        if(nestedMap == null)
-                        {
-                            ep.put(parent_n_id, new TreeMap<String, List<String>>());
-                            nestedMap = ep.get(parent_n_id);
-                        }
-                        List<String> nestedList = nestedMap.get(temp_s);
-                        if(nestedList == null)
-                        {
-                            nestedMap.put(temp_s, new ArrayList<String>());
-                            nestedList = nestedMap.get(temp_s);
-                        }
-                        nestedList.add(temp_s2);
+                    // ep[ q0 ][ temp_s ].push_back( temp_s2 );
+                    Map<String, List<String>> nestedMap = ep.get(parent_n_id);
+                    if(nestedMap == null)
+                    {
+                        ep.put(parent_n_id, new TreeMap<String, List<String>>());
+                        nestedMap = ep.get(parent_n_id);
+                    }
+                    List<String> nestedList = nestedMap.get(temp_s);
+                    if(nestedList == null)
+                    {
+                        nestedMap.put(temp_s, new ArrayList<String>());
+                        nestedList = nestedMap.get(temp_s);
                     }
+                    nestedList.add(temp_s2);
                 }
                 
                 epmem_rit_clear_left_right();
             }
             
-            my_q = db.get_wmes_with_constant_values;
             {
                 Long /* epmem_node_id */ parent_n_id;
                 
                 epmem_rit_prep_left_right(memory_id, memory_id, epmem_rit_state_graph[EPMEM_RIT_STATE_NODE]);
                 
-                my_q.setLong(1, memory_id);
-                my_q.setLong(2, memory_id);
-                my_q.setLong(3, memory_id);
-                my_q.setLong(4, memory_id);
-                
-                try(ResultSet result = my_q.executeQuery())
+                for(ConstantWmeRow result : store.get_wmes_with_constant_values(memory_id))
                 {
-                    while(result.next())
+                    parent_n_id = result.parent_n_id;
+                    temp_s = epmem_reverse_hash_print(result.attribute_s_id);
+                    temp_s2 = epmem_reverse_hash_print(result.value_s_id);
+                
+                    // ep[ parent_n_id ][ temp_s ].push_back( temp_s2 );
+                    Map<String, List<String>> nestedMap = ep.get(parent_n_id);
+                    if(nestedMap == null)
                     {
-                        parent_n_id = result.getLong(1 + 1);
-                        temp_s = epmem_reverse_hash_print(result.getLong(2 + 1));
-                        temp_s2 = epmem_reverse_hash_print(result.getLong(3 + 1));
-                        
-                        // ep[ parent_n_id ][ temp_s ].push_back( temp_s2 );
-                        Map<String, List<String>> nestedMap = ep.get(parent_n_id);
-                        if(nestedMap == null)
-                        {
-                            ep.put(parent_n_id, new TreeMap<String, List<String>>());
-                            nestedMap = ep.get(parent_n_id);
-                        }
-                        List<String> nestedList = nestedMap.get(temp_s);
-                        if(nestedList == null)
-                        {
-                            nestedMap.put(temp_s, new ArrayList<String>());
-                            nestedList = nestedMap.get(temp_s);
-                        }
-                        nestedList.add(temp_s2);
+                        ep.put(parent_n_id, new TreeMap<String, List<String>>());
+                        nestedMap = ep.get(parent_n_id);
                     }
+                    List<String> nestedList = nestedMap.get(temp_s);
+                    if(nestedList == null)
+                    {
+                        nestedMap.put(temp_s, new ArrayList<String>());
+                        nestedList = nestedMap.get(temp_s);
+                    }
+                    nestedList.add(temp_s2);
                 }
                 
                 epmem_rit_clear_left_right();
@@ -7392,6 +7128,8 @@ boolean epmem_backup_db(String file_name, ByRef<String> err) throws SQLException
         
         if(db != null)
         {
+            epmem_flush_store();
+            
             return db.backupDb(file_name);
         }
         else
@@ -128,6 +128,43 @@ public String toString()
         on, off
     }
     
+    /**
+     * Whether the interval writes of episode storage are done by a
+     * background writer thread, see {@link AsyncEpisodicMemoryStore}
+     */
+    enum AsyncStorageChoices
+    {
+        on, off
+    }
+    
+    /**
+     * Where episodes live while the database is open. With {@code heap}, the
+     * episodic store is loaded from the database when it is opened and only
+     * written back on backup and close.
+     */
+    enum BackendChoices
+    {
+        database, heap;
+        
+        /**
+         * System property that selects the default backend for new agents
+         */
+        static final String PROPERTY = "jsoar.epmem.backend";
+        
+        static BackendChoices getDefault()
+        {
+            final String value = System.getProperty(PROPERTY);
+            for(BackendChoices choice : values())
+            {
+                if(choice.name().equals(value))
+                {
+                    return choice;
+                }
+            }
+            return database;
+        }
+    }
+    
     private static final String PREFIX = "epmem.params.";
     
     private static <T> PropertyKey.Builder<T> key(String name, Class<T> type)
@@ -162,6 +199,12 @@ private static <T> PropertyKey.Builder<T> key(String name, Class<T> type)
     static final PropertyKey<AppendDatabaseChoices> APPEND_DB = key("append-database", AppendDatabaseChoices.class).defaultValue(AppendDatabaseChoices.off).build();
     final EnumPropertyProvider<AppendDatabaseChoices> append_database = new EnumPropertyProvider<>(APPEND_DB);
     
+    static final PropertyKey<BackendChoices> BACKEND = key("backend", BackendChoices.class).defaultValue(BackendChoices.getDefault()).build();
+    final EnumPropertyProvider<BackendChoices> backend = new EnumPropertyProvider<>(BACKEND);
+    
+    static final PropertyKey<AsyncStorageChoices> ASYNC_STORAGE = key("async-storage", AsyncStorageChoices.class).defaultValue(AsyncStorageChoices.off).build();
+    final EnumPropertyProvider<AsyncStorageChoices> async_storage = new EnumPropertyProvider<>(ASYNC_STORAGE);
+    
     static final PropertyKey<Phase> PHASE = key("phase", Phase.class).defaultValue(Phase.output).build();
     final EnumPropertyProvider<Phase> phase = new EnumPropertyProvider<>(PHASE);
     
@@ -209,6 +252,8 @@ public DefaultEpisodicMemoryParams(PropertyManager properties, SymbolFactory sf)
         
         properties.setProvider(BALANCE, balance);
         properties.setProvider(APPEND_DB, append_database);
+        properties.setProvider(BACKEND, backend);
+        properties.setProvider(ASYNC_STORAGE, async_storage);
         
         // exclude ^epmem and ^smem attributes from being added to epmem by default
         exclusions.add((SymbolImpl) sf.createString("epmem"));
@@ -137,6 +137,44 @@ public final class EpisodicMemoryDatabase extends AbstractSoarDatabase
     // episodic_memory.cpp:1794:epmem_init_db
     PreparedStatement edge_unique_select;
     
+    PreparedStatement load_persistent_variables;
+    PreparedStatement load_symbols_type;
+    PreparedStatement load_symbols_integer;
+    PreparedStatement load_symbols_float;
+    PreparedStatement load_symbols_string;
+    PreparedStatement load_nodes;
+    PreparedStatement load_episodes;
+    PreparedStatement load_wmes_constant;
+    PreparedStatement load_wmes_identifier;
+    PreparedStatement load_wmes_constant_now;
+    PreparedStatement load_wmes_identifier_now;
+    PreparedStatement load_wmes_constant_point;
+    PreparedStatement load_wmes_identifier_point;
+    PreparedStatement load_wmes_constant_range;
+    PreparedStatement load_wmes_identifier_range;
+    PreparedStatement load_lti;
+    
+    PreparedStatement clear_persistent_variables;
+    PreparedStatement clear_symbols_type;
+    PreparedStatement clear_symbols_integer;
+    PreparedStatement clear_symbols_float;
+    PreparedStatement clear_symbols_string;
+    PreparedStatement clear_nodes;
+    PreparedStatement clear_episodes;
+    PreparedStatement clear_wmes_constant;
+    PreparedStatement clear_wmes_identifier;
+    PreparedStatement clear_wmes_constant_now;
+    PreparedStatement clear_wmes_identifier_now;
+    PreparedStatement clear_wmes_constant_point;
+    PreparedStatement clear_wmes_identifier_point;
+    PreparedStatement clear_wmes_constant_range;
+    PreparedStatement clear_wmes_identifier_range;
+    PreparedStatement clear_lti;
+    
+    PreparedStatement save_symbols_type;
+    PreparedStatement save_wmes_constant;
+    PreparedStatement save_wmes_identifier;
+    
     PreparedStatement database_version;
     PreparedStatement set_schema_version;
     PreparedStatement get_schema_version;
@@ -259,4 +297,30 @@ public void dropEpmemTables() throws SQLException
         drop_epmem_symbols_float.execute();
         drop_epmem_symbols_string.execute();
     }
+    
+    /**
+     * Delete every row from the tables that the in-memory store saves,
+     * keeping the tables themselves
+     * 
+     * @throws SQLException
+     */
+    public void clearEpmemTables() throws SQLException
+    {
+        clear_persistent_variables.execute();
+        clear_symbols_type.execute();
+        clear_symbols_integer.execute();
+        clear_symbols_float.execute();
+        clear_symbols_string.execute();
+        clear_nodes.execute();
+        clear_episodes.execute();
+        clear_wmes_constant.execute();
+        clear_wmes_identifier.execute();
+        clear_wmes_constant_now.execute();
+        clear_wmes_identifier_now.execute();
+        clear_wmes_constant_point.execute();
+        clear_wmes_identifier_point.execute();
+        clear_wmes_constant_range.execute();
+        clear_wmes_identifier_range.execute();
+        clear_lti.execute();
+    }
 }
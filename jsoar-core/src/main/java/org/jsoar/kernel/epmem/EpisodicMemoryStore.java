@@ -0,0 +1,274 @@
+package org.jsoar.kernel.epmem;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Storage backend for {@link DefaultEpisodicMemory}. There is one method for
+ * each of the queries and updates in {@code statements.properties}, named
+ * after the statement, and each has the same semantics as its statement over
+ * the tables in {@code structures.sql}. In particular, ids handed out by the
+ * {@code add_*} methods follow SQLite's rowid rules and rows come back in the
+ * order SQLite returns them, so that encoding and retrieval don't depend on
+ * the backend.
+ * 
+ * <p>Lookups that find nothing return {@code 0} for ids and times and
+ * {@code null} for objects, matching the checks that
+ * {@link DefaultEpisodicMemory} makes on the corresponding result sets.
+ * 
+ * @see JdbcEpisodicMemoryStore
+ * @see InMemoryEpisodicMemoryStore
+ */
+interface EpisodicMemoryStore
+{
+    /**
+     * A row of one of the {@code *_now} tables
+     */
+    final class NowRow
+    {
+        final long id;
+        final /* epmem_time_id */ long start_episode_id;
+        
+        NowRow(long id, long start_episode_id)
+        {
+            this.id = id;
+            this.start_episode_id = start_episode_id;
+        }
+    }
+    
+    /**
+     * A row of the wmes_constant table
+     */
+    final class ConstantWmeRow
+    {
+        final long wc_id;
+        final /* epmem_node_id */ long parent_n_id;
+        final /* epmem_hash_id */ long attribute_s_id;
+        final /* epmem_hash_id */ long value_s_id;
+        
+        ConstantWmeRow(long wc_id, long parent_n_id, long attribute_s_id, long value_s_id)
+        {
+            this.wc_id = wc_id;
+            this.parent_n_id = parent_n_id;
+            this.attribute_s_id = attribute_s_id;
+            this.value_s_id = value_s_id;
+        }
+    }
+    
+    /**
+     * A row of the wmes_identifier table, joined with the name of the child
+     * if it was an lti at the time of the query. The name is 0 otherwise, and
+     * in rows that don't come from a join.
+     */
+    final class IdentifierWmeRow
+    {
+        final long wi_id;
+        final /* epmem_node_id */ long parent_n_id;
+        final /* epmem_hash_id */ long attribute_s_id;
+        final /* epmem_node_id */ long child_n_id;
+        final long soar_letter;
+        final long soar_number;
+        
+        IdentifierWmeRow(long wi_id, long parent_n_id, long attribute_s_id, long child_n_id, long soar_letter, long soar_number)
+        {
+            this.wi_id = wi_id;
+            this.parent_n_id = parent_n_id;
+            this.attribute_s_id = attribute_s_id;
+            this.child_n_id = child_n_id;
+            this.soar_letter = soar_letter;
+            this.soar_number = soar_number;
+        }
+    }
+    
+    /**
+     * A cursor over the result of one of the {@code pool_*} queries, which
+     * the interval walk in {@link DefaultEpisodicMemory} keeps open and
+     * advances one row at a time. As with sqlite-jdbc, the first row can be
+     * read before the first call to {@link #next()}, and that call stays on
+     * the first row.
+     */
+    interface QueryCursor extends AutoCloseable
+    {
+        /**
+         * @return true if the cursor is on a row
+         */
+        boolean next() throws SQLException;
+        
+        /**
+         * @param columnIndex the column, starting at 1
+         * @return the value of the column in the current row. Columns past
+         *     the end of the row read as 0, as they do with the C SQLite API.
+         */
+        long getLong(int columnIndex) throws SQLException;
+        
+        @Override
+        void close() throws SQLException;
+    }
+    
+    Long var_get(long variable_id) throws SQLException;
+    
+    void var_set(long variable_id, long variable_value) throws SQLException;
+    
+    void rit_add_left(long rit_min, long rit_max) throws SQLException;
+    
+    void rit_truncate_left() throws SQLException;
+    
+    void rit_add_right(long rit_id) throws SQLException;
+    
+    void rit_truncate_right() throws SQLException;
+    
+    long hash_get_int(long value) throws SQLException;
+    
+    long hash_get_float(double value) throws SQLException;
+    
+    long hash_get_str(String value) throws SQLException;
+    
+    /**
+     * @return the symbol type, or {@code null} if there is no symbol with
+     *     the id
+     */
+    Integer hash_get_type(long s_id) throws SQLException;
+    
+    /**
+     * @return the new symbol id
+     */
+    long hash_add_type(int symbol_type) throws SQLException;
+    
+    void hash_add_int(long s_id, long value) throws SQLException;
+    
+    void hash_add_float(long s_id, double value) throws SQLException;
+    
+    void hash_add_str(long s_id, String value) throws SQLException;
+    
+    Long hash_rev_int(long s_id) throws SQLException;
+    
+    Double hash_rev_float(long s_id) throws SQLException;
+    
+    String hash_rev_str(long s_id) throws SQLException;
+    
+    void add_node(long n_id) throws SQLException;
+    
+    void add_time(long episode_id) throws SQLException;
+    
+    void add_epmem_wmes_constant_now(long wc_id, long start_episode_id) throws SQLException;
+    
+    void delete_epmem_wmes_constant_now(long wc_id) throws SQLException;
+    
+    void add_epmem_wmes_constant_point(long wc_id, long episode_id) throws SQLException;
+    
+    void add_epmem_wmes_constant_range(long rit_id, long start_episode_id, long end_episode_id, long wc_id) throws SQLException;
+    
+    /**
+     * @return the new wc_id
+     */
+    long add_epmem_wmes_constant(long parent_n_id, long attribute_s_id, long value_s_id) throws SQLException;
+    
+    long find_epmem_wmes_constant(long parent_n_id, long attribute_s_id, long value_s_id) throws SQLException;
+    
+    void add_epmem_wmes_identifier_now(long wi_id, long start_episode_id) throws SQLException;
+    
+    void delete_epmem_wmes_identifier_now(long wi_id) throws SQLException;
+    
+    void add_epmem_wmes_identifier_point(long wi_id, long episode_id) throws SQLException;
+    
+    void add_epmem_wmes_identifier_range(long rit_id, long start_episode_id, long end_episode_id, long wi_id) throws SQLException;
+    
+    /**
+     * @return the new wi_id
+     */
+    long add_epmem_wmes_identifier(long parent_n_id, long attribute_s_id, long child_n_id, long last_episode_id) throws SQLException;
+    
+    long find_epmem_wmes_identifier_shared(long parent_n_id, long attribute_s_id, long child_n_id) throws SQLException;
+    
+    void update_epmem_wmes_identifier_last_episode_id(long wi_id, long last_episode_id) throws SQLException;
+    
+    boolean valid_episode(long episode_id) throws SQLException;
+    
+    long next_episode(long episode_id) throws SQLException;
+    
+    long prev_episode(long episode_id) throws SQLException;
+    
+    /**
+     * The left and right nodes of the interval tree must have been prepared
+     * for the episode.
+     * 
+     * @return the constant wmes in the episode, ordered by wc_id
+     */
+    List<ConstantWmeRow> get_wmes_with_constant_values(long episode_id) throws SQLException;
+    
+    /**
+     * The left and right nodes of the interval tree must have been prepared
+     * for the episode.
+     * 
+     * @return the identifier wmes in the episode with the names of children
+     *     that were ltis by then, ordered by parent and then child
+     */
+    List<IdentifierWmeRow> get_wmes_with_identifier_values(long episode_id) throws SQLException;
+    
+    /**
+     * Add an lti, unless the node or the name is already an lti
+     */
+    void promote_id(long n_id, long soar_letter, long soar_number, long promotion_episode_id) throws SQLException;
+    
+    long find_lti(long soar_letter, long soar_number) throws SQLException;
+    
+    long find_lti_promotion_time(long n_id) throws SQLException;
+    
+    /**
+     * @return a cursor over a single row with a single column
+     */
+    QueryCursor pool_dummy(long start) throws SQLException;
+    
+    /**
+     * @param child_n_id the value or child to look for if {@code has_value}
+     *     is 1, ignored otherwise
+     * @param after lower bound on the last episode of identifier wmes,
+     *     ignored for constants
+     * @return a cursor over (id, value or child, last episode) rows
+     */
+    QueryCursor pool_find_edge_queries(int is_edge, int has_value, long parent_n_id, long attribute_s_id, long child_n_id, long after) throws SQLException;
+    
+    /**
+     * @return a cursor over the start or end points, most recent first, of
+     *     the intervals of the given type of a wme
+     */
+    QueryCursor pool_find_interval_queries(int value_is_id, int point_type, int interval_type, long id, long current_episode) throws SQLException;
+    
+    /**
+     * @return as {@link #pool_find_interval_queries(int, int, int, long, long)}
+     *     for an identifier wme whose child is an lti, without the ranges
+     *     that ended before it was promoted
+     */
+    QueryCursor pool_find_lti_queries(int point_type, int interval_type, long id, long promotion_episode_id, long current_episode) throws SQLException;
+    
+    long get_max_time() throws SQLException;
+    
+    List<NowRow> now_select_node() throws SQLException;
+    
+    List<NowRow> now_select_edge() throws SQLException;
+    
+    void now_delete_node() throws SQLException;
+    
+    void now_delete_edge() throws SQLException;
+    
+    long minmax_select_node() throws SQLException;
+    
+    long minmax_select_edge() throws SQLException;
+    
+    /**
+     * @return every identifier wme, ordered by parent, attribute and child
+     */
+    List<IdentifierWmeRow> edge_unique_select() throws SQLException;
+    
+    /**
+     * Write anything held only by this store to the database. The caller is
+     * responsible for transactions.
+     */
+    void flush() throws SQLException;
+    
+    /**
+     * Release anything the store holds besides the database. The store is
+     * not used afterwards.
+     */
+    void close() throws SQLException;
+}
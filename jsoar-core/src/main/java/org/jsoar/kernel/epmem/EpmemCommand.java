@@ -11,6 +11,8 @@
 import org.jsoar.kernel.Agent;
 import org.jsoar.kernel.SoarException;
 import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.AppendDatabaseChoices;
+import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.AsyncStorageChoices;
+import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.BackendChoices;
 import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.Force;
 import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.GmOrderingChoices;
 import org.jsoar.kernel.epmem.DefaultEpisodicMemoryParams.GraphMatchChoices;
@@ -217,6 +219,24 @@ else if(paramToSet.equals("lazy-commit"))
                     props.set(DefaultEpisodicMemoryParams.LAZY_COMMIT, LazyCommitChoices.valueOf(value));
                     return "Set lazy-commit to " + LazyCommitChoices.valueOf(value);
                 }
+                else if(paramToSet.equals("backend"))
+                {
+                    if(epmem.db != null)
+                    {
+                        return "Backend is protected while the database is open.";
+                    }
+                    props.set(DefaultEpisodicMemoryParams.BACKEND, BackendChoices.valueOf(value));
+                    return "Set backend to " + BackendChoices.valueOf(value);
+                }
+                else if(paramToSet.equals("async-storage"))
+                {
+                    if(epmem.db != null)
+                    {
+                        return "Async storage is protected while the database is open.";
+                    }
+                    props.set(DefaultEpisodicMemoryParams.ASYNC_STORAGE, AsyncStorageChoices.valueOf(value));
+                    return "Set async-storage to " + AsyncStorageChoices.valueOf(value);
+                }
                 else if(paramToSet.equals("exclusions"))
                 {
                     DefaultEpisodicMemoryParams params = epmem.getParams();
@@ -393,6 +413,7 @@ private String doEpmem()
             pw.printf(PrintHelper.generateItem("driver-type:", nativeOrPure, 40));
             pw.printf(PrintHelper.generateItem("protocol:", p.protocol.get(), 40));
             pw.printf(PrintHelper.generateItem("append-database:", p.append_database.get(), 40));
+            pw.printf(PrintHelper.generateItem("backend:", p.backend.get(), 40));
             
             String database = "memory";
             String path = "";
@@ -405,6 +426,7 @@ private String doEpmem()
             pw.printf(PrintHelper.generateItem("database:", database, 40));
             pw.printf(PrintHelper.generateItem("path:", path, 40));
             pw.printf(PrintHelper.generateItem("lazy-commit:", p.lazy_commit.get(), 40));
+            pw.printf(PrintHelper.generateItem("async-storage:", p.async_storage.get(), 40));
             pw.printf(PrintHelper.generateSection("Retrieval", 40));
             pw.printf(PrintHelper.generateItem("balance:", p.balance.get(), 40));
             pw.printf(PrintHelper.generateItem("graph-match:", p.graph_match.get(), 40));
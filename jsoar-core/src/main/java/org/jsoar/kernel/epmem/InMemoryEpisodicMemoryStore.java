@@ -0,0 +1,1432 @@
+package org.jsoar.kernel.epmem;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jsoar.util.LongHashMap;
+
+/**
+ * {@link EpisodicMemoryStore} that keeps the whole episodic store in the
+ * Java heap. The tables are read from an {@link EpisodicMemoryDatabase} by
+ * {@link #load(EpisodicMemoryDatabase)} and only written back to it by
+ * {@link #flush()}, so the database remains the on-disk format.
+ * 
+ * <p>The intervals of each wme are kept in lists sorted by time, which the
+ * interval walk of a cue-based retrieval reads backwards from the current
+ * episode without running a query. The relational interval tree that the
+ * database emulates with the {@code rit_id} column is an actual tree of
+ * nodes here: each node holds its ranges sorted by start and by end, so
+ * reconstructing an episode only touches the ranges of the nodes on its
+ * path.
+ */
+class InMemoryEpisodicMemoryStore implements EpisodicMemoryStore
+{
+    /**
+     * Order of the rows of get_wmes_with_identifier_values
+     */
+    private static final Comparator<IdentifierWme> BY_PARENT_AND_CHILD = (a, b) ->
+    {
+        int c = Long.compare(a.parent_n_id, b.parent_n_id);
+        if(c == 0)
+        {
+            c = Long.compare(a.child_n_id, b.child_n_id);
+        }
+        return c != 0 ? c : Long.compare(a.wi_id, b.wi_id);
+    };
+    
+    /**
+     * Order of the wmes_identifier_parent_attribute_last index as
+     * pool_find_edge_queries_1_0 walks it, i.e. backwards
+     */
+    private static final Comparator<IdentifierWme> BY_LAST_EPISODE = (a, b) ->
+    {
+        final int c = Long.compare(b.last_episode_id, a.last_episode_id);
+        return c != 0 ? c : Long.compare(b.wi_id, a.wi_id);
+    };
+    
+    private static final Comparator<Range> BY_START = Comparator.comparingLong(r -> r.start_episode_id);
+    private static final Comparator<Range> BY_END = (a, b) ->
+    {
+        final int c = Long.compare(a.end_episode_id, b.end_episode_id);
+        return c != 0 ? c : Long.compare(a.start_episode_id, b.start_episode_id);
+    };
+    
+    private static class ConstantWme
+    {
+        final long wc_id;
+        final long parent_n_id;
+        final long attribute_s_id;
+        final long value_s_id;
+        
+        ConstantWme(long wc_id, long parent_n_id, long attribute_s_id, long value_s_id)
+        {
+            this.wc_id = wc_id;
+            this.parent_n_id = parent_n_id;
+            this.attribute_s_id = attribute_s_id;
+            this.value_s_id = value_s_id;
+        }
+    }
+    
+    private static class IdentifierWme
+    {
+        final long wi_id;
+        final long parent_n_id;
+        final long attribute_s_id;
+        final long child_n_id;
+        long last_episode_id;
+        
+        IdentifierWme(long wi_id, long parent_n_id, long attribute_s_id, long child_n_id, long last_episode_id)
+        {
+            this.wi_id = wi_id;
+            this.parent_n_id = parent_n_id;
+            this.attribute_s_id = attribute_s_id;
+            this.child_n_id = child_n_id;
+            this.last_episode_id = last_episode_id;
+        }
+    }
+    
+    private static class Lti
+    {
+        final long n_id;
+        final long soar_letter;
+        final long soar_number;
+        final long promotion_episode_id;
+        
+        Lti(long n_id, long soar_letter, long soar_number, long promotion_episode_id)
+        {
+            this.n_id = n_id;
+            this.soar_letter = soar_letter;
+            this.soar_number = soar_number;
+            this.promotion_episode_id = promotion_episode_id;
+        }
+    }
+    
+    private static class Range
+    {
+        final long rit_id;
+        final long start_episode_id;
+        final long end_episode_id;
+        final long id;
+        
+        Range(long rit_id, long start_episode_id, long end_episode_id, long id)
+        {
+            this.rit_id = rit_id;
+            this.start_episode_id = start_episode_id;
+            this.end_episode_id = end_episode_id;
+            this.id = id;
+        }
+    }
+    
+    /**
+     * A row of a {@code *_now} table, with its position in insertion order
+     */
+    private static class Now
+    {
+        final long id;
+        final long start_episode_id;
+        final long sequence;
+        
+        Now(long id, long start_episode_id, long sequence)
+        {
+            this.id = id;
+            this.start_episode_id = start_episode_id;
+            this.sequence = sequence;
+        }
+    }
+    
+    /**
+     * The ranges stored at one node of the interval tree. Left nodes are
+     * searched for ranges that end at or after an episode, right nodes for
+     * ranges that start at or before it.
+     */
+    private static class RitNode
+    {
+        final List<Range> byStart = new ArrayList<>();
+        final List<Range> byEnd = new ArrayList<>();
+    }
+    
+    /**
+     * The now, point and range tables of either constant or identifier wmes
+     */
+    private static class IntervalTable
+    {
+        final String name;
+        
+        // *_now
+        final LongHashMap<List<Now>> now = new LongHashMap<>();
+        long nowSequence;
+        
+        // *_point, by wme and by episode
+        final LongHashMap<SortedLongs> pointsById = new LongHashMap<>();
+        final LongHashMap<SortedLongs> pointsByEpisode = new LongHashMap<>();
+        
+        // *_range, by wme and by tree node. The intervals of one wme never
+        // overlap, so ordering them by start also orders them by end.
+        final LongHashMap<List<Range>> rangesById = new LongHashMap<>();
+        final LongHashMap<RitNode> rangesByNode = new LongHashMap<>();
+        
+        IntervalTable(String name)
+        {
+            this.name = name;
+        }
+        
+        void addNow(long id, long start_episode_id) throws SQLException
+        {
+            List<Now> rows = now.get(id);
+            if(rows == null)
+            {
+                rows = new ArrayList<>(1);
+                now.put(id, rows);
+            }
+            for(Now row : rows)
+            {
+                if(row.start_episode_id == start_episode_id)
+                {
+                    throw new SQLException("UNIQUE constraint failed: " + name + "_now");
+                }
+            }
+            rows.add(new Now(id, start_episode_id, nowSequence++));
+        }
+        
+        List<NowRow> selectNow()
+        {
+            final List<Now> rows = new ArrayList<>();
+            for(List<Now> forId : now.values())
+            {
+                rows.addAll(forId);
+            }
+            rows.sort(Comparator.comparingLong(row -> row.sequence));
+            final List<NowRow> result = new ArrayList<>(rows.size());
+            for(Now row : rows)
+            {
+                result.add(new NowRow(row.id, row.start_episode_id));
+            }
+            return result;
+        }
+        
+        void addPoint(long id, long episode_id) throws SQLException
+        {
+            if(!sorted(pointsById, id).add(episode_id))
+            {
+                throw new SQLException("UNIQUE constraint failed: " + name + "_point");
+            }
+            sorted(pointsByEpisode, episode_id).add(id);
+        }
+        
+        void addRange(Range range) throws SQLException
+        {
+            List<Range> forId = rangesById.get(range.id);
+            if(forId == null)
+            {
+                forId = new ArrayList<>();
+                rangesById.put(range.id, forId);
+            }
+            final int at = Collections.binarySearch(forId, range, BY_START);
+            if(at >= 0)
+            {
+                throw new SQLException("UNIQUE constraint failed: " + name + "_range");
+            }
+            forId.add(-at - 1, range);
+            
+            RitNode node = rangesByNode.get(range.rit_id);
+            if(node == null)
+            {
+                node = new RitNode();
+                rangesByNode.put(range.rit_id, node);
+            }
+            insertSorted(node.byStart, range, BY_START);
+            insertSorted(node.byEnd, range, BY_END);
+        }
+        
+        /**
+         * The ids in an episode, as selected by the subquery of the
+         * get_wmes_with_*_values statements
+         */
+        SortedLongs idsAt(long episode_id, SortedLongs rit_left, SortedLongs rit_right)
+        {
+            final SortedLongs ids = new SortedLongs();
+            for(List<Now> rows : now.values())
+            {
+                for(Now row : rows)
+                {
+                    if(row.start_episode_id <= episode_id)
+                    {
+                        ids.add(row.id);
+                    }
+                }
+            }
+            final SortedLongs points = pointsByEpisode.get(episode_id);
+            if(points != null)
+            {
+                for(int i = 0; i < points.size; ++i)
+                {
+                    ids.add(points.values[i]);
+                }
+            }
+            for(int i = 0; i < rit_left.size; ++i)
+            {
+                final RitNode node = rangesByNode.get(rit_left.values[i]);
+                if(node != null)
+                {
+                    // ranges that end at or after the episode
+                    for(int j = firstEndingAtOrAfter(node.byEnd, episode_id); j < node.byEnd.size(); ++j)
+                    {
+                        ids.add(node.byEnd.get(j).id);
+                    }
+                }
+            }
+            for(int i = 0; i < rit_right.size; ++i)
+            {
+                final RitNode node = rangesByNode.get(rit_right.values[i]);
+                if(node != null)
+                {
+                    // ranges that start at or before the episode
+                    for(int j = 0; j < node.byStart.size() && node.byStart.get(j).start_episode_id <= episode_id; ++j)
+                    {
+                        ids.add(node.byStart.get(j).id);
+                    }
+                }
+            }
+            return ids;
+        }
+        
+        HeapCursor intervals(int point_type, int interval_type, long id, long min_end, long current_episode)
+        {
+            final boolean start = point_type == DefaultEpisodicMemory.EPMEM_RANGE_START;
+            if(interval_type == DefaultEpisodicMemory.EPMEM_RANGE_EP)
+            {
+                return new RangeCursor(rangesById.get(id), current_episode, start, min_end).open();
+            }
+            if(interval_type == DefaultEpisodicMemory.EPMEM_RANGE_NOW)
+            {
+                final List<Now> rows = new ArrayList<>();
+                final List<Now> forId = now.get(id);
+                if(forId != null)
+                {
+                    for(Now row : forId)
+                    {
+                        if(row.start_episode_id <= current_episode)
+                        {
+                            rows.add(row);
+                        }
+                    }
+                }
+                rows.sort((a, b) -> Long.compare(b.start_episode_id, a.start_episode_id));
+                final List<long[]> result = new ArrayList<>(rows.size());
+                for(Now row : rows)
+                {
+                    result.add(new long[] { start ? row.start_episode_id - 1 : current_episode });
+                }
+                return new RowsCursor(result).open();
+            }
+            return new PointCursor(pointsById.get(id), current_episode, start ? -1 : 0).open();
+        }
+        
+        void clear()
+        {
+            now.clear();
+            nowSequence = 0;
+            pointsById.clear();
+            pointsByEpisode.clear();
+            rangesById.clear();
+            rangesByNode.clear();
+        }
+        
+        void save(PreparedStatement saveNow, PreparedStatement savePoint, PreparedStatement saveRange) throws SQLException
+        {
+            for(NowRow row : selectNow())
+            {
+                saveNow.setLong(1, row.id);
+                saveNow.setLong(2, row.start_episode_id);
+                saveNow.addBatch();
+            }
+            saveNow.executeBatch();
+            
+            for(long id : sortedKeys(pointsById))
+            {
+                final SortedLongs episodes = pointsById.get(id);
+                for(int i = 0; i < episodes.size; ++i)
+                {
+                    savePoint.setLong(1, id);
+                    savePoint.setLong(2, episodes.values[i]);
+                    savePoint.addBatch();
+                }
+            }
+            savePoint.executeBatch();
+            
+            for(long id : sortedKeys(rangesById))
+            {
+                for(Range range : rangesById.get(id))
+                {
+                    saveRange.setLong(1, range.rit_id);
+                    saveRange.setLong(2, range.start_episode_id);
+                    saveRange.setLong(3, range.end_episode_id);
+                    saveRange.setLong(4, range.id);
+                    saveRange.addBatch();
+                }
+            }
+            saveRange.executeBatch();
+        }
+    }
+    
+    private final EpisodicMemoryDatabase db;
+    
+    // persistent_variables
+    private final LongHashMap<Long> variables = new LongHashMap<>();
+    
+    // rit_left_nodes and rit_right_nodes
+    private final SortedLongs ritLeft = new SortedLongs();
+    private final SortedLongs ritRight = new SortedLongs();
+    
+    // symbols_*
+    private final LongHashMap<Integer> symbolTypes = new LongHashMap<>();
+    private final LongHashMap<Long> integers = new LongHashMap<>();
+    private final LongHashMap<Double> floats = new LongHashMap<>();
+    private final LongHashMap<String> strings = new LongHashMap<>();
+    private final Map<Long, Long> integerIds = new HashMap<>();
+    private final Map<Double, Long> floatIds = new HashMap<>();
+    private final Map<String, Long> stringIds = new HashMap<>();
+    private long maxSymbolId;
+    
+    // nodes and episodes
+    private final SortedLongs nodes = new SortedLongs();
+    private final SortedLongs episodes = new SortedLongs();
+    
+    // wmes_constant and its parent_attribute_value index
+    private final LongHashMap<ConstantWme> constants = new LongHashMap<>();
+    private final LongHashMap<LongHashMap<TreeMap<Long, ConstantWme>>> constantsByParent = new LongHashMap<>();
+    private long maxConstantId;
+    
+    // wmes_identifier and its parent_attribute_child index
+    private final LongHashMap<IdentifierWme> identifiers = new LongHashMap<>();
+    private final LongHashMap<LongHashMap<TreeMap<Long, IdentifierWme>>> identifiersByParent = new LongHashMap<>();
+    private long maxIdentifierId;
+    
+    private final IntervalTable constantIntervals = new IntervalTable("wmes_constant");
+    private final IntervalTable identifierIntervals = new IntervalTable("wmes_identifier");
+    
+    // lti and its letter_num index
+    private final LongHashMap<Lti> ltis = new LongHashMap<>();
+    private final LongHashMap<LongHashMap<Lti>> ltisByName = new LongHashMap<>();
+    
+    private InMemoryEpisodicMemoryStore(EpisodicMemoryDatabase db)
+    {
+        this.db = db;
+    }
+    
+    /**
+     * Create a store holding the current contents of a database.
+     * 
+     * @param db the database, with its statements prepared
+     * @return a new store that flushes to the same database
+     * @throws SQLException
+     */
+    static InMemoryEpisodicMemoryStore load(EpisodicMemoryDatabase db) throws SQLException
+    {
+        final InMemoryEpisodicMemoryStore store = new InMemoryEpisodicMemoryStore(db);
+        try(ResultSet rs = db.load_persistent_variables.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.variables.put(rs.getLong(0 + 1), rs.getLong(1 + 1));
+            }
+        }
+        try(ResultSet rs = db.load_symbols_type.executeQuery())
+        {
+            while(rs.next())
+            {
+                final long s_id = rs.getLong(0 + 1);
+                store.symbolTypes.put(s_id, rs.getInt(1 + 1));
+                store.maxSymbolId = Math.max(store.maxSymbolId, s_id);
+            }
+        }
+        try(ResultSet rs = db.load_symbols_integer.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.hash_add_int(rs.getLong(0 + 1), rs.getLong(1 + 1));
+            }
+        }
+        try(ResultSet rs = db.load_symbols_float.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.hash_add_float(rs.getLong(0 + 1), rs.getDouble(1 + 1));
+            }
+        }
+        try(ResultSet rs = db.load_symbols_string.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.hash_add_str(rs.getLong(0 + 1), rs.getString(1 + 1));
+            }
+        }
+        try(ResultSet rs = db.load_nodes.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.add_node(rs.getLong(0 + 1));
+            }
+        }
+        try(ResultSet rs = db.load_episodes.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.add_time(rs.getLong(0 + 1));
+            }
+        }
+        try(ResultSet rs = db.load_wmes_constant.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.addConstant(new ConstantWme(rs.getLong(0 + 1), rs.getLong(1 + 1), rs.getLong(2 + 1), rs.getLong(3 + 1)));
+            }
+        }
+        try(ResultSet rs = db.load_wmes_identifier.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.addIdentifier(new IdentifierWme(rs.getLong(0 + 1), rs.getLong(1 + 1), rs.getLong(2 + 1), rs.getLong(3 + 1), rs.getLong(4 + 1)));
+            }
+        }
+        loadIntervals(store.constantIntervals, db.load_wmes_constant_now, db.load_wmes_constant_point, db.load_wmes_constant_range);
+        loadIntervals(store.identifierIntervals, db.load_wmes_identifier_now, db.load_wmes_identifier_point, db.load_wmes_identifier_range);
+        try(ResultSet rs = db.load_lti.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.promote_id(rs.getLong(0 + 1), rs.getLong(1 + 1), rs.getLong(2 + 1), rs.getLong(3 + 1));
+            }
+        }
+        return store;
+    }
+    
+    private static void loadIntervals(IntervalTable table, PreparedStatement loadNow, PreparedStatement loadPoint, PreparedStatement loadRange) throws SQLException
+    {
+        try(ResultSet rs = loadNow.executeQuery())
+        {
+            while(rs.next())
+            {
+                table.addNow(rs.getLong(0 + 1), rs.getLong(1 + 1));
+            }
+        }
+        try(ResultSet rs = loadPoint.executeQuery())
+        {
+            while(rs.next())
+            {
+                table.addPoint(rs.getLong(0 + 1), rs.getLong(1 + 1));
+            }
+        }
+        try(ResultSet rs = loadRange.executeQuery())
+        {
+            while(rs.next())
+            {
+                table.addRange(new Range(rs.getLong(0 + 1), rs.getLong(1 + 1), rs.getLong(2 + 1), rs.getLong(3 + 1)));
+            }
+        }
+    }
+    
+    @Override
+    public Long var_get(long variable_id)
+    {
+        return variables.get(variable_id);
+    }
+    
+    @Override
+    public void var_set(long variable_id, long variable_value)
+    {
+        variables.put(variable_id, variable_value);
+    }
+    
+    @Override
+    public void rit_add_left(long rit_min, long rit_max)
+    {
+        // only rit_min is ever read back
+        ritLeft.add(rit_min);
+    }
+    
+    @Override
+    public void rit_truncate_left()
+    {
+        ritLeft.clear();
+    }
+    
+    @Override
+    public void rit_add_right(long rit_id)
+    {
+        ritRight.add(rit_id);
+    }
+    
+    @Override
+    public void rit_truncate_right()
+    {
+        ritRight.clear();
+    }
+    
+    @Override
+    public long hash_get_int(long value)
+    {
+        final Long s_id = integerIds.get(value);
+        return s_id != null ? s_id : 0;
+    }
+    
+    @Override
+    public long hash_get_float(double value)
+    {
+        final Long s_id = floatIds.get(floatKey(value));
+        return s_id != null ? s_id : 0;
+    }
+    
+    @Override
+    public long hash_get_str(String value)
+    {
+        final Long s_id = stringIds.get(value);
+        return s_id != null ? s_id : 0;
+    }
+    
+    @Override
+    public Integer hash_get_type(long s_id)
+    {
+        return symbolTypes.get(s_id);
+    }
+    
+    @Override
+    public long hash_add_type(int symbol_type)
+    {
+        final long s_id = ++maxSymbolId;
+        symbolTypes.put(s_id, symbol_type);
+        return s_id;
+    }
+    
+    @Override
+    public void hash_add_int(long s_id, long value) throws SQLException
+    {
+        if(integers.containsKey(s_id) || integerIds.containsKey(value))
+        {
+            throw new SQLException("UNIQUE constraint failed: symbols_integer");
+        }
+        integers.put(s_id, value);
+        integerIds.put(value, s_id);
+    }
+    
+    @Override
+    public void hash_add_float(long s_id, double value) throws SQLException
+    {
+        if(floats.containsKey(s_id) || floatIds.containsKey(floatKey(value)))
+        {
+            throw new SQLException("UNIQUE constraint failed: symbols_float");
+        }
+        floats.put(s_id, value);
+        floatIds.put(floatKey(value), s_id);
+    }
+    
+    @Override
+    public void hash_add_str(long s_id, String value) throws SQLException
+    {
+        if(strings.containsKey(s_id) || stringIds.containsKey(value))
+        {
+            throw new SQLException("UNIQUE constraint failed: symbols_string");
+        }
+        strings.put(s_id, value);
+        stringIds.put(value, s_id);
+    }
+    
+    @Override
+    public Long hash_rev_int(long s_id)
+    {
+        return integers.get(s_id);
+    }
+    
+    @Override
+    public Double hash_rev_float(long s_id)
+    {
+        return floats.get(s_id);
+    }
+    
+    @Override
+    public String hash_rev_str(long s_id)
+    {
+        return strings.get(s_id);
+    }
+    
+    @Override
+    public void add_node(long n_id) throws SQLException
+    {
+        if(!nodes.add(n_id))
+        {
+            throw new SQLException("UNIQUE constraint failed: nodes.n_id");
+        }
+    }
+    
+    @Override
+    public void add_time(long episode_id) throws SQLException
+    {
+        if(!episodes.add(episode_id))
+        {
+            throw new SQLException("UNIQUE constraint failed: episodes.episode_id");
+        }
+    }
+    
+    @Override
+    public void add_epmem_wmes_constant_now(long wc_id, long start_episode_id) throws SQLException
+    {
+        constantIntervals.addNow(wc_id, start_episode_id);
+    }
+    
+    @Override
+    public void delete_epmem_wmes_constant_now(long wc_id)
+    {
+        constantIntervals.now.remove(wc_id);
+    }
+    
+    @Override
+    public void add_epmem_wmes_constant_point(long wc_id, long episode_id) throws SQLException
+    {
+        constantIntervals.addPoint(wc_id, episode_id);
+    }
+    
+    @Override
+    public void add_epmem_wmes_constant_range(long rit_id, long start_episode_id, long end_episode_id, long wc_id) throws SQLException
+    {
+        constantIntervals.addRange(new Range(rit_id, start_episode_id, end_episode_id, wc_id));
+    }
+    
+    @Override
+    public long add_epmem_wmes_constant(long parent_n_id, long attribute_s_id, long value_s_id) throws SQLException
+    {
+        final ConstantWme wme = new ConstantWme(maxConstantId + 1, parent_n_id, attribute_s_id, value_s_id);
+        addConstant(wme);
+        return wme.wc_id;
+    }
+    
+    @Override
+    public long find_epmem_wmes_constant(long parent_n_id, long attribute_s_id, long value_s_id)
+    {
+        final TreeMap<Long, ConstantWme> byValue = index(constantsByParent, parent_n_id, attribute_s_id);
+        final ConstantWme wme = byValue != null ? byValue.get(value_s_id) : null;
+        return wme != null ? wme.wc_id : 0;
+    }
+    
+    @Override
+    public void add_epmem_wmes_identifier_now(long wi_id, long start_episode_id) throws SQLException
+    {
+        identifierIntervals.addNow(wi_id, start_episode_id);
+    }
+    
+    @Override
+    public void delete_epmem_wmes_identifier_now(long wi_id)
+    {
+        identifierIntervals.now.remove(wi_id);
+    }
+    
+    @Override
+    public void add_epmem_wmes_identifier_point(long wi_id, long episode_id) throws SQLException
+    {
+        identifierIntervals.addPoint(wi_id, episode_id);
+    }
+    
+    @Override
+    public void add_epmem_wmes_identifier_range(long rit_id, long start_episode_id, long end_episode_id, long wi_id) throws SQLException
+    {
+        identifierIntervals.addRange(new Range(rit_id, start_episode_id, end_episode_id, wi_id));
+    }
+    
+    @Override
+    public long add_epmem_wmes_identifier(long parent_n_id, long attribute_s_id, long child_n_id, long last_episode_id) throws SQLException
+    {
+        final IdentifierWme wme = new IdentifierWme(maxIdentifierId + 1, parent_n_id, attribute_s_id, child_n_id, last_episode_id);
+        addIdentifier(wme);
+        return wme.wi_id;
+    }
+    
+    @Override
+    public long find_epmem_wmes_identifier_shared(long parent_n_id, long attribute_s_id, long child_n_id)
+    {
+        final TreeMap<Long, IdentifierWme> byChild = index(identifiersByParent, parent_n_id, attribute_s_id);
+        final IdentifierWme wme = byChild != null ? byChild.get(child_n_id) : null;
+        return wme != null ? wme.wi_id : 0;
+    }
+    
+    @Override
+    public void update_epmem_wmes_identifier_last_episode_id(long wi_id, long last_episode_id)
+    {
+        final IdentifierWme wme = identifiers.get(wi_id);
+        if(wme != null)
+        {
+            wme.last_episode_id = last_episode_id;
+        }
+    }
+    
+    @Override
+    public boolean valid_episode(long episode_id)
+    {
+        return episodes.indexOf(episode_id) >= 0;
+    }
+    
+    @Override
+    public long next_episode(long episode_id)
+    {
+        final int i = episodes.countAtOrBelow(episode_id);
+        return i < episodes.size ? episodes.values[i] : 0;
+    }
+    
+    @Override
+    public long prev_episode(long episode_id)
+    {
+        final int i = episodes.countAtOrBelow(episode_id - 1);
+        return i > 0 ? episodes.values[i - 1] : 0;
+    }
+    
+    @Override
+    public List<ConstantWmeRow> get_wmes_with_constant_values(long episode_id)
+    {
+        final SortedLongs ids = constantIntervals.idsAt(episode_id, ritLeft, ritRight);
+        final List<ConstantWmeRow> result = new ArrayList<>(ids.size);
+        for(int i = 0; i < ids.size; ++i)
+        {
+            final ConstantWme wme = constants.get(ids.values[i]);
+            if(wme != null)
+            {
+                result.add(new ConstantWmeRow(wme.wc_id, wme.parent_n_id, wme.attribute_s_id, wme.value_s_id));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public List<IdentifierWmeRow> get_wmes_with_identifier_values(long episode_id)
+    {
+        final SortedLongs ids = identifierIntervals.idsAt(episode_id, ritLeft, ritRight);
+        final List<IdentifierWme> wmes = new ArrayList<>(ids.size);
+        for(int i = 0; i < ids.size; ++i)
+        {
+            final IdentifierWme wme = identifiers.get(ids.values[i]);
+            if(wme != null)
+            {
+                wmes.add(wme);
+            }
+        }
+        wmes.sort(BY_PARENT_AND_CHILD);
+        
+        final List<IdentifierWmeRow> result = new ArrayList<>(wmes.size());
+        for(IdentifierWme wme : wmes)
+        {
+            // LEFT JOIN lti ON (child_n_id=n_id AND promotion_episode_id <= ?)
+            final Lti lti = ltis.get(wme.child_n_id);
+            if(lti != null && lti.promotion_episode_id <= episode_id)
+            {
+                result.add(new IdentifierWmeRow(wme.wi_id, wme.parent_n_id, wme.attribute_s_id, wme.child_n_id, lti.soar_letter, lti.soar_number));
+            }
+            else
+            {
+                result.add(new IdentifierWmeRow(wme.wi_id, wme.parent_n_id, wme.attribute_s_id, wme.child_n_id, 0, 0));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public void promote_id(long n_id, long soar_letter, long soar_number, long promotion_episode_id)
+    {
+        // INSERT OR IGNORE
+        if(ltis.containsKey(n_id) || findLti(soar_letter, soar_number) != null)
+        {
+            return;
+        }
+        final Lti lti = new Lti(n_id, soar_letter, soar_number, promotion_episode_id);
+        ltis.put(n_id, lti);
+        inner(ltisByName, soar_letter).put(soar_number, lti);
+    }
+    
+    @Override
+    public long find_lti(long soar_letter, long soar_number)
+    {
+        final Lti lti = findLti(soar_letter, soar_number);
+        return lti != null ? lti.n_id : 0;
+    }
+    
+    @Override
+    public long find_lti_promotion_time(long n_id)
+    {
+        final Lti lti = ltis.get(n_id);
+        return lti != null ? lti.promotion_episode_id : 0;
+    }
+    
+    @Override
+    public QueryCursor pool_dummy(long start)
+    {
+        return new RowsCursor(Collections.singletonList(new long[] { start })).open();
+    }
+    
+    @Override
+    public QueryCursor pool_find_edge_queries(int is_edge, int has_value, long parent_n_id, long attribute_s_id, long child_n_id, long after)
+    {
+        final List<long[]> rows = new ArrayList<>();
+        if(is_edge == 0)
+        {
+            final TreeMap<Long, ConstantWme> byValue = index(constantsByParent, parent_n_id, attribute_s_id);
+            if(byValue != null)
+            {
+                for(ConstantWme wme : has_value != 0 ? single(byValue.get(child_n_id)) : byValue.values())
+                {
+                    rows.add(new long[] { wme.wc_id, wme.value_s_id, Long.MAX_VALUE });
+                }
+            }
+        }
+        else
+        {
+            final TreeMap<Long, IdentifierWme> byChild = index(identifiersByParent, parent_n_id, attribute_s_id);
+            if(byChild != null)
+            {
+                final List<IdentifierWme> wmes = new ArrayList<>();
+                for(IdentifierWme wme : has_value != 0 ? single(byChild.get(child_n_id)) : byChild.values())
+                {
+                    if(after < wme.last_episode_id)
+                    {
+                        wmes.add(wme);
+                    }
+                }
+                wmes.sort(BY_LAST_EPISODE);
+                for(IdentifierWme wme : wmes)
+                {
+                    rows.add(new long[] { wme.wi_id, wme.child_n_id, wme.last_episode_id });
+                }
+            }
+        }
+        return new RowsCursor(rows).open();
+    }
+    
+    @Override
+    public QueryCursor pool_find_interval_queries(int value_is_id, int point_type, int interval_type, long id, long current_episode)
+    {
+        final IntervalTable table = value_is_id != 0 ? identifierIntervals : constantIntervals;
+        return table.intervals(point_type, interval_type, id, Long.MIN_VALUE, current_episode);
+    }
+    
+    @Override
+    public QueryCursor pool_find_lti_queries(int point_type, int interval_type, long id, long promotion_episode_id, long current_episode)
+    {
+        return identifierIntervals.intervals(point_type, interval_type, id, promotion_episode_id, current_episode);
+    }
+    
+    @Override
+    public long get_max_time()
+    {
+        return episodes.size > 0 ? episodes.values[episodes.size - 1] : 0;
+    }
+    
+    @Override
+    public List<NowRow> now_select_node()
+    {
+        return constantIntervals.selectNow();
+    }
+    
+    @Override
+    public List<NowRow> now_select_edge()
+    {
+        return identifierIntervals.selectNow();
+    }
+    
+    @Override
+    public void now_delete_node()
+    {
+        constantIntervals.now.clear();
+    }
+    
+    @Override
+    public void now_delete_edge()
+    {
+        identifierIntervals.now.clear();
+    }
+    
+    @Override
+    public long minmax_select_node()
+    {
+        return constants.isEmpty() ? 0 : maxConstantId;
+    }
+    
+    @Override
+    public long minmax_select_edge()
+    {
+        return identifiers.isEmpty() ? 0 : maxIdentifierId;
+    }
+    
+    @Override
+    public List<IdentifierWmeRow> edge_unique_select()
+    {
+        final List<IdentifierWmeRow> result = new ArrayList<>(identifiers.size());
+        for(long parent : sortedKeys(identifiersByParent))
+        {
+            final LongHashMap<TreeMap<Long, IdentifierWme>> byAttribute = identifiersByParent.get(parent);
+            for(long attribute : sortedKeys(byAttribute))
+            {
+                for(IdentifierWme wme : byAttribute.get(attribute).values())
+                {
+                    result.add(new IdentifierWmeRow(wme.wi_id, wme.parent_n_id, wme.attribute_s_id, wme.child_n_id, 0, 0));
+                }
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public void flush() throws SQLException
+    {
+        db.clearEpmemTables();
+        
+        for(long variable : sortedKeys(variables))
+        {
+            db.var_set.setLong(1, variable);
+            db.var_set.setLong(2, variables.get(variable));
+            db.var_set.addBatch();
+        }
+        db.var_set.executeBatch();
+        
+        for(long s : sortedKeys(symbolTypes))
+        {
+            db.save_symbols_type.setLong(1, s);
+            db.save_symbols_type.setInt(2, symbolTypes.get(s));
+            db.save_symbols_type.addBatch();
+        }
+        db.save_symbols_type.executeBatch();
+        for(long s : sortedKeys(integers))
+        {
+            db.hash_add_int.setLong(1, s);
+            db.hash_add_int.setLong(2, integers.get(s));
+            db.hash_add_int.addBatch();
+        }
+        db.hash_add_int.executeBatch();
+        for(long s : sortedKeys(floats))
+        {
+            db.hash_add_float.setLong(1, s);
+            db.hash_add_float.setDouble(2, floats.get(s));
+            db.hash_add_float.addBatch();
+        }
+        db.hash_add_float.executeBatch();
+        for(long s : sortedKeys(strings))
+        {
+            db.hash_add_str.setLong(1, s);
+            db.hash_add_str.setString(2, strings.get(s));
+            db.hash_add_str.addBatch();
+        }
+        db.hash_add_str.executeBatch();
+        
+        saveLongs(nodes, db.add_node);
+        saveLongs(episodes, db.add_time);
+        
+        for(long wc_id : sortedKeys(constants))
+        {
+            final ConstantWme wme = constants.get(wc_id);
+            db.save_wmes_constant.setLong(1, wme.wc_id);
+            db.save_wmes_constant.setLong(2, wme.parent_n_id);
+            db.save_wmes_constant.setLong(3, wme.attribute_s_id);
+            db.save_wmes_constant.setLong(4, wme.value_s_id);
+            db.save_wmes_constant.addBatch();
+        }
+        db.save_wmes_constant.executeBatch();
+        for(long wi_id : sortedKeys(identifiers))
+        {
+            final IdentifierWme wme = identifiers.get(wi_id);
+            db.save_wmes_identifier.setLong(1, wme.wi_id);
+            db.save_wmes_identifier.setLong(2, wme.parent_n_id);
+            db.save_wmes_identifier.setLong(3, wme.attribute_s_id);
+            db.save_wmes_identifier.setLong(4, wme.child_n_id);
+            db.save_wmes_identifier.setLong(5, wme.last_episode_id);
+            db.save_wmes_identifier.addBatch();
+        }
+        db.save_wmes_identifier.executeBatch();
+        
+        constantIntervals.save(db.add_epmem_wmes_constant_now, db.add_epmem_wmes_constant_point, db.add_epmem_wmes_constant_range);
+        identifierIntervals.save(db.add_epmem_wmes_identifier_now, db.add_epmem_wmes_identifier_point, db.add_epmem_wmes_identifier_range);
+        
+        for(long n_id : sortedKeys(ltis))
+        {
+            final Lti lti = ltis.get(n_id);
+            db.promote_id.setLong(1, lti.n_id);
+            db.promote_id.setLong(2, lti.soar_letter);
+            db.promote_id.setLong(3, lti.soar_number);
+            db.promote_id.setLong(4, lti.promotion_episode_id);
+            db.promote_id.addBatch();
+        }
+        db.promote_id.executeBatch();
+    }
+    
+    @Override
+    public void close()
+    {
+        // nothing but memory, which goes with the store
+    }
+    
+    private void addConstant(ConstantWme wme) throws SQLException
+    {
+        final TreeMap<Long, ConstantWme> byValue = createIndex(constantsByParent, wme.parent_n_id, wme.attribute_s_id);
+        if(constants.containsKey(wme.wc_id) || byValue.containsKey(wme.value_s_id))
+        {
+            throw new SQLException("UNIQUE constraint failed: wmes_constant");
+        }
+        byValue.put(wme.value_s_id, wme);
+        constants.put(wme.wc_id, wme);
+        maxConstantId = Math.max(maxConstantId, wme.wc_id);
+    }
+    
+    private void addIdentifier(IdentifierWme wme) throws SQLException
+    {
+        final TreeMap<Long, IdentifierWme> byChild = createIndex(identifiersByParent, wme.parent_n_id, wme.attribute_s_id);
+        if(identifiers.containsKey(wme.wi_id) || byChild.containsKey(wme.child_n_id))
+        {
+            throw new SQLException("UNIQUE constraint failed: wmes_identifier");
+        }
+        byChild.put(wme.child_n_id, wme);
+        identifiers.put(wme.wi_id, wme);
+        maxIdentifierId = Math.max(maxIdentifierId, wme.wi_id);
+    }
+    
+    private Lti findLti(long soar_letter, long soar_number)
+    {
+        final LongHashMap<Lti> byNumber = ltisByName.get(soar_letter);
+        return byNumber != null ? byNumber.get(soar_number) : null;
+    }
+    
+    private static void saveLongs(SortedLongs values, PreparedStatement save) throws SQLException
+    {
+        for(int i = 0; i < values.size; ++i)
+        {
+            save.setLong(1, values.values[i]);
+            save.addBatch();
+        }
+        save.executeBatch();
+    }
+    
+    private static Double floatKey(double value)
+    {
+        // SQLite compares REALs numerically, so 0.0 and -0.0 are the same value
+        return value == 0.0 ? 0.0 : value;
+    }
+    
+    private static <T> List<T> single(T value)
+    {
+        return value != null ? Collections.singletonList(value) : Collections.<T> emptyList();
+    }
+    
+    private static <V> TreeMap<Long, V> index(LongHashMap<LongHashMap<TreeMap<Long, V>>> index, long parent_n_id, long attribute_s_id)
+    {
+        final LongHashMap<TreeMap<Long, V>> byAttribute = index.get(parent_n_id);
+        return byAttribute != null ? byAttribute.get(attribute_s_id) : null;
+    }
+    
+    private static <V> TreeMap<Long, V> createIndex(LongHashMap<LongHashMap<TreeMap<Long, V>>> index, long parent_n_id, long attribute_s_id)
+    {
+        final LongHashMap<TreeMap<Long, V>> byAttribute = inner(index, parent_n_id);
+        TreeMap<Long, V> result = byAttribute.get(attribute_s_id);
+        if(result == null)
+        {
+            result = new TreeMap<>();
+            byAttribute.put(attribute_s_id, result);
+        }
+        return result;
+    }
+    
+    private static <V> LongHashMap<V> inner(LongHashMap<LongHashMap<V>> outer, long key)
+    {
+        LongHashMap<V> result = outer.get(key);
+        if(result == null)
+        {
+            result = new LongHashMap<>();
+            outer.put(key, result);
+        }
+        return result;
+    }
+    
+    private static SortedLongs sorted(LongHashMap<SortedLongs> map, long key)
+    {
+        SortedLongs result = map.get(key);
+        if(result == null)
+        {
+            result = new SortedLongs();
+            map.put(key, result);
+        }
+        return result;
+    }
+    
+    private static void insertSorted(List<Range> list, Range range, Comparator<Range> order)
+    {
+        // ranges are almost always added in time order, so this is usually
+        // an append
+        int at = list.size();
+        while(at > 0 && order.compare(list.get(at - 1), range) > 0)
+        {
+            at--;
+        }
+        list.add(at, range);
+    }
+    
+    private static int firstEndingAtOrAfter(List<Range> byEnd, long episode_id)
+    {
+        int lo = 0;
+        int hi = byEnd.size();
+        while(lo < hi)
+        {
+            final int mid = (lo + hi) >>> 1;
+            if(byEnd.get(mid).end_episode_id < episode_id)
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    private static long[] sortedKeys(LongHashMap<?> map)
+    {
+        final long[] keys = map.keys();
+        Arrays.sort(keys);
+        return keys;
+    }
+    
+    /**
+     * A set of longs kept in a sorted array
+     */
+    private static class SortedLongs
+    {
+        long[] values = new long[4];
+        int size;
+        
+        /**
+         * @return false if the value was already in the set
+         */
+        boolean add(long value)
+        {
+            // values mostly arrive in increasing order
+            if(size == 0 || values[size - 1] < value)
+            {
+                if(size == values.length)
+                {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size++] = value;
+                return true;
+            }
+            final int at = Arrays.binarySearch(values, 0, size, value);
+            if(at >= 0)
+            {
+                return false;
+            }
+            final int insert = -at - 1;
+            if(size == values.length)
+            {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, insert, values, insert + 1, size - insert);
+            values[insert] = value;
+            size++;
+            return true;
+        }
+        
+        int indexOf(long value)
+        {
+            return Arrays.binarySearch(values, 0, size, value);
+        }
+        
+        /**
+         * @return the number of values that are less than or equal to the
+         *     given value
+         */
+        int countAtOrBelow(long value)
+        {
+            final int at = Arrays.binarySearch(values, 0, size, value);
+            return at >= 0 ? at + 1 : -at - 1;
+        }
+        
+        void clear()
+        {
+            size = 0;
+        }
+    }
+    
+    /**
+     * A cursor that reads its rows on demand. As with sqlite-jdbc, the cursor
+     * is on the first row as soon as it is opened and the first call to
+     * {@link #next()} doesn't move it.
+     */
+    private abstract static class HeapCursor implements QueryCursor
+    {
+        private boolean started;
+        private boolean onRow;
+        
+        /**
+         * Move to the next row
+         * 
+         * @return false if there are no more rows
+         */
+        abstract boolean advance();
+        
+        /**
+         * @return a column of the current row, or 0 past its end
+         */
+        abstract long column(int columnIndex);
+        
+        final HeapCursor open()
+        {
+            onRow = advance();
+            return this;
+        }
+        
+        @Override
+        public boolean next()
+        {
+            if(!started)
+            {
+                started = true;
+                return onRow;
+            }
+            onRow = onRow && advance();
+            return onRow;
+        }
+        
+        @Override
+        public long getLong(int columnIndex)
+        {
+            return onRow ? column(columnIndex) : 0;
+        }
+        
+        @Override
+        public void close()
+        {
+            onRow = false;
+        }
+    }
+    
+    private static class RowsCursor extends HeapCursor
+    {
+        private final List<long[]> rows;
+        private int next;
+        private long[] current;
+        
+        RowsCursor(List<long[]> rows)
+        {
+            this.rows = rows;
+        }
+        
+        @Override
+        boolean advance()
+        {
+            current = next < rows.size() ? rows.get(next++) : null;
+            return current != null;
+        }
+        
+        @Override
+        long column(int columnIndex)
+        {
+            return columnIndex <= current.length ? current[columnIndex - 1] : 0;
+        }
+    }
+    
+    /**
+     * Walks the points of a wme backwards from the current episode
+     */
+    private static class PointCursor extends HeapCursor
+    {
+        private final SortedLongs points;
+        private final long offset;
+        private int next;
+        private long current;
+        
+        PointCursor(SortedLongs points, long current_episode, long offset)
+        {
+            this.points = points;
+            this.offset = offset;
+            this.next = points != null ? points.countAtOrBelow(current_episode) - 1 : -1;
+        }
+        
+        @Override
+        boolean advance()
+        {
+            if(next < 0)
+            {
+                return false;
+            }
+            current = points.values[next--] + offset;
+            return true;
+        }
+        
+        @Override
+        long column(int columnIndex)
+        {
+            return columnIndex == 1 ? current : 0;
+        }
+    }
+    
+    /**
+     * Walks the ranges of a wme backwards from the current episode, reading
+     * either their starts, offset by one, or their ends
+     */
+    private static class RangeCursor extends HeapCursor
+    {
+        private final List<Range> ranges;
+        private final boolean start;
+        private final long min_end;
+        private int next;
+        private long current;
+        
+        RangeCursor(List<Range> ranges, long current_episode, boolean start, long min_end)
+        {
+            this.ranges = ranges;
+            this.start = start;
+            this.min_end = min_end;
+            int last = -1;
+            if(ranges != null)
+            {
+                int lo = 0;
+                int hi = ranges.size();
+                while(lo < hi)
+                {
+                    final int mid = (lo + hi) >>> 1;
+                    if(ranges.get(mid).start_episode_id <= current_episode)
+                    {
+                        lo = mid + 1;
+                    }
+                    else
+                    {
+                        hi = mid;
+                    }
+                }
+                last = lo - 1;
+            }
+            this.next = last;
+        }
+        
+        @Override
+        boolean advance()
+        {
+            while(next >= 0)
+            {
+                final Range range = ranges.get(next--);
+                if(range.end_episode_id < min_end || (!start && range.end_episode_id <= 0))
+                {
+                    continue;
+                }
+                current = start ? range.start_episode_id - 1 : range.end_episode_id;
+                return true;
+            }
+            return false;
+        }
+        
+        @Override
+        long column(int columnIndex)
+        {
+            return columnIndex == 1 ? current : 0;
+        }
+    }
+}
@@ -0,0 +1,564 @@
+package org.jsoar.kernel.epmem;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoar.util.JdbcTools;
+
+/**
+ * {@link EpisodicMemoryStore} that executes the prepared statements of an
+ * {@link EpisodicMemoryDatabase}. Every update goes straight to the
+ * database.
+ */
+class JdbcEpisodicMemoryStore implements EpisodicMemoryStore
+{
+    private final EpisodicMemoryDatabase db;
+    
+    JdbcEpisodicMemoryStore(EpisodicMemoryDatabase db)
+    {
+        this.db = db;
+    }
+    
+    @Override
+    public Long var_get(long variable_id) throws SQLException
+    {
+        db.var_get.setLong(1, variable_id);
+        try(ResultSet rs = db.var_get.executeQuery())
+        {
+            return rs.next() ? rs.getLong(0 + 1) : null;
+        }
+    }
+    
+    @Override
+    public void var_set(long variable_id, long variable_value) throws SQLException
+    {
+        db.var_set.setLong(1, variable_id);
+        db.var_set.setLong(2, variable_value);
+        db.var_set.execute();
+    }
+    
+    @Override
+    public void rit_add_left(long rit_min, long rit_max) throws SQLException
+    {
+        db.rit_add_left.setLong(1, rit_min);
+        db.rit_add_left.setLong(2, rit_max);
+        db.rit_add_left.execute();
+    }
+    
+    @Override
+    public void rit_truncate_left() throws SQLException
+    {
+        db.rit_truncate_left.execute();
+    }
+    
+    @Override
+    public void rit_add_right(long rit_id) throws SQLException
+    {
+        db.rit_add_right.setLong(1, rit_id);
+        db.rit_add_right.execute();
+    }
+    
+    @Override
+    public void rit_truncate_right() throws SQLException
+    {
+        db.rit_truncate_right.execute();
+    }
+    
+    @Override
+    public long hash_get_int(long value) throws SQLException
+    {
+        db.hash_get_int.setLong(1, value);
+        return firstLong(db.hash_get_int);
+    }
+    
+    @Override
+    public long hash_get_float(double value) throws SQLException
+    {
+        db.hash_get_float.setDouble(1, value);
+        return firstLong(db.hash_get_float);
+    }
+    
+    @Override
+    public long hash_get_str(String value) throws SQLException
+    {
+        db.hash_get_str.setString(1, value);
+        return firstLong(db.hash_get_str);
+    }
+    
+    @Override
+    public Integer hash_get_type(long s_id) throws SQLException
+    {
+        db.hash_get_type.setLong(1, s_id);
+        try(ResultSet rs = db.hash_get_type.executeQuery())
+        {
+            return rs.next() ? rs.getInt(0 + 1) : null;
+        }
+    }
+    
+    @Override
+    public long hash_add_type(int symbol_type) throws SQLException
+    {
+        db.hash_add_type.setInt(1, symbol_type);
+        return JdbcTools.insertAndGetRowId(db.hash_add_type);
+    }
+    
+    @Override
+    public void hash_add_int(long s_id, long value) throws SQLException
+    {
+        db.hash_add_int.setLong(1, s_id);
+        db.hash_add_int.setLong(2, value);
+        db.hash_add_int.execute();
+    }
+    
+    @Override
+    public void hash_add_float(long s_id, double value) throws SQLException
+    {
+        db.hash_add_float.setLong(1, s_id);
+        db.hash_add_float.setDouble(2, value);
+        db.hash_add_float.execute();
+    }
+    
+    @Override
+    public void hash_add_str(long s_id, String value) throws SQLException
+    {
+        db.hash_add_str.setLong(1, s_id);
+        db.hash_add_str.setString(2, value);
+        db.hash_add_str.execute();
+    }
+    
+    @Override
+    public Long hash_rev_int(long s_id) throws SQLException
+    {
+        db.hash_rev_int.setLong(1, s_id);
+        try(ResultSet rs = db.hash_rev_int.executeQuery())
+        {
+            return rs.next() ? rs.getLong(0 + 1) : null;
+        }
+    }
+    
+    @Override
+    public Double hash_rev_float(long s_id) throws SQLException
+    {
+        db.hash_rev_float.setLong(1, s_id);
+        try(ResultSet rs = db.hash_rev_float.executeQuery())
+        {
+            return rs.next() ? rs.getDouble(0 + 1) : null;
+        }
+    }
+    
+    @Override
+    public String hash_rev_str(long s_id) throws SQLException
+    {
+        db.hash_rev_str.setLong(1, s_id);
+        try(ResultSet rs = db.hash_rev_str.executeQuery())
+        {
+            return rs.next() ? rs.getString(0 + 1) : null;
+        }
+    }
+    
+    @Override
+    public void add_node(long n_id) throws SQLException
+    {
+        db.add_node.setLong(1, n_id);
+        db.add_node.execute();
+    }
+    
+    @Override
+    public void add_time(long episode_id) throws SQLException
+    {
+        db.add_time.setLong(1, episode_id);
+        db.add_time.executeUpdate(/* soar_module::op_reinit */);
+    }
+    
+    @Override
+    public void add_epmem_wmes_constant_now(long wc_id, long start_episode_id) throws SQLException
+    {
+        db.add_epmem_wmes_constant_now.setLong(1, wc_id);
+        db.add_epmem_wmes_constant_now.setLong(2, start_episode_id);
+        db.add_epmem_wmes_constant_now.executeUpdate(/* soar_module::op_reinit */);
+    }
+    
+    @Override
+    public void delete_epmem_wmes_constant_now(long wc_id) throws SQLException
+    {
+        db.delete_epmem_wmes_constant_now.setLong(1, wc_id);
+        db.delete_epmem_wmes_constant_now.executeUpdate(/* soar_module::op_reinit */);
+    }
+    
+    @Override
+    public void add_epmem_wmes_constant_point(long wc_id, long episode_id) throws SQLException
+    {
+        db.add_epmem_wmes_constant_point.setLong(1, wc_id);
+        db.add_epmem_wmes_constant_point.setLong(2, episode_id);
+        db.add_epmem_wmes_constant_point.executeUpdate(/* soar_module::op_reinit */);
+    }
+    
+    @Override
+    public void add_epmem_wmes_constant_range(long rit_id, long start_episode_id, long end_episode_id, long wc_id) throws SQLException
+    {
+        addRange(db.add_epmem_wmes_constant_range, rit_id, start_episode_id, end_episode_id, wc_id);
+    }
+    
+    @Override
+    public long add_epmem_wmes_constant(long parent_n_id, long attribute_s_id, long value_s_id) throws SQLException
+    {
+        db.add_epmem_wmes_constant.setLong(1, parent_n_id);
+        db.add_epmem_wmes_constant.setLong(2, attribute_s_id);
+        db.add_epmem_wmes_constant.setLong(3, value_s_id);
+        return JdbcTools.insertAndGetRowId(db.add_epmem_wmes_constant);
+    }
+    
+    @Override
+    public long find_epmem_wmes_constant(long parent_n_id, long attribute_s_id, long value_s_id) throws SQLException
+    {
+        db.find_epmem_wmes_constant.setLong(1, parent_n_id);
+        db.find_epmem_wmes_constant.setLong(2, attribute_s_id);
+        db.find_epmem_wmes_constant.setLong(3, value_s_id);
+        return firstLong(db.find_epmem_wmes_constant);
+    }
+    
+    @Override
+    public void add_epmem_wmes_identifier_now(long wi_id, long start_episode_id) throws SQLException
+    {
+        db.add_epmem_wmes_identifier_now.setLong(1, wi_id);
+        db.add_epmem_wmes_identifier_now.setLong(2, start_episode_id);
+        db.add_epmem_wmes_identifier_now.executeUpdate(/* soar_module::op_reinit */);
+    }
+    
+    @Override
+    public void delete_epmem_wmes_identifier_now(long wi_id) throws SQLException
+    {
+        db.delete_epmem_wmes_identifier_now.setLong(1, wi_id);
+        db.delete_epmem_wmes_identifier_now.executeUpdate(/* soar_module::op_reinit */);
+    }
+    
+    @Override
+    public void add_epmem_wmes_identifier_point(long wi_id, long episode_id) throws SQLException
+    {
+        db.add_epmem_wmes_identifier_point.setLong(1, wi_id);
+        db.add_epmem_wmes_identifier_point.setLong(2, episode_id);
+        db.add_epmem_wmes_identifier_point.executeUpdate(/* soar_module::op_reinit */);
+    }
+    
+    @Override
+    public void add_epmem_wmes_identifier_range(long rit_id, long start_episode_id, long end_episode_id, long wi_id) throws SQLException
+    {
+        addRange(db.add_epmem_wmes_identifier_range, rit_id, start_episode_id, end_episode_id, wi_id);
+    }
+    
+    @Override
+    public long add_epmem_wmes_identifier(long parent_n_id, long attribute_s_id, long child_n_id, long last_episode_id) throws SQLException
+    {
+        db.add_epmem_wmes_identifier.setLong(1, parent_n_id);
+        db.add_epmem_wmes_identifier.setLong(2, attribute_s_id);
+        db.add_epmem_wmes_identifier.setLong(3, child_n_id);
+        db.add_epmem_wmes_identifier.setLong(4, last_episode_id);
+        return JdbcTools.insertAndGetRowId(db.add_epmem_wmes_identifier);
+    }
+    
+    @Override
+    public long find_epmem_wmes_identifier_shared(long parent_n_id, long attribute_s_id, long child_n_id) throws SQLException
+    {
+        db.find_epmem_wmes_identifier_shared.setLong(1, parent_n_id);
+        db.find_epmem_wmes_identifier_shared.setLong(2, attribute_s_id);
+        db.find_epmem_wmes_identifier_shared.setLong(3, child_n_id);
+        return firstLong(db.find_epmem_wmes_identifier_shared);
+    }
+    
+    @Override
+    public void update_epmem_wmes_identifier_last_episode_id(long wi_id, long last_episode_id) throws SQLException
+    {
+        db.update_epmem_wmes_identifier_last_episode_id.setLong(1, last_episode_id);
+        db.update_epmem_wmes_identifier_last_episode_id.setLong(2, wi_id);
+        db.update_epmem_wmes_identifier_last_episode_id.executeUpdate(/* soar_module::op_reinit */);
+    }
+    
+    @Override
+    public boolean valid_episode(long episode_id) throws SQLException
+    {
+        db.valid_episode.setLong(1, episode_id);
+        return firstLong(db.valid_episode) > 0;
+    }
+    
+    @Override
+    public long next_episode(long episode_id) throws SQLException
+    {
+        db.next_episode.setLong(1, episode_id);
+        return firstLong(db.next_episode);
+    }
+    
+    @Override
+    public long prev_episode(long episode_id) throws SQLException
+    {
+        db.prev_episode.setLong(1, episode_id);
+        return firstLong(db.prev_episode);
+    }
+    
+    @Override
+    public List<ConstantWmeRow> get_wmes_with_constant_values(long episode_id) throws SQLException
+    {
+        final PreparedStatement q = db.get_wmes_with_constant_values;
+        for(int i = 1; i <= 4; ++i)
+        {
+            q.setLong(i, episode_id);
+        }
+        final List<ConstantWmeRow> result = new ArrayList<>();
+        try(ResultSet rs = q.executeQuery())
+        {
+            while(rs.next())
+            {
+                // f.wc_id, f.parent_n_id, f.attribute_s_id, f.value_s_id
+                result.add(new ConstantWmeRow(rs.getLong(0 + 1), rs.getLong(1 + 1), rs.getLong(2 + 1), rs.getLong(3 + 1)));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public List<IdentifierWmeRow> get_wmes_with_identifier_values(long episode_id) throws SQLException
+    {
+        final PreparedStatement q = db.get_wmes_with_identifier_values;
+        for(int i = 1; i <= 5; ++i)
+        {
+            q.setLong(i, episode_id);
+        }
+        final List<IdentifierWmeRow> result = new ArrayList<>();
+        try(ResultSet rs = q.executeQuery())
+        {
+            while(rs.next())
+            {
+                // parent_n_id, attribute_s_id, child_n_id, epmem_lti.soar_letter, epmem_lti.soar_number
+                result.add(new IdentifierWmeRow(0, rs.getLong(0 + 1), rs.getLong(1 + 1), rs.getLong(2 + 1), rs.getLong(3 + 1), rs.getLong(4 + 1)));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public void promote_id(long n_id, long soar_letter, long soar_number, long promotion_episode_id) throws SQLException
+    {
+        db.promote_id.setLong(1, n_id);
+        db.promote_id.setLong(2, soar_letter);
+        db.promote_id.setLong(3, soar_number);
+        db.promote_id.setLong(4, promotion_episode_id);
+        db.promote_id.executeUpdate();
+    }
+    
+    @Override
+    public long find_lti(long soar_letter, long soar_number) throws SQLException
+    {
+        db.find_lti.setLong(1, soar_letter);
+        db.find_lti.setLong(2, soar_number);
+        return firstLong(db.find_lti);
+    }
+    
+    @Override
+    public long find_lti_promotion_time(long n_id) throws SQLException
+    {
+        db.find_lti_promotion_time.setLong(1, n_id);
+        return firstLong(db.find_lti_promotion_time);
+    }
+    
+    @Override
+    public QueryCursor pool_dummy(long start) throws SQLException
+    {
+        final PreparedStatement q = db.pool_dummy.getCopy();
+        q.setLong(1, start);
+        return new ResultSetCursor(q);
+    }
+    
+    @Override
+    public QueryCursor pool_find_edge_queries(int is_edge, int has_value, long parent_n_id, long attribute_s_id, long child_n_id, long after) throws SQLException
+    {
+        final PreparedStatement q = db.pool_find_edge_queries[is_edge][has_value].getCopy();
+        int bind_pos = 1;
+        if(is_edge == 0)
+        {
+            q.setLong(bind_pos++, Long.MAX_VALUE);
+        }
+        q.setLong(bind_pos++, parent_n_id);
+        q.setLong(bind_pos++, attribute_s_id);
+        if(has_value != 0)
+        {
+            q.setLong(bind_pos++, child_n_id);
+        }
+        if(is_edge != 0)
+        {
+            q.setLong(bind_pos++, after);
+        }
+        return new ResultSetCursor(q);
+    }
+    
+    @Override
+    public QueryCursor pool_find_interval_queries(int value_is_id, int point_type, int interval_type, long id, long current_episode) throws SQLException
+    {
+        final PreparedStatement q = db.pool_find_interval_queries[value_is_id][point_type][interval_type].getCopy();
+        // CK: both the JDBC and C drivers have an index of 1 for the leftmost parameter in a prepared statement
+        // (see: http://www.sqlite.org/c3ref/bind_blob.html)
+        int bind_pos = 1;
+        if(point_type == DefaultEpisodicMemory.EPMEM_RANGE_END && interval_type == DefaultEpisodicMemory.EPMEM_RANGE_NOW)
+        {
+            q.setLong(bind_pos++, current_episode);
+        }
+        q.setLong(bind_pos++, id);
+        q.setLong(bind_pos++, current_episode);
+        return new ResultSetCursor(q);
+    }
+    
+    @Override
+    public QueryCursor pool_find_lti_queries(int point_type, int interval_type, long id, long promotion_episode_id, long current_episode) throws SQLException
+    {
+        final PreparedStatement q = db.pool_find_lti_queries[point_type][interval_type].getCopy();
+        int bind_pos = 1;
+        if(point_type == DefaultEpisodicMemory.EPMEM_RANGE_END && interval_type == DefaultEpisodicMemory.EPMEM_RANGE_NOW)
+        {
+            q.setLong(bind_pos++, current_episode);
+        }
+        q.setLong(bind_pos++, id);
+        if(interval_type == DefaultEpisodicMemory.EPMEM_RANGE_EP)
+        {
+            q.setLong(bind_pos++, promotion_episode_id);
+        }
+        q.setLong(bind_pos++, current_episode);
+        return new ResultSetCursor(q);
+    }
+    
+    @Override
+    public long get_max_time() throws SQLException
+    {
+        return firstLong(db.get_max_time);
+    }
+    
+    @Override
+    public List<NowRow> now_select_node() throws SQLException
+    {
+        return nowRows(db.now_select_node);
+    }
+    
+    @Override
+    public List<NowRow> now_select_edge() throws SQLException
+    {
+        return nowRows(db.now_select_edge);
+    }
+    
+    @Override
+    public void now_delete_node() throws SQLException
+    {
+        db.now_delete_node.execute();
+    }
+    
+    @Override
+    public void now_delete_edge() throws SQLException
+    {
+        db.now_delete_edge.execute();
+    }
+    
+    @Override
+    public long minmax_select_node() throws SQLException
+    {
+        return firstLong(db.minmax_select_node);
+    }
+    
+    @Override
+    public long minmax_select_edge() throws SQLException
+    {
+        return firstLong(db.minmax_select_edge);
+    }
+    
+    @Override
+    public List<IdentifierWmeRow> edge_unique_select() throws SQLException
+    {
+        final List<IdentifierWmeRow> result = new ArrayList<>();
+        try(ResultSet rs = db.edge_unique_select.executeQuery())
+        {
+            while(rs.next())
+            {
+                // parent_n_id, attribute_s_id, child_n_id, wi_id
+                result.add(new IdentifierWmeRow(rs.getLong(3 + 1), rs.getLong(0 + 1), rs.getLong(1 + 1), rs.getLong(2 + 1), 0, 0));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public void flush()
+    {
+        // everything is already in the database
+    }
+    
+    @Override
+    public void close()
+    {
+        // the statements belong to the database
+    }
+    
+    private static void addRange(PreparedStatement q, long rit_id, long start_episode_id, long end_episode_id, long id) throws SQLException
+    {
+        // ( node, start, end, id )
+        q.setLong(1, rit_id);
+        q.setLong(2, start_episode_id);
+        q.setLong(3, end_episode_id);
+        q.setLong(4, id);
+        q.executeUpdate(/* soar_module::op_reinit */);
+    }
+    
+    private static List<NowRow> nowRows(PreparedStatement q) throws SQLException
+    {
+        final List<NowRow> result = new ArrayList<>();
+        try(ResultSet rs = q.executeQuery())
+        {
+            while(rs.next())
+            {
+                result.add(new NowRow(rs.getLong(0 + 1), rs.getLong(1 + 1)));
+            }
+        }
+        return result;
+    }
+    
+    private static long firstLong(PreparedStatement q) throws SQLException
+    {
+        try(ResultSet rs = q.executeQuery())
+        {
+            return rs.next() ? rs.getLong(0 + 1) : 0;
+        }
+    }
+    
+    /**
+     * Cursor that owns a copy of one of the pooled statements and its result
+     */
+    private static class ResultSetCursor implements QueryCursor
+    {
+        private final PreparedStatement q;
+        private final ResultSet rs;
+        private final int columns;
+        
+        ResultSetCursor(PreparedStatement q) throws SQLException
+        {
+            this.q = q;
+            this.rs = q.executeQuery();
+            this.columns = rs.getMetaData().getColumnCount();
+        }
+        
+        @Override
+        public boolean next() throws SQLException
+        {
+            return rs.next();
+        }
+        
+        @Override
+        public long getLong(int columnIndex) throws SQLException
+        {
+            return columnIndex <= columns ? rs.getLong(columnIndex) : 0;
+        }
+        
+        @Override
+        public void close() throws SQLException
+        {
+            rs.close();
+            q.close();
+        }
+    }
+}
@@ -1,6 +1,6 @@
 /*
  * Copyright (c) 2008  Dave Ray <daveray@gmail.com>
- *
+ * 
  * Created on Oct 15, 2008
  */
 package org.jsoar.kernel.events;
@@ -10,12 +10,16 @@
 
 import org.jsoar.kernel.memory.Wme;
 import org.jsoar.kernel.memory.WmeImpl;
+import org.jsoar.kernel.memory.WorkingMemoryChangeListener;
 import org.jsoar.util.ListHead;
 import org.jsoar.util.ListItem;
 import org.jsoar.util.events.SoarEvent;
 
 /**
- * Event fired after working memory changes
+ * Event fired after working memory changes. The event is only built when
+ * there is a listener for it. Listeners on the agent thread that want every
+ * change without an allocation per batch should use
+ * {@link WorkingMemoryChangeListener} instead.
  * 
  * <p>callback.h:76:WM_CHANGES_CALLBACK
  * 
@@ -854,13 +854,15 @@ public void exploration_compute_value_of_candidate(Preference cand, Slot s, doub
         {
             if(cand.value == pref.value)
             {
-                cand.total_preferences_for_candidate += 1;
-                cand.numeric_value += get_number_from_symbol(pref.referent);
-                
                 if(pref.inst.prod.rlRuleInfo != null)
                 {
+                    // jsoar: pick up updates made by other agents sharing the rule's value
+                    rl.rl_sync_shared_value(pref.inst.prod);
                     cand.rl_contribution = true;
                 }
+                
+                cand.total_preferences_for_candidate += 1;
+                cand.numeric_value += get_number_from_symbol(pref.referent);
             }
         }
         
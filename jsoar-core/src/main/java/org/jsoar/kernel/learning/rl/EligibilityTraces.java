@@ -0,0 +1,181 @@
+package org.jsoar.kernel.learning.rl;
+
+import java.util.Arrays;
+
+import org.jsoar.kernel.Production;
+
+/**
+ * <em>This is an internal interface. Don't use it unless you know what you're doing.</em>
+ * 
+ * <p>The eligibility traces of a goal's RL rules. csoar uses a map from
+ * production to trace. Here the traces of the active rules are kept in dense
+ * primitive arrays, and each RL rule's slot ({@link RLRuleInfo#rl_slot}) indexes
+ * its position in them, so decaying and updating traces doesn't box or hash.
+ * 
+ * <p>Traces are iterated by position, from 0 to {@link #size()}. Removing a
+ * trace moves the last trace into its position.
+ */
+public class EligibilityTraces
+{
+    private static final Production[] NO_PRODUCTIONS = new Production[0];
+    private static final double[] NO_TRACES = new double[0];
+    private static final int[] NO_INTS = new int[0];
+    
+    private Production[] productions = NO_PRODUCTIONS;
+    private double[] traces = NO_TRACES;
+    private int[] slots = NO_INTS;
+    private int size;
+    
+    /**
+     * One more than the position of the trace of the rule in each slot, or
+     * 0 if the rule has no trace
+     */
+    private int[] positions = NO_INTS;
+    
+    /**
+     * @return the number of rules with a trace
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+    
+    /**
+     * @param i the position of a trace, less than {@link #size()}
+     * @return the rule the trace belongs to
+     */
+    public Production getProduction(int i)
+    {
+        return productions[i];
+    }
+    
+    /**
+     * @param i the position of a trace, less than {@link #size()}
+     * @return the trace
+     */
+    public double getTrace(int i)
+    {
+        return traces[i];
+    }
+    
+    /**
+     * @param prod an RL rule
+     * @return the rule's trace, or 0.0 if it doesn't have one
+     */
+    public double get(Production prod)
+    {
+        final int position = positionOf(prod);
+        return position >= 0 ? traces[position] : 0.0;
+    }
+    
+    /**
+     * Add to a rule's trace, starting a trace for the rule if it doesn't have
+     * one.
+     * 
+     * @param prod an RL rule with a slot
+     * @param increment the amount to add
+     */
+    public void add(Production prod, double increment)
+    {
+        final int slot = prod.rlRuleInfo.rl_slot;
+        assert slot >= 0;
+        
+        final int position = positionOf(prod);
+        if(position >= 0)
+        {
+            traces[position] = traces[position] + increment;
+            return;
+        }
+        
+        if(slot >= positions.length)
+        {
+            positions = Arrays.copyOf(positions, Math.max(slot + 1, positions.length * 2));
+        }
+        if(size == productions.length)
+        {
+            final int capacity = Math.max(8, size * 2);
+            productions = Arrays.copyOf(productions, capacity);
+            traces = Arrays.copyOf(traces, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+        }
+        productions[size] = prod;
+        traces[size] = increment;
+        slots[size] = slot;
+        positions[slot] = ++size;
+    }
+    
+    /**
+     * Remove a rule's trace, if it has one
+     * 
+     * @param prod an RL rule
+     */
+    public void remove(Production prod)
+    {
+        final int position = positionOf(prod);
+        if(position >= 0)
+        {
+            removeAt(position);
+        }
+    }
+    
+    /**
+     * Multiply each trace by {@code lambda * discount}, and remove the traces that
+     * fall below a tolerance.
+     * 
+     * @param lambda the trace decay rate
+     * @param discount the discount for the age of the update
+     * @param tolerance the smallest trace to keep
+     */
+    public void decay(double lambda, double discount, double tolerance)
+    {
+        // Go backwards, so the traces moved by removeAt() have already decayed
+        for(int i = size - 1; i >= 0; --i)
+        {
+            traces[i] = traces[i] * lambda * discount;
+            if(traces[i] < tolerance)
+            {
+                removeAt(i);
+            }
+        }
+    }
+    
+    public void clear()
+    {
+        for(int i = 0; i < size; ++i)
+        {
+            positions[slots[i]] = 0;
+            productions[i] = null;
+        }
+        size = 0;
+    }
+    
+    private int positionOf(Production prod)
+    {
+        final RLRuleInfo info = prod.rlRuleInfo;
+        if(info == null || info.rl_slot < 0 || info.rl_slot >= positions.length)
+        {
+            return -1;
+        }
+        return positions[info.rl_slot] - 1;
+    }
+    
+    private void removeAt(int position)
+    {
+        positions[slots[position]] = 0;
+        
+        final int last = --size;
+        if(position != last)
+        {
+            productions[position] = productions[last];
+            traces[position] = traces[last];
+            slots[position] = slots[last];
+            positions[slots[position]] = position + 1;
+        }
+        productions[last] = null;
+    }
+}
@@ -1,5 +1,8 @@
 package org.jsoar.kernel.learning.rl;
 
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
@@ -70,6 +73,9 @@ public RL(Agent agent)
         @Option(names = { "-g", "--get" }, description = "Prints the current setting of the given parameter")
         String getParam = null;
         
+        @Option(names = { "--save" }, description = "Writes the RL rules with their current values to the given file")
+        String saveFile = null;
+        
         @Override
         public void run()
         {
@@ -86,6 +92,10 @@ else if(getParam != null)
             {
                 agent.getPrinter().startNewLine().print(doGet(getParam));
             }
+            else if(saveFile != null)
+            {
+                agent.getPrinter().startNewLine().print(doSave(saveFile));
+            }
             else
             {
                 agent.getPrinter().startNewLine().print(doRl());
@@ -228,6 +238,19 @@ private String doGet(String paramToGet)
             return rl.getParams().getProperties().get(key).toString();
         }
         
+        private String doSave(String fileName)
+        {
+            try(BufferedWriter writer = new BufferedWriter(new FileWriter(fileName)))
+            {
+                rl.saveRules(writer);
+            }
+            catch(IOException e)
+            {
+                return "Error: could not write RL rules to '" + fileName + "': " + e.getMessage();
+            }
+            return "Saved RL rules to " + fileName;
+        }
+        
         private String doRl()
         {
             final StringWriter sw = new StringWriter();
@@ -23,4 +23,22 @@
     public double rl_ecr = 0.0; // RL-9.3.0
     public double rl_efr = 0.0; // RL-9.3.0
     
+    /**
+     * Index of this rule in the {@link EligibilityTraces} of each goal, or -1
+     * if it hasn't had a trace yet. Assigned by {@link ReinforcementLearning}.
+     */
+    public int rl_slot = -1;
+    
+    /**
+     * The key of this rule in a {@link SharedRLValueTable}, if it isn't the
+     * rule's name
+     */
+    public String rl_shared_key;
+    
+    /**
+     * This rule's entry in the agent's {@link SharedRLValueTable}, once it has
+     * been looked up
+     */
+    SharedRLValueTable.Entry rl_shared_entry;
+    
 }
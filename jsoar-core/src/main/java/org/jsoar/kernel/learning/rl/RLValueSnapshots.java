@@ -0,0 +1,108 @@
+package org.jsoar.kernel.learning.rl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.events.AfterDecisionCycleEvent;
+import org.jsoar.util.Arguments;
+import org.jsoar.util.adaptables.Adaptables;
+import org.jsoar.util.events.SoarEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically saves an agent's RL rules, with their current values, to a
+ * file in the format of {@code rl --save}, so the file can be sourced to
+ * restore them. When several agents share a {@link SharedRLValueTable}, one of
+ * them can save snapshots of the shared values.
+ * 
+ * <p>Each snapshot is written to a temporary file which then replaces the
+ * snapshot file, so the file always holds a complete snapshot.
+ */
+public class RLValueSnapshots
+{
+    private static final Logger logger = LoggerFactory.getLogger(RLValueSnapshots.class);
+    
+    private final Agent agent;
+    private final ReinforcementLearning rl;
+    private final Path file;
+    private final long decisions;
+    private final SoarEventListener listener;
+    
+    private long decisionsSinceSave;
+    
+    /**
+     * Start saving snapshots. Call {@link #dispose()} to stop.
+     * 
+     * @param agent the agent
+     * @param file the snapshot file
+     * @param decisions the number of decision cycles between snapshots
+     */
+    public RLValueSnapshots(Agent agent, File file, long decisions)
+    {
+        Arguments.checkNotNull(agent, "agent");
+        Arguments.checkNotNull(file, "file");
+        Arguments.check(decisions > 0, "decisions must be positive");
+        
+        this.agent = agent;
+        this.rl = Adaptables.require(getClass(), agent, ReinforcementLearning.class);
+        this.file = file.toPath().toAbsolutePath();
+        this.decisions = decisions;
+        this.agent.getEvents().addListener(AfterDecisionCycleEvent.class,
+                listener = event -> afterDecisionCycle());
+    }
+    
+    /**
+     * Stop saving snapshots
+     */
+    public void dispose()
+    {
+        agent.getEvents().removeListener(null, listener);
+    }
+    
+    /**
+     * Save a snapshot now. This must be called from the agent's thread.
+     * 
+     * @throws IOException if there is an error writing the snapshot
+     */
+    public void save() throws IOException
+    {
+        final Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try
+        {
+            try(BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+            {
+                rl.saveRules(writer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    private void afterDecisionCycle()
+    {
+        if(++decisionsSinceSave < decisions)
+        {
+            return;
+        }
+        decisionsSinceSave = 0;
+        
+        try
+        {
+            save();
+        }
+        catch(IOException e)
+        {
+            logger.error("Failed to save RL values to " + file + ": " + e.getMessage(), e);
+        }
+    }
+}
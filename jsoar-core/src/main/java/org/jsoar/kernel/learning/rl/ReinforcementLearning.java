@@ -9,9 +9,10 @@
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.ListIterator;
 import java.util.Map;
 
@@ -21,6 +22,7 @@
 import org.jsoar.kernel.Production;
 import org.jsoar.kernel.ProductionType;
 import org.jsoar.kernel.learning.Chunker;
+import org.jsoar.kernel.learning.rl.ReinforcementLearningParams.DecayMode;
 import org.jsoar.kernel.learning.rl.ReinforcementLearningParams.HrlDiscount;
 import org.jsoar.kernel.learning.rl.ReinforcementLearningParams.Learning;
 import org.jsoar.kernel.learning.rl.ReinforcementLearningParams.Meta;
@@ -47,6 +49,7 @@
 import org.jsoar.kernel.rhs.MakeAction;
 import org.jsoar.kernel.rhs.ReordererException;
 import org.jsoar.kernel.rhs.RhsSymbolValue;
+import org.jsoar.kernel.symbols.DoubleSymbolImpl;
 import org.jsoar.kernel.symbols.IdentifierImpl;
 import org.jsoar.kernel.symbols.Symbol;
 import org.jsoar.kernel.symbols.SymbolFactoryImpl;
@@ -86,6 +89,16 @@
     // reinforcement learning
     private int rl_template_count;
     
+    /**
+     * jsoar: the next unused {@link RLRuleInfo#rl_slot}, and the slots of
+     * excised rules that can be reused
+     */
+    private int rl_next_slot;
+    private int[] rl_free_slots = new int[0];
+    private int rl_free_slot_count;
+    
+    private volatile SharedRLValueTable sharedValues;
+    
     private final Agent my_agent;
     private final Adaptable myContext;
     private SymbolFactoryImpl syms;
@@ -604,6 +617,11 @@ else if(referent.asDouble() != null)
                         rl_revert_template_id();
                         new_name_symbol = null;
                     }
+                    else if(new_production.rlRuleInfo != null)
+                    {
+                        // jsoar: agents number their instances differently, so share values by constants
+                        new_production.rlRuleInfo.rl_shared_key = SharedRLValueTable.templateKey(my_template.getName(), constant_map);
+                    }
                 }
                 catch(ReordererException e)
                 {
@@ -877,15 +895,7 @@ public void rl_perform_update(double op_value, boolean op_rl, IdentifierImpl goa
                 }
                 else
                 {
-                    for(final Iterator<Map.Entry<Production, Double>> it = data.eligibility_traces.entrySet().iterator(); it.hasNext();)
-                    {
-                        final Map.Entry<Production, Double> e = it.next();
-                        e.setValue(e.getValue() * lambda * discount);
-                        if(e.getValue() < tolerance)
-                        {
-                            it.remove();
-                        }
-                    }
+                    data.eligibility_traces.decay(lambda, discount, tolerance);
                 }
                 
                 // Update trace for just fired prods
@@ -899,18 +909,12 @@ public void rl_perform_update(double op_value, boolean op_rl, IdentifierImpl goa
                     {
                         if(p != null)
                         {
+                            rl_sync_shared_value(p);
                             sum_old_ecr += p.rlRuleInfo.rl_ecr;
                             sum_old_efr += p.rlRuleInfo.rl_efr;
                             
-                            final Double old = data.eligibility_traces.get(p);
-                            if(old != null)
-                            {
-                                data.eligibility_traces.put(p, old + trace_increment);
-                            }
-                            else
-                            {
-                                data.eligibility_traces.put(p, trace_increment);
-                            }
+                            rl_assign_slot(p);
+                            data.eligibility_traces.add(p, trace_increment);
                         }
                     }
                 }
@@ -921,21 +925,27 @@ public void rl_perform_update(double op_value, boolean op_rl, IdentifierImpl goa
                     double delta_ecr, delta_efr;
                     double new_combined, new_ecr, new_efr;
                     double delta_t = (data.reward + discount * op_value) - (sum_old_ecr + sum_old_efr);
+                    final DecayMode decay_mode = params.decay_mode.get();
+                    final boolean tracing = trace.isEnabled(Category.RL);
+                    final boolean meta = (params.meta.get() == Meta.on);
                     
-                    for(Map.Entry<Production, Double> iter : data.eligibility_traces.entrySet())
+                    final EligibilityTraces traces = data.eligibility_traces;
+                    for(int i = 0; i < traces.size(); i++)
                     {
-                        final Production prod = iter.getKey();
+                        final Production prod = traces.getProduction(i);
+                        final double et = traces.getTrace(i);
                         
                         assert prod.rlRuleInfo != null;
                         
                         // get old vals
+                        rl_sync_shared_value(prod);
                         old_ecr = prod.rlRuleInfo.rl_ecr;
                         old_efr = prod.rlRuleInfo.rl_efr;
                         
                         // Adjust alpha based on decay policy
                         // Miller 11/14/2011
                         double adjusted_alpha;
-                        switch(params.decay_mode.get())
+                        switch(decay_mode)
                         {
                         case exponential_decay:
                             adjusted_alpha = 1.0 / (prod.rlRuleInfo.rl_update_count + 1.0);
@@ -964,11 +974,11 @@ public void rl_perform_update(double op_value, boolean op_rl, IdentifierImpl goa
                         }
                         
                         // calculate updates
-                        delta_ecr = (adjusted_alpha * iter.getValue() * (data.reward - sum_old_ecr));
+                        delta_ecr = (adjusted_alpha * et * (data.reward - sum_old_ecr));
                         
                         if(update_efr)
                         {
-                            delta_efr = (adjusted_alpha * iter.getValue() * ((discount * op_value) - sum_old_efr));
+                            delta_efr = (adjusted_alpha * et * ((discount * op_value) - sum_old_efr));
                         }
                         else
                         {
@@ -976,12 +986,22 @@ public void rl_perform_update(double op_value, boolean op_rl, IdentifierImpl goa
                         }
                         
                         // calculate new vals
-                        new_ecr = (old_ecr + delta_ecr);
-                        new_efr = (old_efr + delta_efr);
+                        // jsoar: shared values may have been updated by other agents since they were synced
+                        final SharedRLValueTable.Entry shared = rl_shared_entry(prod);
+                        if(shared != null)
+                        {
+                            new_ecr = shared.addToEcr(delta_ecr);
+                            new_efr = shared.addToEfr(delta_efr);
+                        }
+                        else
+                        {
+                            new_ecr = (old_ecr + delta_ecr);
+                            new_efr = (old_efr + delta_efr);
+                        }
                         new_combined = (new_ecr + new_efr);
                         
                         // print as necessary
-                        if(trace.isEnabled(Category.RL))
+                        if(tracing)
                         {
                             String ss = "RL update " + prod.getName() + " "
                                     + old_ecr + " " + old_efr + " " + (old_ecr + old_efr) + " -> "
@@ -1008,8 +1028,7 @@ public void rl_perform_update(double op_value, boolean op_rl, IdentifierImpl goa
                         }
                         
                         // Change value of rule
-                        prod.getFirstAction().asMakeAction().referent = syms.createDouble(new_combined).toRhsValue();
-                        prod.rlRuleInfo.rl_update_count += 1;
+                        prod.rlRuleInfo.rl_update_count = (shared != null) ? shared.addToUpdateCount(1) : (prod.rlRuleInfo.rl_update_count + 1);
                         prod.rlRuleInfo.rl_ecr = new_ecr;
                         prod.rlRuleInfo.rl_efr = new_efr;
                         
@@ -1018,7 +1037,7 @@ public void rl_perform_update(double op_value, boolean op_rl, IdentifierImpl goa
                          * Here we'll do this by brute force instead of using
                          * the fancy accessors in the CSoar code.
                          */
-                        if(params.meta.get() == Meta.on)
+                        if(meta)
                         {
                             /**
                              * NOTE: This code replaces the whole documentation string
@@ -1034,14 +1053,7 @@ public void rl_perform_update(double op_value, boolean op_rl, IdentifierImpl goa
                             prod.setDocumentation(builder.toString());
                         }
                         
-                        // Change value of preferences generated by current instantiations of this rule
-                        for(Instantiation inst = prod.instantiations; inst != null; inst = inst.nextInProdList)
-                        {
-                            for(Preference pref = inst.preferences_generated; pref != null; pref = pref.inst_next)
-                            {
-                                pref.referent = syms.createDouble(new_combined);
-                            }
-                        }
+                        rl_set_value(prod, new_combined);
                     }
                 }
             }
@@ -1052,6 +1064,133 @@ public void rl_perform_update(double op_value, boolean op_rl, IdentifierImpl goa
         }
     }
     
+    /**
+     * Change the value of a rule, and of the preferences generated by its
+     * current instantiations
+     * 
+     * @param prod an RL rule
+     * @param value the new value
+     */
+    private void rl_set_value(Production prod, double value)
+    {
+        // jsoar: the same symbol is used for the rule and its preferences
+        final DoubleSymbolImpl new_value = syms.createDouble(value);
+        prod.getFirstAction().asMakeAction().referent = new_value.toRhsValue();
+        
+        for(Instantiation inst = prod.instantiations; inst != null; inst = inst.nextInProdList)
+        {
+            for(Preference pref = inst.preferences_generated; pref != null; pref = pref.inst_next)
+            {
+                pref.referent = new_value;
+            }
+        }
+    }
+    
+    /**
+     * Use a shared value table for the values of this agent's RL rules, or
+     * stop using one.
+     * 
+     * @param table the table, or {@code null} for the agent to keep its own
+     *     values
+     * @see SharedRLValueTable
+     */
+    public void setSharedValues(SharedRLValueTable table)
+    {
+        this.sharedValues = table;
+        for(Production p : my_agent.getProductions().getProductions(null))
+        {
+            if(p.rlRuleInfo != null)
+            {
+                p.rlRuleInfo.rl_shared_entry = null;
+            }
+        }
+    }
+    
+    /**
+     * @return the shared value table used by this agent, or {@code null} if
+     *     it keeps its own values
+     */
+    public SharedRLValueTable getSharedValues()
+    {
+        return sharedValues;
+    }
+    
+    /**
+     * @param prod an RL rule
+     * @return the rule's entry in the shared value table, or {@code null} if
+     *     the agent doesn't use one
+     */
+    private SharedRLValueTable.Entry rl_shared_entry(Production prod)
+    {
+        final SharedRLValueTable table = sharedValues;
+        if(table == null)
+        {
+            return null;
+        }
+        
+        final RLRuleInfo info = prod.rlRuleInfo;
+        if(info.rl_shared_entry == null)
+        {
+            final String key = (info.rl_shared_key != null) ? info.rl_shared_key : prod.getName();
+            info.rl_shared_entry = table.register(key, info.rl_ecr, info.rl_efr, info.rl_update_count);
+        }
+        return info.rl_shared_entry;
+    }
+    
+    /**
+     * Bring an RL rule's value up to date with the shared value table, if the
+     * agent uses one. Updates made by other agents since the last sync become
+     * the rule's value, and the rule's update count becomes the number of
+     * updates made by all agents (see {@link SharedRLValueTable}).
+     * 
+     * @param prod an RL rule
+     */
+    public void rl_sync_shared_value(Production prod)
+    {
+        final SharedRLValueTable.Entry shared = rl_shared_entry(prod);
+        if(shared == null)
+        {
+            return;
+        }
+        
+        final RLRuleInfo info = prod.rlRuleInfo;
+        final double ecr = shared.getEcr();
+        final double efr = shared.getEfr();
+        info.rl_update_count = shared.getUpdateCount();
+        if(ecr != info.rl_ecr || efr != info.rl_efr)
+        {
+            info.rl_ecr = ecr;
+            info.rl_efr = efr;
+            rl_set_value(prod, ecr + efr);
+        }
+    }
+    
+    /**
+     * Write this agent's RL rules, with their current values, as productions
+     * that can be sourced to restore them. This is the format of
+     * {@code print --rl --full}. With a shared value table, the values are
+     * the table's.
+     * 
+     * <p>This must be called from the agent's thread.
+     * 
+     * @param writer the writer to write to
+     * @throws IOException if there is an error writing
+     */
+    public void saveRules(Writer writer) throws IOException
+    {
+        final Printer p = new Printer(writer);
+        for(Production prod : my_agent.getProductions().getProductions(null))
+        {
+            if(prod.rlRuleInfo != null)
+            {
+                rl_sync_shared_value(prod);
+                prod.print(p, false);
+                p.print("\n");
+            }
+        }
+        p.flush();
+    }
+    
     /**
      * <p>reinforcement_learning.cpp:850:rl_perform_update
      * (9.3.0)
@@ -1184,6 +1323,40 @@ public void exciseProduction(Production prod)
         if(prod.rlRuleInfo != null)
         {
             rl_remove_refs_for_prod(prod);
+            rl_release_slot(prod);
+        }
+    }
+    
+    /**
+     * Give an RL rule a slot in the eligibility traces if it doesn't have one
+     * 
+     * @param prod an RL rule
+     */
+    private void rl_assign_slot(Production prod)
+    {
+        if(prod.rlRuleInfo.rl_slot < 0)
+        {
+            prod.rlRuleInfo.rl_slot = (rl_free_slot_count > 0) ? rl_free_slots[--rl_free_slot_count] : rl_next_slot++;
+        }
+    }
+    
+    /**
+     * Make an excised RL rule's slot available to other rules. Its traces must
+     * have been removed already.
+     * 
+     * @param prod an RL rule
+     */
+    private void rl_release_slot(Production prod)
+    {
+        final int slot = prod.rlRuleInfo.rl_slot;
+        if(slot >= 0)
+        {
+            if(rl_free_slot_count == rl_free_slots.length)
+            {
+                rl_free_slots = Arrays.copyOf(rl_free_slots, Math.max(16, rl_free_slot_count * 2));
+            }
+            rl_free_slots[rl_free_slot_count++] = slot;
+            prod.rlRuleInfo.rl_slot = -1;
         }
     }
     
@@ -5,9 +5,7 @@
  */
 package org.jsoar.kernel.learning.rl;
 
-import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.Map;
 
 import org.jsoar.kernel.Production;
 
@@ -25,7 +23,7 @@
     /**
      * traces associated with productions
      */
-    public final Map<Production, Double> eligibility_traces = new HashMap<>();
+    public final EligibilityTraces eligibility_traces = new EligibilityTraces();
     /**
      * rl rules associated with the previous operator
      */
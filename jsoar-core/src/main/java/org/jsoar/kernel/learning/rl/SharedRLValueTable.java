@@ -0,0 +1,233 @@
+package org.jsoar.kernel.learning.rl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jsoar.kernel.symbols.SymbolImpl;
+
+/**
+ * Q-values of RL rules shared by several agents, so agents running on
+ * different threads learn into one value function.
+ * 
+ * <p>Attach a table to each agent with
+ * {@link ReinforcementLearning#setSharedValues(SharedRLValueTable)}. Rules are
+ * keyed by name, except for template instances built by an agent, which are
+ * keyed by their template and the constants they were built from (see
+ * {@link #templateKey(String, Map)}), because each agent numbers its
+ * template instances in the order it builds them.
+ * 
+ * <p>The first agent to use a rule provides its initial value. After that,
+ * agents read the rule's value from the table before selecting operators and
+ * add their updates to it. Entries are updated with compare-and-set rather than
+ * locks, so concurrent updates to the same rule are all applied, each computed
+ * from the value the agent last read, as in other lock-free ("hogwild")
+ * learners. Delta-bar-delta meta parameters stay with each agent.
+ * 
+ * <p>A rule's update count is shared along with its value, and is the
+ * number of updates made by all of the agents. This is intended: the count
+ * describes how much the shared value has been learned. So, the exponential
+ * and logarithmic decay modes shrink each agent's learning rate as the
+ * agents together update the rule, rather than letting each agent take
+ * large early steps on a value that others have already refined. For the
+ * same reason, {@code rl --save} and the {@code rl-updates} documentation
+ * written in meta mode show the shared count.
+ * 
+ * <p>Use {@link ReinforcementLearning#saveRules(java.io.Writer)} or
+ * {@link RLValueSnapshots} to save the learned values.
+ * 
+ * <p>This class is thread safe.
+ */
+public class SharedRLValueTable
+{
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    
+    /**
+     * The shared values of one rule
+     */
+    public static class Entry
+    {
+        // doubles, stored as their bits so they can be updated atomically
+        private final AtomicLong ecr;
+        private final AtomicLong efr;
+        private final AtomicLong updates;
+        
+        private Entry(double ecr, double efr, double updates)
+        {
+            this.ecr = new AtomicLong(Double.doubleToRawLongBits(ecr));
+            this.efr = new AtomicLong(Double.doubleToRawLongBits(efr));
+            this.updates = new AtomicLong(Double.doubleToRawLongBits(updates));
+        }
+        
+        /**
+         * @return the expected current reward
+         */
+        public double getEcr()
+        {
+            return Double.longBitsToDouble(ecr.get());
+        }
+        
+        /**
+         * @return the expected future reward
+         */
+        public double getEfr()
+        {
+            return Double.longBitsToDouble(efr.get());
+        }
+        
+        /**
+         * @return the Q-value, i.e. the sum of the expected current and future
+         *     rewards
+         */
+        public double getValue()
+        {
+            return getEcr() + getEfr();
+        }
+        
+        /**
+         * @return the number of updates made by all agents
+         */
+        public double getUpdateCount()
+        {
+            return Double.longBitsToDouble(updates.get());
+        }
+        
+        double addToEcr(double delta)
+        {
+            return add(ecr, delta);
+        }
+        
+        double addToEfr(double delta)
+        {
+            return add(efr, delta);
+        }
+        
+        double addToUpdateCount(double delta)
+        {
+            return add(updates, delta);
+        }
+        
+        private static double add(AtomicLong bits, double delta)
+        {
+            while(true)
+            {
+                final long current = bits.get();
+                final double next = Double.longBitsToDouble(current) + delta;
+                if(bits.compareAndSet(current, Double.doubleToRawLongBits(next)))
+                {
+                    return next;
+                }
+            }
+        }
+    }
+    
+    /**
+     * @param key a rule's key
+     * @return the rule's entry, or {@code null} if no agent has used the rule
+     */
+    public Entry get(String key)
+    {
+        return entries.get(key);
+    }
+    
+    /**
+     * Get a rule's entry, adding it with the given values if no agent has used
+     * the rule yet.
+     * 
+     * @param key the rule's key
+     * @param ecr the rule's initial expected current reward
+     * @param efr the rule's initial expected future reward
+     * @param updates the rule's initial update count
+     * @return the entry
+     */
+    public Entry register(String key, double ecr, double efr, double updates)
+    {
+        return entries.computeIfAbsent(key, k -> new Entry(ecr, efr, updates));
+    }
+    
+    /**
+     * @return the keys of the rules in the table
+     */
+    public Set<String> getKeys()
+    {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+    
+    /**
+     * @return the number of rules in the table
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+    
+    /**
+     * The key of a template instance, independent of the name the agent gave
+     * it.
+     * 
+     * <p>Each symbol is written with its type and length, so different
+     * instances always have different keys, e.g. for the integer {@code 5} and
+     * the string {@code |5|}, or for strings that look like other bindings.
+     * 
+     * @param template the name of the template
+     * @param constants the template's variables and the instance's constants
+     *     that replaced them
+     * @return the key
+     */
+    public static String templateKey(String template, Map<? extends SymbolImpl, ? extends SymbolImpl> constants)
+    {
+        final List<String> bindings = new ArrayList<>(constants.size());
+        for(Map.Entry<? extends SymbolImpl, ? extends SymbolImpl> e : constants.entrySet())
+        {
+            bindings.add(encode(e.getKey()) + encode(e.getValue()));
+        }
+        Collections.sort(bindings);
+        
+        final StringBuilder b = new StringBuilder(template);
+        for(String binding : bindings)
+        {
+            b.append(' ').append(binding);
+        }
+        return b.toString();
+    }
+    
+    /**
+     * @param sym a symbol
+     * @return the symbol's type, the length of its text, and its text
+     */
+    private static String encode(SymbolImpl sym)
+    {
+        final char type;
+        final String text;
+        if(sym.asInteger() != null)
+        {
+            type = 'i';
+            text = Long.toString(sym.asInteger().getValue());
+        }
+        else if(sym.asDouble() != null)
+        {
+            type = 'f';
+            text = Double.toString(sym.asDouble().getValue());
+        }
+        else if(sym.asString() != null)
+        {
+            type = 's';
+            text = sym.asString().getValue();
+        }
+        else if(sym.asVariable() != null)
+        {
+            type = 'v';
+            text = sym.asVariable().name;
+        }
+        else
+        {
+            type = 'o';
+            text = sym.toString();
+        }
+        return type + Integer.toString(text.length()) + ':' + text;
+    }
+}
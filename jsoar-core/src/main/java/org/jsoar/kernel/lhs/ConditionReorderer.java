@@ -10,6 +10,7 @@
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.ToLongFunction;
 
 import org.jsoar.kernel.rhs.ReordererException;
 import org.jsoar.kernel.symbols.SymbolImpl;
@@ -42,6 +43,7 @@
     private final MultiAttributes multiAttrs;
     
     private String prodName;
+    private ToLongFunction<SymbolImpl> canonicalOrder = sym -> sym.hash_id;
     
     /**
      * Originally this was just a field on Condition. Converted to a temporary
@@ -74,6 +76,20 @@ public ConditionReorderer(VariableGenerator vars, Trace trace, MultiAttributes m
         this.prodName = prodName;
     }
     
+    /**
+     * Set the order used to break ties between equal cost conditions. By
+     * default, this is the order of the symbols' hash ids, i.e. the order the
+     * symbols were created in.
+     * 
+     * @param canonicalOrder function from a string, integer or double symbol
+     *     to its position in the order. Must be positive.
+     */
+    public void setCanonicalOrder(ToLongFunction<SymbolImpl> canonicalOrder)
+    {
+        Arguments.checkNotNull(canonicalOrder, "canonicalOrder");
+        this.canonicalOrder = canonicalOrder;
+    }
+    
     /**
      * reorder.cpp:1064:reorder_lhs
      * 
@@ -458,9 +474,9 @@ else if(cond.asPositiveCondition() == null && min_cost_conds.asPositiveCondition
     /**
      * production.cpp:503:canonical_test
      */
-    private int canonical_test(Test t)
+    private long canonical_test(Test t)
     {
-        final int NON_EQUAL_TEST_RETURN_VAL = 0; /* some unusual number */
+        final long NON_EQUAL_TEST_RETURN_VAL = 0; /* some unusual number */
         
         if(Tests.isBlank(t))
         {
@@ -473,7 +489,7 @@ private int canonical_test(Test t)
             SymbolImpl sym = eq.getReferent();
             if(sym.asString() != null || sym.asInteger() != null || sym.asDouble() != null)
             {
-                return sym.hash_id;
+                return canonicalOrder.applyAsLong(sym);
             }
             return NON_EQUAL_TEST_RETURN_VAL;
         }
@@ -487,7 +503,7 @@ private int canonical_test(Test t)
      */
     private boolean canonical_cond_greater(Condition c1, Condition c2)
     {
-        int test_order_1, test_order_2;
+        long test_order_1, test_order_2;
         
         if((test_order_1 = canonical_test(c1.asPositiveCondition().attr_test)) < (test_order_2 = canonical_test(c2
                 .asPositiveCondition().attr_test)))
@@ -8,7 +8,10 @@
 import java.util.HashMap;
 import java.util.Map;
 
+import org.jsoar.kernel.symbols.Identifier;
 import org.jsoar.kernel.symbols.Symbol;
+import org.jsoar.kernel.symbols.SymbolFactory;
+import org.jsoar.kernel.symbols.Variable;
 import org.jsoar.util.Arguments;
 
 /**
@@ -41,4 +44,26 @@ public int getCost(Symbol referent, int defValue)
         return cost != null ? cost : defValue;
     }
     
+    /**
+     * Returns a copy of these costs with the referents imported into another
+     * symbol factory, for reordering productions whose symbols come from
+     * that factory.
+     * 
+     * @param syms the symbol factory to import into
+     * @return a new multi-attributes object
+     */
+    public MultiAttributes copyInto(SymbolFactory syms)
+    {
+        final MultiAttributes result = new MultiAttributes();
+        for(Map.Entry<Symbol, Integer> e : costMap.entrySet())
+        {
+            // Only constants can be imported, and only constants are looked up
+            if(!(e.getKey() instanceof Identifier || e.getKey() instanceof Variable))
+            {
+                result.costMap.put(syms.importSymbol(e.getKey()), e.getValue());
+            }
+        }
+        return result;
+    }
+    
 }
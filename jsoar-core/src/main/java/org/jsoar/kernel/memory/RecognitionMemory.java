@@ -54,6 +54,7 @@
 import org.jsoar.kernel.symbols.Variable;
 import org.jsoar.kernel.tracing.Trace;
 import org.jsoar.kernel.tracing.Trace.Category;
+import org.jsoar.kernel.tracing.TraceRecorder;
 import org.jsoar.kernel.wma.DefaultWorkingMemoryActivation;
 import org.jsoar.util.Arguments;
 import org.jsoar.util.ByRef;
@@ -723,6 +724,11 @@ private void create_instantiation(Production prod, Token tok, WmeImpl w)
         {
             trace.startNewLine().print("Firing %s", inst);
         }
+        final TraceRecorder recorder = trace.getRecorder();
+        if(recorder != null)
+        {
+            recorder.firing(inst);
+        }
         
         // initialize rhs_variable_bindings array with names of variables
         // (if there are any stored on the production -- for chunks there won't be any)
@@ -1147,6 +1153,7 @@ private void retract_instantiation(Instantiation inst)
         
         final Trace trace = context.getTrace();
         final boolean trace_it = trace.isEnabled(inst.prod.getType().getTraceCategory()) || inst.prod.isTraceFirings();
+        final TraceRecorder recorder = trace.getRecorder();
         
         // retract any preferences that are in TM and aren't o-supported
         Preference pref = inst.preferences_generated;
@@ -1156,6 +1163,10 @@ private void retract_instantiation(Instantiation inst)
             final Preference next = pref.inst_next;
             if(pref.isInTempMemory() && !pref.o_supported)
             {
+                if(recorder != null && !retracted_a_preference)
+                {
+                    recorder.retraction(inst);
+                }
                 if(trace_it)
                 {
                     if(!retracted_a_preference)
@@ -0,0 +1,90 @@
+package org.jsoar.kernel.memory;
+
+import java.util.NoSuchElementException;
+
+import org.jsoar.util.ListItem;
+
+/**
+ * A cursor over one batch of working memory changes, as passed to a
+ * {@link WorkingMemoryChangeListener}. The cursor walks the change buffer
+ * of {@link WorkingMemory} in place and is reused for every batch, so it is
+ * only valid during the callback it was passed to.
+ * 
+ * <pre>{@code
+ * while(added.next())
+ * {
+ *     final Wme w = added.get();
+ *     ...
+ * }
+ * }</pre>
+ */
+public final class WmeCursor
+{
+    private ListItem<WmeImpl> first;
+    private ListItem<WmeImpl> next;
+    private WmeImpl current;
+    
+    WmeCursor()
+    {
+    }
+    
+    /**
+     * Point the cursor at a new batch, before its first WME
+     * 
+     * @param first the first list item of the batch, or {@code null} for an
+     *     empty batch
+     */
+    void reset(ListItem<WmeImpl> first)
+    {
+        this.first = first;
+        this.next = first;
+        this.current = null;
+    }
+    
+    /**
+     * Move to the next WME of the batch
+     * 
+     * @return false if there are no more WMEs
+     */
+    public boolean next()
+    {
+        if(next == null)
+        {
+            current = null;
+            return false;
+        }
+        current = next.item;
+        next = next.next;
+        return true;
+    }
+    
+    /**
+     * @return the current WME
+     * @throws NoSuchElementException if {@link #next()} hasn't been called or
+     *     has returned false
+     */
+    public Wme get()
+    {
+        if(current == null)
+        {
+            throw new NoSuchElementException();
+        }
+        return current;
+    }
+    
+    /**
+     * Go back to before the first WME, so that the batch can be walked again
+     */
+    public void rewind()
+    {
+        reset(first);
+    }
+    
+    /**
+     * @return true if the batch has no WMEs
+     */
+    public boolean isEmpty()
+    {
+        return first == null;
+    }
+}
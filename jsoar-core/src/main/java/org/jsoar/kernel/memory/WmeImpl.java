@@ -20,6 +20,7 @@
 import org.jsoar.kernel.symbols.Symbol;
 import org.jsoar.kernel.symbols.SymbolImpl;
 import org.jsoar.kernel.wma.WorkingMemoryActivation;
+import org.jsoar.kernel.wma.wma_decay_element;
 import org.jsoar.util.adaptables.AbstractAdaptable;
 
 /**
@@ -138,7 +139,11 @@ public class WmeImpl extends AbstractAdaptable implements Wme
     public GoalDependencySetImpl gds;
     public WmeImpl gds_next, gds_prev; // part of dll of wmes in gds
     
+    public WmeImpl rete_next, rete_prev; // part of dll of all wmes in rete
+    
     public WorkingMemoryActivation wma;
+    public wma_decay_element wma_decay_el; // activation of o-supported wmes while wma is on, or null
+    public int wma_tc_value; /* for wma use only */
     
     /**
      * 
@@ -0,0 +1,303 @@
+package org.jsoar.kernel.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.Goal;
+import org.jsoar.kernel.rete.Rete;
+import org.jsoar.kernel.symbols.Identifier;
+import org.jsoar.kernel.symbols.IdentifierImpl;
+import org.jsoar.kernel.symbols.JavaSymbol;
+import org.jsoar.kernel.symbols.Symbol;
+import org.jsoar.kernel.symbols.SymbolFactoryImpl;
+import org.jsoar.kernel.symbols.SymbolImpl;
+import org.jsoar.kernel.symbols.Symbols;
+import org.jsoar.util.Arguments;
+import org.jsoar.util.StringTools;
+import org.jsoar.util.adaptables.Adaptables;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * Searches working memory for WMEs that match glob expressions, like
+ * {@link Wmes#search(java.util.Iterator, String, String, String)}, but without scanning
+ * all WMEs when the patterns allow it:
+ * 
+ * <ul>
+ * <li>An exact or prefix id, e.g. {@code S1} or {@code S1*}, only looks at
+ * the WMEs of the matching identifiers.
+ * <li>Otherwise, an exact or prefix attribute and/or value only looks at the
+ * alpha memories of the rete for the matching symbols, if productions test
+ * for them.
+ * </ul>
+ * 
+ * <p>Other patterns, e.g. {@code *} or {@code ?ame}, scan all WMEs.
+ * 
+ * <p><em>This class should only be used from the agent thread</em>
+ */
+public class WmeSearch
+{
+    private final Agent agent;
+    private final Rete rete;
+    private final SymbolFactoryImpl syms;
+    
+    /**
+     * @param agent the agent whose working memory is searched
+     */
+    public WmeSearch(Agent agent)
+    {
+        Arguments.checkNotNull(agent, "agent");
+        this.agent = agent;
+        this.rete = Adaptables.require(getClass(), agent, Rete.class);
+        this.syms = Adaptables.require(getClass(), agent, SymbolFactoryImpl.class);
+    }
+    
+    /**
+     * Search working memory for WMEs that match glob expressions.
+     * 
+     * @param id glob expression, or {@code null} for any id. Ids are
+     *     matched case-insensitively.
+     * @param attr glob expression, or {@code null} for any attr
+     * @param value glob expression, or {@code null} for any value
+     * @return the WMEs matching all three globs, ordered by timetag
+     */
+    public List<Wme> search(String id, String attr, String value)
+    {
+        final Field idField = new Field(id != null ? id.toUpperCase() : null);
+        final Field attrField = new Field(attr);
+        final Field valueField = new Field(value);
+        
+        Collection<? extends Wme> candidates = findByIdentifier(idField);
+        if(candidates == null)
+        {
+            candidates = findInAlphaMemories(attrField, valueField);
+        }
+        if(candidates == null)
+        {
+            candidates = rete.getAllWmes();
+        }
+        
+        final List<Wme> result = new ArrayList<>();
+        for(Wme w : candidates)
+        {
+            if(idField.matches(w.getIdentifier()) && attrField.matches(w.getAttribute()) &&
+                    valueField.matches(w.getValue()) && rete.containsWme(w))
+            {
+                result.add(w);
+            }
+        }
+        result.sort(Comparator.comparingLong(Wme::getTimetag));
+        return result;
+    }
+    
+    /**
+     * @return the WMEs of the identifiers matching the id pattern, or
+     *     {@code null} if the WMEs have to be found some other way
+     */
+    private List<Wme> findByIdentifier(Field id)
+    {
+        final List<Identifier> ids;
+        if(id.exact != null)
+        {
+            // Long-term identifiers print with a leading @
+            final Identifier match = Symbols.parseIdentifier(syms, id.exact.startsWith("@") ? id.exact.substring(1) : id.exact);
+            ids = match != null ? Collections.singletonList(match) : Collections.emptyList();
+        }
+        else if(id.prefix != null)
+        {
+            ids = new ArrayList<>();
+            for(Identifier candidate : syms.getSymbols(Identifier.class))
+            {
+                if(candidate.toString().startsWith(id.prefix))
+                {
+                    ids.add(candidate);
+                }
+            }
+        }
+        else
+        {
+            return null;
+        }
+        
+        final List<Wme> result = new ArrayList<>();
+        for(Identifier i : ids)
+        {
+            Iterators.addAll(result, i.getWmes());
+        }
+        return result;
+    }
+    
+    /**
+     * @return the WMEs in the alpha memories for the symbols matching the attr
+     *     and value patterns, or {@code null} if there are no such memories
+     */
+    private List<Wme> findInAlphaMemories(Field attr, Field value)
+    {
+        final List<SymbolImpl> attrs = attr.getCandidates();
+        final List<SymbolImpl> values = value.getCandidates();
+        if(attrs == null && values == null)
+        {
+            return null;
+        }
+        
+        final List<Wme> result = new ArrayList<>();
+        for(SymbolImpl a : attrs != null ? attrs : Collections.<SymbolImpl> singletonList(null))
+        {
+            final List<Wme> byValue = values != null ? findInAlphaMemories(a, values) : null;
+            if(byValue != null)
+            {
+                result.addAll(byValue);
+                continue;
+            }
+            final List<WmeImpl> byAttr = a != null ? rete.getWmesInAlphaMemory(a, null, false) : null;
+            if(byAttr == null)
+            {
+                return null;
+            }
+            result.addAll(byAttr);
+        }
+        
+        // Productions rarely test for acceptable preferences, but those WMEs
+        // only exist for the operator slots of goals.
+        for(Goal goal : agent.getGoalStack())
+        {
+            final Slot slot = ((IdentifierImpl) goal.getIdentifier()).goalInfo.operator_slot;
+            if(slot != null && slot.getAcceptablePreferenceWmes() != null)
+            {
+                Iterators.addAll(result, slot.getAcceptablePreferenceWmes().iterator());
+            }
+        }
+        return result;
+    }
+    
+    private List<Wme> findInAlphaMemories(SymbolImpl attr, List<SymbolImpl> values)
+    {
+        final List<Wme> result = new ArrayList<>();
+        for(SymbolImpl v : values)
+        {
+            final List<WmeImpl> wmes = rete.getWmesInAlphaMemory(attr, v, false);
+            if(wmes == null)
+            {
+                return null;
+            }
+            result.addAll(wmes);
+        }
+        return result;
+    }
+    
+    /**
+     * A glob expression for one field of a WME
+     */
+    private class Field
+    {
+        private final Pattern pattern;
+        
+        /**
+         * The symbol text if the expression has no wildcards
+         */
+        private final String exact;
+        
+        /**
+         * The text before the wildcard if the expression only has a trailing *
+         */
+        private final String prefix;
+        
+        Field(String glob)
+        {
+            if(glob == null || (!glob.isEmpty() && glob.chars().allMatch(c -> c == '*')))
+            {
+                pattern = null;
+                exact = null;
+                prefix = null;
+                return;
+            }
+            pattern = Pattern.compile(StringTools.createRegexFromGlob(glob));
+            final String stripped = glob.replaceAll("\\*+$", "");
+            if(stripped.indexOf('*') >= 0 || stripped.indexOf('?') >= 0)
+            {
+                exact = null;
+                prefix = null;
+            }
+            else if(stripped.length() == glob.length())
+            {
+                exact = glob;
+                prefix = null;
+            }
+            else
+            {
+                exact = null;
+                prefix = stripped;
+            }
+        }
+        
+        boolean matches(Symbol s)
+        {
+            return pattern == null || pattern.matcher(s.toString()).matches();
+        }
+        
+        /**
+         * @return the symbols that may match the expression, or {@code null}
+         *     if it isn't exact or a prefix
+         */
+        List<SymbolImpl> getCandidates()
+        {
+            final List<SymbolImpl> result = new ArrayList<>();
+            if(exact != null)
+            {
+                add(result, syms.findString(exact));
+                try
+                {
+                    add(result, syms.findInteger(Long.parseLong(exact)));
+                }
+                catch(NumberFormatException e)
+                {
+                    // not an integer
+                }
+                try
+                {
+                    add(result, syms.findDouble(Double.parseDouble(exact)));
+                }
+                catch(NumberFormatException e)
+                {
+                    // not a double
+                }
+                add(result, Symbols.parseIdentifier(syms, exact.startsWith("@") ? exact.substring(1) : exact));
+                for(JavaSymbol s : syms.getSymbols(JavaSymbol.class))
+                {
+                    if(s.toString().equals(exact))
+                    {
+                        add(result, s);
+                    }
+                }
+            }
+            else if(prefix != null)
+            {
+                for(Symbol s : syms.getAllSymbols())
+                {
+                    if(s.toString().startsWith(prefix))
+                    {
+                        add(result, s);
+                    }
+                }
+            }
+            else
+            {
+                return null;
+            }
+            return result;
+        }
+        
+        private void add(List<SymbolImpl> result, Symbol s)
+        {
+            if(s != null)
+            {
+                result.add((SymbolImpl) s);
+            }
+        }
+    }
+}
@@ -21,7 +21,6 @@
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterators;
-import com.google.common.collect.Lists;
 
 /**
  * {@link Wme} utility routines
@@ -139,18 +138,19 @@ public boolean apply(Wme w)
     }
     
     /**
-     * Convenience version of {@link Wmes#search(Iterator, String, String, String)}
-     * which searches all WMEs in working memory and returns a list.
+     * Version of {@link Wmes#search(Iterator, String, String, String)}
+     * which searches all WMEs in working memory and returns a list. Uses the
+     * agent's indexes where possible, see {@link WmeSearch}.
      * 
      * @param agent the agent
      * @param id glob expression, or {@code null} for any id
      * @param attr glob expression, or {@code null} for any attr
      * @param value glob expression, or {@code null} for any value
-     * @return List of matching WMEs
+     * @return List of matching WMEs, ordered by timetag
      */
     public static List<Wme> search(Agent agent, String id, String attr, String value)
     {
-        return Lists.newArrayList(search(agent.getAllWmesInRete().iterator(), id, attr, value));
+        return new WmeSearch(agent).search(id, attr, value);
     }
     
     /**
@@ -1,10 +1,12 @@
 /*
  * Copyright (c) 2008  Dave Ray <daveray@gmail.com>
- *
+ * 
  * Created on Sep 7, 2008
  */
 package org.jsoar.kernel.memory;
 
+import java.util.Arrays;
+
 import org.jsoar.kernel.Agent;
 import org.jsoar.kernel.Decider;
 import org.jsoar.kernel.PredefinedSymbols;
@@ -19,6 +21,7 @@
 import org.jsoar.kernel.symbols.SymbolImpl;
 import org.jsoar.kernel.tracing.Trace;
 import org.jsoar.kernel.tracing.Trace.Category;
+import org.jsoar.kernel.tracing.TraceRecorder;
 import org.jsoar.kernel.wma.WorkingMemoryActivation;
 import org.jsoar.util.ListHead;
 import org.jsoar.util.ListItem;
@@ -42,6 +45,8 @@
  */
 public class WorkingMemory
 {
+    private static final WorkingMemoryChangeListener[] NO_CHANGE_LISTENERS = new WorkingMemoryChangeListener[0];
+    
     private Rete rete;
     private PredefinedSymbols predefinedSyms;
     private Trace trace;
@@ -62,6 +67,14 @@
     private final LongPropertyProvider cumulative_wm_size = new LongPropertyProvider(SoarProperties.CUMULATIVE_WM_SIZE);
     private final LongPropertyProvider num_wm_sizes_accumulated = new LongPropertyProvider(SoarProperties.NUM_WM_SIZES_ACCUMULATED);
     
+    /**
+     * Replaced, never modified, so the agent thread can walk it without
+     * locking or allocating
+     */
+    private volatile WorkingMemoryChangeListener[] changeListeners = NO_CHANGE_LISTENERS;
+    private final WmeCursor addedCursor = new WmeCursor();
+    private final WmeCursor removedCursor = new WmeCursor();
+    
     public WorkingMemory()
     {
     }
@@ -85,6 +98,46 @@ public void initialize(Agent context)
         this.symbols = Adaptables.adapt(context, SymbolFactoryImpl.class);
     }
     
+    /**
+     * Add a listener for the changes to working memory. It is safe to call
+     * this method from any thread.
+     * 
+     * @param listener the listener
+     * @throws NullPointerException if listener is {@code null}
+     */
+    public synchronized void addChangeListener(WorkingMemoryChangeListener listener)
+    {
+        if(listener == null)
+        {
+            throw new NullPointerException("listener");
+        }
+        final WorkingMemoryChangeListener[] listeners = Arrays.copyOf(changeListeners, changeListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        changeListeners = listeners;
+    }
+    
+    /**
+     * Remove a listener added with
+     * {@link #addChangeListener(WorkingMemoryChangeListener)}. It is safe to
+     * call this method from any thread, including from the listener itself.
+     * 
+     * @param listener the listener
+     */
+    public synchronized void removeChangeListener(WorkingMemoryChangeListener listener)
+    {
+        for(int i = 0; i < changeListeners.length; ++i)
+        {
+            if(changeListeners[i] == listener)
+            {
+                final WorkingMemoryChangeListener[] listeners = new WorkingMemoryChangeListener[changeListeners.length - 1];
+                System.arraycopy(changeListeners, 0, listeners, 0, i);
+                System.arraycopy(changeListeners, i + 1, listeners, i, listeners.length - i);
+                changeListeners = listeners.length == 0 ? NO_CHANGE_LISTENERS : listeners;
+                return;
+            }
+        }
+    }
+    
     /**
      * <p>wmem.cpp:71:reset_wme_timetags
      * <p>init_soar.cpp:297:reset_statistics
@@ -219,6 +272,30 @@ public void remove_wme_list_from_wm(WmeImpl w, boolean updateWmeMap /* =false */
         }
     }
     
+    private void fireWorkingMemoryChanged()
+    {
+        final WorkingMemoryChangeListener[] listeners = changeListeners;
+        if(listeners.length != 0)
+        {
+            for(WorkingMemoryChangeListener listener : listeners)
+            {
+                addedCursor.reset(wmes_to_add.first);
+                removedCursor.reset(wmes_to_remove.first);
+                listener.onWorkingMemoryChanged(addedCursor, removedCursor);
+            }
+            
+            // don't hold on to the buffers once they're cleared
+            addedCursor.reset(null);
+            removedCursor.reset(null);
+        }
+        
+        // only build the event if someone will get it
+        if(eventManager.hasListeners(WorkingMemoryChangedEvent.class))
+        {
+            eventManager.fireEvent(new WorkingMemoryChangedEvent(wmes_to_add, wmes_to_remove));
+        }
+    }
+    
     /**
      * wmem.cpp:186:do_buffered_wm_changes
      */
@@ -239,7 +316,7 @@ public void do_buffered_wm_changes(InputOutputImpl io)
         // call output module in case any changes are output link changes
         io.inform_output_module_of_wm_changes(wmes_to_add, wmes_to_remove);
         
-        eventManager.fireEvent(new WorkingMemoryChangedEvent(wmes_to_add, wmes_to_remove));
+        fireWorkingMemoryChanged();
         
         // stuff wme changes through the rete net
         // #ifndef NO_TIMING_STUFF
@@ -287,6 +364,7 @@ public void do_buffered_wm_changes(InputOutputImpl io)
         warnIfSameWmeAddedAndRemoved();
         
         final boolean traceChanges = trace.isEnabled(Category.WM_CHANGES);
+        final TraceRecorder recorder = trace.getRecorder();
         // do tracing and cleanup stuff
         for(ListItem<WmeImpl> w = wmes_to_add.first; w != null; w = w.next)
         {
@@ -295,6 +373,10 @@ public void do_buffered_wm_changes(InputOutputImpl io)
             {
                 trace.startNewLine().print("=>WM: %s", w.item);
             }
+            if(recorder != null)
+            {
+                recorder.wmeAdded(w.item);
+            }
             wme_addition_count.increment();
         }
         
@@ -305,6 +387,10 @@ public void do_buffered_wm_changes(InputOutputImpl io)
             {
                 trace.startNewLine().print("<=WM: %s", w.item);
             }
+            if(recorder != null)
+            {
+                recorder.wmeRemoved(w.item);
+            }
             wme_removal_count.increment();
         }
         
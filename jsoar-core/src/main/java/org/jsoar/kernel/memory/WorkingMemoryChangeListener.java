@@ -0,0 +1,24 @@
+package org.jsoar.kernel.memory;
+
+import org.jsoar.kernel.events.WorkingMemoryChangedEvent;
+
+/**
+ * Receives each batch of working memory changes as it goes into the rete.
+ * Unlike {@link WorkingMemoryChangedEvent}, nothing is allocated to deliver a
+ * batch, and nothing at all is done when there are no listeners.
+ * 
+ * @see WorkingMemory#addChangeListener(WorkingMemoryChangeListener)
+ */
+public interface WorkingMemoryChangeListener
+{
+    /**
+     * Called on the agent thread whenever buffered working memory changes
+     * are applied. Both cursors are positioned before their first WME and
+     * are reused for the next batch, so a listener that needs the WMEs later
+     * must copy them out.
+     * 
+     * @param added the WMEs that were added
+     * @param removed the WMEs that were removed
+     */
+    void onWorkingMemoryChanged(WmeCursor added, WmeCursor removed);
+}
@@ -0,0 +1,116 @@
+package org.jsoar.kernel.rete;
+
+/**
+ * Layout of the compiled rete format shared by {@link CompiledReteWriter}
+ * and {@link CompiledReteReader}.
+ * 
+ * <p>Unlike the stream format of {@link ReteNetWriter}, a compiled rete is a
+ * set of tables that are addressed by offset, so it can be read straight out
+ * of a {@link java.nio.MappedByteBuffer} without copying or parsing it first,
+ * and the same buffer can be read by several agents at once. All values are
+ * big endian. The file is laid out like this:
+ * 
+ * <ul>
+ * <li>The header: {@link #MAGIC}, {@link #VERSION}, the number of strings,
+ * symbols, alpha memories and nodes, and the offsets of the string, symbol,
+ * alpha memory, node and data sections, all ints.
+ * <li>Strings: a fixed-width record of UTF-8 offset and length per string,
+ * followed by the UTF-8 bytes of all strings. Production names,
+ * documentation and the names of string symbols and variables are stored
+ * here, each distinct string once.
+ * <li>Symbols: a fixed-width {@link #SYMBOL_RECORD_SIZE} record per symbol,
+ * a kind byte and a long, which is a string index, an integer or the bits
+ * of a double. Symbol 0 is "no symbol".
+ * <li>Alpha memories: a fixed-width {@link #ALPHA_MEMORY_RECORD_SIZE} record
+ * per alpha memory, the id, attribute and value symbols and an acceptable
+ * byte.
+ * <li>Nodes: a fixed-width {@link #NODE_RECORD_SIZE} record per beta node, in
+ * the order they are created in. See {@link #NODE_TYPE} and the following
+ * constants for the fields. A parent always comes before its children.
+ * <li>Data: the variable-length parts of nodes, i.e. test lists and
+ * productions, addressed by the data field of the node record. These are
+ * written like {@link ReteNetWriter} does, with ints instead of strings.
+ * </ul>
+ * 
+ * <p>Enums (node types, production types, preference types, ...) are stored
+ * by ordinal, so changing any of them requires a new {@link #VERSION}.
+ */
+final class CompiledReteFormat
+{
+    static final int MAGIC = 0x4A535243; // "JSRC"
+    static final int VERSION = 1;
+    
+    // Header
+    
+    static final int HEADER_SIZE = 4 * 11;
+    static final int STRING_COUNT = 8;
+    static final int SYMBOL_COUNT = 12;
+    static final int ALPHA_MEMORY_COUNT = 16;
+    static final int NODE_COUNT = 20;
+    static final int STRINGS_OFFSET = 24;
+    static final int SYMBOLS_OFFSET = 28;
+    static final int ALPHA_MEMORIES_OFFSET = 32;
+    static final int NODES_OFFSET = 36;
+    static final int DATA_OFFSET = 40;
+    
+    // Strings
+    
+    /** UTF-8 offset relative to the end of the string records, length */
+    static final int STRING_RECORD_SIZE = 8;
+    
+    // Symbols
+    
+    /** kind byte, long value */
+    static final int SYMBOL_RECORD_SIZE = 9;
+    
+    static final int NO_SYMBOL = 0;
+    
+    /** string index */
+    static final int STRING = 1;
+    
+    /** string index */
+    static final int VARIABLE = 2;
+    
+    /** value */
+    static final int INTEGER = 3;
+    
+    /** raw long bits */
+    static final int DOUBLE = 4;
+    
+    // Alpha memories
+    
+    /** id, attr, value symbols, acceptable byte */
+    static final int ALPHA_MEMORY_RECORD_SIZE = 13;
+    
+    // Nodes
+    
+    static final int NODE_RECORD_SIZE = 22;
+    
+    /** {@link ReteNodeType} ordinal byte */
+    static final int NODE_TYPE = 0;
+    
+    /** left unlinked byte */
+    static final int NODE_LEFT_UNLINKED = 1;
+    
+    /** index of the parent node, -1 for the dummy top node */
+    static final int NODE_PARENT = 2;
+    
+    /**
+     * index of the alpha memory; for CN partner nodes, the number of levels
+     * up to the top of the NCC
+     */
+    static final int NODE_ALPHA_MEMORY = 6;
+    
+    /** field number of the left hash location */
+    static final int NODE_LEFT_HASH_FIELD = 10;
+    
+    /** levels up of the left hash location */
+    static final int NODE_LEFT_HASH_LEVELS_UP = 14;
+    
+    /** offset in the data section of the tests or production, -1 for none */
+    static final int NODE_DATA = 18;
+    
+    private CompiledReteFormat()
+    {
+    }
+}
@@ -0,0 +1,532 @@
+package org.jsoar.kernel.rete;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.DefaultProductionManager;
+import org.jsoar.kernel.Production;
+import org.jsoar.kernel.Production.Support;
+import org.jsoar.kernel.ProductionType;
+import org.jsoar.kernel.SoarException;
+import org.jsoar.kernel.events.ProductionAddedEvent;
+import org.jsoar.kernel.learning.rl.ReinforcementLearning;
+import org.jsoar.kernel.memory.PreferenceType;
+import org.jsoar.kernel.rhs.Action;
+import org.jsoar.kernel.rhs.ActionSupport;
+import org.jsoar.kernel.rhs.FunctionAction;
+import org.jsoar.kernel.rhs.MakeAction;
+import org.jsoar.kernel.rhs.ReteLocation;
+import org.jsoar.kernel.rhs.RhsFunctionCall;
+import org.jsoar.kernel.rhs.RhsSymbolValue;
+import org.jsoar.kernel.rhs.RhsValue;
+import org.jsoar.kernel.rhs.UnboundVariable;
+import org.jsoar.kernel.symbols.SymbolFactoryImpl;
+import org.jsoar.kernel.symbols.SymbolImpl;
+import org.jsoar.kernel.symbols.Variable;
+import org.jsoar.util.Arguments;
+import org.jsoar.util.adaptables.Adaptables;
+
+/**
+ * Loads a rete in the compiled format described in {@link CompiledReteFormat}
+ * into an agent. The buffer is only read with absolute gets, so the same
+ * buffer, e.g. a file mapped with {@link java.nio.channels.FileChannel#map},
+ * can be loaded into several agents at once.
+ * 
+ * @see CompiledReteWriter
+ */
+class CompiledReteReader
+{
+    private final Agent context;
+    private final SymbolFactoryImpl syms;
+    private final Rete rete;
+    private final DefaultProductionManager productionManager;
+    private final ReinforcementLearning rl;
+    
+    private ByteBuffer buffer;
+    private int position;
+    private int stringsOffset;
+    private int stringCount;
+    private String[] strings;
+    private SymbolImpl[] symbols;
+    private int alphaMemoriesOffset;
+    private AlphaMemory[] alphaMemories;
+    private int dataOffset;
+    
+    CompiledReteReader(Agent context)
+    {
+        Arguments.checkNotNull(context, "context");
+        this.context = context;
+        this.syms = Adaptables.require(getClass(), context, SymbolFactoryImpl.class);
+        this.rete = Adaptables.require(getClass(), context, Rete.class);
+        this.rl = Adaptables.require(getClass(), context, ReinforcementLearning.class);
+        this.productionManager = (DefaultProductionManager) context.getProductions();
+    }
+    
+    /**
+     * @param buffer a buffer
+     * @return true if the remaining bytes of the buffer start like a
+     *     compiled rete
+     */
+    static boolean isCompiledRete(ByteBuffer buffer)
+    {
+        return buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == CompiledReteFormat.MAGIC;
+    }
+    
+    /**
+     * Load the rete from the remaining bytes of the given buffer. The position
+     * of the buffer is not changed.
+     * 
+     * @param source the buffer to read from
+     * @throws SoarException if the buffer doesn't contain a valid compiled
+     *     rete
+     */
+    void read(ByteBuffer source) throws SoarException
+    {
+        buffer = source.slice();
+        try
+        {
+            if(!isCompiledRete(buffer))
+            {
+                throw new SoarException("Input does not appear to be a compiled JSoar rete");
+            }
+            final int version = buffer.getInt(4);
+            if(version != CompiledReteFormat.VERSION)
+            {
+                throw new SoarException(String.format("Unsupported compiled JSoar rete version. Expected %d, got %d",
+                        CompiledReteFormat.VERSION, version));
+            }
+            
+            stringCount = checkCount(buffer.getInt(CompiledReteFormat.STRING_COUNT));
+            strings = new String[stringCount];
+            stringsOffset = buffer.getInt(CompiledReteFormat.STRINGS_OFFSET);
+            symbols = new SymbolImpl[checkCount(buffer.getInt(CompiledReteFormat.SYMBOL_COUNT))];
+            alphaMemories = new AlphaMemory[checkCount(buffer.getInt(CompiledReteFormat.ALPHA_MEMORY_COUNT))];
+            alphaMemoriesOffset = buffer.getInt(CompiledReteFormat.ALPHA_MEMORIES_OFFSET);
+            dataOffset = buffer.getInt(CompiledReteFormat.DATA_OFFSET);
+            
+            readSymbols(buffer.getInt(CompiledReteFormat.SYMBOLS_OFFSET));
+            readNodes(buffer.getInt(CompiledReteFormat.NODES_OFFSET), checkCount(buffer.getInt(CompiledReteFormat.NODE_COUNT)));
+        }
+        catch(IndexOutOfBoundsException e)
+        {
+            throw new SoarException("Compiled JSoar rete is truncated or corrupt", e);
+        }
+        finally
+        {
+            buffer = null;
+            strings = null;
+            symbols = null;
+            alphaMemories = null;
+        }
+    }
+    
+    private static int checkCount(int count) throws SoarException
+    {
+        if(count < 0)
+        {
+            throw new SoarException(String.format("Invalid table size %d", count));
+        }
+        return count;
+    }
+    
+    private void readSymbols(int offset) throws SoarException
+    {
+        for(int i = 1; i < symbols.length; ++i)
+        {
+            final int record = offset + i * CompiledReteFormat.SYMBOL_RECORD_SIZE;
+            final long value = buffer.getLong(record + 1);
+            switch(buffer.get(record))
+            {
+            case CompiledReteFormat.STRING:
+                symbols[i] = syms.createString(getString((int) value));
+                break;
+            case CompiledReteFormat.VARIABLE:
+                symbols[i] = syms.make_variable(getString((int) value));
+                break;
+            case CompiledReteFormat.INTEGER:
+                symbols[i] = syms.createInteger(value);
+                break;
+            case CompiledReteFormat.DOUBLE:
+                symbols[i] = syms.createDouble(Double.longBitsToDouble(value));
+                break;
+            default:
+                throw new SoarException(String.format("Invalid symbol kind %d", buffer.get(record)));
+            }
+        }
+    }
+    
+    private String getString(int index) throws SoarException
+    {
+        if(index < 0 || index >= stringCount)
+        {
+            throw new SoarException(String.format("Invalid string index %d", index));
+        }
+        String s = strings[index];
+        if(s == null)
+        {
+            final int record = stringsOffset + index * CompiledReteFormat.STRING_RECORD_SIZE;
+            final ByteBuffer utf8 = buffer.duplicate();
+            utf8.position(stringsOffset + stringCount * CompiledReteFormat.STRING_RECORD_SIZE + buffer.getInt(record));
+            utf8.limit(utf8.position() + buffer.getInt(record + 4));
+            s = strings[index] = StandardCharsets.UTF_8.decode(utf8).toString();
+        }
+        return s;
+    }
+    
+    private SymbolImpl getSymbol(int index) throws SoarException
+    {
+        if(index < 0 || index >= symbols.length)
+        {
+            throw new SoarException(String.format("Invalid symbol index %d", index));
+        }
+        return symbols[index];
+    }
+    
+    /**
+     * Returns an alpha memory for a new node, creating it when it's first
+     * used so that its reference count matches the number of nodes using it.
+     */
+    private AlphaMemory getAlphaMemory(int index) throws SoarException
+    {
+        if(index < 0 || index >= alphaMemories.length)
+        {
+            throw new SoarException(String.format("Invalid alpha memory index %d", index));
+        }
+        AlphaMemory am = alphaMemories[index];
+        if(am == null)
+        {
+            final int record = alphaMemoriesOffset + index * CompiledReteFormat.ALPHA_MEMORY_RECORD_SIZE;
+            am = alphaMemories[index] = rete.find_or_make_alpha_mem(
+                    getSymbol(buffer.getInt(record)),
+                    getSymbol(buffer.getInt(record + 4)),
+                    getSymbol(buffer.getInt(record + 8)),
+                    buffer.get(record + 12) != 0);
+        }
+        else
+        {
+            am.reference_count++;
+        }
+        return am;
+    }
+    
+    private static <E extends Enum<E>> E getEnum(E[] values, int ordinal) throws SoarException
+    {
+        if(ordinal < 0 || ordinal >= values.length)
+        {
+            throw new SoarException(String.format("Unknown %s %d", values.getClass().getComponentType().getSimpleName(), ordinal));
+        }
+        return values[ordinal];
+    }
+    
+    /**
+     * @see ReteNetReader#readNodeAndChildren
+     */
+    private void readNodes(int offset, int count) throws SoarException
+    {
+        final ReteNodeType[] types = ReteNodeType.values();
+        final ReteNode[] nodes = new ReteNode[count];
+        for(int i = 0; i < count; ++i)
+        {
+            final int record = offset + i * CompiledReteFormat.NODE_RECORD_SIZE;
+            final ReteNodeType type = getEnum(types, buffer.get(record + CompiledReteFormat.NODE_TYPE));
+            final boolean leftUnlinked = buffer.get(record + CompiledReteFormat.NODE_LEFT_UNLINKED) != 0;
+            final int parentIndex = buffer.getInt(record + CompiledReteFormat.NODE_PARENT);
+            final int alphaMemory = buffer.getInt(record + CompiledReteFormat.NODE_ALPHA_MEMORY);
+            final VarLocation leftHashLoc = new VarLocation(
+                    buffer.getInt(record + CompiledReteFormat.NODE_LEFT_HASH_LEVELS_UP),
+                    buffer.getInt(record + CompiledReteFormat.NODE_LEFT_HASH_FIELD));
+            position = dataOffset + buffer.getInt(record + CompiledReteFormat.NODE_DATA);
+            if(parentIndex < -1 || parentIndex >= i)
+            {
+                throw new SoarException(String.format("Invalid parent %d for node %d", parentIndex, i));
+            }
+            final ReteNode parent = parentIndex < 0 ? rete.dummy_top_node : nodes[parentIndex];
+            
+            switch(type)
+            {
+            case MEMORY_BNODE:
+            case UNHASHED_MEMORY_BNODE:
+                nodes[i] = ReteNode.make_new_mem_node(rete, parent, type, leftHashLoc);
+                break;
+            
+            case MP_BNODE:
+            case UNHASHED_MP_BNODE:
+                nodes[i] = ReteNode.make_new_mp_node(rete, parent, type, leftHashLoc, getAlphaMemory(alphaMemory),
+                        readTestList(), leftUnlinked);
+                break;
+            
+            case POSITIVE_BNODE:
+            case UNHASHED_POSITIVE_BNODE:
+                nodes[i] = ReteNode.make_new_positive_node(rete, parent, type, getAlphaMemory(alphaMemory),
+                        readTestList(), leftUnlinked);
+                break;
+            
+            case NEGATIVE_BNODE:
+            case UNHASHED_NEGATIVE_BNODE:
+                nodes[i] = ReteNode.make_new_negative_node(rete, parent, type, leftHashLoc, getAlphaMemory(alphaMemory),
+                        readTestList());
+                break;
+            
+            case CN_PARTNER_BNODE:
+                ReteNode nccTop = parent;
+                for(int levels = alphaMemory; levels > 0; --levels)
+                {
+                    nccTop = nccTop.real_parent_node();
+                }
+                nodes[i] = ReteNode.make_new_cn_node(rete, nccTop, parent);
+                break;
+            
+            case P_BNODE:
+                nodes[i] = readProduction(parent);
+                break;
+            
+            default:
+                throw new SoarException("Unhandled ReteNodeType: " + type);
+            }
+        }
+    }
+    
+    /**
+     * @see CompiledReteWriter#writeProduction
+     */
+    private ReteNode readProduction(ReteNode parent) throws SoarException
+    {
+        final String name = getString(readInt());
+        final int doc = readInt();
+        final ProductionType prodType = getEnum(ProductionType.values(), readByte());
+        final Support declaredSupport = getEnum(Support.values(), readByte());
+        Action first = null;
+        Action prev = null;
+        for(int count = readInt(); count > 0; --count)
+        {
+            final Action a = readAction();
+            if(prev != null)
+            {
+                prev.next = a;
+            }
+            else
+            {
+                first = a;
+            }
+            prev = a;
+        }
+        final Production prod = Production.newBuilder()
+                .name(name)
+                .documentation(doc >= 0 ? getString(doc) : null)
+                .type(prodType)
+                .support(declaredSupport)
+                .actions(first)
+                .build();
+        
+        final int numUnboundVariables = readInt();
+        rete.update_max_rhs_unbound_variables(numUnboundVariables);
+        final List<Variable> unboundVars = new ArrayList<>(numUnboundVariables);
+        for(int i = 0; i < numUnboundVariables; i++)
+        {
+            unboundVars.add(getSymbol(readInt()).asVariable());
+        }
+        prod.setRhsUnboundVariables(unboundVars);
+        
+        // Soar-RL stuff
+        rl.addProduction(prod);
+        
+        final ReteNode node = ReteNode.make_new_production_node(rete, parent, prod);
+        node.b_p().parents_nvn = readByte() != 0 ? readNodeVarNames(parent) : null;
+        
+        // --- call new node's add_left routine with all the parent's tokens ---
+        rete.update_node_with_matches_from_above(node);
+        
+        productionManager.addProductionToNameTypeMaps(prod);
+        context.getEvents().fireEvent(new ProductionAddedEvent(context, prod));
+        return node;
+    }
+    
+    /**
+     * @see CompiledReteWriter#writeAction
+     */
+    private Action readAction() throws SoarException
+    {
+        final ReteNetConstants.Action actionType = ReteNetConstants.Action.fromOrdinal(readByte());
+        final Action a = actionType == ReteNetConstants.Action.MAKE_ACTION ? new MakeAction() : new FunctionAction(null);
+        final int preferenceType = readByte();
+        a.preference_type = preferenceType >= 0 ? getEnum(PreferenceType.values(), preferenceType) : null;
+        a.support = getEnum(ActionSupport.values(), readByte());
+        
+        if(actionType == ReteNetConstants.Action.FUNCALL_ACTION)
+        {
+            a.asFunctionAction().call = readRHSValue().asFunctionCall();
+        }
+        else
+        {
+            final MakeAction ma = a.asMakeAction();
+            ma.id = readRHSValue();
+            ma.attr = readRHSValue();
+            ma.value = readRHSValue();
+            ma.referent = a.preference_type != null && a.preference_type.isBinary() ? readRHSValue() : null;
+        }
+        return a;
+    }
+    
+    /**
+     * @see CompiledReteWriter#writeRHSValue
+     */
+    private RhsValue readRHSValue() throws SoarException
+    {
+        final int type = readByte();
+        switch(ReteNetConstants.RHS.fromOrdinal(type))
+        {
+        case RHS_SYMBOL:
+            return new RhsSymbolValue(getSymbol(readInt()));
+        case RHS_FUNCALL:
+            final SymbolImpl name = getSymbol(readInt());
+            final boolean isStandalone = readByte() != 0;
+            if(context.getRhsFunctions().getHandler(name.asString().getValue()) == null)
+            {
+                context.getPrinter().warn("\nWARNING: Loaded a rete network that references undefined RHS function %s\n",
+                        name.asString().getValue());
+            }
+            final RhsFunctionCall funCall = new RhsFunctionCall(name.asString(), isStandalone);
+            for(int count = readInt(); count > 0; --count)
+            {
+                funCall.addArgument(readRHSValue());
+            }
+            return funCall;
+        case RHS_RETELOC:
+            final int fieldNum = readInt();
+            return ReteLocation.create(fieldNum, readInt());
+        case RHS_UNBOUND_VAR:
+            final int index = readInt();
+            rete.update_max_rhs_unbound_variables(index + 1);
+            return UnboundVariable.create(index);
+        default:
+            throw new SoarException("Unhandled RHS type: " + type);
+        }
+    }
+    
+    /**
+     * @see CompiledReteWriter#writeTestList
+     */
+    private ReteTest readTestList() throws SoarException
+    {
+        ReteTest first = null;
+        ReteTest prev = null;
+        for(int count = readInt(); count > 0; --count)
+        {
+            final ReteTest rt = readTest();
+            if(prev != null)
+            {
+                prev.next = rt;
+            }
+            else
+            {
+                first = rt;
+            }
+            prev = rt;
+        }
+        return first;
+    }
+    
+    /**
+     * @see ReteNetReader#readTest
+     */
+    private ReteTest readTest() throws SoarException
+    {
+        final int type = readInt();
+        final int rightFieldNum = readInt();
+        
+        final ReteTest rt = new ReteTest(type);
+        if(rt.test_is_constant_relational_test())
+        {
+            return ReteTest.createConstantTest(type - ReteTest.CONSTANT_RELATIONAL, rightFieldNum, getSymbol(readInt()));
+        }
+        else if(rt.test_is_variable_relational_test())
+        {
+            final int fieldNum = readInt();
+            final int levelsUp = readInt();
+            return ReteTest.createVariableTest(type - ReteTest.VARIABLE_RELATIONAL, rightFieldNum, new VarLocation(levelsUp, fieldNum));
+        }
+        else if(type == ReteTest.DISJUNCTION)
+        {
+            final int count = readInt();
+            final List<SymbolImpl> disjuncts = new ArrayList<>(count);
+            for(int i = 0; i < count; ++i)
+            {
+                disjuncts.add(getSymbol(readInt()));
+            }
+            return ReteTest.createDisjunctionTest(rightFieldNum, disjuncts);
+        }
+        else if(type == ReteTest.ID_IS_GOAL)
+        {
+            return ReteTest.createGoalIdTest();
+        }
+        else if(type == ReteTest.ID_IS_IMPASSE)
+        {
+            return ReteTest.createImpasseIdTest();
+        }
+        throw new SoarException("Unknown test type: " + type);
+    }
+    
+    /**
+     * @see ReteNetReader#readNodeVarNames
+     */
+    private NodeVarNames readNodeVarNames(ReteNode node) throws SoarException
+    {
+        if(node.node_type == ReteNodeType.DUMMY_TOP_BNODE)
+        {
+            return null;
+        }
+        if(node.node_type == ReteNodeType.CN_BNODE)
+        {
+            ReteNode temp = node.b_cn().partner.parent;
+            NodeVarNames nvnForNcc = readNodeVarNames(temp);
+            final NodeVarNames bottomOfSubconditions = nvnForNcc;
+            while(temp != node.parent)
+            {
+                temp = temp.real_parent_node();
+                nvnForNcc = nvnForNcc.parent;
+            }
+            return NodeVarNames.createForNcc(nvnForNcc, bottomOfSubconditions);
+        }
+        final Object id = readVarNames();
+        final Object attr = readVarNames();
+        final Object value = readVarNames();
+        return NodeVarNames.newInstance(readNodeVarNames(node.real_parent_node()), id, attr, value);
+    }
+    
+    /**
+     * @see CompiledReteWriter#writeVarNames
+     */
+    private Object readVarNames() throws SoarException
+    {
+        switch(ReteNetConstants.VarName.fromOrdinal(readByte()))
+        {
+        case VARNAME_NULL:
+            return null;
+        case VARNAME_ONE_VAR:
+            return VarNames.one_var_to_varnames(getSymbol(readInt()).asVariable());
+        default:
+            final LinkedList<Variable> vars = new LinkedList<>();
+            for(int count = readInt(); count > 0; --count)
+            {
+                vars.add(getSymbol(readInt()).asVariable());
+            }
+            return VarNames.var_list_to_varnames(vars);
+        }
+    }
+    
+    private int readInt()
+    {
+        final int value = buffer.getInt(position);
+        position += 4;
+        return value;
+    }
+    
+    private int readByte()
+    {
+        return buffer.get(position++);
+    }
+}
@@ -0,0 +1,532 @@
+package org.jsoar.kernel.rete;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.Production;
+import org.jsoar.kernel.ProductionType;
+import org.jsoar.kernel.SoarException;
+import org.jsoar.kernel.rhs.Action;
+import org.jsoar.kernel.rhs.FunctionAction;
+import org.jsoar.kernel.rhs.MakeAction;
+import org.jsoar.kernel.rhs.ReteLocation;
+import org.jsoar.kernel.rhs.RhsFunctionCall;
+import org.jsoar.kernel.rhs.RhsSymbolValue;
+import org.jsoar.kernel.rhs.RhsValue;
+import org.jsoar.kernel.rhs.UnboundVariable;
+import org.jsoar.kernel.symbols.DoubleSymbol;
+import org.jsoar.kernel.symbols.IntegerSymbol;
+import org.jsoar.kernel.symbols.StringSymbol;
+import org.jsoar.kernel.symbols.Symbol;
+import org.jsoar.kernel.symbols.SymbolImpl;
+import org.jsoar.kernel.symbols.Variable;
+import org.jsoar.util.Arguments;
+import org.jsoar.util.adaptables.Adaptables;
+
+/**
+ * Writes the rete of an agent in the compiled format described in
+ * {@link CompiledReteFormat}. Only the symbols and alpha memories that are
+ * actually used by the rete are written.
+ * 
+ * @see CompiledReteReader
+ */
+class CompiledReteWriter
+{
+    private final Agent context;
+    private final Rete rete;
+    
+    private final Map<String, Integer> strings = new LinkedHashMap<>();
+    private final Map<Symbol, Integer> symbols = new LinkedHashMap<>();
+    private final Map<AlphaMemory, Integer> alphaMemories = new LinkedHashMap<>();
+    
+    private final ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+    private final DataOutputStream nodes = new DataOutputStream(nodeBytes);
+    private final ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+    private final DataOutputStream data = new DataOutputStream(dataBytes);
+    private int nodeCount;
+    
+    CompiledReteWriter(Agent context)
+    {
+        Arguments.checkNotNull(context, "context");
+        
+        this.context = context;
+        this.rete = Adaptables.require(getClass(), context, Rete.class);
+    }
+    
+    /**
+     * Write the rete to the given output stream. The stream is not closed.
+     * 
+     * @param os the output stream to write to
+     * @throws IOException if an error occurs while writing
+     * @throws SoarException if there are justifications or the rete contains
+     *     something that can't be written
+     */
+    void write(OutputStream os) throws IOException, SoarException
+    {
+        if(!context.getProductions().getProductions(ProductionType.JUSTIFICATION).isEmpty())
+        {
+            throw new SoarException("Internal error: cannot save rete net with justifications present.");
+        }
+        
+        writeChildrenOfNode(rete.dummy_top_node, -1);
+        
+        // The tables are only complete once all nodes have been written
+        final ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+        final DataOutputStream tables = new DataOutputStream(tableBytes);
+        final byte[] symbolTable = writeSymbols();
+        final int stringsOffset = CompiledReteFormat.HEADER_SIZE;
+        writeStrings(tables);
+        final int symbolsOffset = stringsOffset + tables.size();
+        tables.write(symbolTable);
+        final int alphaMemoriesOffset = stringsOffset + tables.size();
+        writeAlphaMemories(tables);
+        final int nodesOffset = stringsOffset + tables.size();
+        final int dataOffset = nodesOffset + nodes.size();
+        
+        final DataOutputStream dos = new DataOutputStream(os);
+        dos.writeInt(CompiledReteFormat.MAGIC);
+        dos.writeInt(CompiledReteFormat.VERSION);
+        dos.writeInt(strings.size());
+        dos.writeInt(symbols.size() + 1);
+        dos.writeInt(alphaMemories.size());
+        dos.writeInt(nodeCount);
+        dos.writeInt(stringsOffset);
+        dos.writeInt(symbolsOffset);
+        dos.writeInt(alphaMemoriesOffset);
+        dos.writeInt(nodesOffset);
+        dos.writeInt(dataOffset);
+        tableBytes.writeTo(dos);
+        nodeBytes.writeTo(dos);
+        dataBytes.writeTo(dos);
+        dos.flush();
+    }
+    
+    /**
+     * Writes the children of a node. Like {@link ReteNetWriter}, they are
+     * written in reverse order because the reader inserts each child at the
+     * head of its parent's list.
+     */
+    private void writeChildrenOfNode(ReteNode node, int index) throws IOException, SoarException
+    {
+        final List<ReteNode> children = new ArrayList<>();
+        for(ReteNode child = node.first_child; child != null; child = child.next_sibling)
+        {
+            if(child.node_type != ReteNodeType.CN_BNODE)
+            {
+                children.add(0, child);
+            }
+        }
+        for(ReteNode child : children)
+        {
+            writeNodeAndChildren(child, index);
+        }
+    }
+    
+    private void writeNodeAndChildren(ReteNode node, int parent) throws IOException, SoarException
+    {
+        final int index = nodeCount++;
+        boolean leftUnlinked = false;
+        int alphaMemory = -1;
+        int dataOffset = -1;
+        int leftHashField = -1;
+        int leftHashLevelsUp = -1;
+        if(node.node_type == ReteNodeType.MEMORY_BNODE || node.node_type == ReteNodeType.MP_BNODE
+                || node.node_type == ReteNodeType.NEGATIVE_BNODE)
+        {
+            leftHashField = node.left_hash_loc_field_num;
+            leftHashLevelsUp = node.left_hash_loc_levels_up;
+        }
+        
+        switch(node.node_type)
+        {
+        case MEMORY_BNODE:
+        case UNHASHED_MEMORY_BNODE:
+            break;
+        
+        case MP_BNODE:
+        case UNHASHED_MP_BNODE:
+            alphaMemory = getAlphaMemoryIndex(node.b_posneg().alpha_mem_);
+            dataOffset = writeTestList(node.b_posneg().other_tests);
+            leftUnlinked = node.a_np().is_left_unlinked;
+            break;
+        
+        case POSITIVE_BNODE:
+        case UNHASHED_POSITIVE_BNODE:
+            alphaMemory = getAlphaMemoryIndex(node.b_posneg().alpha_mem_);
+            dataOffset = writeTestList(node.b_posneg().other_tests);
+            leftUnlinked = node.node_is_left_unlinked();
+            break;
+        
+        case NEGATIVE_BNODE:
+        case UNHASHED_NEGATIVE_BNODE:
+            alphaMemory = getAlphaMemoryIndex(node.b_posneg().alpha_mem_);
+            dataOffset = writeTestList(node.b_posneg().other_tests);
+            break;
+        
+        case CN_PARTNER_BNODE:
+            int levels = 0;
+            ReteNode temp = node.real_parent_node();
+            while(temp != node.b_cn().partner.parent)
+            {
+                temp = temp.real_parent_node();
+                levels++;
+            }
+            alphaMemory = levels;
+            break;
+        
+        case P_BNODE:
+            dataOffset = writeProduction(node);
+            break;
+        
+        default:
+            throw new SoarException("Unhandled ReteNodeType: " + node.node_type);
+        }
+        
+        nodes.writeByte(node.node_type.ordinal());
+        nodes.writeByte(leftUnlinked ? 1 : 0);
+        nodes.writeInt(parent);
+        nodes.writeInt(alphaMemory);
+        nodes.writeInt(leftHashField);
+        nodes.writeInt(leftHashLevelsUp);
+        nodes.writeInt(dataOffset);
+        
+        // For CN partner nodes, the children of the CN node follow
+        if(node.node_type == ReteNodeType.CN_PARTNER_BNODE)
+        {
+            node = node.b_cn().partner;
+        }
+        writeChildrenOfNode(node, index);
+    }
+    
+    /**
+     * Record: name and documentation strings, type, declared support, the
+     * action list, the unbound variables, and the node variable names if
+     * there are any.
+     * 
+     * @return the offset of the production in the data section
+     * @see CompiledReteReader#readProduction
+     */
+    private int writeProduction(ReteNode node) throws IOException, SoarException
+    {
+        final int offset = data.size();
+        final Production prod = node.b_p().prod;
+        data.writeInt(getStringIndex(prod.getName()));
+        data.writeInt(prod.getDocumentation() != null ? getStringIndex(prod.getDocumentation()) : -1);
+        data.writeByte(prod.getType().ordinal());
+        data.writeByte(prod.getDeclaredSupport().ordinal());
+        
+        int numActions = 0;
+        for(Action a = prod.getFirstAction(); a != null; a = a.next)
+        {
+            numActions++;
+        }
+        data.writeInt(numActions);
+        for(Action a = prod.getFirstAction(); a != null; a = a.next)
+        {
+            writeAction(a);
+        }
+        
+        data.writeInt(prod.getRhsUnboundVariables().size());
+        for(Variable unboundVar : prod.getRhsUnboundVariables())
+        {
+            data.writeInt(getSymbolIndex(unboundVar));
+        }
+        
+        if(node.b_p().parents_nvn != null)
+        {
+            data.writeByte(1);
+            writeNodeVarNames(node.b_p().parents_nvn, node.parent);
+        }
+        else
+        {
+            data.writeByte(0);
+        }
+        return offset;
+    }
+    
+    /**
+     * Record: action type, preference type (-1 for none), support, then the
+     * RHS values.
+     * 
+     * @see ReteNetWriter#writeAction
+     */
+    private void writeAction(Action a) throws IOException, SoarException
+    {
+        if(a instanceof MakeAction)
+        {
+            data.writeByte(ReteNetConstants.Action.MAKE_ACTION.ordinal());
+        }
+        else if(a instanceof FunctionAction)
+        {
+            data.writeByte(ReteNetConstants.Action.FUNCALL_ACTION.ordinal());
+        }
+        else
+        {
+            throw new SoarException("Unhandled action type.");
+        }
+        data.writeByte(a.preference_type != null ? a.preference_type.ordinal() : -1);
+        data.writeByte(a.support.ordinal());
+        
+        if(a instanceof FunctionAction)
+        {
+            writeRHSValue(a.asFunctionAction().call);
+        }
+        else
+        {
+            writeRHSValue(a.asMakeAction().id);
+            writeRHSValue(a.asMakeAction().attr);
+            writeRHSValue(a.asMakeAction().value);
+            if(a.preference_type != null && a.preference_type.isBinary())
+            {
+                writeRHSValue(a.asMakeAction().referent);
+            }
+        }
+    }
+    
+    /**
+     * @see ReteNetWriter#writeRHSValue
+     */
+    private void writeRHSValue(RhsValue rv) throws IOException, SoarException
+    {
+        if(rv instanceof RhsSymbolValue)
+        {
+            data.writeByte(ReteNetConstants.RHS.RHS_SYMBOL.ordinal());
+            data.writeInt(getSymbolIndex(rv.asSymbolValue().getSym()));
+        }
+        else if(rv instanceof RhsFunctionCall)
+        {
+            data.writeByte(ReteNetConstants.RHS.RHS_FUNCALL.ordinal());
+            data.writeInt(getSymbolIndex(rv.asFunctionCall().getName()));
+            data.writeByte(rv.asFunctionCall().isStandalone() ? 1 : 0);
+            final List<RhsValue> arguments = rv.asFunctionCall().getArguments();
+            data.writeInt(arguments.size());
+            for(RhsValue value : arguments)
+            {
+                writeRHSValue(value);
+            }
+        }
+        else if(rv instanceof ReteLocation)
+        {
+            data.writeByte(ReteNetConstants.RHS.RHS_RETELOC.ordinal());
+            data.writeInt(rv.asReteLocation().getFieldNum());
+            data.writeInt(rv.asReteLocation().getLevelsUp());
+        }
+        else if(rv instanceof UnboundVariable)
+        {
+            data.writeByte(ReteNetConstants.RHS.RHS_UNBOUND_VAR.ordinal());
+            data.writeInt(rv.asUnboundVariable().getIndex());
+        }
+        else
+        {
+            throw new SoarException("Unhandled RHS value");
+        }
+    }
+    
+    /**
+     * Record: the number of tests, then type, right field number and the
+     * referent of each test.
+     * 
+     * @return the offset of the list in the data section
+     * @see ReteNetWriter#writeTestList
+     */
+    private int writeTestList(ReteTest first) throws IOException, SoarException
+    {
+        final int offset = data.size();
+        int numTests = 0;
+        for(ReteTest rt = first; rt != null; rt = rt.next)
+        {
+            numTests++;
+        }
+        data.writeInt(numTests);
+        
+        for(ReteTest rt = first; rt != null; rt = rt.next)
+        {
+            data.writeInt(rt.type);
+            data.writeInt(rt.right_field_num);
+            if(rt.test_is_constant_relational_test())
+            {
+                data.writeInt(getSymbolIndex(rt.constant_referent));
+            }
+            else if(rt.test_is_variable_relational_test())
+            {
+                data.writeInt(rt.variable_referent.field_num);
+                data.writeInt(rt.variable_referent.levels_up);
+            }
+            else if(rt.type == ReteTest.DISJUNCTION)
+            {
+                data.writeInt(rt.disjunction_list.size());
+                for(SymbolImpl disjunct : rt.disjunction_list)
+                {
+                    data.writeInt(getSymbolIndex(disjunct));
+                }
+            }
+            else if(rt.type != ReteTest.ID_IS_GOAL && rt.type != ReteTest.ID_IS_IMPASSE)
+            {
+                throw new SoarException("Unhandled ReteTest: " + rt);
+            }
+        }
+        return offset;
+    }
+    
+    /**
+     * @see ReteNetWriter#writeNodeVarNames
+     */
+    private void writeNodeVarNames(NodeVarNames nvn, ReteNode node) throws IOException, SoarException
+    {
+        while(node.node_type != ReteNodeType.DUMMY_TOP_BNODE)
+        {
+            if(node.node_type == ReteNodeType.CN_BNODE)
+            {
+                node = node.b_cn().partner.parent;
+                nvn = nvn.bottom_of_subconditions;
+                continue;
+            }
+            
+            writeVarNames(nvn.fields.id_varnames);
+            writeVarNames(nvn.fields.attr_varnames);
+            writeVarNames(nvn.fields.value_varnames);
+            nvn = nvn.parent;
+            node = node.real_parent_node();
+        }
+    }
+    
+    /**
+     * @see ReteNetWriter#writeVarNames
+     */
+    private void writeVarNames(Object varNames) throws IOException, SoarException
+    {
+        if(varNames == null)
+        {
+            data.writeByte(ReteNetConstants.VarName.VARNAME_NULL.ordinal());
+        }
+        else if(VarNames.varnames_is_one_var(varNames))
+        {
+            data.writeByte(ReteNetConstants.VarName.VARNAME_ONE_VAR.ordinal());
+            data.writeInt(getSymbolIndex(VarNames.varnames_to_one_var(varNames)));
+        }
+        else
+        {
+            data.writeByte(ReteNetConstants.VarName.VARNAME_LIST.ordinal());
+            final List<Variable> vars = VarNames.varnames_to_var_list(varNames);
+            data.writeInt(vars.size());
+            for(Variable v : vars)
+            {
+                data.writeInt(getSymbolIndex(v));
+            }
+        }
+    }
+    
+    private int getStringIndex(String s)
+    {
+        return strings.computeIfAbsent(s, k -> strings.size());
+    }
+    
+    /**
+     * Returns the index of a symbol, adding it to the symbol table if
+     * needed. Index 0 is "no symbol".
+     */
+    private int getSymbolIndex(Symbol s) throws SoarException
+    {
+        if(s == null)
+        {
+            return 0;
+        }
+        final Integer index = symbols.get(s);
+        if(index != null)
+        {
+            return index;
+        }
+        if(!(s instanceof Variable || s instanceof StringSymbol || s instanceof IntegerSymbol || s instanceof DoubleSymbol))
+        {
+            throw new SoarException("Can't compile a rete that refers to symbol " + s);
+        }
+        symbols.put(s, symbols.size() + 1);
+        return symbols.size();
+    }
+    
+    private int getAlphaMemoryIndex(AlphaMemory am) throws SoarException
+    {
+        if(am == null)
+        {
+            throw new SoarException("Alpha memory is null.");
+        }
+        // Make sure the symbols are in the table before it's written
+        getSymbolIndex(am.id);
+        getSymbolIndex(am.attr);
+        getSymbolIndex(am.value);
+        return alphaMemories.computeIfAbsent(am, k -> alphaMemories.size());
+    }
+    
+    private void writeStrings(DataOutputStream dos) throws IOException
+    {
+        final List<byte[]> encoded = new ArrayList<>(strings.size());
+        int offset = 0;
+        for(String s : strings.keySet())
+        {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            dos.writeInt(offset);
+            dos.writeInt(bytes.length);
+            encoded.add(bytes);
+            offset += bytes.length;
+        }
+        for(byte[] bytes : encoded)
+        {
+            dos.write(bytes);
+        }
+    }
+    
+    /**
+     * Writes the symbol table. This adds the names of strings and variables
+     * to the string table, so it has to happen before that is written.
+     */
+    private byte[] writeSymbols() throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(bytes);
+        dos.writeByte(CompiledReteFormat.NO_SYMBOL);
+        dos.writeLong(0);
+        for(Symbol s : symbols.keySet())
+        {
+            if(s instanceof Variable)
+            {
+                dos.writeByte(CompiledReteFormat.VARIABLE);
+                dos.writeLong(getStringIndex(((Variable) s).name));
+            }
+            else if(s instanceof StringSymbol)
+            {
+                dos.writeByte(CompiledReteFormat.STRING);
+                dos.writeLong(getStringIndex(((StringSymbol) s).getValue()));
+            }
+            else if(s instanceof IntegerSymbol)
+            {
+                dos.writeByte(CompiledReteFormat.INTEGER);
+                dos.writeLong(((IntegerSymbol) s).getValue());
+            }
+            else
+            {
+                dos.writeByte(CompiledReteFormat.DOUBLE);
+                dos.writeLong(Double.doubleToRawLongBits(((DoubleSymbol) s).getValue()));
+            }
+        }
+        return bytes.toByteArray();
+    }
+    
+    private void writeAlphaMemories(DataOutputStream dos) throws IOException, SoarException
+    {
+        for(AlphaMemory am : alphaMemories.keySet())
+        {
+            dos.writeInt(getSymbolIndex(am.id));
+            dos.writeInt(getSymbolIndex(am.attr));
+            dos.writeInt(getSymbolIndex(am.value));
+            dos.writeByte(am.acceptable ? 1 : 0);
+        }
+    }
+}
@@ -18,13 +18,14 @@
 public class LeftToken extends Token
 {
     LeftToken next_in_bucket;
-    private LeftToken prev_in_bucket; // part of hash bucket dll
+    LeftToken prev_in_bucket; // part of hash bucket dll
+    int hash_value; // hash value the token was inserted with, for rehashing
     final SymbolImpl referent; // referent of the hash test (thing we hashed on)
     private ListHead<RightToken> negrm_tokens = null; /* join results: for Neg, CN nodes only */
     
-    public LeftToken(ReteNode current_node, Token parent_tok, WmeImpl parent_wme, SymbolImpl referent)
+    public LeftToken(ReteNode current_node, Token parent_tok, WmeImpl parent_wme, SymbolImpl referent, int hash_id)
     {
-        super(current_node, parent_tok, parent_wme, true);
+        super(current_node, parent_tok, parent_wme, true, hash_id);
         this.referent = referent;
     }
     
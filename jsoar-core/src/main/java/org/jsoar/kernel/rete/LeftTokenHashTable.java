@@ -5,20 +5,73 @@
  */
 package org.jsoar.kernel.rete;
 
+import org.jsoar.util.Arguments;
+
 /**
+ * Hash table of left tokens for hashed beta memories.
+ * 
+ * <p>In CSoar this table is fixed at {@code 1 << LOG2_LEFT_HT_SIZE} buckets.
+ * Here the number of buckets is a power of two that grows with the number
+ * of tokens so that the average bucket length stays at or below one, and
+ * shrinks again (never below the minimum size) when tokens are removed.
+ * Because the rete walks bucket chains while it inserts and removes tokens,
+ * resizing never happens during an insert or remove. Instead, the rete
+ * calls {@link #resize_if_needed()} at the start of each top-level operation
+ * when no bucket is being walked.
+ * 
+ * <p>Rehashing preserves the relative order of tokens with the same hash
+ * value, so the order in which matches are found does not depend on the
+ * size of the table.
+ * 
  * @author ray
  */
 public class LeftTokenHashTable
 {
-    private static final int LOG2_LEFT_HT_SIZE = 14;
-    private static final int LEFT_HT_SIZE = 1 << LOG2_LEFT_HT_SIZE;
+    /**
+     * Default log2 of the minimum number of buckets
+     */
+    public static final int DEFAULT_MINIMUM_LOG2_SIZE = 10;
     
-    private static final int LEFT_HT_MASK = LEFT_HT_SIZE - 1;
+    private static final int MAXIMUM_LOG2_SIZE = 30;
     
-    private final LeftToken[] buckets = new LeftToken[LEFT_HT_SIZE];
+    private final int minimumLog2Size;
+    private int log2Size;
+    private int mask;
+    private int count;
+    private LeftToken[] buckets;
     
     public LeftTokenHashTable()
     {
+        this(DEFAULT_MINIMUM_LOG2_SIZE);
+    }
+    
+    /**
+     * @param minimumLog2Size log2 of the initial number of buckets. The
+     *     table never shrinks below this size.
+     */
+    public LeftTokenHashTable(int minimumLog2Size)
+    {
+        Arguments.check(minimumLog2Size >= 0 && minimumLog2Size <= MAXIMUM_LOG2_SIZE, "minimumLog2Size out of range");
+        this.minimumLog2Size = minimumLog2Size;
+        this.log2Size = minimumLog2Size;
+        this.mask = (1 << minimumLog2Size) - 1;
+        this.buckets = new LeftToken[1 << minimumLog2Size];
+    }
+    
+    /**
+     * @return the number of tokens in the table
+     */
+    public int getCount()
+    {
+        return count;
+    }
+    
+    /**
+     * @return the current number of buckets in the table
+     */
+    public int getSize()
+    {
+        return buckets.length;
     }
     
     /**
@@ -32,9 +85,7 @@ public LeftTokenHashTable()
      */
     public LeftToken left_ht_bucket(int hv)
     {
-        int index = hv & LEFT_HT_MASK;
-        return buckets[index];
-        // return (* ( ((token **) thisAgent->left_ht) + ((hv) & LEFT_HT_MASK)));
+        return buckets[indexOf(hv)];
     }
     
     /**
@@ -45,7 +96,10 @@ public LeftToken left_ht_bucket(int hv)
      */
     public void insert_token_into_left_ht(LeftToken tok, int hv)
     {
-        buckets[hv & LEFT_HT_MASK] = tok.addToHashTable(buckets[hv & LEFT_HT_MASK]);
+        final int index = indexOf(hv);
+        tok.hash_value = hv;
+        buckets[index] = tok.addToHashTable(buckets[index]);
+        count++;
     }
     
     /**
@@ -56,7 +110,72 @@ public void insert_token_into_left_ht(LeftToken tok, int hv)
      */
     public void remove_token_from_left_ht(LeftToken tok, int hv)
     {
-        buckets[hv & LEFT_HT_MASK] = tok.removeFromHashTable(buckets[hv & LEFT_HT_MASK]);
+        final int index = indexOf(hv);
+        buckets[index] = tok.removeFromHashTable(buckets[index]);
+        count--;
+    }
+    
+    /**
+     * Grow or shrink the table to suit the number of tokens it currently
+     * holds. This must not be called while a bucket is being walked.
+     * 
+     * @return true if the table was resized
+     */
+    public boolean resize_if_needed()
+    {
+        int newLog2Size = log2Size;
+        while(count > (1 << newLog2Size) && newLog2Size < MAXIMUM_LOG2_SIZE)
+        {
+            newLog2Size++;
+        }
+        while(count < (1 << newLog2Size) / 4 && newLog2Size > minimumLog2Size)
+        {
+            newLog2Size--;
+        }
+        if(newLog2Size == log2Size)
+        {
+            return false;
+        }
+        rehash(newLog2Size);
+        return true;
     }
     
+    private int indexOf(int hv)
+    {
+        // Fold the high bits in so small tables still use all of the hash value
+        return (hv ^ (hv >>> 16)) & mask;
+    }
+    
+    private void rehash(int newLog2Size)
+    {
+        final LeftToken[] oldBuckets = buckets;
+        buckets = new LeftToken[1 << newLog2Size];
+        log2Size = newLog2Size;
+        mask = buckets.length - 1;
+        
+        // Append to the tail of each new bucket so that the relative order
+        // of tokens within a bucket is unchanged
+        final LeftToken[] tails = new LeftToken[buckets.length];
+        for(LeftToken head : oldBuckets)
+        {
+            LeftToken next;
+            for(LeftToken tok = head; tok != null; tok = next)
+            {
+                next = tok.next_in_bucket;
+                final int index = indexOf(tok.hash_value);
+                final LeftToken tail = tails[index];
+                tok.next_in_bucket = null;
+                tok.prev_in_bucket = tail;
+                if(tail == null)
+                {
+                    buckets[index] = tok;
+                }
+                else
+                {
+                    tail.next_in_bucket = tok;
+                }
+                tails[index] = tok;
+            }
+        }
+    }
 }
@@ -5,10 +5,13 @@
  */
 package org.jsoar.kernel.rete;
 
+import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedHashSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.jsoar.kernel.Production;
 import org.jsoar.kernel.ProductionType;
@@ -71,24 +74,36 @@
     
     private ReteListener listener;
     
-    private final LeftTokenHashTable left_ht = new LeftTokenHashTable();
-    private final RightMemoryHashTable right_ht = new RightMemoryHashTable();
+    /* package */ final LeftTokenHashTable left_ht = new LeftTokenHashTable();
+    /* package */ final RightMemoryHashTable right_ht = new RightMemoryHashTable();
     // TODO rete_node_counts should be populated
     int rete_node_counts[] = new int[256];
     /* package */ RightToken dummy_top_token;
     
     private int alpha_mem_id_counter;
+    private int token_hash_id_counter;
     private List<HashTable<AlphaMemory>> alpha_hash_tables;
     /**
-     * TODO: Although this hashset preserves the insertion order of the WMEs,
+     * Doubly-linked list of all WMEs in the rete, threaded through
+     * {@link WmeImpl#rete_next} and {@link WmeImpl#rete_prev} so that
+     * membership costs no extra allocation.
+     * 
+     * <p>TODO: Although this list preserves the insertion order of the WMEs,
      * the order is the reverse of that in CSoar which inserts at the front.
      * It doesn't appear to affect correctness, but it may cause firing order
      * variation from CSoar. See usage in find_or_make_alpha_mem()
      * 
      * all_wmes_in_rete
      */
-    private LinkedHashSet<WmeImpl> all_wmes_in_rete = new LinkedHashSet<>();
-    // private ListHead<WmeImpl> all_wmes_in_rete = ListHead.newInstance();
+    private WmeImpl first_wme_in_rete;
+    private WmeImpl last_wme_in_rete;
+    private int num_wmes_in_rete;
+    /**
+     * Incremented whenever a WME is added to or removed from the list, so
+     * that iterators can detect concurrent modification
+     */
+    private int wmes_in_rete_mod_count;
+    private final Collection<WmeImpl> all_wmes_in_rete = new AllWmesInRete();
     private int beta_node_id_counter;
     ReteNode dummy_top_node;
     
@@ -190,8 +205,8 @@ public int getHighestRhsUnboundVariableIndex()
     }
     
     /**
-     * @return List of all Wmes currently in the rete. This is the actual list
-     * so please don't modify it.
+     * @return List of all Wmes currently in the rete, in the order they were
+     * added. This is a live, read-only view of the actual list.
      */
     public Collection<WmeImpl> getAllWmes()
     {
@@ -200,7 +215,135 @@ public Collection<WmeImpl> getAllWmes()
     
     public boolean containsWme(Wme w)
     {
-        return all_wmes_in_rete.contains(w);
+        return w instanceof WmeImpl && is_wme_in_rete((WmeImpl) w);
+    }
+    
+    /**
+     * A WME can only be in one rete at a time since it also holds that rete's
+     * tokens and right memories, so it's enough to check whether it's linked
+     * into a list.
+     * 
+     * @param w the WME
+     * @return true if w is in the list of all WMEs in the rete
+     */
+    private boolean is_wme_in_rete(WmeImpl w)
+    {
+        return w == first_wme_in_rete || w.rete_prev != null;
+    }
+    
+    private void insert_wme_into_all_wmes_in_rete(WmeImpl w)
+    {
+        assert !is_wme_in_rete(w);
+        w.rete_prev = last_wme_in_rete;
+        w.rete_next = null;
+        if(last_wme_in_rete != null)
+        {
+            last_wme_in_rete.rete_next = w;
+        }
+        else
+        {
+            first_wme_in_rete = w;
+        }
+        last_wme_in_rete = w;
+        num_wmes_in_rete++;
+        wmes_in_rete_mod_count++;
+    }
+    
+    private void remove_wme_from_all_wmes_in_rete(WmeImpl w)
+    {
+        if(!is_wme_in_rete(w))
+        {
+            return;
+        }
+        if(w.rete_prev != null)
+        {
+            w.rete_prev.rete_next = w.rete_next;
+        }
+        else
+        {
+            first_wme_in_rete = w.rete_next;
+        }
+        if(w.rete_next != null)
+        {
+            w.rete_next.rete_prev = w.rete_prev;
+        }
+        else
+        {
+            last_wme_in_rete = w.rete_prev;
+        }
+        w.rete_next = null;
+        w.rete_prev = null;
+        num_wmes_in_rete--;
+        wmes_in_rete_mod_count++;
+    }
+    
+    /**
+     * Read-only view of the list of all WMEs in the rete. Iteration is in
+     * insertion order, and the WME most recently returned by the iterator
+     * may safely be removed from the rete. Any other change to the rete's
+     * WMEs during iteration makes the iterator throw
+     * {@link ConcurrentModificationException}.
+     */
+    private class AllWmesInRete extends AbstractCollection<WmeImpl>
+    {
+        @Override
+        public Iterator<WmeImpl> iterator()
+        {
+            return new Iterator<WmeImpl>()
+            {
+                private WmeImpl next = first_wme_in_rete;
+                private WmeImpl last;
+                private int expectedModCount = wmes_in_rete_mod_count;
+                
+                @Override
+                public boolean hasNext()
+                {
+                    return next != null;
+                }
+                
+                @Override
+                public WmeImpl next()
+                {
+                    checkForComodification();
+                    if(next == null)
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    last = next;
+                    next = last.rete_next;
+                    return last;
+                }
+                
+                private void checkForComodification()
+                {
+                    if(wmes_in_rete_mod_count == expectedModCount)
+                    {
+                        return;
+                    }
+                    // Removing the WME that was just returned is the only
+                    // change allowed. Its successor was saved before it was
+                    // unlinked.
+                    if(wmes_in_rete_mod_count == expectedModCount + 1 && last != null && !is_wme_in_rete(last))
+                    {
+                        expectedModCount = wmes_in_rete_mod_count;
+                        return;
+                    }
+                    throw new ConcurrentModificationException();
+                }
+            };
+        }
+        
+        @Override
+        public int size()
+        {
+            return num_wmes_in_rete;
+        }
+        
+        @Override
+        public boolean contains(Object o)
+        {
+            return o instanceof WmeImpl && is_wme_in_rete((WmeImpl) o);
+        }
     }
     
     /**
@@ -247,6 +390,8 @@ public ProductionAddResult add_production_to_rete(Production p)
     public ProductionAddResult add_production_to_rete(Production p, Instantiation refracted_inst,
             boolean warn_on_duplicates, boolean ignore_rhs)
     {
+        resize_hash_tables();
+        
         final Condition lhs_top = p.getFirstCondition();
         ProductionAddResult production_addition_result;
         
@@ -419,6 +564,8 @@ public void excise_production_from_rete(Production p)
         // remove_production_from_stat_lists(prod_to_be_excised);
         // #endif
         
+        resize_hash_tables();
+        
         ReteNode p_node = p.getReteNode();
         p.setReteNode(null, null); // mark production as not being in the rete anymore
         ReteNode parent = p_node.parent;
@@ -446,15 +593,41 @@ public void excise_production_from_rete(Production p)
     }
     
     /**
-     * Stand-in for taking the address of an object in C, where the address is
+     * Grow or shrink the left and right memory hash tables to suit the
+     * current number of tokens and right memories. Resizing rebuilds the
+     * bucket chains, so this is only called on entry to the top-level rete
+     * operations, never while a join is walking a bucket.
+     */
+    private void resize_hash_tables()
+    {
+        left_ht.resize_if_needed();
+        right_ht.resize_if_needed();
+    }
+    
+    /**
+     * Stand-in for taking the address of a token in C, where the address is
      * used for hashing, e.g. cn_node_left_addition() in rete.cpp
      * 
-     * @param o The object (token, wme, etc)
-     * @return A unique address for the the object
+     * @param tok The token, possibly <code>null</code>
+     * @return The token's hash id, or 0 for <code>null</code>
+     */
+    static int addressOf(Token tok)
+    {
+        return tok != null ? tok.hash_id : 0;
+    }
+    
+    /**
+     * Stand-in for taking the address of a WME in C, where the address is
+     * used for hashing, e.g. cn_node_left_addition() in rete.cpp. A WME's
+     * timetag is already a cheap, monotonically assigned id, so it is used
+     * as the hash id.
+     * 
+     * @param w The WME, possibly <code>null</code>
+     * @return The WME's timetag, or 0 for <code>null</code>
      */
-    static int addressOf(Object o)
+    static int addressOf(WmeImpl w)
     {
-        return System.identityHashCode(o);
+        return w != null ? w.timetag : 0;
     }
     
     /**
@@ -479,9 +652,10 @@ private static int xor_op(int i, int a, int v)
      */
     public void add_wme_to_rete(WmeImpl w)
     {
+        resize_hash_tables();
+        
         /* --- add w to all_wmes_in_rete --- */
-        all_wmes_in_rete.add(w);
-        // w.in_rete.insertAtHead(all_wmes_in_rete);
+        insert_wme_into_all_wmes_in_rete(w);
         
         /* --- it's not in any right memories or tokens yet --- */
         w.clearRightMemories();
@@ -558,6 +732,8 @@ public void add_wme_to_rete(WmeImpl w)
      */
     public void remove_wme_from_rete(WmeImpl w)
     {
+        resize_hash_tables();
+        
         if(episodicMemory.epmem_enabled())
         {
             episodicMemory.removeWme(w);
@@ -565,8 +741,7 @@ public void remove_wme_from_rete(WmeImpl w)
         }
         
         /* --- remove w from all_wmes_in_rete --- */
-        all_wmes_in_rete.remove(w);
-        // w.in_rete.remove(all_wmes_in_rete);
+        remove_wme_from_all_wmes_in_rete(w);
         
         /* --- remove w from each alpha_mem it's in --- */
         while(w.getRightMemories() != null)
@@ -641,6 +816,18 @@ int get_next_alpha_mem_id()
         return alpha_mem_id_counter++;
     }
     
+    /**
+     * Returns the next token hash id. Tokens are numbered in creation order
+     * so that hashing on tokens is deterministic from run to run.
+     * 
+     * @return the next token hash id
+     * @see #addressOf(Token)
+     */
+    int get_next_token_hash_id()
+    {
+        return token_hash_id_counter++;
+    }
+    
     /**
      * Adds a WME to an alpha memory (create a right_mem for it), but doesn't
      * inform any successors
@@ -723,6 +910,32 @@ AlphaMemory find_alpha_mem(SymbolImpl id, SymbolImpl attr, SymbolImpl value, boo
         return null;
     }
     
+    /**
+     * Returns the WMEs in an existing alpha memory. Since productions keep
+     * alpha memories for the patterns they test up to date, this answers
+     * queries over working memory without scanning every WME.
+     * 
+     * @param attr the attribute, or {@code null} for any attribute
+     * @param value the value, or {@code null} for any value
+     * @param acceptable whether to look for acceptable preference WMEs
+     * @return the WMEs, or {@code null} if there is no alpha memory for the
+     *     pattern
+     */
+    public List<WmeImpl> getWmesInAlphaMemory(SymbolImpl attr, SymbolImpl value, boolean acceptable)
+    {
+        final AlphaMemory am = find_alpha_mem(null, attr, value, acceptable);
+        if(am == null)
+        {
+            return null;
+        }
+        final List<WmeImpl> result = new ArrayList<>();
+        for(RightMemory rm = am.right_mems; rm != null; rm = rm.next_in_am)
+        {
+            result.add(rm.w);
+        }
+        return result;
+    }
+    
     /**
      * Returns a list of all alpha memories for use only by {@link ReteNetWriter}
      * 
@@ -856,7 +1069,7 @@ int get_next_beta_node_id()
     void init_dummy_top_node()
     {
         dummy_top_node = ReteNode.createDummy();
-        dummy_top_token = RightToken.createDummy(dummy_top_node);
+        dummy_top_token = RightToken.createDummy(dummy_top_node, get_next_token_hash_id());
     }
     
     /**
@@ -1145,7 +1358,7 @@ private void beta_memory_node_left_addition(ReteNode node, Token tok, WmeImpl w)
         final int hv = node.node_id ^ referent.hash_id;
         
         // build new left token, add it to the hash table
-        final LeftToken New = new LeftToken(node, tok, w, referent);
+        final LeftToken New = new LeftToken(node, tok, w, referent, get_next_token_hash_id());
         left_ht.insert_token_into_left_ht(New, hv);
         
         // inform each linked child (positive join) node
@@ -1169,7 +1382,7 @@ private void unhashed_beta_memory_node_left_addition(ReteNode node, Token tok, W
         final int hv = node.node_id;
         
         // build new left token, add it to the hash table
-        final LeftToken New = new LeftToken(node, tok, w, null);
+        final LeftToken New = new LeftToken(node, tok, w, null, get_next_token_hash_id());
         left_ht.insert_token_into_left_ht(New, hv);
         
         // inform each linked child (positive join) node
@@ -1311,7 +1524,7 @@ private void mp_node_left_addition(ReteNode node, Token tok, WmeImpl w)
         final int hv = node.node_id ^ referent.hash_id;
         
         /* --- build new left token, add it to the hash table --- */
-        final LeftToken New = new LeftToken(node, tok, w, referent);
+        final LeftToken New = new LeftToken(node, tok, w, referent, get_next_token_hash_id());
         left_ht.insert_token_into_left_ht(New, hv);
         
         if(node.mp_bnode_is_left_unlinked())
@@ -1377,7 +1590,7 @@ private void unhashed_mp_node_left_addition(ReteNode node, Token tok, WmeImpl w)
         int hv = node.node_id;
         
         /* --- build new left token, add it to the hash table --- */
-        LeftToken New = new LeftToken(node, tok, w, null);
+        LeftToken New = new LeftToken(node, tok, w, null, get_next_token_hash_id());
         left_ht.insert_token_into_left_ht(New, hv);
         
         if(node.mp_bnode_is_left_unlinked())
@@ -1662,7 +1875,7 @@ private void negative_node_left_addition(ReteNode node, Token tok, WmeImpl w)
         int hv = node.node_id ^ referent.hash_id;
         
         /* --- build new token, add it to the hash table --- */
-        LeftToken New = new LeftToken(node, tok, w, referent);
+        LeftToken New = new LeftToken(node, tok, w, referent, get_next_token_hash_id());
         left_ht.insert_token_into_left_ht(New, hv);
         
         /* --- look through right memory for matches --- */
@@ -1692,7 +1905,7 @@ private void negative_node_left_addition(ReteNode node, Token tok, WmeImpl w)
             {
                 continue;
             }
-            RightToken.create(node, null, rm.w, New);
+            RightToken.create(node, null, rm.w, New, get_next_token_hash_id());
         }
         
         // if no matches were found, call each child node
@@ -1723,7 +1936,7 @@ private void unhashed_negative_node_left_addition(ReteNode node, Token tok, WmeI
         int hv = node.node_id;
         
         /* --- build new token, add it to the hash table --- */
-        LeftToken New = new LeftToken(node, tok, w, null);
+        LeftToken New = new LeftToken(node, tok, w, null, get_next_token_hash_id());
         left_ht.insert_token_into_left_ht(New, hv);
         
         /* --- look through right memory for matches --- */
@@ -1743,7 +1956,7 @@ private void unhashed_negative_node_left_addition(ReteNode node, Token tok, WmeI
             {
                 continue;
             }
-            RightToken.create(node, null, rm.w, New);
+            RightToken.create(node, null, rm.w, New, get_next_token_hash_id());
         }
         
         // if no matches were found, call each child node
@@ -1793,7 +2006,7 @@ private void negative_node_right_addition(ReteNode node, WmeImpl w)
                 continue;
             }
             /* --- match found: build new negrm token, remove descendent tokens --- */
-            RightToken.create(node, null, w, tok);
+            RightToken.create(node, null, w, tok, get_next_token_hash_id());
             
             while(tok.first_child != null)
             {
@@ -1833,7 +2046,7 @@ private void unhashed_negative_node_right_addition(ReteNode node, WmeImpl w)
                 continue;
             }
             /* --- match found: build new negrm token, remove descendent tokens --- */
-            RightToken.create(node, null, w, tok);
+            RightToken.create(node, null, w, tok, get_next_token_hash_id());
             while(tok.first_child != null)
             {
                 remove_token_and_subtree(tok.first_child);
@@ -1864,7 +2077,7 @@ private void cn_node_left_addition(ReteNode node, Token tok, WmeImpl w)
         }
         
         // build left token, add it to the hash table
-        final LeftToken New = new LeftToken(node, tok, w, null);
+        final LeftToken New = new LeftToken(node, tok, w, null, get_next_token_hash_id());
         left_ht.insert_token_into_left_ht(New, hv);
         
         // pass the new token on to each child node
@@ -1890,7 +2103,7 @@ private void cn_partner_node_left_addition(ReteNode node, Token tok, WmeImpl w)
         // Can this be created at "negrm_tok.left_token = left;" below so
         // that left_token can be final and list insertion can happen in constructor?
         // Answer: No. I tried this and things didn't work.
-        final RightToken negrm_tok = RightToken.create(node, tok, w, null);
+        final RightToken negrm_tok = RightToken.create(node, tok, w, null, get_next_token_hash_id());
         
         // advance (tok,w) up to the token from the top of the branch
         ReteNode temp = node.parent;
@@ -1916,7 +2129,7 @@ private void cn_partner_node_left_addition(ReteNode node, Token tok, WmeImpl w)
         // if not found, create a new left token
         if(left == null)
         {
-            left = new LeftToken(partner, tok, w, null);
+            left = new LeftToken(partner, tok, w, null, get_next_token_hash_id());
             left_ht.insert_token_into_left_ht(left, hv);
         }
         
@@ -1941,7 +2154,7 @@ private void p_node_left_addition(ReteNode node, Token tok, WmeImpl w)
     {
         // build new left token (used only for tree-based remove)
         @SuppressWarnings("unused")
-        LeftToken New = new LeftToken(node, tok, w, null);
+        LeftToken New = new LeftToken(node, tok, w, null, get_next_token_hash_id());
         
         listener.p_node_left_addition(this, node, tok, w);
     }
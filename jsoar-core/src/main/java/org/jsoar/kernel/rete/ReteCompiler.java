@@ -0,0 +1,75 @@
+package org.jsoar.kernel.rete;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.SoarException;
+import org.jsoar.util.commands.SoarCommands;
+
+/**
+ * Precompiles Soar sources into a compiled rete, see {@link CompiledReteFormat}.
+ * The result can be loaded with {@code load rete-net} or
+ * {@link ReteSerializer#loadCompiledRete(Agent, java.nio.file.Path)}, which
+ * skips parsing and reordering the productions.
+ * 
+ * <p>Usage from the command line:
+ * <pre>{@code
+ * java org.jsoar.kernel.rete.ReteCompiler agent.jsrc agent.soar [more.soar ...]
+ * }</pre>
+ */
+public class ReteCompiler
+{
+    private ReteCompiler()
+    {
+    }
+    
+    /**
+     * Source the given files into a new agent and write its rete in the
+     * compiled format.
+     * 
+     * @param sources the files to source, in order
+     * @param os the output stream to write to. It is not closed.
+     * @throws SoarException if a file fails to source or the rete can't be
+     *     compiled
+     * @throws IOException on general I/O errors
+     */
+    public static void compile(List<File> sources, OutputStream os) throws SoarException, IOException
+    {
+        final Agent agent = new Agent();
+        try
+        {
+            for(File source : sources)
+            {
+                SoarCommands.source(agent.getInterpreter(), source);
+            }
+            ReteSerializer.saveCompiledRete(agent, os);
+        }
+        finally
+        {
+            agent.dispose();
+        }
+    }
+    
+    public static void main(String[] args) throws SoarException, IOException
+    {
+        if(args.length < 2)
+        {
+            System.err.println("Usage: ReteCompiler <output file> <source file> [<source file> ...]");
+            System.exit(1);
+        }
+        final File[] sources = new File[args.length - 1];
+        for(int i = 1; i < args.length; ++i)
+        {
+            sources[i - 1] = new File(args[i]);
+        }
+        try(OutputStream os = new BufferedOutputStream(new FileOutputStream(args[0])))
+        {
+            compile(List.of(sources), os);
+        }
+    }
+}
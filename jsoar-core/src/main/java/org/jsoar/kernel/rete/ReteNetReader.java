@@ -662,7 +662,7 @@ private Object readVarNames(DataInputStream dis) throws SoarException, IOExcepti
             final LinkedList<Variable> vars = new LinkedList<>();
             for(int i = 0; i < count; ++i)
             {
-                vars.add(getSymbol(i).asVariable());
+                vars.add(getSymbol(dis.readInt()).asVariable());
             }
             return VarNames.var_list_to_varnames(vars);
         }
@@ -55,6 +55,7 @@
     
     private Map<Symbol, Integer> symbolIndex;
     private Map<AlphaMemory, Integer> amIndex;
+    private boolean skipJustifications = false;
     
     protected ReteNetWriter(Agent context)
     {
@@ -104,6 +105,32 @@ protected void write(OutputStream os) throws IOException, SoarException
         }
     }
     
+    /**
+     * Write a rete net to the given output stream, leaving out any
+     * justifications instead of failing. Justifications are derived from the
+     * current state of working memory, so they aren't needed to restore an
+     * agent from a snapshot.
+     * 
+     * <p>The stream is not closed on completion.
+     * 
+     * @param os the output stream to write to
+     * @throws IOException if an error occurs while writing
+     * @throws SoarException
+     * @see #write(OutputStream)
+     */
+    protected void writeWithoutJustifications(OutputStream os) throws IOException, SoarException
+    {
+        skipJustifications = true;
+        try
+        {
+            write(os);
+        }
+        finally
+        {
+            skipJustifications = false;
+        }
+    }
+    
     /**
      * Make sure there are no justifications present in the agent.
      * 
@@ -111,7 +138,7 @@ protected void write(OutputStream os) throws IOException, SoarException
      */
     private void ensureNoJustifications() throws SoarException
     {
-        if(!context.getProductions().getProductions(ProductionType.JUSTIFICATION).isEmpty())
+        if(!skipJustifications && !context.getProductions().getProductions(ProductionType.JUSTIFICATION).isEmpty())
         {
             throw new SoarException("Internal error: cannot save rete net with justifications present.");
         }
@@ -131,7 +158,7 @@ private void writeChildrenOfNode(DataOutputStream dos, ReteNode node) throws IOE
         {
             public boolean apply(ReteNode child)
             {
-                return child.node_type != ReteNodeType.CN_BNODE;
+                return child.node_type != ReteNodeType.CN_BNODE && !isSkippedJustification(child);
             }
         });
         // RETECOMPAT: These are written out in reverse order. When child nodes are reinserted in
@@ -148,6 +175,12 @@ public boolean apply(ReteNode child)
         }
     }
     
+    private boolean isSkippedJustification(ReteNode node)
+    {
+        return skipJustifications && node.node_type == ReteNodeType.P_BNODE
+                && node.b_p().prod.getType() == ProductionType.JUSTIFICATION;
+    }
+    
     /**
      * Returns, in the order they appear in the node's linked list, a list of the node's
      * children.
@@ -1,8 +1,13 @@
 package org.jsoar.kernel.rete;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import org.jsoar.kernel.Agent;
 import org.jsoar.kernel.Production;
@@ -10,11 +15,13 @@
 import org.jsoar.kernel.SoarException;
 
 /**
- * Convenience methods for {@link ReteNetReader} and {@link ReteNetWriter} that
- * handle some additional interfacing with agents.
+ * Convenience methods for {@link ReteNetReader} and {@link ReteNetWriter}, and
+ * for the compiled format of {@link CompiledReteReader} and
+ * {@link CompiledReteWriter}, that handle some additional interfacing with
+ * agents.
  * 
  * @author charles.newton
- *
+ * 
  */
 public class ReteSerializer
 {
@@ -31,6 +38,37 @@ public static void saveRete(Agent context, OutputStream os) throws IOException,
         new ReteNetWriter(context).write(os);
     }
     
+    /**
+     * Write a serialized version of the agent onto the output stream, leaving
+     * out any justifications rather than failing because of them.
+     * 
+     * @param context the agent to serialize
+     * @param os the output stream to write to
+     * @throws IOException on general I/O errors (e.g., permission issues)
+     * @throws SoarException on serialization error
+     * @see #saveRete(Agent, OutputStream)
+     */
+    public static void saveReteWithoutJustifications(Agent context, OutputStream os) throws IOException, SoarException
+    {
+        new ReteNetWriter(context).writeWithoutJustifications(os);
+    }
+    
+    /**
+     * Write the rete of the agent onto the output stream in the compiled
+     * format, which can be loaded with {@link #loadCompiledRete(Agent, Path)}
+     * straight from a memory-mapped file.
+     * 
+     * @param context the agent to serialize
+     * @param os the output stream to write to
+     * @throws IOException on general I/O errors (e.g., permission issues)
+     * @throws SoarException on serialization error
+     * @see CompiledReteFormat
+     */
+    public static void saveCompiledRete(Agent context, OutputStream os) throws IOException, SoarException
+    {
+        new CompiledReteWriter(context).write(os);
+    }
+    
     /**
      * Construct a new agent based on a serialized agent. The new agent will be pre-loaded with productions
      * from the serialized agent, but will not be initialized.
@@ -49,13 +87,74 @@ public static Agent createAgent(InputStream is) throws IOException, SoarExceptio
     
     /**
      * Excise all productions from the target agent and load productions from the serialized agent.
+     * Both the stream format and the compiled format are accepted.
      * 
      * @param context the agent to replace the productions of.
+     * 
      * @param is InputStream containing the serialized agent.
      * @throws SoarException if the input stream contains an unrecognized rete file.
      * @throws IOException on general I/O errors (e.g., permission issues)
      */
     public static void replaceRete(Agent context, InputStream is) throws IOException, SoarException
+    {
+        if(!is.markSupported())
+        {
+            is = new BufferedInputStream(is);
+        }
+        is.mark(4);
+        final byte[] magic = new byte[4];
+        final int n = is.readNBytes(magic, 0, magic.length);
+        is.reset();
+        if(n == magic.length && CompiledReteReader.isCompiledRete(ByteBuffer.wrap(magic)))
+        {
+            loadCompiledRete(context, ByteBuffer.wrap(is.readAllBytes()));
+            return;
+        }
+        
+        exciseAll(context);
+        new ReteNetReader(context).read(is);
+        context.initialize();
+    }
+    
+    /**
+     * Excise all productions from the target agent and load productions from
+     * a compiled rete. The buffer is only read, so the same buffer can be
+     * loaded into several agents.
+     * 
+     * @param context the agent to replace the productions of.
+     * @param buffer buffer containing the compiled rete, from its position to
+     *     its limit. The position is not changed.
+     * @throws SoarException if the buffer does not contain a valid compiled
+     *     rete
+     * @see #saveCompiledRete(Agent, OutputStream)
+     */
+    public static void loadCompiledRete(Agent context, ByteBuffer buffer) throws SoarException
+    {
+        exciseAll(context);
+        new CompiledReteReader(context).read(buffer);
+        context.initialize();
+    }
+    
+    /**
+     * Excise all productions from the target agent and load productions from
+     * a compiled rete file. The file is memory-mapped rather than read.
+     * 
+     * @param context the agent to replace the productions of.
+     * @param file the compiled rete file
+     * @throws SoarException if the file does not contain a valid compiled
+     *     rete
+     * @throws IOException on general I/O errors (e.g., permission issues)
+     * @see #saveCompiledRete(Agent, OutputStream)
+     */
+    public static void loadCompiledRete(Agent context, Path file) throws IOException, SoarException
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            loadCompiledRete(context, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+    
+    private static void exciseAll(Agent context)
     {
         context.initialize();
         
@@ -65,9 +164,5 @@ public static void replaceRete(Agent context, InputStream is) throws IOException
         {
             productions.exciseProduction(p, false);
         }
-        
-        new ReteNetReader(context).read(is);
-        
-        context.initialize();
     }
 }
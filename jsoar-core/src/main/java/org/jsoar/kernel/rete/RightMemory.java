@@ -19,6 +19,7 @@
     
     // final ListItem<RightMemory> in_bucket = new ListItem<RightMemory>(this); // hash bucket dll
     RightMemory next_in_bucket, prev_in_bucket; /* hash bucket dll */
+    int hash_value; /* hash value the rm was inserted with, for rehashing */
     
     // final ListItem<RightMemory> in_am = new ListItem<RightMemory>(this); // rm's in this amem
     RightMemory next_in_am, prev_in_am; /* rm's in this amem */
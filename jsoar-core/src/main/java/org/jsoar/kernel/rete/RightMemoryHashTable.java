@@ -5,17 +5,66 @@
  */
 package org.jsoar.kernel.rete;
 
+import org.jsoar.util.Arguments;
+
 /**
+ * Hash table of right memories for hashed joins.
+ * 
+ * <p>Like {@link LeftTokenHashTable}, the number of buckets is a power of
+ * two that follows the number of right memories in the table, and resizing
+ * is deferred to {@link #resize_if_needed()} so that it never happens while
+ * a bucket is being walked.
+ * 
  * @author ray
  */
 public class RightMemoryHashTable
 {
-    private static final int LOG2_RIGHT_HT_SIZE = 14;
-    private static final int RIGHT_HT_SIZE = 1 << LOG2_RIGHT_HT_SIZE;
+    /**
+     * Default log2 of the minimum number of buckets
+     */
+    public static final int DEFAULT_MINIMUM_LOG2_SIZE = 10;
+    
+    private static final int MAXIMUM_LOG2_SIZE = 30;
+    
+    private final int minimumLog2Size;
+    private int log2Size;
+    private int mask;
+    private int count;
+    private RightMemory buckets[];
+    
+    public RightMemoryHashTable()
+    {
+        this(DEFAULT_MINIMUM_LOG2_SIZE);
+    }
+    
+    /**
+     * @param minimumLog2Size log2 of the initial number of buckets. The
+     *     table never shrinks below this size.
+     */
+    public RightMemoryHashTable(int minimumLog2Size)
+    {
+        Arguments.check(minimumLog2Size >= 0 && minimumLog2Size <= MAXIMUM_LOG2_SIZE, "minimumLog2Size out of range");
+        this.minimumLog2Size = minimumLog2Size;
+        this.log2Size = minimumLog2Size;
+        this.mask = (1 << minimumLog2Size) - 1;
+        this.buckets = new RightMemory[1 << minimumLog2Size];
+    }
     
-    private static final int RIGHT_HT_MASK = RIGHT_HT_SIZE - 1;
+    /**
+     * @return the number of right memories in the table
+     */
+    public int getCount()
+    {
+        return count;
+    }
     
-    private final RightMemory buckets[] = new RightMemory[RIGHT_HT_SIZE];
+    /**
+     * @return the current number of buckets in the table
+     */
+    public int getSize()
+    {
+        return buckets.length;
+    }
     
     /**
      * <p>rete.cpp:683:right_ht_bucket
@@ -25,14 +74,12 @@
      */
     RightMemory right_ht_bucket(int hv)
     {
-        final int index = hv & RIGHT_HT_MASK;
-        return buckets[index];
-        // return (* ( ((token **) thisAgent->left_ht) + ((hv) & LEFT_HT_MASK)));
+        return buckets[indexOf(hv)];
     }
     
     void insertAtHeadOfBucket(int hv, RightMemory rm)
     {
-        final int index = hv & RIGHT_HT_MASK;
+        final int index = indexOf(hv);
         final RightMemory oldHead = buckets[index];
         if(oldHead == null)
         {
@@ -44,12 +91,14 @@ void insertAtHeadOfBucket(int hv, RightMemory rm)
             oldHead.prev_in_bucket = rm;
         }
         rm.prev_in_bucket = null;
+        rm.hash_value = hv;
         buckets[index] = rm;
+        count++;
     }
     
     void removeFromBucket(int hv, RightMemory rm)
     {
-        final int index = hv & RIGHT_HT_MASK;
+        final int index = indexOf(hv);
         if(rm == buckets[index])
         {
             if(rm.next_in_bucket != null)
@@ -68,5 +117,71 @@ void removeFromBucket(int hv, RightMemory rm)
         }
         rm.prev_in_bucket = null;
         rm.next_in_bucket = null;
+        count--;
+    }
+    
+    /**
+     * Grow or shrink the table to suit the number of right memories it
+     * currently holds. This must not be called while a bucket is being
+     * walked.
+     * 
+     * @return true if the table was resized
+     */
+    public boolean resize_if_needed()
+    {
+        int newLog2Size = log2Size;
+        while(count > (1 << newLog2Size) && newLog2Size < MAXIMUM_LOG2_SIZE)
+        {
+            newLog2Size++;
+        }
+        while(count < (1 << newLog2Size) / 4 && newLog2Size > minimumLog2Size)
+        {
+            newLog2Size--;
+        }
+        if(newLog2Size == log2Size)
+        {
+            return false;
+        }
+        rehash(newLog2Size);
+        return true;
+    }
+    
+    private int indexOf(int hv)
+    {
+        // Fold the high bits in so small tables still use all of the hash value
+        return (hv ^ (hv >>> 16)) & mask;
+    }
+    
+    private void rehash(int newLog2Size)
+    {
+        final RightMemory[] oldBuckets = buckets;
+        buckets = new RightMemory[1 << newLog2Size];
+        log2Size = newLog2Size;
+        mask = buckets.length - 1;
+        
+        // Append to the tail of each new bucket so that the relative order
+        // of right memories within a bucket is unchanged
+        final RightMemory[] tails = new RightMemory[buckets.length];
+        for(RightMemory head : oldBuckets)
+        {
+            RightMemory next;
+            for(RightMemory rm = head; rm != null; rm = next)
+            {
+                next = rm.next_in_bucket;
+                final int index = indexOf(rm.hash_value);
+                final RightMemory tail = tails[index];
+                rm.next_in_bucket = null;
+                rm.prev_in_bucket = tail;
+                if(tail == null)
+                {
+                    buckets[index] = rm;
+                }
+                else
+                {
+                    tail.next_in_bucket = rm;
+                }
+                tails[index] = rm;
+            }
+        }
     }
 }
@@ -16,18 +16,18 @@ public class RightToken extends Token
     final ListItem<RightToken> negrm = new ListItem<>(this); // part of other local join results dll
     private LeftToken left_token; // token this is a local join result for
     
-    public static RightToken create(ReteNode current_node, Token parent_tok, WmeImpl parent_wme, LeftToken left_token)
+    public static RightToken create(ReteNode current_node, Token parent_tok, WmeImpl parent_wme, LeftToken left_token, int hash_id)
     {
         assert current_node != null;
         // assert parent_wme != null;
         
-        return new RightToken(current_node, parent_tok, parent_wme, left_token);
+        return new RightToken(current_node, parent_tok, parent_wme, left_token, hash_id);
     }
     
-    public static RightToken createDummy(ReteNode current_node)
+    public static RightToken createDummy(ReteNode current_node, int hash_id)
     {
         assert current_node != null && current_node.node_type == ReteNodeType.DUMMY_TOP_BNODE;
-        RightToken t = new RightToken(current_node, null, null, null);
+        RightToken t = new RightToken(current_node, null, null, null, hash_id);
         current_node.a_np().tokens = t;
         return t;
     }
@@ -36,10 +36,12 @@ public static RightToken createDummy(ReteNode current_node)
      * @param current_node
      * @param parent_tok
      * @param parent_wme
+     * @param left_token
+     * @param hash_id
      */
-    private RightToken(ReteNode current_node, Token parent_tok, WmeImpl parent_wme, LeftToken left_token)
+    private RightToken(ReteNode current_node, Token parent_tok, WmeImpl parent_wme, LeftToken left_token, int hash_id)
     {
-        super(current_node, parent_tok, parent_wme, false);
+        super(current_node, parent_tok, parent_wme, false, hash_id);
         this.left_token = left_token;
         
         if(left_token != null)
@@ -34,10 +34,18 @@
     Token next_of_node;
     private Token previous_of_node;// Part of dll of tokens at node
     
-    public Token(ReteNode current_node, Token parent_tok, WmeImpl parent_wme, boolean addToNode)
+    /**
+     * Stands in for the token's address when the rete hashes on tokens
+     * 
+     * @see Rete#addressOf(Token)
+     */
+    final int hash_id;
+    
+    public Token(ReteNode current_node, Token parent_tok, WmeImpl parent_wme, boolean addToNode, int hash_id)
     {
         assert current_node != null;
         
+        this.hash_id = hash_id;
         this.node = current_node;
         this.parent = parent_tok;
         this.w = parent_wme;
@@ -57,6 +65,7 @@ public static Token createMatchesToken(Token parent, WmeImpl wme)
     
     private Token(Token parent, WmeImpl wme)
     {
+        this.hash_id = 0;
         this.parent = parent;
         this.w = wme;
     }
@@ -13,7 +13,6 @@
 import java.net.URLDecoder;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -59,6 +58,7 @@
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.ActivateOnQueryChoices;
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.ActivationChoices;
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.AppendDatabaseChoices;
+import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.BackendChoices;
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.BaseUpdateChoices;
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.LazyCommitChoices;
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.LearningChoices;
@@ -66,6 +66,10 @@
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.MirroringChoices;
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.Optimization;
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.PageChoices;
+import org.jsoar.kernel.smem.SemanticMemoryStore.ActivationCursor;
+import org.jsoar.kernel.smem.SemanticMemoryStore.AugmentationRow;
+import org.jsoar.kernel.smem.SemanticMemoryStore.LtiAccess;
+import org.jsoar.kernel.smem.SemanticMemoryStore.LtiRow;
 import org.jsoar.kernel.smem.math.MathQuery;
 import org.jsoar.kernel.smem.math.MathQueryGreater;
 import org.jsoar.kernel.smem.math.MathQueryGreaterOrEqual;
@@ -204,6 +208,24 @@ public class DefaultSemanticMemory implements SemanticMemory
     
     private SemanticMemoryDatabase db;
     
+    /**
+     * Backend for all reads and writes of the semantic store. Not null
+     * exactly when {@link #db} is open.
+     */
+    private SemanticMemoryStore store;
+    
+    /**
+     * Frequency adjustments held back by the current batch of stores, or
+     * null outside of a batch
+     */
+    private FrequencyBatch frequency_batch;
+    
+    /**
+     * Name of the savepoint that marks the start of a batch in lazy-commit
+     * mode
+     */
+    private static final String BATCH_SAVEPOINT = "smem_batch";
+    
     /** agent.h:smem_validation */
     private/* uintptr_t */long smem_validation;
     
@@ -252,6 +274,7 @@ public DefaultSemanticMemory(Adaptable context, SemanticMemoryDatabase db)
     {
         this.context = context;
         this.db = db;
+        this.store = db != null ? new JdbcSemanticMemoryStore(db) : null;
     }
     
     public void initialize()
@@ -408,8 +431,7 @@ private static boolean smem_symbol_is_constant(Symbol sym)
     
     private long /* smem_hash_id */ smem_temporal_hash_add_type(int symbol_type) throws SQLException
     {
-        db.hash_add_type.setInt(1, symbol_type);
-        return JdbcTools.insertAndGetRowId(db.hash_add_type);
+        return store.hash_add_type(symbol_type);
     }
     
     private long /* smem_hash_id */ smem_temporal_hash_int(long val, boolean add_on_fail /*
@@ -417,17 +439,8 @@ private static boolean smem_symbol_is_constant(Symbol sym)
                                                                                           * true
                                                                                           */) throws SQLException
     {
-        long /* smem_hash_id */ return_val = 0;
-        
         // search first
-        db.hash_get_int.setLong(1, val);
-        try(ResultSet rs = db.hash_get_int.executeQuery())
-        {
-            if(rs.next())
-            {
-                return_val = rs.getLong(0 + 1);
-            }
-        }
+        long /* smem_hash_id */ return_val = store.hash_get_int(val);
         
         // if fail and supposed to add
         if(return_val == 0 && add_on_fail)
@@ -436,9 +449,7 @@ private static boolean smem_symbol_is_constant(Symbol sym)
             return_val = smem_temporal_hash_add_type(Symbols.INT_CONSTANT_SYMBOL_TYPE);
             
             // then content
-            db.hash_add_int.setLong(1, return_val);
-            db.hash_add_int.setLong(2, val);
-            db.hash_add_int.executeUpdate(/* soar_module::op_reinit */);
+            store.hash_add_int(return_val, val);
         }
         
         return return_val;
@@ -449,18 +460,8 @@ private static boolean smem_symbol_is_constant(Symbol sym)
                                                                                               * true
                                                                                               */) throws SQLException
     {
-        long /* smem_hash_id */ return_val = 0;
-        
-        // search first
         // search first
-        db.hash_get_float.setDouble(1, val);
-        try(ResultSet rs = db.hash_get_float.executeQuery())
-        {
-            if(rs.next())
-            {
-                return_val = rs.getLong(0 + 1);
-            }
-        }
+        long /* smem_hash_id */ return_val = store.hash_get_float(val);
         
         // if fail and supposed to add
         if(return_val == 0 && add_on_fail)
@@ -469,9 +470,7 @@ private static boolean smem_symbol_is_constant(Symbol sym)
             return_val = smem_temporal_hash_add_type(Symbols.FLOAT_CONSTANT_SYMBOL_TYPE);
             
             // then content
-            db.hash_add_float.setLong(1, return_val);
-            db.hash_add_float.setDouble(2, val);
-            db.hash_add_float.executeUpdate(/* soar_module::op_reinit */);
+            store.hash_add_float(return_val, val);
         }
         
         return return_val;
@@ -482,18 +481,8 @@ private static boolean smem_symbol_is_constant(Symbol sym)
                                                                                             * true
                                                                                             */) throws SQLException
     {
-        long /* smem_hash_id */ return_val = 0;
-        
         // search first
-        // search first
-        db.hash_get_str.setString(1, val);
-        try(ResultSet rs = db.hash_get_str.executeQuery())
-        {
-            if(rs.next())
-            {
-                return_val = rs.getLong(0 + 1);
-            }
-        }
+        long /* smem_hash_id */ return_val = store.hash_get_str(val);
         
         // if fail and supposed to add
         if(return_val == 0 && add_on_fail)
@@ -502,9 +491,8 @@ private static boolean smem_symbol_is_constant(Symbol sym)
             return_val = smem_temporal_hash_add_type(Symbols.SYM_CONSTANT_SYMBOL_TYPE);
             
             // then content
-            db.hash_add_str.setLong(1, return_val);
-            db.hash_add_str.setString(2, val);
-            db.hash_add_str.executeUpdate(/* soar_module::op_reinit */);
+            store.hash_add_str(return_val, val);
+            
         }
         
         return return_val;
@@ -615,20 +603,15 @@ private void smem_buffer_add_wme(List<SymbolTriple> my_list, IdentifierImpl id,
      */
     private boolean smem_variable_get(smem_variable_key variable_id, ByRef<Long> variable_value) throws SQLException
     {
-        final PreparedStatement var_get = db.var_get;
-        
-        var_get.setInt(1, variable_id.ordinal());
-        try(ResultSet rs = var_get.executeQuery())
+        final Long value = store.var_get(variable_id.ordinal());
+        if(value != null)
         {
-            if(rs.next())
-            {
-                variable_value.value = rs.getLong(0 + 1);
-                return true;
-            }
-            else
-            {
-                return false;
-            }
+            variable_value.value = value;
+            return true;
+        }
+        else
+        {
+            return false;
         }
     }
     
@@ -640,12 +623,7 @@ private boolean smem_variable_get(smem_variable_key variable_id, ByRef<Long> var
      */
     private void smem_variable_set(smem_variable_key variable_id, long variable_value) throws SQLException
     {
-        final PreparedStatement var_set = db.var_set;
-        
-        var_set.setLong(1, variable_value);
-        var_set.setInt(2, variable_id.ordinal());
-        
-        var_set.execute();
+        store.var_set(variable_id.ordinal(), variable_value);
     }
     
     /**
@@ -656,12 +634,7 @@ private void smem_variable_set(smem_variable_key variable_id, long variable_valu
      */
     private void smem_variable_create(smem_variable_key variable_id, long variable_value) throws SQLException
     {
-        final PreparedStatement var_create = db.var_create;
-        
-        var_create.setInt(1, variable_id.ordinal());
-        var_create.setLong(2, variable_value);
-        
-        var_create.execute();
+        store.var_create(variable_id.ordinal(), variable_value);
     }
     
     /**
@@ -735,38 +708,17 @@ private void smem_variable_create(smem_variable_key variable_id, long variable_v
     
     private int /* long? */ smem_reverse_hash_int(long /* smem_hash_id */ hash_value) throws SQLException
     {
-        db.hash_rev_int.setLong(1, hash_value);
-        try(ResultSet rs = db.hash_rev_int.executeQuery())
-        {
-            if(!rs.next())
-            {
-                throw new IllegalStateException("Expected non-empty result");
-            }
-            int toReturn = rs.getInt(0 + 1);
-            return toReturn;
-        }
+        return (int) store.hash_rev_int(hash_value);
     }
     
     private double smem_reverse_hash_float(long /* smem_hash_id */ hash_value) throws SQLException
     {
-        db.hash_rev_float.setLong(1, hash_value);
-        try(ResultSet rs = db.hash_rev_float.executeQuery())
-        {
-            rs.next();
-            double toReturn = rs.getDouble(0 + 1);
-            return toReturn;
-        }
+        return store.hash_rev_float(hash_value);
     }
     
     private String smem_reverse_hash_str(long /* smem_hash_id */ hash_value) throws SQLException
     {
-        db.hash_rev_str.setLong(1, hash_value);
-        try(ResultSet rs = db.hash_rev_str.executeQuery())
-        {
-            rs.next();
-            String toReturn = rs.getString(0 + 1);
-            return toReturn;
-        }
+        return store.hash_rev_str(hash_value);
     }
     
     private SymbolImpl smem_reverse_hash(int symbol_type, long /* smem_hash_id */ hash_value) throws SQLException
@@ -812,25 +764,20 @@ public double smem_lti_calc_base(long lti, long time_now, long n, long activatio
         
         if(n == 0)
         {
-            db.lti_access_get.setLong(1, lti);
-            try(ResultSet rs = db.lti_access_get.executeQuery())
-            {
-                n = rs.getLong(1 + 1);
-                activations_first = rs.getLong(2 + 1);
-            }
+            final LtiAccess access = store.lti_access_get(lti);
+            n = access.activations_last;
+            activations_first = access.activations_first;
         }
         
         // get all history
-        db.history_get.setLong(1, lti);
-        try(ResultSet rs = db.history_get.executeQuery())
         {
-            rs.next();
+            final long[] history = store.history_get(lti);
             int available_history = (int) (SMEM_ACT_HISTORY_ENTRIES < n ? (SMEM_ACT_HISTORY_ENTRIES) : (n));
-            t_k = time_now - rs.getLong(available_history - 1 + 1);
+            t_k = time_now - history[available_history - 1];
             
             for(int i = 0; i < available_history; i++)
             {
-                sum += Math.pow(time_now - rs.getLong(i + 1), -d);
+                sum += Math.pow(time_now - history[i], -d);
             }
         }
         
@@ -889,21 +836,10 @@ public double smem_lti_calc_base(long lti, long time_now, long n, long activatio
                         
                         if(time_diff > 0)
                         {
-                            List<Long> to_update = new ArrayList<>();
-                            
-                            db.lti_get_t.setLong(1, time_diff);
-                            try(ResultSet rs = db.lti_get_t.executeQuery();)
-                            {
-                                
-                                // while (
-                                // my_agent->smem_stmts->lti_get_t->execute() ==
-                                // soar_module::row )
-                                
-                                while(rs.next())
-                                {
-                                    to_update.add(rs.getLong(0 + 1));
-                                }
-                            }
+                            // while (
+                            // my_agent->smem_stmts->lti_get_t->execute() ==
+                            // soar_module::row )
+                            List<Long> to_update = store.lti_get_t(time_diff);
                             
                             // for ( std::list< smem_lti_id >::iterator
                             // it=to_update.begin(); it!=to_update.end(); it++ )
@@ -930,24 +866,15 @@ public double smem_lti_calc_base(long lti, long time_now, long n, long activatio
         long prev_access_1 = 0;
         {
             // get old (potentially useful below)
-            db.lti_access_get.setLong(1, lti);
-            try(ResultSet rs = db.lti_access_get.executeQuery())
-            {
-                rs.next();
-                prev_access_n = rs.getLong(0 + 1);
-                prev_access_t = rs.getLong(1 + 1);
-                prev_access_1 = rs.getLong(2 + 1);
-            }
+            final LtiAccess access = store.lti_access_get(lti);
+            prev_access_n = access.activations_total;
+            prev_access_t = access.activations_last;
+            prev_access_1 = access.activations_first;
             
             // set new
             if(add_access)
             {
-                db.lti_access_set.setLong(1, (prev_access_n + 1));
-                db.lti_access_set.setLong(2, time_now);
-                db.lti_access_set.setLong(3, ((prev_access_n == 0) ? (time_now) : (prev_access_1)));
-                
-                db.lti_access_set.setLong(4, lti);
-                db.lti_access_set.executeUpdate();
+                store.lti_access_set(lti, (prev_access_n + 1), time_now, ((prev_access_n == 0) ? (time_now) : (prev_access_1)));
             }
         }
         
@@ -968,9 +895,7 @@ else if(act_mode == ActivationChoices.base_level)
             {
                 if(add_access)
                 {
-                    db.history_add.setLong(1, lti);
-                    db.history_add.setLong(2, time_now);
-                    db.history_add.executeUpdate();
+                    store.history_add(lti, time_now);
                 }
                 
                 new_activation = 0;
@@ -979,9 +904,7 @@ else if(act_mode == ActivationChoices.base_level)
             {
                 if(add_access)
                 {
-                    db.history_push.setLong(1, time_now);
-                    db.history_push.setLong(2, lti);
-                    db.history_push.executeUpdate();
+                    store.history_push(lti, time_now);
                 }
                 
                 new_activation = smem_lti_calc_base(lti, time_now + ((add_access) ? (1) : (0)), prev_access_n + ((add_access) ? (1) : (0)), prev_access_1);
@@ -991,18 +914,7 @@ else if(act_mode == ActivationChoices.base_level)
         // get number of augmentations (if not supplied)
         if(num_edges == SMEM_ACT_MAX)
         {
-            ResultSet rs = null;
-            try
-            {
-                db.act_lti_child_ct_get.setLong(1, lti);
-                rs = db.act_lti_child_ct_get.executeQuery();
-                rs.next();
-                num_edges = rs.getLong(0 + 1);
-            }
-            finally
-            {
-                rs.close();
-            }
+            num_edges = store.act_lti_child_ct_get(lti);
         }
         
         // only if augmentation count is less than threshold do we associate
@@ -1010,19 +922,16 @@ else if(act_mode == ActivationChoices.base_level)
         if(num_edges < this.params.thresh.get())
         {
             // activation_value=? WHERE lti=?
-            db.act_set.setDouble(1, new_activation);
-            db.act_set.setLong(2, lti);
-            db.act_set.executeUpdate();
+            store.act_set(lti, new_activation);
         }
         
         // always associate activation with lti
         {
             // activation_value=? WHERE lti=?
-            db.act_lti_set.setDouble(1, new_activation);
-            db.act_lti_set.setLong(2, lti);
-            db.act_lti_set.executeUpdate();
+            store.act_lti_set(lti, new_activation);
         }
         
+        
         // TODO: SMem Timers
         // //////////////////////////////////////////////////////////////////////////
         // my_agent->smem_timers->act->stop();
@@ -1220,16 +1129,7 @@ else if(valid_ltis.contains(id))
         try
         {
             // soar_letter=? AND number=?
-            db.lti_get.setLong(1, name_letter);
-            db.lti_get.setLong(2, name_number);
-            
-            try(ResultSet rs = db.lti_get.executeQuery())
-            {
-                if(rs.next())
-                {
-                    return_val = rs.getLong(0 + 1);
-                }
-            }
+            return_val = store.lti_get(name_letter, name_number);
         }
         catch(SQLException e)
         {
@@ -1255,15 +1155,7 @@ else if(valid_ltis.contains(id))
         // create lti: soar_letter, number, total_augmentations,
         // activation_value, activations_total, activations_last,
         // activations_first
-        db.lti_add.setLong(1, name_letter);
-        db.lti_add.setLong(2, name_number);
-        db.lti_add.setLong(3, 0);
-        db.lti_add.setDouble(4, 0);
-        db.lti_add.setLong(5, 0);
-        db.lti_add.setLong(6, 0);
-        db.lti_add.setLong(7, 0);
-        
-        return_val = JdbcTools.insertAndGetRowId(db.lti_add);
+        return_val = store.lti_add(name_letter, name_number);
         
         // increment stat
         stats.nodes.set(stats.nodes.get() + 1); // smem_stats->chunks in CSoar
@@ -1344,18 +1236,18 @@ public void smem_reset_id_counters() throws SoarException
     {
         // semantic_memory.cpp:1082:smem_reset_id_counters
         
-        if(db != null /*
-                       * my_agent->smem_db->get_status() ==
-                       * soar_module::connected
-                       */)
+        if(store != null /*
+                          * my_agent->smem_db->get_status() ==
+                          * soar_module::connected
+                          */)
         {
-            try(ResultSet rs = db.lti_max.executeQuery())
+            try
             {
-                while(rs.next())
+                for(Map.Entry<Long, Long> e : store.lti_max().entrySet())
                 {
                     // soar_letter, max
-                    final long name_letter = rs.getLong(0 + 1);
-                    final long letter_max = rs.getLong(1 + 1);
+                    final long name_letter = e.getKey();
+                    final long letter_max = e.getValue();
                     
                     // shift to alphabet
                     // name_letter -= (long)( 'A' );
@@ -1387,38 +1279,24 @@ void smem_disconnect_chunk(/* smem_lti_id */long lti_id) throws SQLException
             Set<Long> distinct_attr = new LinkedHashSet<>();
             
             // pairs first, accumulate distinct attributes and pair count
-            db.web_all.setLong(1, lti_id);
-            
-            try(ResultSet webAllCounts = db.web_all.executeQuery())
+            for(AugmentationRow webAllCounts : store.web_all(lti_id))
             {
-                while(webAllCounts.next())
+                pair_count++;
+            
+                child_attr = webAllCounts.attr_hash;
+                distinct_attr.add(child_attr);
+                
+                // null -> attr/lti
+                final long child_value = (webAllCounts.attr_hash != SMEM_AUGMENTATIONS_NULL) ? (int) webAllCounts.value_hash : (int) webAllCounts.value_lti;
+                if(frequency_batch != null)
                 {
-                    pair_count++;
-                    
-                    child_attr = webAllCounts.getLong(0 + 1);
-                    distinct_attr.add(child_attr);
-                    
-                    // null -> attr/lti
-                    if(webAllCounts.getLong(0 + 1) != SMEM_AUGMENTATIONS_NULL)
-                    {
-                        // adjust in opposite direction ( adjust, attribute,
-                        // const )
-                        db.wmes_constant_frequency_update.setInt(1, -1);
-                        db.wmes_constant_frequency_update.setLong(2, child_attr);
-                        db.wmes_constant_frequency_update.setInt(3, webAllCounts.getInt(1 + 1));
-                        
-                        db.wmes_constant_frequency_update.executeUpdate();
-                    }
-                    else
-                    {
-                        // adjust in opposite direction ( adjust, attribute, lti
-                        // )
-                        db.wmes_constant_frequency_update.setInt(1, -1);
-                        db.wmes_constant_frequency_update.setLong(2, child_attr);
-                        db.wmes_constant_frequency_update.setInt(3, webAllCounts.getInt(2 + 1));
-                        
-                        db.wmes_constant_frequency_update.executeUpdate();
-                    }
+                    frequency_batch.adjust(frequency_batch.constants, new SmemHashIdLongPair(child_attr, child_value), -1);
+                }
+                else
+                {
+                    // adjust in opposite direction ( adjust, attribute,
+                    // const ) or ( adjust, attribute, lti )
+                    store.wmes_constant_frequency_update(child_attr, child_value, -1);
                 }
             }
             
@@ -1427,11 +1305,15 @@ void smem_disconnect_chunk(/* smem_lti_id */long lti_id) throws SQLException
             // a!=distinct_attr.end(); a++)
             for(Long a : distinct_attr)
             {
-                // adjust in opposite direction ( adjust, attribute )
-                db.attribute_frequency_update.setInt(1, -1);
-                db.attribute_frequency_update.setLong(2, a);
-                
-                db.attribute_frequency_update.executeUpdate();
+                if(frequency_batch != null)
+                {
+                    frequency_batch.adjust(frequency_batch.attributes, a, -1);
+                }
+                else
+                {
+                    // adjust in opposite direction ( adjust, attribute )
+                    store.attribute_frequency_update(a, -1);
+                }
             }
             
             // update local statistic
@@ -1442,8 +1324,8 @@ void smem_disconnect_chunk(/* smem_lti_id */long lti_id) throws SQLException
         
         // disconnect
         {
-            db.web_truncate.setLong(1, lti_id);
-            db.web_truncate.executeUpdate( /* soar_module::op_reinit */);
+            store.web_truncate(lti_id);
+            
         }
     }
     
@@ -1523,6 +1405,197 @@ public boolean equals(Object obj)
         }
     }
     
+    /**
+     * The net adjustment of each frequency counter touched by a batch of
+     * stores
+     */
+    private static class FrequencyBatch
+    {
+        final Map<Long /* smem_hash_id */, Long> attributes = new LinkedHashMap<>();
+        final Map<SmemHashIdLongPair /* smem_hash_id->smem_hash_id */, Long> constants = new LinkedHashMap<>();
+        final Map<SmemHashIdLongPair /* smem_hash_id->smem_lti_id */, Long> ltis = new LinkedHashMap<>();
+        
+        <K> void adjust(Map<K, Long> counters, K key, long adjustment)
+        {
+            counters.merge(key, adjustment, Long::sum);
+        }
+    }
+    
+    /**
+     * Start a batch of stores. Outside of lazy-commit mode the whole batch is
+     * one transaction. Until {@link #smem_end_batch()} the store may hold
+     * back augmentations and the frequency tables aren't touched at all, so
+     * nothing that reads them, like a cue-based retrieval, may happen in
+     * between.
+     */
+    private void smem_begin_batch() throws SQLException
+    {
+        // start transaction (if not lazy). In lazy-commit mode a transaction
+        // is already open, so mark where the batch starts instead.
+        if(params.lazy_commit.get() == LazyCommitChoices.off)
+        {
+            db.beginExecuteUpdate( /* soar_module::op_reinit */);
+        }
+        else
+        {
+            executeBatchSavepointStatement("SAVEPOINT " + BATCH_SAVEPOINT);
+        }
+        
+        store.beginBatch();
+        frequency_batch = new FrequencyBatch();
+    }
+    
+    /**
+     * Bring the frequency tables up to date and finish the batch started by
+     * {@link #smem_begin_batch()}. This must only be called if everything in
+     * the batch succeeded. Otherwise, call {@link #smem_abort_batch(Throwable)}.
+     * If this fails, the batch is aborted.
+     */
+    private void smem_end_batch() throws SQLException
+    {
+        try
+        {
+            smem_apply_frequency_batch(frequency_batch);
+            store.endBatch();
+            
+            // commit transaction (if not lazy)
+            if(params.lazy_commit.get() == LazyCommitChoices.off)
+            {
+                db.commitExecuteUpdate( /* soar_module::op_reinit */);
+            }
+            else
+            {
+                executeBatchSavepointStatement("RELEASE SAVEPOINT " + BATCH_SAVEPOINT);
+            }
+        }
+        catch(SQLException | RuntimeException e)
+        {
+            smem_abort_batch(e);
+            throw e;
+        }
+        frequency_batch = null;
+    }
+    
+    /**
+     * Throw away a batch started by {@link #smem_begin_batch()} after part of
+     * it failed. The pending frequency adjustments and held back
+     * augmentations are dropped and the database is rolled back to where it
+     * was when the batch started. The in-heap store applies updates as they
+     * are made, so it keeps whatever the batch did before it failed.
+     * 
+     * <p>Errors while rolling back are added to the cause as suppressed
+     * exceptions so they don't hide it.
+     * 
+     * @param cause the error that ended the batch
+     */
+    private void smem_abort_batch(Throwable cause)
+    {
+        frequency_batch = null;
+        try
+        {
+            store.abortBatch();
+        }
+        catch(SQLException | RuntimeException e)
+        {
+            cause.addSuppressed(e);
+        }
+        
+        try
+        {
+            if(params.lazy_commit.get() == LazyCommitChoices.off)
+            {
+                db.rollbackExecuteUpdate();
+            }
+            else
+            {
+                executeBatchSavepointStatement("ROLLBACK TO SAVEPOINT " + BATCH_SAVEPOINT);
+                executeBatchSavepointStatement("RELEASE SAVEPOINT " + BATCH_SAVEPOINT);
+            }
+        }
+        catch(SQLException | RuntimeException e)
+        {
+            cause.addSuppressed(e);
+        }
+    }
+    
+    private void executeBatchSavepointStatement(String sql) throws SQLException
+    {
+        try(Statement s = db.getConnection().createStatement())
+        {
+            s.executeUpdate(sql);
+        }
+    }
+    
+    /**
+     * Apply the adjustments of a batch with one lookup and at most two
+     * updates for each counter, rather than for each augmentation. A new
+     * counter starts at one and a counter that doesn't exist can't go down.
+     */
+    private void smem_apply_frequency_batch(FrequencyBatch batch) throws SQLException
+    {
+        for(Map.Entry<Long, Long> a : batch.attributes.entrySet())
+        {
+            final long adjustment = a.getValue();
+            if(store.attribute_frequency_check(a.getKey()))
+            {
+                if(adjustment != 0)
+                {
+                    store.attribute_frequency_update(a.getKey(), adjustment);
+                }
+            }
+            else if(adjustment > 0)
+            {
+                store.attribute_frequency_add(a.getKey());
+                if(adjustment > 1)
+                {
+                    store.attribute_frequency_update(a.getKey(), adjustment - 1);
+                }
+            }
+        }
+        
+        for(Map.Entry<SmemHashIdLongPair, Long> c : batch.constants.entrySet())
+        {
+            final SmemHashIdLongPair pair = c.getKey();
+            final long adjustment = c.getValue();
+            if(store.wmes_constant_frequency_check(pair.getHashID(), pair.getSecond()))
+            {
+                if(adjustment != 0)
+                {
+                    store.wmes_constant_frequency_update(pair.getHashID(), pair.getSecond(), adjustment);
+                }
+            }
+            else if(adjustment > 0)
+            {
+                store.wmes_constant_frequency_add(pair.getHashID(), pair.getSecond());
+                if(adjustment > 1)
+                {
+                    store.wmes_constant_frequency_update(pair.getHashID(), pair.getSecond(), adjustment - 1);
+                }
+            }
+        }
+        
+        for(Map.Entry<SmemHashIdLongPair, Long> l : batch.ltis.entrySet())
+        {
+            final SmemHashIdLongPair pair = l.getKey();
+            final long adjustment = l.getValue();
+            if(store.wmes_lti_frequency_check(pair.getHashID(), pair.getSecond()))
+            {
+                if(adjustment != 0)
+                {
+                    store.wmes_lti_frequency_update(pair.getHashID(), pair.getSecond(), adjustment);
+                }
+            }
+            else if(adjustment > 0)
+            {
+                store.wmes_lti_frequency_add(pair.getHashID(), pair.getSecond());
+                if(adjustment > 1)
+                {
+                    store.wmes_lti_frequency_update(pair.getHashID(), pair.getSecond(), adjustment - 1);
+                }
+            }
+        }
+    }
+    
     /**
      * <p>
      * semantic_memory.cpp:1187:smem_store_chunk
@@ -1561,13 +1634,7 @@ void smem_store_chunk(/* smem_lti_id */long lti_id, Map<SymbolImpl, List<Object>
         }
         else
         {
-            db.act_lti_child_ct_get.setLong(1, lti_id);
-            
-            try(ResultSet rs = db.act_lti_child_ct_get.executeQuery())
-            {
-                rs.next();
-                existing_edges = rs.getLong(0 + 1);
-            }
+            existing_edges = store.act_lti_child_ct_get(lti_id);
         }
         
         // get new edges
@@ -1590,15 +1657,9 @@ void smem_store_chunk(/* smem_lti_id */long lti_id, Map<SymbolImpl, List<Object>
                 else
                 {
                     // lti_id, attribute_s_id
-                    db.web_attr_child.setLong(1, lti_id);
-                    db.web_attr_child.setLong(2, attr_hash);
-                    
-                    try(ResultSet rs = db.web_attr_child.executeQuery())
+                    if(store.web_attr_child(lti_id, attr_hash).length == 0)
                     {
-                        if(!rs.next())
-                        {
-                            attr_new.add(attr_hash);
-                        }
+                        attr_new.add(attr_hash);
                     }
                 }
                 
@@ -1616,16 +1677,9 @@ void smem_store_chunk(/* smem_lti_id */long lti_id, Map<SymbolImpl, List<Object>
                         else
                         {
                             // lti_id, attribute_s_id, val_const
-                            db.web_const_child.setLong(1, lti_id);
-                            db.web_const_child.setLong(2, attr_hash);
-                            db.web_const_child.setLong(3, value_hash);
-                            
-                            try(ResultSet rs = db.web_const_child.executeQuery())
+                            if(store.web_const_child(lti_id, attr_hash, value_hash).length == 0)
                             {
-                                if(!rs.next())
-                                {
-                                    const_new.add(new SmemHashIdLongPair(attr_hash, value_hash));
-                                }
+                                const_new.add(new SmemHashIdLongPair(attr_hash, value_hash));
                             }
                         }
                         
@@ -1661,16 +1715,9 @@ void smem_store_chunk(/* smem_lti_id */long lti_id, Map<SymbolImpl, List<Object>
                         else
                         {
                             // lti_id, attribute_s_id, val_lti
-                            db.web_lti_child.setLong(1, lti_id);
-                            db.web_lti_child.setLong(2, attr_hash);
-                            db.web_lti_child.setLong(3, value_lti);
-                            
-                            try(ResultSet rs = db.web_lti_child.executeQuery())
+                            if(store.web_lti_child(lti_id, attr_hash, value_lti).length == 0)
                             {
-                                if(!rs.next())
-                                {
-                                    lti_new.add(new SmemHashIdLongPair(attr_hash, value_lti));
-                                }
+                                lti_new.add(new SmemHashIdLongPair(attr_hash, value_lti));
                             }
                         }
                         
@@ -1708,18 +1755,14 @@ void smem_store_chunk(/* smem_lti_id */long lti_id, Map<SymbolImpl, List<Object>
                 if(after_above)
                 {
                     // update smem_augmentations to inf
-                    db.act_set.setDouble(1, web_act);
-                    db.act_set.setLong(2, lti_id);
-                    db.act_set.executeUpdate();
+                    store.act_set(lti_id, web_act);
                 }
             }
         }
         
         // update edge counter
         {
-            db.act_lti_child_ct_set.setLong(1, new_edges);
-            db.act_lti_child_ct_set.setLong(2, lti_id);
-            db.act_lti_child_ct_set.executeUpdate();
+            store.act_lti_child_ct_set(lti_id, new_edges);
         }
         
         // now we can safely activate the lti
@@ -1742,41 +1785,26 @@ void smem_store_chunk(/* smem_lti_id */long lti_id, Map<SymbolImpl, List<Object>
                     {
                         // lti_id, attribute_s_id, val_const, value_lti_id,
                         // activation_value
-                        db.web_add.setLong(1, lti_id);
-                        db.web_add.setLong(2, pair.getHashID());
-                        db.web_add.setLong(3, pair.getSecond());
-                        db.web_add.setLong(4, SMEM_AUGMENTATIONS_NULL);
-                        db.web_add.setDouble(5, web_act);
-                        
-                        db.web_add.executeUpdate();
+                        store.web_add(lti_id, pair.getHashID(), pair.getSecond(), SMEM_AUGMENTATIONS_NULL, web_act);
                     }
                     
                     // update counter
+                    if(frequency_batch != null)
+                    {
+                        frequency_batch.adjust(frequency_batch.constants, pair, 1);
+                    }
+                    else
                     {
                         // check if counter exists (and add if does not):
                         // attribute_s_id, val
-                        db.wmes_constant_frequency_check.setLong(1, pair.getHashID());
-                        db.wmes_constant_frequency_check.setLong(2, pair.getSecond());
-                        
-                        try(ResultSet rs = db.wmes_constant_frequency_check.executeQuery())
+                        if(!store.wmes_constant_frequency_check(pair.getHashID(), pair.getSecond()))
                         {
-                            if(!rs.next())
-                            {
-                                db.wmes_constant_frequency_add.setLong(1, pair.getHashID());
-                                db.wmes_constant_frequency_add.setLong(2, pair.getSecond());
-                                
-                                db.wmes_constant_frequency_add.executeUpdate();
-                            }
-                            else
-                            {
-                                // adjust count (adjustment, attribute_s_id,
-                                // val)
-                                db.wmes_constant_frequency_update.setLong(1, 1);
-                                db.wmes_constant_frequency_update.setLong(2, pair.getHashID());
-                                db.wmes_constant_frequency_update.setLong(3, pair.getSecond());
-                                
-                                db.wmes_constant_frequency_update.executeUpdate();
-                            }
+                            store.wmes_constant_frequency_add(pair.getHashID(), pair.getSecond());
+                        }
+                        else
+                        {
+                            // adjust count (attribute_s_id, val, adjustment)
+                            store.wmes_constant_frequency_update(pair.getHashID(), pair.getSecond(), 1);
                         }
                     }
                 }
@@ -1790,41 +1818,26 @@ void smem_store_chunk(/* smem_lti_id */long lti_id, Map<SymbolImpl, List<Object>
                     {
                         // lti_id, attribute_s_id, val_const, value_lti_id,
                         // activation_value
-                        db.web_add.setLong(1, lti_id);
-                        db.web_add.setLong(2, pair.getHashID());
-                        db.web_add.setLong(3, SMEM_AUGMENTATIONS_NULL);
-                        db.web_add.setLong(4, pair.getSecond());
-                        db.web_add.setDouble(5, web_act);
-                        
-                        db.web_add.executeUpdate();
+                        store.web_add(lti_id, pair.getHashID(), SMEM_AUGMENTATIONS_NULL, pair.getSecond(), web_act);
                     }
                     
                     // update counter
+                    if(frequency_batch != null)
+                    {
+                        frequency_batch.adjust(frequency_batch.ltis, pair, 1);
+                    }
+                    else
                     {
                         // check if counter exists (and add if does not):
                         // attribute_s_id, val
-                        db.wmes_lti_frequency_check.setLong(1, pair.getHashID());
-                        db.wmes_lti_frequency_check.setLong(2, pair.getSecond());
-                        
-                        try(ResultSet rs = db.wmes_lti_frequency_check.executeQuery())
+                        if(!store.wmes_lti_frequency_check(pair.getHashID(), pair.getSecond()))
                         {
-                            if(!rs.next())
-                            {
-                                db.wmes_lti_frequency_add.setLong(1, pair.getHashID());
-                                db.wmes_lti_frequency_add.setLong(2, pair.getSecond());
-                                
-                                db.wmes_lti_frequency_add.executeUpdate();
-                            }
-                            else
-                            {
-                                // adjust count (adjustment, attribute_s_id,
-                                // lti)
-                                db.wmes_lti_frequency_update.setLong(1, 1);
-                                db.wmes_lti_frequency_update.setLong(2, pair.getHashID());
-                                db.wmes_lti_frequency_update.setLong(3, pair.getSecond());
-                                
-                                db.wmes_lti_frequency_update.executeUpdate();
-                            }
+                            store.wmes_lti_frequency_add(pair.getHashID(), pair.getSecond());
+                        }
+                        else
+                        {
+                            // adjust count (attribute_s_id, lti, adjustment)
+                            store.wmes_lti_frequency_update(pair.getHashID(), pair.getSecond(), 1);
                         }
                     }
                 }
@@ -1834,26 +1847,21 @@ void smem_store_chunk(/* smem_lti_id */long lti_id, Map<SymbolImpl, List<Object>
             {
                 for(Long a : attr_new)
                 {
+                    if(frequency_batch != null)
+                    {
+                        frequency_batch.adjust(frequency_batch.attributes, a, 1);
+                    }
                     // check if counter exists (and add if does not):
                     // attribute_s_id
-                    db.attribute_frequency_check.setLong(1, a);
-                    
-                    try(ResultSet rs = db.attribute_frequency_check.executeQuery())
+                    else if(!store.attribute_frequency_check(a))
                     {
-                        if(!rs.next())
-                        {
-                            db.attribute_frequency_add.setLong(1, a);
-                            
-                            db.attribute_frequency_add.executeUpdate();
-                        }
-                        else
-                        {
-                            db.attribute_frequency_update.setLong(1, 1);
-                            db.attribute_frequency_update.setLong(2, a);
-                            
-                            db.attribute_frequency_update.executeUpdate();
-                        }
+                        store.attribute_frequency_add(a);
                     }
+                    else
+                    {
+                        store.attribute_frequency_update(a, 1);
+                    }
+                    
                 }
             }
             
@@ -2005,15 +2013,12 @@ void smem_install_memory(IdentifierImpl state, long /* smem_lti_id */ lti_id, Id
         boolean lti_created_here = false;
         if(lti == null)
         {
-            db.lti_letter_num.setLong(1, lti_id);
-            try(ResultSet rs = db.lti_letter_num.executeQuery())
+            final LtiRow row = store.lti_letter_num(lti_id);
+            if(row == null)
             {
-                if(!rs.next())
-                {
-                    throw new IllegalStateException("Expected non-empty result");
-                }
-                lti = smem_lti_soar_make(lti_id, (char) rs.getLong(0 + 1), rs.getLong(1 + 1), result_header.level);
+                throw new IllegalStateException("Expected non-empty result");
             }
+            lti = smem_lti_soar_make(lti_id, (char) row.soar_letter, row.soar_number, result_header.level);
             lti_created_here = true;
         }
         
@@ -2040,36 +2045,32 @@ void smem_install_memory(IdentifierImpl state, long /* smem_lti_id */ lti_id, Id
         {
             // get direct children: attr_type, attr_hash, value_type,
             // value_hash, value_letter, value_num, value_lti
-            db.web_expand.setLong(1, lti_id);
-            try(ResultSet rs = db.web_expand.executeQuery())
+            for(AugmentationRow rs : store.web_expand(lti_id))
             {
-                while(rs.next())
+                // make the identifier symbol irrespective of value type
+                final SymbolImpl attr_sym = smem_reverse_hash(rs.attr_type, rs.attr_hash);
+                
+                // identifier vs. constant
+                final SymbolImpl value_sym;
+                final long lti_rs = rs.value_lti;
+                if(lti_rs != SMEM_AUGMENTATIONS_NULL)
                 {
-                    // make the identifier symbol irrespective of value type
-                    final SymbolImpl attr_sym = smem_reverse_hash(rs.getInt(0 + 1), rs.getLong(1 + 1));
-                    
-                    // identifier vs. constant
-                    final SymbolImpl value_sym;
-                    final long lti_rs = rs.getLong(6 + 1);
-                    if(lti_rs != SMEM_AUGMENTATIONS_NULL)
-                    {
-                        value_sym = smem_lti_soar_make(lti_rs, (char) rs.getLong(4 + 1), rs.getLong(5 + 1), lti.level);
-                    }
-                    else
-                    {
-                        value_sym = smem_reverse_hash(rs.getInt(2 + 1), rs.getLong(3 + 1));
-                    }
+                    value_sym = smem_lti_soar_make(lti_rs, (char) rs.value_letter, rs.value_num, lti.level);
+                }
+                else
+                {
+                    value_sym = smem_reverse_hash(rs.value_type, rs.value_hash);
+                }
                     
-                    // add wme
-                    smem_buffer_add_wme(retrieval_wmes, lti, attr_sym, value_sym);
+                // add wme
+                smem_buffer_add_wme(retrieval_wmes, lti, attr_sym, value_sym);
                     
-                    // deal with ref counts - attribute/values are always
-                    // created in this function
-                    // (thus an extra ref count is set before adding a wme)
-                    // Not needed in JSoar
-                    // symbol_remove_ref( my_agent, attr_sym );
-                    // symbol_remove_ref( my_agent, value_sym );
-                }
+                // deal with ref counts - attribute/values are always
+                // created in this function
+                // (thus an extra ref count is set before adding a wme)
+                // Not needed in JSoar
+                // symbol_remove_ref( my_agent, attr_sym );
+                // symbol_remove_ref( my_agent, value_sym );
             }
             
         }
@@ -2085,32 +2086,27 @@ void smem_install_memory(IdentifierImpl state, long /* smem_lti_id */ lti_id, Id
     // ////////////////////////////////////////////////////////
     // ////////////////////////////////////////////////////////
     
-    PreparedStatement smem_setup_web_crawl(WeightedCueElement el) throws SQLException
+    ActivationCursor smem_setup_web_crawl(WeightedCueElement el) throws SQLException
     {
-        PreparedStatement q = null;
+        ActivationCursor q = null;
         
         // first, point to correct query and setup
         // query-specific parameters
         if(el.element_type == smem_cue_element_type.attr_t)
         {
             // attribute_s_id=?
-            q = db.web_attr_all;
+            q = store.web_attr_all(el.attr_hash);
         }
         else if(el.element_type == smem_cue_element_type.value_const_t)
         {
             // attribute_s_id=? AND value_constant_s_id=?
-            q = db.web_const_all;
-            q.setLong(2, el.value_hash);
+            q = store.web_const_all(el.attr_hash, el.value_hash);
         }
         else if(el.element_type == smem_cue_element_type.value_lti_t)
         {
-            q = db.web_lti_all;
-            q.setLong(2, el.value_lti);
+            q = store.web_lti_all(el.attr_hash, el.value_lti);
         }
         
-        // all require hash as first parameter
-        q.setLong(1, el.attr_hash);
-        
         return q;
     }
     
@@ -2128,7 +2124,7 @@ boolean _smem_process_cue_wme(WmeImpl w, boolean pos_cue, PriorityQueue<Weighted
         long /* smem_lti_id */ value_lti;
         smem_cue_element_type element_type = null;
         
-        PreparedStatement q = null;
+        Long weight = null;
         
         {
             // we only have to do the hard work if
@@ -2144,10 +2140,7 @@ boolean _smem_process_cue_wme(WmeImpl w, boolean pos_cue, PriorityQueue<Weighted
                     
                     if(value_hash != 0)
                     {
-                        q = db.wmes_constant_frequency_get;
-                        q.setLong(1, attr_hash);
-                        q.setLong(2, value_hash);
-                        
+                        weight = store.wmes_constant_frequency_get(attr_hash, value_hash);
                     }
                     else if(pos_cue)
                     {
@@ -2176,51 +2169,47 @@ else if(pos_cue)
                     
                     if(value_lti == 0)
                     {
-                        q = db.attribute_frequency_get;
-                        q.setLong(1, attr_hash);
+                        weight = store.attribute_frequency_get(attr_hash);
                         
                         element_type = smem_cue_element_type.attr_t;
                     }
                     else
                     {
-                        q = db.wmes_lti_frequency_get;
-                        q.setLong(1, attr_hash);
-                        q.setLong(2, value_lti);
+                        weight = store.wmes_lti_frequency_get(attr_hash, value_lti);
                         
                         element_type = smem_cue_element_type.value_lti_t;
                     }
+                    
                 }
                 
                 if(good_wme)
                 {
-                    try(ResultSet rs = q.executeQuery())
+                    if(weight != null)
                     {
-                        if(rs.next())
-                        {
-                            new_cue_element = new WeightedCueElement();
-                            
-                            new_cue_element.weight = rs.getLong(0 + 1);
-                            new_cue_element.attr_hash = attr_hash;
-                            new_cue_element.value_hash = value_hash;
-                            new_cue_element.value_lti = value_lti;
-                            new_cue_element.cue_element = w;
-                            
-                            new_cue_element.element_type = element_type;
-                            new_cue_element.pos_element = pos_cue;
-                            new_cue_element.mathElement = mathQuery;
-                            
-                            weighted_pq.add(new_cue_element);
-                            new_cue_element = null;
-                        }
-                        else
+                        new_cue_element = new WeightedCueElement();
+                        
+                        new_cue_element.weight = weight;
+                        new_cue_element.attr_hash = attr_hash;
+                        new_cue_element.value_hash = value_hash;
+                        new_cue_element.value_lti = value_lti;
+                        new_cue_element.cue_element = w;
+                        
+                        new_cue_element.element_type = element_type;
+                        new_cue_element.pos_element = pos_cue;
+                        new_cue_element.mathElement = mathQuery;
+                        
+                        weighted_pq.add(new_cue_element);
+                        new_cue_element = null;
+                    }
+                    else
+                    {
+                        if(pos_cue)
                         {
-                            if(pos_cue)
-                            {
-                                good_wme = false;
-                            }
+                            good_wme = false;
                         }
                     }
                 }
+                
             }
             else
             {
@@ -2477,9 +2466,6 @@ else if(cueType.value.asInteger() != null)
                 }
             }
             
-            PreparedStatement q = null;
-            PreparedStatement q2 = null;
-            
             long /* smem_lti_id */ cand;
             boolean good_cand;
             
@@ -2490,8 +2476,6 @@ else if(cueType.value.asInteger() != null)
                 // confirmation walk
                 if(params.base_update.get() == BaseUpdateChoices.naive)
                 {
-                    q = smem_setup_web_crawl(cand_set);
-                    
                     // queue up distinct lti's to update
                     // - set because queries could contain wilds
                     // - not in loop because the effects of activation may
@@ -2499,11 +2483,11 @@ else if(cueType.value.asInteger() != null)
                     // alter the resultset of the query (isolation???)
                     Set<Long /* smem_lti_id */> to_update = new LinkedHashSet<>();
                     
-                    try(ResultSet rs = q.executeQuery())
+                    try(ActivationCursor rs = smem_setup_web_crawl(cand_set))
                     {
                         while(rs.next())
                         {
-                            to_update.add(rs.getLong(0 + 1));
+                            to_update.add(rs.lti_id());
                         }
                     }
                     
@@ -2515,11 +2499,10 @@ else if(cueType.value.asInteger() != null)
             }
             
             // setup first query, which is sorted on activation already
-            q = smem_setup_web_crawl(cand_set);
             lastCue = new BasicWeightedCue(cand_set.cue_element, cand_set.weight);
             
             // this becomes the minimal set to walk (till match or fail)
-            try(ResultSet qrs = q.executeQuery())
+            try(ActivationCursor qrs = smem_setup_web_crawl(cand_set))
             {
                 if(qrs.next())
                 {
@@ -2528,17 +2511,9 @@ else if(cueType.value.asInteger() != null)
                     boolean use_db = false;
                     boolean has_feature = false;
                     
-                    while(more_rows && (qrs.getDouble(1 + 1) == SMEM_ACT_MAX))
+                    while(more_rows && (qrs.activation_value() == SMEM_ACT_MAX))
                     {
-                        db.act_lti_get.setLong(1, qrs.getLong(0 + 1));
-                        try(ResultSet actLtiGetRs = db.act_lti_get.executeQuery())
-                        {
-                            if(!actLtiGetRs.next())
-                            {
-                                throw new IllegalStateException("act_lti_get did not return a result");
-                            }
-                            plentiful_parents.add(new ActivatedLti(actLtiGetRs.getLong(0 + 1), qrs.getLong(0 + 1)));
-                        }
+                        plentiful_parents.add(new ActivatedLti(store.act_lti_get(qrs.lti_id()), qrs.lti_id()));
                         // my_agent->smem_stmts->act_lti_get->reinitialize();
                         
                         more_rows = qrs.next(); // ( q->execute() ==
@@ -2561,12 +2536,12 @@ else if(plentiful_parents.isEmpty())
                             }
                             else
                             {
-                                use_db = (qrs.getDouble(1 + 1) > plentiful_parents.peek().first);
+                                use_db = (qrs.activation_value() > plentiful_parents.peek().first);
                             }
                             
                             if(use_db)
                             {
-                                cand = qrs.getLong(0 + 1);
+                                cand = qrs.lti_id();
                                 more_rows = qrs.next(); // ( q->execute() ==
                                                         // soar_module::row );
                             }
@@ -2593,75 +2568,65 @@ else if(plentiful_parents.isEmpty())
                                     continue;
                                 }
                                 
+                                // all require own id, attribute; each result
+                                // is the value_constant_s_id of a match
+                                long[] q2rs = null;
                                 if(next_element.element_type == smem_cue_element_type.attr_t)
                                 {
                                     // parent=? AND attribute_s_id=?
-                                    q2 = db.web_attr_child;
+                                    q2rs = store.web_attr_child(cand, next_element.attr_hash);
                                 }
                                 else if(next_element.element_type == smem_cue_element_type.value_const_t)
                                 {
                                     // parent=? AND attribute_s_id=? AND
                                     // value_constant_s_id=?
-                                    q2 = db.web_const_child;
-                                    q2.setLong(3, next_element.value_hash);
+                                    q2rs = store.web_const_child(cand, next_element.attr_hash, next_element.value_hash);
                                 }
                                 else if(next_element.element_type == smem_cue_element_type.value_lti_t)
                                 {
                                     // parent=? AND attribute_s_id=? AND
                                     // value_lti_id=?
-                                    q2 = db.web_lti_child;
-                                    q2.setLong(3, next_element.value_lti);
+                                    q2rs = store.web_lti_child(cand, next_element.attr_hash, next_element.value_lti);
                                 }
                                 
-                                // all require own id, attribute
-                                q2.setLong(1, cand);
-                                q2.setLong(2, next_element.attr_hash);
-                                
-                                try(ResultSet q2rs = q2.executeQuery())
+                                has_feature = q2rs.length != 0;
+                                boolean mathQueryMet = false;
+                                if(next_element.mathElement != null && has_feature)
                                 {
-                                    has_feature = q2rs.next();
-                                    boolean mathQueryMet = false;
-                                    if(next_element.mathElement != null && has_feature)
+                                    for(long valueHash : q2rs)
                                     {
-                                        do
+                                        final Integer valueType = store.hash_rev_type(valueHash);
+                                        // If this hash wasn't in the table, there isn't a value to work with
+                                        if(valueType == null)
+                                        {
+                                            good_cand = false;
+                                        }
+                                        else
                                         {
-                                            long valueHash = q2rs.getLong(2);
-                                            db.hash_rev_type.setLong(1, valueHash);
-                                            try(ResultSet rs = db.hash_rev_type.executeQuery())
+                                            // Not using the built in hash reverse because I want the raw type, not the symbol
+                                            switch(valueType)
                                             {
-                                                // If this hash wasn't in the table, there isn't a value to work with
-                                                if(!rs.next())
-                                                {
-                                                    good_cand = false;
-                                                }
-                                                else
-                                                {
-                                                    int valueType = rs.getInt(1);
-                                                    // Not using the built in hash reverse because I want the raw type, not the symbol
-                                                    switch(valueType)
-                                                    {
-                                                    case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
-                                                        mathQueryMet |= next_element.mathElement.valueIsAcceptable(smem_reverse_hash_float(valueHash));
-                                                        break;
-                                                    case Symbols.INT_CONSTANT_SYMBOL_TYPE:
-                                                        mathQueryMet |= next_element.mathElement.valueIsAcceptable(smem_reverse_hash_int(valueHash));
-                                                        break;
-                                                    }
-                                                }
+                                            case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
+                                                mathQueryMet |= next_element.mathElement.valueIsAcceptable(smem_reverse_hash_float(valueHash));
+                                                break;
+                                            case Symbols.INT_CONSTANT_SYMBOL_TYPE:
+                                                mathQueryMet |= next_element.mathElement.valueIsAcceptable(smem_reverse_hash_int(valueHash));
+                                                break;
                                             }
-                                            // Go through the all the attribute records, to find the best match for a math query
-                                        } while(q2rs.next());
-                                        good_cand = mathQueryMet;
-                                    }
-                                    else
-                                    {
-                                        good_cand = ((next_element.pos_element) ? (has_feature) : (!has_feature));
-                                    }
-                                    if(!good_cand)
-                                    {
-                                        break;
+                                        }
+                                        // Go through the all the attribute records, to find the best match for a math query
                                     }
+                                    good_cand = mathQueryMet;
+                                }
+                                else
+                                {
+                                    good_cand = ((next_element.pos_element) ? (has_feature) : (!has_feature));
+                                }
+                                if(!good_cand)
+                                {
+                                    break;
                                 }
+                                
                             }
                             
                             if(good_cand)
@@ -2809,6 +2774,7 @@ void smem_switch_to_memory_db(String buf) throws SoarException, SQLException, IO
         params.path.set(SemanticMemoryDatabase.IN_MEMORY_PATH);
         db.getConnection().close();
         db = null;
+        store = null;
         smem_init_db(false);
     }
     
@@ -2924,6 +2890,16 @@ void smem_init_db(boolean readonly /* = false */) throws SoarException, SQLExcep
             db.prepare();
         }
         
+        // from here on, the store is the only way to the smem tables
+        if(params.backend.get() == BackendChoices.heap)
+        {
+            store = InMemorySemanticMemoryStore.load(db);
+        }
+        else
+        {
+            store = new JdbcSemanticMemoryStore(db);
+        }
+        
         if(tabula_rasa)
         {
             db.beginExecuteUpdate( /* soar_module::op_reinit */);
@@ -3119,6 +3095,13 @@ public void smem_close() throws SoarException
             {
                 _smem_close_vars();
                 
+                // an in-memory database is discarded below, so there is
+                // nothing to save to
+                if(!SemanticMemoryDatabase.IN_MEMORY_PATH.equals(params.path.get()))
+                {
+                    smem_flush_store();
+                }
+                
                 // if lazy, commit
                 if(params.lazy_commit.get() == LazyCommitChoices.on)
                 {
@@ -3128,6 +3111,7 @@ public void smem_close() throws SoarException
                 // close the database
                 db.getConnection().close();
                 db = null;
+                store = null;
             }
             catch(SQLException e)
             {
@@ -3474,7 +3458,23 @@ boolean smem_parse_chunks(String chunkString) throws SoarException
     {
         try
         {
-            return smem_parse_chunks_safe(chunkString);
+            // parsing chunks requires an open semantic database
+            smem_attach();
+            
+            // the whole parse is one batch
+            smem_begin_batch();
+            final boolean result;
+            try
+            {
+                result = smem_parse_chunks_safe(chunkString);
+            }
+            catch(Throwable e)
+            {
+                smem_abort_batch(e);
+                throw e;
+            }
+            smem_end_batch();
+            return result;
         }
         catch(IOException | SQLException e)
         {
@@ -3901,28 +3901,26 @@ else if(path == path_type.cmd_store)
                         // my_agent->smem_timers->storage->start();
                         // //////////////////////////////////////////////////////////////////////////
                         
-                        // start transaction (if not lazy)
-                        if(params.lazy_commit.get() == LazyCommitChoices.off)
-                        {
-                            db.beginExecuteUpdate( /* soar_module::op_reinit */);
-                        }
-                        
-                        for(IdentifierImpl sym_p : store)
+                        smem_begin_batch();
+                        try
                         {
-                            smem_soar_store(sym_p, ((mirroring_on) ? (smem_storage_type.store_recursive) : (smem_storage_type.store_level)));
-                            
-                            // status: success
-                            smem_buffer_add_wme(meta_wmes, smem_info.smem_result_header, predefinedSyms.smem_sym_success, sym_p);
-                            
-                            // add one to the store stat
-                            stats.stores.set(stats.stores.get() + 1);
+                            for(IdentifierImpl sym_p : store)
+                            {
+                                smem_soar_store(sym_p, ((mirroring_on) ? (smem_storage_type.store_recursive) : (smem_storage_type.store_level)));
+                                
+                                // status: success
+                                smem_buffer_add_wme(meta_wmes, smem_info.smem_result_header, predefinedSyms.smem_sym_success, sym_p);
+                                
+                                // add one to the store stat
+                                stats.stores.set(stats.stores.get() + 1);
+                            }
                         }
-                        
-                        // commit transaction (if not lazy)
-                        if(params.lazy_commit.get() == LazyCommitChoices.off)
+                        catch(Throwable e)
                         {
-                            db.commitExecuteUpdate( /* soar_module::op_reinit */);
+                            smem_abort_batch(e);
+                            throw e;
                         }
+                        smem_end_batch();
                         
                         // //////////////////////////////////////////////////////////////////////////
                         // TODO SMEM Timers:
@@ -3969,29 +3967,27 @@ else if(path == path_type.cmd_store)
             // TODO SMEM Timers: my_agent->smem_timers->storage->start();
             // //////////////////////////////////////////////////////////////////////////
             
-            // start transaction (if not lazy)
-            if(params.lazy_commit.get() == LazyCommitChoices.off)
-            {
-                db.beginExecuteUpdate();
-            }
-            
-            for(SymbolImpl it : smem_changed_ids)
+            smem_begin_batch();
+            try
             {
-                // require that the lti has at least one augmentation
-                if(it.asIdentifier().slots != null)
+                for(SymbolImpl it : smem_changed_ids)
                 {
-                    smem_soar_store(it.asIdentifier(), smem_storage_type.store_recursive);
-                    
-                    // add one to the mirrors stat
-                    stats.mirrors.set(stats.mirrors.get() + 1);
+                    // require that the lti has at least one augmentation
+                    if(it.asIdentifier().slots != null)
+                    {
+                        smem_soar_store(it.asIdentifier(), smem_storage_type.store_recursive);
+                        
+                        // add one to the mirrors stat
+                        stats.mirrors.set(stats.mirrors.get() + 1);
+                    }
                 }
             }
-            
-            // commit transaction (if not lazy)
-            if(params.lazy_commit.get() == LazyCommitChoices.off)
+            catch(Throwable e)
             {
-                db.commitExecuteUpdate();
+                smem_abort_batch(e);
+                throw e;
             }
+            smem_end_batch();
             
             smem_changed_ids.clear();
             
@@ -4046,6 +4042,7 @@ boolean smem_backup_db(String file_name, ByRef<String> err) throws SQLException
         if(db != null)
         {
             _smem_close_vars();
+            smem_flush_store();
             
             return db.backupDb(file_name);
         }
@@ -4102,31 +4099,28 @@ private void smem_visualize_store_safe(PrintWriter return_val) throws SoarExcept
         {
             // id, soar_letter, number
             {
-                try(ResultSet q = db.vis_lti.executeQuery())
+                for(LtiRow q : store.vis_lti())
                 {
-                    while(q.next())
+                    final long lti_id = q.lti_id;
+                    final char lti_letter = (char) q.soar_letter;
+                    final long lti_number = q.soar_number;
+                    
+                    final String lti_name = String.format("%c%d", lti_letter, lti_number);
+                    lti_names.put(lti_id, lti_name);
+                    
+                    return_val.append(lti_name);
+                    return_val.append(" [ label=\"");
+                    return_val.append(lti_name);
+                    return_val.append("\\n[");
+                    
+                    Double temp_double = q.activation_value;
+                    if(temp_double >= 0)
                     {
-                        final long lti_id = q.getLong(0 + 1);
-                        final char lti_letter = (char) q.getLong(1 + 1);
-                        final long lti_number = q.getLong(2 + 1);
-                        
-                        final String lti_name = String.format("%c%d", lti_letter, lti_number);
-                        lti_names.put(lti_id, lti_name);
-                        
-                        return_val.append(lti_name);
-                        return_val.append(" [ label=\"");
-                        return_val.append(lti_name);
-                        return_val.append("\\n[");
-                        
-                        Double temp_double = q.getDouble(3 + 1);
-                        if(temp_double >= 0)
-                        {
-                            return_val.append("+");
-                        }
-                        return_val.append(temp_double.toString());
-                        
-                        return_val.append("]\" ];\n");
+                        return_val.append("+");
                     }
+                    return_val.append(temp_double.toString());
+                        
+                    return_val.append("]\" ];\n");
                 }
             }
             
@@ -4146,81 +4140,78 @@ private void smem_visualize_store_safe(PrintWriter return_val) throws SoarExcept
                     
                     {
                         // lti_id, attr_type, attr_hash, val_type, val_hash
-                        try(ResultSet q = db.vis_value_const.executeQuery())
+                        for(AugmentationRow q : store.vis_value_const())
                         {
-                            while(q.next())
+                            final long lti_id = q.lti_id;
+                            my_terminals = lti_terminals.get(lti_id);
+                            if(my_terminals == null)
+                            {
+                                lti_terminals.put(lti_id, my_terminals = new ArrayList<String>());
+                            }
+                            
+                            final String lti_name = lti_names.get(lti_id); // TODO
+                                                                           // is
+                                                                           // this
+                                                                           // safe?
+                            
+                            // parent prefix
+                            return_val.append(lti_name);
+                            return_val.append("_");
+                            
+                            // terminal count
+                            final int terminal_num = my_terminals.size();
+                            return_val.append(Integer.toString(terminal_num));
+                            
+                            // prepare for value
+                            return_val.append(" [ label = \"");
+                            
+                            // output value
                             {
-                                final long lti_id = q.getLong(0 + 1);
-                                my_terminals = lti_terminals.get(lti_id);
-                                if(my_terminals == null)
+                                switch(q.value_type)
                                 {
-                                    lti_terminals.put(lti_id, my_terminals = new ArrayList<String>());
-                                }
-                                
-                                final String lti_name = lti_names.get(lti_id); // TODO
-                                                                               // is
-                                                                               // this
-                                                                               // safe?
-                                
-                                // parent prefix
-                                return_val.append(lti_name);
-                                return_val.append("_");
+                                case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
+                                    return_val.append(smem_reverse_hash_str(q.value_hash));
+                                    break;
                                 
-                                // terminal count
-                                final int terminal_num = my_terminals.size();
-                                return_val.append(Integer.toString(terminal_num));
+                                case Symbols.INT_CONSTANT_SYMBOL_TYPE:
+                                    return_val.append(Integer.toString(smem_reverse_hash_int(q.value_hash)));
+                                    break;
                                 
-                                // prepare for value
-                                return_val.append(" [ label = \"");
+                                case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
+                                    return_val.append(Double.toString(smem_reverse_hash_float(q.value_hash)));
+                                    break;
                                 
-                                // output value
-                                {
-                                    switch((int) q.getLong(3 + 1))
-                                    {
-                                    case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
-                                        return_val.append(smem_reverse_hash_str(q.getLong(4 + 1)));
-                                        break;
-                                    
-                                    case Symbols.INT_CONSTANT_SYMBOL_TYPE:
-                                        return_val.append(Integer.toString(smem_reverse_hash_int(q.getLong(4 + 1))));
-                                        break;
-                                    
-                                    case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
-                                        return_val.append(Double.toString(smem_reverse_hash_float(q.getLong(4 + 1))));
-                                        break;
-                                    
-                                    default:
-                                        // print nothing
-                                        break;
-                                    }
+                                default:
+                                    // print nothing
+                                    break;
                                 }
+                            }
                                 
-                                // store terminal (attribute for edge label)
+                            // store terminal (attribute for edge label)
+                            {
+                                switch(q.attr_type)
                                 {
-                                    switch((int) q.getLong(1 + 1))
-                                    {
-                                    case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
-                                        my_terminals.add(smem_reverse_hash_str(q.getLong(2 + 1)));
-                                        break;
-                                    
-                                    case Symbols.INT_CONSTANT_SYMBOL_TYPE:
-                                        my_terminals.add(Integer.toString(smem_reverse_hash_int(q.getLong(2 + 1))));
-                                        break;
-                                    
-                                    case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
-                                        my_terminals.add(Double.toString(smem_reverse_hash_float(q.getLong(2 + 1))));
-                                        break;
-                                    
-                                    default:
-                                        my_terminals.add(""); // temp_str.clear();
-                                        break;
-                                    }
-                                }
+                                case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
+                                    my_terminals.add(smem_reverse_hash_str(q.attr_hash));
+                                    break;
+                                
+                                case Symbols.INT_CONSTANT_SYMBOL_TYPE:
+                                    my_terminals.add(Integer.toString(smem_reverse_hash_int(q.attr_hash)));
+                                    break;
+                                
+                                case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
+                                    my_terminals.add(Double.toString(smem_reverse_hash_float(q.attr_hash)));
+                                    break;
                                 
-                                // footer
-                                return_val.append("\" ];");
-                                return_val.append("\n");
+                                default:
+                                    my_terminals.add(""); // temp_str.clear();
+                                    break;
+                                }
                             }
+                                
+                            // footer
+                            return_val.append("\" ];");
+                            return_val.append("\n");
                         }
                     }
                     
@@ -4260,54 +4251,51 @@ private void smem_visualize_store_safe(PrintWriter return_val) throws SoarExcept
                 {
                     // lti_id, attr_type, attr_hash, value_lti_id
                     {
-                        try(ResultSet q = db.vis_value_lti.executeQuery())
+                        for(AugmentationRow q : store.vis_value_lti())
                         {
-                            while(q.next())
+                            // source
+                            long lti_id = q.lti_id;
+                            String lti_name = lti_names.get(lti_id); // TODO
+                                                                     // SMEM
+                                                                     // is
+                                                                     // this
+                                                                     // safe?
+                            return_val.append(lti_name);
+                            return_val.append(" -> ");
+                            
+                            // destination
+                            lti_id = q.value_lti;
+                            lti_name = lti_names.get(lti_id); // TODO SMEM
+                                                              // is this
+                                                              // safe?
+                            return_val.append(lti_name);
+                            return_val.append(" [ label =\"");
+                            
+                            // output attribute
                             {
-                                // source
-                                long lti_id = q.getLong(0 + 1);
-                                String lti_name = lti_names.get(lti_id); // TODO
-                                                                         // SMEM
-                                                                         // is
-                                                                         // this
-                                                                         // safe?
-                                return_val.append(lti_name);
-                                return_val.append(" -> ");
+                                switch(q.attr_type)
+                                {
+                                case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
+                                    return_val.append(smem_reverse_hash_str(q.attr_hash));
+                                    break;
                                 
-                                // destination
-                                lti_id = q.getLong(3 + 1);
-                                lti_name = lti_names.get(lti_id); // TODO SMEM
-                                                                  // is this
-                                                                  // safe?
-                                return_val.append(lti_name);
-                                return_val.append(" [ label =\"");
+                                case Symbols.INT_CONSTANT_SYMBOL_TYPE:
+                                    return_val.append(Integer.toString(smem_reverse_hash_int(q.attr_hash)));
+                                    break;
                                 
-                                // output attribute
-                                {
-                                    switch((int) q.getLong(1 + 1))
-                                    {
-                                    case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
-                                        return_val.append(smem_reverse_hash_str(q.getLong(2 + 1)));
-                                        break;
-                                    
-                                    case Symbols.INT_CONSTANT_SYMBOL_TYPE:
-                                        return_val.append(Integer.toString(smem_reverse_hash_int(q.getLong(2 + 1))));
-                                        break;
+                                case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
+                                    return_val.append(Double.toString(smem_reverse_hash_float(q.attr_hash)));
+                                    break;
                                     
-                                    case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
-                                        return_val.append(Double.toString(smem_reverse_hash_float(q.getLong(2 + 1))));
-                                        break;
-                                    
-                                    default:
-                                        // print nothing
-                                        break;
-                                    }
+                                default:
+                                    // print nothing
+                                    break;
                                 }
-                                
-                                // footer
-                                return_val.append("\" ];");
-                                return_val.append("\n");
                             }
+                                    
+                            // footer
+                            return_val.append("\" ];");
+                            return_val.append("\n");
                         }
                     }
                 }
@@ -4363,13 +4351,10 @@ private void smem_visualize_lti_safe(long /* smem_lti_id */ lti_id, int depth, P
             // fake former linkage
             {
                 // get just this lti
-                db.lti_letter_num.setLong(1, lti_id);
+                final LtiRow lti_q = store.lti_letter_num(lti_id);
                 
-                try(ResultSet lti_q = db.lti_letter_num.executeQuery())
-                {
-                    // soar_letter
-                    new_lti.lti_name = String.format("%c%d", (char) lti_q.getLong(0 + 1), lti_q.getLong(1 + 1));
-                }
+                // soar_letter
+                new_lti.lti_name = String.format("%c%d", (char) lti_q.soar_letter, lti_q.soar_number);
             }
             
             bfs.add(new_lti);
@@ -4386,146 +4371,141 @@ private void smem_visualize_lti_safe(long /* smem_lti_id */ lti_id, int depth, P
             
             // get direct children: attr_type, attr_hash, value_type,
             // value_hash, value_letter, value_num, value_lti
-            db.web_expand.setLong(1, parent_lti.lti_id);
-            
-            try(ResultSet expand_q = db.web_expand.executeQuery())
+            for(AugmentationRow expand_q : store.web_expand(parent_lti.lti_id))
             {
-                while(expand_q.next())
+                // identifier vs. constant
+                final long check_lti_id = expand_q.value_lti;
+                if(check_lti_id != SMEM_AUGMENTATIONS_NULL)
                 {
-                    // identifier vs. constant
-                    final long check_lti_id = expand_q.getLong(6 + 1);
-                    if(check_lti_id != SMEM_AUGMENTATIONS_NULL)
+                    final smem_vis_lti new_lti = new smem_vis_lti();
+                    new_lti.lti_id = check_lti_id;
+                    new_lti.level = (parent_lti.level + 1);
+            
+                    // add node
+                    {
+                        // soar_letter
+                        new_lti.lti_name = String.format("%c%d", (char) expand_q.value_letter, expand_q.value_num);
+                    }
+                        
+                    // add linkage
                     {
-                        final smem_vis_lti new_lti = new smem_vis_lti();
-                        new_lti.lti_id = check_lti_id;
-                        new_lti.level = (parent_lti.level + 1);
+                        // output linkage
+                        return_val2.append(parent_lti.lti_name);
+                        return_val2.append(" -> ");
+                        return_val2.append(new_lti.lti_name);
+                        return_val2.append(" [ label = \"");
                         
-                        // add node
+                        // get attribute
+                        switch(expand_q.attr_type)
                         {
-                            // soar_letter
-                            new_lti.lti_name = String.format("%c%d", (char) expand_q.getLong(4 + 1), expand_q.getLong(5 + 1));
+                        case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
+                            return_val2.append(smem_reverse_hash_str(expand_q.attr_hash));
+                            break;
+                        
+                        case Symbols.INT_CONSTANT_SYMBOL_TYPE:
+                            return_val2.append(Integer.toString(smem_reverse_hash_int(expand_q.attr_hash)));
+                            break;
+                        
+                        case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
+                            return_val2.append(Double.toString(smem_reverse_hash_float(expand_q.attr_hash)));
+                            break;
+                        
+                        default:
+                            // print nothing
+                            break;
                         }
                         
-                        // add linkage
+                        return_val2.append("\" ];");
+                        return_val2.append("\n");
+                    }
+                    
+                    // prevent looping
+                    {
+                        // prevent looping
+                        if(!close_list.containsKey(new_lti.lti_id))
                         {
-                            // output linkage
-                            return_val2.append(parent_lti.lti_name);
-                            return_val2.append(" -> ");
-                            return_val2.append(new_lti.lti_name);
-                            return_val2.append(" [ label = \"");
+                            close_list.put(new_lti.lti_id, new_lti);
                             
-                            // get attribute
-                            switch((int) expand_q.getLong(0 + 1))
+                            if((depth == 0) || (new_lti.level < depth))
                             {
-                            case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
-                                return_val2.append(smem_reverse_hash_str(expand_q.getLong(1 + 1)));
-                                break;
-                            
-                            case Symbols.INT_CONSTANT_SYMBOL_TYPE:
-                                return_val2.append(Integer.toString(smem_reverse_hash_int(expand_q.getLong(1 + 1))));
-                                break;
-                            
-                            case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
-                                return_val2.append(Double.toString(smem_reverse_hash_float(expand_q.getLong(1 + 1))));
-                                break;
-                            
-                            default:
-                                // print nothing
-                                break;
+                                bfs.add(new_lti);
                             }
-                            
-                            return_val2.append("\" ];");
-                            return_val2.append("\n");
                         }
-                        
-                        // prevent looping
+                        else
                         {
-                            // prevent looping
-                            if(!close_list.containsKey(new_lti.lti_id))
-                            {
-                                close_list.put(new_lti.lti_id, new_lti);
-                                
-                                if((depth == 0) || (new_lti.level < depth))
-                                {
-                                    bfs.add(new_lti);
-                                }
-                            }
-                            else
-                            {
-                                // delete new_lti;
-                            }
+                            // delete new_lti;
                         }
                     }
-                    else
+                }
+                else
+                {
+                    // get node name
+                    final String node_name = String.format("%s_%d", parent_lti.lti_name, child_counter);
+                    // add value node
                     {
-                        // get node name
-                        final String node_name = String.format("%s_%d", parent_lti.lti_name, child_counter);
-                        // add value node
-                        {
-                            // output node
-                            return_val2.append("node [ shape = plaintext ];");
-                            return_val2.append("\n");
-                            return_val2.append(node_name);
-                            return_val2.append(" [ label=\"");
-                            
-                            // get value
-                            switch((int) expand_q.getLong(2 + 1))
-                            {
-                            case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
-                                return_val2.append(smem_reverse_hash_str(expand_q.getLong(3 + 1)));
-                                break;
+                        // output node
+                        return_val2.append("node [ shape = plaintext ];");
+                        return_val2.append("\n");
+                        return_val2.append(node_name);
+                        return_val2.append(" [ label=\"");
                             
-                            case Symbols.INT_CONSTANT_SYMBOL_TYPE:
-                                return_val2.append(Integer.toString(smem_reverse_hash_int(expand_q.getLong(3 + 1))));
-                                break;
+                        // get value
+                        switch(expand_q.value_type)
+                        {
+                        case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
+                            return_val2.append(smem_reverse_hash_str(expand_q.value_hash));
+                            break;
                             
-                            case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
-                                return_val2.append(Double.toString(smem_reverse_hash_float(expand_q.getLong(3 + 1))));
-                                break;
+                        case Symbols.INT_CONSTANT_SYMBOL_TYPE:
+                            return_val2.append(Integer.toString(smem_reverse_hash_int(expand_q.value_hash)));
+                            break;
                             
-                            default:
-                                // print nothing
-                                break;
-                            }
+                        case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
+                            return_val2.append(Double.toString(smem_reverse_hash_float(expand_q.value_hash)));
+                            break;
                             
-                            return_val2.append("\" ];");
-                            return_val2.append("\n");
+                        default:
+                            // print nothing
+                            break;
                         }
                         
-                        // add linkage
+                        return_val2.append("\" ];");
+                        return_val2.append("\n");
+                    }
+                    
+                    // add linkage
+                    {
+                        // output linkage
+                        return_val2.append(parent_lti.lti_name);
+                        return_val2.append(" -> ");
+                        return_val2.append(node_name);
+                        return_val2.append(" [ label = \"");
+                        
+                        // get attribute
+                        switch(expand_q.attr_type)
                         {
-                            // output linkage
-                            return_val2.append(parent_lti.lti_name);
-                            return_val2.append(" -> ");
-                            return_val2.append(node_name);
-                            return_val2.append(" [ label = \"");
-                            
-                            // get attribute
-                            switch((int) expand_q.getLong(0 + 1))
-                            {
-                            case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
-                                return_val.append(smem_reverse_hash_str(expand_q.getLong(1 + 1)));
-                                break;
-                            
-                            case Symbols.INT_CONSTANT_SYMBOL_TYPE:
-                                return_val.append(Integer.toString(smem_reverse_hash_int(expand_q.getLong(1 + 1))));
-                                break;
-                            
-                            case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
-                                return_val.append(Double.toString(smem_reverse_hash_float(expand_q.getLong(1 + 1))));
-                                break;
+                        case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
+                            return_val.append(smem_reverse_hash_str(expand_q.attr_hash));
+                            break;
+                                
+                        case Symbols.INT_CONSTANT_SYMBOL_TYPE:
+                            return_val.append(Integer.toString(smem_reverse_hash_int(expand_q.attr_hash)));
+                            break;
                             
-                            default:
-                                // print nothing
-                                break;
-                            }
+                        case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
+                            return_val.append(Double.toString(smem_reverse_hash_float(expand_q.attr_hash)));
+                            break;
                             
-                            return_val2.append("\" ];");
-                            return_val2.append("\n");
+                        default:
+                            // print nothing
+                            break;
                         }
                         
-                        child_counter++;
+                        return_val2.append("\" ];");
+                        return_val2.append("\n");
                     }
+                            
+                    child_counter++;
                 }
             }
         }
@@ -4536,8 +4516,6 @@ private void smem_visualize_lti_safe(long /* smem_lti_id */ lti_id, int depth, P
         
         // handle lti nodes at once
         {
-            PreparedStatement act_q = db.vis_lti_act;
-            
             return_val.append("node [ shape = doublecircle ];");
             return_val.append("\n");
             
@@ -4548,21 +4526,18 @@ private void smem_visualize_lti_safe(long /* smem_lti_id */ lti_id, int depth, P
                 return_val.append(e.getValue().lti_name);
                 return_val.append("\\n[");
                 
-                act_q.setLong(1, e.getKey());
-                
-                try(ResultSet rs = act_q.executeQuery())
+                final LtiRow rs = store.lti_letter_num(e.getKey());
+                if(rs != null)
                 {
-                    if(rs.next())
+                    Double temp_double = rs.activation_value;
+                    if(temp_double >= 0)
                     {
-                        Double temp_double = rs.getDouble(0 + 1);
-                        if(temp_double >= 0)
-                        {
-                            return_val.append("+");
-                        }
-                        return_val.append(temp_double.toString());
+                        return_val.append("+");
                     }
+                    return_val.append(temp_double.toString());
                 }
                 
+                
                 return_val.append("]\"");
                 return_val.append(" ];");
                 return_val.append("\n");
@@ -4582,82 +4557,75 @@ private void smem_visualize_lti_safe(long /* smem_lti_id */ lti_id, int depth, P
         
         Map<String, List<String>> augmentations = new LinkedHashMap<>();
         
-        PreparedStatement expand_q = db.web_expand;
-        
         return_val.append("(@");
         return_val.append(lti_letter);
         return_val.append(lti_number);
         
-        expand_q.setLong(1, lti_id);
-        
-        try(ResultSet rs = expand_q.executeQuery())
+        for(AugmentationRow rs : store.web_expand(lti_id))
         {
-            while(rs.next())
+            switch(rs.attr_type)
+            {
+            case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
+                temp_str = smem_reverse_hash_str(rs.attr_hash);
+                break;
+            case Symbols.INT_CONSTANT_SYMBOL_TYPE:
+                temp_str = String.valueOf(smem_reverse_hash_int(rs.attr_hash));
+                break;
+            case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
+                temp_str = String.valueOf(smem_reverse_hash_float(rs.attr_hash));
+                break;
+            default:
+                temp_str = null;
+                break;
+            }
+        
+            // identifier vs. constant
+            if(rs.value_lti != SMEM_AUGMENTATIONS_NULL)
+            {
+                temp_str2 = new StringBuilder("@");
+                
+                // soar letter
+                temp_str2.append((char) rs.value_letter);
+                
+                // number
+                temp_str2.append(rs.value_num);
+                
+                // add to next
+                next.add(rs.value_lti);
+            }
+            else
             {
-                switch(rs.getInt(0 + 1))
+                switch(rs.value_type)
                 {
                 case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
-                    temp_str = smem_reverse_hash_str(rs.getLong(1 + 1));
+                    temp_str2 = new StringBuilder(smem_reverse_hash_str(rs.value_hash));
+                    temp_str2.insert(0, "|");
+                    temp_str2.append("|");
                     break;
                 case Symbols.INT_CONSTANT_SYMBOL_TYPE:
-                    temp_str = String.valueOf(smem_reverse_hash_int(rs.getLong(1 + 1)));
+                    temp_str2 = new StringBuilder(String.valueOf(smem_reverse_hash_int(rs.value_hash)));
                     break;
                 case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
-                    temp_str = String.valueOf(smem_reverse_hash_float(rs.getLong(1 + 1)));
+                    temp_str2 = new StringBuilder(String.valueOf(smem_reverse_hash_float(rs.value_hash)));
                     break;
+                
                 default:
-                    temp_str = null;
+                    temp_str2 = null;
                     break;
                 }
+            }
                 
-                // identifier vs. constant
-                if(rs.getLong(6 + 1) != SMEM_AUGMENTATIONS_NULL)
-                {
-                    temp_str2 = new StringBuilder("@");
-                    
-                    // soar letter
-                    temp_str2.append((char) rs.getInt(4 + 1));
-                    
-                    // number
-                    temp_str2.append(rs.getLong(5 + 1));
-                    
-                    // add to next
-                    next.add(rs.getLong(6 + 1));
-                }
-                else
-                {
-                    switch(rs.getInt(2 + 1))
-                    {
-                    case Symbols.SYM_CONSTANT_SYMBOL_TYPE:
-                        temp_str2 = new StringBuilder(smem_reverse_hash_str(rs.getLong(3 + 1)));
-                        temp_str2.insert(0, "|");
-                        temp_str2.append("|");
-                        break;
-                    case Symbols.INT_CONSTANT_SYMBOL_TYPE:
-                        temp_str2 = new StringBuilder(String.valueOf(smem_reverse_hash_int(rs.getLong(3 + 1))));
-                        break;
-                    case Symbols.FLOAT_CONSTANT_SYMBOL_TYPE:
-                        temp_str2 = new StringBuilder(String.valueOf(smem_reverse_hash_float(rs.getLong(3 + 1))));
-                        break;
-                    
-                    default:
-                        temp_str2 = null;
-                        break;
-                    }
-                }
-                
-                if(!augmentations.containsKey(temp_str))
-                {
-                    augmentations.put(temp_str, new ArrayList<String>());
-                }
-                if(temp_str2 != null)
-                {
-                    augmentations.get(temp_str).add(temp_str2.toString());
-                }
-                else
-                {
-                    augmentations.get(temp_str).add(temp_str);
-                }
+            if(!augmentations.containsKey(temp_str))
+            {
+                augmentations.put(temp_str, new ArrayList<String>());
+            }
+            if(temp_str2 != null)
+            {
+                augmentations.get(temp_str).add(temp_str2.toString());
+            }
+            else
+            {
+                augmentations.get(temp_str).add(temp_str);
             }
         }
         
@@ -4695,13 +4663,11 @@ public void smem_print_store(StringBuilder return_val) throws SoarException
         smem_attach();
         
         // id, soar_letter, number
-        PreparedStatement q = db.vis_lti;
-        
-        try(ResultSet rs = q.executeQuery())
+        try
         {
-            while(rs.next())
+            for(LtiRow rs : store.vis_lti())
             {
-                _smem_print_lti(rs.getLong(0 + 1), (char) rs.getInt(1 + 1), rs.getLong(2 + 1), rs.getDouble(3 + 1), return_val);
+                _smem_print_lti(rs.lti_id, (char) rs.soar_letter, rs.soar_number, rs.activation_value, return_val);
             }
         }
         catch(SQLException e)
@@ -4775,9 +4741,6 @@ public void smem_print_lti(long /* smem_lti_id */ lti_id, int depth, StringBuild
         
         Set<Long /* smem_lti_id */> next = new LinkedHashSet<>();
         
-        PreparedStatement lti_q = db.lti_letter_num;
-        PreparedStatement act_q = db.vis_lti_act;
-        
         int i;
         
         // vizualizing the store requires an open semantic database
@@ -4800,28 +4763,24 @@ public void smem_print_lti(long /* smem_lti_id */ lti_id, int depth, StringBuild
             // get lti info
             try
             {
-                lti_q.setLong(1, c.getLTIid());
-                act_q.setLong(1, c.getLTIid());
+                final LtiRow ltiRS = store.lti_letter_num(c.getLTIid());
+                next = _smem_print_lti(c.getLTIid(), (char) ltiRS.soar_letter, ltiRS.soar_number, ltiRS.activation_value, return_val);
                 
-                try(ResultSet ltiRS = lti_q.executeQuery(); ResultSet actRS = act_q.executeQuery())
+                // done with lookup
+                
+                // consider further depth
+                if(c.getDepth() < depth)
                 {
-                    next = _smem_print_lti(c.getLTIid(), (char) ltiRS.getLong(0 + 1), ltiRS.getLong(1 + 1), actRS.getDouble(0 + 1), return_val);
-                    
-                    // done with lookup
-                    
-                    // consider further depth
-                    if(c.getDepth() < depth)
+                    for(Long next_it : next)
                     {
-                        for(Long next_it : next)
+                        boolean successfullyInserted = visited.add(next_it);
+                        if(successfullyInserted)
                         {
-                            boolean successfullyInserted = visited.add(next_it);
-                            if(successfullyInserted)
-                            {
-                                to_visit.add(new SmemLTIidDepthPair(next_it, c.getDepth() + 1));
-                            }
+                            to_visit.add(new SmemLTIidDepthPair(next_it, c.getDepth() + 1));
                         }
                     }
                 }
+                
             }
             catch(SQLException e)
             {
@@ -4831,19 +4790,24 @@ public void smem_print_lti(long /* smem_lti_id */ lti_id, int depth, StringBuild
     }
     
     /**
-     * If db is open and in lazy-commit mode, do a commit. This will force all
-     * data to the database. Otherwise, this method is a no-op.
+     * If db is open, write anything held only by the store to it and, in
+     * lazy-commit mode, do a commit. This will force all data to the
+     * database. Otherwise, this method is a no-op.
      */
     void commit() throws SoarException
     {
-        // if lazy, commit
-        if(db != null && params.lazy_commit.get() == LazyCommitChoices.on)
+        if(db != null)
         {
-            // Commit and then start next lazy-commit transaction
             try
             {
-                db.commitExecuteUpdate( /* soar_module::op_reinit */);
-                db.beginExecuteUpdate( /* soar_module::op_reinit */);
+                smem_flush_store();
+                
+                // if lazy, commit and then start next lazy-commit transaction
+                if(params.lazy_commit.get() == LazyCommitChoices.on)
+                {
+                    db.commitExecuteUpdate( /* soar_module::op_reinit */);
+                    db.beginExecuteUpdate( /* soar_module::op_reinit */);
+                }
             }
             catch(SQLException e)
             {
@@ -4853,6 +4817,25 @@ void commit() throws SoarException
         
     }
     
+    /**
+     * Write anything held only by the store to the database. Outside of
+     * lazy-commit mode this is its own transaction.
+     */
+    private void smem_flush_store() throws SQLException
+    {
+        if(params.lazy_commit.get() == LazyCommitChoices.on)
+        {
+            store.flush();
+        }
+        else
+        {
+            db.beginExecuteUpdate( /* soar_module::op_reinit */);
+            store.flush();
+            db.commitExecuteUpdate( /* soar_module::op_reinit */);
+        }
+    }
+    
+    
     @Override
     public boolean isMirroringEnabled()
     {
@@ -132,6 +132,34 @@ public static ActivationChoices getEnum(String value)
         on, off
     }
     
+    /**
+     * Where the semantic store lives while the database is open. With
+     * {@code heap}, the store is loaded from the database when it is opened
+     * and only written back on commit, backup and close.
+     */
+    enum BackendChoices
+    {
+        database, heap;
+        
+        /**
+         * System property that selects the default backend for new agents
+         */
+        static final String PROPERTY = "jsoar.smem.backend";
+        
+        static BackendChoices getDefault()
+        {
+            final String value = System.getProperty(PROPERTY);
+            for(BackendChoices choice : values())
+            {
+                if(choice.name().equals(value))
+                {
+                    return choice;
+                }
+            }
+            return database;
+        }
+    }
+    
     private static final String PREFIX = "smem.params.";
     
     /**
@@ -240,6 +268,9 @@ public SetWrapperLong toSetWrapper(String value)
     static final PropertyKey<AppendDatabaseChoices> APPEND_DB = key("append-database", AppendDatabaseChoices.class).defaultValue(AppendDatabaseChoices.on).build();
     final EnumPropertyProvider<AppendDatabaseChoices> append_db = new EnumPropertyProvider<>(APPEND_DB);
     
+    static final PropertyKey<BackendChoices> BACKEND = key("backend", BackendChoices.class).defaultValue(BackendChoices.getDefault()).build();
+    final EnumPropertyProvider<BackendChoices> backend = new EnumPropertyProvider<>(BACKEND);
+    
     static final PropertyKey<PageChoices> PAGE_SIZE = key("page-size", PageChoices.class).defaultValue(PageChoices.page_8k).build();
     final EnumPropertyProvider<PageChoices> page_size = new EnumPropertyProvider<>(PAGE_SIZE);
     
@@ -286,6 +317,7 @@ public DefaultSemanticMemoryParams(PropertyManager properties)
         
         properties.setProvider(LAZY_COMMIT, lazy_commit);
         properties.setProvider(APPEND_DB, append_db);
+        properties.setProvider(BACKEND, backend);
         
         properties.setProvider(PAGE_SIZE, page_size);
         properties.setProvider(CACHE_SIZE, cache_size);
@@ -0,0 +1,1122 @@
+package org.jsoar.kernel.smem;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jsoar.util.LongHashMap;
+
+/**
+ * {@link SemanticMemoryStore} that keeps the whole semantic store in the
+ * Java heap. The tables are read from a {@link SemanticMemoryDatabase} by
+ * {@link #load(SemanticMemoryDatabase)} and only written back to it by
+ * {@link #flush()}, so the database remains the on-disk and import/export
+ * format.
+ * 
+ * <p>The indexes in {@code structures.sql} are replaced by sorted
+ * collections with the same keys, so that rows come back in the order that
+ * SQLite walks those indexes.
+ */
+class InMemorySemanticMemoryStore implements SemanticMemoryStore
+{
+    private static final long[] NO_CHILDREN = new long[0];
+    private static final int HISTORY_LENGTH = 10;
+    
+    /**
+     * Order of the augmentations_attr_cycle and augmentations_attr_val_lti_cycle
+     * indexes as the web_*_all queries walk them, i.e. backwards, so ties come
+     * out newest row first.
+     */
+    private static final Comparator<Augmentation> BY_ACTIVATION = (a, b) ->
+    {
+        final int c = Double.compare(b.activation_value, a.activation_value);
+        return c != 0 ? c : Long.compare(b.rowid, a.rowid);
+    };
+    
+    /**
+     * Order of the augmentations_parent_attr_val_lti index within one lti
+     */
+    private static final Comparator<Augmentation> BY_ATTRIBUTE_AND_VALUE = (a, b) ->
+    {
+        int c = Long.compare(a.attribute_s_id, b.attribute_s_id);
+        if(c == 0)
+        {
+            c = Long.compare(a.value_constant_s_id, b.value_constant_s_id);
+        }
+        if(c == 0)
+        {
+            c = Long.compare(a.value_lti_id, b.value_lti_id);
+        }
+        return c != 0 ? c : Long.compare(a.rowid, b.rowid);
+    };
+    
+    private static class Lti
+    {
+        final long lti_id;
+        final long soar_letter;
+        final long soar_number;
+        long total_augmentations;
+        double activation_value;
+        long activations_total;
+        long activations_last;
+        long activations_first;
+        
+        Lti(long lti_id, long soar_letter, long soar_number)
+        {
+            this.lti_id = lti_id;
+            this.soar_letter = soar_letter;
+            this.soar_number = soar_number;
+        }
+    }
+    
+    private static class Augmentation
+    {
+        final long rowid;
+        final long lti_id;
+        final long attribute_s_id;
+        final long value_constant_s_id;
+        final long value_lti_id;
+        double activation_value;
+        
+        Augmentation(long rowid, long lti_id, long attribute_s_id, long value_constant_s_id, long value_lti_id, double activation_value)
+        {
+            this.rowid = rowid;
+            this.lti_id = lti_id;
+            this.attribute_s_id = attribute_s_id;
+            this.value_constant_s_id = value_constant_s_id;
+            this.value_lti_id = value_lti_id;
+            this.activation_value = activation_value;
+        }
+    }
+    
+    private final SemanticMemoryDatabase db;
+    
+    // persistent_variables
+    private final LongHashMap<Long> variables = new LongHashMap<>();
+    
+    // symbols_*
+    private final LongHashMap<Integer> symbolTypes = new LongHashMap<>();
+    private final LongHashMap<Long> integers = new LongHashMap<>();
+    private final LongHashMap<Double> floats = new LongHashMap<>();
+    private final LongHashMap<String> strings = new LongHashMap<>();
+    private final Map<Long, Long> integerIds = new HashMap<>();
+    private final Map<Double, Long> floatIds = new HashMap<>();
+    private final Map<String, Long> stringIds = new HashMap<>();
+    private long maxSymbolId;
+    
+    // lti and its lti_letter_num and lti_t indexes
+    private final LongHashMap<Lti> ltis = new LongHashMap<>();
+    private final LongHashMap<LongHashMap<Lti>> ltisByName = new LongHashMap<>();
+    private final LongHashMap<List<Lti>> ltisByLastActivation = new LongHashMap<>();
+    private long maxLtiId;
+    
+    // activation_history
+    private final LongHashMap<long[]> history = new LongHashMap<>();
+    
+    // augmentations and its indexes
+    private final LongHashMap<List<Augmentation>> augmentationsByLti = new LongHashMap<>();
+    private final LongHashMap<TreeSet<Augmentation>> augmentationsByAttribute = new LongHashMap<>();
+    private final LongHashMap<LongHashMap<TreeSet<Augmentation>>> augmentationsByConstant = new LongHashMap<>();
+    private final LongHashMap<LongHashMap<TreeSet<Augmentation>>> augmentationsByLtiValue = new LongHashMap<>();
+    private long maxAugmentationRowid;
+    
+    // *_frequency
+    private final LongHashMap<long[]> attributeFrequency = new LongHashMap<>();
+    private final LongHashMap<LongHashMap<long[]>> constantFrequency = new LongHashMap<>();
+    private final LongHashMap<LongHashMap<long[]>> ltiFrequency = new LongHashMap<>();
+    
+    private InMemorySemanticMemoryStore(SemanticMemoryDatabase db)
+    {
+        this.db = db;
+    }
+    
+    /**
+     * Create a store holding the current contents of a database.
+     * 
+     * @param db the database, with its statements prepared
+     * @return a new store that flushes to the same database
+     * @throws SQLException
+     */
+    static InMemorySemanticMemoryStore load(SemanticMemoryDatabase db) throws SQLException
+    {
+        final InMemorySemanticMemoryStore store = new InMemorySemanticMemoryStore(db);
+        try(ResultSet rs = db.load_persistent_variables.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.variables.put(rs.getLong(0 + 1), rs.getLong(1 + 1));
+            }
+        }
+        try(ResultSet rs = db.load_symbols_type.executeQuery())
+        {
+            while(rs.next())
+            {
+                final long s_id = rs.getLong(0 + 1);
+                store.symbolTypes.put(s_id, rs.getInt(1 + 1));
+                store.maxSymbolId = Math.max(store.maxSymbolId, s_id);
+            }
+        }
+        try(ResultSet rs = db.load_symbols_integer.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.hash_add_int(rs.getLong(0 + 1), rs.getLong(1 + 1));
+            }
+        }
+        try(ResultSet rs = db.load_symbols_float.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.hash_add_float(rs.getLong(0 + 1), rs.getDouble(1 + 1));
+            }
+        }
+        try(ResultSet rs = db.load_symbols_string.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.hash_add_str(rs.getLong(0 + 1), rs.getString(1 + 1));
+            }
+        }
+        try(ResultSet rs = db.load_lti.executeQuery())
+        {
+            while(rs.next())
+            {
+                final Lti lti = store.addLti(rs.getLong(0 + 1), rs.getLong(1 + 1), rs.getLong(2 + 1));
+                lti.total_augmentations = rs.getLong(3 + 1);
+                lti.activation_value = rs.getDouble(4 + 1);
+                store.lti_access_set(lti.lti_id, rs.getLong(5 + 1), rs.getLong(6 + 1), rs.getLong(7 + 1));
+            }
+        }
+        try(ResultSet rs = db.load_activation_history.executeQuery())
+        {
+            while(rs.next())
+            {
+                final long[] times = new long[HISTORY_LENGTH];
+                for(int i = 0; i < HISTORY_LENGTH; ++i)
+                {
+                    times[i] = rs.getLong(i + 2);
+                }
+                store.history.put(rs.getLong(0 + 1), times);
+            }
+        }
+        try(ResultSet rs = db.load_augmentations.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.web_add(rs.getLong(0 + 1), rs.getLong(1 + 1), rs.getLong(2 + 1), rs.getLong(3 + 1), rs.getDouble(4 + 1));
+            }
+        }
+        try(ResultSet rs = db.load_attribute_frequency.executeQuery())
+        {
+            while(rs.next())
+            {
+                store.attributeFrequency.put(rs.getLong(0 + 1), new long[] { rs.getLong(1 + 1) });
+            }
+        }
+        try(ResultSet rs = db.load_wmes_constant_frequency.executeQuery())
+        {
+            while(rs.next())
+            {
+                inner(store.constantFrequency, rs.getLong(0 + 1)).put(rs.getLong(1 + 1), new long[] { rs.getLong(2 + 1) });
+            }
+        }
+        try(ResultSet rs = db.load_wmes_lti_frequency.executeQuery())
+        {
+            while(rs.next())
+            {
+                inner(store.ltiFrequency, rs.getLong(0 + 1)).put(rs.getLong(1 + 1), new long[] { rs.getLong(2 + 1) });
+            }
+        }
+        return store;
+    }
+    
+    @Override
+    public Long var_get(long variable_id)
+    {
+        return variables.get(variable_id);
+    }
+    
+    @Override
+    public void var_set(long variable_id, long variable_value)
+    {
+        if(variables.containsKey(variable_id))
+        {
+            variables.put(variable_id, variable_value);
+        }
+    }
+    
+    @Override
+    public void var_create(long variable_id, long variable_value)
+    {
+        variables.put(variable_id, variable_value);
+    }
+    
+    @Override
+    public long hash_get_int(long value)
+    {
+        final Long s_id = integerIds.get(value);
+        return s_id != null ? s_id : 0;
+    }
+    
+    @Override
+    public long hash_get_float(double value)
+    {
+        final Long s_id = floatIds.get(floatKey(value));
+        return s_id != null ? s_id : 0;
+    }
+    
+    @Override
+    public long hash_get_str(String value)
+    {
+        final Long s_id = stringIds.get(value);
+        return s_id != null ? s_id : 0;
+    }
+    
+    @Override
+    public long hash_add_type(int symbol_type)
+    {
+        final long s_id = ++maxSymbolId;
+        symbolTypes.put(s_id, symbol_type);
+        return s_id;
+    }
+    
+    @Override
+    public void hash_add_int(long s_id, long value) throws SQLException
+    {
+        if(integers.containsKey(s_id) || integerIds.containsKey(value))
+        {
+            throw new SQLException("UNIQUE constraint failed: symbols_integer");
+        }
+        integers.put(s_id, value);
+        integerIds.put(value, s_id);
+    }
+    
+    @Override
+    public void hash_add_float(long s_id, double value) throws SQLException
+    {
+        if(floats.containsKey(s_id) || floatIds.containsKey(floatKey(value)))
+        {
+            throw new SQLException("UNIQUE constraint failed: symbols_float");
+        }
+        floats.put(s_id, value);
+        floatIds.put(floatKey(value), s_id);
+    }
+    
+    @Override
+    public void hash_add_str(long s_id, String value) throws SQLException
+    {
+        if(strings.containsKey(s_id) || stringIds.containsKey(value))
+        {
+            throw new SQLException("UNIQUE constraint failed: symbols_string");
+        }
+        strings.put(s_id, value);
+        stringIds.put(value, s_id);
+    }
+    
+    @Override
+    public long hash_rev_int(long s_id)
+    {
+        final Long value = integers.get(s_id);
+        if(value == null)
+        {
+            throw new IllegalStateException("Expected non-empty result");
+        }
+        return value;
+    }
+    
+    @Override
+    public double hash_rev_float(long s_id)
+    {
+        final Double value = floats.get(s_id);
+        if(value == null)
+        {
+            throw new IllegalStateException("Expected non-empty result");
+        }
+        return value;
+    }
+    
+    @Override
+    public String hash_rev_str(long s_id)
+    {
+        final String value = strings.get(s_id);
+        if(value == null)
+        {
+            throw new IllegalStateException("Expected non-empty result");
+        }
+        return value;
+    }
+    
+    @Override
+    public Integer hash_rev_type(long s_id)
+    {
+        return symbolTypes.get(s_id);
+    }
+    
+    @Override
+    public long lti_add(long soar_letter, long soar_number) throws SQLException
+    {
+        if(findLti(soar_letter, soar_number) != null)
+        {
+            throw new SQLException("UNIQUE constraint failed: lti.soar_letter, lti.soar_number");
+        }
+        return addLti(maxLtiId + 1, soar_letter, soar_number).lti_id;
+    }
+    
+    @Override
+    public long lti_get(long soar_letter, long soar_number)
+    {
+        final Lti lti = findLti(soar_letter, soar_number);
+        return lti != null ? lti.lti_id : 0;
+    }
+    
+    @Override
+    public LtiRow lti_letter_num(long lti_id)
+    {
+        final Lti lti = ltis.get(lti_id);
+        return lti != null ? new LtiRow(lti.lti_id, lti.soar_letter, lti.soar_number, lti.activation_value) : null;
+    }
+    
+    @Override
+    public Map<Long, Long> lti_max()
+    {
+        final Map<Long, Long> result = new TreeMap<>();
+        for(Lti lti : ltis.values())
+        {
+            result.merge(lti.soar_letter, lti.soar_number, Math::max);
+        }
+        return result;
+    }
+    
+    @Override
+    public LtiAccess lti_access_get(long lti_id)
+    {
+        final Lti lti = ltis.get(lti_id);
+        return lti != null ? new LtiAccess(lti.activations_total, lti.activations_last, lti.activations_first) : null;
+    }
+    
+    @Override
+    public void lti_access_set(long lti_id, long activations_total, long activations_last, long activations_first)
+    {
+        final Lti lti = ltis.get(lti_id);
+        if(lti == null)
+        {
+            return;
+        }
+        if(lti.activations_last != activations_last)
+        {
+            removeFromLastActivation(lti);
+            lti.activations_last = activations_last;
+            addToLastActivation(lti);
+        }
+        lti.activations_total = activations_total;
+        lti.activations_first = activations_first;
+    }
+    
+    @Override
+    public List<Long> lti_get_t(long activations_last)
+    {
+        final List<Lti> matches = ltisByLastActivation.get(activations_last);
+        if(matches == null)
+        {
+            return Collections.emptyList();
+        }
+        final List<Long> result = new ArrayList<>(matches.size());
+        for(Lti lti : matches)
+        {
+            result.add(lti.lti_id);
+        }
+        Collections.sort(result);
+        return result;
+    }
+    
+    @Override
+    public void web_add(long lti_id, long attribute_s_id, long value_constant_s_id, long value_lti_id, double activation_value)
+    {
+        final Augmentation aug = new Augmentation(++maxAugmentationRowid, lti_id, attribute_s_id, value_constant_s_id, value_lti_id, activation_value);
+        
+        List<Augmentation> augs = augmentationsByLti.get(lti_id);
+        if(augs == null)
+        {
+            augs = new ArrayList<>();
+            augmentationsByLti.put(lti_id, augs);
+        }
+        // The new row has the highest rowid, so it's never found
+        augs.add(-Collections.binarySearch(augs, aug, BY_ATTRIBUTE_AND_VALUE) - 1, aug);
+        
+        index(aug);
+    }
+    
+    @Override
+    public void web_truncate(long lti_id)
+    {
+        final List<Augmentation> augs = augmentationsByLti.remove(lti_id);
+        if(augs != null)
+        {
+            for(Augmentation aug : augs)
+            {
+                unindex(aug);
+            }
+        }
+    }
+    
+    @Override
+    public List<AugmentationRow> web_expand(long lti_id)
+    {
+        final List<Augmentation> augs = augmentationsByLti.get(lti_id);
+        if(augs == null)
+        {
+            return Collections.emptyList();
+        }
+        final List<AugmentationRow> result = new ArrayList<>(augs.size());
+        for(Augmentation aug : augs)
+        {
+            // inner join on the attribute type, outer joins on the value type
+            // and value lti
+            final Integer attr_type = symbolTypes.get(aug.attribute_s_id);
+            if(attr_type == null)
+            {
+                continue;
+            }
+            final Integer value_type = symbolTypes.get(aug.value_constant_s_id);
+            final Lti value = ltis.get(aug.value_lti_id);
+            result.add(new AugmentationRow(lti_id, attr_type, aug.attribute_s_id, value_type != null ? value_type : 0, value_type != null ? aug.value_constant_s_id : 0,
+                    value != null ? value.soar_letter : 0, value != null ? value.soar_number : 0, aug.value_lti_id));
+        }
+        return result;
+    }
+    
+    @Override
+    public List<AugmentationRow> web_all(long lti_id)
+    {
+        final List<Augmentation> augs = augmentationsByLti.get(lti_id);
+        if(augs == null)
+        {
+            return Collections.emptyList();
+        }
+        final List<AugmentationRow> result = new ArrayList<>(augs.size());
+        for(Augmentation aug : augs)
+        {
+            result.add(new AugmentationRow(lti_id, 0, aug.attribute_s_id, 0, aug.value_constant_s_id, 0, 0, aug.value_lti_id));
+        }
+        return result;
+    }
+    
+    @Override
+    public ActivationCursor web_attr_all(long attribute_s_id)
+    {
+        return new IteratorCursor(augmentationsByAttribute.get(attribute_s_id));
+    }
+    
+    @Override
+    public ActivationCursor web_const_all(long attribute_s_id, long value_constant_s_id)
+    {
+        final LongHashMap<TreeSet<Augmentation>> byValue = augmentationsByConstant.get(attribute_s_id);
+        return new IteratorCursor(byValue != null ? byValue.get(value_constant_s_id) : null);
+    }
+    
+    @Override
+    public ActivationCursor web_lti_all(long attribute_s_id, long value_lti_id)
+    {
+        final LongHashMap<TreeSet<Augmentation>> byValue = augmentationsByLtiValue.get(attribute_s_id);
+        return new IteratorCursor(byValue != null ? byValue.get(value_lti_id) : null);
+    }
+    
+    @Override
+    public long[] web_attr_child(long lti_id, long attribute_s_id)
+    {
+        return children(lti_id, attribute_s_id, false, 0, false, 0);
+    }
+    
+    @Override
+    public long[] web_const_child(long lti_id, long attribute_s_id, long value_constant_s_id)
+    {
+        return children(lti_id, attribute_s_id, true, value_constant_s_id, false, 0);
+    }
+    
+    @Override
+    public long[] web_lti_child(long lti_id, long attribute_s_id, long value_lti_id)
+    {
+        return children(lti_id, attribute_s_id, true, 0, true, value_lti_id);
+    }
+    
+    @Override
+    public boolean attribute_frequency_check(long attribute_s_id)
+    {
+        return attributeFrequency.containsKey(attribute_s_id);
+    }
+    
+    @Override
+    public boolean wmes_constant_frequency_check(long attribute_s_id, long value_constant_s_id)
+    {
+        return frequency(constantFrequency, attribute_s_id, value_constant_s_id) != null;
+    }
+    
+    @Override
+    public boolean wmes_lti_frequency_check(long attribute_s_id, long value_lti_id)
+    {
+        return frequency(ltiFrequency, attribute_s_id, value_lti_id) != null;
+    }
+    
+    @Override
+    public void attribute_frequency_add(long attribute_s_id)
+    {
+        attributeFrequency.put(attribute_s_id, new long[] { 1 });
+    }
+    
+    @Override
+    public void wmes_constant_frequency_add(long attribute_s_id, long value_constant_s_id)
+    {
+        inner(constantFrequency, attribute_s_id).put(value_constant_s_id, new long[] { 1 });
+    }
+    
+    @Override
+    public void wmes_lti_frequency_add(long attribute_s_id, long value_lti_id)
+    {
+        inner(ltiFrequency, attribute_s_id).put(value_lti_id, new long[] { 1 });
+    }
+    
+    @Override
+    public void attribute_frequency_update(long attribute_s_id, long adjustment)
+    {
+        final long[] frequency = attributeFrequency.get(attribute_s_id);
+        if(frequency != null)
+        {
+            frequency[0] += adjustment;
+        }
+    }
+    
+    @Override
+    public void wmes_constant_frequency_update(long attribute_s_id, long value_constant_s_id, long adjustment)
+    {
+        final long[] frequency = frequency(constantFrequency, attribute_s_id, value_constant_s_id);
+        if(frequency != null)
+        {
+            frequency[0] += adjustment;
+        }
+    }
+    
+    @Override
+    public void wmes_lti_frequency_update(long attribute_s_id, long value_lti_id, long adjustment)
+    {
+        final long[] frequency = frequency(ltiFrequency, attribute_s_id, value_lti_id);
+        if(frequency != null)
+        {
+            frequency[0] += adjustment;
+        }
+    }
+    
+    @Override
+    public Long attribute_frequency_get(long attribute_s_id)
+    {
+        final long[] frequency = attributeFrequency.get(attribute_s_id);
+        return frequency != null ? frequency[0] : null;
+    }
+    
+    @Override
+    public Long wmes_constant_frequency_get(long attribute_s_id, long value_constant_s_id)
+    {
+        final long[] frequency = frequency(constantFrequency, attribute_s_id, value_constant_s_id);
+        return frequency != null ? frequency[0] : null;
+    }
+    
+    @Override
+    public Long wmes_lti_frequency_get(long attribute_s_id, long value_lti_id)
+    {
+        final long[] frequency = frequency(ltiFrequency, attribute_s_id, value_lti_id);
+        return frequency != null ? frequency[0] : null;
+    }
+    
+    @Override
+    public void act_set(long lti_id, double activation_value)
+    {
+        final List<Augmentation> augs = augmentationsByLti.get(lti_id);
+        if(augs == null)
+        {
+            return;
+        }
+        for(Augmentation aug : augs)
+        {
+            if(Double.compare(aug.activation_value, activation_value) != 0)
+            {
+                // the activation is part of the index keys, so re-index
+                unindex(aug);
+                aug.activation_value = activation_value;
+                index(aug);
+            }
+        }
+    }
+    
+    @Override
+    public long act_lti_child_ct_get(long lti_id) throws SQLException
+    {
+        return requireLti(lti_id).total_augmentations;
+    }
+    
+    @Override
+    public void act_lti_child_ct_set(long lti_id, long total_augmentations)
+    {
+        final Lti lti = ltis.get(lti_id);
+        if(lti != null)
+        {
+            lti.total_augmentations = total_augmentations;
+        }
+    }
+    
+    @Override
+    public void act_lti_set(long lti_id, double activation_value)
+    {
+        final Lti lti = ltis.get(lti_id);
+        if(lti != null)
+        {
+            lti.activation_value = activation_value;
+        }
+    }
+    
+    @Override
+    public double act_lti_get(long lti_id)
+    {
+        final Lti lti = ltis.get(lti_id);
+        if(lti == null)
+        {
+            throw new IllegalStateException("act_lti_get did not return a result");
+        }
+        return lti.activation_value;
+    }
+    
+    @Override
+    public long[] history_get(long lti_id)
+    {
+        final long[] times = history.get(lti_id);
+        return times != null ? times.clone() : null;
+    }
+    
+    @Override
+    public void history_push(long lti_id, long time)
+    {
+        final long[] times = history.get(lti_id);
+        if(times != null)
+        {
+            System.arraycopy(times, 0, times, 1, HISTORY_LENGTH - 1);
+            times[0] = time;
+        }
+    }
+    
+    @Override
+    public void history_add(long lti_id, long time) throws SQLException
+    {
+        if(history.containsKey(lti_id))
+        {
+            throw new SQLException("UNIQUE constraint failed: activation_history.lti_id");
+        }
+        final long[] times = new long[HISTORY_LENGTH];
+        times[0] = time;
+        history.put(lti_id, times);
+    }
+    
+    @Override
+    public List<LtiRow> vis_lti()
+    {
+        final List<Lti> sorted = new ArrayList<>(ltis.values());
+        sorted.sort(Comparator.<Lti> comparingLong(lti -> lti.soar_letter).thenComparingLong(lti -> lti.soar_number));
+        final List<LtiRow> result = new ArrayList<>(sorted.size());
+        for(Lti lti : sorted)
+        {
+            result.add(new LtiRow(lti.lti_id, lti.soar_letter, lti.soar_number, lti.activation_value));
+        }
+        return result;
+    }
+    
+    @Override
+    public List<AugmentationRow> vis_value_const()
+    {
+        final List<AugmentationRow> result = new ArrayList<>();
+        for(Augmentation aug : augmentationsInRowidOrder())
+        {
+            final Integer attr_type = symbolTypes.get(aug.attribute_s_id);
+            final Integer value_type = symbolTypes.get(aug.value_constant_s_id);
+            if(attr_type != null && value_type != null)
+            {
+                result.add(new AugmentationRow(aug.lti_id, attr_type, aug.attribute_s_id, value_type, aug.value_constant_s_id, 0, 0, 0));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public List<AugmentationRow> vis_value_lti()
+    {
+        final List<AugmentationRow> result = new ArrayList<>();
+        for(Augmentation aug : augmentationsInRowidOrder())
+        {
+            final Integer attr_type = symbolTypes.get(aug.attribute_s_id);
+            if(attr_type != null && aug.value_lti_id != 0)
+            {
+                result.add(new AugmentationRow(aug.lti_id, attr_type, aug.attribute_s_id, 0, 0, 0, 0, aug.value_lti_id));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public void beginBatch()
+    {
+        // Nothing to do. Updates are already just map operations.
+    }
+    
+    @Override
+    public void endBatch()
+    {
+        // Nothing to do. Updates are already just map operations.
+    }
+    
+    @Override
+    public void abortBatch()
+    {
+        // Nothing to do. Updates are already just map operations, and can't
+        // be taken back.
+    }
+    
+    /**
+     * Replace the contents of the smem tables with this store. Rows are
+     * written in batches, and augmentations in their original order so that
+     * a later {@link #load(SemanticMemoryDatabase)} gets the same rowid order.
+     */
+    @Override
+    public void flush() throws SQLException
+    {
+        db.clearSmemTables();
+        
+        for(long variable : sortedKeys(variables))
+        {
+            db.var_create.setLong(1, variable);
+            db.var_create.setLong(2, variables.get(variable));
+            db.var_create.addBatch();
+        }
+        db.var_create.executeBatch();
+        
+        for(long s : sortedKeys(symbolTypes))
+        {
+            db.save_symbols_type.setLong(1, s);
+            db.save_symbols_type.setInt(2, symbolTypes.get(s));
+            db.save_symbols_type.addBatch();
+        }
+        db.save_symbols_type.executeBatch();
+        for(long s : sortedKeys(integers))
+        {
+            db.hash_add_int.setLong(1, s);
+            db.hash_add_int.setLong(2, integers.get(s));
+            db.hash_add_int.addBatch();
+        }
+        db.hash_add_int.executeBatch();
+        for(long s : sortedKeys(floats))
+        {
+            db.hash_add_float.setLong(1, s);
+            db.hash_add_float.setDouble(2, floats.get(s));
+            db.hash_add_float.addBatch();
+        }
+        db.hash_add_float.executeBatch();
+        for(long s : sortedKeys(strings))
+        {
+            db.hash_add_str.setLong(1, s);
+            db.hash_add_str.setString(2, strings.get(s));
+            db.hash_add_str.addBatch();
+        }
+        db.hash_add_str.executeBatch();
+        
+        for(long id : sortedKeys(ltis))
+        {
+            final Lti lti = ltis.get(id);
+            db.save_lti.setLong(1, lti.lti_id);
+            db.save_lti.setLong(2, lti.soar_letter);
+            db.save_lti.setLong(3, lti.soar_number);
+            db.save_lti.setLong(4, lti.total_augmentations);
+            db.save_lti.setDouble(5, lti.activation_value);
+            db.save_lti.setLong(6, lti.activations_total);
+            db.save_lti.setLong(7, lti.activations_last);
+            db.save_lti.setLong(8, lti.activations_first);
+            db.save_lti.addBatch();
+        }
+        db.save_lti.executeBatch();
+        
+        for(long id : sortedKeys(history))
+        {
+            final long[] times = history.get(id);
+            db.save_activation_history.setLong(1, id);
+            for(int i = 0; i < HISTORY_LENGTH; ++i)
+            {
+                db.save_activation_history.setLong(i + 2, times[i]);
+            }
+            db.save_activation_history.addBatch();
+        }
+        db.save_activation_history.executeBatch();
+        
+        for(Augmentation aug : augmentationsInRowidOrder())
+        {
+            db.web_add.setLong(1, aug.lti_id);
+            db.web_add.setLong(2, aug.attribute_s_id);
+            db.web_add.setLong(3, aug.value_constant_s_id);
+            db.web_add.setLong(4, aug.value_lti_id);
+            db.web_add.setDouble(5, aug.activation_value);
+            db.web_add.addBatch();
+        }
+        db.web_add.executeBatch();
+        
+        for(long attr : sortedKeys(attributeFrequency))
+        {
+            db.save_attribute_frequency.setLong(1, attr);
+            db.save_attribute_frequency.setLong(2, attributeFrequency.get(attr)[0]);
+            db.save_attribute_frequency.addBatch();
+        }
+        db.save_attribute_frequency.executeBatch();
+        saveFrequencies(constantFrequency, db.save_wmes_constant_frequency);
+        saveFrequencies(ltiFrequency, db.save_wmes_lti_frequency);
+    }
+    
+    private Lti addLti(long lti_id, long soar_letter, long soar_number)
+    {
+        final Lti lti = new Lti(lti_id, soar_letter, soar_number);
+        ltis.put(lti_id, lti);
+        inner(ltisByName, soar_letter).put(soar_number, lti);
+        addToLastActivation(lti);
+        maxLtiId = Math.max(maxLtiId, lti_id);
+        return lti;
+    }
+    
+    private Lti findLti(long soar_letter, long soar_number)
+    {
+        final LongHashMap<Lti> byNumber = ltisByName.get(soar_letter);
+        return byNumber != null ? byNumber.get(soar_number) : null;
+    }
+    
+    private Lti requireLti(long lti_id) throws SQLException
+    {
+        final Lti lti = ltis.get(lti_id);
+        if(lti == null)
+        {
+            throw new SQLException("No lti with id " + lti_id);
+        }
+        return lti;
+    }
+    
+    private void addToLastActivation(Lti lti)
+    {
+        List<Lti> list = ltisByLastActivation.get(lti.activations_last);
+        if(list == null)
+        {
+            list = new ArrayList<>();
+            ltisByLastActivation.put(lti.activations_last, list);
+        }
+        list.add(lti);
+    }
+    
+    private void removeFromLastActivation(Lti lti)
+    {
+        final List<Lti> list = ltisByLastActivation.get(lti.activations_last);
+        list.remove(lti);
+        if(list.isEmpty())
+        {
+            ltisByLastActivation.remove(lti.activations_last);
+        }
+    }
+    
+    private void index(Augmentation aug)
+    {
+        set(augmentationsByAttribute, aug.attribute_s_id).add(aug);
+        if(aug.value_lti_id == 0)
+        {
+            set(inner(augmentationsByConstant, aug.attribute_s_id), aug.value_constant_s_id).add(aug);
+        }
+        if(aug.value_constant_s_id == 0)
+        {
+            set(inner(augmentationsByLtiValue, aug.attribute_s_id), aug.value_lti_id).add(aug);
+        }
+    }
+    
+    private void unindex(Augmentation aug)
+    {
+        remove(augmentationsByAttribute, aug.attribute_s_id, aug);
+        if(aug.value_lti_id == 0)
+        {
+            remove(augmentationsByConstant, aug.attribute_s_id, aug.value_constant_s_id, aug);
+        }
+        if(aug.value_constant_s_id == 0)
+        {
+            remove(augmentationsByLtiValue, aug.attribute_s_id, aug.value_lti_id, aug);
+        }
+    }
+    
+    private long[] children(long lti_id, long attribute_s_id, boolean matchConstant, long value_constant_s_id, boolean matchLti, long value_lti_id)
+    {
+        final List<Augmentation> augs = augmentationsByLti.get(lti_id);
+        if(augs == null)
+        {
+            return NO_CHILDREN;
+        }
+        
+        // binary search for the first augmentation with the attribute
+        int lo = 0;
+        int hi = augs.size();
+        while(lo < hi)
+        {
+            final int mid = (lo + hi) >>> 1;
+            if(augs.get(mid).attribute_s_id < attribute_s_id)
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        
+        long[] result = NO_CHILDREN;
+        int count = 0;
+        for(int i = lo; i < augs.size() && augs.get(i).attribute_s_id == attribute_s_id; ++i)
+        {
+            final Augmentation aug = augs.get(i);
+            if((matchConstant && aug.value_constant_s_id != value_constant_s_id) || (matchLti && aug.value_lti_id != value_lti_id))
+            {
+                continue;
+            }
+            if(count == result.length)
+            {
+                result = Arrays.copyOf(result, Math.max(4, count * 2));
+            }
+            result[count++] = aug.value_constant_s_id;
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+    
+    private List<Augmentation> augmentationsInRowidOrder()
+    {
+        final List<Augmentation> result = new ArrayList<>();
+        for(List<Augmentation> augs : augmentationsByLti.values())
+        {
+            result.addAll(augs);
+        }
+        result.sort(Comparator.comparingLong(aug -> aug.rowid));
+        return result;
+    }
+    
+    private void saveFrequencies(LongHashMap<LongHashMap<long[]>> frequencies, PreparedStatement save) throws SQLException
+    {
+        for(long attr : sortedKeys(frequencies))
+        {
+            final LongHashMap<long[]> byValue = frequencies.get(attr);
+            for(long value : sortedKeys(byValue))
+            {
+                save.setLong(1, attr);
+                save.setLong(2, value);
+                save.setLong(3, byValue.get(value)[0]);
+                save.addBatch();
+            }
+        }
+        save.executeBatch();
+    }
+    
+    private static Double floatKey(double value)
+    {
+        // SQLite compares REALs numerically, so 0.0 and -0.0 are the same value
+        return value == 0.0 ? 0.0 : value;
+    }
+    
+    private static long[] frequency(LongHashMap<LongHashMap<long[]>> frequencies, long attribute_s_id, long value)
+    {
+        final LongHashMap<long[]> byValue = frequencies.get(attribute_s_id);
+        return byValue != null ? byValue.get(value) : null;
+    }
+    
+    private static <V> LongHashMap<V> inner(LongHashMap<LongHashMap<V>> outer, long key)
+    {
+        LongHashMap<V> result = outer.get(key);
+        if(result == null)
+        {
+            result = new LongHashMap<>();
+            outer.put(key, result);
+        }
+        return result;
+    }
+    
+    private static TreeSet<Augmentation> set(LongHashMap<TreeSet<Augmentation>> sets, long key)
+    {
+        TreeSet<Augmentation> result = sets.get(key);
+        if(result == null)
+        {
+            result = new TreeSet<>(BY_ACTIVATION);
+            sets.put(key, result);
+        }
+        return result;
+    }
+    
+    private static void remove(LongHashMap<TreeSet<Augmentation>> sets, long key, Augmentation aug)
+    {
+        final TreeSet<Augmentation> set = sets.get(key);
+        set.remove(aug);
+        if(set.isEmpty())
+        {
+            sets.remove(key);
+        }
+    }
+    
+    private static void remove(LongHashMap<LongHashMap<TreeSet<Augmentation>>> sets, long key1, long key2, Augmentation aug)
+    {
+        final LongHashMap<TreeSet<Augmentation>> inner = sets.get(key1);
+        remove(inner, key2, aug);
+        if(inner.isEmpty())
+        {
+            sets.remove(key1);
+        }
+    }
+    
+    private static long[] sortedKeys(LongHashMap<?> map)
+    {
+        final long[] keys = map.keys();
+        Arrays.sort(keys);
+        return keys;
+    }
+    
+    private static class IteratorCursor implements ActivationCursor
+    {
+        private final Iterator<Augmentation> it;
+        private Augmentation current;
+        
+        IteratorCursor(TreeSet<Augmentation> rows)
+        {
+            this.it = rows != null ? rows.iterator() : Collections.<Augmentation> emptyIterator();
+        }
+        
+        @Override
+        public boolean next()
+        {
+            current = it.hasNext() ? it.next() : null;
+            return current != null;
+        }
+        
+        @Override
+        public long lti_id()
+        {
+            return current.lti_id;
+        }
+        
+        @Override
+        public double activation_value()
+        {
+            return current.activation_value;
+        }
+        
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,727 @@
+package org.jsoar.kernel.smem;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jsoar.util.JdbcTools;
+
+/**
+ * {@link SemanticMemoryStore} that executes the prepared statements of a
+ * {@link SemanticMemoryDatabase}. Every update goes straight to the
+ * database, except during a batch, when new augmentations are queued with
+ * {@link PreparedStatement#addBatch()} and sent with
+ * {@link PreparedStatement#executeBatch()} before anything that could see
+ * them.
+ */
+class JdbcSemanticMemoryStore implements SemanticMemoryStore
+{
+    private static final long[] NO_CHILDREN = new long[0];
+    
+    /**
+     * The most rows held back before they are sent anyway
+     */
+    private static final int MAX_BATCH = 4096;
+    
+    private final SemanticMemoryDatabase db;
+    
+    private boolean batching;
+    
+    /**
+     * Ltis with augmentations held back, and how many there are
+     */
+    private final Set<Long> pending_ltis = new HashSet<>();
+    private int pending_rows;
+    
+    JdbcSemanticMemoryStore(SemanticMemoryDatabase db)
+    {
+        this.db = db;
+    }
+    
+    @Override
+    public Long var_get(long variable_id) throws SQLException
+    {
+        db.var_get.setLong(1, variable_id);
+        try(ResultSet rs = db.var_get.executeQuery())
+        {
+            return rs.next() ? rs.getLong(0 + 1) : null;
+        }
+    }
+    
+    @Override
+    public void var_set(long variable_id, long variable_value) throws SQLException
+    {
+        db.var_set.setLong(1, variable_value);
+        db.var_set.setLong(2, variable_id);
+        db.var_set.execute();
+    }
+    
+    @Override
+    public void var_create(long variable_id, long variable_value) throws SQLException
+    {
+        db.var_create.setLong(1, variable_id);
+        db.var_create.setLong(2, variable_value);
+        db.var_create.execute();
+    }
+    
+    @Override
+    public long hash_get_int(long value) throws SQLException
+    {
+        db.hash_get_int.setLong(1, value);
+        return firstLong(db.hash_get_int);
+    }
+    
+    @Override
+    public long hash_get_float(double value) throws SQLException
+    {
+        db.hash_get_float.setDouble(1, value);
+        return firstLong(db.hash_get_float);
+    }
+    
+    @Override
+    public long hash_get_str(String value) throws SQLException
+    {
+        db.hash_get_str.setString(1, value);
+        return firstLong(db.hash_get_str);
+    }
+    
+    @Override
+    public long hash_add_type(int symbol_type) throws SQLException
+    {
+        db.hash_add_type.setInt(1, symbol_type);
+        return JdbcTools.insertAndGetRowId(db.hash_add_type);
+    }
+    
+    @Override
+    public void hash_add_int(long s_id, long value) throws SQLException
+    {
+        db.hash_add_int.setLong(1, s_id);
+        db.hash_add_int.setLong(2, value);
+        db.hash_add_int.executeUpdate(/* soar_module::op_reinit */);
+    }
+    
+    @Override
+    public void hash_add_float(long s_id, double value) throws SQLException
+    {
+        db.hash_add_float.setLong(1, s_id);
+        db.hash_add_float.setDouble(2, value);
+        db.hash_add_float.executeUpdate(/* soar_module::op_reinit */);
+    }
+    
+    @Override
+    public void hash_add_str(long s_id, String value) throws SQLException
+    {
+        db.hash_add_str.setLong(1, s_id);
+        db.hash_add_str.setString(2, value);
+        db.hash_add_str.executeUpdate(/* soar_module::op_reinit */);
+    }
+    
+    @Override
+    public long hash_rev_int(long s_id) throws SQLException
+    {
+        db.hash_rev_int.setLong(1, s_id);
+        try(ResultSet rs = db.hash_rev_int.executeQuery())
+        {
+            if(!rs.next())
+            {
+                throw new IllegalStateException("Expected non-empty result");
+            }
+            return rs.getLong(0 + 1);
+        }
+    }
+    
+    @Override
+    public double hash_rev_float(long s_id) throws SQLException
+    {
+        db.hash_rev_float.setLong(1, s_id);
+        try(ResultSet rs = db.hash_rev_float.executeQuery())
+        {
+            rs.next();
+            return rs.getDouble(0 + 1);
+        }
+    }
+    
+    @Override
+    public String hash_rev_str(long s_id) throws SQLException
+    {
+        db.hash_rev_str.setLong(1, s_id);
+        try(ResultSet rs = db.hash_rev_str.executeQuery())
+        {
+            rs.next();
+            return rs.getString(0 + 1);
+        }
+    }
+    
+    @Override
+    public Integer hash_rev_type(long s_id) throws SQLException
+    {
+        db.hash_rev_type.setLong(1, s_id);
+        try(ResultSet rs = db.hash_rev_type.executeQuery())
+        {
+            return rs.next() ? rs.getInt(0 + 1) : null;
+        }
+    }
+    
+    @Override
+    public long lti_add(long soar_letter, long soar_number) throws SQLException
+    {
+        // soar_letter, number, total_augmentations, activation_value,
+        // activations_total, activations_last, activations_first
+        db.lti_add.setLong(1, soar_letter);
+        db.lti_add.setLong(2, soar_number);
+        db.lti_add.setLong(3, 0);
+        db.lti_add.setDouble(4, 0);
+        db.lti_add.setLong(5, 0);
+        db.lti_add.setLong(6, 0);
+        db.lti_add.setLong(7, 0);
+        
+        return JdbcTools.insertAndGetRowId(db.lti_add);
+    }
+    
+    @Override
+    public long lti_get(long soar_letter, long soar_number) throws SQLException
+    {
+        db.lti_get.setLong(1, soar_letter);
+        db.lti_get.setLong(2, soar_number);
+        return firstLong(db.lti_get);
+    }
+    
+    @Override
+    public LtiRow lti_letter_num(long lti_id) throws SQLException
+    {
+        db.lti_letter_num.setLong(1, lti_id);
+        try(ResultSet rs = db.lti_letter_num.executeQuery())
+        {
+            return rs.next() ? new LtiRow(lti_id, rs.getLong(0 + 1), rs.getLong(1 + 1), rs.getDouble(2 + 1)) : null;
+        }
+    }
+    
+    @Override
+    public Map<Long, Long> lti_max() throws SQLException
+    {
+        final Map<Long, Long> result = new LinkedHashMap<>();
+        try(ResultSet rs = db.lti_max.executeQuery())
+        {
+            while(rs.next())
+            {
+                // soar_letter, max
+                result.put(rs.getLong(0 + 1), rs.getLong(1 + 1));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public LtiAccess lti_access_get(long lti_id) throws SQLException
+    {
+        db.lti_access_get.setLong(1, lti_id);
+        try(ResultSet rs = db.lti_access_get.executeQuery())
+        {
+            return rs.next() ? new LtiAccess(rs.getLong(0 + 1), rs.getLong(1 + 1), rs.getLong(2 + 1)) : null;
+        }
+    }
+    
+    @Override
+    public void lti_access_set(long lti_id, long activations_total, long activations_last, long activations_first) throws SQLException
+    {
+        db.lti_access_set.setLong(1, activations_total);
+        db.lti_access_set.setLong(2, activations_last);
+        db.lti_access_set.setLong(3, activations_first);
+        db.lti_access_set.setLong(4, lti_id);
+        db.lti_access_set.executeUpdate();
+    }
+    
+    @Override
+    public List<Long> lti_get_t(long activations_last) throws SQLException
+    {
+        final List<Long> result = new ArrayList<>();
+        db.lti_get_t.setLong(1, activations_last);
+        try(ResultSet rs = db.lti_get_t.executeQuery())
+        {
+            while(rs.next())
+            {
+                result.add(rs.getLong(0 + 1));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public void web_add(long lti_id, long attribute_s_id, long value_constant_s_id, long value_lti_id, double activation_value) throws SQLException
+    {
+        db.web_add.setLong(1, lti_id);
+        db.web_add.setLong(2, attribute_s_id);
+        db.web_add.setLong(3, value_constant_s_id);
+        db.web_add.setLong(4, value_lti_id);
+        db.web_add.setDouble(5, activation_value);
+        if(!batching)
+        {
+            db.web_add.executeUpdate();
+            return;
+        }
+        
+        db.web_add.addBatch();
+        pending_ltis.add(lti_id);
+        if(++pending_rows >= MAX_BATCH)
+        {
+            executeWebAdds();
+        }
+    }
+    
+    @Override
+    public void web_truncate(long lti_id) throws SQLException
+    {
+        executeWebAdds(lti_id);
+        db.web_truncate.setLong(1, lti_id);
+        db.web_truncate.executeUpdate( /* soar_module::op_reinit */);
+    }
+    
+    @Override
+    public List<AugmentationRow> web_expand(long lti_id) throws SQLException
+    {
+        executeWebAdds(lti_id);
+        final List<AugmentationRow> result = new ArrayList<>();
+        db.web_expand.setLong(1, lti_id);
+        try(ResultSet rs = db.web_expand.executeQuery())
+        {
+            while(rs.next())
+            {
+                // attr_type, attr_hash, value_type, value_hash, value_letter,
+                // value_num, value_lti
+                result.add(new AugmentationRow(lti_id, rs.getInt(0 + 1), rs.getLong(1 + 1), rs.getInt(2 + 1), rs.getLong(3 + 1), rs.getLong(4 + 1), rs.getLong(5 + 1),
+                        rs.getLong(6 + 1)));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public List<AugmentationRow> web_all(long lti_id) throws SQLException
+    {
+        executeWebAdds(lti_id);
+        final List<AugmentationRow> result = new ArrayList<>();
+        db.web_all.setLong(1, lti_id);
+        try(ResultSet rs = db.web_all.executeQuery())
+        {
+            while(rs.next())
+            {
+                // attribute_s_id, value_constant_s_id, value_lti_id
+                result.add(new AugmentationRow(lti_id, 0, rs.getLong(0 + 1), 0, rs.getLong(1 + 1), 0, 0, rs.getLong(2 + 1)));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public ActivationCursor web_attr_all(long attribute_s_id) throws SQLException
+    {
+        executeWebAdds();
+        db.web_attr_all.setLong(1, attribute_s_id);
+        return new ResultSetCursor(db.web_attr_all.executeQuery());
+    }
+    
+    @Override
+    public ActivationCursor web_const_all(long attribute_s_id, long value_constant_s_id) throws SQLException
+    {
+        executeWebAdds();
+        db.web_const_all.setLong(1, attribute_s_id);
+        db.web_const_all.setLong(2, value_constant_s_id);
+        return new ResultSetCursor(db.web_const_all.executeQuery());
+    }
+    
+    @Override
+    public ActivationCursor web_lti_all(long attribute_s_id, long value_lti_id) throws SQLException
+    {
+        executeWebAdds();
+        db.web_lti_all.setLong(1, attribute_s_id);
+        db.web_lti_all.setLong(2, value_lti_id);
+        return new ResultSetCursor(db.web_lti_all.executeQuery());
+    }
+    
+    @Override
+    public long[] web_attr_child(long lti_id, long attribute_s_id) throws SQLException
+    {
+        executeWebAdds(lti_id);
+        db.web_attr_child.setLong(1, lti_id);
+        db.web_attr_child.setLong(2, attribute_s_id);
+        return childValues(db.web_attr_child);
+    }
+    
+    @Override
+    public long[] web_const_child(long lti_id, long attribute_s_id, long value_constant_s_id) throws SQLException
+    {
+        executeWebAdds(lti_id);
+        db.web_const_child.setLong(1, lti_id);
+        db.web_const_child.setLong(2, attribute_s_id);
+        db.web_const_child.setLong(3, value_constant_s_id);
+        return childValues(db.web_const_child);
+    }
+    
+    @Override
+    public long[] web_lti_child(long lti_id, long attribute_s_id, long value_lti_id) throws SQLException
+    {
+        executeWebAdds(lti_id);
+        db.web_lti_child.setLong(1, lti_id);
+        db.web_lti_child.setLong(2, attribute_s_id);
+        db.web_lti_child.setLong(3, value_lti_id);
+        return childValues(db.web_lti_child);
+    }
+    
+    @Override
+    public boolean attribute_frequency_check(long attribute_s_id) throws SQLException
+    {
+        db.attribute_frequency_check.setLong(1, attribute_s_id);
+        return JdbcTools.queryHasResults(db.attribute_frequency_check);
+    }
+    
+    @Override
+    public boolean wmes_constant_frequency_check(long attribute_s_id, long value_constant_s_id) throws SQLException
+    {
+        db.wmes_constant_frequency_check.setLong(1, attribute_s_id);
+        db.wmes_constant_frequency_check.setLong(2, value_constant_s_id);
+        return JdbcTools.queryHasResults(db.wmes_constant_frequency_check);
+    }
+    
+    @Override
+    public boolean wmes_lti_frequency_check(long attribute_s_id, long value_lti_id) throws SQLException
+    {
+        db.wmes_lti_frequency_check.setLong(1, attribute_s_id);
+        db.wmes_lti_frequency_check.setLong(2, value_lti_id);
+        return JdbcTools.queryHasResults(db.wmes_lti_frequency_check);
+    }
+    
+    @Override
+    public void attribute_frequency_add(long attribute_s_id) throws SQLException
+    {
+        db.attribute_frequency_add.setLong(1, attribute_s_id);
+        db.attribute_frequency_add.executeUpdate();
+    }
+    
+    @Override
+    public void wmes_constant_frequency_add(long attribute_s_id, long value_constant_s_id) throws SQLException
+    {
+        db.wmes_constant_frequency_add.setLong(1, attribute_s_id);
+        db.wmes_constant_frequency_add.setLong(2, value_constant_s_id);
+        db.wmes_constant_frequency_add.executeUpdate();
+    }
+    
+    @Override
+    public void wmes_lti_frequency_add(long attribute_s_id, long value_lti_id) throws SQLException
+    {
+        db.wmes_lti_frequency_add.setLong(1, attribute_s_id);
+        db.wmes_lti_frequency_add.setLong(2, value_lti_id);
+        db.wmes_lti_frequency_add.executeUpdate();
+    }
+    
+    @Override
+    public void attribute_frequency_update(long attribute_s_id, long adjustment) throws SQLException
+    {
+        db.attribute_frequency_update.setLong(1, adjustment);
+        db.attribute_frequency_update.setLong(2, attribute_s_id);
+        db.attribute_frequency_update.executeUpdate();
+    }
+    
+    @Override
+    public void wmes_constant_frequency_update(long attribute_s_id, long value_constant_s_id, long adjustment) throws SQLException
+    {
+        db.wmes_constant_frequency_update.setLong(1, adjustment);
+        db.wmes_constant_frequency_update.setLong(2, attribute_s_id);
+        db.wmes_constant_frequency_update.setLong(3, value_constant_s_id);
+        db.wmes_constant_frequency_update.executeUpdate();
+    }
+    
+    @Override
+    public void wmes_lti_frequency_update(long attribute_s_id, long value_lti_id, long adjustment) throws SQLException
+    {
+        db.wmes_lti_frequency_update.setLong(1, adjustment);
+        db.wmes_lti_frequency_update.setLong(2, attribute_s_id);
+        db.wmes_lti_frequency_update.setLong(3, value_lti_id);
+        db.wmes_lti_frequency_update.executeUpdate();
+    }
+    
+    @Override
+    public Long attribute_frequency_get(long attribute_s_id) throws SQLException
+    {
+        db.attribute_frequency_get.setLong(1, attribute_s_id);
+        return firstLongOrNull(db.attribute_frequency_get);
+    }
+    
+    @Override
+    public Long wmes_constant_frequency_get(long attribute_s_id, long value_constant_s_id) throws SQLException
+    {
+        db.wmes_constant_frequency_get.setLong(1, attribute_s_id);
+        db.wmes_constant_frequency_get.setLong(2, value_constant_s_id);
+        return firstLongOrNull(db.wmes_constant_frequency_get);
+    }
+    
+    @Override
+    public Long wmes_lti_frequency_get(long attribute_s_id, long value_lti_id) throws SQLException
+    {
+        db.wmes_lti_frequency_get.setLong(1, attribute_s_id);
+        db.wmes_lti_frequency_get.setLong(2, value_lti_id);
+        return firstLongOrNull(db.wmes_lti_frequency_get);
+    }
+    
+    @Override
+    public void act_set(long lti_id, double activation_value) throws SQLException
+    {
+        executeWebAdds(lti_id);
+        db.act_set.setDouble(1, activation_value);
+        db.act_set.setLong(2, lti_id);
+        db.act_set.executeUpdate();
+    }
+    
+    @Override
+    public long act_lti_child_ct_get(long lti_id) throws SQLException
+    {
+        db.act_lti_child_ct_get.setLong(1, lti_id);
+        try(ResultSet rs = db.act_lti_child_ct_get.executeQuery())
+        {
+            rs.next();
+            return rs.getLong(0 + 1);
+        }
+    }
+    
+    @Override
+    public void act_lti_child_ct_set(long lti_id, long total_augmentations) throws SQLException
+    {
+        db.act_lti_child_ct_set.setLong(1, total_augmentations);
+        db.act_lti_child_ct_set.setLong(2, lti_id);
+        db.act_lti_child_ct_set.executeUpdate();
+    }
+    
+    @Override
+    public void act_lti_set(long lti_id, double activation_value) throws SQLException
+    {
+        db.act_lti_set.setDouble(1, activation_value);
+        db.act_lti_set.setLong(2, lti_id);
+        db.act_lti_set.executeUpdate();
+    }
+    
+    @Override
+    public double act_lti_get(long lti_id) throws SQLException
+    {
+        db.act_lti_get.setLong(1, lti_id);
+        try(ResultSet rs = db.act_lti_get.executeQuery())
+        {
+            if(!rs.next())
+            {
+                throw new IllegalStateException("act_lti_get did not return a result");
+            }
+            return rs.getDouble(0 + 1);
+        }
+    }
+    
+    @Override
+    public long[] history_get(long lti_id) throws SQLException
+    {
+        db.history_get.setLong(1, lti_id);
+        try(ResultSet rs = db.history_get.executeQuery())
+        {
+            if(!rs.next())
+            {
+                return null;
+            }
+            final long[] result = new long[10];
+            for(int i = 0; i < result.length; i++)
+            {
+                result[i] = rs.getLong(i + 1);
+            }
+            return result;
+        }
+    }
+    
+    @Override
+    public void history_push(long lti_id, long time) throws SQLException
+    {
+        db.history_push.setLong(1, time);
+        db.history_push.setLong(2, lti_id);
+        db.history_push.executeUpdate();
+    }
+    
+    @Override
+    public void history_add(long lti_id, long time) throws SQLException
+    {
+        db.history_add.setLong(1, lti_id);
+        db.history_add.setLong(2, time);
+        db.history_add.executeUpdate();
+    }
+    
+    @Override
+    public List<LtiRow> vis_lti() throws SQLException
+    {
+        final List<LtiRow> result = new ArrayList<>();
+        try(ResultSet rs = db.vis_lti.executeQuery())
+        {
+            while(rs.next())
+            {
+                // lti_id, soar_letter, soar_number, activation_value
+                result.add(new LtiRow(rs.getLong(0 + 1), rs.getLong(1 + 1), rs.getLong(2 + 1), rs.getDouble(3 + 1)));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public List<AugmentationRow> vis_value_const() throws SQLException
+    {
+        executeWebAdds();
+        final List<AugmentationRow> result = new ArrayList<>();
+        try(ResultSet rs = db.vis_value_const.executeQuery())
+        {
+            while(rs.next())
+            {
+                // lti_id, attr_type, attr_hash, val_type, val_hash
+                result.add(new AugmentationRow(rs.getLong(0 + 1), rs.getInt(1 + 1), rs.getLong(2 + 1), rs.getInt(3 + 1), rs.getLong(4 + 1), 0, 0, 0));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public List<AugmentationRow> vis_value_lti() throws SQLException
+    {
+        executeWebAdds();
+        final List<AugmentationRow> result = new ArrayList<>();
+        try(ResultSet rs = db.vis_value_lti.executeQuery())
+        {
+            while(rs.next())
+            {
+                // lti_id, attr_type, attr_hash, value_lti_id
+                result.add(new AugmentationRow(rs.getLong(0 + 1), rs.getInt(1 + 1), rs.getLong(2 + 1), 0, 0, 0, 0, rs.getLong(3 + 1)));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public void beginBatch()
+    {
+        batching = true;
+    }
+    
+    @Override
+    public void endBatch() throws SQLException
+    {
+        executeWebAdds();
+        batching = false;
+    }
+    
+    @Override
+    public void abortBatch() throws SQLException
+    {
+        batching = false;
+        if(pending_rows > 0)
+        {
+            db.web_add.clearBatch();
+            pending_ltis.clear();
+            pending_rows = 0;
+        }
+    }
+    
+    @Override
+    public void flush() throws SQLException
+    {
+        // Everything else has already been executed
+        executeWebAdds();
+    }
+    
+    private void executeWebAdds() throws SQLException
+    {
+        if(pending_rows > 0)
+        {
+            db.web_add.executeBatch();
+            pending_ltis.clear();
+            pending_rows = 0;
+        }
+    }
+    
+    /**
+     * Execute the held back augmentations if some of them belong to the lti.
+     * Lookups of other ltis, like the ones made while storing a new chunk,
+     * leave the batch alone.
+     */
+    private void executeWebAdds(long lti_id) throws SQLException
+    {
+        if(pending_ltis.contains(lti_id))
+        {
+            executeWebAdds();
+        }
+    }
+    
+    private static long firstLong(PreparedStatement q) throws SQLException
+    {
+        try(ResultSet rs = q.executeQuery())
+        {
+            return rs.next() ? rs.getLong(0 + 1) : 0;
+        }
+    }
+    
+    private static Long firstLongOrNull(PreparedStatement q) throws SQLException
+    {
+        try(ResultSet rs = q.executeQuery())
+        {
+            return rs.next() ? rs.getLong(0 + 1) : null;
+        }
+    }
+    
+    private static long[] childValues(PreparedStatement q) throws SQLException
+    {
+        try(ResultSet rs = q.executeQuery())
+        {
+            if(!rs.next())
+            {
+                return NO_CHILDREN;
+            }
+            // lti_id, value_constant_s_id
+            long[] result = new long[] { rs.getLong(1 + 1) };
+            while(rs.next())
+            {
+                result = Arrays.copyOf(result, result.length + 1);
+                result[result.length - 1] = rs.getLong(1 + 1);
+            }
+            return result;
+        }
+    }
+    
+    private static class ResultSetCursor implements ActivationCursor
+    {
+        private final ResultSet rs;
+        
+        ResultSetCursor(ResultSet rs)
+        {
+            this.rs = rs;
+        }
+        
+        @Override
+        public boolean next() throws SQLException
+        {
+            return rs.next();
+        }
+        
+        @Override
+        public long lti_id() throws SQLException
+        {
+            return rs.getLong(0 + 1);
+        }
+        
+        @Override
+        public double activation_value() throws SQLException
+        {
+            return rs.getDouble(1 + 1);
+        }
+        
+        @Override
+        public void close() throws SQLException
+        {
+            rs.close();
+        }
+    }
+}
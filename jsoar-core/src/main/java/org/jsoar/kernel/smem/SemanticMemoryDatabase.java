@@ -96,6 +96,37 @@ public final class SemanticMemoryDatabase extends AbstractSoarDatabase
     PreparedStatement vis_value_const;
     PreparedStatement vis_value_lti;
     
+    PreparedStatement load_persistent_variables;
+    PreparedStatement load_symbols_type;
+    PreparedStatement load_symbols_integer;
+    PreparedStatement load_symbols_float;
+    PreparedStatement load_symbols_string;
+    PreparedStatement load_lti;
+    PreparedStatement load_activation_history;
+    PreparedStatement load_augmentations;
+    PreparedStatement load_attribute_frequency;
+    PreparedStatement load_wmes_constant_frequency;
+    PreparedStatement load_wmes_lti_frequency;
+    
+    PreparedStatement clear_persistent_variables;
+    PreparedStatement clear_symbols_type;
+    PreparedStatement clear_symbols_integer;
+    PreparedStatement clear_symbols_float;
+    PreparedStatement clear_symbols_string;
+    PreparedStatement clear_lti;
+    PreparedStatement clear_activation_history;
+    PreparedStatement clear_augmentations;
+    PreparedStatement clear_attribute_frequency;
+    PreparedStatement clear_wmes_constant_frequency;
+    PreparedStatement clear_wmes_lti_frequency;
+    
+    PreparedStatement save_symbols_type;
+    PreparedStatement save_lti;
+    PreparedStatement save_activation_history;
+    PreparedStatement save_attribute_frequency;
+    PreparedStatement save_wmes_constant_frequency;
+    PreparedStatement save_wmes_lti_frequency;
+    
     PreparedStatement set_schema_version;
     PreparedStatement get_schema_version;
     
@@ -133,4 +164,24 @@ public void dropSmemTables() throws SQLException
         drop_smem_wmes_lti_frequency.execute();
         drop_smem_ascii.execute();
     }
+    
+    /**
+     * Delete every row from the smem tables, keeping the tables themselves
+     * 
+     * @throws SQLException
+     */
+    public void clearSmemTables() throws SQLException
+    {
+        clear_persistent_variables.execute();
+        clear_symbols_type.execute();
+        clear_symbols_integer.execute();
+        clear_symbols_float.execute();
+        clear_symbols_string.execute();
+        clear_lti.execute();
+        clear_activation_history.execute();
+        clear_augmentations.execute();
+        clear_attribute_frequency.execute();
+        clear_wmes_constant_frequency.execute();
+        clear_wmes_lti_frequency.execute();
+    }
 }
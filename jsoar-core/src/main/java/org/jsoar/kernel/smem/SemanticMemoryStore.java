@@ -0,0 +1,307 @@
+package org.jsoar.kernel.smem;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage backend for {@link DefaultSemanticMemory}. There is one method for
+ * each of the queries and updates in {@code statements.properties}, named
+ * after the statement, and each has the same semantics as its statement over
+ * the tables in {@code structures.sql}. In particular, ids handed out by the
+ * {@code *_add} methods follow SQLite's rowid rules and rows come back in the
+ * order SQLite returns them, so that retrievals don't depend on the backend.
+ * 
+ * <p>Lookups that find nothing return {@code 0} for ids, {@code null} for
+ * objects and an empty array for child queries, matching the checks that
+ * {@link DefaultSemanticMemory} makes on the corresponding result sets.
+ * 
+ * @see JdbcSemanticMemoryStore
+ * @see InMemorySemanticMemoryStore
+ */
+interface SemanticMemoryStore
+{
+    /**
+     * A row of the lti table
+     */
+    final class LtiRow
+    {
+        final /* smem_lti_id */ long lti_id;
+        final long soar_letter;
+        final long soar_number;
+        final double activation_value;
+        
+        LtiRow(long lti_id, long soar_letter, long soar_number, double activation_value)
+        {
+            this.lti_id = lti_id;
+            this.soar_letter = soar_letter;
+            this.soar_number = soar_number;
+            this.activation_value = activation_value;
+        }
+    }
+    
+    /**
+     * The access counters of an lti
+     */
+    final class LtiAccess
+    {
+        final long activations_total;
+        final long activations_last;
+        final long activations_first;
+        
+        LtiAccess(long activations_total, long activations_last, long activations_first)
+        {
+            this.activations_total = activations_total;
+            this.activations_last = activations_last;
+            this.activations_first = activations_first;
+        }
+    }
+    
+    /**
+     * An augmentation joined with the types of its attribute and value and,
+     * for lti values, the name of the value. Columns that a query doesn't
+     * select, or that are {@code NULL} in an outer join, are 0.
+     */
+    final class AugmentationRow
+    {
+        final /* smem_lti_id */ long lti_id;
+        final int attr_type;
+        final /* smem_hash_id */ long attr_hash;
+        final int value_type;
+        final /* smem_hash_id */ long value_hash;
+        final long value_letter;
+        final long value_num;
+        final /* smem_lti_id */ long value_lti;
+        
+        AugmentationRow(long lti_id, int attr_type, long attr_hash, int value_type, long value_hash, long value_letter, long value_num, long value_lti)
+        {
+            this.lti_id = lti_id;
+            this.attr_type = attr_type;
+            this.attr_hash = attr_hash;
+            this.value_type = value_type;
+            this.value_hash = value_hash;
+            this.value_letter = value_letter;
+            this.value_num = value_num;
+            this.value_lti = value_lti;
+        }
+    }
+    
+    /**
+     * A cursor over the ltis of matching augmentations in descending order of
+     * activation, i.e. the result of one of the {@code web_*_all} queries.
+     * Rows are read lazily, so a cursor must be closed but the caller may stop
+     * early.
+     */
+    interface ActivationCursor extends AutoCloseable
+    {
+        /**
+         * @return true if the cursor moved to another row
+         */
+        boolean next() throws SQLException;
+        
+        /**
+         * @return the lti of the current row
+         */
+        long lti_id() throws SQLException;
+        
+        /**
+         * @return the activation of the current row
+         */
+        double activation_value() throws SQLException;
+        
+        @Override
+        void close() throws SQLException;
+    }
+    
+    Long var_get(long variable_id) throws SQLException;
+    
+    void var_set(long variable_id, long variable_value) throws SQLException;
+    
+    void var_create(long variable_id, long variable_value) throws SQLException;
+    
+    long hash_get_int(long value) throws SQLException;
+    
+    long hash_get_float(double value) throws SQLException;
+    
+    long hash_get_str(String value) throws SQLException;
+    
+    /**
+     * @return the new symbol id
+     */
+    long hash_add_type(int symbol_type) throws SQLException;
+    
+    void hash_add_int(long s_id, long value) throws SQLException;
+    
+    void hash_add_float(long s_id, double value) throws SQLException;
+    
+    void hash_add_str(long s_id, String value) throws SQLException;
+    
+    /**
+     * @throws IllegalStateException if there is no integer with the id
+     */
+    long hash_rev_int(long s_id) throws SQLException;
+    
+    double hash_rev_float(long s_id) throws SQLException;
+    
+    String hash_rev_str(long s_id) throws SQLException;
+    
+    /**
+     * @return the symbol type, or {@code null} if there is no symbol with
+     *     the id
+     */
+    Integer hash_rev_type(long s_id) throws SQLException;
+    
+    /**
+     * Add an lti with no augmentations and no accesses
+     * 
+     * @return the new lti id
+     */
+    long lti_add(long soar_letter, long soar_number) throws SQLException;
+    
+    long lti_get(long soar_letter, long soar_number) throws SQLException;
+    
+    /**
+     * @return the lti, or {@code null} if there is none. The activation is
+     *     the lti's activation, as with {@link #act_lti_get(long)}.
+     */
+    LtiRow lti_letter_num(long lti_id) throws SQLException;
+    
+    /**
+     * @return the highest number used with each letter
+     */
+    Map<Long, Long> lti_max() throws SQLException;
+    
+    LtiAccess lti_access_get(long lti_id) throws SQLException;
+    
+    void lti_access_set(long lti_id, long activations_total, long activations_last, long activations_first) throws SQLException;
+    
+    /**
+     * @return the ltis last activated at the given time, in id order
+     */
+    List<Long> lti_get_t(long activations_last) throws SQLException;
+    
+    void web_add(long lti_id, long attribute_s_id, long value_constant_s_id, long value_lti_id, double activation_value) throws SQLException;
+    
+    void web_truncate(long lti_id) throws SQLException;
+    
+    /**
+     * @return the augmentations of an lti with the types of their attributes
+     *     and values, ordered by attribute, value and insertion
+     */
+    List<AugmentationRow> web_expand(long lti_id) throws SQLException;
+    
+    /**
+     * @return the attribute, value constant and value lti of each
+     *     augmentation of an lti
+     */
+    List<AugmentationRow> web_all(long lti_id) throws SQLException;
+    
+    ActivationCursor web_attr_all(long attribute_s_id) throws SQLException;
+    
+    ActivationCursor web_const_all(long attribute_s_id, long value_constant_s_id) throws SQLException;
+    
+    ActivationCursor web_lti_all(long attribute_s_id, long value_lti_id) throws SQLException;
+    
+    /**
+     * @return the value constant of each augmentation of the lti with the
+     *     attribute
+     */
+    long[] web_attr_child(long lti_id, long attribute_s_id) throws SQLException;
+    
+    long[] web_const_child(long lti_id, long attribute_s_id, long value_constant_s_id) throws SQLException;
+    
+    long[] web_lti_child(long lti_id, long attribute_s_id, long value_lti_id) throws SQLException;
+    
+    boolean attribute_frequency_check(long attribute_s_id) throws SQLException;
+    
+    boolean wmes_constant_frequency_check(long attribute_s_id, long value_constant_s_id) throws SQLException;
+    
+    boolean wmes_lti_frequency_check(long attribute_s_id, long value_lti_id) throws SQLException;
+    
+    void attribute_frequency_add(long attribute_s_id) throws SQLException;
+    
+    void wmes_constant_frequency_add(long attribute_s_id, long value_constant_s_id) throws SQLException;
+    
+    void wmes_lti_frequency_add(long attribute_s_id, long value_lti_id) throws SQLException;
+    
+    void attribute_frequency_update(long attribute_s_id, long adjustment) throws SQLException;
+    
+    void wmes_constant_frequency_update(long attribute_s_id, long value_constant_s_id, long adjustment) throws SQLException;
+    
+    void wmes_lti_frequency_update(long attribute_s_id, long value_lti_id, long adjustment) throws SQLException;
+    
+    Long attribute_frequency_get(long attribute_s_id) throws SQLException;
+    
+    Long wmes_constant_frequency_get(long attribute_s_id, long value_constant_s_id) throws SQLException;
+    
+    Long wmes_lti_frequency_get(long attribute_s_id, long value_lti_id) throws SQLException;
+    
+    /**
+     * Set the activation of every augmentation of an lti
+     */
+    void act_set(long lti_id, double activation_value) throws SQLException;
+    
+    long act_lti_child_ct_get(long lti_id) throws SQLException;
+    
+    void act_lti_child_ct_set(long lti_id, long total_augmentations) throws SQLException;
+    
+    void act_lti_set(long lti_id, double activation_value) throws SQLException;
+    
+    /**
+     * @throws IllegalStateException if there is no such lti
+     */
+    double act_lti_get(long lti_id) throws SQLException;
+    
+    /**
+     * @return the ten most recent access times of an lti, most recent first,
+     *     or {@code null} if it has no history
+     */
+    long[] history_get(long lti_id) throws SQLException;
+    
+    void history_push(long lti_id, long time) throws SQLException;
+    
+    void history_add(long lti_id, long time) throws SQLException;
+    
+    /**
+     * @return all ltis, ordered by letter and number
+     */
+    List<LtiRow> vis_lti() throws SQLException;
+    
+    /**
+     * @return the lti, attribute and value of every augmentation with a
+     *     constant value
+     */
+    List<AugmentationRow> vis_value_const() throws SQLException;
+    
+    /**
+     * @return the lti, attribute and value lti of every augmentation with an
+     *     lti value
+     */
+    List<AugmentationRow> vis_value_lti() throws SQLException;
+    
+    /**
+     * Start a batch of updates. Until {@link #endBatch()}, the store may
+     * hold back new augmentations and send them together, but every query
+     * still sees every update made before it.
+     */
+    void beginBatch() throws SQLException;
+    
+    /**
+     * Send anything held back since {@link #beginBatch()} and go back to
+     * sending each update as it is made.
+     */
+    void endBatch() throws SQLException;
+    
+    /**
+     * Drop anything held back since {@link #beginBatch()} without sending it
+     * and go back to sending each update as it is made. The caller is
+     * responsible for rolling back the updates that were already sent.
+     */
+    void abortBatch() throws SQLException;
+    
+    /**
+     * Write anything held only by this store to the database. The caller is
+     * responsible for transactions.
+     */
+    void flush() throws SQLException;
+}
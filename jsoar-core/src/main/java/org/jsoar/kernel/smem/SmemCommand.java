@@ -20,6 +20,7 @@
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.ActivateOnQueryChoices;
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.ActivationChoices;
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.AppendDatabaseChoices;
+import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.BackendChoices;
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.BaseUpdateChoices;
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.LazyCommitChoices;
 import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.LearningChoices;
@@ -279,7 +280,7 @@ private String doCommit()
                 agent.getPrinter().startNewLine().print("Semantic memory database is not open.");
                 return "";
             }
-            if(smem.getParams().lazy_commit.get() == LazyCommitChoices.off)
+            if(smem.getParams().lazy_commit.get() == LazyCommitChoices.off && smem.getParams().backend.get() == BackendChoices.database)
             {
                 return "Semantic memory database is not in lazy-commit mode.";
             }
@@ -513,6 +514,10 @@ else if(setParam.equals("append-database"))
                     props.set(DefaultSemanticMemoryParams.APPEND_DB,
                             AppendDatabaseChoices.valueOf(value));
                 }
+                else if(setParam.equals("backend"))
+                {
+                    props.set(DefaultSemanticMemoryParams.BACKEND, BackendChoices.valueOf(value));
+                }
                 else if(setParam.equals("page-size"))
                 {
                     props.set(DefaultSemanticMemoryParams.PAGE_SIZE, PageChoices.valueOf(value));
@@ -739,6 +744,7 @@ private String doSmem()
             pw.printf(PrintHelper.generateItem("driver-type:", nativeOrPure, 40));
             pw.printf(PrintHelper.generateItem("protocol:", p.protocol.get(), 40));
             pw.printf(PrintHelper.generateItem("append-database:", p.append_db.get(), 40));
+            pw.printf(PrintHelper.generateItem("backend:", p.backend.get(), 40));
             
             String database = "memory";
             String path = "";
@@ -56,6 +56,12 @@ public class IdentifierImpl extends SymbolImpl implements Identifier
     public Marker tc_number; /* used for transitive closures, marking, etc. */
     public SymbolImpl variablization; /* used by the chunker */
     
+    /**
+     * True while this id is queued for release by the symbol factory in
+     * strong reference mode, so it's queued at most once
+     */
+    /* package */ boolean release_pending;
+    
     public GoalIdentifierInfo goalInfo;
     
     // fields used for Soar I/O stuff
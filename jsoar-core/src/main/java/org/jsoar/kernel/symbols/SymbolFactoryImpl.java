@@ -8,13 +8,15 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.function.Predicate;
 
 import org.jsoar.kernel.SoarConstants;
 import org.jsoar.util.ByRef;
+import org.jsoar.util.LongHashMap;
 
 import com.google.common.collect.MapMaker;
 
@@ -33,6 +35,41 @@
  * time because symbols can't be garbage collected as long as they're in the
  * cache.
  * 
+ * <p>Weak references aren't free though. Every cached symbol carries a
+ * {@code WeakReference} that the garbage collector has to process, which
+ * shows up in GC pauses for long-running agents that create many
+ * identifiers. As an alternative, the factory can be created in
+ * <em>strong reference</em> mode (see {@link #SymbolFactoryImpl(boolean)}
+ * and the {@value #STRONG_REFERENCES_PROPERTY} system property). In this
+ * mode:
+ * <ul>
+ * <li>Integers and identifiers are kept in a {@link LongHashMap}, keyed on
+ * the value and on a packed (letter, number) key respectively, so looking
+ * them up doesn't allocate.
+ * <li>Strings, floats and variables are kept in plain hash maps.
+ * <li>Java symbols are still weakly referenced since they may refer to
+ * arbitrary application objects.
+ * <li>Identifiers are released explicitly, using their link count as a
+ * reference count. The kernel tells the factory when an identifier's link
+ * count drops to zero, and at the end of the decision cycle
+ * {@link #releaseUnusedIdentifiers()} drops those that still aren't linked
+ * into working memory and aren't long-term identifiers. A released
+ * identifier object stays valid for anyone still holding it, but it can't
+ * be found by name until it's linked into working memory again. Identifiers
+ * that are created but never linked (e.g. by I/O code that changes its mind)
+ * are only released if they're passed to
+ * {@link #markIdentifierForRelease(IdentifierImpl)}.
+ * <li>Constants have no reference count, and dropping one that's still
+ * referenced (say by a production) would break symbol identity. Instead,
+ * {@link #releaseUnusedConstants()} moves constants that haven't been
+ * created or looked up since the previous release into weakly referenced
+ * maps. A released constant is found, and moved back, as long as anything
+ * still references it, and is garbage collected once nothing does. The
+ * decision cycle releases constants whenever their number has doubled since
+ * the last release, so the strongly referenced maps stay proportional to the
+ * constants the agent is actually using.
+ * </ul>
+ * 
  * <p>The following symtab.cpp functions have been dropped because they're not
  * needed in Java:
  * <ul>
@@ -58,24 +95,104 @@ private static <K, V> Map<K, V> newReferenceMap()
         return new MapMaker().weakValues().makeMap();
     }
     
+    /**
+     * System property that selects strong reference mode for symbol
+     * factories created with the default constructor, i.e. for every agent.
+     */
+    public static final String STRONG_REFERENCES_PROPERTY = "jsoar.symbols.strongReferences";
+    
+    /**
+     * The fewest strongly referenced constants that make
+     * {@link #releaseUnusedSymbols()} release constants
+     */
+    private static final int MIN_CONSTANTS_TO_RELEASE = 4096;
+    
+    private final boolean strongReferences;
     private final long id_counter[] = new long[26];
-    private final Map<String, StringSymbolImpl> symConstants = newReferenceMap();
-    private final Map<Long, IntegerSymbolImpl> intConstants = newReferenceMap();
-    private final Map<Double, DoubleSymbolImpl> floatConstants = newReferenceMap();
-    private final Map<IdKey, IdentifierImpl> identifiers = newReferenceMap();
-    private final Map<String, Variable> variables = newReferenceMap();
+    private final Map<String, StringSymbolImpl> symConstants;
+    private final LongSymbolMap<IntegerSymbolImpl> intConstants;
+    private final Map<Double, DoubleSymbolImpl> floatConstants;
+    private final LongSymbolMap<IdentifierImpl> identifiers;
+    private final Map<String, Variable> variables;
     private final Map<Object, JavaSymbolImpl> javaSyms = newReferenceMap();
     private final JavaSymbolImpl nullJavaSym;
     private int current_symbol_hash_id = 0;
     
+    /**
+     * Identifiers created or garbage collected since the last call to
+     * {@link #releaseUnusedIdentifiers()}. Only used in strong reference mode.
+     */
+    private final List<IdentifierImpl> release_candidates = new ArrayList<>();
+    
+    /**
+     * Constants released by {@link #releaseUnusedConstants()} that may still
+     * be referenced. Only used in strong reference mode.
+     */
+    private final Map<String, StringSymbolImpl> releasedSymConstants;
+    private final LongSymbolMap<IntegerSymbolImpl> releasedIntConstants;
+    private final Map<Double, DoubleSymbolImpl> releasedFloatConstants;
+    
+    /**
+     * Incremented by each {@link #releaseUnusedConstants()}. Constants handed
+     * out since the last release are stamped with the current value.
+     */
+    private int release_generation;
+    private int constants_release_threshold = MIN_CONSTANTS_TO_RELEASE;
+    
     private final VariableGenerator vars = new VariableGenerator(this);
     
+    /**
+     * Construct a symbol factory in strong reference mode if the
+     * {@value #STRONG_REFERENCES_PROPERTY} system property is true, and weak
+     * reference mode otherwise.
+     */
     public SymbolFactoryImpl()
     {
+        this(Boolean.parseBoolean(System.getProperty(STRONG_REFERENCES_PROPERTY, "false")));
+    }
+    
+    /**
+     * @param strongReferences if true, cached symbols are strongly referenced
+     *     and identifiers are released explicitly. Otherwise, cached symbols
+     *     are weakly referenced and released by the garbage collector.
+     */
+    public SymbolFactoryImpl(boolean strongReferences)
+    {
+        this.strongReferences = strongReferences;
+        if(strongReferences)
+        {
+            symConstants = new HashMap<>();
+            intConstants = new StrongLongSymbolMap<>();
+            floatConstants = new HashMap<>();
+            identifiers = new StrongLongSymbolMap<>();
+            variables = new HashMap<>();
+            releasedSymConstants = newReferenceMap();
+            releasedIntConstants = new WeakLongSymbolMap<>();
+            releasedFloatConstants = newReferenceMap();
+        }
+        else
+        {
+            symConstants = newReferenceMap();
+            intConstants = new WeakLongSymbolMap<>();
+            floatConstants = newReferenceMap();
+            identifiers = new WeakLongSymbolMap<>();
+            variables = newReferenceMap();
+            releasedSymConstants = null;
+            releasedIntConstants = null;
+            releasedFloatConstants = null;
+        }
         nullJavaSym = new JavaSymbolImpl(this, get_next_hash_id(), null);
         reset();
     }
     
+    /**
+     * @return true if this factory is in strong reference mode
+     */
+    public boolean isStrongReferences()
+    {
+        return strongReferences;
+    }
+    
     public VariableGenerator getVariableGenerator()
     {
         return vars;
@@ -90,9 +207,9 @@ public List<Symbol> getAllSymbols()
     {
         final List<Symbol> result = new ArrayList<>();
         result.addAll(identifiers.values());
-        result.addAll(symConstants.values());
-        result.addAll(intConstants.values());
-        result.addAll(floatConstants.values());
+        result.addAll(getSymbols(StringSymbol.class));
+        result.addAll(getSymbols(IntegerSymbol.class));
+        result.addAll(getSymbols(DoubleSymbol.class));
         result.addAll(javaSyms.values());
         return result;
     }
@@ -110,15 +227,18 @@ public <T extends Symbol> List<T> getSymbols(Class<T> klass)
     {
         if(klass.isAssignableFrom(StringSymbolImpl.class))
         {
-            return new ArrayList<>((Collection<? extends T>) symConstants.values());
+            return withReleased((Collection<? extends T>) symConstants.values(),
+                    releasedSymConstants != null ? (Collection<? extends T>) releasedSymConstants.values() : null);
         }
         else if(klass.isAssignableFrom(IntegerSymbolImpl.class))
         {
-            return new ArrayList<>((Collection<? extends T>) intConstants.values());
+            return withReleased((Collection<? extends T>) intConstants.values(),
+                    releasedIntConstants != null ? (Collection<? extends T>) releasedIntConstants.values() : null);
         }
         else if(klass.isAssignableFrom(DoubleSymbol.class))
         {
-            return new ArrayList<>((Collection<? extends T>) floatConstants.values());
+            return withReleased((Collection<? extends T>) floatConstants.values(),
+                    releasedFloatConstants != null ? (Collection<? extends T>) releasedFloatConstants.values() : null);
         }
         else if(klass.isAssignableFrom(IdentifierImpl.class))
         {
@@ -140,6 +260,16 @@ else if(klass.isAssignableFrom(JavaSymbolImpl.class))
         }
     }
     
+    private static <T> List<T> withReleased(Collection<? extends T> symbols, Collection<? extends T> released)
+    {
+        final List<T> result = new ArrayList<>(symbols);
+        if(released != null)
+        {
+            result.addAll(released);
+        }
+        return result;
+    }
+    
     /**
      * <p>symtab.cpp:474:reset_id_counters
      */
@@ -153,14 +283,12 @@ public void reset()
         // and start over.
         
         // SMEM - only clear non LTIs
-        for(final Iterator<IdentifierImpl> it = identifiers.values().iterator(); it.hasNext();)
+        identifiers.removeIf(id -> id.smem_lti == 0);
+        for(IdentifierImpl id : release_candidates)
         {
-            final IdentifierImpl id = it.next();
-            if(id.smem_lti == 0)
-            {
-                it.remove();
-            }
+            id.release_pending = false;
         }
+        release_candidates.clear();
         
         Arrays.fill(id_counter, 1);
         
@@ -263,6 +391,163 @@ public IdentifierImpl findIdentifier(char name_letter, long name_number)
         return identifiers.get(getIdKey(name_letter, name_number));
     }
     
+    /**
+     * Tell the factory that an identifier may no longer be used. The kernel
+     * calls this when an identifier's link count drops to zero, i.e. when it
+     * is removed from working memory. In strong reference mode, the
+     * identifier will be released by the next call to
+     * {@link #releaseUnusedIdentifiers()} if it's still unused then. In weak
+     * reference mode this does nothing.
+     * 
+     * @param id the identifier
+     */
+    public void markIdentifierForRelease(IdentifierImpl id)
+    {
+        if(strongReferences && !id.release_pending)
+        {
+            id.release_pending = true;
+            release_candidates.add(id);
+        }
+    }
+    
+    /**
+     * Tell the factory that an identifier is linked into working memory. The
+     * kernel calls this when an identifier's link count rises from zero. In
+     * strong reference mode, an identifier that was released while it was
+     * unlinked can be found by name again.
+     * 
+     * @param id the identifier
+     */
+    public void retainIdentifier(IdentifierImpl id)
+    {
+        if(strongReferences)
+        {
+            final long key = getIdKey(id.getNameLetter(), id.getNameNumber());
+            if(identifiers.get(key) == null)
+            {
+                identifiers.put(key, id);
+            }
+        }
+    }
+    
+    /**
+     * Release the identifiers marked with
+     * {@link #markIdentifierForRelease(IdentifierImpl)} since the last call
+     * that are still unused. An identifier is in use if anything in working
+     * memory or temporary memory links to it (including the special link held
+     * by a goal on the goal stack), or if it is a long-term identifier. In
+     * weak reference mode this does nothing.
+     * 
+     * @return the number of identifiers released
+     */
+    public int releaseUnusedIdentifiers()
+    {
+        int released = 0;
+        for(IdentifierImpl id : release_candidates)
+        {
+            id.release_pending = false;
+            if(id.link_count == 0 && id.smem_lti == 0)
+            {
+                final long key = getIdKey(id.getNameLetter(), id.getNameNumber());
+                // The same id may be queued more than once, and a candidate
+                // may have been replaced in the table since, e.g. by reset()
+                if(identifiers.get(key) == id)
+                {
+                    identifiers.remove(key);
+                    released++;
+                }
+            }
+        }
+        release_candidates.clear();
+        return released;
+    }
+    
+    /**
+     * Release the constants that haven't been created or looked up since the
+     * last call. Released constants are only weakly referenced by the factory,
+     * so they are garbage collected once nothing else references them. Until
+     * then, looking one up finds it and makes it strongly referenced again,
+     * so symbol identity is preserved. In weak reference mode this does
+     * nothing.
+     * 
+     * @return the number of constants released
+     */
+    public int releaseUnusedConstants()
+    {
+        if(!strongReferences)
+        {
+            return 0;
+        }
+        
+        final int current = release_generation++;
+        int released = 0;
+        for(Iterator<StringSymbolImpl> it = symConstants.values().iterator(); it.hasNext();)
+        {
+            final StringSymbolImpl sym = it.next();
+            if(sym.release_stamp != current)
+            {
+                it.remove();
+                releasedSymConstants.put(sym.getValue(), sym);
+                released++;
+            }
+        }
+        for(Iterator<DoubleSymbolImpl> it = floatConstants.values().iterator(); it.hasNext();)
+        {
+            final DoubleSymbolImpl sym = it.next();
+            if(sym.release_stamp != current)
+            {
+                it.remove();
+                releasedFloatConstants.put(sym.getValue(), sym);
+                released++;
+            }
+        }
+        released += intConstants.removeIf(sym ->
+        {
+            if(sym.release_stamp != current)
+            {
+                releasedIntConstants.put(sym.getValue(), sym);
+                return true;
+            }
+            return false;
+        });
+        return released;
+    }
+    
+    /**
+     * Release unused identifiers, and unused constants if there are enough
+     * of them to be worth it. This is called by the decision cycle at the end
+     * of each output phase. In weak reference mode this does nothing.
+     * 
+     * @see #releaseUnusedIdentifiers()
+     * @see #releaseUnusedConstants()
+     */
+    public void releaseUnusedSymbols()
+    {
+        if(!strongReferences)
+        {
+            return;
+        }
+        
+        releaseUnusedIdentifiers();
+        
+        // Only look at the constants once their number has doubled, so
+        // releasing them costs constant time per constant created
+        if(getConstantCount() >= constants_release_threshold)
+        {
+            releaseUnusedConstants();
+            constants_release_threshold = Math.max(MIN_CONSTANTS_TO_RELEASE, 2 * getConstantCount());
+        }
+    }
+    
+    /**
+     * @return the number of strongly referenced constants in strong reference
+     *     mode, or of all cached constants in weak reference mode
+     */
+    public int getConstantCount()
+    {
+        return symConstants.size() + intConstants.size() + floatConstants.size();
+    }
+    
     /**
      * Tries to find an identifier and if it finds it in the map of identifiers,
      * sets the value of the key to be null.
@@ -277,11 +562,12 @@ public boolean findAndNullIdentifier(IdentifierImpl identifier)
             return false;
         }
         
-        boolean found = identifiers.containsValue(identifier);
+        final long key = getIdKey(identifier.getNameLetter(), identifier.getNameNumber());
+        boolean found = identifiers.get(key) == identifier;
         
         if(found)
         {
-            identifiers.remove(new IdKey(identifier.getNameLetter(), identifier.getNameNumber()));
+            identifiers.remove(key);
         }
         
         return found;
@@ -384,7 +670,16 @@ public IdentifierImpl findOrCreateIdentifierExact(char nameLetter, long nameNumb
      */
     public StringSymbolImpl findString(String name)
     {
-        return symConstants.get(name);
+        StringSymbolImpl sym = symConstants.get(name);
+        if(strongReferences)
+        {
+            if(sym == null && (sym = releasedSymConstants.remove(name)) != null)
+            {
+                symConstants.put(name, sym);
+            }
+            stamp(sym);
+        }
+        return sym;
     }
     
     /*
@@ -397,7 +692,7 @@ public StringSymbolImpl createString(String name)
         StringSymbolImpl sym = findString(name);
         if(sym == null)
         {
-            sym = new StringSymbolImpl(this, get_next_hash_id(), name);
+            sym = stamp(new StringSymbolImpl(this, get_next_hash_id(), name));
             symConstants.put(name, sym);
         }
         return sym;
@@ -433,7 +728,7 @@ public IntegerSymbolImpl createInteger(long value)
         IntegerSymbolImpl sym = findInteger(value);
         if(sym == null)
         {
-            sym = new IntegerSymbolImpl(this, get_next_hash_id(), value);
+            sym = stamp(new IntegerSymbolImpl(this, get_next_hash_id(), value));
             intConstants.put(value, sym);
         }
         return sym;
@@ -446,7 +741,17 @@ public IntegerSymbolImpl createInteger(long value)
      */
     public IntegerSymbolImpl findInteger(long value)
     {
-        return intConstants.get(value);
+        IntegerSymbolImpl sym = intConstants.get(value);
+        if(strongReferences)
+        {
+            if(sym == null && (sym = releasedIntConstants.get(value)) != null)
+            {
+                releasedIntConstants.remove(value);
+                intConstants.put(value, sym);
+            }
+            stamp(sym);
+        }
+        return sym;
     }
     
     /*
@@ -459,7 +764,7 @@ public DoubleSymbolImpl createDouble(double value)
         DoubleSymbolImpl sym = findDouble(value);
         if(sym == null)
         {
-            sym = new DoubleSymbolImpl(this, get_next_hash_id(), value);
+            sym = stamp(new DoubleSymbolImpl(this, get_next_hash_id(), value));
             floatConstants.put(value, sym);
         }
         return sym;
@@ -472,7 +777,32 @@ public DoubleSymbolImpl createDouble(double value)
      */
     public DoubleSymbolImpl findDouble(double value)
     {
-        return floatConstants.get(value);
+        DoubleSymbolImpl sym = floatConstants.get(value);
+        if(strongReferences)
+        {
+            if(sym == null && (sym = releasedFloatConstants.remove(value)) != null)
+            {
+                floatConstants.put(value, sym);
+            }
+            stamp(sym);
+        }
+        return sym;
+    }
+    
+    /**
+     * Record that a constant was handed out, so the next
+     * {@link #releaseUnusedConstants()} keeps it
+     * 
+     * @param sym the constant, or {@code null}
+     * @return sym
+     */
+    private <T extends SymbolImpl> T stamp(T sym)
+    {
+        if(sym != null)
+        {
+            sym.release_stamp = release_generation;
+        }
+        return sym;
     }
     
     /*
@@ -531,49 +861,114 @@ private int get_next_hash_id()
         return current_symbol_hash_id += 137;
     }
     
-    private static IdKey getIdKey(char letter, long number)
+    private static long getIdKey(char letter, long number)
     {
-        // Using just a packed only has very minor memory usage or
-        // performance gains, so don't bother. IdKey is clearer.
-        // return (((long) letter) << 48) | number;
-        return new IdKey(letter, number);
+        // Name numbers are well below 2^48, so the letter fits above them
+        return (((long) letter) << 48) | number;
     }
     
-    private static class IdKey
+    /**
+     * Minimal map interface for the long-keyed symbol tables so they can be
+     * backed by a weak map or a {@link LongHashMap}.
+     * 
+     * @param <V> the symbol type
+     */
+    private interface LongSymbolMap<V extends SymbolImpl>
     {
-        private final char letter;
-        private final long number;
+        V get(long key);
         
-        public IdKey(char letter, long number)
+        void put(long key, V value);
+        
+        void remove(long key);
+        
+        Collection<V> values();
+        
+        int removeIf(Predicate<? super V> filter);
+        
+        int size();
+    }
+    
+    private static class WeakLongSymbolMap<V extends SymbolImpl> implements LongSymbolMap<V>
+    {
+        private final Map<Long, V> map = newReferenceMap();
+        
+        @Override
+        public V get(long key)
         {
-            this.letter = letter;
-            this.number = number;
+            return map.get(key);
         }
         
         @Override
-        public int hashCode()
+        public void put(long key, V value)
         {
-            return Objects.hash(letter, number);
+            map.put(key, value);
         }
         
         @Override
-        public boolean equals(Object obj)
+        public void remove(long key)
         {
-            if(this == obj)
-            {
-                return true;
-            }
-            if(obj == null)
-            {
-                return false;
-            }
-            if(getClass() != obj.getClass())
-            {
-                return false;
-            }
-            IdKey other = (IdKey) obj;
-            return letter == other.letter && number == other.number;
+            map.remove(key);
+        }
+        
+        @Override
+        public int removeIf(Predicate<? super V> filter)
+        {
+            final int before = map.size();
+            map.values().removeIf(filter);
+            return before - map.size();
+        }
+        
+        @Override
+        public int size()
+        {
+            return map.size();
+        }
+        
+        @Override
+        public Collection<V> values()
+        {
+            return map.values();
+        }
+    }
+    
+    private static class StrongLongSymbolMap<V extends SymbolImpl> implements LongSymbolMap<V>
+    {
+        private final LongHashMap<V> map = new LongHashMap<>();
+        
+        @Override
+        public V get(long key)
+        {
+            return map.get(key);
+        }
+        
+        @Override
+        public void put(long key, V value)
+        {
+            map.put(key, value);
+        }
+        
+        @Override
+        public void remove(long key)
+        {
+            map.remove(key);
+        }
+        
+        @Override
+        public int removeIf(Predicate<? super V> filter)
+        {
+            return map.removeIf(filter);
+        }
+        
+        @Override
+        public int size()
+        {
+            return map.size();
         }
         
+        @Override
+        public Collection<V> values()
+        {
+            return map.values();
+        }
     }
 }
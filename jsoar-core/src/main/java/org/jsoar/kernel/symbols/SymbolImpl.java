@@ -38,6 +38,13 @@ public abstract class SymbolImpl extends EqualityTest implements Symbol
     public /* epmem_hash_id */ long epmem_hash_id;
     public /* uint64_t */ long epmem_valid;
     
+    /**
+     * For constants in strong reference mode, the release generation in
+     * which the symbol factory last handed out this symbol. See
+     * {@link SymbolFactoryImpl#releaseUnusedConstants()}.
+     */
+    /* package */ int release_stamp;
+    
     /* package */ SymbolImpl(SymbolFactory factory, int hash_id)
     {
         this.factory = factory;
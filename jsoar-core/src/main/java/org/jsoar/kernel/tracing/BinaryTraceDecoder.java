@@ -0,0 +1,259 @@
+package org.jsoar.kernel.tracing;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Renders a stream recorded by {@link BinaryTraceWriter} as text. The output
+ * looks like the trace printed with the context decisions, firings and wme
+ * change categories enabled, using the default trace formats. Custom trace
+ * formats, wme activations and the wmes of firings aren't recorded, so they
+ * can't be reproduced.
+ * 
+ * <p>Usage from the command line:
+ * <pre>{@code
+ * java org.jsoar.kernel.tracing.BinaryTraceDecoder trace.bin > trace.txt
+ * }</pre>
+ * 
+ * @see BinaryTraceWriter
+ */
+public class BinaryTraceDecoder
+{
+    private final DataInputStream in;
+    private final Writer out;
+    private final List<String> strings = new ArrayList<>();
+    private long cycle = 0;
+    private boolean atStartOfLine = true;
+    
+    /**
+     * Decode a complete stream
+     * 
+     * @param in the recorded stream
+     * @param out the writer to print the text trace to. It is flushed, but
+     *     not closed.
+     * @throws IOException if the stream can't be read or isn't a binary
+     *     trace
+     */
+    public static void decode(InputStream in, Writer out) throws IOException
+    {
+        new BinaryTraceDecoder(in, out).decode();
+        out.flush();
+    }
+    
+    private BinaryTraceDecoder(InputStream in, Writer out)
+    {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.out = out;
+    }
+    
+    private void decode() throws IOException
+    {
+        final byte[] magic = new byte[BinaryTraceFormat.MAGIC.length];
+        in.readFully(magic);
+        if(!Arrays.equals(magic, BinaryTraceFormat.MAGIC))
+        {
+            throw new IOException("Not a binary trace");
+        }
+        final int version = in.readUnsignedByte();
+        if(version != BinaryTraceFormat.VERSION)
+        {
+            throw new IOException("Unsupported binary trace version " + version);
+        }
+        
+        int opcode;
+        while((opcode = in.read()) != -1)
+        {
+            switch(opcode)
+            {
+            case BinaryTraceFormat.CYCLE:
+                cycle = readVarLong();
+                break;
+            case BinaryTraceFormat.FIRING:
+                startNewLine();
+                print("Firing " + readSymbol());
+                break;
+            case BinaryTraceFormat.RETRACTION:
+                startNewLine();
+                print("Retracting " + readSymbol());
+                break;
+            case BinaryTraceFormat.WME_ADDED:
+                startNewLine();
+                print("=>WM: " + readWme());
+                break;
+            case BinaryTraceFormat.WME_REMOVED:
+                startNewLine();
+                print("<=WM: " + readWme());
+                break;
+            case BinaryTraceFormat.STATE_DECISION:
+            {
+                final int level = (int) readVarLong();
+                final String state = readSymbol();
+                final String attribute = readSymbol();
+                final String impasse = readSymbol();
+                startNewLine();
+                print(decisionPrefix(level) + "==>S: " + state + " " + describe(attribute, impasse));
+                break;
+            }
+            case BinaryTraceFormat.OPERATOR_DECISION:
+            {
+                final int level = (int) readVarLong();
+                final String operator = readSymbol();
+                final String name = readSymbol();
+                startNewLine();
+                print(decisionPrefix(level) + "   O: " + operator + " " + describe(name));
+                break;
+            }
+            default:
+                throw new IOException("Unknown binary trace record " + opcode);
+            }
+        }
+    }
+    
+    /**
+     * @return the text of {@code %right[6,%dc]: %rsd[   ]}
+     */
+    private String decisionPrefix(int level)
+    {
+        final StringBuilder b = new StringBuilder(String.format("%6d: ", cycle));
+        for(int i = 1; i < level; ++i)
+        {
+            b.append("   ");
+        }
+        return b.toString();
+    }
+    
+    /**
+     * @return the text of {@code %ifdef[(%v[...] ...)]}
+     */
+    private static String describe(String... values)
+    {
+        boolean any = false;
+        for(String value : values)
+        {
+            any |= !value.isEmpty();
+        }
+        return any ? "(" + String.join(" ", values) + ")" : "";
+    }
+    
+    private String readWme() throws IOException
+    {
+        final long timetag = readVarLong();
+        final String id = readSymbol();
+        final String attr = readSymbol();
+        final String value = readSymbol();
+        final boolean acceptable = in.readUnsignedByte() != 0;
+        return "(" + timetag + ": " + id + " ^" + attr + " " + value + (acceptable ? " +" : "") + ")\n";
+    }
+    
+    /**
+     * @return the symbol as printed, or an empty string if there is none
+     */
+    private String readSymbol() throws IOException
+    {
+        final int tag = in.readUnsignedByte();
+        switch(tag)
+        {
+        case BinaryTraceFormat.NONE:
+            return "";
+        case BinaryTraceFormat.IDENTIFIER:
+            return (char) in.readUnsignedByte() + Long.toString(readVarLong());
+        case BinaryTraceFormat.LONG_TERM_IDENTIFIER:
+            return "@" + (char) in.readUnsignedByte() + Long.toString(readVarLong());
+        case BinaryTraceFormat.INTEGER:
+        {
+            final long zigzag = readVarLong();
+            return Long.toString((zigzag >>> 1) ^ -(zigzag & 1));
+        }
+        case BinaryTraceFormat.DOUBLE:
+            return Double.toString(Double.longBitsToDouble(in.readLong()));
+        case BinaryTraceFormat.STRING:
+        {
+            final long index = readVarLong();
+            if(index >= strings.size())
+            {
+                throw new IOException("Undefined string " + index + " in binary trace");
+            }
+            return strings.get((int) index);
+        }
+        case BinaryTraceFormat.NEW_STRING:
+        {
+            final byte[] bytes = new byte[(int) readVarLong()];
+            in.readFully(bytes);
+            final String s = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(s);
+            return s;
+        }
+        default:
+            throw new IOException("Unknown symbol tag " + tag + " in binary trace");
+        }
+    }
+    
+    private long readVarLong() throws IOException
+    {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7)
+        {
+            final int b = in.read();
+            if(b == -1)
+            {
+                throw new EOFException("Truncated binary trace");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number in binary trace");
+    }
+    
+    /**
+     * Same as {@link Printer#startNewLine()}
+     */
+    private void startNewLine() throws IOException
+    {
+        if(!atStartOfLine)
+        {
+            out.write('\n');
+            atStartOfLine = true;
+        }
+    }
+    
+    private void print(String text) throws IOException
+    {
+        if(!text.isEmpty())
+        {
+            out.write(text);
+            atStartOfLine = text.charAt(text.length() - 1) == '\n';
+        }
+    }
+    
+    /**
+     * Decode a binary trace file to stdout
+     * 
+     * @param args the file to decode
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length != 1)
+        {
+            System.err.println("Usage: BinaryTraceDecoder <trace file>");
+            System.exit(1);
+        }
+        final Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        try(InputStream in = new FileInputStream(args[0]))
+        {
+            decode(in, out);
+        }
+    }
+}
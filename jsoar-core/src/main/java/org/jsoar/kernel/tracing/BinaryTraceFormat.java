@@ -0,0 +1,72 @@
+package org.jsoar.kernel.tracing;
+
+/**
+ * Constants of the binary trace format shared by {@link BinaryTraceWriter}
+ * and {@link BinaryTraceDecoder}.
+ * 
+ * <p>A stream starts with {@link #MAGIC} and {@link #VERSION}, followed by
+ * records. Each record is an opcode byte followed by its fields. Counts and
+ * numbers are unsigned LEB128 varints; integer constants are zigzag encoded
+ * first. Records don't carry the decision cycle. Instead a {@link #CYCLE}
+ * record is written whenever it changes.
+ * 
+ * <p>Symbols are written as a tag byte followed by the value. Strings are
+ * written out in full the first time they are used and by index in a
+ * dictionary afterwards. The dictionary is implicit: the n-th
+ * {@link #NEW_STRING} in the stream gets index n.
+ */
+final class BinaryTraceFormat
+{
+    static final byte[] MAGIC = { 'J', 'S', 'B', 'T' };
+    static final int VERSION = 1;
+    
+    // Records
+    
+    /** cycle */
+    static final int CYCLE = 1;
+    
+    /** production name */
+    static final int FIRING = 2;
+    
+    /** production name */
+    static final int RETRACTION = 3;
+    
+    /** timetag, id, attr, value, acceptable byte */
+    static final int WME_ADDED = 4;
+    
+    /** timetag, id, attr, value, acceptable byte */
+    static final int WME_REMOVED = 5;
+    
+    /** goal level, state, attribute, impasse */
+    static final int STATE_DECISION = 6;
+    
+    /** goal level, operator, name */
+    static final int OPERATOR_DECISION = 7;
+    
+    // Symbol tags
+    
+    /** no symbol */
+    static final int NONE = 0;
+    
+    /** letter byte, number */
+    static final int IDENTIFIER = 1;
+    
+    /** letter byte, number */
+    static final int LONG_TERM_IDENTIFIER = 2;
+    
+    /** zigzag value */
+    static final int INTEGER = 3;
+    
+    /** 8 bytes of raw long bits, big endian */
+    static final int DOUBLE = 4;
+    
+    /** dictionary index */
+    static final int STRING = 5;
+    
+    /** length, UTF-8 bytes. Adds the string to the dictionary. */
+    static final int NEW_STRING = 6;
+    
+    private BinaryTraceFormat()
+    {
+    }
+}
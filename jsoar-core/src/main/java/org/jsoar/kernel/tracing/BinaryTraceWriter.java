@@ -0,0 +1,388 @@
+package org.jsoar.kernel.tracing;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.DecisionCycle;
+import org.jsoar.kernel.PredefinedSymbols;
+import org.jsoar.kernel.memory.Instantiation;
+import org.jsoar.kernel.memory.Slot;
+import org.jsoar.kernel.memory.WmeImpl;
+import org.jsoar.kernel.symbols.DoubleSymbolImpl;
+import org.jsoar.kernel.symbols.IdentifierImpl;
+import org.jsoar.kernel.symbols.IntegerSymbolImpl;
+import org.jsoar.kernel.symbols.StringSymbolImpl;
+import org.jsoar.kernel.symbols.Symbol;
+import org.jsoar.kernel.symbols.SymbolImpl;
+import org.jsoar.util.adaptables.Adaptables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records an agent's trace as a compact binary stream instead of text.
+ * Firings, retractions, working memory changes and decisions are written as
+ * symbols and cycle numbers, without any formatting on the agent thread. Each
+ * distinct string is only formatted once, the first time it is written. Use
+ * {@link BinaryTraceDecoder} to turn a recorded stream into the usual text
+ * trace.
+ * 
+ * <p>Everything is recorded, independent of the watch level. Typical usage:
+ * <pre>{@code
+ * final BinaryTraceWriter writer = new BinaryTraceWriter(agent, new FileOutputStream("trace.bin"));
+ * agent.runFor(1000, RunType.DECISIONS);
+ * writer.close();
+ * }</pre>
+ * 
+ * <p>The writer must be created and closed on the agent thread. Since a
+ * recorder can't throw, the first failed write stops the recording and is
+ * thrown from {@link #flush()} or {@link #close()}.
+ * 
+ * @see BinaryTraceFormat
+ */
+public class BinaryTraceWriter implements TraceRecorder, Flushable, Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryTraceWriter.class);
+    
+    private final Trace trace;
+    private final DecisionCycle decisionCycle;
+    private final PredefinedSymbols predefinedSyms;
+    private final Symbol impasseSymbol;
+    private final OutputStream out;
+    
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final Map<String, Integer> productionNames = new HashMap<>();
+    private int nextString = 0;
+    private long cycle = -1;
+    private IOException failure;
+    
+    /**
+     * Start recording the agent's trace
+     * 
+     * @param agent the agent
+     * @param out the stream to write to. It is closed by {@link #close()}.
+     * @throws IOException if the header can't be written
+     */
+    public BinaryTraceWriter(Agent agent, OutputStream out) throws IOException
+    {
+        this.trace = agent.getTrace();
+        this.decisionCycle = Adaptables.adapt(agent, DecisionCycle.class);
+        this.predefinedSyms = Adaptables.adapt(agent, PredefinedSymbols.class);
+        this.impasseSymbol = agent.getSymbols().createString("impasse");
+        this.out = new BufferedOutputStream(out);
+        
+        this.out.write(BinaryTraceFormat.MAGIC);
+        this.out.write(BinaryTraceFormat.VERSION);
+        
+        trace.setRecorder(this);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jsoar.kernel.tracing.TraceRecorder#firing(org.jsoar.kernel.memory.Instantiation)
+     */
+    @Override
+    public void firing(Instantiation inst)
+    {
+        production(BinaryTraceFormat.FIRING, inst);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jsoar.kernel.tracing.TraceRecorder#retraction(org.jsoar.kernel.memory.Instantiation)
+     */
+    @Override
+    public void retraction(Instantiation inst)
+    {
+        production(BinaryTraceFormat.RETRACTION, inst);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jsoar.kernel.tracing.TraceRecorder#wmeAdded(org.jsoar.kernel.memory.WmeImpl)
+     */
+    @Override
+    public void wmeAdded(WmeImpl wme)
+    {
+        wme(BinaryTraceFormat.WME_ADDED, wme);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jsoar.kernel.tracing.TraceRecorder#wmeRemoved(org.jsoar.kernel.memory.WmeImpl)
+     */
+    @Override
+    public void wmeRemoved(WmeImpl wme)
+    {
+        wme(BinaryTraceFormat.WME_REMOVED, wme);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jsoar.kernel.tracing.TraceRecorder#decision(org.jsoar.kernel.symbols.IdentifierImpl)
+     */
+    @Override
+    public void decision(IdentifierImpl bottomGoal)
+    {
+        if(failure != null)
+        {
+            return;
+        }
+        try
+        {
+            startRecord();
+            final WmeImpl operator = bottomGoal.goalInfo.operator_slot.getWmes();
+            if(operator != null)
+            {
+                out.write(BinaryTraceFormat.OPERATOR_DECISION);
+                writeVarLong(bottomGoal.level);
+                writeSymbol(operator.value);
+                writeSymbol(findValue(operator.value, predefinedSyms.name_symbol));
+            }
+            else
+            {
+                out.write(BinaryTraceFormat.STATE_DECISION);
+                writeVarLong(bottomGoal.level);
+                writeSymbol(bottomGoal);
+                writeSymbol(findValue(bottomGoal, predefinedSyms.attribute_symbol));
+                writeSymbol(findValue(bottomGoal, impasseSymbol));
+            }
+        }
+        catch(IOException e)
+        {
+            fail(e);
+        }
+    }
+    
+    /**
+     * Write out everything recorded so far
+     * 
+     * @throws IOException if this or an earlier write failed
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        checkFailure();
+        out.flush();
+    }
+    
+    /**
+     * Stop recording and close the stream
+     * 
+     * @throws IOException if this or an earlier write failed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if(trace.getRecorder() == this)
+        {
+            trace.setRecorder(null);
+        }
+        try
+        {
+            checkFailure();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+    
+    private void production(int opcode, Instantiation inst)
+    {
+        if(failure != null)
+        {
+            return;
+        }
+        try
+        {
+            startRecord();
+            out.write(opcode);
+            final String name = inst.prod != null ? inst.prod.getName() : "[dummy production]";
+            final Integer index = productionNames.get(name);
+            if(index != null)
+            {
+                writeStringIndex(index);
+            }
+            else
+            {
+                productionNames.put(name, writeNewString(name));
+            }
+        }
+        catch(IOException e)
+        {
+            fail(e);
+        }
+    }
+    
+    private void wme(int opcode, WmeImpl wme)
+    {
+        if(failure != null)
+        {
+            return;
+        }
+        try
+        {
+            startRecord();
+            out.write(opcode);
+            writeVarLong(wme.getTimetag());
+            writeSymbol(wme.id);
+            writeSymbol(wme.attr);
+            writeSymbol(wme.value);
+            out.write(wme.acceptable ? 1 : 0);
+        }
+        catch(IOException e)
+        {
+            fail(e);
+        }
+    }
+    
+    /**
+     * Write a cycle record if the cycle changed since the last record
+     */
+    private void startRecord() throws IOException
+    {
+        final long current = decisionCycle.d_cycle_count.get();
+        if(current != cycle)
+        {
+            cycle = current;
+            out.write(BinaryTraceFormat.CYCLE);
+            writeVarLong(current);
+        }
+    }
+    
+    private void writeSymbol(SymbolImpl symbol) throws IOException
+    {
+        if(symbol == null)
+        {
+            out.write(BinaryTraceFormat.NONE);
+            return;
+        }
+        final IdentifierImpl id = symbol.asIdentifier();
+        if(id != null)
+        {
+            out.write(id.smem_lti != 0 ? BinaryTraceFormat.LONG_TERM_IDENTIFIER : BinaryTraceFormat.IDENTIFIER);
+            out.write(id.getNameLetter());
+            writeVarLong(id.getNameNumber());
+            return;
+        }
+        final IntegerSymbolImpl i = symbol.asInteger();
+        if(i != null)
+        {
+            out.write(BinaryTraceFormat.INTEGER);
+            final long value = i.getValue();
+            writeVarLong((value << 1) ^ (value >> 63));
+            return;
+        }
+        final DoubleSymbolImpl d = symbol.asDouble();
+        if(d != null)
+        {
+            out.write(BinaryTraceFormat.DOUBLE);
+            final long bits = Double.doubleToRawLongBits(d.getValue());
+            for(int shift = 56; shift >= 0; shift -= 8)
+            {
+                out.write((int) (bits >>> shift));
+            }
+            return;
+        }
+        final StringSymbolImpl s = symbol.asString();
+        if(s != null)
+        {
+            final Integer index = strings.get(s.getValue());
+            if(index != null)
+            {
+                writeStringIndex(index);
+            }
+            else
+            {
+                strings.put(s.getValue(), writeNewString(String.format("%s", s)));
+            }
+            return;
+        }
+        
+        // Anything else, e.g. a Java symbol, may print differently each
+        // time, so it isn't kept in the dictionary
+        writeNewString(String.format("%s", symbol));
+    }
+    
+    private void writeStringIndex(int index) throws IOException
+    {
+        out.write(BinaryTraceFormat.STRING);
+        writeVarLong(index);
+    }
+    
+    /**
+     * @return the dictionary index of the string
+     */
+    private int writeNewString(String text) throws IOException
+    {
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.write(BinaryTraceFormat.NEW_STRING);
+        writeVarLong(bytes.length);
+        out.write(bytes);
+        return nextString++;
+    }
+    
+    private void writeVarLong(long value) throws IOException
+    {
+        while((value & ~0x7FL) != 0)
+        {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+    
+    /**
+     * Looks in the same places as {@code %v[attr]} in a trace format
+     */
+    private static SymbolImpl findValue(SymbolImpl object, Symbol attr)
+    {
+        final IdentifierImpl id = object.asIdentifier();
+        if(id == null)
+        {
+            return null;
+        }
+        for(WmeImpl w = id.goalInfo != null ? id.goalInfo.getImpasseWmes() : null; w != null; w = w.next)
+        {
+            if(w.attr == attr)
+            {
+                return w.value;
+            }
+        }
+        for(WmeImpl w = id.getInputWmes(); w != null; w = w.next)
+        {
+            if(w.attr == attr)
+            {
+                return w.value;
+            }
+        }
+        final Slot s = Slot.find_slot(id, attr);
+        return s != null && s.getWmes() != null ? s.getWmes().value : null;
+    }
+    
+    private void fail(IOException e)
+    {
+        LOG.error("Binary trace write failed, recording stopped", e);
+        failure = e;
+    }
+    
+    private void checkFailure() throws IOException
+    {
+        if(failure != null)
+        {
+            throw new IOException("Binary trace write failed: " + failure.getMessage(), failure);
+        }
+    }
+}
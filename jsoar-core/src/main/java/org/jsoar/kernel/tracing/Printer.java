@@ -69,9 +69,10 @@ public void flush() throws IOException
         @Override
         public void write(char[] cbuf, int off, int len) throws IOException
         {
-            for(int i = off; i < len; ++i)
+            // Only the last char matters
+            if(len > 0)
             {
-                atStartOfLine = cbuf[i] == '\n';
+                atStartOfLine = cbuf[off + len - 1] == '\n';
             }
         }
     };
@@ -193,6 +193,7 @@ public static Trace createStdOutTrace()
     private EnumSet<Category> settings = EnumSet.noneOf(Category.class);
     private boolean enabled = true;
     private WmeTraceType wmeTraceType = WmeTraceType.NONE;
+    private TraceRecorder recorder = null;
     
     /**
      * @param printer
@@ -352,6 +353,26 @@ public void setWmeTraceType(WmeTraceType wmeTraceType)
         this.wmeTraceType = wmeTraceType;
     }
     
+    /**
+     * @return the recorder that receives trace events, or <code>null</code>
+     *     if there is none
+     */
+    public TraceRecorder getRecorder()
+    {
+        return recorder;
+    }
+    
+    /**
+     * Install a recorder that receives every trace event, independent of
+     * the enabled categories and the printer.
+     * 
+     * @param recorder the recorder, or <code>null</code> for none
+     */
+    public void setRecorder(TraceRecorder recorder)
+    {
+        this.recorder = recorder;
+    }
+    
     public Trace print(String format, Object... args)
     {
         if(enabled)
@@ -0,0 +1,56 @@
+package org.jsoar.kernel.tracing;
+
+import org.jsoar.kernel.memory.Instantiation;
+import org.jsoar.kernel.memory.WmeImpl;
+import org.jsoar.kernel.symbols.IdentifierImpl;
+
+/**
+ * Receives the events of an agent's trace as they happen, instead of as
+ * formatted text. A recorder is installed with
+ * {@link Trace#setRecorder(TraceRecorder)} and is called for every event
+ * regardless of which trace categories are enabled. It is called on the agent
+ * thread, in the middle of the decision cycle, so it must not modify the agent
+ * and should be quick.
+ * 
+ * @see BinaryTraceWriter
+ */
+public interface TraceRecorder
+{
+    /**
+     * Called when an instantiation fires, before its actions are executed
+     * 
+     * @param inst the instantiation
+     */
+    void firing(Instantiation inst);
+    
+    /**
+     * Called when an instantiation is retracted, if it retracts any
+     * preferences
+     * 
+     * @param inst the instantiation
+     */
+    void retraction(Instantiation inst);
+    
+    /**
+     * Called for each wme added to working memory
+     * 
+     * @param wme the wme
+     */
+    void wmeAdded(WmeImpl wme);
+    
+    /**
+     * Called for each wme removed from working memory
+     * 
+     * @param wme the wme
+     */
+    void wmeRemoved(WmeImpl wme);
+    
+    /**
+     * Called after each decision, i.e. when an operator is selected or a new
+     * state is created for an impasse, and when the top state is created.
+     * 
+     * @param bottomGoal the bottom goal after the decision. The decision is
+     *     its operator if it has one and the goal itself otherwise.
+     */
+    void decision(IdentifierImpl bottomGoal);
+}
@@ -6,12 +6,12 @@
 
 package org.jsoar.kernel.wma;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeMap;
 
 import org.jsoar.kernel.Decider;
 import org.jsoar.kernel.DecisionCycle;
@@ -75,8 +75,9 @@
  * <li>wma_reference == long
  * <li>wma_d_cycle == long
  * <li>wma_decay_set == {@code Set<wma_decay_element>}
- * <li>wma_forget_p_queue == {@code Map<Long, Set<wma_decay_element>}
- * <li>wma_decay_cycle_set == {@code Set<Long>}
+ * <li>wma_forget_p_queue == {@link ForgettingQueue}
+ * <li>wma_decay_cycle_set == not needed, the forgetting queue doesn't keep
+ * empty buckets around
  * <li>wma_pooled_wme_set == {@code Set<Wme>}
  * <li>wma_sym_reference_map = {@code Map<SymbolImpl, long>}
  * <li>tc_number = {@code Marker}
@@ -110,6 +111,12 @@ public class DefaultWorkingMemoryActivation implements WorkingMemoryActivation
      */
     private static final long WMA_FORGOTTEN_CYCLE = 0;
     
+    /**
+     * jsoar: the forgetting queue has 2^bits buckets, i.e. elements due within
+     * that many cycles are found without scanning the overflow list
+     */
+    private static final int WMA_FORGET_WHEEL_BITS = 10;
+    
     private Adaptable context;
     private Trace trace;
     private DecisionCycle decisionCycle;
@@ -122,17 +129,18 @@ public class DefaultWorkingMemoryActivation implements WorkingMemoryActivation
     private DefaultWorkingMemoryActivationStats stats; /* csoar: wma_stats */
     private DefaultWorkingMemoryActivationTimers timers; /* csoar: wma_timers */
     
-    private Set<Wme> wma_touched_elements;
-    private TreeMap<Long, Set<wma_decay_element>> wma_forget_pq; // using TreeMap because this needs to be sorted and we will use TreeMap-specific methods
-    private Set<Long> wma_touched_sets;
-    private Map<Wme, wma_decay_element> wmaDecayElements = new HashMap<>();
+    private final List<wma_decay_element> wma_touched_elements = new ArrayList<>();
+    private ForgettingQueue wma_forget_pq;
+    private final List<wma_decay_element> wma_forget_due = new ArrayList<>();
     
     private int wma_power_size;
+    private int wma_power_bound;
     private double wma_power_array[];
+    private double wma_decay_rate;
     private long wma_approx_array[];
     private double wma_thresh_exp;
     private boolean wma_initialized;
-    // private Marker wma_tc_counter; //this only used in one function, eliminated in favor of a local solution
+    private int wma_tc_counter;
     private long wma_d_cycle_count;
     
     public DefaultWorkingMemoryActivation(Adaptable context)
@@ -150,6 +158,17 @@ public void d_cycle_count_decrement()
         wma_d_cycle_count--;
     }
     
+    /**
+     * Keep the decision cycle count in step with the agent's when the agent's
+     * is set directly, e.g. when it is restored from a snapshot.
+     * 
+     * @param count the new decision cycle count
+     */
+    public void d_cycle_count_set(long count)
+    {
+        wma_d_cycle_count = count;
+    }
+    
     public void resetTimers()
     {
         timers.reset();
@@ -190,9 +209,7 @@ public void initialize()
         stats = new DefaultWorkingMemoryActivationStats(properties);
         timers = new DefaultWorkingMemoryActivationTimers(properties);
         
-        wma_forget_pq = new TreeMap<Long, Set<wma_decay_element>>();
-        wma_touched_elements = new HashSet<Wme>();
-        wma_touched_sets = new HashSet<Long>();
+        wma_forget_pq = new ForgettingQueue(WMA_FORGET_WHEEL_BITS);
         
         // call wma_init/wma_deinit when wma is turned on/off
         properties.addListener(DefaultWorkingMemoryActivationParams.ACTIVATION, new PropertyListener<ActivationChoices>()
@@ -271,15 +288,16 @@ private void wma_init()
                 final double cache_bound = ((max_pow_cache * 1024 * 1024) / ( /* sizeof( double ) */ 8));
                 
                 wma_power_size = (int) (Math.ceil((cache_full > cache_bound) ? (cache_bound) : (cache_full)));
+                
+                // jsoar: WMEs that keep being referenced outlive cache_full, so the cache
+                // grows on demand (see wma_pow) up to the max-pow-cache bound
+                wma_power_bound = (int) Math.min(Integer.MAX_VALUE - 8, Math.ceil(cache_bound));
             }
             
-            wma_power_array = new double[wma_power_size];
-            
-            wma_power_array[0] = 0.0;
-            for(int i = 1; i < wma_power_size; i++)
-            {
-                wma_power_array[i] = Math.pow((i), decay_rate);
-            }
+            wma_decay_rate = decay_rate;
+            wma_power_array = new double[Math.max(wma_power_size, 1)];
+            wma_power_size = 0;
+            wma_fill_power_array(wma_power_array.length);
         }
         
         // calculate the pre-log'd forgetting threshold, to avoid most
@@ -314,6 +332,7 @@ private void wma_deinit()
         
         // release power array memory
         wma_power_array = null;
+        wma_power_size = 0;
         
         // release approximation array memory (if applicable)
         if(params.forgetting.get() == ForgettingChoices.approx)
@@ -322,14 +341,17 @@ private void wma_deinit()
         }
         
         // clear touched
-        wma_touched_elements.clear();
-        wma_touched_sets.clear();
+        wma_clear_touched_elements();
         
         // clear forgetting priority queue
         wma_forget_pq.clear();
         
-        // jsoar modification: clear the decay elements (otherwise the wmes will never be garbage collected)
-        wmaDecayElements.clear();
+        // jsoar modification: clear the decay elements from the wmes, so they start
+        // over if wma is turned back on
+        for(WmeImpl w : rete.getAllWmes())
+        {
+            w.wma_decay_el = null;
+        }
         
         // RPM 2/2013: should slot.wma_val_references be cleaned up somehow?
         // Probably not a big deal since those will get cleaned up when the slots are removed
@@ -382,10 +404,34 @@ private double wma_pow(final long cycle_diff)
         {
             return wma_power_array[(int) cycle_diff];
         }
+        else if(cycle_diff < wma_power_bound)
+        {
+            wma_fill_power_array((int) Math.min(wma_power_bound, Math.max(cycle_diff + 1, 2L * wma_power_size)));
+            return wma_power_array[(int) cycle_diff];
+        }
         else
         {
-            return Math.pow(cycle_diff, params.decay_rate.get());
+            return Math.pow(cycle_diff, wma_decay_rate);
+        }
+    }
+    
+    /**
+     * jsoar: extend the cache of integer powers of the decay exponent
+     * 
+     * @param new_size the number of powers to cache
+     */
+    private void wma_fill_power_array(final int new_size)
+    {
+        if(new_size > wma_power_array.length)
+        {
+            wma_power_array = Arrays.copyOf(wma_power_array, new_size);
         }
+        
+        for(int i = wma_power_size; i < new_size; i++)
+        {
+            wma_power_array[i] = (i == 0) ? 0.0 : Math.pow((i), wma_decay_rate);
+        }
+        wma_power_size = new_size;
     }
     
     /**
@@ -405,10 +451,10 @@ private double wma_sum_history(final wma_history history, final long current_cyc
         {
             p = wma_history_prev(p);
             
-            cycle_diff = (current_cycle - history.access_history[p].d_cycle);
+            cycle_diff = (current_cycle - history.access_d_cycle[p]);
             assert (cycle_diff > 0);
             
-            return_val += (history.access_history[p].num_references * wma_pow(cycle_diff));
+            return_val += (history.access_num_references[p] * wma_pow(cycle_diff));
             
             counter--;
         }
@@ -473,8 +519,7 @@ private long wma_calculate_initial_boost(final Wme w)
     {
         long return_val = 0;
         
-        // this is a replacement for putting wma_tc_number on every wme
-        final Set<Wme> alreadyProcessed = new HashSet<>();
+        final int tc = ++wma_tc_counter;
         
         long num_cond_wmes = 0;
         double combined_time_sum = 0.0;
@@ -486,12 +531,12 @@ private long wma_calculate_initial_boost(final Wme w)
                 for(Condition cond = pref.inst.top_of_instantiated_conditions; cond != null; cond = cond.next)
                 {
                     PositiveCondition pc = cond.asPositiveCondition();
-                    if((pc != null) && (!alreadyProcessed.contains(pc.bt().wme_)))
+                    if((pc != null) && (pc.bt().wme_.wma_tc_value != tc))
                     {
-                        Wme cond_wme = pc.bt().wme_;
-                        alreadyProcessed.add(cond_wme);
+                        WmeImpl cond_wme = pc.bt().wme_;
+                        cond_wme.wma_tc_value = tc;
                         
-                        wma_decay_element wma_decay_el = wmaDecayElements.get(cond_wme);
+                        wma_decay_element wma_decay_el = cond_wme.wma_decay_el;
                         if(wma_decay_el != null)
                         {
                             if(!wma_decay_el.just_created)
@@ -505,15 +550,16 @@ else if(cond_wme.getPreferences().hasNext())
                             final Preference p = cond_wme.getPreferences().next();
                             if(p.wma_o_set != null)
                             {
-                                for(Wme wme : p.wma_o_set)
+                                for(Wme o_wme : p.wma_o_set)
                                 {
-                                    wma_decay_el = wmaDecayElements.get(wme);
-                                    if(!alreadyProcessed.contains(wme) && (wma_decay_el == null || !wma_decay_el.just_created))
+                                    final WmeImpl wme = (WmeImpl) o_wme;
+                                    wma_decay_el = wme.wma_decay_el;
+                                    if((wme.wma_tc_value != tc) && (wma_decay_el == null || !wma_decay_el.just_created))
                                     {
                                         num_cond_wmes++;
                                         combined_time_sum += wma_get_wme_activation(wme, false);
                                         
-                                        alreadyProcessed.add(wme);
+                                        wme.wma_tc_value = tc;
                                     }
                                 }
                             }
@@ -566,7 +612,7 @@ public void wma_activate_wme(final Wme w, final long num_references, final Set<W
         // o-supported, non-architectural WME
         if(wma_should_have_decay_element(w))
         {
-            wma_decay_element temp_el = wmaDecayElements.get(w);
+            wma_decay_element temp_el = wma_get_decay_element(w);
             
             // if decay structure doesn't exist, create it
             if(temp_el == null)
@@ -584,8 +630,8 @@ public void wma_activate_wme(final Wme w, final long num_references, final Set<W
                 
                 for(int i = 0; i < wma_history.WMA_DECAY_HISTORY; i++)
                 {
-                    temp_el.touches.access_history[i].d_cycle = 0;
-                    temp_el.touches.access_history[i].num_references = 0;
+                    temp_el.touches.access_d_cycle[i] = 0;
+                    temp_el.touches.access_num_references[i] = 0;
                 }
                 
                 temp_el.touches.history_references = 0;
@@ -595,7 +641,7 @@ public void wma_activate_wme(final Wme w, final long num_references, final Set<W
                 // prevents confusion with delayed forgetting
                 temp_el.forget_cycle = -1L;
                 
-                wmaDecayElements.put(w, temp_el);
+                ((WmeImpl) w).wma_decay_el = temp_el;
                 
                 if(trace.isEnabled(Category.WMA))
                 {
@@ -617,7 +663,7 @@ public void wma_activate_wme(final Wme w, final long num_references, final Set<W
             else
             {
                 temp_el.num_references += num_references;
-                wma_touched_elements.add(w);
+                wma_touch(temp_el);
             }
         }
         // i-supported, non-architectural WME
@@ -655,11 +701,11 @@ else if(!o_only && (w.getPreferences().hasNext()) && (w.getPreferences().next().
                 // the wme preference)
                 else
                 {
-                    final wma_decay_element wma_decay_el = wmaDecayElements.get(wme);
+                    final wma_decay_element wma_decay_el = wma_get_decay_element(wme);
                     if(wma_decay_el != null)
                     {
                         wma_decay_el.num_references += num_references;
-                        wma_touched_elements.add(wme);
+                        wma_touch(wma_decay_el);
                     }
                 }
             }
@@ -675,6 +721,37 @@ else if(!o_only && !w.getPreferences().hasNext())
         }
     }
     
+    /**
+     * jsoar: the decay element of a wme, which csoar keeps on the wme too
+     * 
+     * @return the decay element, or {@code null} if the wme doesn't have one
+     */
+    private static wma_decay_element wma_get_decay_element(final Wme w)
+    {
+        return (w instanceof WmeImpl) ? ((WmeImpl) w).wma_decay_el : null;
+    }
+    
+    /**
+     * jsoar: add an element to wma_touched_elements unless it is there already
+     */
+    private void wma_touch(final wma_decay_element decay_el)
+    {
+        if(!decay_el.touched)
+        {
+            decay_el.touched = true;
+            wma_touched_elements.add(decay_el);
+        }
+    }
+    
+    private void wma_clear_touched_elements()
+    {
+        for(wma_decay_element decay_el : wma_touched_elements)
+        {
+            decay_el.touched = false;
+        }
+        wma_touched_elements.clear();
+    }
+    
     /**
      * wma.cpp:647:wma_deactivate_element
      * 
@@ -686,7 +763,8 @@ private void wma_deactivate_element(final Wme w, final wma_decay_element temp_el
         {
             if(!temp_el.just_removed)
             {
-                wma_touched_elements.remove(w);
+                // jsoar: the element stays in wma_touched_elements, which
+                // skips elements that have been removed
                 
                 if((params.forgetting.get() == ForgettingChoices.approx) || (params.forgetting.get() == ForgettingChoices.bsearch))
                 {
@@ -701,7 +779,7 @@ private void wma_deactivate_element(final Wme w, final wma_decay_element temp_el
     @Override
     public void wma_remove_decay_element(final Wme w)
     {
-        final wma_decay_element temp_el = wmaDecayElements.get(w);
+        final wma_decay_element temp_el = wma_get_decay_element(w);
         
         if(temp_el != null)
         {
@@ -719,7 +797,7 @@ public void wma_remove_decay_element(final Wme w)
                                 + "remove " + w.getTimetag() + "\n");
             }
             
-            wmaDecayElements.remove(w);
+            ((WmeImpl) w).wma_decay_el = null;
         }
     }
     
@@ -736,21 +814,7 @@ private void wma_forgetting_add_to_p_queue(final wma_decay_element decay_el, fin
     {
         if(decay_el != null)
         {
-            decay_el.forget_cycle = new_cycle;
-            
-            final Set<wma_decay_element> pq = wma_forget_pq.get(new_cycle);
-            if(pq == null)
-            {
-                Set<wma_decay_element> newbie = new HashSet<>();
-                
-                newbie.add(decay_el);
-                
-                wma_forget_pq.put(new_cycle, newbie);
-            }
-            else
-            {
-                pq.add(decay_el);
-            }
+            wma_forget_pq.add(decay_el, new_cycle);
         }
     }
     
@@ -761,26 +825,13 @@ private void wma_forgetting_remove_from_p_queue(final wma_decay_element decay_el
     {
         if(decay_el != null)
         {
-            // try to find set for the element per cycle
-            final Set<wma_decay_element> pq = wma_forget_pq.get(decay_el.forget_cycle);
-            if(pq != null)
-            {
-                if(pq.contains(decay_el))
-                {
-                    pq.remove(decay_el);
-                    
-                    if(pq.isEmpty())
-                    {
-                        wma_touched_sets.add(decay_el.forget_cycle);
-                    }
-                }
-            }
+            wma_forget_pq.remove(decay_el);
         }
     }
     
     private void wma_forgetting_move_in_p_queue(final wma_decay_element decay_el, final long new_cycle)
     {
-        if(decay_el != null && (decay_el.forget_cycle != new_cycle))
+        if(decay_el != null && (decay_el.forget_cycle != new_cycle || decay_el.forget_slot == ForgettingQueue.NOT_QUEUED))
         {
             wma_forgetting_remove_from_p_queue(decay_el);
             wma_forgetting_add_to_p_queue(decay_el, new_cycle);
@@ -804,9 +855,9 @@ private long wma_forgetting_estimate_cycle(final wma_decay_element decay_el, fin
             {
                 p = wma_history_prev(p);
                 
-                final long cycle_diff = (return_val - history.access_history[p].d_cycle);
+                final long cycle_diff = (return_val - history.access_d_cycle[p]);
                 
-                final int approx_ref = (int) ((history.access_history[p].num_references < WMA_REFERENCES_PER_DECISION) ? (history.access_history[p].num_references)
+                final int approx_ref = (int) ((history.access_num_references[p] < WMA_REFERENCES_PER_DECISION) ? (history.access_num_references[p])
                         : (WMA_REFERENCES_PER_DECISION - 1));
                 if(wma_approx_array[approx_ref] > cycle_diff)
                 {
@@ -931,10 +982,12 @@ private boolean wma_forgetting_update_p_queue()
             final double decay_thresh = wma_thresh_exp;
             final boolean forget_only_lti = (params.forget_wme.get() == ForgetWmeChoices.lti);
             
-            final Map.Entry<Long, Set<wma_decay_element>> pq = wma_forget_pq.firstEntry();
-            if(pq.getKey() == current_cycle)
+            // the elements in the queue for this cycle are no longer queued, so
+            // moving them to a later cycle below doesn't disturb the iteration
+            wma_forget_pq.poll(current_cycle, wma_forget_due);
+            if(!wma_forget_due.isEmpty())
             {
-                for(wma_decay_element current : pq.getValue())
+                for(wma_decay_element current : wma_forget_due)
                 {
                     if(wma_calculate_decay_activation(current, current_cycle, false) < decay_thresh)
                     {
@@ -951,7 +1004,7 @@ private boolean wma_forgetting_update_p_queue()
                                 {
                                     for(WmeImpl w = s.getWmes(); (w != null && do_forget); w = w.next)
                                     {
-                                        final wma_decay_element wma_decay_el = wmaDecayElements.get(w);
+                                        final wma_decay_element wma_decay_el = w.wma_decay_el;
                                         if(w.preference.o_supported && (wma_decay_el == null || (wma_decay_el.forget_cycle != WMA_FORGOTTEN_CYCLE)))
                                         {
                                             do_forget = false;
@@ -993,21 +1046,8 @@ private boolean wma_forgetting_update_p_queue()
                 }
                 
                 // clean up decay set
-                wma_touched_sets.add(pq.getKey());
-                pq.getValue().clear();
+                wma_forget_due.clear();
             }
-            
-            // clean up touched sets
-            for(long touched : wma_touched_sets)
-            {
-                final Set<wma_decay_element> pq_v = wma_forget_pq.get(touched);
-                
-                if(pq_v != null && pq_v.isEmpty())
-                {
-                    wma_forget_pq.remove(touched);
-                }
-            }
-            wma_touched_sets.clear();
         }
         
         return return_val;
@@ -1025,7 +1065,7 @@ private boolean wma_forgetting_naive_sweep()
         
         for(Wme w : rete.getAllWmes())
         {
-            final wma_decay_element wma_decay_el = wmaDecayElements.get(w);
+            final wma_decay_element wma_decay_el = wma_get_decay_element(w);
             if(wma_decay_el != null && (!forget_only_lti || (((IdentifierImpl) w.getIdentifier()).smem_lti != 0)))
             {
                 // to be forgotten, wme must...
@@ -1033,7 +1073,7 @@ private boolean wma_forgetting_naive_sweep()
                 // - not have been accessed this cycle (i.e. no decay)
                 // - have activation less than threshold
                 if((wma_decay_el.touches.total_references > 0) &&
-                        (wma_decay_el.touches.access_history[wma_history_prev(wma_decay_el.touches.next_p)].d_cycle < current_cycle) &&
+                        (wma_decay_el.touches.access_d_cycle[wma_history_prev(wma_decay_el.touches.next_p)] < current_cycle) &&
                         (wma_calculate_decay_activation(wma_decay_el, current_cycle, false) < decay_thresh))
                 {
                     if(wma_forgetting_forget_wme(w))
@@ -1084,17 +1124,21 @@ private void wma_update_decay_histories()
         final boolean forgetting = ((params.forgetting.get() == ForgettingChoices.approx) || (params.forgetting.get() == ForgettingChoices.bsearch));
         
         // add to history for changed elements
-        for(Wme w : wma_touched_elements)
+        for(wma_decay_element temp_el : wma_touched_elements)
         {
-            final wma_decay_element temp_el = wmaDecayElements.get(w);
+            temp_el.touched = false;
+            if(temp_el.just_removed)
+            {
+                continue;
+            }
             
             // update number of references in the current history
             // (has to come before history overwrite)
-            temp_el.touches.history_references += (temp_el.num_references - temp_el.touches.access_history[temp_el.touches.next_p].num_references);
+            temp_el.touches.history_references += (temp_el.num_references - temp_el.touches.access_num_references[temp_el.touches.next_p]);
             
             // set history
-            temp_el.touches.access_history[temp_el.touches.next_p].d_cycle = current_cycle;
-            temp_el.touches.access_history[temp_el.touches.next_p].num_references = temp_el.num_references;
+            temp_el.touches.access_d_cycle[temp_el.touches.next_p] = current_cycle;
+            temp_el.touches.access_num_references[temp_el.touches.next_p] = temp_el.num_references;
             
             // log
             if(trace.isEnabled(Category.WMA))
@@ -1154,7 +1198,7 @@ public double wma_get_wme_activation(final Wme w, final boolean log_result)
     {
         double return_val = (log_result) ? (WMA_ACTIVATION_NONE) : (WMA_TIME_SUM_NONE);
         
-        final wma_decay_element wma_decay_el = wmaDecayElements.get(w);
+        final wma_decay_element wma_decay_el = wma_get_decay_element(w);
         if(wma_decay_el != null)
         {
             return_val = wma_calculate_decay_activation(wma_decay_el, wma_d_cycle_count, log_result);
@@ -1167,7 +1211,7 @@ public double wma_get_wme_activation(final Wme w, final boolean log_result)
     public String wma_get_wme_history(final Wme w)
     {
         String ret = "";
-        final wma_decay_element wma_decay_el = wmaDecayElements.get(w);
+        final wma_decay_element wma_decay_el = wma_get_decay_element(w);
         if(wma_decay_el != null)
         {
             final wma_history history = wma_decay_el.touches;
@@ -1183,7 +1227,7 @@ public String wma_get_wme_history(final Wme w)
                 counter--;
                 
                 ret += "\n"
-                        + history.access_history[p].toString(current_cycle);
+                        + history.toString(p, current_cycle);
             }
             
             final ForgettingChoices forget = params.forgetting.get();
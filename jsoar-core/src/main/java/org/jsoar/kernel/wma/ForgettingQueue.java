@@ -0,0 +1,198 @@
+package org.jsoar.kernel.wma;
+
+import java.util.List;
+
+/**
+ * Decay elements waiting to be checked for forgetting, keyed by their
+ * predicted forget cycle.
+ * 
+ * <p>This replaces csoar's {@code wma_forget_p_queue} (a map from cycle to a set
+ * of elements) with a hashed timing wheel. Elements are linked into the bucket
+ * for their cycle through fields of {@link wma_decay_element}, so adding,
+ * moving and removing elements is constant time and doesn't allocate. Elements
+ * that are due further in the future than the wheel covers wait in an overflow
+ * list that is moved into the wheel every half revolution. Polling a cycle only
+ * looks at the elements in its bucket, so its cost depends on the number of
+ * elements that are due rather than on the size of working memory.
+ */
+final class ForgettingQueue
+{
+    /**
+     * {@link wma_decay_element#forget_slot} of elements that aren't queued
+     */
+    static final int NOT_QUEUED = -1;
+    
+    private final int mask;
+    
+    /**
+     * The first element of each bucket, followed by the first element of the
+     * overflow list
+     */
+    private final wma_decay_element[] heads;
+    private final int overflow;
+    
+    private int size;
+    private long now;
+    private long lastRedistribution;
+    
+    /**
+     * @param bits the wheel has {@code 2^bits} buckets
+     */
+    ForgettingQueue(int bits)
+    {
+        this.mask = (1 << bits) - 1;
+        this.overflow = mask + 1;
+        this.heads = new wma_decay_element[overflow + 1];
+    }
+    
+    /**
+     * @return the number of queued elements
+     */
+    int size()
+    {
+        return size;
+    }
+    
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+    
+    /**
+     * Queue an element to be checked at a cycle. The element must not be
+     * queued already.
+     * 
+     * @param decay_el the element
+     * @param cycle the cycle to check the element at
+     */
+    void add(wma_decay_element decay_el, long cycle)
+    {
+        assert decay_el.forget_slot == NOT_QUEUED;
+        decay_el.forget_cycle = cycle;
+        link(decay_el, slotFor(cycle));
+        size++;
+    }
+    
+    /**
+     * Remove an element from the queue if it is queued.
+     * 
+     * @param decay_el the element
+     */
+    void remove(wma_decay_element decay_el)
+    {
+        if(decay_el.forget_slot != NOT_QUEUED)
+        {
+            unlink(decay_el);
+            size--;
+        }
+    }
+    
+    /**
+     * Remove all of the elements that are due at a cycle.
+     * 
+     * @param cycle the current cycle
+     * @param due receives the elements that are due, which are no longer
+     *     queued
+     */
+    void poll(long cycle, List<wma_decay_element> due)
+    {
+        now = cycle;
+        if(cycle - lastRedistribution >= overflow / 2 || cycle < lastRedistribution)
+        {
+            redistribute();
+        }
+        
+        final int slot = (int) (cycle & mask);
+        wma_decay_element decay_el = heads[slot];
+        while(decay_el != null)
+        {
+            final wma_decay_element next = decay_el.forget_next;
+            if(decay_el.forget_cycle == cycle)
+            {
+                unlink(decay_el);
+                size--;
+                due.add(decay_el);
+            }
+            decay_el = next;
+        }
+    }
+    
+    /**
+     * Remove all elements
+     */
+    void clear()
+    {
+        for(int i = 0; i < heads.length; i++)
+        {
+            wma_decay_element decay_el = heads[i];
+            while(decay_el != null)
+            {
+                final wma_decay_element next = decay_el.forget_next;
+                decay_el.forget_next = decay_el.forget_prev = null;
+                decay_el.forget_slot = NOT_QUEUED;
+                decay_el = next;
+            }
+            heads[i] = null;
+        }
+        size = 0;
+    }
+    
+    private int slotFor(long cycle)
+    {
+        // elements that are already due go in the wheel too, where they are
+        // found if the cycle count is moved back
+        return (cycle - now < overflow) ? (int) (cycle & mask) : overflow;
+    }
+    
+    /**
+     * Move the overflow elements that are now close enough into the wheel
+     */
+    private void redistribute()
+    {
+        lastRedistribution = now;
+        
+        wma_decay_element decay_el = heads[overflow];
+        while(decay_el != null)
+        {
+            final wma_decay_element next = decay_el.forget_next;
+            final int slot = slotFor(decay_el.forget_cycle);
+            if(slot != overflow)
+            {
+                unlink(decay_el);
+                link(decay_el, slot);
+            }
+            decay_el = next;
+        }
+    }
+    
+    private void link(wma_decay_element decay_el, int slot)
+    {
+        final wma_decay_element head = heads[slot];
+        decay_el.forget_slot = slot;
+        decay_el.forget_prev = null;
+        decay_el.forget_next = head;
+        if(head != null)
+        {
+            head.forget_prev = decay_el;
+        }
+        heads[slot] = decay_el;
+    }
+    
+    private void unlink(wma_decay_element decay_el)
+    {
+        if(decay_el.forget_prev != null)
+        {
+            decay_el.forget_prev.forget_next = decay_el.forget_next;
+        }
+        else
+        {
+            heads[decay_el.forget_slot] = decay_el.forget_next;
+        }
+        if(decay_el.forget_next != null)
+        {
+            decay_el.forget_next.forget_prev = decay_el.forget_prev;
+        }
+        decay_el.forget_next = decay_el.forget_prev = null;
+        decay_el.forget_slot = NOT_QUEUED;
+    }
+}
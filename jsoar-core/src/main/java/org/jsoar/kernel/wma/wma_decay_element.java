@@ -38,4 +38,13 @@
     // if forgetting is enabled, this tells us when we think
     // we need to forget this wme
     long forget_cycle;
+    
+    // jsoar: links to the other elements with the same forget_cycle
+    // bucket in the ForgettingQueue, and the bucket this element is in
+    wma_decay_element forget_prev;
+    wma_decay_element forget_next;
+    int forget_slot = ForgettingQueue.NOT_QUEUED;
+    
+    // jsoar: whether this element is in wma_touched_elements
+    boolean touched;
 }
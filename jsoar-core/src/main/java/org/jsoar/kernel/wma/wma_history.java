@@ -14,7 +14,10 @@
      */
     public static final int WMA_DECAY_HISTORY = 10;
     
-    wma_cycle_reference access_history[] = new wma_cycle_reference[WMA_DECAY_HISTORY];
+    // jsoar: csoar's array of wma_cycle_reference, stored as parallel
+    // primitive arrays so a history is three allocations rather than twelve
+    final long access_d_cycle[] = new long[WMA_DECAY_HISTORY];
+    final long access_num_references[] = new long[WMA_DECAY_HISTORY];
     int next_p;
     int history_ct;
     
@@ -22,11 +25,15 @@
     long total_references;
     long first_reference;
     
-    wma_history()
+    /**
+     * wma.cpp:1224:_wma_ref_to_str
+     * 
+     * @param p the index of the reference
+     * @param current_cycle
+     */
+    String toString(int p, long current_cycle)
     {
-        for(int i = 0; i < WMA_DECAY_HISTORY; ++i)
-        {
-            this.access_history[i] = new wma_cycle_reference();
-        }
+        final long cycle_diff = (current_cycle - access_d_cycle[p]);
+        return access_num_references[p] + " @ d" + access_d_cycle[p] + " (-" + cycle_diff + ")";
     }
 }
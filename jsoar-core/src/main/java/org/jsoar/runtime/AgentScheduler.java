@@ -0,0 +1,233 @@
+package org.jsoar.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.RunType;
+import org.jsoar.util.Arguments;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs many agents on a fixed set of worker threads. Where each
+ * {@link ThreadedAgent} has a thread of its own, which sits idle most of the
+ * time in a simulation with hundreds of agents, an {@code AgentScheduler}
+ * multiplexes its agents over the threads of an {@link ExecutorService}.
+ * 
+ * <p>Each agent added with {@link #add(Agent)} keeps the guarantees of a
+ * {@link ThreadedAgent}: it is only ever touched by one thread at a time, its
+ * commands are executed in order, and {@link ScheduledAgent#runFor(long, RunType)}
+ * and {@link ScheduledAgent#stop()} behave the same way. Running agents take
+ * turns, running {@link #getSliceSize()} steps per turn.
+ * 
+ * <p>For simulations that advance in ticks, {@link #step(long, TimeUnit)}
+ * runs every agent that isn't already running for one decision and waits
+ * for all of them to finish.
+ * 
+ * <p>On JDK 21 and later, {@code new AgentScheduler(Executors.newVirtualThreadPerTaskExecutor())}
+ * runs each turn on a virtual thread instead.
+ * 
+ * <p>Typical usage:
+ * <pre>{@code
+ * final AgentScheduler scheduler = new AgentScheduler(4);
+ * for(Agent agent : agents)
+ * {
+ *     scheduler.add(agent);
+ * }
+ * for(int tick = 0; tick < ticks; ++tick)
+ * {
+ *     scheduler.step(1, TimeUnit.MINUTES);
+ * }
+ * scheduler.shutdown();
+ * }</pre>
+ * 
+ * @see ScheduledAgent
+ */
+public class AgentScheduler
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AgentScheduler.class);
+    
+    private final ExecutorService executor;
+    private final List<ScheduledAgent> agents = new CopyOnWriteArrayList<>();
+    private volatile int sliceSize = 1;
+    
+    /**
+     * Create a scheduler with a fixed number of daemon worker threads
+     * 
+     * @param threads the number of worker threads
+     */
+    public AgentScheduler(int threads)
+    {
+        this(Executors.newFixedThreadPool(threads, new WorkerThreadFactory()));
+    }
+    
+    /**
+     * Create a scheduler that runs agents on the given executor. The scheduler
+     * takes ownership of the executor and shuts it down in {@link #shutdown()}.
+     * 
+     * @param executor the executor
+     */
+    public AgentScheduler(ExecutorService executor)
+    {
+        this.executor = executor;
+    }
+    
+    /**
+     * Add an agent to this scheduler. The agent should not also be attached
+     * to a {@link ThreadedAgent} or be run by another thread.
+     * 
+     * @param agent the agent
+     * @return the scheduled agent
+     */
+    public ScheduledAgent add(Agent agent)
+    {
+        final ScheduledAgent scheduled = new ScheduledAgent(this, agent);
+        agents.add(scheduled);
+        return scheduled;
+    }
+    
+    /**
+     * @return a list of the agents run by this scheduler
+     */
+    public List<ScheduledAgent> getAgents()
+    {
+        return new ArrayList<>(agents);
+    }
+    
+    /**
+     * @return the maximum number of steps a running agent runs per turn
+     */
+    public int getSliceSize()
+    {
+        return sliceSize;
+    }
+    
+    /**
+     * Set the maximum number of steps a running agent runs per turn. Smaller
+     * slices keep agents more evenly paced, larger slices cost less overhead.
+     * An agent running forever runs this many decisions per turn.
+     * 
+     * @param sliceSize the slice size, at least 1
+     */
+    public void setSliceSize(int sliceSize)
+    {
+        Arguments.check(sliceSize > 0, "sliceSize must be positive");
+        this.sliceSize = sliceSize;
+    }
+    
+    /**
+     * Advance every agent one decision and call {@code done} when they are
+     * all finished. This method returns immediately. Agents that are already
+     * running are left alone.
+     * 
+     * @param done if not <code>null</code> this handler is called after every
+     *     agent has stopped.
+     */
+    public void step(final CompletionHandler<Void> done)
+    {
+        final List<ScheduledAgent> targets = getAgents();
+        
+        // One extra count so that done isn't called before every agent has
+        // been started
+        final AtomicInteger remaining = new AtomicInteger(targets.size() + 1);
+        final Runnable stopped = () ->
+        {
+            if(remaining.decrementAndGet() == 0 && done != null)
+            {
+                done.finish(null);
+            }
+        };
+        for(ScheduledAgent agent : targets)
+        {
+            agent.runFor(1, RunType.DECISIONS, stopped);
+        }
+        stopped.run();
+    }
+    
+    /**
+     * Advance every agent one decision and wait for them all to finish.
+     * Agents that are already running are left alone.
+     * 
+     * @param timeout timeout value
+     * @param timeUnit timeout units
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws TimeoutException on timeout
+     */
+    public void step(long timeout, TimeUnit timeUnit) throws InterruptedException, TimeoutException
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        step(result -> latch.countDown());
+        if(!latch.await(timeout, timeUnit))
+        {
+            throw new TimeoutException("Timed out waiting for agents to step");
+        }
+    }
+    
+    /**
+     * Stop every agent and shut down the executor. Commands that are already
+     * submitted are still executed, but the agents are not run any further.
+     * 
+     * @see #awaitTermination(long, TimeUnit)
+     */
+    public void shutdown()
+    {
+        for(ScheduledAgent agent : agents)
+        {
+            agent.stop();
+        }
+        executor.shutdown();
+    }
+    
+    /**
+     * Wait for the executor to finish after {@link #shutdown()}
+     * 
+     * @param timeout timeout value
+     * @param timeUnit timeout units
+     * @return true if the executor terminated, false on timeout
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit timeUnit) throws InterruptedException
+    {
+        return executor.awaitTermination(timeout, timeUnit);
+    }
+    
+    void remove(ScheduledAgent agent)
+    {
+        agents.remove(agent);
+    }
+    
+    void submit(Runnable turn)
+    {
+        try
+        {
+            executor.execute(turn);
+        }
+        catch(RejectedExecutionException e)
+        {
+            LOG.debug("Scheduler is shut down, dropping agent turn", e);
+        }
+    }
+    
+    private static class WorkerThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            final Thread thread = new Thread(r, "Agent scheduler worker " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
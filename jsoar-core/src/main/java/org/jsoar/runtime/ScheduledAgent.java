@@ -0,0 +1,487 @@
+package org.jsoar.runtime;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.AgentRunController;
+import org.jsoar.kernel.Phase;
+import org.jsoar.kernel.RunType;
+import org.jsoar.kernel.SoarProperties;
+import org.jsoar.kernel.events.RunLoopEvent;
+import org.jsoar.kernel.events.StartEvent;
+import org.jsoar.kernel.events.StopEvent;
+import org.jsoar.kernel.events.UncaughtExceptionEvent;
+import org.jsoar.util.StringTools;
+import org.jsoar.util.events.SoarEventListener;
+import org.jsoar.util.events.SoarEventManager;
+import org.jsoar.util.properties.PropertyProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An agent run by an {@link AgentScheduler}. This is the scheduler's
+ * equivalent of {@link ThreadedAgent}: the agent is only ever touched by one
+ * thread at a time, commands are executed in the order they are submitted and
+ * {@link #runFor(long, RunType)} and {@link #stop()} return immediately. The
+ * difference is that there is no thread per agent. Instead, the agent takes
+ * turns on one of the scheduler's worker threads, executing its pending
+ * commands and then, if it is running, one slice of its run.
+ * 
+ * <p>This object sets the {@link SoarProperties#IS_RUNNING} property
+ * appropriately and fires {@link StartEvent}, {@link StopEvent} and
+ * {@link UncaughtExceptionEvent} just like {@link ThreadedAgent}. A run is
+ * broken into slices of at most {@link AgentScheduler#getSliceSize()} steps so
+ * that a long run doesn't starve the other agents on the same worker.
+ * 
+ * @see AgentScheduler#add(Agent)
+ */
+public class ScheduledAgent implements AgentRunController
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduledAgent.class);
+    
+    private final AgentScheduler scheduler;
+    private final Agent agent;
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicBoolean agentRunning = new AtomicBoolean(false);
+    private final PropertyProvider<Boolean> agentRunningProvider = new PropertyProvider<>()
+    {
+        
+        @Override
+        public Boolean get()
+        {
+            return agentRunning.get();
+        }
+        
+        @Override
+        public Boolean set(Boolean value)
+        {
+            throw new UnsupportedOperationException(SoarProperties.IS_RUNNING.getName() + " property is read-only");
+        }
+    };
+    private final SoarEventListener pollListener = event ->
+    {
+        if(isAgentThread())
+        {
+            runCommands();
+        }
+    };
+    private final Runnable turn = this::turn;
+    
+    /**
+     * The thread currently taking this agent's turn, if any
+     */
+    private volatile Thread worker;
+    
+    /**
+     * The active run. Only touched during a turn.
+     */
+    private Run run;
+    
+    ScheduledAgent(AgentScheduler scheduler, Agent agent)
+    {
+        this.scheduler = scheduler;
+        this.agent = agent;
+        
+        this.agent.getProperties().setProvider(SoarProperties.IS_RUNNING, agentRunningProvider);
+        
+        // Commands submitted while the agent is running are picked up from
+        // the run loop, so stop() doesn't have to wait for the end of a slice.
+        getEvents().addListener(RunLoopEvent.class, pollListener);
+    }
+    
+    /**
+     * Initialize the underlying agent. This returns immediately.
+     * 
+     * @param done if not <code>null</code> this handler is called after the
+     *     agent is initialized.
+     * @return this
+     * @see Agent#initialize()
+     */
+    public ScheduledAgent initialize(final CompletionHandler<Void> done)
+    {
+        execute(() ->
+        {
+            agent.initialize();
+            return null;
+        }, done);
+        return this;
+    }
+    
+    /**
+     * Remove this agent from its scheduler. The agent is stopped and, once
+     * its pending commands have been executed, no longer touched by the
+     * scheduler. The underlying agent remains available for use.
+     */
+    public void detach()
+    {
+        scheduler.remove(this);
+        stop();
+        executeInternal(() -> getEvents().removeListener(RunLoopEvent.class, pollListener));
+    }
+    
+    /**
+     * @return the scheduler that runs this agent
+     */
+    public AgentScheduler getScheduler()
+    {
+        return scheduler;
+    }
+    
+    /**
+     * @return the agent owned by this proxy
+     */
+    public Agent getAgent()
+    {
+        return agent;
+    }
+    
+    public String getName()
+    {
+        return agent.getName();
+    }
+    
+    public SoarEventManager getEvents()
+    {
+        return agent.getEvents();
+    }
+    
+    /**
+     * @return <code>true</code> if the agent is current running
+     */
+    public boolean isRunning()
+    {
+        return agentRunning.get();
+    }
+    
+    /**
+     * Test whether the current thread is taking this agent's turn
+     * 
+     * @return true if the current thread is running the agent
+     */
+    public boolean isAgentThread()
+    {
+        return Thread.currentThread().equals(worker);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jsoar.kernel.AgentRunController#getStopPhase()
+     */
+    @Override
+    public Phase getStopPhase()
+    {
+        return agent.getStopPhase();
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jsoar.kernel.AgentRunController#setStopPhase(org.jsoar.kernel.Phase)
+     */
+    @Override
+    public void setStopPhase(Phase phase)
+    {
+        agent.setStopPhase(phase);
+    }
+    
+    /**
+     * Run the agent on the scheduler's workers. This method returns
+     * immediately. If the agent is already running, the command is ignored.
+     * When the agent stops a {@link StopEvent} event will be fired.
+     * 
+     * @param n number of steps
+     * @param runType type of steps
+     * @see Agent#runFor(long, RunType)
+     */
+    @Override
+    public void runFor(long n, RunType runType)
+    {
+        runFor(n, runType, null);
+    }
+    
+    /**
+     * Start the agent running. The agent will run until {@link #stop()} is
+     * called or it halts for some reason.
+     */
+    public void runForever()
+    {
+        runFor(0, RunType.FOREVER);
+    }
+    
+    /**
+     * Stop the agent running at some point in the future. When the agent
+     * finally stops, a {@link StopEvent} event will be fired.
+     */
+    public void stop()
+    {
+        executeInternal(() ->
+        {
+            agent.stop();
+            if(run != null)
+            {
+                run.stopped = true;
+            }
+        });
+    }
+    
+    /**
+     * Schedule the given runnable for execution on the agent's turn and return
+     * immediately.
+     * 
+     * @param runnable the runnable to run
+     */
+    public void execute(Runnable runnable)
+    {
+        execute(() ->
+        {
+            runnable.run();
+            return null;
+        }, null);
+    }
+    
+    /**
+     * Schedule the given callable for execution on the agent's turn and return
+     * immediately. Exceptions thrown by the callable are reported with an
+     * {@link UncaughtExceptionEvent}.
+     * 
+     * @param <V> return type
+     * @param callable the callable to run
+     * @param finish called after the callable is executed. Ignored if <code>null</code>.
+     */
+    public <V> void execute(final Callable<V> callable, final CompletionHandler<V> finish)
+    {
+        executeInternal(() ->
+        {
+            try
+            {
+                final V result = callable.call();
+                if(finish != null)
+                {
+                    finish.finish(result);
+                }
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch(Exception e)
+            {
+                processUncaughtException(e);
+            }
+        });
+    }
+    
+    /**
+     * Execute a callable on the agent's turn and wait for its result. As with
+     * {@link ThreadedAgent#executeAndWait(Callable, long, TimeUnit)}, this is
+     * prone to deadlocks if the calling thread handles events from the agent.
+     * 
+     * @param <V> the return type
+     * @param callable the callable to run
+     * @param timeout timeout value
+     * @param timeUnit timeout units
+     * @return the return value
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws ExecutionException if there's an unhandled exception in the callable
+     * @throws TimeoutException on timeout
+     */
+    public <V> V executeAndWait(final Callable<V> callable, long timeout, TimeUnit timeUnit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        final FutureTask<V> task = new FutureTask<>(callable);
+        
+        executeInternal(task);
+        
+        return task.get(timeout, timeUnit);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return agent.toString();
+    }
+    
+    /**
+     * Start a run, calling {@code done} once it is over. If the agent is
+     * already running, {@code done} is called right away and the run is
+     * ignored.
+     */
+    void runFor(final long n, final RunType runType, final Runnable done)
+    {
+        if(agentRunning.getAndSet(true))
+        {
+            if(done != null)
+            {
+                done.run();
+            }
+            return;
+        }
+        
+        agent.getProperties().firePropertyChanged(SoarProperties.IS_RUNNING, true, false);
+        
+        executeInternal(() ->
+        {
+            run = new Run(n, runType, done);
+            getEvents().fireEvent(new StartEvent(agent));
+        });
+    }
+    
+    private void executeInternal(Runnable runnable)
+    {
+        if(!isAgentThread())
+        {
+            commands.add(runnable);
+            schedule();
+        }
+        else
+        {
+            runnable.run();
+        }
+    }
+    
+    private void schedule()
+    {
+        if(scheduled.compareAndSet(false, true))
+        {
+            scheduler.submit(turn);
+        }
+    }
+    
+    /**
+     * One turn on a worker thread: the pending commands and then, if the agent
+     * is running, one slice of the run. At most one turn is scheduled at a
+     * time so the agent is never touched by two workers at once.
+     */
+    private void turn()
+    {
+        worker = Thread.currentThread();
+        final boolean again;
+        try
+        {
+            runCommands();
+            if(run != null)
+            {
+                runSlice();
+            }
+            again = run != null;
+        }
+        finally
+        {
+            worker = null;
+            scheduled.set(false);
+        }
+        
+        // Go to the back of the line rather than keep the worker, so that
+        // running agents take turns.
+        if(again || !commands.isEmpty())
+        {
+            schedule();
+        }
+    }
+    
+    private void runCommands()
+    {
+        Runnable runnable = commands.poll();
+        while(runnable != null)
+        {
+            try
+            {
+                runnable.run();
+            }
+            catch(RuntimeException e)
+            {
+                processUncaughtException(e);
+            }
+            runnable = commands.poll();
+        }
+    }
+    
+    private void runSlice()
+    {
+        final Run current = run;
+        if(!current.stopped)
+        {
+            try
+            {
+                if(current.runType == RunType.FOREVER)
+                {
+                    agent.runFor(scheduler.getSliceSize(), RunType.DECISIONS);
+                }
+                else
+                {
+                    final long n = Math.min(current.remaining, scheduler.getSliceSize());
+                    agent.runFor(n, current.runType);
+                    current.remaining -= n;
+                }
+                
+                // Stopped by stop(), a halt or an interrupt
+                if(agent.getReasonForStop() != null)
+                {
+                    current.stopped = true;
+                }
+            }
+            catch(RuntimeException e)
+            {
+                current.stopped = true;
+                processUncaughtException(e);
+            }
+        }
+        
+        if(current.stopped || (current.runType != RunType.FOREVER && current.remaining <= 0))
+        {
+            run = null;
+            agentRunning.set(false);
+            agent.getProperties().firePropertyChanged(SoarProperties.IS_RUNNING, false, true);
+            getEvents().fireEvent(new StopEvent(agent));
+            if(current.done != null)
+            {
+                current.done.run();
+            }
+        }
+    }
+    
+    private void processUncaughtException(Exception e)
+    {
+        try
+        {
+            final Throwable cause = e.getCause();
+            LOG.error("Agent thread caught unhandled exception", e);
+            agent.getPrinter().error("Agent thread caught unhandled exception: " +
+                    (cause != null ? cause.getMessage() : e.getMessage()) + "\n" +
+                    StringTools.getStackTrace(e));
+            getEvents().fireEvent(new UncaughtExceptionEvent(agent, e));
+        }
+        catch(Exception otherException)
+        {
+            LOG.error("Exception thrown while handling uncaught exception", otherException);
+        }
+    }
+    
+    private static class Run
+    {
+        final RunType runType;
+        final Runnable done;
+        long remaining;
+        boolean stopped;
+        
+        Run(long n, RunType runType, Runnable done)
+        {
+            this.remaining = n;
+            this.runType = runType;
+            this.done = done;
+        }
+    }
+}
@@ -8,6 +8,7 @@
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 import org.jsoar.kernel.Agent;
 import org.jsoar.util.events.SoarEventManager;
@@ -38,32 +39,25 @@
      */
     public ThreadedAgent create(String name)
     {
-        synchronized (agents)
+        // Wait for this agent in particular. Waiting on a shared monitor would
+        // also wake up when some other agent, created at the same time on
+        // another thread, is done and return this one before it's initialized.
+        // The agents map is only read and changed under its lock, in attach(),
+        // detach(), find() and getAll(), so concurrent creates and disposes
+        // are still safe without holding it here.
+        final CountDownLatch initialized = new CountDownLatch(1);
+        final ThreadedAgent agent = attach(new Agent(name, false)).initialize(result -> initialized.countDown());
+        try
         {
-            final ThreadedAgent agent = attach(new Agent(name, false)).initialize(new CompletionHandler<Void>()
-            {
-                
-                @Override
-                public void finish(Void result)
-                {
-                    synchronized (agents)
-                    {
-                        agents.notifyAll();
-                    }
-                }
-            });
-            try
-            {
-                agents.wait();
-            }
-            catch(InterruptedException e)
-            {
-                LOG.error("Interrupted waiting for new ThreadedAgent to initialize.", e);
-                Thread.currentThread().interrupt(); // reset interrupt
-            }
-            
-            return agent;
+            initialized.await();
         }
+        catch(InterruptedException e)
+        {
+            LOG.error("Interrupted waiting for new ThreadedAgent to initialize.", e);
+            Thread.currentThread().interrupt(); // reset interrupt
+        }
+        
+        return agent;
     }
     
     public ThreadedAgent find(Agent agent)
@@ -0,0 +1,331 @@
+package org.jsoar.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+
+/**
+ * A writer that hands its output to a background thread. Writes are copied
+ * into a bounded ring buffer and return immediately. The background thread
+ * takes everything buffered so far and writes it to the target in one call,
+ * and flushes the target whenever it has caught up. This makes it a cheap
+ * sink for heavy trace output, e.g. with
+ * {@link org.jsoar.kernel.tracing.Printer#pushWriter(Writer)}, where the
+ * printer flushes after every line.
+ * 
+ * <p>Since the target is flushed by the background thread, {@link #flush()}
+ * doesn't wait for anything. Use {@link #drain()} to wait until the target
+ * has everything written so far, and {@link #close()} to finish up.
+ * 
+ * <p>When the buffer is full, a write either waits for room or is dropped,
+ * depending on the {@link OverflowPolicy}. A dropped write is dropped as a
+ * whole, so lines are never cut short.
+ * 
+ * <p>A failed write to the target doesn't stop the background thread. The
+ * first failure is thrown, wrapped, from the next call.
+ */
+public class AsyncWriter extends Writer
+{
+    /**
+     * What to do with a write when the buffer is full
+     */
+    public enum OverflowPolicy
+    {
+        /**
+         * Wait until the background thread makes room
+         */
+        BLOCK,
+        
+        /**
+         * Drop the write and count it in {@link AsyncWriter#getDroppedCount()}
+         */
+        DROP
+    }
+    
+    /**
+     * The default buffer size, in chars
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    
+    private final Writer target;
+    private final OverflowPolicy policy;
+    private final DrainThread drainer = new DrainThread();
+    
+    // Guarded by lock
+    private final char[] buffer;
+    private int head = 0;
+    private int size = 0;
+    private boolean draining = false;
+    private boolean closed = false;
+    private long dropped = 0;
+    private IOException failure = null;
+    
+    /**
+     * Construct a writer with the default capacity that blocks when full
+     * 
+     * @param target the writer to write to. It is only used by the background
+     *     thread, so it needn't be thread-safe.
+     */
+    public AsyncWriter(Writer target)
+    {
+        this(target, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+    }
+    
+    /**
+     * @param target the writer to write to. It is only used by the background
+     *     thread, so it needn't be thread-safe.
+     * @param capacity the size of the buffer, in chars
+     * @param policy what to do with a write when the buffer is full
+     */
+    public AsyncWriter(Writer target, int capacity, OverflowPolicy policy)
+    {
+        Arguments.checkNotNull(target, "target");
+        Arguments.check(capacity > 0, "capacity must be positive");
+        Arguments.checkNotNull(policy, "policy");
+        
+        this.target = target;
+        this.policy = policy;
+        this.buffer = new char[capacity];
+        drainer.start();
+    }
+    
+    /**
+     * @return the overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return policy;
+    }
+    
+    /**
+     * @return the number of chars dropped because the buffer was full
+     */
+    public long getDroppedCount()
+    {
+        synchronized(lock)
+        {
+            return dropped;
+        }
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.io.Writer#write(char[], int, int)
+     */
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException
+    {
+        synchronized(lock)
+        {
+            checkOpen();
+            checkFailure();
+            if(policy == OverflowPolicy.DROP && len > buffer.length - size)
+            {
+                dropped += len;
+                return;
+            }
+            while(len > 0)
+            {
+                while(size == buffer.length)
+                {
+                    await("Interrupted while waiting for room in the buffer");
+                    checkOpen();
+                }
+                final int tail = (head + size) % buffer.length;
+                final int n = Math.min(len, Math.min(buffer.length - size, buffer.length - tail));
+                System.arraycopy(cbuf, off, buffer, tail, n);
+                size += n;
+                off += n;
+                len -= n;
+                lock.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Doesn't wait for anything since the background thread flushes the
+     * target whenever it catches up, but reports a failed write.
+     * 
+     * @see #drain()
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        synchronized(lock)
+        {
+            checkFailure();
+        }
+    }
+    
+    /**
+     * Wait until everything written so far has been written to the target
+     * and the target has been flushed.
+     * 
+     * @throws IOException if a write failed or the thread is interrupted
+     */
+    public void drain() throws IOException
+    {
+        synchronized(lock)
+        {
+            while(size > 0 || draining)
+            {
+                await("Interrupted while draining the buffer");
+            }
+            checkFailure();
+        }
+    }
+    
+    /**
+     * Write everything that is buffered, stop the background thread and close
+     * the target.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized(lock)
+        {
+            if(closed)
+            {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try
+        {
+            drainer.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the writer");
+        }
+        try
+        {
+            synchronized(lock)
+            {
+                checkFailure();
+            }
+        }
+        finally
+        {
+            target.close();
+        }
+    }
+    
+    private void await(String message) throws InterruptedIOException
+    {
+        try
+        {
+            lock.wait();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(message);
+        }
+    }
+    
+    private void checkOpen() throws IOException
+    {
+        if(closed)
+        {
+            throw new IOException("Writer is closed");
+        }
+    }
+    
+    /**
+     * Throw, once, the first failure of the background thread since the last
+     * call
+     */
+    private void checkFailure() throws IOException
+    {
+        final IOException e = failure;
+        failure = null;
+        if(e != null)
+        {
+            throw new IOException("Background write failed: " + e.getMessage(), e);
+        }
+    }
+    
+    private class DrainThread extends Thread
+    {
+        DrainThread()
+        {
+            super("Async writer");
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run()
+        {
+            final char[] batch = new char[buffer.length];
+            while(true)
+            {
+                final int n;
+                synchronized(lock)
+                {
+                    while(size == 0 && !closed)
+                    {
+                        try
+                        {
+                            lock.wait();
+                        }
+                        catch(InterruptedException e)
+                        {
+                            return;
+                        }
+                    }
+                    if(size == 0)
+                    {
+                        return;
+                    }
+                    
+                    // Take everything in one go, in at most two pieces since
+                    // the buffer may wrap around
+                    n = size;
+                    final int first = Math.min(n, buffer.length - head);
+                    System.arraycopy(buffer, head, batch, 0, first);
+                    System.arraycopy(buffer, 0, batch, first, n - first);
+                    head = (head + n) % buffer.length;
+                    size = 0;
+                    draining = true;
+                    lock.notifyAll();
+                }
+                
+                IOException error = null;
+                try
+                {
+                    target.write(batch, 0, n);
+                    if(isCaughtUp())
+                    {
+                        target.flush();
+                    }
+                }
+                catch(IOException e)
+                {
+                    error = e;
+                }
+                
+                synchronized(lock)
+                {
+                    if(error != null && failure == null)
+                    {
+                        failure = error;
+                    }
+                    draining = false;
+                    lock.notifyAll();
+                }
+            }
+        }
+        
+        private boolean isCaughtUp()
+        {
+            synchronized(lock)
+            {
+                return size == 0;
+            }
+        }
+    }
+}
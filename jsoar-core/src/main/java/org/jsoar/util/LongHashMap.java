@@ -0,0 +1,322 @@
+package org.jsoar.util;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * A hash map from primitive {@code long} keys to non-null values. Entries
+ * are stored in parallel arrays with open addressing and linear probing, so
+ * lookups don't box the key and inserts don't allocate an entry object.
+ * 
+ * <p>This class is not thread-safe.
+ * 
+ * @param <V> the value type
+ */
+public class LongHashMap<V>
+{
+    private static final int MINIMUM_CAPACITY = 16;
+    
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int shift;
+    private int size;
+    private int modCount;
+    
+    public LongHashMap()
+    {
+        this(MINIMUM_CAPACITY);
+    }
+    
+    /**
+     * @param expectedSize the number of entries the map should hold
+     *     without resizing
+     */
+    public LongHashMap(int expectedSize)
+    {
+        Arguments.check(expectedSize >= 0, "expectedSize must be non-negative");
+        allocate(capacityFor(expectedSize));
+    }
+    
+    /**
+     * @return the number of entries in the map
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    /**
+     * @return true if the map has no entries
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+    
+    /**
+     * @param key the key
+     * @return the value for the key, or {@code null} if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        for(int i = indexOf(key);; i = (i + 1) & mask)
+        {
+            final Object value = values[i];
+            if(value == null || keys[i] == key)
+            {
+                return (V) value;
+            }
+        }
+    }
+    
+    /**
+     * @param key the key
+     * @return true if the map has a value for the key
+     */
+    public boolean containsKey(long key)
+    {
+        return get(key) != null;
+    }
+    
+    /**
+     * @param key the key
+     * @param value the value, not {@code null}
+     * @return the previous value for the key, or {@code null} if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value)
+    {
+        Arguments.checkNotNull(value, "value");
+        int i = indexOf(key);
+        for(; values[i] != null; i = (i + 1) & mask)
+        {
+            if(keys[i] == key)
+            {
+                final V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        modCount++;
+        if(size > (values.length >> 1) + (values.length >> 2))
+        {
+            rehash(values.length << 1);
+        }
+        return null;
+    }
+    
+    /**
+     * @param key the key
+     * @return the value that was removed, or {@code null} if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        for(int i = indexOf(key);; i = (i + 1) & mask)
+        {
+            final Object value = values[i];
+            if(value == null)
+            {
+                return null;
+            }
+            if(keys[i] == key)
+            {
+                removeAt(i);
+                return (V) value;
+            }
+        }
+    }
+    
+    /**
+     * Remove every entry whose value matches the given predicate
+     * 
+     * @param filter the predicate
+     * @return the number of entries removed
+     */
+    @SuppressWarnings("unchecked")
+    public int removeIf(Predicate<? super V> filter)
+    {
+        final int before = size;
+        int i = 0;
+        while(i < values.length)
+        {
+            final Object value = values[i];
+            // removeAt() may shift a later entry into slot i, so only move
+            // on when nothing was removed
+            if(value != null && filter.test((V) value))
+            {
+                removeAt(i);
+            }
+            else
+            {
+                i++;
+            }
+        }
+        return before - size;
+    }
+    
+    /**
+     * Remove all entries, keeping the current capacity
+     */
+    public void clear()
+    {
+        Arrays.fill(values, null);
+        size = 0;
+        modCount++;
+    }
+    
+    /**
+     * @return a read-only view of the values in the map, in no particular
+     *     order
+     */
+    public Collection<V> values()
+    {
+        return new AbstractCollection<V>()
+        {
+            @Override
+            public Iterator<V> iterator()
+            {
+                return new ValueIterator();
+            }
+            
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+    
+    /**
+     * @return a copy of the keys in the map, in no particular order
+     */
+    public long[] keys()
+    {
+        final long[] result = new long[size];
+        int n = 0;
+        for(int i = 0; i < values.length; ++i)
+        {
+            if(values[i] != null)
+            {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+    
+    private int indexOf(long key)
+    {
+        // Fibonacci hashing spreads sequential keys, e.g. identifier numbers,
+        // across the whole table
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+    
+    private void removeAt(int hole)
+    {
+        values[hole] = null;
+        size--;
+        modCount++;
+        
+        // Shift later entries of the probe sequence back into the hole so
+        // that lookups never stop early at an empty slot
+        for(int i = (hole + 1) & mask; values[i] != null; i = (i + 1) & mask)
+        {
+            final int home = indexOf(keys[i]);
+            final boolean canMove = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if(canMove)
+            {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                values[i] = null;
+                hole = i;
+            }
+        }
+    }
+    
+    private void rehash(int newCapacity)
+    {
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+        allocate(newCapacity);
+        for(int j = 0; j < oldValues.length; ++j)
+        {
+            if(oldValues[j] != null)
+            {
+                int i = indexOf(oldKeys[j]);
+                while(values[i] != null)
+                {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+    
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+    
+    private static int capacityFor(int expectedSize)
+    {
+        int capacity = MINIMUM_CAPACITY;
+        // keep the load factor at or below 3/4
+        while(capacity - (capacity >> 2) < expectedSize)
+        {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+    
+    private class ValueIterator implements Iterator<V>
+    {
+        private final int expectedModCount = modCount;
+        private int next = advance(0);
+        
+        private int advance(int from)
+        {
+            while(from < values.length && values[from] == null)
+            {
+                from++;
+            }
+            return from;
+        }
+        
+        @Override
+        public boolean hasNext()
+        {
+            return next < values.length;
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public V next()
+        {
+            if(expectedModCount != modCount)
+            {
+                throw new ConcurrentModificationException();
+            }
+            if(next >= values.length)
+            {
+                throw new NoSuchElementException();
+            }
+            final V value = (V) values[next];
+            next = advance(next + 1);
+            return value;
+        }
+    }
+}
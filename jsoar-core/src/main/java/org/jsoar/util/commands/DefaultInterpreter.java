@@ -58,6 +58,7 @@ public class DefaultInterpreter implements SoarCommandInterpreter
     private final Map<String, List<String>> aliases = new LinkedHashMap<>();
     
     private final SourceCommand sourceCommand;
+    private final SpCommand spCommand;
     private final LoadCommand loadCommand;
     private final SaveCommand saveCommand;
     private SoarExceptionsManager exceptionsManager;
@@ -77,7 +78,8 @@ public DefaultInterpreter(Agent agent)
         StandardCommands.addToInterpreter(agent, this);
         
         // this interpreter-specific handler depends on SpCommand, which is created as part of the standard commands
-        addCommand("load", this.loadCommand = new LoadCommand(sourceCommand, (SpCommand) this.commands.get("sp"), agent));
+        this.spCommand = (SpCommand) this.commands.get("sp");
+        addCommand("load", this.loadCommand = new LoadCommand(sourceCommand, spCommand, agent));
     }
     
     /*
@@ -140,7 +142,7 @@ public void dispose()
     @Override
     public String eval(String code) throws SoarException
     {
-        return eval(code, code.length() > 100 ? code.substring(0, 100) : code);
+        return eval(code, code.length() > 100 ? code.substring(0, 100) : code, false);
     }
     
     /*
@@ -240,12 +242,12 @@ public Set<String> getAliasStrings()
         return aliases.keySet();
     }
     
-    private String eval(String code, String context) throws SoarException
+    private String eval(String code, String context, boolean deferProductions) throws SoarException
     {
         
         try(Reader reader = new StringReader(code))
         {
-            return eval(reader);
+            return eval(reader, deferProductions);
         }
         catch(IOException e)
         {
@@ -253,29 +255,57 @@ private String eval(String code, String context) throws SoarException
         }
     }
     
-    private String eval(Reader reader) throws IOException, SoarException
+    /**
+     * @param deferProductions if true, the productions of sp commands are
+     *     parsed and reordered in parallel, see {@link SpCommand#defer(SoarCommandContext, String[])}.
+     *     They're all added by the time this returns.
+     */
+    private String eval(Reader reader, boolean deferProductions) throws IOException, SoarException
     {
         final DefaultInterpreterParser parser = new DefaultInterpreterParser();
         final ParserBuffer pbReader = new ParserBuffer(new PushbackReader(reader));
         pbReader.setFile(sourceCommand.getCurrentFile());
         
-        ParsedCommand parsedCommand = parser.parseCommand(pbReader);
         String lastResult = "";
-        while(!parsedCommand.isEof())
+        try
         {
-            lastResult = executeParsedCommand(parsedCommand);
+            ParsedCommand parsedCommand = parser.parseCommand(pbReader);
+            while(!parsedCommand.isEof())
+            {
+                lastResult = executeParsedCommand(parsedCommand, deferProductions);
             
-            parsedCommand = parser.parseCommand(pbReader);
+                parsedCommand = parser.parseCommand(pbReader);
+            }
+        }
+        catch(Throwable e)
+        {
+            // The productions before the failure would have been added
+            try
+            {
+                spCommand.flush();
+            }
+            catch(SoarException | RuntimeException suppressed)
+            {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
         }
+        spCommand.flush();
         return lastResult;
     }
     
-    private String executeParsedCommand(ParsedCommand parsedCommand) throws SoarException
+    private String executeParsedCommand(ParsedCommand parsedCommand, boolean deferProductions) throws SoarException
     {
         final ByRef<ParsedCommand> parsedCommandRef = new ByRef<>(parsedCommand);
         final SoarCommand command = getSoarCommand(parsedCommandRef);
         final SoarCommandContext commandContext = new DefaultSoarCommandContext(parsedCommandRef.value.getLocation());
-        return command.execute(commandContext, parsedCommandRef.value.getArgs().toArray(new String[] {}));
+        final String[] args = parsedCommandRef.value.getArgs().toArray(new String[] {});
+        if(deferProductions && command == spCommand && spCommand.defer(commandContext, args))
+        {
+            return "";
+        }
+        spCommand.flush();
+        return command.execute(commandContext, args);
     }
     
     private SoarCommand getSoarCommand(ByRef<ParsedCommand> parsedCommand) throws SoarException
@@ -436,7 +466,7 @@ public void eval(File file) throws SoarException
             {
                 String code = getReaderContents(new BufferedReader(new FileReader(file)));
                 code = fixLineEndings(code);
-                DefaultInterpreter.this.eval(code, file.getAbsolutePath());
+                DefaultInterpreter.this.eval(code, file.getAbsolutePath(), true);
                 // evalAndClose(new BufferedReader(new FileReader(file)), file.getAbsolutePath());
             }
             catch(IOException e)
@@ -453,7 +483,7 @@ public void eval(URL url) throws SoarException
                 url = UrlTools.normalize(url);
                 String code = getReaderContents(new BufferedReader(new InputStreamReader(url.openStream())));
                 code = fixLineEndings(code);
-                DefaultInterpreter.this.eval(code, url.toExternalForm());
+                DefaultInterpreter.this.eval(code, url.toExternalForm(), true);
                 // evalAndClose(new BufferedReader(new InputStreamReader(url.openStream())), url.toExternalForm());
             }
             catch(IOException | URISyntaxException e)
@@ -1,30 +1,47 @@
 /*
  * Copyright (c) 2008  Dave Ray <daveray@gmail.com>
- *
+ * 
  * Created on Sep 26, 2008
  */
 package org.jsoar.util.events;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
+ * Routes events to listeners by event class. Firing an event looks its
+ * class up in an immutable dispatch table and calls the listeners in the
+ * array it finds there, without locking. The table is rebuilt whenever a
+ * listener is added or removed.
+ * 
+ * <p>A listener registered for a class also gets events of its subclasses.
+ * The listeners for the exact class are called first, then those of its
+ * superclasses and interfaces, nearest first, and then the listeners for
+ * all events. A listener registered for more than one of the classes of an
+ * event is only called once for it, except that listeners for all events
+ * are always called.
+ * 
  * @author ray
  */
 public class SoarEventManager
 {
+    private static final SoarEventListener[] NO_LISTENERS = new SoarEventListener[0];
+    
     /**
-     * List of listeners for events of any type
+     * Listeners as registered, indexed by event type. {@link SoarEvent} is
+     * the key for listeners of all events. Guarded by this.
      */
-    private List<SoarEventListener> listenersForAny = new CopyOnWriteArrayList<>();
+    private final Map<Class<? extends SoarEvent>, List<SoarEventListener>> listeners = new LinkedHashMap<>();
     
     /**
-     * Listeners indexed by event type
+     * The listeners to call for each event type that has been fired or
+     * registered for. Replaced, never modified.
      */
-    private Map<Class<? extends SoarEvent>, List<SoarEventListener>> listeners = Collections.synchronizedMap(new HashMap<Class<? extends SoarEvent>, List<SoarEventListener>>());
+    private volatile Map<Class<?>, SoarEventListener[]> dispatch = Collections.emptyMap();
     
     public SoarEventManager()
     {
@@ -48,7 +65,11 @@ public <T extends SoarEvent> void addListener(Class<T> klass, SoarEventListener
         {
             throw new NullPointerException("listener");
         }
-        getListenersForEventType(klass).add(listener);
+        synchronized (this)
+        {
+            listeners.computeIfAbsent(klass != null ? klass : SoarEvent.class, k -> new ArrayList<>()).add(listener);
+            rebuildDispatch();
+        }
     }
     
     /**
@@ -63,21 +84,41 @@ public <T extends SoarEvent> void addListener(Class<T> klass, SoarEventListener
      */
     public <T extends SoarEvent> void removeListener(Class<T> klass, SoarEventListener listener)
     {
-        if(klass == null)
+        synchronized (this)
         {
-            listenersForAny.remove(listener);
-            synchronized (listeners)
+            if(klass == null)
             {
                 for(List<SoarEventListener> list : listeners.values())
                 {
                     list.remove(listener);
                 }
             }
+            else
+            {
+                final List<SoarEventListener> list = listeners.get(klass);
+                if(list != null)
+                {
+                    list.remove(listener);
+                }
+            }
+            listeners.values().removeIf(List::isEmpty);
+            rebuildDispatch();
         }
-        else
-        {
-            getListenersForEventType(klass).remove(listener);
-        }
+    }
+    
+    /**
+     * Returns true if an event of the given type would reach at least one
+     * listener. Use this to skip building an event that no one would get.
+     * 
+     * <p>It is safe to call this method from any thread.
+     * 
+     * @param klass The class of event
+     * @return true if there is a listener for the event type, one of its
+     *     supertypes or all events
+     */
+    public boolean hasListeners(Class<? extends SoarEvent> klass)
+    {
+        return getListenersForEventType(klass).length != 0;
     }
     
     /**
@@ -100,8 +141,8 @@ public <T extends SoarEvent> void fireEvent(T event)
     /**
      * Fire the given event to all listeners registered for the given event
      * type. This extended version of {@link #fireEvent(SoarEvent)} allows a
-     * particular event class to be specified so that sub-classes of an existing
-     * event class can be properly routed to listeners of that parent class.
+     * particular event class to be specified so that the event is routed as
+     * if it were of that class.
      * 
      * @param <T> Event type
      * @param event The event object. Must be non-null.
@@ -118,27 +159,117 @@ public <T extends SoarEvent> void fireEvent(T event, Class<? extends T> eventTyp
         {
             l.onEvent(event);
         }
-        for(SoarEventListener l : listenersForAny)
+    }
+    
+    private SoarEventListener[] getListenersForEventType(Class<?> klass)
+    {
+        final SoarEventListener[] result = dispatch.get(klass);
+        if(result != null)
         {
-            l.onEvent(event);
+            return result;
+        }
+        
+        // first time this type is seen since the last change
+        synchronized (this)
+        {
+            final Map<Class<?>, SoarEventListener[]> table = new HashMap<>(dispatch);
+            final SoarEventListener[] resolved = resolve(klass);
+            table.put(klass, resolved);
+            dispatch = table;
+            return resolved;
         }
     }
     
-    private <T extends SoarEvent> List<SoarEventListener> getListenersForEventType(Class<T> klass)
+    /**
+     * Recompute the listeners of every type in the dispatch table, so that
+     * the types already being fired don't have to be looked up again
+     */
+    private void rebuildDispatch()
     {
-        if(klass == null || klass.equals(SoarEvent.class))
+        final Map<Class<?>, SoarEventListener[]> table = new HashMap<>();
+        for(Class<?> klass : dispatch.keySet())
         {
-            return listenersForAny;
+            table.put(klass, resolve(klass));
         }
-        synchronized (listeners)
+        for(Class<?> klass : listeners.keySet())
+        {
+            table.put(klass, resolve(klass));
+        }
+        dispatch = table;
+    }
+    
+    /**
+     * @return the listeners for an event type, in the order described in the
+     *     class comment
+     */
+    private SoarEventListener[] resolve(Class<?> klass)
+    {
+        final List<SoarEventListener> result = new ArrayList<>();
+        for(Class<?> type : hierarchy(klass))
+        {
+            final List<SoarEventListener> list = listeners.get(type);
+            if(list != null)
+            {
+                // only skip listeners already added for another type
+                final int others = result.size();
+                for(SoarEventListener l : list)
+                {
+                    if(!containsSame(result, others, l))
+                    {
+                        result.add(l);
+                    }
+                }
+            }
+        }
+        final List<SoarEventListener> forAny = listeners.get(SoarEvent.class);
+        if(forAny != null)
+        {
+            result.addAll(forAny);
+        }
+        return result.isEmpty() ? NO_LISTENERS : result.toArray(NO_LISTENERS);
+    }
+    
+    /**
+     * @return the class, its superclasses and its interfaces, breadth first,
+     *     without {@link SoarEvent} itself
+     */
+    private static List<Class<?>> hierarchy(Class<?> klass)
+    {
+        final List<Class<?>> result = new ArrayList<>();
+        result.add(klass);
+        for(int i = 0; i < result.size(); ++i)
+        {
+            final Class<?> type = result.get(i);
+            final Class<?> superclass = type.getSuperclass();
+            if(superclass != null && !result.contains(superclass))
+            {
+                result.add(superclass);
+            }
+            for(Class<?> iface : type.getInterfaces())
+            {
+                if(!result.contains(iface))
+                {
+                    result.add(iface);
+                }
+            }
+        }
+        result.remove(SoarEvent.class);
+        return result;
+    }
+    
+    /**
+     * Compare by identity, since some scripting proxies can't be compared
+     * with equals
+     */
+    private static boolean containsSame(List<SoarEventListener> list, int end, SoarEventListener listener)
+    {
+        for(int i = 0; i < end; ++i)
         {
-            List<SoarEventListener> list = listeners.get(klass);
-            if(list == null)
+            if(list.get(i) == listener)
             {
-                list = new CopyOnWriteArrayList<>();
-                listeners.put(klass, list);
+                return true;
             }
-            return list;
         }
+        return false;
     }
 }
@@ -0,0 +1,157 @@
+package org.jsoar.util.timing;
+
+import java.util.Arrays;
+
+import org.jsoar.util.Arguments;
+
+/**
+ * A fixed-size, allocation-free histogram of non-negative latency values in
+ * the style of HdrHistogram. Values are counted in log-linear buckets: values
+ * below 64 are counted exactly and larger values are counted in buckets whose
+ * width is at most 1/32 of the value, so percentiles are reported to within
+ * about 3% over the full range of {@code long}.
+ * 
+ * <p>The histogram does not know the unit of its values. Recording is not
+ * synchronized, so a histogram should only be written from one thread.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_SHIFT = 62 - (SUB_BUCKET_BITS - 1);
+    
+    private final long[] counts = new long[SUB_BUCKET_COUNT + MAX_SHIFT * SUB_BUCKET_HALF_COUNT];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    
+    /**
+     * Record a single value
+     * 
+     * @param value the value, e.g. a latency in nanoseconds
+     * @throws IllegalArgumentException if value is negative
+     */
+    public void record(long value)
+    {
+        Arguments.check(value >= 0, "value must be non-negative");
+        counts[indexOf(value)]++;
+        count++;
+        total += value;
+        if(value < min)
+        {
+            min = value;
+        }
+        if(value > max)
+        {
+            max = value;
+        }
+    }
+    
+    /**
+     * Discard all recorded values
+     */
+    public void reset()
+    {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+    
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount()
+    {
+        return count;
+    }
+    
+    /**
+     * @return the sum of all values recorded
+     */
+    public long getTotal()
+    {
+        return total;
+    }
+    
+    /**
+     * @return the smallest value recorded, or 0 if the histogram is empty
+     */
+    public long getMin()
+    {
+        return count != 0 ? min : 0;
+    }
+    
+    /**
+     * @return the largest value recorded, or 0 if the histogram is empty
+     */
+    public long getMax()
+    {
+        return max;
+    }
+    
+    /**
+     * @return the exact mean of all values recorded, or 0 if the histogram
+     *     is empty
+     */
+    public double getMean()
+    {
+        return count != 0 ? (double) total / count : 0.0;
+    }
+    
+    /**
+     * Returns the value at the given percentile. The result is the highest
+     * value that falls in the same bucket as the value at that rank, clamped
+     * to the largest value recorded, so it is never an underestimate.
+     * 
+     * @param percentile the percentile, in the range [0, 100]
+     * @return the value at the given percentile, or 0 if the histogram is empty
+     * @throws IllegalArgumentException if percentile is out of range
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        Arguments.check(percentile >= 0.0 && percentile <= 100.0, "percentile must be in [0, 100]");
+        if(count == 0)
+        {
+            return 0;
+        }
+        
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for(int i = 0; i < counts.length; ++i)
+        {
+            seen += counts[i];
+            if(seen >= rank)
+            {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+    
+    private static int indexOf(long value)
+    {
+        if(value < SUB_BUCKET_COUNT)
+        {
+            return (int) value;
+        }
+        // shift so that the top bit of value lands in the upper half of a sub-bucket
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        final int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (subBucket - SUB_BUCKET_HALF_COUNT);
+    }
+    
+    private static long highestEquivalentValue(int index)
+    {
+        if(index < SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        final long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,179 @@
+package org.jsoar.kernel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.jsoar.kernel.memory.Wme;
+import org.jsoar.kernel.memory.Wmes;
+import org.jsoar.kernel.symbols.Identifier;
+import org.jsoar.kernel.symbols.Symbol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AgentSerializerTest
+{
+    private Agent agent;
+    private Agent restored;
+    
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        agent = new Agent();
+        agent.getTrace().disableAll();
+        agent.getProductions().loadProduction(
+                "propose*init (state <s> ^superstate nil -^count) --> (<s> ^operator <o> + =) (<o> ^name init)");
+        agent.getProductions().loadProduction(
+                "apply*init (state <s> ^operator.name init) --> (<s> ^count 0 ^data <d>) (<d> ^name |hello world| ^ratio 0.5)");
+        agent.getProductions().loadProduction(
+                "propose*increment (state <s> ^count {<c> < 5}) --> (<s> ^operator <o> + =) (<o> ^name increment)");
+        agent.getProductions().loadProduction(
+                "apply*increment (state <s> ^operator.name increment ^count <c>) --> (<s> ^count <c> - ^count (+ <c> 1))");
+        agent.getProductions().loadProduction(
+                "elaborate*copy (state <s> ^superstate nil ^data.name <n>) --> (<s> ^copy <n>)");
+        agent.getProductions().loadProduction(
+                "elaborate*done (state <s> ^superstate <ss>) (<ss> ^count 5) --> (<ss> ^done yes)");
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        agent.dispose();
+        if(restored != null)
+        {
+            restored.dispose();
+        }
+    }
+    
+    @Test
+    void testRestoredAgentContinuesFromTheSavedWorkingMemory() throws Exception
+    {
+        agent.runFor(3, RunType.DECISIONS);
+        final long count = getCount(agent);
+        
+        restored = saveAndRestore(agent);
+        assertEquals(cycleCount(agent), cycleCount(restored));
+        assertEquals(count, getCount(restored));
+        final Identifier data = Wmes.matcher(restored).attr("data").find(restored.getSymbols().findIdentifier('S', 1)).getValue().asIdentifier();
+        assertNotNull(Wmes.matcher(restored).attr("name").value("hello world").find(data));
+        assertNotNull(Wmes.matcher(restored).attr("ratio").value(0.5).find(data));
+        
+        // The selected operator isn't saved, so the restored agent takes a
+        // decision to select it again
+        agent.runFor(2, RunType.DECISIONS);
+        restored.runFor(3, RunType.DECISIONS);
+        assertEquals(getCount(agent), getCount(restored));
+        assertNotNull(Wmes.matcher(restored).attr("copy").value("hello world").find(restored.getSymbols().findIdentifier('S', 1)));
+    }
+    
+    @Test
+    void testNewIdentifiersDontCollideWithRestoredOnes() throws Exception
+    {
+        agent.runFor(3, RunType.DECISIONS);
+        restored = saveAndRestore(agent);
+        
+        final Identifier data = Wmes.matcher(restored).attr("data").find(restored.getSymbols().findIdentifier('S', 1)).getValue().asIdentifier();
+        final Identifier created = restored.getSymbols().createIdentifier(data.getNameLetter());
+        assertFalse(created.getNameNumber() <= data.getNameNumber());
+    }
+    
+    @Test
+    void testRestoreOnlyRestoresTheTopStateOSupportedWorkingMemory() throws Exception
+    {
+        // Counting stops at 5, the agent impasses and the substate returns a
+        // result, which creates a justification
+        agent.runFor(10, RunType.DECISIONS);
+        assertFalse(agent.getProductions().getProductions(ProductionType.JUSTIFICATION).isEmpty());
+        assertNotNull(Wmes.matcher(agent).attr("done").find(agent.getSymbols().findIdentifier('S', 1)));
+        
+        restored = saveAndRestore(agent);
+        final Identifier state = restored.getSymbols().findIdentifier('S', 1);
+        assertEquals(5, getCount(restored));
+        assertEquals(cycleCount(agent), cycleCount(restored));
+        assertEquals(Phase.INPUT, restored.getProperties().get(SoarProperties.CURRENT_PHASE));
+        assertTrue(restored.getProductions().getProductions(ProductionType.JUSTIFICATION).isEmpty());
+        assertNull(Wmes.matcher(restored).attr("done").find(state));
+        assertNull(Wmes.matcher(restored).attr("operator").find(state));
+        assertEquals(1, restored.getGoalStack().size());
+        
+        // Nothing fired while restoring, so i-supported wmes come back once
+        // the agent runs
+        assertNull(Wmes.matcher(restored).attr("copy").find(state));
+        restored.runFor(1, RunType.DECISIONS);
+        assertNotNull(Wmes.matcher(restored).attr("copy").value("hello world").find(state));
+    }
+    
+    @Test
+    void testOutputCommandsArentRestored() throws Exception
+    {
+        agent.getProductions().loadProduction(
+                "apply*init*output (state <s> ^operator.name init ^io.output-link <ol>) --> (<ol> ^command <c>) (<c> ^name start)");
+        agent.runFor(3, RunType.DECISIONS);
+        assertNotNull(Wmes.matcher(agent).attr("command").find(agent.getInputOutput().getOutputLink()));
+        
+        restored = saveAndRestore(agent);
+        assertNull(Wmes.matcher(restored).attr("command").find(restored.getInputOutput().getOutputLink()));
+        assertNotNull(Wmes.matcher(restored).attr("data").find(restored.getSymbols().findIdentifier('S', 1)));
+        
+        restored.runFor(2, RunType.DECISIONS);
+        assertNull(Wmes.matcher(restored).attr("command").find(restored.getInputOutput().getOutputLink()));
+    }
+    
+    @Test
+    void testRestoreRejectsRLStatisticsForMissingRules() throws Exception
+    {
+        agent.getProductions().loadProduction(
+                "rl*increment (state <s> ^operator <o> +) (<o> ^name increment) --> (<s> ^operator <o> = 0.5)");
+        agent.runFor(3, RunType.DECISIONS);
+        
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AgentSerializer.saveTopState(agent, out);
+        
+        // The rule's RL statistics come after the rete. Rename the rule there
+        // only.
+        final String snapshot = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+        final int name = snapshot.lastIndexOf("rl*increment");
+        final String corrupt = snapshot.substring(0, name) + "rl*incremenX" + snapshot.substring(name + "rl*increment".length());
+        
+        restored = new Agent();
+        final SoarException e = assertThrows(SoarException.class, () -> AgentSerializer.restoreTopState(restored,
+                new ByteArrayInputStream(corrupt.getBytes(StandardCharsets.ISO_8859_1))));
+        assertTrue(e.getMessage().contains("rl*incremenX"), e.getMessage());
+    }
+    
+    @Test
+    void testRestoreRejectsOtherStreams()
+    {
+        assertThrows(SoarException.class, () -> AgentSerializer.restoreTopState(agent,
+                new ByteArrayInputStream(new byte[] { 0, 3, 'f', 'o', 'o' })));
+    }
+    
+    private static Agent saveAndRestore(Agent agent) throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AgentSerializer.saveTopState(agent, out);
+        final Agent result = AgentSerializer.createAgent(new ByteArrayInputStream(out.toByteArray()));
+        result.getTrace().disableAll();
+        return result;
+    }
+    
+    private static long getCount(Agent agent)
+    {
+        final Wme count = Wmes.matcher(agent).attr("count").find(agent.getSymbols().findIdentifier('S', 1));
+        final Symbol value = count.getValue();
+        return value.asInteger().getValue();
+    }
+    
+    private static long cycleCount(Agent agent)
+    {
+        return agent.getProperties().get(SoarProperties.D_CYCLE_COUNT);
+    }
+}
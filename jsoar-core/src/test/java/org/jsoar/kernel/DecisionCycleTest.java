@@ -11,6 +11,7 @@
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import org.jsoar.kernel.events.InputEvent;
 import org.jsoar.kernel.symbols.IdentifierImpl;
 import org.jsoar.kernel.symbols.SymbolFactoryImpl;
 import org.jsoar.util.adaptables.Adaptables;
@@ -152,6 +153,126 @@ void testHaltRHS() throws Exception
         }
     }
     
+    @Test
+    void testPhaseTimersAreOffByDefault() throws Exception
+    {
+        assertFalse(agent.getProperties().get(SoarProperties.PHASE_TIMERS));
+        this.decisionCycle.runFor(3, RunType.DECISIONS);
+        
+        final PhaseTimers timers = agent.getPhaseTimers();
+        for(Phase phase : Phase.values())
+        {
+            assertEquals(0, timers.getHistogram(phase).getCount());
+            assertEquals(0, timers.getTimer(phase).getTotalMicroseconds());
+        }
+        assertEquals(0, timers.getCycleHistogram().getCount());
+    }
+    
+    @Test
+    void testPhaseTimersRecordEachPhaseAndCycle() throws Exception
+    {
+        agent.setStopPhase(Phase.INPUT);
+        agent.getProperties().set(SoarProperties.PHASE_TIMERS, true);
+        this.decisionCycle.runFor(5, RunType.DECISIONS);
+        
+        final PhaseTimers timers = agent.getPhaseTimers();
+        for(Phase phase : Phase.values())
+        {
+            assertEquals(5, timers.getHistogram(phase).getCount(), phase.toString());
+        }
+        assertEquals(5, timers.getCycleHistogram().getCount());
+        
+        long phaseTotal = 0;
+        for(Phase phase : Phase.values())
+        {
+            phaseTotal += timers.getHistogram(phase).getTotal();
+        }
+        assertEquals(phaseTotal, timers.getCycleHistogram().getTotal());
+    }
+    
+    @Test
+    void testPhaseTimersRecordCycleRunByPhasesAsOneSample() throws Exception
+    {
+        agent.getProperties().set(SoarProperties.PHASE_TIMERS, true);
+        for(int i = 0; i < Phase.values().length; ++i)
+        {
+            this.decisionCycle.runFor(1, RunType.PHASES);
+        }
+        
+        final PhaseTimers timers = agent.getPhaseTimers();
+        for(Phase phase : Phase.values())
+        {
+            assertEquals(1, timers.getHistogram(phase).getCount(), phase.toString());
+        }
+        assertEquals(1, timers.getCycleHistogram().getCount());
+    }
+    
+    @Test
+    void testPhaseTimersIgnoreCycleInProgressWhenEnabled() throws Exception
+    {
+        agent.setStopPhase(Phase.INPUT);
+        this.decisionCycle.runFor(1, RunType.PHASES);
+        assertEquals(Phase.PROPOSE, this.decisionCycle.current_phase.get());
+        
+        agent.getProperties().set(SoarProperties.PHASE_TIMERS, true);
+        this.decisionCycle.runFor(2, RunType.DECISIONS);
+        
+        final PhaseTimers timers = agent.getPhaseTimers();
+        assertEquals(1, timers.getHistogram(Phase.INPUT).getCount());
+        assertEquals(2, timers.getHistogram(Phase.OUTPUT).getCount());
+        assertEquals(1, timers.getCycleHistogram().getCount());
+    }
+    
+    @Test
+    void testPhaseTimersChargeTimeUntilTheyreDisabledMidPhase() throws Exception
+    {
+        agent.setStopPhase(Phase.INPUT);
+        agent.getProperties().set(SoarProperties.PHASE_TIMERS, true);
+        agent.getEvents().addListener(InputEvent.class, event ->
+        {
+            if(agent.getProperties().get(SoarProperties.PHASE_TIMERS))
+            {
+                try
+                {
+                    Thread.sleep(50);
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                agent.getProperties().set(SoarProperties.PHASE_TIMERS, false);
+            }
+        });
+        this.decisionCycle.runFor(1, RunType.DECISIONS);
+        
+        final PhaseTimers timers = agent.getPhaseTimers();
+        final long input = timers.getTimer(Phase.INPUT).getTotalMicroseconds();
+        assertTrue(input >= 50000, Long.toString(input));
+        assertEquals(0, timers.getHistogram(Phase.INPUT).getCount());
+        
+        // Time spent while disabled isn't charged to the phase
+        Thread.sleep(100);
+        agent.getProperties().set(SoarProperties.PHASE_TIMERS, true);
+        assertEquals(input, timers.getTimer(Phase.INPUT).getTotalMicroseconds());
+    }
+    
+    @Test
+    void testPhaseTimersAreResetByInitSoar() throws Exception
+    {
+        agent.getProperties().set(SoarProperties.PHASE_TIMERS, true);
+        this.decisionCycle.runFor(2, RunType.DECISIONS);
+        agent.initialize();
+        
+        final PhaseTimers timers = agent.getPhaseTimers();
+        assertTrue(timers.isEnabled());
+        for(Phase phase : Phase.values())
+        {
+            assertEquals(0, timers.getHistogram(phase).getCount());
+            assertEquals(0, timers.getTimer(phase).getTotalMicroseconds());
+        }
+        assertEquals(0, timers.getCycleHistogram().getCount());
+    }
+    
     private void validateLastOperator(long number)
     {
         final SymbolFactoryImpl syms = Adaptables.adapt(agent, SymbolFactoryImpl.class);
@@ -0,0 +1,195 @@
+package org.jsoar.kernel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jsoar.kernel.parser.ParserException;
+import org.jsoar.kernel.rete.ReteSerializer;
+import org.jsoar.kernel.rhs.ReordererException;
+import org.jsoar.util.DefaultSourceLocation;
+import org.jsoar.util.SourceLocation;
+import org.jsoar.util.commands.DefaultInterpreterParser;
+import org.jsoar.util.commands.ParsedCommand;
+import org.jsoar.util.commands.ParserBuffer;
+import org.jsoar.util.commands.SoarCommands;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ParallelProductionLoaderTest
+{
+    private ExecutorService executor;
+    private Agent serial;
+    private Agent parallel;
+    private ParallelProductionLoader loader;
+    
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        executor = Executors.newFixedThreadPool(4);
+        serial = new Agent();
+        parallel = new Agent();
+        loader = new ParallelProductionLoader(parallel, executor);
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        executor.shutdown();
+        serial.dispose();
+        parallel.dispose();
+    }
+    
+    @Test
+    void testLoadsTheSameReteAsLoadingOneAtATime() throws Exception
+    {
+        final String[] names = { "testWaterJug", "testBlocksWorld", "testEightPuzzle", "testTowersOfHanoi" };
+        final int[] expectedDecisions = { -1, -1, -1, 2048 };
+        for(int i = 0; i < names.length; ++i)
+        {
+            final String name = names[i];
+            final Agent expected = new Agent();
+            final FunctionalTestHarness harness = new FunctionalTestHarness();
+            harness.agent = new Agent();
+            try
+            {
+                SoarCommands.source(expected.getInterpreter(), getClass().getResource("FunctionalTests_" + name + ".soar"));
+                load(harness.agent, "FunctionalTests_" + name + ".soar");
+                
+                assertEquals(expected.getProductions().getProductionCount(), harness.agent.getProductions().getProductionCount(), name);
+                for(Production p : expected.getProductions().getProductions(null))
+                {
+                    final Production other = harness.agent.getProductions().getProduction(p.getName());
+                    assertEquals(p.getType(), other.getType(), name);
+                    assertEquals(p.getLocation().toString(), other.getLocation().toString(), name);
+                    assertEquals(p.getDocumentation(), other.getDocumentation(), name);
+                }
+                
+                assertArrayEquals(compile(expected), compile(harness.agent), name);
+                
+                harness.installRHS(harness.agent);
+                harness.runTestExecute(name, expectedDecisions[i]);
+            }
+            finally
+            {
+                expected.dispose();
+                harness.agent.dispose();
+            }
+        }
+    }
+    
+    @Test
+    void testUsesTheAgentsMultiAttributes() throws Exception
+    {
+        final String body = "multi (state <s> ^superstate nil ^many <m> ^few <f>) (<m> ^name m) (<f> ^name f) --> (<s> ^done true)";
+        for(Agent agent : new Agent[] { serial, parallel })
+        {
+            agent.getMultiAttributes().setCost(agent.getSymbols().createString("many"), 100);
+        }
+        serial.getProductions().loadProduction(body);
+        loader.submit(body, DefaultSourceLocation.UNKNOWN).get();
+        
+        assertArrayEquals(compile(serial), compile(parallel));
+    }
+    
+    @Test
+    void testReportsErrorsInSourceOrder() throws Exception
+    {
+        final ParallelProductionLoader.Pending first = loader.submit("first (state <s> ^superstate nil) --> (<s> ^a b)", location(1));
+        final ParallelProductionLoader.Pending syntax = loader.submit("syntax (state <s> ^superstate nil --> (<s> ^a b)", location(2));
+        final ParallelProductionLoader.Pending unbound = loader.submit("unbound (state <s> ^superstate nil) --> (<x> ^a b)", location(3));
+        final ParallelProductionLoader.Pending last = loader.submit("last (state <s> ^superstate nil) --> (<s> ^c d)", location(4));
+        
+        assertThrows(IllegalStateException.class, last::get);
+        
+        final StringWriter output = new StringWriter();
+        parallel.getPrinter().pushWriter(output);
+        assertEquals("first", first.get().getName());
+        assertThrows(ParserException.class, syntax::get);
+        assertThrows(ReordererException.class, unbound::get);
+        assertEquals("last", last.get().getName());
+        parallel.getPrinter().popWriter();
+        
+        assertEquals(2, parallel.getProductions().getProductionCount());
+        assertTrue(output.toString().contains("unbound"), output.toString());
+        assertThrows(IllegalStateException.class, last::get);
+    }
+    
+    @Test
+    void testLoadsChunksOnTheAgentThread() throws Exception
+    {
+        final Production p = loader.submit("chunk-1 :chunk (state <s> ^superstate nil) --> (<s> ^a b)", DefaultSourceLocation.UNKNOWN).get();
+        assertEquals(ProductionType.CHUNK, p.getType());
+        assertEquals(p, parallel.getProductions().getProduction("chunk-1"));
+    }
+    
+    @Test
+    void testReplacesProductionsWithTheSameName() throws Exception
+    {
+        loader.submit("same (state <s> ^superstate nil) --> (<s> ^a b)", DefaultSourceLocation.UNKNOWN).get();
+        final Production p = loader.submit("same (state <s> ^superstate nil) --> (<s> ^c d)", DefaultSourceLocation.UNKNOWN).get();
+        assertEquals(1, parallel.getProductions().getProductionCount());
+        assertEquals(p, parallel.getProductions().getProduction("same"));
+    }
+    
+    private static SourceLocation location(int line)
+    {
+        return DefaultSourceLocation.newBuilder().file("test.soar").line(line).build();
+    }
+    
+    /**
+     * Source a file the way the interpreter does with deferred productions:
+     * other commands wait for all earlier productions to be added.
+     */
+    private void load(Agent agent, String resource) throws Exception
+    {
+        final ParallelProductionLoader loader = new ParallelProductionLoader(agent, executor);
+        final List<ParallelProductionLoader.Pending> pending = new ArrayList<>();
+        try(ParserBuffer reader = new ParserBuffer(new PushbackReader(
+                new InputStreamReader(getClass().getResourceAsStream(resource), StandardCharsets.UTF_8))))
+        {
+            reader.setFile(getClass().getResource(resource).toExternalForm());
+            final DefaultInterpreterParser parser = new DefaultInterpreterParser();
+            for(ParsedCommand c = parser.parseCommand(reader); !c.isEof(); c = parser.parseCommand(reader))
+            {
+                if(c.getArgs().get(0).equals("sp"))
+                {
+                    pending.add(loader.submit(c.getArgs().get(1), c.getLocation()));
+                }
+                else
+                {
+                    for(ParallelProductionLoader.Pending p : pending)
+                    {
+                        assertNotNull(p.get());
+                    }
+                    pending.clear();
+                    agent.getInterpreter().eval(String.join(" ", c.getArgs()));
+                }
+            }
+        }
+        for(ParallelProductionLoader.Pending p : pending)
+        {
+            assertNotNull(p.get());
+        }
+    }
+    
+    private static byte[] compile(Agent agent) throws Exception
+    {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ReteSerializer.saveCompiledRete(agent, baos);
+        return baos.toByteArray();
+    }
+}
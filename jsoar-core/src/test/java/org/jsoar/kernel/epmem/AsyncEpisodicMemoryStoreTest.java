@@ -0,0 +1,133 @@
+package org.jsoar.kernel.epmem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.RunType;
+import org.jsoar.util.JdbcTools;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AsyncEpisodicMemoryStoreTest
+{
+    private Connection conn;
+    private EpisodicMemoryDatabase db;
+    
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        conn = JdbcTools.connect("org.sqlite.JDBC", "jdbc:sqlite::memory:");
+        db = new EpisodicMemoryDatabase("org.sqlite.JDBC", conn);
+        db.structure();
+        db.prepare();
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        conn.close();
+    }
+    
+    @Test
+    void testQueriesSeeEveryQueuedWrite() throws Exception
+    {
+        final EpisodicMemoryStore store = new AsyncEpisodicMemoryStore(new JdbcEpisodicMemoryStore(db));
+        try
+        {
+            final long wc_id = store.add_epmem_wmes_constant(0, 1, 1);
+            for(long episode = 1; episode <= 500; ++episode)
+            {
+                store.add_epmem_wmes_constant_point(wc_id, episode);
+                store.add_time(episode);
+            }
+            store.var_set(0, 42);
+            
+            assertEquals(500, store.get_max_time());
+            assertTrue(store.valid_episode(500));
+            assertEquals(Long.valueOf(42), store.var_get(0));
+        }
+        finally
+        {
+            store.close();
+        }
+    }
+    
+    @Test
+    void testCloseWaitsForQueuedWrites() throws Exception
+    {
+        final EpisodicMemoryStore store = new AsyncEpisodicMemoryStore(new JdbcEpisodicMemoryStore(db));
+        for(long episode = 1; episode <= 100; ++episode)
+        {
+            store.add_time(episode);
+        }
+        store.close();
+        
+        assertEquals(100, new JdbcEpisodicMemoryStore(db).get_max_time());
+    }
+    
+    @Test
+    void testFailedWriteIsReportedOnTheNextCall() throws Exception
+    {
+        final EpisodicMemoryStore store = new AsyncEpisodicMemoryStore(InMemoryEpisodicMemoryStore.load(db));
+        try
+        {
+            store.add_time(1);
+            store.add_time(1);
+            assertThrows(SQLException.class, store::get_max_time);
+            
+            // only once, and the writer keeps going
+            store.add_time(2);
+            assertEquals(2, store.get_max_time());
+        }
+        finally
+        {
+            store.close();
+        }
+    }
+    
+    @Test
+    void testAsyncStoragePrintsTheSameEpisodes() throws Exception
+    {
+        final String sync = printEpisodes("off");
+        final String async = printEpisodes("on");
+        assertFalse(sync.isEmpty());
+        assertEquals(sync, async);
+    }
+    
+    private static String printEpisodes(String asyncStorage) throws Exception
+    {
+        final Agent agent = new Agent();
+        try
+        {
+            agent.getInterpreter().eval("epmem --set async-storage " + asyncStorage);
+            agent.getInterpreter().eval("epmem --set learning on");
+            agent.getInterpreter().eval("sp {propose*init (state <s> ^superstate nil -^count) --> (<s> ^operator <o> +) (<o> ^name init)}");
+            agent.getInterpreter().eval("sp {apply*init (state <s> ^operator.name init) --> (<s> ^count 0 ^thing <t>) (<t> ^name foo ^size 1.5)}");
+            agent.getInterpreter().eval("sp {propose*count (state <s> ^count <c>) --> (<s> ^operator <o> +) (<o> ^name count ^count <c>)}");
+            agent.getInterpreter().eval("sp {apply*count (state <s> ^operator <o> ^count <c> ^thing <t>) (<o> ^name count ^count <c>) -->"
+                    + " (<s> ^count <c> - ^count (+ <c> 1)) (<t> ^seen <c>)}");
+            agent.runFor(8, RunType.DECISIONS);
+            
+            final StringWriter sw = new StringWriter();
+            agent.getPrinter().pushWriter(sw);
+            for(int episode = 1; episode <= 8; ++episode)
+            {
+                agent.getInterpreter().eval("epmem --print " + episode);
+            }
+            agent.getPrinter().popWriter();
+            return sw.toString();
+        }
+        finally
+        {
+            agent.dispose();
+        }
+    }
+}
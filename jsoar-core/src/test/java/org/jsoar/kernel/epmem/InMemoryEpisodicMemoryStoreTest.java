@@ -0,0 +1,267 @@
+package org.jsoar.kernel.epmem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.RunType;
+import org.jsoar.kernel.epmem.EpisodicMemoryStore.QueryCursor;
+import org.jsoar.util.JdbcTools;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class InMemoryEpisodicMemoryStoreTest
+{
+    private Connection conn;
+    private EpisodicMemoryDatabase db;
+    
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        conn = JdbcTools.connect("org.sqlite.JDBC", "jdbc:sqlite::memory:");
+        db = new EpisodicMemoryDatabase("org.sqlite.JDBC", conn);
+        db.structure();
+        db.prepare();
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        conn.close();
+    }
+    
+    @Test
+    void testEpisodesAreWalkedLikeTheDatabase() throws Exception
+    {
+        final EpisodicMemoryStore heap = InMemoryEpisodicMemoryStore.load(db);
+        final EpisodicMemoryStore jdbc = new JdbcEpisodicMemoryStore(db);
+        for(long episode : new long[] { 1, 2, 5, 9 })
+        {
+            heap.add_time(episode);
+            jdbc.add_time(episode);
+        }
+        
+        for(long episode = 0; episode <= 10; ++episode)
+        {
+            assertEquals(jdbc.valid_episode(episode), heap.valid_episode(episode), "valid " + episode);
+            assertEquals(jdbc.next_episode(episode), heap.next_episode(episode), "next " + episode);
+            assertEquals(jdbc.prev_episode(episode), heap.prev_episode(episode), "prev " + episode);
+        }
+        assertEquals(5, heap.next_episode(2));
+        assertEquals(2, heap.prev_episode(5));
+        assertEquals(0, heap.next_episode(9));
+        assertEquals(9, heap.get_max_time());
+        assertThrows(SQLException.class, () -> heap.add_time(5));
+    }
+    
+    @Test
+    void testEdgeQueriesReturnRecentIdentifierWmesFirst() throws Exception
+    {
+        final EpisodicMemoryStore heap = InMemoryEpisodicMemoryStore.load(db);
+        final EpisodicMemoryStore jdbc = new JdbcEpisodicMemoryStore(db);
+        for(EpisodicMemoryStore store : new EpisodicMemoryStore[] { heap, jdbc })
+        {
+            final long a = store.add_epmem_wmes_identifier(0, 1, 1, 3);
+            final long b = store.add_epmem_wmes_identifier(0, 1, 2, 7);
+            store.add_epmem_wmes_identifier(0, 1, 3, 5);
+            store.add_epmem_wmes_identifier(0, 2, 4, 9);
+            store.update_epmem_wmes_identifier_last_episode_id(a, 8);
+            
+            // an identifier wme is shared by every episode with the same parent, attribute and child
+            assertEquals(b, store.find_epmem_wmes_identifier_shared(0, 1, 2));
+            assertEquals(0, store.find_epmem_wmes_identifier_shared(0, 2, 2));
+        }
+        
+        for(long after = 0; after <= 9; after += 3)
+        {
+            assertEquals(rows(jdbc.pool_find_edge_queries(1, 0, 0, 1, 0, after)), rows(heap.pool_find_edge_queries(1, 0, 0, 1, 0, after)), "after " + after);
+        }
+        // children, most recently used first, skipping those last used at or before episode 4
+        assertEquals(List.of(List.of(1L, 1L, 8L), List.of(2L, 2L, 7L), List.of(3L, 3L, 5L)), rows(heap.pool_find_edge_queries(1, 0, 0, 1, 0, 4)));
+        assertEquals(List.of(List.of(2L, 2L, 7L)), rows(heap.pool_find_edge_queries(1, 1, 0, 1, 2, 0)));
+    }
+    
+    @Test
+    void testIntervalQueriesReturnTheSameRowsAsTheDatabase() throws Exception
+    {
+        final EpisodicMemoryStore heap = InMemoryEpisodicMemoryStore.load(db);
+        final EpisodicMemoryStore jdbc = new JdbcEpisodicMemoryStore(db);
+        
+        for(EpisodicMemoryStore store : new EpisodicMemoryStore[] { heap, jdbc })
+        {
+            for(long episode = 1; episode <= 12; ++episode)
+            {
+                store.add_time(episode);
+            }
+            final long wc_id = store.add_epmem_wmes_constant(0, 1, 2);
+            store.add_epmem_wmes_constant_range(4, 1, 3, wc_id);
+            store.add_epmem_wmes_constant_point(wc_id, 5);
+            store.add_epmem_wmes_constant_range(8, 7, 9, wc_id);
+            store.add_epmem_wmes_constant_now(wc_id, 11);
+        }
+        
+        for(int interval_type = DefaultEpisodicMemory.EPMEM_RANGE_EP; interval_type <= DefaultEpisodicMemory.EPMEM_RANGE_POINT; interval_type++)
+        {
+            for(int point_type = DefaultEpisodicMemory.EPMEM_RANGE_START; point_type <= DefaultEpisodicMemory.EPMEM_RANGE_END; point_type++)
+            {
+                for(long current = 4; current <= 12; current += 4)
+                {
+                    assertEquals(
+                            column(jdbc.pool_find_interval_queries(0, point_type, interval_type, 1, current)),
+                            column(heap.pool_find_interval_queries(0, point_type, interval_type, 1, current)),
+                            "point " + point_type + ", interval " + interval_type + ", episode " + current);
+                }
+            }
+        }
+        // ranges come back most recent first
+        assertEquals(List.of(6L, 0L), column(heap.pool_find_interval_queries(0, DefaultEpisodicMemory.EPMEM_RANGE_START, DefaultEpisodicMemory.EPMEM_RANGE_EP, 1, 12)));
+    }
+    
+    @Test
+    void testIdentifiersArePromotedToLtisOnce() throws Exception
+    {
+        final EpisodicMemoryStore heap = InMemoryEpisodicMemoryStore.load(db);
+        final EpisodicMemoryStore jdbc = new JdbcEpisodicMemoryStore(db);
+        for(EpisodicMemoryStore store : new EpisodicMemoryStore[] { heap, jdbc })
+        {
+            store.promote_id(4, 'L', 3, 2);
+            // later promotions of the same node or lti are ignored
+            store.promote_id(4, 'L', 5, 6);
+            store.promote_id(7, 'L', 3, 6);
+        }
+        
+        assertEquals(4, heap.find_lti('L', 3));
+        assertEquals(0, heap.find_lti('L', 5));
+        assertEquals(2, heap.find_lti_promotion_time(4));
+        assertEquals(0, heap.find_lti_promotion_time(7));
+        for(int interval_type = DefaultEpisodicMemory.EPMEM_RANGE_EP; interval_type <= DefaultEpisodicMemory.EPMEM_RANGE_POINT; interval_type++)
+        {
+            for(int point_type = DefaultEpisodicMemory.EPMEM_RANGE_START; point_type <= DefaultEpisodicMemory.EPMEM_RANGE_END; point_type++)
+            {
+                assertEquals(
+                        column(jdbc.pool_find_lti_queries(point_type, interval_type, 4, 2, 10)),
+                        column(heap.pool_find_lti_queries(point_type, interval_type, 4, 2, 10)),
+                        "point " + point_type + ", interval " + interval_type);
+            }
+        }
+    }
+    
+    @Test
+    void testLoadingAFlushedStoreRestoresItsIntervals() throws Exception
+    {
+        final EpisodicMemoryStore store = InMemoryEpisodicMemoryStore.load(db);
+        final long attr = store.hash_add_type(2);
+        store.hash_add_str(attr, "name");
+        final long value = store.hash_add_type(1);
+        store.hash_add_int(value, 42);
+        store.add_node(1);
+        for(long episode = 1; episode <= 6; ++episode)
+        {
+            store.add_time(episode);
+        }
+        final long wc_id = store.add_epmem_wmes_constant(0, attr, value);
+        store.add_epmem_wmes_constant_range(4, 1, 3, wc_id);
+        store.add_epmem_wmes_constant_now(wc_id, 5);
+        final long wi_id = store.add_epmem_wmes_identifier(0, attr, 1, Long.MAX_VALUE);
+        store.add_epmem_wmes_identifier_point(wi_id, 4);
+        store.var_set(0, 99);
+        store.flush();
+        
+        final EpisodicMemoryStore loaded = InMemoryEpisodicMemoryStore.load(db);
+        assertEquals(Long.valueOf(99), loaded.var_get(0));
+        assertEquals(attr, loaded.hash_get_str("name"));
+        assertEquals(Long.valueOf(42), loaded.hash_rev_int(value));
+        assertEquals(6, loaded.get_max_time());
+        assertEquals(wc_id, loaded.find_epmem_wmes_constant(0, attr, value));
+        assertEquals(List.of(wc_id), loaded.now_select_node().stream().map(row -> row.id).collect(Collectors.toList()));
+        for(int interval_type = DefaultEpisodicMemory.EPMEM_RANGE_EP; interval_type <= DefaultEpisodicMemory.EPMEM_RANGE_POINT; interval_type++)
+        {
+            for(int point_type = DefaultEpisodicMemory.EPMEM_RANGE_START; point_type <= DefaultEpisodicMemory.EPMEM_RANGE_END; point_type++)
+            {
+                assertEquals(
+                        column(store.pool_find_interval_queries(0, point_type, interval_type, wc_id, 6)),
+                        column(loaded.pool_find_interval_queries(0, point_type, interval_type, wc_id, 6)));
+                assertEquals(
+                        column(store.pool_find_interval_queries(1, point_type, interval_type, wi_id, 6)),
+                        column(loaded.pool_find_interval_queries(1, point_type, interval_type, wi_id, 6)));
+            }
+        }
+        
+        // flushing again replaces the tables rather than adding to them
+        loaded.flush();
+        assertEquals(List.of(wc_id), new JdbcEpisodicMemoryStore(db).now_select_node().stream().map(row -> row.id).collect(Collectors.toList()));
+    }
+    
+    @Test
+    void testEpisodesRecordedWithEitherBackendPrintTheSame() throws Exception
+    {
+        final String database = printEpisodes("database");
+        final String heap = printEpisodes("heap");
+        assertFalse(database.isEmpty());
+        assertEquals(database, heap);
+    }
+    
+    private static String printEpisodes(String backend) throws Exception
+    {
+        final Agent agent = new Agent();
+        try
+        {
+            agent.getInterpreter().eval("epmem --set backend " + backend);
+            agent.getInterpreter().eval("epmem --set learning on");
+            agent.getInterpreter().eval("sp {propose*init (state <s> ^superstate nil -^count) --> (<s> ^operator <o> +) (<o> ^name init)}");
+            agent.getInterpreter().eval("sp {apply*init (state <s> ^operator.name init) --> (<s> ^count 0 ^thing <t>) (<t> ^name foo ^size 1.5)}");
+            agent.getInterpreter().eval("sp {propose*count (state <s> ^count <c>) --> (<s> ^operator <o> +) (<o> ^name count ^count <c>)}");
+            agent.getInterpreter().eval("sp {apply*count (state <s> ^operator <o> ^count <c> ^thing <t>) (<o> ^name count ^count <c>) -->"
+                    + " (<s> ^count <c> - ^count (+ <c> 1)) (<t> ^seen <c>)}");
+            agent.runFor(8, RunType.DECISIONS);
+            
+            final StringWriter sw = new StringWriter();
+            agent.getPrinter().pushWriter(sw);
+            for(int episode = 1; episode <= 8; ++episode)
+            {
+                agent.getInterpreter().eval("epmem --print " + episode);
+            }
+            agent.getPrinter().popWriter();
+            return sw.toString();
+        }
+        finally
+        {
+            agent.dispose();
+        }
+    }
+    
+    private static List<List<Long>> rows(QueryCursor cursor) throws SQLException
+    {
+        final List<List<Long>> result = new ArrayList<>();
+        try(cursor)
+        {
+            while(cursor.next())
+            {
+                result.add(List.of(cursor.getLong(1), cursor.getLong(2), cursor.getLong(3)));
+            }
+        }
+        return result;
+    }
+    
+    private static List<Long> column(QueryCursor cursor) throws SQLException
+    {
+        final List<Long> result = new ArrayList<>();
+        try(cursor)
+        {
+            while(cursor.next())
+            {
+                result.add(cursor.getLong(1));
+            }
+        }
+        return result;
+    }
+}
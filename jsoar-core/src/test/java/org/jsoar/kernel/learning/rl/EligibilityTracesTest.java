@@ -0,0 +1,121 @@
+package org.jsoar.kernel.learning.rl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jsoar.kernel.Production;
+import org.jsoar.kernel.ProductionType;
+import org.junit.jupiter.api.Test;
+
+class EligibilityTracesTest
+{
+    private final EligibilityTraces traces = new EligibilityTraces();
+    
+    @Test
+    void testAddStartsAndAccumulatesTraces() throws Exception
+    {
+        final Production a = rule("a", 0);
+        final Production b = rule("b", 5);
+        traces.add(a, 0.5);
+        traces.add(b, 0.25);
+        traces.add(a, 0.5);
+        
+        assertEquals(2, traces.size());
+        assertEquals(1.0, traces.get(a));
+        assertEquals(0.25, traces.get(b));
+        assertEquals(0.0, traces.get(rule("c", 3)));
+    }
+    
+    @Test
+    void testDecayRemovesTracesBelowTheTolerance() throws Exception
+    {
+        final Production a = rule("a", 0);
+        final Production b = rule("b", 1);
+        final Production c = rule("c", 2);
+        traces.add(a, 1.0);
+        traces.add(b, 0.1);
+        traces.add(c, 1.0);
+        
+        traces.decay(0.5, 0.9, 0.2);
+        
+        assertEquals(2, traces.size());
+        assertEquals(1.0 * 0.5 * 0.9, traces.get(a));
+        assertEquals(0.0, traces.get(b));
+        assertEquals(1.0 * 0.5 * 0.9, traces.get(c));
+        for(int i = 0; i < traces.size(); i++)
+        {
+            assertEquals(traces.get(traces.getProduction(i)), traces.getTrace(i));
+        }
+    }
+    
+    @Test
+    void testRemoveAndClear() throws Exception
+    {
+        final Production a = rule("a", 0);
+        final Production b = rule("b", 1);
+        traces.add(a, 1.0);
+        traces.add(b, 2.0);
+        
+        traces.remove(a);
+        traces.remove(a);
+        assertEquals(1, traces.size());
+        assertEquals(b, traces.getProduction(0));
+        assertEquals(2.0, traces.get(b));
+        
+        traces.clear();
+        assertTrue(traces.isEmpty());
+        traces.add(a, 3.0);
+        assertEquals(3.0, traces.get(a));
+        assertEquals(0.0, traces.get(b));
+    }
+    
+    @Test
+    void testBehavesLikeAMapOfTraces() throws Exception
+    {
+        final Production[] rules = new Production[50];
+        for(int i = 0; i < rules.length; i++)
+        {
+            rules[i] = rule("r" + i, rules.length - i);
+        }
+        
+        final Map<Production, Double> expected = new HashMap<>();
+        for(int step = 0; step < 500; step++)
+        {
+            final Production p = rules[(step * 7) % rules.length];
+            if(step % 11 == 0)
+            {
+                expected.remove(p);
+                traces.remove(p);
+            }
+            else
+            {
+                expected.merge(p, 0.5, Double::sum);
+                traces.add(p, 0.5);
+            }
+            if(step % 3 == 0)
+            {
+                expected.replaceAll((k, v) -> v * 0.9 * 0.8);
+                expected.values().removeIf(v -> v < 0.3);
+                traces.decay(0.9, 0.8, 0.3);
+            }
+            
+            final Map<Production, Double> actual = new HashMap<>();
+            for(int i = 0; i < traces.size(); i++)
+            {
+                actual.put(traces.getProduction(i), traces.getTrace(i));
+            }
+            assertEquals(expected, actual, "step " + step);
+        }
+    }
+    
+    private static Production rule(String name, int slot)
+    {
+        final Production p = Production.newBuilder().type(ProductionType.USER).name(name).build();
+        p.rlRuleInfo = new RLRuleInfo();
+        p.rlRuleInfo.rl_slot = slot;
+        return p;
+    }
+}
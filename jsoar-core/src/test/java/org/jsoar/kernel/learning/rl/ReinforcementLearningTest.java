@@ -19,13 +19,20 @@
 package org.jsoar.kernel.learning.rl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.StringWriter;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import org.jsoar.kernel.Agent;
 import org.jsoar.kernel.Production;
@@ -35,6 +42,7 @@
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class ReinforcementLearningTest
 {
@@ -119,4 +127,224 @@ void testRunRLUnitTestSuite() throws Exception
             agent.initialize();
         }
     }
+    
+    @Test
+    void testAgentsSharingValuesLearnLikeOneAgent() throws Exception
+    {
+        final SharedRLValueTable table = new SharedRLValueTable();
+        final Agent first = newRLUnitAgent(table);
+        final Agent second = newRLUnitAgent(table);
+        final Agent alone = newRLUnitAgent(null);
+        try
+        {
+            // Two runs split between two agents sharing values should learn
+            // the same values as two runs of one agent
+            first.runFor(0, RunType.FOREVER);
+            second.runFor(0, RunType.FOREVER);
+            alone.runFor(0, RunType.FOREVER);
+            alone.initialize();
+            alone.runFor(0, RunType.FOREVER);
+            
+            int shared = 0;
+            for(Production rule : alone.getProductions().getProductions(null))
+            {
+                if(rule.rlRuleInfo == null || rule.rlRuleInfo.rl_update_count == 0.0)
+                {
+                    continue;
+                }
+                final Production secondRule = second.getProductions().getProduction(rule.getName());
+                assertNotNull(secondRule);
+                assertEquals(getValue(rule), getValue(secondRule), 0.00000001, rule.getName());
+                
+                final String key = secondRule.rlRuleInfo.rl_shared_key != null ? secondRule.rlRuleInfo.rl_shared_key : rule.getName();
+                final SharedRLValueTable.Entry entry = table.get(key);
+                assertNotNull(entry, key);
+                assertEquals(getValue(rule), entry.getValue(), 0.00000001, key);
+                assertEquals(rule.rlRuleInfo.rl_update_count, entry.getUpdateCount(), 0.00000001, key);
+                shared++;
+            }
+            assertTrue(shared > 0);
+            
+            // The first agent picks up the second agent's updates when it saves
+            final Production firstRule = first.getProductions().getProduction("rl*value*function*2");
+            Adaptables.adapt(first, ReinforcementLearning.class).saveRules(new StringWriter());
+            assertEquals(getValue(second.getProductions().getProduction("rl*value*function*2")), getValue(firstRule), 0.00000001);
+        }
+        finally
+        {
+            first.dispose();
+            second.dispose();
+            alone.dispose();
+        }
+    }
+    
+    @Test
+    void testAgentsSharingValuesShareTemplateInstancesNumberedDifferently() throws Exception
+    {
+        final SharedRLValueTable table = new SharedRLValueTable();
+        final Agent first = newTemplateAgent(table, false);
+        final Agent second = newTemplateAgent(table, true);
+        try
+        {
+            first.runFor(5, RunType.DECISIONS);
+            second.runFor(6, RunType.DECISIONS);
+            
+            // The second agent built an instance for its warm-up operator
+            // before the go operator, so their go instances have different
+            // numbers
+            final Production firstGo = findTemplateInstance(first, "go");
+            final Production secondGo = findTemplateInstance(second, "go");
+            assertNotNull(firstGo);
+            assertNotNull(secondGo);
+            assertNotNull(findTemplateInstance(second, "warm-up"));
+            assertNotEquals(firstGo.getName(), secondGo.getName());
+            assertEquals(firstGo.rlRuleInfo.rl_shared_key, secondGo.rlRuleInfo.rl_shared_key);
+            
+            final SharedRLValueTable.Entry entry = table.get(firstGo.rlRuleInfo.rl_shared_key);
+            final double firstUpdates = entry.getUpdateCount();
+            assertTrue(firstUpdates > 0);
+            
+            // The second agent's updates go to the same entry
+            second.runFor(3, RunType.DECISIONS);
+            assertTrue(entry.getUpdateCount() > firstUpdates);
+            assertEquals(entry.getUpdateCount(), secondGo.rlRuleInfo.rl_update_count, 0.00000001);
+            
+            first.runFor(1, RunType.DECISIONS);
+            assertEquals(entry.getValue(), getValue(firstGo), 0.00000001);
+            assertTrue(firstGo.rlRuleInfo.rl_update_count > firstUpdates);
+        }
+        finally
+        {
+            first.dispose();
+            second.dispose();
+        }
+    }
+    
+    @Test
+    void testSavedRulesRestoreLearnedValues() throws Exception
+    {
+        final URL code = getClass().getResource("/org/jsoar/kernel/RLTests_testRLUnit.soar");
+        SoarCommands.source(agent.getInterpreter(), code);
+        agent.runFor(0, RunType.FOREVER);
+        
+        final StringWriter saved = new StringWriter();
+        rl.saveRules(saved);
+        
+        final Agent restored = new Agent();
+        try
+        {
+            restored.getInterpreter().eval(saved.toString());
+            int count = 0;
+            for(Production rule : agent.getProductions().getProductions(null))
+            {
+                if(rule.rlRuleInfo != null)
+                {
+                    final Production restoredRule = restored.getProductions().getProduction(rule.getName());
+                    assertNotNull(restoredRule, rule.getName());
+                    assertEquals(getValue(rule), getValue(restoredRule), 0.00000001, rule.getName());
+                    count++;
+                }
+            }
+            assertTrue(count > 0);
+        }
+        finally
+        {
+            restored.dispose();
+        }
+    }
+    
+    @Test
+    void testSnapshotsAreSavedEveryNDecisions(@TempDir Path dir) throws Exception
+    {
+        final URL code = getClass().getResource("/org/jsoar/kernel/RLTests_testRLUnit.soar");
+        SoarCommands.source(agent.getInterpreter(), code);
+        
+        final Path file = dir.resolve("rl.soar");
+        final RLValueSnapshots snapshots = new RLValueSnapshots(agent, file.toFile(), 2);
+        agent.runFor(1, RunType.DECISIONS);
+        assertTrue(!Files.exists(file));
+        agent.runFor(3, RunType.DECISIONS);
+        assertTrue(Files.exists(file));
+        assertTrue(Files.readString(file).contains("sp {rl*value*function*1"));
+        snapshots.dispose();
+        
+        Files.delete(file);
+        agent.runFor(2, RunType.DECISIONS);
+        assertTrue(!Files.exists(file));
+        try(Stream<Path> files = Files.list(dir))
+        {
+            assertEquals(0, files.count());
+        }
+    }
+    
+    @Test
+    void testRlSaveCommandWritesRules(@TempDir Path dir) throws Exception
+    {
+        final URL code = getClass().getResource("/org/jsoar/kernel/RLTests_testRLUnit.soar");
+        SoarCommands.source(agent.getInterpreter(), code);
+        agent.runFor(0, RunType.FOREVER);
+        
+        final Path file = dir.resolve("rl.soar");
+        agent.getInterpreter().eval("rl --save " + file.toString().replace('\\', '/'));
+        
+        final StringWriter expected = new StringWriter();
+        rl.saveRules(expected);
+        assertEquals(expected.toString(), Files.readString(file));
+    }
+    
+    /**
+     * An agent that selects a go operator over and over and is rewarded each
+     * time, with an RL template for its operators. Optionally, it selects a
+     * warm-up operator before the first go.
+     */
+    private static Agent newTemplateAgent(SharedRLValueTable table, boolean warmUp) throws Exception
+    {
+        final Agent agent = new Agent();
+        agent.getTrace().disableAll();
+        Adaptables.adapt(agent, ReinforcementLearning.class).setSharedValues(table);
+        agent.getInterpreter().eval("rl --set learning on");
+        agent.getInterpreter().eval("sp {rl*operator :template (state <s> ^operator <o> +) (<o> ^name <name>) --> (<s> ^operator <o> = 0)}");
+        agent.getInterpreter().eval("sp {propose*start (state <s> ^superstate nil -^count) --> (<s> ^operator <o> +) (<o> ^name start)}");
+        agent.getInterpreter().eval("sp {apply*start (state <s> ^operator.name start) --> (<s> ^count 0)}");
+        if(warmUp)
+        {
+            agent.getInterpreter().eval("sp {propose*warm-up (state <s> ^count -^warm) --> (<s> ^operator <o> +) (<o> ^name warm-up)}");
+            agent.getInterpreter().eval("sp {apply*warm-up (state <s> ^operator.name warm-up) --> (<s> ^warm yes)}");
+        }
+        else
+        {
+            agent.getInterpreter().eval("sp {elaborate*warm (state <s> ^count) --> (<s> ^warm yes)}");
+        }
+        agent.getInterpreter().eval("sp {propose*go (state <s> ^warm yes ^count <c>) --> (<s> ^operator <o> +) (<o> ^name go ^count <c>)}");
+        agent.getInterpreter().eval("sp {apply*go (state <s> ^operator <o> ^count <c> ^reward-link <r>) (<o> ^name go) --> " +
+                "(<s> ^count <c> - ^count (+ <c> 1)) (<r> ^reward.value 1)}");
+        return agent;
+    }
+    
+    private static Production findTemplateInstance(Agent agent, String operator)
+    {
+        for(Production p : agent.getProductions().getProductions(null))
+        {
+            if(p.rlRuleInfo != null && p.rlRuleInfo.rl_shared_key != null && p.rlRuleInfo.rl_shared_key.endsWith(":" + operator))
+            {
+                return p;
+            }
+        }
+        return null;
+    }
+    
+    private static Agent newRLUnitAgent(SharedRLValueTable table) throws Exception
+    {
+        final Agent agent = new Agent();
+        final ReinforcementLearning rl = Adaptables.adapt(agent, ReinforcementLearning.class);
+        rl.setSharedValues(table);
+        assertSame(table, rl.getSharedValues());
+        SoarCommands.source(agent.getInterpreter(), ReinforcementLearningTest.class.getResource("/org/jsoar/kernel/RLTests_testRLUnit.soar"));
+        return agent;
+    }
+    
+    private static double getValue(Production rule)
+    {
+        return rule.getFirstAction().asMakeAction().referent.asSymbolValue().getSym().asDouble().getValue();
+    }
 }
@@ -0,0 +1,113 @@
+package org.jsoar.kernel.learning.rl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jsoar.kernel.symbols.SymbolFactoryImpl;
+import org.jsoar.kernel.symbols.SymbolImpl;
+import org.junit.jupiter.api.Test;
+
+class SharedRLValueTableTest
+{
+    private final SharedRLValueTable table = new SharedRLValueTable();
+    private final SymbolFactoryImpl syms = new SymbolFactoryImpl();
+    
+    @Test
+    void testFirstRegistrationProvidesTheInitialValues() throws Exception
+    {
+        assertNull(table.get("a"));
+        final SharedRLValueTable.Entry a = table.register("a", 1.0, 2.0, 3.0);
+        assertSame(a, table.register("a", 10.0, 20.0, 30.0));
+        assertSame(a, table.get("a"));
+        assertEquals(1.0, a.getEcr());
+        assertEquals(2.0, a.getEfr());
+        assertEquals(3.0, a.getValue());
+        assertEquals(3.0, a.getUpdateCount());
+        assertEquals(1, table.size());
+    }
+    
+    @Test
+    void testConcurrentUpdatesAreAllApplied() throws Exception
+    {
+        final SharedRLValueTable.Entry entry = table.register("a", 0.0, 0.0, 0.0);
+        final int threadCount = 4;
+        final int updates = 10000;
+        final List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < threadCount; i++)
+        {
+            threads.add(new Thread(() -> {
+                for(int j = 0; j < updates; j++)
+                {
+                    entry.addToEcr(0.5);
+                    entry.addToEfr(0.25);
+                    entry.addToUpdateCount(1);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for(Thread t : threads)
+        {
+            t.join();
+        }
+        
+        assertEquals(threadCount * updates * 0.5, entry.getEcr());
+        assertEquals(threadCount * updates * 0.25, entry.getEfr());
+        assertEquals(threadCount * updates, entry.getUpdateCount());
+    }
+    
+    @Test
+    void testTemplateKeyDoesNotDependOnConstantOrder() throws Exception
+    {
+        final Map<SymbolImpl, SymbolImpl> forwards = new LinkedHashMap<>();
+        forwards.put(syms.make_variable("a"), syms.createString("x"));
+        forwards.put(syms.make_variable("b"), syms.createInteger(5));
+        final Map<SymbolImpl, SymbolImpl> backwards = new LinkedHashMap<>();
+        backwards.put(syms.make_variable("b"), syms.createInteger(5));
+        backwards.put(syms.make_variable("a"), syms.createString("x"));
+        
+        assertEquals(SharedRLValueTable.templateKey("t", forwards), SharedRLValueTable.templateKey("t", backwards));
+    }
+    
+    @Test
+    void testTemplateKeyDistinguishesConstantTypes() throws Exception
+    {
+        final Map<SymbolImpl, SymbolImpl> integer = new LinkedHashMap<>();
+        integer.put(syms.make_variable("a"), syms.createInteger(5));
+        final Map<SymbolImpl, SymbolImpl> string = new LinkedHashMap<>();
+        string.put(syms.make_variable("a"), syms.createString("5"));
+        final Map<SymbolImpl, SymbolImpl> real = new LinkedHashMap<>();
+        real.put(syms.make_variable("a"), syms.createDouble(5.0));
+        
+        final Set<String> keys = new HashSet<>();
+        keys.add(SharedRLValueTable.templateKey("t", integer));
+        keys.add(SharedRLValueTable.templateKey("t", string));
+        keys.add(SharedRLValueTable.templateKey("t", real));
+        assertEquals(3, keys.size());
+    }
+    
+    @Test
+    void testTemplateKeyCantBeForgedByAStringConstant() throws Exception
+    {
+        final Map<SymbolImpl, SymbolImpl> two = new LinkedHashMap<>();
+        two.put(syms.make_variable("a"), syms.createString("x"));
+        two.put(syms.make_variable("b"), syms.createInteger(5));
+        
+        final String key = SharedRLValueTable.templateKey("t", two);
+        final String suffix = key.substring(key.indexOf(' ') + 1);
+        for(String forged : new String[] { "x <b>=5", "x" + suffix, suffix })
+        {
+            final Map<SymbolImpl, SymbolImpl> one = new LinkedHashMap<>();
+            one.put(syms.make_variable("a"), syms.createString(forged));
+            assertNotEquals(key, SharedRLValueTable.templateKey("t", one), forged);
+        }
+    }
+}
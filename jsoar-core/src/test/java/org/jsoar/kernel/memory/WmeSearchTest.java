@@ -0,0 +1,112 @@
+package org.jsoar.kernel.memory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.RunType;
+import org.jsoar.kernel.rete.Rete;
+import org.jsoar.kernel.symbols.SymbolImpl;
+import org.jsoar.util.adaptables.Adaptables;
+import org.jsoar.util.commands.SoarCommands;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.Lists;
+
+class WmeSearchTest
+{
+    private Agent agent;
+    private WmeSearch search;
+    
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        agent = new Agent();
+        SoarCommands.source(agent.getInterpreter(), getClass().getResource("/org/jsoar/kernel/FunctionalTests_testBlocksWorld.soar"));
+        agent.runFor(3, RunType.DECISIONS);
+        search = new WmeSearch(agent);
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        agent.dispose();
+    }
+    
+    @Test
+    void testFindsTheSameWmesAsScanningAllWmes() throws Exception
+    {
+        final Set<List<String>> patterns = new LinkedHashSet<>();
+        for(Wme w : agent.getAllWmesInRete())
+        {
+            final String id = w.getIdentifier().toString();
+            final String attr = w.getAttribute().toString();
+            final String value = w.getValue().toString();
+            patterns.add(Arrays.asList(id, "*", "*"));
+            patterns.add(Arrays.asList(id.toLowerCase(), "*", "*"));
+            patterns.add(Arrays.asList(id.substring(0, 1) + "*", "*", "*"));
+            patterns.add(Arrays.asList(id, attr, "*"));
+            patterns.add(Arrays.asList("*", attr, "*"));
+            patterns.add(Arrays.asList("*", attr, value));
+            patterns.add(Arrays.asList("*", "*", value));
+            patterns.add(Arrays.asList("*", attr.substring(0, 1) + "*", "*"));
+            patterns.add(Arrays.asList("*", attr, value.substring(0, 1) + "*"));
+        }
+        patterns.add(Arrays.asList("*", "*", "*"));
+        patterns.add(Arrays.asList("*", "?ame", "*"));
+        patterns.add(Arrays.asList("S?", "*", "*"));
+        patterns.add(Arrays.asList("X99", "*", "*"));
+        patterns.add(Arrays.asList("not an id", "*", "*"));
+        patterns.add(Arrays.asList("*", "no-such-attr", "*"));
+        patterns.add(Arrays.asList("*", "", "*"));
+        
+        for(List<String> p : patterns)
+        {
+            assertEquals(scan(p.get(0), p.get(1), p.get(2)), search.search(p.get(0), p.get(1), p.get(2)), p.toString());
+        }
+    }
+    
+    @Test
+    void testNullMatchesAnything() throws Exception
+    {
+        assertEquals(scan("*", "*", "*"), search.search(null, null, null));
+        assertEquals(scan("*", "operator", "*"), search.search(null, "operator", null));
+    }
+    
+    @Test
+    void testFindsAcceptablePreferenceWmes() throws Exception
+    {
+        // The non-acceptable WMEs come from an alpha memory
+        final Rete rete = Adaptables.adapt(agent, Rete.class);
+        assertNotNull(rete.getWmesInAlphaMemory((SymbolImpl) agent.getSymbols().findString("operator"), null, false));
+        
+        final List<Wme> operators = search.search("*", "operator", "*");
+        assertTrue(operators.stream().anyMatch(Wme::isAcceptable), operators.toString());
+        assertTrue(operators.stream().anyMatch(w -> !w.isAcceptable()), operators.toString());
+    }
+    
+    @Test
+    void testCanBeReusedWhileTheAgentRuns() throws Exception
+    {
+        assertFalse(search.search("*", "operator", "*").isEmpty());
+        agent.runFor(3, RunType.DECISIONS);
+        assertEquals(scan("*", "operator", "*"), search.search("*", "operator", "*"));
+    }
+    
+    private List<Wme> scan(String id, String attr, String value)
+    {
+        final List<Wme> result = Lists.newArrayList(Wmes.search(agent.getAllWmesInRete().iterator(), id, attr, value));
+        result.sort(Comparator.comparingInt(Wme::getTimetag));
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+package org.jsoar.kernel.memory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.RunType;
+import org.jsoar.kernel.events.WorkingMemoryChangedEvent;
+import org.jsoar.util.adaptables.Adaptables;
+import org.jsoar.util.events.SoarEventListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WorkingMemoryTest
+{
+    private Agent agent;
+    private WorkingMemory wm;
+    
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        agent = new Agent();
+        wm = Adaptables.adapt(agent, WorkingMemory.class);
+        agent.getProductions().loadProduction("add (state <s> ^superstate nil) --> (<s> ^foo bar)");
+        agent.getProductions().loadProduction("remove (state <s> ^foo bar) --> (<s> ^foo bar -)");
+    }
+    
+    @AfterEach
+    void tearDown()
+    {
+        agent.dispose();
+    }
+    
+    @Test
+    void testChangeListenerSeesAddedAndRemovedWmes()
+    {
+        final List<String> added = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        wm.addChangeListener((a, r) ->
+        {
+            while(a.next())
+            {
+                added.add(a.get().getAttribute() + " " + a.get().getValue());
+            }
+            while(r.next())
+            {
+                removed.add(r.get().getAttribute() + " " + r.get().getValue());
+            }
+        });
+        
+        agent.runFor(1, RunType.DECISIONS);
+        
+        assertTrue(added.contains("foo bar"));
+        assertTrue(removed.contains("foo bar"));
+    }
+    
+    @Test
+    void testCursorsCanBeRewound()
+    {
+        final List<Integer> first = new ArrayList<>();
+        final List<Integer> second = new ArrayList<>();
+        wm.addChangeListener((a, r) ->
+        {
+            first.add(count(a));
+            assertThrows(NoSuchElementException.class, a::get);
+            a.rewind();
+            second.add(count(a));
+        });
+        
+        agent.runFor(1, RunType.DECISIONS);
+        
+        assertFalse(first.isEmpty());
+        assertEquals(first, second);
+    }
+    
+    @Test
+    void testRemovedChangeListenerIsNotCalled()
+    {
+        final List<WmeCursor> calls = new ArrayList<>();
+        final WorkingMemoryChangeListener listener = (a, r) -> calls.add(a);
+        wm.addChangeListener(listener);
+        wm.removeChangeListener(listener);
+        
+        agent.runFor(1, RunType.DECISIONS);
+        
+        assertTrue(calls.isEmpty());
+    }
+    
+    @Test
+    void testEventIsStillFiredToItsListeners()
+    {
+        final List<Wme> added = new ArrayList<>();
+        final SoarEventListener listener = event -> ((WorkingMemoryChangedEvent) event).getAddedWmes().forEachRemaining(added::add);
+        agent.getEvents().addListener(WorkingMemoryChangedEvent.class, listener);
+        
+        agent.runFor(1, RunType.DECISIONS);
+        
+        assertFalse(added.isEmpty());
+    }
+    
+    private static int count(WmeCursor cursor)
+    {
+        int count = 0;
+        while(cursor.next())
+        {
+            count++;
+        }
+        return count;
+    }
+}
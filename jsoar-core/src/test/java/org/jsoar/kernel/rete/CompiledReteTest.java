@@ -0,0 +1,207 @@
+package org.jsoar.kernel.rete;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.Production;
+import org.jsoar.kernel.RunType;
+import org.jsoar.kernel.SoarException;
+import org.jsoar.kernel.SoarProperties;
+import org.jsoar.kernel.rhs.functions.RhsFunctionContext;
+import org.jsoar.kernel.rhs.functions.StandaloneRhsFunctionHandler;
+import org.jsoar.kernel.symbols.Symbol;
+import org.jsoar.util.ByRef;
+import org.jsoar.util.adaptables.Adaptables;
+import org.jsoar.util.commands.SoarCommands;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link CompiledReteWriter} and {@link CompiledReteReader}
+ */
+class CompiledReteTest
+{
+    private Agent agent;
+    private Agent newAgent;
+    
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        agent = new Agent();
+        newAgent = new Agent();
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        agent.dispose();
+        newAgent.dispose();
+    }
+    
+    @Test
+    void testCompiledReteHasTheSameStructureAsTheOriginal() throws Exception
+    {
+        for(String name : new String[] { "FunctionalTests_testWaterJug", "FunctionalTests_testBlocksWorld",
+                "FunctionalTests_testEightPuzzle", "ChunkingTests_testNegatedConjunctiveChunkLoopBug510" })
+        {
+            exciseAll(agent);
+            SoarCommands.source(agent.getInterpreter(), getClass().getResource("/org/jsoar/kernel/" + name + ".soar"));
+            
+            ReteSerializer.loadCompiledRete(newAgent, ByteBuffer.wrap(compile(agent)));
+            
+            assertEquals(agent.getProductions().getProductionCount(), newAgent.getProductions().getProductionCount(), name);
+            for(Production p : agent.getProductions().getProductions(null))
+            {
+                assertEquals(p.getType(), newAgent.getProductions().getProduction(p.getName()).getType(), name);
+            }
+            assertArrayEquals(compile(agent), compile(newAgent), name);
+        }
+    }
+    
+    @Test
+    void testCompiledReteMatches() throws Exception
+    {
+        final ByRef<Integer> matched = ByRef.create(0);
+        final StandaloneRhsFunctionHandler match = new StandaloneRhsFunctionHandler("match")
+        {
+            @Override
+            public Symbol execute(RhsFunctionContext context, List<Symbol> arguments)
+            {
+                matched.value++;
+                return null;
+            }
+        };
+        agent.getRhsFunctions().registerHandler(match);
+        newAgent.getRhsFunctions().registerHandler(match);
+        agent.getProductions().loadProduction("" +
+                "create\n" +
+                "(state <s> ^superstate nil)\n" +
+                "-->\n" +
+                "(<s> ^thing <t> ^count 3 ^ratio 0.5)" +
+                "(<t> ^name |hello world| ^color red)");
+        agent.getProductions().loadProduction("" +
+                "test\n" +
+                "\"Some documentation\"\n" +
+                "(state <s> ^superstate nil ^thing {<t> <t2>} ^count > 2 ^ratio < 1.0)\n" +
+                "(<t> ^name |hello world| ^color << red blue >>)\n" +
+                "-{(<t> ^size large)}\n" +
+                "-(<s> ^missing)\n" +
+                "-->\n" +
+                "(<s> ^result (+ 1 2) ^new <n> + =)\n" +
+                "(match)");
+        
+        ReteSerializer.loadCompiledRete(newAgent, ByteBuffer.wrap(compile(agent)));
+        assertEquals("Some documentation", newAgent.getProductions().getProduction("test").getDocumentation());
+        
+        newAgent.getProperties().set(SoarProperties.WAITSNC, true);
+        newAgent.runFor(2, RunType.DECISIONS);
+        assertEquals(1, (int) matched.value);
+    }
+    
+    @Test
+    void testLoadCompiledReteFromMappedFile(@TempDir Path dir) throws Exception
+    {
+        SoarCommands.source(agent.getInterpreter(), getClass().getResource("/org/jsoar/kernel/FunctionalTests_testWaterJug.soar"));
+        final Path file = dir.resolve("waterjug.jsrc");
+        try(OutputStream os = Files.newOutputStream(file))
+        {
+            ReteSerializer.saveCompiledRete(agent, os);
+        }
+        
+        ReteSerializer.loadCompiledRete(newAgent, file);
+        assertArrayEquals(compile(agent), compile(newAgent));
+        
+        // And the load command detects the format
+        final Agent other = new Agent();
+        try
+        {
+            other.getInterpreter().eval("load rete-net --load " + file.toString().replace('\\', '/'));
+            assertArrayEquals(compile(agent), compile(other));
+        }
+        finally
+        {
+            other.dispose();
+        }
+    }
+    
+    @Test
+    void testReplaceReteAcceptsBothFormats() throws Exception
+    {
+        SoarCommands.source(agent.getInterpreter(), getClass().getResource("/org/jsoar/kernel/FunctionalTests_testWaterJug.soar"));
+        
+        ReteSerializer.replaceRete(newAgent, new ByteArrayInputStream(compile(agent)));
+        assertArrayEquals(compile(agent), compile(newAgent));
+        
+        ReteSerializer.replaceRete(newAgent, new ByteArrayInputStream(save(agent)));
+        assertArrayEquals(compile(agent), compile(newAgent));
+    }
+    
+    @Test
+    void testExciseAfterLoadingReleasesAlphaMemories() throws Exception
+    {
+        SoarCommands.source(agent.getInterpreter(), getClass().getResource("/org/jsoar/kernel/FunctionalTests_testBlocksWorld.soar"));
+        ReteSerializer.loadCompiledRete(newAgent, ByteBuffer.wrap(compile(agent)));
+        
+        final Rete rete = Adaptables.adapt(newAgent, Rete.class);
+        assertEquals(Adaptables.adapt(agent, Rete.class).getAllAlphaMemories().size(), rete.getAllAlphaMemories().size());
+        
+        exciseAll(newAgent);
+        assertEquals(0, newAgent.getProductions().getProductionCount());
+        assertEquals(0, rete.getAllAlphaMemories().size());
+        
+        // Loading again into the same agent still works
+        ReteSerializer.loadCompiledRete(newAgent, ByteBuffer.wrap(compile(agent)));
+        assertArrayEquals(compile(agent), compile(newAgent));
+    }
+    
+    @Test
+    void testRejectsInvalidInput() throws Exception
+    {
+        SoarCommands.source(agent.getInterpreter(), getClass().getResource("/org/jsoar/kernel/FunctionalTests_testWaterJug.soar"));
+        final byte[] bytes = compile(agent);
+        
+        assertThrows(SoarException.class, () -> ReteSerializer.loadCompiledRete(newAgent, ByteBuffer.wrap(save(agent))));
+        assertThrows(SoarException.class, () -> ReteSerializer.loadCompiledRete(newAgent, ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length / 2))));
+        
+        final ByteBuffer wrongVersion = ByteBuffer.wrap(bytes.clone());
+        wrongVersion.putInt(4, CompiledReteFormat.VERSION + 1);
+        final SoarException e = assertThrows(SoarException.class, () -> ReteSerializer.loadCompiledRete(newAgent, wrongVersion));
+        assertTrue(e.getMessage().contains("version"), e.getMessage());
+    }
+    
+    private static void exciseAll(Agent agent)
+    {
+        for(Production p : agent.getProductions().getProductions(null))
+        {
+            agent.getProductions().exciseProduction(p, false);
+        }
+    }
+    
+    private static byte[] compile(Agent agent) throws Exception
+    {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ReteSerializer.saveCompiledRete(agent, baos);
+        return baos.toByteArray();
+    }
+    
+    private static byte[] save(Agent agent) throws Exception
+    {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ReteSerializer.saveRete(agent, baos);
+        return baos.toByteArray();
+    }
+}
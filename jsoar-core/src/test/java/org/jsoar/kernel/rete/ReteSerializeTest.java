@@ -205,6 +205,27 @@ public Symbol execute(RhsFunctionContext context, List<Symbol> arguments) throws
         newAgent.dispose();
     }
     
+    @Test
+    void serializationOfConjunctiveVariablesTest() throws Exception
+    {
+        // Several variables bound to the same field are written as a varnames list
+        agent.getProductions().loadProduction("" +
+                "conjunctive\n" +
+                "(state <s> ^superstate nil ^thing {<x> <y>})\n" +
+                "-->\n" +
+                "(<s> ^x <x> ^y <y>)");
+        agent.getProductions().loadProduction("" +
+                "another\n" +
+                "(state <s> ^superstate nil ^x <x>)\n" +
+                "-->\n" +
+                "(<s> ^done <x>)");
+        
+        Agent newAgent = serialize(agent);
+        assertNotNull(newAgent.getProductions().getProduction("conjunctive"));
+        assertNotNull(newAgent.getProductions().getProduction("another"));
+        newAgent.dispose();
+    }
+    
     private Agent serialize(Agent agent) throws Exception
     {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -10,15 +10,22 @@
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.jsoar.JSoarTest;
 import org.jsoar.kernel.Agent;
 import org.jsoar.kernel.Production;
+import org.jsoar.kernel.RunType;
 import org.jsoar.kernel.epmem.DefaultEpisodicMemory;
 import org.jsoar.kernel.learning.rl.ReinforcementLearningParams;
 import org.jsoar.kernel.memory.Instantiation;
@@ -32,6 +39,7 @@
 import org.jsoar.kernel.tracing.Printer;
 import org.jsoar.kernel.tracing.Trace;
 import org.jsoar.util.adaptables.AdaptableContainer;
+import org.jsoar.util.adaptables.Adaptables;
 import org.jsoar.util.properties.PropertyManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -49,6 +57,7 @@ class ReteUnitTest extends JSoarTest
     private class Listener implements ReteListener
     {
         Set<Production> matching = new HashSet<>();
+        int matchCount = 0;
         
         /*
          * (non-Javadoc)
@@ -70,6 +79,7 @@ public boolean finishRefraction(Rete rete, Production p, Instantiation refracted
         public void p_node_left_addition(Rete rete, ReteNode node, Token tok, WmeImpl w)
         {
             matching.add(node.b_p().prod);
+            matchCount++;
         }
         
         /*
@@ -81,6 +91,7 @@ public void p_node_left_addition(Rete rete, ReteNode node, Token tok, WmeImpl w)
         public void p_node_left_removal(Rete rete, ReteNode node, Token tok, WmeImpl w)
         {
             matching.remove(node.b_p().prod);
+            matchCount--;
         }
         
         /*
@@ -402,4 +413,173 @@ void testAddProblematicTowersOfHanoiProduction() throws Exception
         assertNotNull(result);
         assertEquals(ProductionAddResult.NO_REFRACTED_INST, result);
     }
+    
+    @Test
+    void testHashTablesGrowAndShrinkWithWorkingMemory() throws Exception
+    {
+        final Production p = parseProduction("testHashTables (<r> ^item <i>) (<i> ^value <v>) -(<i> ^skip true) --> (write <i>)");
+        rete.add_production_to_rete(p);
+        
+        final int minimumSize = 1 << LeftTokenHashTable.DEFAULT_MINIMUM_LOG2_SIZE;
+        assertEquals(minimumSize, rete.left_ht.getSize());
+        assertEquals(1 << RightMemoryHashTable.DEFAULT_MINIMUM_LOG2_SIZE, rete.right_ht.getSize());
+        
+        final IdentifierImpl root = syms.make_new_identifier('R', (short) 0);
+        final List<WmeImpl> wmes = new ArrayList<>();
+        final int items = 20000;
+        for(int i = 0; i < items; ++i)
+        {
+            final IdentifierImpl item = syms.make_new_identifier('I', (short) 0);
+            wmes.add(new WmeImpl(root, syms.createString("item"), item, false, 0));
+            wmes.add(new WmeImpl(item, syms.createString("value"), syms.createInteger(i), false, 0));
+            if(i % 2 == 0)
+            {
+                wmes.add(new WmeImpl(item, syms.createString("skip"), syms.createString("true"), false, 0));
+            }
+        }
+        for(WmeImpl w : wmes)
+        {
+            rete.add_wme_to_rete(w);
+        }
+        assertEquals(items / 2, listener.matchCount);
+        
+        // Tables are resized on the next top-level operation
+        final WmeImpl extra = new WmeImpl(root, syms.createString("unrelated"), syms.createInteger(0), false, 0);
+        rete.add_wme_to_rete(extra);
+        assertTrue(rete.left_ht.getSize() >= rete.left_ht.getCount(), "left table did not grow");
+        assertTrue(rete.right_ht.getSize() >= rete.right_ht.getCount(), "right table did not grow");
+        assertTrue(rete.right_ht.getSize() > minimumSize);
+        
+        // Matching still works after the rehash
+        final IdentifierImpl lastItem = wmes.get(wmes.size() - 1).id;
+        final WmeImpl skip = new WmeImpl(lastItem, syms.createString("skip"), syms.createString("true"), false, 0);
+        rete.add_wme_to_rete(skip);
+        assertEquals(items / 2 - 1, listener.matchCount);
+        rete.remove_wme_from_rete(skip);
+        assertEquals(items / 2, listener.matchCount);
+        
+        for(WmeImpl w : wmes)
+        {
+            rete.remove_wme_from_rete(w);
+        }
+        assertEquals(0, listener.matchCount);
+        rete.remove_wme_from_rete(extra);
+        assertEquals(minimumSize, rete.left_ht.getSize());
+        assertEquals(1 << RightMemoryHashTable.DEFAULT_MINIMUM_LOG2_SIZE, rete.right_ht.getSize());
+    }
+    
+    @Test
+    void testTokenHashIdsAndBucketOrderAreTheSameFromRunToRun() throws Exception
+    {
+        assertEquals(runAndGetLeftHashTableLayout(), runAndGetLeftHashTableLayout());
+    }
+    
+    /**
+     * Run a small agent with a conjunctive negation, which hashes on token
+     * and wme addresses, and list each left token in the order it's found in
+     * the left hash table
+     */
+    private static List<String> runAndGetLeftHashTableLayout() throws Exception
+    {
+        final Agent agent = new Agent();
+        try
+        {
+            agent.getTrace().disableAll();
+            agent.getProductions().loadProduction(
+                    "propose*init (state <s> ^superstate nil -^count) --> (<s> ^operator <o> + =) (<o> ^name init)");
+            agent.getProductions().loadProduction(
+                    "apply*init (state <s> ^operator.name init) --> (<s> ^count 0 ^limit <l>) (<l> ^value 5)");
+            agent.getProductions().loadProduction(
+                    "propose*increment (state <s> ^count <c>) -{(<s> ^limit <l>) (<l> ^value <c>)} --> (<s> ^operator <o> + =) (<o> ^name increment)");
+            agent.getProductions().loadProduction(
+                    "apply*increment (state <s> ^operator.name increment ^count <c>) --> (<s> ^count <c> - ^count (+ <c> 1))");
+            agent.runFor(10, RunType.DECISIONS);
+            
+            final Rete rete = Adaptables.adapt(agent, Rete.class);
+            // Bucket i holds hash value i as long as there are no more than
+            // 2^16 buckets
+            assertTrue(rete.left_ht.getSize() <= 1 << 16);
+            final List<String> layout = new ArrayList<>();
+            for(int i = 0; i < rete.left_ht.getSize(); ++i)
+            {
+                for(LeftToken tok = rete.left_ht.left_ht_bucket(i); tok != null; tok = tok.next_in_bucket)
+                {
+                    layout.add(i + ":" + tok.hash_id + ":" + tok.node.node_id);
+                }
+            }
+            assertFalse(layout.isEmpty());
+            return layout;
+        }
+        finally
+        {
+            agent.dispose();
+        }
+    }
+    
+    @Test
+    void testAllWmesInReteTracksAddsAndRemoves() throws Exception
+    {
+        final IdentifierImpl root = syms.make_new_identifier('R', (short) 0);
+        final WmeImpl a = new WmeImpl(root, syms.createString("a"), syms.createInteger(1), false, 1);
+        final WmeImpl b = new WmeImpl(root, syms.createString("b"), syms.createInteger(2), false, 2);
+        final WmeImpl c = new WmeImpl(root, syms.createString("c"), syms.createInteger(3), false, 3);
+        
+        assertTrue(rete.getAllWmes().isEmpty());
+        rete.add_wme_to_rete(a);
+        rete.add_wme_to_rete(b);
+        rete.add_wme_to_rete(c);
+        assertEquals(Arrays.asList(a, b, c), new ArrayList<>(rete.getAllWmes()));
+        assertEquals(3, rete.getAllWmes().size());
+        assertTrue(rete.containsWme(b));
+        
+        rete.remove_wme_from_rete(b);
+        assertFalse(rete.containsWme(b));
+        assertFalse(rete.getAllWmes().contains(b));
+        assertEquals(Arrays.asList(a, c), new ArrayList<>(rete.getAllWmes()));
+        
+        // removing the current wme while iterating is allowed
+        for(WmeImpl w : rete.getAllWmes())
+        {
+            rete.remove_wme_from_rete(w);
+        }
+        assertTrue(rete.getAllWmes().isEmpty());
+        assertFalse(rete.containsWme(a));
+        assertFalse(rete.containsWme(c));
+        
+        rete.add_wme_to_rete(b);
+        assertEquals(Arrays.asList(b), new ArrayList<>(rete.getAllWmes()));
+    }
+    
+    @Test
+    void testAllWmesInReteIteratorFailsFastOnOtherChanges() throws Exception
+    {
+        final IdentifierImpl root = syms.make_new_identifier('R', (short) 0);
+        final WmeImpl a = new WmeImpl(root, syms.createString("a"), syms.createInteger(1), false, 1);
+        final WmeImpl b = new WmeImpl(root, syms.createString("b"), syms.createInteger(2), false, 2);
+        final WmeImpl c = new WmeImpl(root, syms.createString("c"), syms.createInteger(3), false, 3);
+        rete.add_wme_to_rete(a);
+        rete.add_wme_to_rete(b);
+        rete.add_wme_to_rete(c);
+        
+        // Removing a wme other than the current one
+        final Iterator<WmeImpl> removing = rete.getAllWmes().iterator();
+        assertSame(a, removing.next());
+        rete.remove_wme_from_rete(b);
+        assertThrows(ConcurrentModificationException.class, removing::next);
+        
+        // Adding a wme
+        final Iterator<WmeImpl> adding = rete.getAllWmes().iterator();
+        assertSame(a, adding.next());
+        rete.add_wme_to_rete(b);
+        assertThrows(ConcurrentModificationException.class, adding::next);
+        
+        // Removing the current wme and then another one
+        final Iterator<WmeImpl> removingTwo = rete.getAllWmes().iterator();
+        assertSame(a, removingTwo.next());
+        rete.remove_wme_from_rete(a);
+        rete.remove_wme_from_rete(b);
+        assertThrows(ConcurrentModificationException.class, removingTwo::next);
+        
+        assertEquals(Arrays.asList(c), new ArrayList<>(rete.getAllWmes()));
+    }
 }
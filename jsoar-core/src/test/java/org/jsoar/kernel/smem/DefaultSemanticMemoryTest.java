@@ -11,13 +11,21 @@
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.PrintWriter;
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.SoarException;
 import org.jsoar.kernel.parser.original.Lexeme;
 import org.jsoar.kernel.parser.original.LexemeType;
+import org.jsoar.kernel.smem.DefaultSemanticMemoryParams.LazyCommitChoices;
 import org.jsoar.kernel.symbols.SymbolFactoryImpl;
 import org.jsoar.kernel.symbols.SymbolImpl;
 import org.jsoar.util.JdbcTools;
@@ -189,4 +197,91 @@ void testCanParseAChunk() throws Exception
         smem.smem_visualize_store(pw);
         pw.flush();
     }
+    
+    @Test
+    void testParsedChunksHaveTheFrequenciesOfTheirAugmentations() throws Exception
+    {
+        smem.smem_parse_chunks("{" +
+                "(<x> ^name foo ^location <loc> ^size 1)" +
+                "(<loc> ^x 1 ^y 2.5 ^z |three|)" +
+                "(<x2> ^name foo ^location <loc> ^size 1 ^size 2)" +
+                "}");
+        smem.smem_parse_chunks("{" +
+                "(<x3> ^name bar ^location <loc3>)" +
+                "(<loc3> ^x 1)" +
+                "}");
+        
+        assertEquals(count("SELECT attribute_s_id, COUNT(DISTINCT lti_id) FROM smem_augmentations GROUP BY attribute_s_id"),
+                count("SELECT attribute_s_id, edge_frequency FROM smem_attribute_frequency"));
+        assertEquals(count("SELECT attribute_s_id || ',' || value_constant_s_id, COUNT(*) FROM smem_augmentations WHERE value_lti_id=0 GROUP BY 1"),
+                count("SELECT attribute_s_id || ',' || value_constant_s_id, edge_frequency FROM smem_wmes_constant_frequency"));
+        assertEquals(count("SELECT attribute_s_id || ',' || value_lti_id, COUNT(*) FROM smem_augmentations WHERE value_constant_s_id=0 GROUP BY 1"),
+                count("SELECT attribute_s_id || ',' || value_lti_id, edge_frequency FROM smem_wmes_lti_frequency"));
+        
+        // ^name and ^location are on all three top-level ltis
+        assertEquals(2, count("SELECT attribute_s_id, edge_frequency FROM smem_attribute_frequency").values().stream().filter(f -> f == 3).count());
+    }
+    
+    @Test
+    void testFailedParseIsRolledBack() throws Exception
+    {
+        checkFailedParseIsRolledBack();
+    }
+    
+    @Test
+    void testFailedParseIsRolledBackOutsideOfLazyCommitMode() throws Exception
+    {
+        smem.getParams().lazy_commit.set(LazyCommitChoices.off);
+        checkFailedParseIsRolledBack();
+    }
+    
+    private void checkFailedParseIsRolledBack() throws Exception
+    {
+        smem.smem_parse_chunks("{(<a> ^name a)}");
+        final long augmentations = rowCount("smem_augmentations");
+        final long frequencies = rowCount("smem_attribute_frequency");
+        
+        // Fail once the augmentations are stored and the frequency counters
+        // are written at the end of the batch
+        execute("CREATE TEMP TRIGGER fail_frequency BEFORE INSERT ON smem_attribute_frequency BEGIN SELECT RAISE(ABORT, 'fail'); END");
+        assertThrows(SoarException.class, () -> smem.smem_parse_chunks("{(<b> ^name b ^size 2)}"));
+        assertEquals(augmentations, rowCount("smem_augmentations"));
+        assertEquals(frequencies, rowCount("smem_attribute_frequency"));
+        
+        // and the next batch starts cleanly
+        execute("DROP TRIGGER fail_frequency");
+        smem.smem_parse_chunks("{(<c> ^name c ^size 3)}");
+        assertEquals(augmentations + 2, rowCount("smem_augmentations"));
+        assertEquals(frequencies + 1, rowCount("smem_attribute_frequency"));
+    }
+    
+    private void execute(String sql) throws SQLException
+    {
+        try(Statement s = conn.createStatement())
+        {
+            s.executeUpdate(sql);
+        }
+    }
+    
+    private long rowCount(String table) throws SQLException
+    {
+        try(Statement s = conn.createStatement(); ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM " + table))
+        {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+    
+    private Map<String, Long> count(String sql) throws SQLException
+    {
+        final Map<String, Long> result = new HashMap<>();
+        try(Statement s = conn.createStatement(); ResultSet rs = s.executeQuery(sql))
+        {
+            while(rs.next())
+            {
+                result.put(rs.getString(1), rs.getLong(2));
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,236 @@
+package org.jsoar.kernel.smem;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.smem.SemanticMemoryStore.ActivationCursor;
+import org.jsoar.kernel.smem.SemanticMemoryStore.AugmentationRow;
+import org.jsoar.kernel.smem.SemanticMemoryStore.LtiAccess;
+import org.jsoar.util.JdbcTools;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class InMemorySemanticMemoryStoreTest
+{
+    private Connection conn;
+    private SemanticMemoryDatabase db;
+    
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        conn = JdbcTools.connect("org.sqlite.JDBC", "jdbc:sqlite::memory:");
+        db = new SemanticMemoryDatabase("org.sqlite.JDBC", conn);
+        db.structure();
+        db.prepare();
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        conn.close();
+    }
+    
+    @Test
+    void testTiedActivationsComeBackNewestFirstLikeTheDatabase() throws Exception
+    {
+        final SemanticMemoryStore heap = InMemorySemanticMemoryStore.load(db);
+        final SemanticMemoryStore jdbc = new JdbcSemanticMemoryStore(db);
+        for(SemanticMemoryStore store : new SemanticMemoryStore[] { heap, jdbc })
+        {
+            final long attr = store.hash_add_type(2);
+            final long value = store.hash_add_type(2);
+            for(long number = 1; number <= 4; number++)
+            {
+                store.web_add(store.lti_add('A', number), attr, value, 0, number == 3 ? 2.0 : 1.0);
+            }
+        }
+        
+        assertEquals(List.of(3L, 4L, 2L, 1L), ltis(heap.web_const_all(1, 2)));
+        assertEquals(ltis(jdbc.web_const_all(1, 2)), ltis(heap.web_const_all(1, 2)));
+        assertEquals(ltis(jdbc.web_attr_all(1)), ltis(heap.web_attr_all(1)));
+    }
+    
+    @Test
+    void testWebQueriesFollowActivationChanges() throws Exception
+    {
+        final SemanticMemoryStore store = InMemorySemanticMemoryStore.load(db);
+        final long attr = store.hash_add_type(2);
+        final long value = store.hash_add_type(2);
+        final long a = store.lti_add('A', 1);
+        final long b = store.lti_add('A', 2);
+        final long c = store.lti_add('A', 3);
+        store.web_add(a, attr, value, 0, 1.0);
+        store.web_add(b, attr, value, 0, 3.0);
+        store.web_add(c, attr, value, 0, 2.0);
+        
+        assertEquals(List.of(b, c, a), ltis(store.web_const_all(attr, value)));
+        
+        store.act_set(a, 5.0);
+        assertEquals(List.of(a, b, c), ltis(store.web_attr_all(attr)));
+        assertArrayEquals(new long[] { value }, store.web_attr_child(a, attr));
+        
+        store.web_truncate(a);
+        assertEquals(List.of(b, c), ltis(store.web_const_all(attr, value)));
+        assertTrue(store.web_all(a).isEmpty());
+    }
+    
+    @Test
+    void testLtisAreFoundByTheirLastActivation() throws Exception
+    {
+        final SemanticMemoryStore heap = InMemorySemanticMemoryStore.load(db);
+        final SemanticMemoryStore jdbc = new JdbcSemanticMemoryStore(db);
+        for(SemanticMemoryStore store : new SemanticMemoryStore[] { heap, jdbc })
+        {
+            final long a = store.lti_add('A', 1);
+            final long b = store.lti_add('B', 7);
+            final long c = store.lti_add('A', 2);
+            store.lti_access_set(c, 1, 10, 10);
+            store.lti_access_set(a, 1, 10, 10);
+            store.lti_access_set(b, 1, 10, 10);
+            // a is activated again, so it's no longer last activated at 10
+            store.lti_access_set(a, 2, 12, 10);
+        }
+        
+        assertEquals(List.of(2L, 3L), heap.lti_get_t(10));
+        assertEquals(List.of(1L), heap.lti_get_t(12));
+        final LtiAccess access = heap.lti_access_get(1);
+        assertEquals(2, access.activations_total);
+        assertEquals(12, access.activations_last);
+        assertEquals(10, access.activations_first);
+        for(long time = 9; time <= 12; time++)
+        {
+            assertEquals(jdbc.lti_get_t(time), heap.lti_get_t(time), "time " + time);
+        }
+        assertEquals(jdbc.lti_max(), heap.lti_max());
+        assertEquals(2, heap.lti_get('B', 7));
+        assertEquals(0, heap.lti_get('B', 8));
+    }
+    
+    @Test
+    void testHistoryKeepsTheMostRecentActivationsFirst() throws Exception
+    {
+        final SemanticMemoryStore heap = InMemorySemanticMemoryStore.load(db);
+        final SemanticMemoryStore jdbc = new JdbcSemanticMemoryStore(db);
+        for(SemanticMemoryStore store : new SemanticMemoryStore[] { heap, jdbc })
+        {
+            final long lti = store.lti_add('A', 1);
+            store.history_add(lti, 1);
+            for(long time = 2; time <= 12; time++)
+            {
+                store.history_push(lti, time);
+            }
+            assertThrows(SQLException.class, () -> store.history_add(lti, 13));
+        }
+        
+        assertArrayEquals(new long[] { 12, 11, 10, 9, 8, 7, 6, 5, 4, 3 }, heap.history_get(1));
+        assertArrayEquals(jdbc.history_get(1), heap.history_get(1));
+        assertNull(heap.history_get(2));
+        
+        // the heap copy can't be changed from outside
+        heap.history_get(1)[0] = 0;
+        assertEquals(12, heap.history_get(1)[0]);
+    }
+    
+    @Test
+    void testFlushKeepsTheOrderOfTiedAugmentations() throws Exception
+    {
+        final SemanticMemoryStore store = InMemorySemanticMemoryStore.load(db);
+        final long attr = store.hash_add_type(2);
+        store.hash_add_str(attr, "name");
+        final long value = store.hash_add_type(1);
+        store.hash_add_int(value, 42);
+        final long a = store.lti_add('A', 1);
+        final long b = store.lti_add('B', 1);
+        final long c = store.lti_add('C', 1);
+        store.web_add(c, attr, value, 0, 1.0);
+        store.web_add(a, attr, value, 0, 1.0);
+        store.web_add(a, attr, 0, b, 1.0);
+        store.web_add(b, attr, value, 0, 1.0);
+        store.act_lti_child_ct_set(a, 2);
+        store.act_lti_set(a, 1.5);
+        store.attribute_frequency_add(attr);
+        store.wmes_constant_frequency_add(attr, value);
+        store.var_create(0, 99);
+        final List<Long> tied = ltis(store.web_const_all(attr, value));
+        store.flush();
+        // flushing again replaces the tables rather than adding to them
+        store.flush();
+        
+        final SemanticMemoryStore loaded = InMemorySemanticMemoryStore.load(db);
+        assertEquals(List.of(b, a, c), tied);
+        assertEquals(tied, ltis(loaded.web_const_all(attr, value)));
+        assertEquals(tied, ltis(new JdbcSemanticMemoryStore(db).web_const_all(attr, value)));
+        
+        assertEquals(Long.valueOf(99), loaded.var_get(0));
+        assertEquals(attr, loaded.hash_get_str("name"));
+        assertEquals(42, loaded.hash_rev_int(value));
+        assertEquals(1.5, loaded.lti_letter_num(a).activation_value);
+        assertEquals(2, loaded.act_lti_child_ct_get(a));
+        assertEquals(Long.valueOf(1), loaded.attribute_frequency_get(attr));
+        assertEquals(Long.valueOf(1), loaded.wmes_constant_frequency_get(attr, value));
+        
+        final List<AugmentationRow> web = loaded.web_all(a);
+        assertEquals(2, web.size());
+        // ordered by attribute and then value, so the lti value comes first
+        assertEquals(b, web.get(0).value_lti);
+        assertEquals(value, web.get(1).value_hash);
+    }
+    
+    @Test
+    void testChunksAddedWithEitherBackendPrintTheSame() throws Exception
+    {
+        final String chunks = "smem --add {" +
+                "(<x> ^name foo ^location <loc>)" +
+                "(<loc> ^x 1 ^y 2.5 ^z |three|)" +
+                "(<x2> ^name foo ^location <loc>)" +
+                "}";
+        final String database = printStore("database", chunks);
+        final String heap = printStore("heap", chunks);
+        assertFalse(database.isEmpty());
+        assertEquals(database, heap);
+    }
+    
+    private static String printStore(String backend, String chunks) throws Exception
+    {
+        final Agent agent = new Agent();
+        try
+        {
+            agent.getInterpreter().eval("smem --set backend " + backend);
+            agent.getInterpreter().eval(chunks);
+            final StringWriter sw = new StringWriter();
+            agent.getPrinter().pushWriter(sw);
+            agent.getInterpreter().eval("print @");
+            agent.getPrinter().popWriter();
+            return sw.toString();
+        }
+        finally
+        {
+            agent.dispose();
+        }
+    }
+    
+    private static List<Long> ltis(ActivationCursor cursor) throws SQLException
+    {
+        final List<Long> result = new ArrayList<>();
+        try(cursor)
+        {
+            while(cursor.next())
+            {
+                result.add(cursor.lti_id());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,108 @@
+package org.jsoar.kernel.smem;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.jsoar.util.JdbcTools;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class JdbcSemanticMemoryStoreTest
+{
+    private Connection conn;
+    private SemanticMemoryDatabase db;
+    
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        conn = JdbcTools.connect("org.sqlite.JDBC", "jdbc:sqlite::memory:");
+        db = new SemanticMemoryDatabase("org.sqlite.JDBC", conn);
+        db.structure();
+        db.prepare();
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        conn.close();
+    }
+    
+    @Test
+    void testQueriesSeeBatchedAugmentations() throws Exception
+    {
+        final SemanticMemoryStore store = new JdbcSemanticMemoryStore(db);
+        final long attr = store.hash_add_type(2);
+        final long a = store.lti_add('A', 1);
+        final long b = store.lti_add('A', 2);
+        
+        store.beginBatch();
+        store.web_add(a, attr, 7, 0, 1.0);
+        store.web_add(b, attr, 8, 0, 1.0);
+        
+        // b's augmentation is still held back
+        assertEquals(0, augmentations());
+        assertArrayEquals(new long[] { 7 }, store.web_attr_child(a, attr));
+        assertEquals(2, augmentations());
+        
+        store.web_add(a, attr, 9, 0, 1.0);
+        store.endBatch();
+        assertEquals(3, augmentations());
+        
+        // and outside of a batch, straight to the database
+        store.web_add(b, attr, 10, 0, 1.0);
+        assertEquals(4, augmentations());
+    }
+    
+    @Test
+    void testActivationUpdatesSeeBatchedAugmentations() throws Exception
+    {
+        final SemanticMemoryStore store = new JdbcSemanticMemoryStore(db);
+        final long attr = store.hash_add_type(2);
+        final long a = store.lti_add('A', 1);
+        
+        store.beginBatch();
+        store.web_add(a, attr, 7, 0, 1.0);
+        store.act_set(a, 5.0);
+        store.endBatch();
+        
+        try(Statement s = conn.createStatement(); ResultSet rs = s.executeQuery("SELECT activation_value FROM smem_augmentations"))
+        {
+            rs.next();
+            assertEquals(5.0, rs.getDouble(1));
+        }
+    }
+    
+    @Test
+    void testAbortingABatchDropsHeldBackAugmentations() throws Exception
+    {
+        final SemanticMemoryStore store = new JdbcSemanticMemoryStore(db);
+        final long attr = store.hash_add_type(2);
+        final long a = store.lti_add('A', 1);
+        
+        store.beginBatch();
+        store.web_add(a, attr, 7, 0, 1.0);
+        store.web_add(a, attr, 8, 0, 1.0);
+        store.abortBatch();
+        assertEquals(0, augmentations());
+        
+        // Nothing is left to send, and the store is out of batch mode
+        store.endBatch();
+        assertEquals(0, augmentations());
+        store.web_add(a, attr, 9, 0, 1.0);
+        assertEquals(1, augmentations());
+    }
+    
+    private int augmentations() throws Exception
+    {
+        try(Statement s = conn.createStatement(); ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM smem_augmentations"))
+        {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
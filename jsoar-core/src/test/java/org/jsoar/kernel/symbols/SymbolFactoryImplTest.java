@@ -15,9 +15,16 @@
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.RunType;
+import org.jsoar.kernel.events.InputEvent;
+import org.jsoar.kernel.io.InputOutput;
+import org.jsoar.kernel.io.InputWme;
 import org.jsoar.util.ByRef;
+import org.jsoar.util.adaptables.Adaptables;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -164,6 +171,238 @@ void testGarbageCollectedSymbolsAreRemovedFromCache()
         }
     }
     
+    @Test
+    void testStrongReferenceModeKeepsSymbolsThroughGarbageCollection()
+    {
+        syms = new SymbolFactoryImpl(true);
+        assertTrue(syms.isStrongReferences());
+        for(int i = 0; i < 1000; ++i)
+        {
+            assertNotNull(syms.createInteger(i));
+            assertNotNull(syms.createString(Integer.toString(i)));
+        }
+        System.gc();
+        for(int i = 0; i < 1000; ++i)
+        {
+            assertEquals(i, syms.findInteger(i).getValue());
+            assertEquals(Integer.toString(i), syms.findString(Integer.toString(i)).getValue());
+        }
+    }
+    
+    @Test
+    void testStrongReferenceModeReleasesUnusedIdentifiers()
+    {
+        syms = new SymbolFactoryImpl(true);
+        final IdentifierImpl unused = syms.createIdentifier('U');
+        final IdentifierImpl linked = syms.createIdentifier('L');
+        linked.link_count = 1;
+        final IdentifierImpl lti = syms.createIdentifier('T');
+        lti.smem_lti = 1;
+        
+        // Creating an identifier doesn't mark it
+        assertEquals(0, syms.releaseUnusedIdentifiers());
+        assertSame(unused, syms.findIdentifier('U', unused.getNameNumber()));
+        
+        syms.markIdentifierForRelease(unused);
+        syms.markIdentifierForRelease(linked);
+        syms.markIdentifierForRelease(lti);
+        assertEquals(1, syms.releaseUnusedIdentifiers());
+        assertNull(syms.findIdentifier('U', unused.getNameNumber()));
+        assertSame(linked, syms.findIdentifier('L', linked.getNameNumber()));
+        assertSame(lti, syms.findIdentifier('T', lti.getNameNumber()));
+        
+        // Only identifiers that were marked since the last release are
+        // considered
+        linked.link_count = 0;
+        assertEquals(0, syms.releaseUnusedIdentifiers());
+        assertSame(linked, syms.findIdentifier('L', linked.getNameNumber()));
+        syms.markIdentifierForRelease(linked);
+        syms.markIdentifierForRelease(linked);
+        assertEquals(1, syms.releaseUnusedIdentifiers());
+        assertNull(syms.findIdentifier('L', linked.getNameNumber()));
+    }
+    
+    @Test
+    void testStrongReferenceModeReleasesIdentifiersRemovedFromWorkingMemory() throws Exception
+    {
+        System.setProperty(SymbolFactoryImpl.STRONG_REFERENCES_PROPERTY, "true");
+        final Agent agent;
+        try
+        {
+            agent = new Agent();
+        }
+        finally
+        {
+            System.clearProperty(SymbolFactoryImpl.STRONG_REFERENCES_PROPERTY);
+        }
+        try
+        {
+            final SymbolFactoryImpl agentSyms = Adaptables.adapt(agent, SymbolFactoryImpl.class);
+            assertTrue(agentSyms.isStrongReferences());
+            
+            // Replace an input structure with a new one every cycle
+            final InputOutput io = agent.getInputOutput();
+            final List<Identifier> created = new ArrayList<>();
+            final ByRef<InputWme> current = ByRef.create(null);
+            agent.getEvents().addListener(InputEvent.class, event ->
+            {
+                if(current.value != null)
+                {
+                    current.value.remove();
+                }
+                final Identifier thing = io.getSymbols().createIdentifier('T');
+                final Identifier child = io.getSymbols().createIdentifier('T');
+                current.value = io.addInputWme(io.getInputLink(), io.getSymbols().createString("thing"), thing);
+                io.addInputWme(thing, io.getSymbols().createString("child"), child);
+                created.add(thing);
+                created.add(child);
+            });
+            agent.runFor(50, RunType.DECISIONS);
+            
+            // The current structure is in working memory. The previous one was
+            // removed in the last input phase, but the agent stopped before
+            // the output phase that would release it. Everything older is gone.
+            final int n = created.size();
+            assertTrue(n >= 100);
+            for(int i = 0; i < n; ++i)
+            {
+                final Identifier id = created.get(i);
+                final IdentifierImpl found = agentSyms.findIdentifier(id.getNameLetter(), id.getNameNumber());
+                if(i < n - 4)
+                {
+                    assertNull(found, id.toString());
+                }
+                else
+                {
+                    assertSame(id, found);
+                }
+            }
+        }
+        finally
+        {
+            agent.dispose();
+        }
+    }
+    
+    @Test
+    void testStrongReferenceModeFindsReleasedIdentifierAgainOnceItsRetained()
+    {
+        syms = new SymbolFactoryImpl(true);
+        final IdentifierImpl id = syms.createIdentifier('R');
+        syms.markIdentifierForRelease(id);
+        assertEquals(1, syms.releaseUnusedIdentifiers());
+        assertNull(syms.findIdentifier('R', id.getNameNumber()));
+        
+        syms.retainIdentifier(id);
+        assertSame(id, syms.findIdentifier('R', id.getNameNumber()));
+        
+        // A new identifier doesn't reuse the name
+        assertNotSame(id, syms.createIdentifier('R'));
+        assertSame(id, syms.findIdentifier('R', id.getNameNumber()));
+    }
+    
+    @Test
+    void testStrongReferenceModeKeepsIdentifierCreatedBetweenRunsAndLinkedLater() throws Exception
+    {
+        System.setProperty(SymbolFactoryImpl.STRONG_REFERENCES_PROPERTY, "true");
+        final Agent agent;
+        try
+        {
+            agent = new Agent();
+        }
+        finally
+        {
+            System.clearProperty(SymbolFactoryImpl.STRONG_REFERENCES_PROPERTY);
+        }
+        try
+        {
+            final SymbolFactoryImpl agentSyms = Adaptables.adapt(agent, SymbolFactoryImpl.class);
+            final InputOutput io = agent.getInputOutput();
+            final Identifier q = io.getSymbols().createIdentifier('Q');
+            
+            // Run a few cycles before q is in working memory
+            agent.runFor(3, RunType.DECISIONS);
+            assertSame(q, agentSyms.findIdentifier('Q', q.getNameNumber()));
+            
+            final ByRef<InputWme> wme = ByRef.create(null);
+            agent.getEvents().addListener(InputEvent.class, event ->
+            {
+                if(wme.value == null)
+                {
+                    wme.value = io.addInputWme(io.getInputLink(), io.getSymbols().createString("q"), q);
+                }
+            });
+            agent.runFor(3, RunType.DECISIONS);
+            assertSame(q, agentSyms.findIdentifier('Q', q.getNameNumber()));
+            
+            // Once it's removed from working memory, it's released
+            wme.value.remove();
+            agent.runFor(2, RunType.DECISIONS);
+            assertNull(agentSyms.findIdentifier('Q', q.getNameNumber()));
+        }
+        finally
+        {
+            agent.dispose();
+        }
+    }
+    
+    @Test
+    void testStrongReferenceModeQueuesIdentifierForReleaseOnce()
+    {
+        syms = new SymbolFactoryImpl(true);
+        final IdentifierImpl id = syms.createIdentifier('U');
+        for(int i = 0; i < 100; ++i)
+        {
+            syms.markIdentifierForRelease(id);
+        }
+        assertEquals(1, syms.releaseUnusedIdentifiers());
+        
+        // Once released, it can be queued again
+        syms.retainIdentifier(id);
+        syms.markIdentifierForRelease(id);
+        assertEquals(1, syms.releaseUnusedIdentifiers());
+        assertEquals(0, syms.releaseUnusedIdentifiers());
+    }
+    
+    @Test
+    void testStrongReferenceModeReleasesConstantsUnusedSinceLastRelease()
+    {
+        syms = new SymbolFactoryImpl(true);
+        final StringSymbolImpl used = syms.createString("used");
+        final StringSymbolImpl unused = syms.createString("unused");
+        final IntegerSymbolImpl usedInt = syms.createInteger(1);
+        final IntegerSymbolImpl unusedInt = syms.createInteger(2);
+        final DoubleSymbolImpl unusedDouble = syms.createDouble(3.0);
+        assertEquals(5, syms.getConstantCount());
+        
+        // Everything was just created, so nothing is released
+        assertEquals(0, syms.releaseUnusedConstants());
+        
+        assertSame(used, syms.findString("used"));
+        assertSame(usedInt, syms.createInteger(1));
+        assertEquals(3, syms.releaseUnusedConstants());
+        assertEquals(2, syms.getConstantCount());
+        
+        // Released constants that are still referenced keep their identity,
+        // and are strongly referenced again once they're looked up
+        assertSame(unused, syms.findString("unused"));
+        assertSame(unusedInt, syms.createInteger(2));
+        assertSame(unusedDouble, syms.findDouble(3.0));
+        assertEquals(5, syms.getConstantCount());
+        assertEquals(5, syms.getSymbols(StringSymbol.class).size()
+                + syms.getSymbols(IntegerSymbol.class).size()
+                + syms.getSymbols(DoubleSymbol.class).size());
+    }
+    
+    @Test
+    void testWeakReferenceModeIgnoresIdentifierRelease()
+    {
+        final IdentifierImpl id = syms.createIdentifier('U');
+        syms.markIdentifierForRelease(id);
+        assertEquals(0, syms.releaseUnusedIdentifiers());
+        assertSame(id, syms.findIdentifier('U', id.getNameNumber()));
+    }
+    
     @Test
     void testGetStringSymbols()
     {
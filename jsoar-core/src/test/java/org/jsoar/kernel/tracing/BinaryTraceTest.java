@@ -0,0 +1,113 @@
+package org.jsoar.kernel.tracing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.RunType;
+import org.jsoar.kernel.tracing.Trace.Category;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BinaryTraceTest
+{
+    private Agent agent;
+    
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        agent = new Agent();
+        agent.getTrace().disableAll();
+        agent.getProductions().loadProduction(
+                "propose*init (state <s> ^superstate nil -^name) --> (<s> ^operator <o> +) (<o> ^name init)");
+        agent.getProductions().loadProduction(
+                "apply*init (state <s> ^operator.name init) --> (<s> ^name test ^value -3 ^ratio 0.5 ^label |hello world|)");
+        agent.getProductions().loadProduction(
+                "elaborate*waiting (state <s> ^superstate nil -^name) --> (<s> ^waiting yes)");
+        agent.getProductions().loadProduction(
+                "elaborate*copy (state <s> ^label <l>) --> (<s> ^copy <c>) (<c> ^of <l> ^value 3)");
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        agent.dispose();
+    }
+    
+    @Test
+    void testDecodedTraceMatchesTheTextTrace() throws Exception
+    {
+        final Trace trace = agent.getTrace();
+        trace.setEnabled(Category.CONTEXT_DECISIONS, true);
+        trace.setEnabled(Category.FIRINGS_OF_USER_PRODS, true);
+        trace.setEnabled(Category.WM_CHANGES, true);
+        
+        final StringWriter text = new StringWriter();
+        trace.getPrinter().pushWriter(text);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final BinaryTraceWriter writer = new BinaryTraceWriter(agent, bytes);
+        
+        agent.runFor(4, RunType.DECISIONS);
+        writer.close();
+        trace.getPrinter().popWriter();
+        assertNull(trace.getRecorder());
+        
+        final StringWriter decoded = new StringWriter();
+        BinaryTraceDecoder.decode(new ByteArrayInputStream(bytes.toByteArray()), decoded);
+        
+        final String expected = text.toString();
+        assertTrue(expected.contains("Retracting elaborate*waiting"), expected);
+        assertTrue(expected.contains("==>S: S"), expected);
+        assertEquals(expected.trim(), decoded.toString().trim());
+    }
+    
+    @Test
+    void testStringsAreOnlyWrittenOnce() throws Exception
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final BinaryTraceWriter writer = new BinaryTraceWriter(agent, bytes);
+        agent.runFor(4, RunType.DECISIONS);
+        writer.close();
+        
+        final String raw = new String(bytes.toByteArray(), "ISO-8859-1");
+        assertEquals(raw.indexOf("|hello world|"), raw.lastIndexOf("|hello world|"));
+        assertEquals(raw.indexOf("elaborate*copy"), raw.lastIndexOf("elaborate*copy"));
+    }
+    
+    @Test
+    void testFailedWriteIsThrownFromClose() throws Exception
+    {
+        final OutputStream broken = new OutputStream()
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                throw new IOException("broken");
+            }
+        };
+        // The header is buffered, so the failure shows up on the first flush
+        final BinaryTraceWriter writer = new BinaryTraceWriter(agent, broken);
+        assertSame(writer, agent.getTrace().getRecorder());
+        agent.runFor(1, RunType.DECISIONS);
+        
+        assertThrows(IOException.class, writer::close);
+        assertNull(agent.getTrace().getRecorder());
+    }
+    
+    @Test
+    void testDecoderRejectsOtherStreams()
+    {
+        assertThrows(IOException.class, () -> BinaryTraceDecoder.decode(
+                new ByteArrayInputStream("hello".getBytes("UTF-8")), new StringWriter()));
+    }
+}
@@ -71,4 +71,16 @@ void testSpaces()
         assertEquals(new String(spaceArray), result);
     }
     
+    @Test
+    void testStartNewLineSeesNewLineWrittenAtAnOffset() throws Exception
+    {
+        StringWriter first = new StringWriter();
+        
+        Printer printer = new Printer(first);
+        printer.print("abc");
+        printer.getWriter().write("x\n".toCharArray(), 1, 1);
+        printer.startNewLine().print("def");
+        assertEquals("abc\ndef", first.toString());
+    }
+    
 }
@@ -0,0 +1,135 @@
+package org.jsoar.kernel.wma;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+class ForgettingQueueTest
+{
+    private final ForgettingQueue queue = new ForgettingQueue(3);
+    private final List<wma_decay_element> due = new ArrayList<>();
+    
+    @Test
+    void testPollReturnsOnlyTheElementsDueAtTheCycle() throws Exception
+    {
+        final wma_decay_element a = element();
+        final wma_decay_element b = element();
+        final wma_decay_element c = element();
+        queue.add(a, 3);
+        queue.add(b, 3 + 8);
+        queue.add(c, 3);
+        assertEquals(3, queue.size());
+        
+        queue.poll(2, due);
+        assertTrue(due.isEmpty());
+        
+        queue.poll(3, due);
+        assertEquals(new HashSet<>(Arrays.asList(a, c)), new HashSet<>(due));
+        assertEquals(ForgettingQueue.NOT_QUEUED, a.forget_slot);
+        assertEquals(1, queue.size());
+    }
+    
+    @Test
+    void testRemoveAndMove() throws Exception
+    {
+        final wma_decay_element a = element();
+        final wma_decay_element b = element();
+        queue.add(a, 5);
+        queue.add(b, 5);
+        queue.remove(a);
+        queue.remove(a);
+        assertEquals(1, queue.size());
+        
+        queue.remove(b);
+        queue.add(b, 6);
+        queue.poll(5, due);
+        assertTrue(due.isEmpty());
+        queue.poll(6, due);
+        assertEquals(Arrays.asList(b), due);
+        assertTrue(queue.isEmpty());
+    }
+    
+    @Test
+    void testFarFutureElementsComeBackFromTheOverflow() throws Exception
+    {
+        final wma_decay_element a = element();
+        queue.add(a, 100);
+        for(long cycle = 1; cycle < 100; cycle++)
+        {
+            queue.poll(cycle, due);
+            assertTrue(due.isEmpty(), "cycle " + cycle);
+        }
+        queue.poll(100, due);
+        assertEquals(Arrays.asList(a), due);
+    }
+    
+    @Test
+    void testClear() throws Exception
+    {
+        final wma_decay_element a = element();
+        final wma_decay_element b = element();
+        queue.add(a, 2);
+        queue.add(b, 1000);
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertEquals(ForgettingQueue.NOT_QUEUED, b.forget_slot);
+        
+        queue.add(a, 2);
+        queue.poll(1, due);
+        queue.poll(2, due);
+        assertEquals(Arrays.asList(a), due);
+    }
+    
+    @Test
+    void testBehavesLikeASortedMapOfCycles() throws Exception
+    {
+        final Random random = new Random(42);
+        final TreeMap<Long, Set<wma_decay_element>> expected = new TreeMap<>();
+        final List<wma_decay_element> elements = new ArrayList<>();
+        for(int i = 0; i < 200; i++)
+        {
+            elements.add(element());
+        }
+        
+        for(long cycle = 1; cycle < 2000; cycle++)
+        {
+            for(int i = 0; i < 5; i++)
+            {
+                final wma_decay_element e = elements.get(random.nextInt(elements.size()));
+                if(e.forget_slot != ForgettingQueue.NOT_QUEUED)
+                {
+                    expected.get(e.forget_cycle).remove(e);
+                    queue.remove(e);
+                }
+                if(random.nextBoolean())
+                {
+                    final long at = cycle + 1 + random.nextInt(random.nextBoolean() ? 4 : 100);
+                    expected.computeIfAbsent(at, k -> new HashSet<>()).add(e);
+                    queue.add(e, at);
+                }
+            }
+            
+            queue.poll(cycle, due);
+            final Set<wma_decay_element> expectedDue = expected.remove(cycle);
+            assertEquals(expectedDue != null ? expectedDue : new HashSet<>(), new HashSet<>(due), "cycle " + cycle);
+            assertEquals(expected.values().stream().mapToInt(Set::size).sum(), queue.size());
+            due.clear();
+        }
+    }
+    
+    private static wma_decay_element element()
+    {
+        final wma_decay_element e = new wma_decay_element();
+        e.forget_cycle = -1L;
+        return e;
+    }
+}
@@ -5,9 +5,14 @@
  */
 package org.jsoar.kernel.wma;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import java.io.StringWriter;
 
 import org.jsoar.kernel.FunctionalTestHarness;
+import org.jsoar.kernel.RunType;
+import org.jsoar.kernel.memory.Wme;
+import org.jsoar.kernel.memory.WmeImpl;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -29,4 +34,24 @@ void testSimpleActivation() throws Exception
         assert (result.contains("S1 ^i-from-i true [1.0]"));
         assert (!result.contains("S1 ^o-from-i2"));
     }
+    
+    @Test
+    void testTurningActivationOffClearsDecayElements() throws Exception
+    {
+        runTestSetup("testSimpleActivation");
+        agent.runFor(10, RunType.DECISIONS);
+        assertTrue(agent.getAllWmesInRete().stream().anyMatch(w -> ((WmeImpl) w).wma_decay_el != null));
+        
+        agent.getInterpreter().eval("wm activation --set activation off");
+        for(Wme w : agent.getAllWmesInRete())
+        {
+            assertTrue(((WmeImpl) w).wma_decay_el == null, w.toString());
+        }
+        
+        // decay elements start over for wmes created after activation is back on
+        agent.getInterpreter().eval("wm activation --set activation on");
+        agent.initialize();
+        agent.runFor(10, RunType.DECISIONS);
+        assertTrue(agent.getAllWmesInRete().stream().anyMatch(w -> ((WmeImpl) w).wma_decay_el != null));
+    }
 }
@@ -0,0 +1,175 @@
+package org.jsoar.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.RunType;
+import org.jsoar.kernel.SoarProperties;
+import org.jsoar.kernel.events.StartEvent;
+import org.jsoar.kernel.events.StopEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class AgentSchedulerTest
+{
+    private AgentScheduler scheduler;
+    
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        scheduler = new AgentScheduler(2);
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+        for(ScheduledAgent agent : scheduler.getAgents())
+        {
+            agent.getAgent().dispose();
+        }
+    }
+    
+    private List<ScheduledAgent> addAgents(int count)
+    {
+        final List<ScheduledAgent> result = new ArrayList<>();
+        for(int i = 0; i < count; ++i)
+        {
+            final Agent agent = new Agent("scheduled-" + i);
+            agent.getProperties().set(SoarProperties.WAITSNC, true);
+            agent.getTrace().setWatchLevel(0);
+            result.add(scheduler.add(agent));
+        }
+        return result;
+    }
+    
+    private static long decisions(ScheduledAgent agent) throws Exception
+    {
+        return agent.executeAndWait(() -> agent.getAgent().getProperties().get(SoarProperties.D_CYCLE_COUNT), 10, TimeUnit.SECONDS);
+    }
+    
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void testRunForRunsEveryAgentTheRequestedNumberOfDecisions() throws Exception
+    {
+        final List<ScheduledAgent> agents = addAgents(20);
+        final CountDownLatch stopped = new CountDownLatch(agents.size());
+        for(ScheduledAgent agent : agents)
+        {
+            agent.getEvents().addListener(StopEvent.class, event -> stopped.countDown());
+            agent.runFor(7, RunType.DECISIONS);
+        }
+        stopped.await();
+        
+        for(ScheduledAgent agent : agents)
+        {
+            assertFalse(agent.isRunning());
+            assertEquals(7, decisions(agent));
+        }
+    }
+    
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void testStepAdvancesEveryAgentOneDecision() throws Exception
+    {
+        final List<ScheduledAgent> agents = addAgents(10);
+        for(int tick = 1; tick <= 3; ++tick)
+        {
+            scheduler.step(10, TimeUnit.SECONDS);
+            for(ScheduledAgent agent : agents)
+            {
+                assertEquals(tick, decisions(agent));
+            }
+        }
+    }
+    
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void testStopStopsAnAgentRunningForever() throws Exception
+    {
+        final ScheduledAgent agent = addAgents(1).get(0);
+        final ScheduledAgent other = addAgents(1).get(0);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        agent.getEvents().addListener(StartEvent.class, event -> started.countDown());
+        agent.getEvents().addListener(StopEvent.class, event -> stopped.countDown());
+        
+        agent.runForever();
+        started.await();
+        assertTrue(agent.isRunning());
+        
+        // An agent running forever doesn't keep the others from stepping
+        scheduler.step(10, TimeUnit.SECONDS);
+        assertEquals(1, decisions(other));
+        
+        agent.stop();
+        stopped.await();
+        assertFalse(agent.isRunning());
+        assertFalse(agent.getAgent().getProperties().get(SoarProperties.IS_RUNNING));
+    }
+    
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void testCommandsRunInOrderOnTheAgentsTurn() throws Exception
+    {
+        final List<ScheduledAgent> agents = addAgents(8);
+        final List<List<Integer>> seen = new ArrayList<>();
+        final AtomicInteger wrongThread = new AtomicInteger();
+        for(ScheduledAgent agent : agents)
+        {
+            final List<Integer> order = new ArrayList<>();
+            seen.add(order);
+            for(int i = 0; i < 100; ++i)
+            {
+                final int value = i;
+                agent.execute(() ->
+                {
+                    if(!agent.isAgentThread())
+                    {
+                        wrongThread.incrementAndGet();
+                    }
+                    order.add(value);
+                });
+            }
+        }
+        
+        for(int i = 0; i < agents.size(); ++i)
+        {
+            assertEquals(100, (int) agents.get(i).executeAndWait(seen.get(i)::size, 10, TimeUnit.SECONDS));
+            for(int j = 0; j < 100; ++j)
+            {
+                assertEquals(j, (int) seen.get(i).get(j));
+            }
+        }
+        assertEquals(0, wrongThread.get());
+    }
+    
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void testDetachedAgentIsNotStepped() throws Exception
+    {
+        final List<ScheduledAgent> agents = addAgents(2);
+        scheduler.step(10, TimeUnit.SECONDS);
+        final long detached = decisions(agents.get(0));
+        final long attached = decisions(agents.get(1));
+        agents.get(0).detach();
+        
+        scheduler.step(10, TimeUnit.SECONDS);
+        
+        assertEquals(1, scheduler.getAgents().size());
+        assertEquals(detached, decisions(agents.get(0)));
+        assertEquals(attached + 1, decisions(agents.get(1)));
+        agents.get(0).getAgent().dispose();
+    }
+}
@@ -0,0 +1,160 @@
+package org.jsoar.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoar.util.AsyncWriter.OverflowPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class AsyncWriterTest
+{
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void testEverythingIsWrittenInOrderThroughASmallBuffer() throws Exception
+    {
+        final StringWriter target = new StringWriter();
+        final StringBuilder expected = new StringBuilder();
+        try(AsyncWriter writer = new AsyncWriter(target, 7, OverflowPolicy.BLOCK))
+        {
+            for(int i = 0; i < 1000; ++i)
+            {
+                final String line = "line " + i + "\n";
+                writer.write(line);
+                expected.append(line);
+            }
+            writer.drain();
+            assertEquals(expected.toString(), target.toString());
+        }
+    }
+    
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void testFullBufferDropsWholeWrites() throws Exception
+    {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final StringWriter target = new StringWriter();
+        final Writer slow = new Writer()
+        {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException
+            {
+                entered.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch(InterruptedException e)
+                {
+                    throw new IOException(e);
+                }
+                target.write(cbuf, off, len);
+            }
+            
+            @Override
+            public void flush() throws IOException
+            {
+            }
+            
+            @Override
+            public void close() throws IOException
+            {
+            }
+        };
+        
+        try(AsyncWriter writer = new AsyncWriter(slow, 8, OverflowPolicy.DROP))
+        {
+            // Once the background thread is stuck in the target with the
+            // first write, there is room for exactly one more
+            writer.write("12345678");
+            entered.await();
+            writer.write("abcdefgh");
+            writer.write("xyz");
+            writer.write("ij");
+            release.countDown();
+            writer.drain();
+            
+            assertEquals("12345678abcdefgh", target.toString());
+            assertEquals(5, writer.getDroppedCount());
+        }
+    }
+    
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void testFailedWriteIsReportedOnTheNextCall() throws Exception
+    {
+        final Writer broken = new Writer()
+        {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException
+            {
+                throw new IOException("broken");
+            }
+            
+            @Override
+            public void flush() throws IOException
+            {
+            }
+            
+            @Override
+            public void close() throws IOException
+            {
+            }
+        };
+        
+        final AsyncWriter writer = new AsyncWriter(broken);
+        writer.write("hello");
+        assertThrows(IOException.class, writer::drain);
+        
+        // only once
+        writer.flush();
+        writer.close();
+    }
+    
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void testCloseWritesEverythingAndClosesTheTarget() throws Exception
+    {
+        final StringWriter target = new StringWriter();
+        final CountDownLatch closed = new CountDownLatch(1);
+        final Writer closing = new Writer()
+        {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException
+            {
+                target.write(cbuf, off, len);
+            }
+            
+            @Override
+            public void flush() throws IOException
+            {
+            }
+            
+            @Override
+            public void close() throws IOException
+            {
+                closed.countDown();
+            }
+        };
+        
+        final StringBuilder expected = new StringBuilder();
+        final AsyncWriter writer = new AsyncWriter(closing);
+        for(int i = 0; i < 100; ++i)
+        {
+            writer.write(Integer.toString(i));
+            expected.append(i);
+        }
+        writer.close();
+        
+        assertEquals(0, closed.getCount());
+        assertEquals(expected.toString(), target.toString());
+        assertThrows(IOException.class, () -> writer.write("more"));
+    }
+}
@@ -0,0 +1,114 @@
+package org.jsoar.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LongHashMapTest
+{
+    @Test
+    void testPutGetAndRemove()
+    {
+        final LongHashMap<String> map = new LongHashMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(1, "one"));
+        assertNull(map.put(-1, "minus one"));
+        assertNull(map.put(Long.MAX_VALUE, "max"));
+        assertEquals("one", map.put(1, "uno"));
+        assertEquals(3, map.size());
+        assertEquals("uno", map.get(1));
+        assertEquals("minus one", map.get(-1));
+        assertEquals("max", map.get(Long.MAX_VALUE));
+        assertNull(map.get(2));
+        
+        assertEquals("uno", map.remove(1));
+        assertNull(map.remove(1));
+        assertFalse(map.containsKey(1));
+        assertEquals(2, map.size());
+    }
+    
+    @Test
+    void testNullValuesAreRejected()
+    {
+        final LongHashMap<String> map = new LongHashMap<>();
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, null));
+    }
+    
+    @Test
+    void testMatchesHashMapUnderRandomOperations()
+    {
+        final LongHashMap<Long> map = new LongHashMap<>();
+        final Map<Long, Long> expected = new HashMap<>();
+        final Random random = new Random(42);
+        for(int i = 0; i < 100000; ++i)
+        {
+            // A small key range forces lots of collisions and removals
+            final long key = random.nextInt(2000) - 1000;
+            if(random.nextInt(3) == 0)
+            {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            else
+            {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for(Map.Entry<Long, Long> e : expected.entrySet())
+        {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+        assertEquals(new HashSet<>(expected.values()), new HashSet<>(map.values()));
+    }
+    
+    @Test
+    void testRemoveIf()
+    {
+        final LongHashMap<Long> map = new LongHashMap<>();
+        for(long i = 0; i < 1000; ++i)
+        {
+            map.put(i, i);
+        }
+        assertEquals(500, map.removeIf(v -> v % 2 == 0));
+        assertEquals(500, map.size());
+        for(long i = 0; i < 1000; ++i)
+        {
+            assertEquals(i % 2 == 0 ? null : Long.valueOf(i), map.get(i));
+        }
+    }
+    
+    @Test
+    void testClear()
+    {
+        final LongHashMap<String> map = new LongHashMap<>();
+        map.put(1, "one");
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        assertFalse(map.values().iterator().hasNext());
+    }
+    
+    @Test
+    void testKeys()
+    {
+        final LongHashMap<String> map = new LongHashMap<>();
+        map.put(3, "three");
+        map.put(-5, "minus five");
+        map.put(100, "hundred");
+        map.remove(100);
+        final long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new long[] { -5, 3 }, keys);
+    }
+}
@@ -0,0 +1,102 @@
+package org.jsoar.util.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SoarEventManagerTest
+{
+    private static class BaseEvent implements SoarEvent
+    {
+    }
+    
+    private static class SubEvent extends BaseEvent
+    {
+    }
+    
+    private final SoarEventManager manager = new SoarEventManager();
+    private final List<String> calls = new ArrayList<>();
+    
+    private SoarEventListener record(String name)
+    {
+        return event -> calls.add(name + ":" + event.getClass().getSimpleName());
+    }
+    
+    @Test
+    void testListenersOfASuperclassGetSubclassEvents()
+    {
+        manager.addListener(null, record("any"));
+        manager.addListener(BaseEvent.class, record("base"));
+        manager.addListener(SubEvent.class, record("sub"));
+        
+        manager.fireEvent(new SubEvent());
+        manager.fireEvent(new BaseEvent());
+        
+        assertEquals(List.of("sub:SubEvent", "base:SubEvent", "any:SubEvent", "base:BaseEvent", "any:BaseEvent"), calls);
+    }
+    
+    @Test
+    void testListenerForSeveralTypesOfAnEventIsCalledOnce()
+    {
+        final SoarEventListener listener = record("both");
+        manager.addListener(BaseEvent.class, listener);
+        manager.addListener(SubEvent.class, listener);
+        
+        manager.fireEvent(new SubEvent());
+        
+        assertEquals(List.of("both:SubEvent"), calls);
+    }
+    
+    @Test
+    void testEventTypeOverloadRoutesAsTheGivenType()
+    {
+        manager.addListener(SubEvent.class, record("sub"));
+        
+        manager.fireEvent(new SubEvent(), BaseEvent.class);
+        
+        assertTrue(calls.isEmpty());
+    }
+    
+    @Test
+    void testListenersAddedAndRemovedAfterFiringAreSeen()
+    {
+        manager.fireEvent(new SubEvent());
+        assertFalse(manager.hasListeners(SubEvent.class));
+        
+        final SoarEventListener listener = record("base");
+        manager.addListener(BaseEvent.class, listener);
+        assertTrue(manager.hasListeners(SubEvent.class));
+        manager.fireEvent(new SubEvent());
+        
+        manager.removeListener(null, listener);
+        assertFalse(manager.hasListeners(SubEvent.class));
+        manager.fireEvent(new SubEvent());
+        
+        assertEquals(List.of("base:SubEvent"), calls);
+    }
+    
+    @Test
+    void testListenerCanRemoveItselfWhileBeingCalled()
+    {
+        manager.addListener(BaseEvent.class, new SoarEventListener()
+        {
+            @Override
+            public void onEvent(SoarEvent event)
+            {
+                calls.add("once");
+                manager.removeListener(BaseEvent.class, this);
+            }
+        });
+        manager.addListener(BaseEvent.class, record("always"));
+        
+        manager.fireEvent(new BaseEvent());
+        manager.fireEvent(new BaseEvent());
+        
+        assertEquals(List.of("once", "always:BaseEvent", "always:BaseEvent"), calls);
+    }
+}
@@ -1,12 +1,14 @@
 /*
  * Copyright (c) 2009 Dave Ray <daveray@gmail.com>
- *
+ * 
  * Created on Jul 21, 2009
  */
 package org.jsoar.util.events;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -39,4 +41,21 @@ void testListenForSingleEvent()
         manager.fireEvent(event);
         assertEquals(1, caughtEvents.size());
     }
+    
+    @Test
+    void testHasListeners()
+    {
+        final SoarEventManager manager = new SoarEventManager();
+        assertFalse(manager.hasListeners(TestEvent.class));
+        
+        final SoarEventListener listener = event -> {};
+        manager.addListener(TestEvent.class, listener);
+        assertTrue(manager.hasListeners(TestEvent.class));
+        manager.removeListener(TestEvent.class, listener);
+        assertFalse(manager.hasListeners(TestEvent.class));
+        
+        // listeners for any event get this one too
+        manager.addListener(null, listener);
+        assertTrue(manager.hasListeners(TestEvent.class));
+    }
 }
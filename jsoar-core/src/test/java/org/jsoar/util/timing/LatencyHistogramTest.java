@@ -0,0 +1,89 @@
+package org.jsoar.util.timing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest
+{
+    @Test
+    void testEmptyHistogram()
+    {
+        final LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMin());
+        assertEquals(0, h.getMax());
+        assertEquals(0.0, h.getMean());
+        assertEquals(0, h.getValueAtPercentile(99.0));
+    }
+    
+    @Test
+    void testSmallValuesAreExact()
+    {
+        final LatencyHistogram h = new LatencyHistogram();
+        for(int i = 1; i <= 50; ++i)
+        {
+            h.record(i);
+        }
+        assertEquals(50, h.getCount());
+        assertEquals(1, h.getMin());
+        assertEquals(50, h.getMax());
+        assertEquals(25.5, h.getMean());
+        assertEquals(1, h.getValueAtPercentile(0.0));
+        assertEquals(25, h.getValueAtPercentile(50.0));
+        assertEquals(50, h.getValueAtPercentile(100.0));
+    }
+    
+    @Test
+    void testLargeValuesAreWithinPrecision()
+    {
+        final LatencyHistogram h = new LatencyHistogram();
+        for(long i = 1; i <= 100000; ++i)
+        {
+            h.record(i * 1000);
+        }
+        assertEquals(100000, h.getCount());
+        assertEquals(100000000L, h.getMax());
+        assertEquals(100000L * 100001 / 2 * 1000, h.getTotal());
+        
+        for(double p : new double[] { 50.0, 90.0, 99.0, 99.9 })
+        {
+            final long expected = (long) (p / 100.0 * 100000) * 1000;
+            final long actual = h.getValueAtPercentile(p);
+            assertTrue(actual >= expected, p + ": " + actual + " < " + expected);
+            assertTrue(actual <= expected + expected / 32, p + ": " + actual + " too large for " + expected);
+        }
+        assertEquals(100000000L, h.getValueAtPercentile(100.0));
+    }
+    
+    @Test
+    void testExtremeValues()
+    {
+        final LatencyHistogram h = new LatencyHistogram();
+        h.record(0);
+        h.record(Long.MAX_VALUE);
+        assertEquals(0, h.getValueAtPercentile(50.0));
+        assertEquals(Long.MAX_VALUE, h.getValueAtPercentile(100.0));
+    }
+    
+    @Test
+    void testReset()
+    {
+        final LatencyHistogram h = new LatencyHistogram();
+        h.record(12345);
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getValueAtPercentile(50.0));
+    }
+    
+    @Test
+    void testNegativeValuesAreRejected()
+    {
+        final LatencyHistogram h = new LatencyHistogram();
+        assertThrows(IllegalArgumentException.class, () -> h.record(-1));
+        assertThrows(IllegalArgumentException.class, () -> h.getValueAtPercentile(101.0));
+    }
+}
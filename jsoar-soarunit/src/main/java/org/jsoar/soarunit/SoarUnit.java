@@ -50,7 +50,7 @@ public class SoarUnit implements Callable<Integer>
     @Option(names = { "-s", "--sml" }, description = "Use CSoar/SML instead of JSoar. CSoar's bin directory must be on the system path or in java.library.path.")
     boolean sml;
     
-    @Option(names = { "-t", "--threads" }, converter = ThreadPoolSizeConverter.class, description = "[1, n] for fixed thread pool, 'cpus' for number of cpus, 'cached' for cached")
+    @Option(names = { "-t", "--threads" }, converter = ThreadPoolSizeConverter.class, description = "[1, n] for fixed thread pool, 'cpus' for number of cpus (the default), 'cached' for cached")
     ThreadPoolSize threads;
     
     @Parameters(paramLabel = "FILE_AND_DIRECTORIES")
@@ -89,12 +89,7 @@ public static void main(String[] args) throws Exception
     
     private ExecutorService getExecutor()
     {
-        if(this.threads == null)
-        {
-            out.println("Using single-threaded test executor.");
-            return Executors.newSingleThreadExecutor();
-        }
-        else if(this.threads.dynamic == ThreadPoolSize.Dynamic.cpus)
+        if(this.threads == null || this.threads.dynamic == ThreadPoolSize.Dynamic.cpus)
         {
             int n = Runtime.getRuntime().availableProcessors();
             out.printf("Using fixed thread pool of size %d for %d processors.%n", n, n);
@@ -170,10 +165,20 @@ else if(this.ui)
         }
         else
         {
-            final TestRunner runner = new TestRunner(agentFactory, out, getExecutor());
-            final List<TestCaseResult> results = runner.runAllTestCases(collector.collect(), null);
-            printFailedTestOutput(results);
-            return printAllTestCaseResults(results, runner.getFiringCounts());
+            final ExecutorService executor = getExecutor();
+            try
+            {
+                final TestRunner runner = new TestRunner(agentFactory, out, executor);
+                final List<TestCaseResult> results = runner.runAllTestCases(collector.collect(), null);
+                printFailedTestOutput(results);
+                return printAllTestCaseResults(results, runner.getFiringCounts());
+            }
+            finally
+            {
+                // The pool threads would otherwise outlive the run, e.g. when
+                // run with the soarunit command
+                executor.shutdown();
+            }
         }
         
     }
@@ -37,7 +37,8 @@ public TestRunner(TestAgentFactory factory, PrintWriterProxy out, ExecutorServic
         this.factory = factory;
         this.out = out;
         
-        this.executor = executor != null ? executor : Executors.newSingleThreadExecutor();
+        // Test cases are independent, so use all of the processors by default
+        this.executor = executor != null ? executor : Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
     }
     
     /**
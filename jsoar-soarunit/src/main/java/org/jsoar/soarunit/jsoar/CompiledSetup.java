@@ -0,0 +1,269 @@
+package org.jsoar.soarunit.jsoar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jsoar.kernel.Agent;
+import org.jsoar.kernel.SoarException;
+import org.jsoar.kernel.rete.ReteSerializer;
+import org.jsoar.runtime.ThreadedAgent;
+import org.jsoar.soarunit.TestCase;
+import org.jsoar.util.SourceLocation;
+import org.jsoar.util.commands.DefaultSoarCommandContext;
+import org.jsoar.util.commands.SoarCommand;
+import org.jsoar.util.commands.SoarCommandContext;
+import org.jsoar.util.commands.SoarCommandInterpreter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The setup of a test case, compiled once so that it doesn't have to be
+ * sourced again for every test.
+ * 
+ * <p>The setup is evaluated in a scratch agent. The productions it loads are
+ * kept as a serialized rete (see {@link ReteSerializer}) and all other
+ * commands, e.g. {@code chunk --off} or {@code rl --set learning on}, are
+ * recorded so they can be replayed, in order, on each test agent before the
+ * rete is loaded.
+ * 
+ * <p>If the setup does something that can't be replayed that way, like
+ * running the agent or excising productions, or if it fails to load, the
+ * setup is simply evaluated on each test agent as before.
+ */
+class CompiledSetup
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledSetup.class);
+    
+    private final String source;
+    private final byte[] rete;
+    private final List<RecordedCommand> commands;
+    
+    private CompiledSetup(String source, byte[] rete, List<RecordedCommand> commands)
+    {
+        this.source = source;
+        this.rete = rete;
+        this.commands = commands;
+    }
+    
+    /**
+     * Compile the setup of a test case
+     * 
+     * @param testCase the test case
+     * @return the compiled setup, never {@code null}
+     */
+    static CompiledSetup compile(TestCase testCase)
+    {
+        final String setup = testCase.getSetup();
+        final Agent agent = new Agent(testCase.getName() + " setup");
+        try
+        {
+            agent.getTrace().setWatchLevel(0);
+            agent.getPrinter().pushWriter(new StringWriter());
+            
+            // The scratch agent never runs, so the test functions only have
+            // to exist for the productions to load
+            agent.getRhsFunctions().registerHandler(new TestRhsFunction(null, "pass"));
+            agent.getRhsFunctions().registerHandler(new TestRhsFunction(null, "fail"));
+            
+            final SoarCommandInterpreter interp = agent.getInterpreter();
+            interp.eval(pushd(JSoarTestAgent.getDirectory(testCase)));
+            final Recorder recorder = new Recorder(interp);
+            interp.eval(setup);
+            if(recorder.unsupported != null)
+            {
+                LOG.debug("Sourcing setup of test case '{}' for each test because of '{}'", testCase.getName(), recorder.unsupported);
+                return new CompiledSetup(setup, null, Collections.emptyList());
+            }
+            
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ReteSerializer.saveRete(agent, out);
+            return new CompiledSetup(setup, out.toByteArray(), recorder.commands);
+        }
+        catch(SoarException | IOException | RuntimeException e)
+        {
+            // Errors show up when the setup is sourced for each test
+            LOG.debug("Failed to compile setup of test case '" + testCase.getName() + "'", e);
+            return new CompiledSetup(setup, null, Collections.emptyList());
+        }
+        finally
+        {
+            agent.dispose();
+        }
+    }
+    
+    /**
+     * @return true if the setup was compiled, false if it's sourced for
+     *     each test
+     */
+    boolean isCompiled()
+    {
+        return rete != null;
+    }
+    
+    /**
+     * Load the setup into a test agent. The test functions must already be
+     * registered.
+     * 
+     * @param agent the test agent
+     * @throws SoarException if the setup fails to load
+     */
+    void load(ThreadedAgent agent) throws SoarException
+    {
+        final SoarCommandInterpreter interp = agent.getInterpreter();
+        if(rete == null)
+        {
+            interp.eval(source);
+            return;
+        }
+        
+        for(RecordedCommand command : commands)
+        {
+            command.replay(interp);
+        }
+        try
+        {
+            ReteSerializer.replaceRete(agent.getAgent(), new ByteArrayInputStream(rete));
+        }
+        catch(IOException e)
+        {
+            throw new SoarException(e);
+        }
+    }
+    
+    static String pushd(String directory)
+    {
+        return String.format("pushd \"%s\"", directory.replace('\\', '/'));
+    }
+    
+    private static class RecordedCommand
+    {
+        private final String name;
+        private final String[] args;
+        private final SourceLocation location;
+        private final String directory;
+        
+        RecordedCommand(String name, String[] args, SourceLocation location, String directory)
+        {
+            this.name = name;
+            this.args = args;
+            this.location = location;
+            this.directory = directory;
+        }
+        
+        void replay(SoarCommandInterpreter interp) throws SoarException
+        {
+            interp.eval(pushd(directory));
+            try
+            {
+                interp.getCommand(name, location).execute(new DefaultSoarCommandContext(location), args.clone());
+            }
+            finally
+            {
+                interp.eval("popd");
+            }
+        }
+        
+        @Override
+        public String toString()
+        {
+            return String.join(" ", args);
+        }
+    }
+    
+    /**
+     * Wraps every command of an interpreter to record what the setup does.
+     * Productions end up in the rete and changing or sourcing files only
+     * matters while the setup is evaluated, so only the remaining top-level
+     * commands are recorded.
+     */
+    private static class Recorder
+    {
+        private final SoarCommandInterpreter interp;
+        private final List<RecordedCommand> commands = new ArrayList<>();
+        private RecordedCommand unsupported;
+        private int depth;
+        
+        Recorder(SoarCommandInterpreter interp) throws SoarException
+        {
+            this.interp = interp;
+            for(String name : interp.getCommandStrings())
+            {
+                final SoarCommand command = interp.getCommand(name, null);
+                interp.addCommand(name, new SoarCommand()
+                {
+                    @Override
+                    public String execute(SoarCommandContext context, String[] args) throws SoarException
+                    {
+                        return record(name, command, context, args);
+                    }
+                    
+                    @Override
+                    public Object getCommand()
+                    {
+                        return command.getCommand();
+                    }
+                });
+            }
+        }
+        
+        private String record(String name, SoarCommand command, SoarCommandContext context, String[] args) throws SoarException
+        {
+            if(depth > 0 || isCompiledIn(name, args))
+            {
+                return command.execute(context, args);
+            }
+            
+            final RecordedCommand recorded = new RecordedCommand(name, args.clone(), context.getSourceLocation(), interp.getWorkingDirectory());
+            if(!isReplayable(name, args) && unsupported == null)
+            {
+                unsupported = recorded;
+            }
+            commands.add(recorded);
+            
+            depth++;
+            try
+            {
+                return command.execute(context, args);
+            }
+            finally
+            {
+                depth--;
+            }
+        }
+        
+        private static boolean isCompiledIn(String name, String[] args)
+        {
+            switch(name)
+            {
+            case "sp":
+            case "pushd":
+            case "popd":
+                return true;
+            case "load":
+                return args.length > 1 && "file".equals(args[1]);
+            default:
+                return false;
+            }
+        }
+        
+        private static boolean isReplayable(String name, String[] args)
+        {
+            switch(name)
+            {
+            case "run":
+            case "load":
+            case "wm":
+                return false;
+            case "production":
+                return args.length > 1 && "optimize-attribute".equals(args[1]);
+            default:
+                return true;
+            }
+        }
+    }
+}
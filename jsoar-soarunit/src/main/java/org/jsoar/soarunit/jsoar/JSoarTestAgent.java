@@ -10,6 +10,7 @@
 import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
 
 import org.jsoar.kernel.DebuggerProvider;
 import org.jsoar.kernel.DebuggerProvider.CloseAction;
@@ -30,6 +31,7 @@
 import org.jsoar.soarunit.FiringCounts;
 import org.jsoar.soarunit.Test;
 import org.jsoar.soarunit.TestAgent;
+import org.jsoar.soarunit.TestCase;
 import org.jsoar.util.StringTools;
 import org.jsoar.util.UrlTools;
 import org.jsoar.util.commands.SoarCommandInterpreter;
@@ -48,15 +50,26 @@ public class JSoarTestAgent implements TestAgent
     
     private final InputListener listener;
     private final InitSoarListener initListener;
+    private final Function<TestCase, CompiledSetup> setups;
     
     SymbolFactory syms;
     private InputWme soarUnitWme;
     private InputWme cycleCountWme;
     
     public JSoarTestAgent()
+    {
+        this(null);
+    }
+    
+    /**
+     * @param setups provides the compiled setup of a test case, or {@code null}
+     *     to source the setup for each test
+     */
+    JSoarTestAgent(Function<TestCase, CompiledSetup> setups)
     {
         this.listener = new InputListener();
         this.initListener = new InitSoarListener();
+        this.setups = setups;
     }
     
     /*
@@ -236,17 +249,29 @@ private void initializeRhsFunctions()
         failFunction = TestRhsFunction.addTestFunction(agent, "fail");
     }
     
-    private void loadTestCode(Test test) throws SoarException
+    static String getDirectory(TestCase testCase) throws SoarException
     {
         try
         {
-            agent.getInterpreter().eval(String.format("pushd \"%s\"", UrlTools.getParent(test.getTestCase().getUrl()).toString().replace('\\', '/')));
+            return UrlTools.getParent(testCase.getUrl()).toString();
         }
         catch(RuntimeException | MalformedURLException | URISyntaxException e)
         {
             throw new SoarException(e);
         }
-        agent.getInterpreter().eval(test.getTestCase().getSetup());
+    }
+    
+    private void loadTestCode(Test test) throws SoarException
+    {
+        agent.getInterpreter().eval(CompiledSetup.pushd(getDirectory(test.getTestCase())));
+        if(setups != null)
+        {
+            setups.apply(test.getTestCase()).load(agent);
+        }
+        else
+        {
+            agent.getInterpreter().eval(test.getTestCase().getSetup());
+        }
         agent.getInterpreter().eval(test.getContent());
     }
     
@@ -5,16 +5,27 @@
  */
 package org.jsoar.soarunit.jsoar;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import org.jsoar.kernel.SoarException;
 import org.jsoar.soarunit.Test;
 import org.jsoar.soarunit.TestAgent;
 import org.jsoar.soarunit.TestAgentFactory;
+import org.jsoar.soarunit.TestCase;
 
 /**
+ * Creates JSoar test agents. The setup of each test case is compiled the
+ * first time one of its tests runs and then loaded into the agents of all
+ * of its tests, see {@link CompiledSetup}.
+ * 
  * @author ray
  */
 public class JSoarTestAgentFactory implements TestAgentFactory
 {
+    // Test cases are collected again for each run, so let old ones go
+    private final Map<TestCase, CompiledSetup> setups = Collections.synchronizedMap(new WeakHashMap<>());
     
     /*
      * (non-Javadoc)
@@ -24,7 +35,7 @@ public class JSoarTestAgentFactory implements TestAgentFactory
     @Override
     public TestAgent createTestAgent()
     {
-        return new JSoarTestAgent();
+        return new JSoarTestAgent(this::getSetup);
     }
     
     /*
@@ -38,4 +49,17 @@ public void debugTest(Test test, boolean exitOnClose) throws SoarException, Inte
         new JSoarTestAgent().debug(test, exitOnClose);
     }
     
+    CompiledSetup getSetup(TestCase testCase)
+    {
+        // The tests of a test case run one after the other, so there's no
+        // need to keep two threads from compiling the same setup
+        CompiledSetup setup = setups.get(testCase);
+        if(setup == null)
+        {
+            setup = CompiledSetup.compile(testCase);
+            setups.put(testCase, setup);
+        }
+        return setup;
+    }
+    
 }
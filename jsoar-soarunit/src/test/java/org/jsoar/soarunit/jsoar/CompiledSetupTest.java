@@ -0,0 +1,104 @@
+package org.jsoar.soarunit.jsoar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jsoar.kernel.SoarException;
+import org.jsoar.soarunit.FiringCounts;
+import org.jsoar.soarunit.Test;
+import org.jsoar.soarunit.TestAgent;
+import org.jsoar.soarunit.TestAgentFactory;
+import org.jsoar.soarunit.TestCase;
+import org.jsoar.soarunit.TestCaseResult;
+import org.jsoar.soarunit.TestRunner;
+
+class CompiledSetupTest
+{
+    private static final File EXAMPLE = new File("src/test/resources/example-unittest/tests.soarunit");
+    
+    @org.junit.jupiter.api.Test
+    void testExampleSetupIsCompiled() throws Exception
+    {
+        assertTrue(CompiledSetup.compile(TestCase.fromFile(EXAMPLE, 0)).isCompiled());
+    }
+    
+    @org.junit.jupiter.api.Test
+    void testSetupThatRunsTheAgentIsSourcedForEachTest() throws Exception
+    {
+        final TestCase testCase = TestCase.fromFile(EXAMPLE, 0);
+        testCase.setSetup(testCase.getSetup() + "\nrun 1\n");
+        assertFalse(CompiledSetup.compile(testCase).isCompiled());
+    }
+    
+    @org.junit.jupiter.api.Test
+    void testCompiledSetupGivesTheSameResultsAsSourcing() throws Exception
+    {
+        final List<TestCase> testCases = new ArrayList<>();
+        for(int i = 0; i < 4; ++i)
+        {
+            testCases.add(TestCase.fromFile(EXAMPLE, 0));
+        }
+        
+        final TestRunner compiled = run(new JSoarTestAgentFactory(), testCases);
+        final TestRunner sourced = run(new TestAgentFactory()
+        {
+            @Override
+            public TestAgent createTestAgent()
+            {
+                return new JSoarTestAgent();
+            }
+            
+            @Override
+            public void debugTest(Test test, boolean exitOnClose) throws SoarException, InterruptedException
+            {
+                throw new UnsupportedOperationException();
+            }
+        }, testCases);
+        
+        assertFalse(toList(compiled.getFiringCounts()).isEmpty());
+        assertEquals(toList(sourced.getFiringCounts()), toList(compiled.getFiringCounts()));
+    }
+    
+    private static TestRunner run(TestAgentFactory factory, List<TestCase> testCases) throws SoarException
+    {
+        final PrintWriter out = new PrintWriter(new StringWriter());
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            final TestRunner runner = new TestRunner(factory, () -> out, executor);
+            for(TestCaseResult result : runner.runAllTestCases(testCases, null))
+            {
+                assertEquals(Collections.emptyList(), failures(result));
+            }
+            return runner;
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+    
+    private static List<String> failures(TestCaseResult result)
+    {
+        final List<String> failures = new ArrayList<>();
+        result.getTestResults().stream().filter(r -> !r.isPassed()).forEach(r -> failures.add(r.getTest().getName() + ": " + r.getMessage()));
+        return failures;
+    }
+    
+    private static List<String> toList(FiringCounts counts)
+    {
+        final List<String> result = new ArrayList<>();
+        counts.getEntries().forEach(e -> result.add(e.getKey() + "=" + e.getValue()));
+        return result;
+    }
+}